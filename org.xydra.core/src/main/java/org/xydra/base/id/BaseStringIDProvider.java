@@ -1,17 +1,13 @@
 package org.xydra.base.id;
 
-import java.util.Iterator;
-
 import org.xydra.annotations.RequiresAppEngine;
 import org.xydra.annotations.RunsInGWT;
 import org.xydra.base.URIFormatException;
 import org.xydra.base.XAddress;
 import org.xydra.base.XId;
 import org.xydra.base.XIdProvider;
-import org.xydra.core.XX;
-import org.xydra.index.IEntrySet;
+import org.xydra.index.impl.FrozenIntegerRangeIndex;
 import org.xydra.index.impl.IntegerRangeIndex;
-import org.xydra.index.impl.SerializableMapSetIndex;
 import org.xydra.log.api.Logger;
 import org.xydra.log.api.LoggerFactory;
 
@@ -53,6 +49,11 @@ public abstract class BaseStringIDProvider implements XIdProvider {
 
 	public static IntegerRangeIndex RANGEINDEX_nameChar;
 
+	/** read-only copies of the above for {@link #isValidId(String)} */
+	private static FrozenIntegerRangeIndex FROZEN_nameStartChar;
+
+	private static FrozenIntegerRangeIndex FROZEN_nameChar;
+
 	static {
 		RANGEINDEX_nameStartChar = new IntegerRangeIndex();
 		RANGEINDEX_nameStartChar.index('A', 'Z');// .
@@ -77,6 +78,8 @@ public abstract class BaseStringIDProvider implements XIdProvider {
 		RANGEINDEX_nameChar.index(hex("B7"), hex("B7"));
 		RANGEINDEX_nameChar.index(hex("0300"), hex("036F"));
 		RANGEINDEX_nameChar.index(hex("203F"), hex("2040"));
+		FROZEN_nameStartChar = new FrozenIntegerRangeIndex(RANGEINDEX_nameStartChar);
+		FROZEN_nameChar = new FrozenIntegerRangeIndex(RANGEINDEX_nameChar);
 	}
 
 	private static int hex(final String s) {
@@ -116,7 +119,7 @@ public abstract class BaseStringIDProvider implements XIdProvider {
 	@Override
 	public XId createUniqueId() {
 		/* leading 'a' ensures legal XML name */
-		return createInstance("a" + UUID.uuid());
+		return this.interner.internId(createInstance("a" + UUID.uuid()));
 	}
 
 	/**
@@ -167,42 +170,24 @@ public abstract class BaseStringIDProvider implements XIdProvider {
 		return fromComponents(repository, model, object, field);
 	}
 
-	// FIXME experimental address caching
-	private transient SerializableMapSetIndex<Integer, XAddress> addressIndex = SerializableMapSetIndex.createWithFastWeakEntrySets();
+	/** all ids and addresses created by this provider */
+	private final transient IdInterner interner = new IdInterner();
+
+	/**
+	 * @return the intern table of this provider, e.g. to monitor its hit rate
+	 *         and size
+	 */
+	public IdInterner getInterner() {
+		return this.interner;
+	}
 
 	@Override
 	public XAddress fromComponents(final XId repositoryId, final XId modelId, final XId objectId, final XId fieldId) {
-
-		final int hash =
-
-		(repositoryId == null ? 1 : repositoryId.hashCode())
-
-		* (modelId == null ? 1 : 33 * modelId.hashCode())
-
-		* (objectId == null ? 1 : 1213 * objectId.hashCode())
-
-		* (fieldId == null ? 1 : 313 * fieldId.hashCode());
-
-		final IEntrySet<XAddress> addressSet = this.addressIndex.lookup(hash);
-		if (addressSet != null) {
-			if (log.isTraceEnabled() && addressSet.size() > 1) {
-				log.trace("Looking among " + addressSet.size() + " addresses with the same hash of " + hash);
-			}
-			final Iterator<XAddress> it = addressSet.iterator();
-			while (it.hasNext()) {
-				final XAddress addr = it.next();
-
-				if (XX.isSameAddress(addr, repositoryId, modelId, objectId, fieldId)) {
-					return addr;
-				}
-			}
+		final XAddress addr = this.interner.getAddress(repositoryId, modelId, objectId, fieldId);
+		if (addr != null) {
+			return addr;
 		}
-
-		final XAddress addr = new MemoryAddress(repositoryId, modelId, objectId, fieldId);
-
-		this.addressIndex.index(hash, addr);
-
-		return addr;
+		return this.interner.internAddress(new MemoryAddress(repositoryId, modelId, objectId, fieldId));
 	}
 
 	/**
@@ -226,12 +211,11 @@ public abstract class BaseStringIDProvider implements XIdProvider {
 			return false;
 		}
 		final int firstCodePoint = s.codePointAt(0);
-		if (!RANGEINDEX_nameStartChar.isInInterval(firstCodePoint)) {
+		if (!FROZEN_nameStartChar.isInInterval(firstCodePoint)) {
 			return false;
 		}
 
-		final int i = Character.charCount(firstCodePoint);
-		return IntegerRangeIndex.isAllCharactersInIntervals(RANGEINDEX_nameChar, s.substring(i));
+		return FROZEN_nameChar.isAllCharactersInIntervals(s, Character.charCount(firstCodePoint));
 	}
 
 	/**
@@ -250,6 +234,11 @@ public abstract class BaseStringIDProvider implements XIdProvider {
 		if (uriString == null) {
 			throw new IllegalArgumentException("'" + uriString + "' is null - cannot create XId");
 		}
+		// interned strings have been validated before
+		final XId id = this.interner.getId(uriString);
+		if (id != null) {
+			return id;
+		}
 		if (uriString.length() > XIdProvider.MAX_LENGTH) {
 			throw new IllegalArgumentException(
 					"'" + uriString + "' is too long (over " + XIdProvider.MAX_LENGTH + ") - cannot create XId");
@@ -259,7 +248,7 @@ public abstract class BaseStringIDProvider implements XIdProvider {
 					"'" + uriString + "' is not a valid XML name or contains ':', cannot create XId");
 		}
 		assert!uriString.contains(" ") : "uriString='" + uriString + "'";
-		return createInstance(uriString);
+		return this.interner.internId(createInstance(uriString));
 	}
 
 }
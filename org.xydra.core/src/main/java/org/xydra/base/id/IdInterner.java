@@ -0,0 +1,188 @@
+package org.xydra.base.id;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xydra.annotations.RequiresAppEngine;
+import org.xydra.annotations.RunsInGWT;
+import org.xydra.base.XAddress;
+import org.xydra.base.XId;
+import org.xydra.index.XI;
+
+import com.google.common.collect.MapMaker;
+
+
+/**
+ * A concurrent intern table for {@link XId XIds} and {@link XAddress
+ * XAddresses}. Entries are only weakly referenced, i.e. an id or address that
+ * is no longer used anywhere else is removed by the garbage collector.
+ *
+ * As long as all ids and addresses are created via the same
+ * {@link BaseStringIDProvider}, equal ids and addresses are the same instance
+ * and equality checks succeed on the first reference comparison.
+ *
+ * In GWT a super-sourced version with strong references is used.
+ *
+ * @author xamde
+ */
+@RunsInGWT(false)
+@RequiresAppEngine(false)
+public class IdInterner {
+
+	/**
+	 * Lookup key for the four components of an address
+	 */
+	private static class AddressKey {
+
+		private final XId repository, model, object, field;
+
+		private final int hash;
+
+		AddressKey(final XId repository, final XId model, final XId object, final XId field) {
+			this.repository = repository;
+			this.model = model;
+			this.object = object;
+			this.field = field;
+			this.hash = (repository == null ? 0 : repository.hashCode())
+					+ 31
+					* ((model == null ? 0 : model.hashCode()) + 31 * ((object == null ? 0 : object
+							.hashCode()) + 31 * (field == null ? 0 : field.hashCode())));
+		}
+
+		@Override
+		public boolean equals(final Object other) {
+			if (!(other instanceof AddressKey)) {
+				return false;
+			}
+			final AddressKey o = (AddressKey) other;
+			return this.hash == o.hash && XI.equals(this.repository, o.repository)
+					&& XI.equals(this.model, o.model) && XI.equals(this.object, o.object)
+					&& XI.equals(this.field, o.field);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+	}
+
+	private final ConcurrentMap<String, XId> ids = new MapMaker().weakValues().makeMap();
+
+	private final ConcurrentMap<AddressKey, XAddress> addresses = new MapMaker().weakValues()
+			.makeMap();
+
+	private final AtomicLong idHits = new AtomicLong();
+
+	private final AtomicLong idMisses = new AtomicLong();
+
+	private final AtomicLong addressHits = new AtomicLong();
+
+	private final AtomicLong addressMisses = new AtomicLong();
+
+	/**
+	 * @param s @NeverNull
+	 * @return the interned id for s or null if there is none
+	 */
+	public XId getId(final String s) {
+		final XId id = this.ids.get(s);
+		if (id == null) {
+			this.idMisses.incrementAndGet();
+		} else {
+			this.idHits.incrementAndGet();
+		}
+		return id;
+	}
+
+	/**
+	 * @param id a newly created id
+	 * @return the id that is interned for the string of id, which is id itself
+	 *         unless another thread was faster
+	 */
+	public XId internId(final XId id) {
+		final XId existing = this.ids.putIfAbsent(id.toString(), id);
+		return existing == null ? id : existing;
+	}
+
+	/**
+	 * @param repository may be null
+	 * @param model may be null
+	 * @param object may be null
+	 * @param field may be null
+	 * @return the interned address with the given components or null if there
+	 *         is none
+	 */
+	public XAddress getAddress(final XId repository, final XId model, final XId object,
+			final XId field) {
+		final XAddress address = this.addresses
+				.get(new AddressKey(repository, model, object, field));
+		if (address == null) {
+			this.addressMisses.incrementAndGet();
+		} else {
+			this.addressHits.incrementAndGet();
+		}
+		return address;
+	}
+
+	/**
+	 * @param address a newly created address
+	 * @return the address that is interned for the components of address,
+	 *         which is address itself unless another thread was faster
+	 */
+	public XAddress internAddress(final XAddress address) {
+		final XAddress existing = this.addresses.putIfAbsent(
+				new AddressKey(address.getRepository(), address.getModel(), address.getObject(),
+						address.getField()), address);
+		return existing == null ? address : existing;
+	}
+
+	public long getIdHits() {
+		return this.idHits.get();
+	}
+
+	public long getIdMisses() {
+		return this.idMisses.get();
+	}
+
+	public long getAddressHits() {
+		return this.addressHits.get();
+	}
+
+	public long getAddressMisses() {
+		return this.addressMisses.get();
+	}
+
+	/**
+	 * @return number of interned ids, including entries that have been
+	 *         collected but not yet removed
+	 */
+	public int getIdCount() {
+		return this.ids.size();
+	}
+
+	/**
+	 * @return number of interned addresses, including entries that have been
+	 *         collected but not yet removed
+	 */
+	public int getAddressCount() {
+		return this.addresses.size();
+	}
+
+	/**
+	 * @return fraction of id and address lookups that found an interned
+	 *         instance, 0 if there were no lookups yet
+	 */
+	public double getHitRate() {
+		final long hits = getIdHits() + getAddressHits();
+		final long total = hits + getIdMisses() + getAddressMisses();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	@Override
+	public String toString() {
+		return "ids=" + getIdCount() + " (hits=" + getIdHits() + " misses=" + getIdMisses()
+				+ ") addresses=" + getAddressCount() + " (hits=" + getAddressHits() + " misses="
+				+ getAddressMisses() + ")";
+	}
+
+}
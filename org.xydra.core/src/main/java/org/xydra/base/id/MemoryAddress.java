@@ -162,6 +162,9 @@ public class MemoryAddress implements XAddress, Serializable {
 	@Override
 	public boolean equals(final Object obj) {
 
+		if (this == obj) {
+			return true;
+		}
 		if (!(obj instanceof XAddress)) {
 			return false;
 		}
@@ -383,4 +386,16 @@ public class MemoryAddress implements XAddress, Serializable {
 		return this;
 	}
 
+	/**
+	 * This is a "magic" method from the Java Object Serialization framework.
+	 * It returns the interned instance of the current {@link BaseRuntime} id
+	 * provider, so that deserialized addresses are interned, too.
+	 *
+	 * @return
+	 */
+	private Object readResolve() {
+		return BaseRuntime.getIDProvider().fromComponents(this.repository, this.model,
+				this.object, this.field);
+	}
+
 }
@@ -4,6 +4,7 @@ import java.io.Serializable;
 
 import org.xydra.annotations.RequiresAppEngine;
 import org.xydra.annotations.RunsInGWT;
+import org.xydra.base.BaseRuntime;
 import org.xydra.base.XId;
 import org.xydra.base.value.ValueType;
 
@@ -43,6 +44,9 @@ public class MemoryStringID implements XId, Serializable {
 
 	@Override
 	public boolean equals(final Object other) {
+		if (this == other) {
+			return true;
+		}
 		if (other instanceof MemoryStringID) {
 			final MemoryStringID otherMemoryStringID = (MemoryStringID) other;
 			if (otherMemoryStringID.string == this.string) {
@@ -84,4 +88,15 @@ public class MemoryStringID implements XId, Serializable {
 	public byte[] toBytes() {
 		return SimpleUTF8.toUtf8Bytes_fromAnyString(this.string);
 	}
+
+	/**
+	 * This is a "magic" method from the Java Object Serialization framework.
+	 * It returns the interned instance of the current {@link BaseRuntime} id
+	 * provider, so that deserialized ids are interned, too.
+	 *
+	 * @return
+	 */
+	private Object readResolve() {
+		return BaseRuntime.getIDProvider().fromString(this.string);
+	}
 }
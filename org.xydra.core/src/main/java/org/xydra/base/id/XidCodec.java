@@ -4,6 +4,7 @@ import org.xydra.annotations.RunsInGWT;
 import org.xydra.base.Base;
 import org.xydra.base.XId;
 import org.xydra.base.XIdProvider;
+import org.xydra.index.impl.FrozenIntegerRangeIndex;
 import org.xydra.index.impl.IntegerRangeIndex;
 
 /**
@@ -24,20 +25,22 @@ public class XidCodec {
 	@SuppressWarnings("unused")
 	private static final int maxUnicodeCodepoint = Integer.parseInt("10FFFF", 16);
 
-	static IntegerRangeIndex NEEDS_NO_ENCODING_firstChar;
+	static FrozenIntegerRangeIndex NEEDS_NO_ENCODING_firstChar;
 
-	static IntegerRangeIndex NEEDS_NO_ENCODING_nthChar;
+	static FrozenIntegerRangeIndex NEEDS_NO_ENCODING_nthChar;
 
 	static {
-		NEEDS_NO_ENCODING_firstChar = new IntegerRangeIndex();
-		NEEDS_NO_ENCODING_firstChar.addAll(BaseStringIDProvider.RANGEINDEX_nameStartChar);
+		final IntegerRangeIndex firstChar = new IntegerRangeIndex();
+		firstChar.addAll(BaseStringIDProvider.RANGEINDEX_nameStartChar);
 		assert BaseStringIDProvider.RANGEINDEX_nameStartChar.isInInterval(ENCODING_CHAR);
-		NEEDS_NO_ENCODING_firstChar.deIndex(ENCODING_CHAR);
+		firstChar.deIndex(ENCODING_CHAR);
+		NEEDS_NO_ENCODING_firstChar = new FrozenIntegerRangeIndex(firstChar);
 
-		NEEDS_NO_ENCODING_nthChar = new IntegerRangeIndex();
-		NEEDS_NO_ENCODING_nthChar.addAll(BaseStringIDProvider.RANGEINDEX_nameChar);
+		final IntegerRangeIndex nthChar = new IntegerRangeIndex();
+		nthChar.addAll(BaseStringIDProvider.RANGEINDEX_nameChar);
 		assert BaseStringIDProvider.RANGEINDEX_nameChar.isInInterval(ENCODING_CHAR);
-		NEEDS_NO_ENCODING_nthChar.deIndex(ENCODING_CHAR);
+		nthChar.deIndex(ENCODING_CHAR);
+		NEEDS_NO_ENCODING_nthChar = new FrozenIntegerRangeIndex(nthChar);
 
 		assert!NEEDS_NO_ENCODING_firstChar.isInInterval(ENCODING_CHAR);
 		assert!NEEDS_NO_ENCODING_nthChar.isInInterval(ENCODING_CHAR);
@@ -0,0 +1,205 @@
+package org.xydra.base.rmof.impl.memory;
+
+import org.xydra.base.XAddress;
+import org.xydra.base.XId;
+import org.xydra.base.XType;
+import org.xydra.base.rmof.XReadableField;
+import org.xydra.base.rmof.impl.XExistsRevWritableField;
+import org.xydra.base.util.DumpUtilsBase;
+import org.xydra.base.value.XValue;
+import org.xydra.index.XI;
+
+
+/**
+ * A field of a {@link CopyOnWriteObject}. Fields are owned by the object that
+ * created them and are copied by every other object before being changed.
+ *
+ * A shared field is handed out as a pending copy, which is added to its object
+ * by its first change, see {@link CopyOnWriteObject#getField(XId)}.
+ *
+ * @author xamde
+ */
+public class CopyOnWriteField extends SimpleEntity implements XExistsRevWritableField {
+
+	private static final long serialVersionUID = -1640326539541245817L;
+
+	private final XAddress address;
+
+	private long revisionNumber;
+
+	private XValue value;
+
+	final CopyOnWriteModel.Owner owner;
+
+	/**
+	 * The object this is a pending copy for, null once this field has been
+	 * added to it or if this field is not a pending copy
+	 */
+	private transient CopyOnWriteObject pendingObject;
+
+	/** the shared field in the pending object this is a copy of */
+	private transient CopyOnWriteField pendingSource;
+
+	/**
+	 * Set if another copy of the same shared field has been added to the
+	 * object first. All calls are forwarded to it.
+	 */
+	private transient CopyOnWriteField replacement;
+
+	CopyOnWriteField(final XAddress address, final long revisionNumber, final XValue value,
+			final CopyOnWriteModel.Owner owner) {
+		this.address = address;
+		this.revisionNumber = revisionNumber;
+		this.value = value;
+		this.owner = owner;
+	}
+
+	/**
+	 * @param field
+	 * @param owner
+	 * @return a copy of the given field state owned by the given owner
+	 */
+	static CopyOnWriteField copyOf(final XReadableField field, final CopyOnWriteModel.Owner owner) {
+		final CopyOnWriteField copy = new CopyOnWriteField(field.getAddress(),
+				field.getRevisionNumber(), field.getValue(), owner);
+		if (field instanceof SimpleEntity) {
+			copy.setExists(((SimpleEntity) field).exists());
+		}
+		return copy;
+	}
+
+	/**
+	 * @param source a shared field of the given object
+	 * @param object
+	 * @return a copy of source that is added to the object when it is changed
+	 */
+	static CopyOnWriteField pendingCopyOf(final CopyOnWriteField source,
+			final CopyOnWriteObject object) {
+		final CopyOnWriteField copy = copyOf(source, object.owner);
+		copy.pendingObject = object;
+		copy.pendingSource = source;
+		return copy;
+	}
+
+	/**
+	 * Does not change anything as long as the pending object still contains
+	 * the shared source.
+	 *
+	 * @return the field that holds the state of this field
+	 */
+	private CopyOnWriteField current() {
+		if (this.pendingObject != null) {
+			final CopyOnWriteField entry = this.pendingObject.current().getFieldState(getId());
+			if (entry != this.pendingSource) {
+				resolve(entry);
+			}
+		}
+		return this.replacement == null ? this : this.replacement.current();
+	}
+
+	/**
+	 * @param entry the field that is in the pending object instead of the
+	 *            shared source
+	 */
+	private void resolve(final CopyOnWriteField entry) {
+		if (entry != null && entry.owner == this.owner) {
+			// another copy has been added first
+			this.replacement = entry;
+		}
+		// else: removed from the object, so this copy stays on its own
+		this.pendingObject = null;
+		this.pendingSource = null;
+	}
+
+	/**
+	 * @return the field to change, which is part of its object
+	 */
+	private CopyOnWriteField forChange() {
+		CopyOnWriteModel.checkWritable(this.owner);
+		if (this.pendingObject != null) {
+			final CopyOnWriteObject object = this.pendingObject.forChange();
+			final CopyOnWriteField entry = object.getFieldState(getId());
+			if (entry == this.pendingSource) {
+				object.addFieldState(this);
+				this.pendingObject = null;
+				this.pendingSource = null;
+			} else {
+				resolve(entry);
+			}
+		}
+		return this.replacement == null ? this : this.replacement.forChange();
+	}
+
+	@Override
+	public boolean exists() {
+		final CopyOnWriteField current = current();
+		return current == this ? super.exists() : current.exists();
+	}
+
+	@Override
+	public XAddress getAddress() {
+		return this.address;
+	}
+
+	@Override
+	public XId getId() {
+		return this.address.getField();
+	}
+
+	@Override
+	public long getRevisionNumber() {
+		return current().revisionNumber;
+	}
+
+	@Override
+	public XType getType() {
+		return XType.XFIELD;
+	}
+
+	@Override
+	public XValue getValue() {
+		return current().value;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return current().value == null;
+	}
+
+	@Override
+	public void setExists(final boolean entityExists) {
+		final CopyOnWriteField field = forChange();
+		if (field == this) {
+			super.setExists(entityExists);
+		} else {
+			field.setExists(entityExists);
+		}
+	}
+
+	@Override
+	public void setRevisionNumber(final long rev) {
+		forChange().revisionNumber = rev;
+	}
+
+	@Override
+	public boolean setValue(final XValue value) {
+		final CopyOnWriteField field = forChange();
+		final boolean changed = !XI.equals(field.value, value);
+		field.value = value;
+		return changed;
+	}
+
+	@Override
+	public String toString() {
+		return DumpUtilsBase.toStringBuffer(this).toString();
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		return o instanceof XReadableField
+				&& ((XReadableField) o).getAddress().equals(getAddress())
+				&& ((XReadableField) o).getRevisionNumber() == getRevisionNumber()
+				&& XI.equals(((XReadableField) o).getValue(), getValue());
+	}
+
+}
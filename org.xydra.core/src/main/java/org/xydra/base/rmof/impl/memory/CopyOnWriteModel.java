@@ -0,0 +1,249 @@
+package org.xydra.base.rmof.impl.memory;
+
+import java.io.Serializable;
+import java.util.Iterator;
+
+import org.xydra.annotations.NeverNull;
+import org.xydra.base.Base;
+import org.xydra.base.XAddress;
+import org.xydra.base.XCompareUtils;
+import org.xydra.base.XId;
+import org.xydra.base.XType;
+import org.xydra.base.change.XCommand;
+import org.xydra.base.rmof.XReadableModel;
+import org.xydra.base.rmof.XRevWritableObject;
+import org.xydra.base.rmof.impl.XExistsRevWritableModel;
+import org.xydra.index.impl.PersistentHashMap;
+import org.xydra.sharedutils.XyAssert;
+
+/**
+ * A model that can hand out snapshots of itself in O(1) time. The objects are
+ * kept in a {@link PersistentHashMap}, so a snapshot and the model share all
+ * objects, fields and trie nodes that have not been changed since the snapshot
+ * has been taken.
+ *
+ * Ownership rules: Every model has an {@link Owner}. Objects, fields and trie
+ * nodes are changed in place only by the model, object or field that owns
+ * them; everything else is copied on write: {@link #getObject(XId)} and
+ * {@link XRevWritableObject#getField(XId)} hand out shared entities as pending
+ * copies, which are added to their model or object by their first change.
+ * Taking a snapshot freezes the current owner, so objects and fields obtained
+ * before the snapshot throw an {@link IllegalStateException} when changed
+ * afterwards. Get them again from the model instead.
+ *
+ * Snapshots are independent models following the same rules, i.e. they can
+ * be changed without affecting the model they were taken from and vice versa.
+ *
+ * Reading never changes a model, so any number of threads can read a model or
+ * snapshot that is not changed at the same time. Changes must be synchronised
+ * with all other access to the same model. The model and its snapshots never
+ * change entities they share, so each of them can be used by a different
+ * thread.
+ *
+ * @author xamde
+ */
+public class CopyOnWriteModel extends SimpleEntity implements XExistsRevWritableModel {
+
+	private static final long serialVersionUID = 7212616474113698016L;
+
+	/**
+	 * Edit token. Entities and trie nodes created with an owner that is not
+	 * frozen can be changed in place.
+	 */
+	static final class Owner implements Serializable {
+
+		private static final long serialVersionUID = -4624426618216755656L;
+
+		boolean frozen = false;
+	}
+
+	static boolean isFrozen(final Owner owner) {
+		return owner.frozen;
+	}
+
+	static void checkWritable(final Owner owner) {
+		if (isFrozen(owner)) {
+			throw new IllegalStateException("This entity is shared with a snapshot and cannot "
+					+ "be changed. Get it again from its model.");
+		}
+	}
+
+	private final XAddress address;
+
+	private PersistentHashMap<XId, CopyOnWriteObject> objects;
+
+	private long revisionNumber;
+
+	private Owner owner;
+
+	public CopyOnWriteModel(final XAddress address) {
+		this(address, XCommand.NEW);
+	}
+
+	public CopyOnWriteModel(final XAddress address, final long revisionNumber) {
+		this(address, revisionNumber, PersistentHashMap.<XId, CopyOnWriteObject> empty());
+	}
+
+	private CopyOnWriteModel(final XAddress address, final long revisionNumber,
+			final PersistentHashMap<XId, CopyOnWriteObject> objects) {
+		assert address != null;
+		assert address.getAddressedType() == XType.XMODEL : address;
+		this.address = address;
+		this.revisionNumber = revisionNumber;
+		this.objects = objects;
+		this.owner = new Owner();
+	}
+
+	/**
+	 * Takes O(1) time. Objects and fields obtained from this model before must
+	 * not be changed afterwards, get them again from this model.
+	 *
+	 * @return an independent copy of this model which shares all objects and
+	 *         fields with it
+	 */
+	public CopyOnWriteModel snapshot() {
+		freeze();
+		final CopyOnWriteModel snapshot = new CopyOnWriteModel(this.address, this.revisionNumber,
+				this.objects);
+		snapshot.setExists(exists());
+		return snapshot;
+	}
+
+	/**
+	 * Takes O(1) time. Objects and fields obtained from this model before must
+	 * not be changed afterwards, get them again from this model.
+	 *
+	 * @param objectId
+	 * @return an independent copy of the given object which shares all fields
+	 *         with it or null if there is no such object
+	 */
+	public XRevWritableObject getObjectSnapshot(@NeverNull final XId objectId) {
+		final CopyOnWriteObject object = this.objects.get(objectId);
+		if (object == null) {
+			return null;
+		}
+		freeze();
+		return CopyOnWriteObject.copyOf(object, new Owner());
+	}
+
+	/** makes everything shared, any later change copies it first */
+	private void freeze() {
+		this.owner.frozen = true;
+		this.owner = new Owner();
+	}
+
+	/**
+	 * The given object state is copied into a new object owned by this model.
+	 */
+	@Override
+	public void addObject(@NeverNull final XRevWritableObject object) {
+		XyAssert.xyAssert(object != null);
+		assert object != null;
+		this.objects = this.objects.put(this.owner, object.getId(),
+				CopyOnWriteObject.copyOf(object, this.owner));
+	}
+
+	@Override
+	public XRevWritableObject createObject(@NeverNull final XId objectId) {
+		final XRevWritableObject object = getObject(objectId);
+		if (object != null) {
+			return object;
+		}
+		final CopyOnWriteObject newObject = new CopyOnWriteObject(Base.resolveObject(
+				this.address, objectId), this.owner);
+		this.objects = this.objects.put(this.owner, objectId, newObject);
+		return newObject;
+	}
+
+	@Override
+	public XAddress getAddress() {
+		return this.address;
+	}
+
+	@Override
+	public XId getId() {
+		return this.address.getModel();
+	}
+
+	/**
+	 * A shared object is returned as a pending copy, which is added to this
+	 * model when it is changed. So reading does not change the model.
+	 */
+	@Override
+	public XRevWritableObject getObject(@NeverNull final XId objectId) {
+		final CopyOnWriteObject object = this.objects.get(objectId);
+		if (object == null || object.owner == this.owner) {
+			return object;
+		}
+		// the caller might change it
+		return CopyOnWriteObject.pendingCopyOf(object, this, this.owner);
+	}
+
+	/**
+	 * @param objectId
+	 * @return the object state, not a pending copy of it
+	 */
+	CopyOnWriteObject getObjectState(final XId objectId) {
+		return this.objects.get(objectId);
+	}
+
+	/**
+	 * Adds a pending copy of an object to this model, see
+	 * {@link CopyOnWriteObject#forChange()}.
+	 *
+	 * @param object
+	 */
+	void addObjectState(final CopyOnWriteObject object) {
+		this.objects = this.objects.put(this.owner, object.getId(), object);
+	}
+
+	@Override
+	public long getRevisionNumber() {
+		return this.revisionNumber;
+	}
+
+	@Override
+	public XType getType() {
+		return XType.XMODEL;
+	}
+
+	@Override
+	public boolean hasObject(@NeverNull final XId objectId) {
+		return this.objects.containsKey(objectId);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return this.objects.isEmpty();
+	}
+
+	@Override
+	public Iterator<XId> iterator() {
+		return this.objects.keyIterator();
+	}
+
+	@Override
+	public boolean removeObject(@NeverNull final XId objectId) {
+		final int size = this.objects.size();
+		this.objects = this.objects.remove(this.owner, objectId);
+		return this.objects.size() != size;
+	}
+
+	@Override
+	public void setRevisionNumber(final long rev) {
+		this.revisionNumber = rev;
+	}
+
+	@Override
+	public String toString() {
+		return this.address + " [" + this.revisionNumber + "], " + this.objects.size()
+				+ " objects";
+	}
+
+	@Override
+	public boolean equals(final Object other) {
+		return other instanceof XReadableModel
+				&& XCompareUtils.equalState(this, (XReadableModel) other);
+	}
+
+}
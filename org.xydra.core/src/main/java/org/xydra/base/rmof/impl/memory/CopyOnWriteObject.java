@@ -0,0 +1,290 @@
+package org.xydra.base.rmof.impl.memory;
+
+import java.util.Iterator;
+
+import org.xydra.base.Base;
+import org.xydra.base.XAddress;
+import org.xydra.base.XCompareUtils;
+import org.xydra.base.XId;
+import org.xydra.base.XType;
+import org.xydra.base.change.XCommand;
+import org.xydra.base.rmof.XReadableField;
+import org.xydra.base.rmof.XReadableObject;
+import org.xydra.base.rmof.XRevWritableField;
+import org.xydra.base.rmof.XRevWritableObject;
+import org.xydra.base.rmof.impl.XExistsRevWritableObject;
+import org.xydra.base.util.DumpUtilsBase;
+import org.xydra.index.impl.PersistentHashMap;
+import org.xydra.sharedutils.XyAssert;
+
+
+/**
+ * An object of a {@link CopyOnWriteModel}. Its fields are kept in a
+ * {@link PersistentHashMap}, so that copying an object takes O(1) time and the
+ * copy shares all fields with the original until one of them is changed.
+ *
+ * {@link #getField(XId)} returns a shared field as a pending copy, which is
+ * added to this object by its first change. So reading never changes an
+ * object.
+ *
+ * See {@link CopyOnWriteModel} for the ownership rules.
+ *
+ * @author xamde
+ */
+public class CopyOnWriteObject extends SimpleEntity implements XExistsRevWritableObject {
+
+	private static final long serialVersionUID = -3196312958717069958L;
+
+	private final XAddress address;
+
+	private PersistentHashMap<XId, CopyOnWriteField> fields;
+
+	private long revisionNumber;
+
+	final CopyOnWriteModel.Owner owner;
+
+	/**
+	 * The model this is a pending copy for, null once this object has been
+	 * added to it or if this object is not a pending copy
+	 */
+	private transient CopyOnWriteModel pendingModel;
+
+	/** the shared object in the pending model this is a copy of */
+	private transient CopyOnWriteObject pendingSource;
+
+	/**
+	 * Set if another copy of the same shared object has been added to the
+	 * model first. All calls are forwarded to it.
+	 */
+	private transient CopyOnWriteObject replacement;
+
+	CopyOnWriteObject(final XAddress address, final CopyOnWriteModel.Owner owner) {
+		this(address, XCommand.NEW, PersistentHashMap.<XId, CopyOnWriteField> empty(), owner);
+	}
+
+	private CopyOnWriteObject(final XAddress address, final long revisionNumber,
+			final PersistentHashMap<XId, CopyOnWriteField> fields, final CopyOnWriteModel.Owner owner) {
+		XyAssert.xyAssert(address.getAddressedType() == XType.XOBJECT, "Adress=" + address);
+		this.address = address;
+		this.revisionNumber = revisionNumber;
+		this.fields = fields;
+		this.owner = owner;
+	}
+
+	/**
+	 * @param object
+	 * @param owner
+	 * @return a copy of the given object owned by the given owner. If the given
+	 *         object is a frozen {@link CopyOnWriteObject}, its fields are
+	 *         shared, otherwise they are copied.
+	 */
+	static CopyOnWriteObject copyOf(final XReadableObject object, final CopyOnWriteModel.Owner owner) {
+		CopyOnWriteObject copy;
+		if (object instanceof CopyOnWriteObject
+				&& CopyOnWriteModel.isFrozen(((CopyOnWriteObject) object).current().owner)) {
+			final CopyOnWriteObject source = ((CopyOnWriteObject) object).current();
+			copy = new CopyOnWriteObject(source.address, source.revisionNumber, source.fields,
+					owner);
+		} else {
+			copy = new CopyOnWriteObject(object.getAddress(), object.getRevisionNumber(),
+					PersistentHashMap.<XId, CopyOnWriteField> empty(), owner);
+			for (final XId fieldId : object) {
+				// the field states, not pending copies of them
+				final XReadableField field = object instanceof CopyOnWriteObject ? ((CopyOnWriteObject) object)
+						.current().fields.get(fieldId) : object.getField(fieldId);
+				copy.fields = copy.fields.put(owner, fieldId, CopyOnWriteField.copyOf(field, owner));
+			}
+		}
+		if (object instanceof SimpleEntity) {
+			copy.setExists(((SimpleEntity) object).exists());
+		}
+		return copy;
+	}
+
+	/**
+	 * @param source a shared object of the given model
+	 * @param model
+	 * @param owner the current owner of the model
+	 * @return a copy of source that shares all fields with it and is added to
+	 *         the model when it is changed
+	 */
+	static CopyOnWriteObject pendingCopyOf(final CopyOnWriteObject source,
+			final CopyOnWriteModel model, final CopyOnWriteModel.Owner owner) {
+		final CopyOnWriteObject copy = new CopyOnWriteObject(source.address,
+				source.revisionNumber, source.fields, owner);
+		copy.setExists(source.exists());
+		copy.pendingModel = model;
+		copy.pendingSource = source;
+		return copy;
+	}
+
+	/**
+	 * Does not change anything as long as the pending model still contains the
+	 * shared source.
+	 *
+	 * @return the object that holds the state of this object
+	 */
+	CopyOnWriteObject current() {
+		if (this.pendingModel != null) {
+			final CopyOnWriteObject entry = this.pendingModel.getObjectState(getId());
+			if (entry != this.pendingSource) {
+				if (entry != null && entry.owner == this.owner) {
+					// another copy has been added first
+					this.replacement = entry;
+				}
+				// else: removed from the model, so this copy stays on its own
+				this.pendingModel = null;
+				this.pendingSource = null;
+			}
+		}
+		return this.replacement == null ? this : this.replacement.current();
+	}
+
+	/**
+	 * @return the object to change, which is part of its model
+	 */
+	CopyOnWriteObject forChange() {
+		CopyOnWriteModel.checkWritable(this.owner);
+		final CopyOnWriteObject current = current();
+		if (current != this) {
+			return current.forChange();
+		}
+		if (this.pendingModel != null) {
+			this.pendingModel.addObjectState(this);
+			this.pendingModel = null;
+			this.pendingSource = null;
+		}
+		return this;
+	}
+
+	/**
+	 * @param fieldId
+	 * @return the field state, not a pending copy of it
+	 */
+	CopyOnWriteField getFieldState(final XId fieldId) {
+		return this.fields.get(fieldId);
+	}
+
+	/**
+	 * Adds a pending copy of a field to this object, see
+	 * {@link CopyOnWriteField#forChange()}.
+	 *
+	 * @param field
+	 */
+	void addFieldState(final CopyOnWriteField field) {
+		this.fields = this.fields.put(this.owner, field.getId(), field);
+	}
+
+	/**
+	 * The given field state is copied into a new field owned by this object.
+	 */
+	@Override
+	public void addField(final XRevWritableField field) {
+		XyAssert.xyAssert(field != null);
+		assert field != null;
+		final CopyOnWriteObject object = forChange();
+		object.fields = object.fields.put(object.owner, field.getId(),
+				CopyOnWriteField.copyOf(field, object.owner));
+	}
+
+	@Override
+	public XRevWritableField createField(final XId fieldId) {
+		final XRevWritableField field = getField(fieldId);
+		if (field != null) {
+			return field;
+		}
+		final CopyOnWriteObject object = forChange();
+		final CopyOnWriteField newField = new CopyOnWriteField(Base.resolveField(this.address,
+				fieldId), XCommand.NEW, null, object.owner);
+		object.fields = object.fields.put(object.owner, fieldId, newField);
+		return newField;
+	}
+
+	@Override
+	public boolean exists() {
+		final CopyOnWriteObject current = current();
+		return current == this ? super.exists() : current.exists();
+	}
+
+	@Override
+	public XAddress getAddress() {
+		return this.address;
+	}
+
+	@Override
+	public XRevWritableField getField(final XId fieldId) {
+		final CopyOnWriteObject current = current();
+		final CopyOnWriteField field = current.fields.get(fieldId);
+		if (field == null || field.owner == current.owner
+				|| CopyOnWriteModel.isFrozen(current.owner)) {
+			return field;
+		}
+		// the caller might change it
+		return CopyOnWriteField.pendingCopyOf(field, current);
+	}
+
+	@Override
+	public XId getId() {
+		return this.address.getObject();
+	}
+
+	@Override
+	public long getRevisionNumber() {
+		return current().revisionNumber;
+	}
+
+	@Override
+	public XType getType() {
+		return XType.XOBJECT;
+	}
+
+	@Override
+	public boolean hasField(final XId fieldId) {
+		return current().fields.containsKey(fieldId);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return current().fields.isEmpty();
+	}
+
+	@Override
+	public Iterator<XId> iterator() {
+		return current().fields.keyIterator();
+	}
+
+	@Override
+	public boolean removeField(final XId fieldId) {
+		final CopyOnWriteObject object = forChange();
+		final int size = object.fields.size();
+		object.fields = object.fields.remove(object.owner, fieldId);
+		return object.fields.size() != size;
+	}
+
+	@Override
+	public void setExists(final boolean entityExists) {
+		final CopyOnWriteObject object = forChange();
+		if (object == this) {
+			super.setExists(entityExists);
+		} else {
+			object.setExists(entityExists);
+		}
+	}
+
+	@Override
+	public void setRevisionNumber(final long rev) {
+		forChange().revisionNumber = rev;
+	}
+
+	@Override
+	public String toString() {
+		return DumpUtilsBase.toStringBuffer(this).toString();
+	}
+
+	@Override
+	public boolean equals(final Object other) {
+		return other instanceof XReadableObject
+				&& XCompareUtils.equalState(this, (XReadableObject) other);
+	}
+
+}
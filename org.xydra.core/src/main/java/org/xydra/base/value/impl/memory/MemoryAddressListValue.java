@@ -1,7 +1,6 @@
 package org.xydra.base.value.impl.memory;
 
 import java.io.Serializable;
-import java.util.Arrays;
 import java.util.Collection;
 
 import org.xydra.base.XAddress;
@@ -9,6 +8,7 @@ import org.xydra.base.value.ValueType;
 import org.xydra.base.value.XAddressListValue;
 import org.xydra.base.value.XIdListValue;
 import org.xydra.index.XI;
+import org.xydra.index.impl.PersistentList;
 
 
 /**
@@ -21,7 +21,7 @@ import org.xydra.index.XI;
 public class MemoryAddressListValue extends MemoryListValue<XAddress> implements XAddressListValue,
         Serializable {
 
-	private static final long serialVersionUID = -7641986388917629097L;
+	private static final long serialVersionUID = 2696175628477073204L;
 
 	public static final XAddress[] createArrayWithEntryInsertedAtPosition(final XAddress[] array,
 	        final int position, final XAddress entry) {
@@ -48,42 +48,36 @@ public class MemoryAddressListValue extends MemoryListValue<XAddress> implements
 		return newList;
 	}
 
-	// non-final to be GWT-Serializable
-	private XAddress[] list;
-
 	// empty constructor for GWT-Serializable
 	protected MemoryAddressListValue() {
 	}
 
 	public MemoryAddressListValue(final Collection<XAddress> content) {
-		this.list = content.toArray(new XAddress[content.size()]);
+		super(PersistentList.<XAddress> from(content));
 	}
 
-	@SuppressWarnings("unused")
-	private MemoryAddressListValue(final int length) {
-		this.list = new XAddress[length];
+	public MemoryAddressListValue(final XAddress[] content) {
+		super(PersistentList.<XAddress> from(content));
 	}
 
-	public MemoryAddressListValue(final XAddress[] content) {
-		this.list = new XAddress[content.length];
-		System.arraycopy(content, 0, this.list, 0, content.length);
+	protected MemoryAddressListValue(final PersistentList<XAddress> list) {
+		super(list);
 	}
 
 	@Override
 	public XAddressListValue add(final int index, final XAddress entry) {
-		final XAddress[] newList = createArrayWithEntryInsertedAtPosition(this.list, index, entry);
-		return new MemoryAddressListValue(newList);
+		return new MemoryAddressListValue(this.list.insert(index, entry));
 	}
 
 	@Override
 	public XAddressListValue add(final XAddress entry) {
-		return add(this.list.length, entry);
+		return add(size(), entry);
 	}
 
 	@Override
 	public XAddress[] contents() {
-		final XAddress[] array = new XAddress[this.list.length];
-		System.arraycopy(this.list, 0, array, 0, this.list.length);
+		final XAddress[] array = new XAddress[size()];
+		fillArray(array);
 		return array;
 	}
 
@@ -93,11 +87,6 @@ public class MemoryAddressListValue extends MemoryListValue<XAddress> implements
 		        && XI.equalsIterator(iterator(), ((XAddressListValue)other).iterator());
 	}
 
-	@Override
-	public XAddress get(final int index) {
-		return this.list[index];
-	}
-
 	@Override
 	public ValueType getComponentType() {
 		return ValueType.Address;
@@ -110,13 +99,12 @@ public class MemoryAddressListValue extends MemoryListValue<XAddress> implements
 
 	@Override
 	public int hashCode() {
-		return Arrays.hashCode(this.list);
+		return getHashCode();
 	}
 
 	@Override
 	public XAddressListValue remove(final int index) {
-		final XAddress[] newList = createArrayWithEntryRemovedAtPosition(contents(), index);
-		return new MemoryAddressListValue(newList);
+		return new MemoryAddressListValue(this.list.remove(index));
 	}
 
 	@Override
@@ -128,19 +116,9 @@ public class MemoryAddressListValue extends MemoryListValue<XAddress> implements
 		return remove(index);
 	}
 
-	@Override
-	public int size() {
-		return this.list.length;
-	}
-
 	@Override
 	public XAddress[] toArray() {
 		return contents();
 	}
 
-	@Override
-	public String toString() {
-		return Arrays.toString(this.list);
-	}
-
 }
@@ -17,7 +17,7 @@ import org.xydra.base.value.XAddressSetValue;
 public class MemoryAddressSetValue extends MemorySetValue<XAddress> implements XAddressSetValue,
         Serializable {
 
-	private static final long serialVersionUID = -83885798275571937L;
+	private static final long serialVersionUID = 3829159229910879827L;
 
 	// empty constructor for GWT-Serializable
 	protected MemoryAddressSetValue() {
@@ -31,11 +31,16 @@ public class MemoryAddressSetValue extends MemorySetValue<XAddress> implements X
 		super(contents);
 	}
 
+	private MemoryAddressSetValue(final MemoryAddressSetValue base, final XAddress entry, final boolean add) {
+		super(base, entry, add);
+	}
+
 	@Override
 	public XAddressSetValue add(final XAddress entry) {
-		final MemoryAddressSetValue v = new MemoryAddressSetValue(this.set);
-		v.set.add(entry);
-		return v;
+		if(contains(entry)) {
+			return this;
+		}
+		return new MemoryAddressSetValue(this, entry, true);
 	}
 
 	@Override
@@ -65,9 +70,10 @@ public class MemoryAddressSetValue extends MemorySetValue<XAddress> implements X
 
 	@Override
 	public XAddressSetValue remove(final XAddress entry) {
-		final MemoryAddressSetValue v = new MemoryAddressSetValue(this.set);
-		v.set.remove(entry);
-		return v;
+		if(!contains(entry)) {
+			return this;
+		}
+		return new MemoryAddressSetValue(this, entry, false);
 	}
 
 	@Override
@@ -11,6 +11,8 @@ import org.xydra.base.XAddress;
 import org.xydra.base.value.ValueType;
 import org.xydra.base.value.XAddressSortedSetValue;
 import org.xydra.base.value.XIdSortedSetValue;
+import org.xydra.index.impl.PersistentHashMap;
+import org.xydra.index.impl.PersistentList;
 
 
 /**
@@ -22,7 +24,13 @@ import org.xydra.base.value.XIdSortedSetValue;
 public class MemoryAddressSortedSetValue extends MemoryAddressListValue implements
         XAddressSortedSetValue, Serializable {
 
-	private static final long serialVersionUID = -83885798275571937L;
+	private static final long serialVersionUID = 1325055911989180999L;
+
+	/**
+	 * How often each non-null entry occurs, so that add and contains do not
+	 * need to scan the list. Not serialised, built again on first use.
+	 */
+	private transient volatile PersistentHashMap<XAddress,Integer> counts;
 
 	// empty constructor for GWT-Serializable
 	protected MemoryAddressSortedSetValue() {
@@ -36,15 +44,50 @@ public class MemoryAddressSortedSetValue extends MemoryAddressListValue implemen
 		super(contents);
 	}
 
+	private MemoryAddressSortedSetValue(final PersistentList<XAddress> list,
+	        final PersistentHashMap<XAddress,Integer> counts) {
+		super(list);
+		this.counts = counts;
+	}
+
+	/**
+	 * @return how often each non-null entry occurs in the list, built on first
+	 *         use
+	 */
+	private PersistentHashMap<XAddress,Integer> counts() {
+		PersistentHashMap<XAddress,Integer> c = this.counts;
+		if(c == null) {
+			// nodes owned by this token are changed in place while building
+			final Object edit = new Object();
+			c = PersistentHashMap.empty();
+			for(final XAddress e : this.list) {
+				if(e != null) {
+					final Integer count = c.get(e);
+					c = c.put(edit, e, count == null ? 1 : count + 1);
+				}
+			}
+			this.counts = c;
+		}
+		return c;
+	}
+
+	@Override
+	public boolean contains(final XAddress elem) {
+		if(elem == null) {
+			return super.contains(elem);
+		}
+		return counts().containsKey(elem);
+	}
+
 	@Override
 	public MemoryAddressSortedSetValue add(final XAddress entry) {
 		if(contains(entry)) {
 			// no need to add it
 			return this;
+		} else if(entry == null) {
+			return new MemoryAddressSortedSetValue(this.list.add(entry), counts());
 		} else {
-			final XAddress[] newList = MemoryAddressListValue.createArrayWithEntryInsertedAtPosition(
-			        contents(), contents().length, entry);
-			return new MemoryAddressSortedSetValue(newList);
+			return new MemoryAddressSortedSetValue(this.list.add(entry), counts().put(entry, 1));
 		}
 	}
 
@@ -55,16 +98,19 @@ public class MemoryAddressSortedSetValue extends MemoryAddressListValue implemen
 
 	@Override
 	public MemoryAddressSortedSetValue remove(final XAddress entry) {
-		// find it
-		final int index = indexOf(entry);
-		if(index == -1) {
+		if(!contains(entry)) {
 			// not possible to remove it
 			return this;
-		} else {
-			final XAddress[] newList = MemoryAddressListValue.createArrayWithEntryRemovedAtPosition(
-			        contents(), index);
-			return new MemoryAddressSortedSetValue(newList);
 		}
+		// find it
+		final int index = indexOf(entry);
+		if(entry == null) {
+			return new MemoryAddressSortedSetValue(this.list.remove(index), counts());
+		}
+		final PersistentHashMap<XAddress,Integer> c = counts();
+		final int count = c.get(entry);
+		return new MemoryAddressSortedSetValue(this.list.remove(index), count == 1 ? c.remove(entry)
+	        : c.put(entry, count - 1));
 	}
 
 	@Override
@@ -1,12 +1,12 @@
 package org.xydra.base.value.impl.memory;
 
 import java.io.Serializable;
-import java.util.Arrays;
 import java.util.Collection;
 
 import org.xydra.base.value.ValueType;
 import org.xydra.base.value.XBooleanListValue;
 import org.xydra.index.XI;
+import org.xydra.index.impl.PersistentList;
 
 
 /**
@@ -19,54 +19,59 @@ import org.xydra.index.XI;
 public class MemoryBooleanListValue extends MemoryListValue<Boolean> implements XBooleanListValue,
         Serializable {
 
-	private static final long serialVersionUID = -2012063819510070665L;
-
-	// non-final to be GWT-Serializable
-	private boolean[] list;
+	private static final long serialVersionUID = -1177387675028518829L;
 
 	// empty constructor for GWT-Serializable
 	protected MemoryBooleanListValue() {
 	}
 
+	public MemoryBooleanListValue(final Collection<Boolean> content) {
+		super(PersistentList.<Boolean> from(box(content)));
+	}
+
 	public MemoryBooleanListValue(final boolean[] content) {
-		this.list = new boolean[content.length];
-		System.arraycopy(content, 0, this.list, 0, content.length);
+		super(PersistentList.<Boolean> from(box(content)));
 	}
 
-	public MemoryBooleanListValue(final Collection<Boolean> content) {
-		this.list = new boolean[content.size()];
+	private MemoryBooleanListValue(final PersistentList<Boolean> list) {
+		super(list);
+	}
+
+	private static Boolean[] box(final Collection<Boolean> content) {
+		final Boolean[] array = new Boolean[content.size()];
 		int i = 0;
+		// fails on null entries
 		for(final boolean b : content) {
-			this.list[i++] = b;
+			array[i++] = b;
 		}
+		return array;
 	}
 
-	private MemoryBooleanListValue(final int length) {
-		this.list = new boolean[length];
+	private static Boolean[] box(final boolean[] content) {
+		final Boolean[] array = new Boolean[content.length];
+		for(int i = 0; i < content.length; i++) {
+			array[i] = content[i];
+		}
+		return array;
 	}
 
 	@Override
-	public XBooleanListValue add(final Boolean entry) {
-		return add(this.list.length, entry);
+	public XBooleanListValue add(final int index, final Boolean entry) {
+		return new MemoryBooleanListValue(this.list.insert(index, entry));
 	}
 
 	@Override
-	public XBooleanListValue add(final int index, final Boolean entry) {
-		final int size = this.list.length;
-		if(index < 0 || index > size) {
-			throw new IndexOutOfBoundsException();
-		}
-		final MemoryBooleanListValue v = new MemoryBooleanListValue(size + 1);
-		System.arraycopy(this.list, 0, v.list, 0, index);
-		v.list[index] = entry;
-		System.arraycopy(this.list, index, v.list, index + 1, size - index);
-		return v;
+	public XBooleanListValue add(final Boolean entry) {
+		return add(size(), entry);
 	}
 
 	@Override
 	public boolean[] contents() {
-		final boolean[] array = new boolean[this.list.length];
-		System.arraycopy(this.list, 0, array, 0, this.list.length);
+		final boolean[] array = new boolean[size()];
+		int i = 0;
+		for(final boolean e : this.list) {
+			array[i++] = e;
+		}
 		return array;
 	}
 
@@ -76,11 +81,6 @@ public class MemoryBooleanListValue extends MemoryListValue<Boolean> implements
 		        && XI.equalsIterator(iterator(), ((XBooleanListValue)other).iterator());
 	}
 
-	@Override
-	public Boolean get(final int index) {
-		return this.list[index];
-	}
-
 	@Override
 	public ValueType getComponentType() {
 		return ValueType.Boolean;
@@ -93,7 +93,12 @@ public class MemoryBooleanListValue extends MemoryListValue<Boolean> implements
 
 	@Override
 	public int hashCode() {
-		return Arrays.hashCode(this.list);
+		return getHashCode();
+	}
+
+	@Override
+	public XBooleanListValue remove(final int index) {
+		return new MemoryBooleanListValue(this.list.remove(index));
 	}
 
 	@Override
@@ -105,33 +110,11 @@ public class MemoryBooleanListValue extends MemoryListValue<Boolean> implements
 		return remove(index);
 	}
 
-	@Override
-	public XBooleanListValue remove(final int index) {
-		final int size = this.list.length;
-		if(index < 0 || index >= size) {
-			throw new IndexOutOfBoundsException();
-		}
-		final MemoryBooleanListValue v = new MemoryBooleanListValue(size - 1);
-		System.arraycopy(this.list, 0, v.list, 0, index);
-		System.arraycopy(this.list, index + 1, v.list, index, size - index - 1);
-		return v;
-	}
-
-	@Override
-	public int size() {
-		return this.list.length;
-	}
-
 	@Override
 	public Boolean[] toArray() {
-		final Boolean[] array = new Boolean[this.list.length];
+		final Boolean[] array = new Boolean[size()];
 		fillArray(array);
 		return array;
 	}
 
-	@Override
-	public String toString() {
-		return Arrays.toString(this.list);
-	}
-
 }
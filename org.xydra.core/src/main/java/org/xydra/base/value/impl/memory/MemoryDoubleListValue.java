@@ -1,12 +1,12 @@
 package org.xydra.base.value.impl.memory;
 
 import java.io.Serializable;
-import java.util.Arrays;
 import java.util.Collection;
 
 import org.xydra.base.value.ValueType;
 import org.xydra.base.value.XDoubleListValue;
 import org.xydra.index.XI;
+import org.xydra.index.impl.PersistentList;
 
 
 /**
@@ -19,54 +19,59 @@ import org.xydra.index.XI;
 public class MemoryDoubleListValue extends MemoryListValue<Double> implements XDoubleListValue,
         Serializable {
 
-	private static final long serialVersionUID = -2339822884334461166L;
-
-	// non-final to be GWT-Serializable
-	private double[] list;
+	private static final long serialVersionUID = 4164596580995592642L;
 
 	// empty constructor for GWT-Serializable
 	protected MemoryDoubleListValue() {
 	}
 
 	public MemoryDoubleListValue(final Collection<Double> content) {
-		this.list = new double[content.size()];
-		int i = 0;
-		for(final double b : content) {
-			this.list[i++] = b;
-		}
+		super(PersistentList.<Double> from(box(content)));
 	}
 
 	public MemoryDoubleListValue(final double[] content) {
-		this.list = new double[content.length];
-		System.arraycopy(content, 0, this.list, 0, content.length);
+		super(PersistentList.<Double> from(box(content)));
 	}
 
-	private MemoryDoubleListValue(final int length) {
-		this.list = new double[length];
+	private MemoryDoubleListValue(final PersistentList<Double> list) {
+		super(list);
 	}
 
-	@Override
-	public XDoubleListValue add(final Double entry) {
-		return add(this.list.length, entry);
+	private static Double[] box(final Collection<Double> content) {
+		final Double[] array = new Double[content.size()];
+		int i = 0;
+		// fails on null entries
+		for(final double b : content) {
+			array[i++] = b;
+		}
+		return array;
+	}
+
+	private static Double[] box(final double[] content) {
+		final Double[] array = new Double[content.length];
+		for(int i = 0; i < content.length; i++) {
+			array[i] = content[i];
+		}
+		return array;
 	}
 
 	@Override
 	public XDoubleListValue add(final int index, final Double entry) {
-		final int size = this.list.length;
-		if(index < 0 || index > size) {
-			throw new IndexOutOfBoundsException();
-		}
-		final MemoryDoubleListValue v = new MemoryDoubleListValue(size + 1);
-		System.arraycopy(this.list, 0, v.list, 0, index);
-		v.list[index] = entry;
-		System.arraycopy(this.list, index, v.list, index + 1, size - index);
-		return v;
+		return new MemoryDoubleListValue(this.list.insert(index, entry));
+	}
+
+	@Override
+	public XDoubleListValue add(final Double entry) {
+		return add(size(), entry);
 	}
 
 	@Override
 	public double[] contents() {
-		final double[] array = new double[this.list.length];
-		System.arraycopy(this.list, 0, array, 0, this.list.length);
+		final double[] array = new double[size()];
+		int i = 0;
+		for(final double e : this.list) {
+			array[i++] = e;
+		}
 		return array;
 	}
 
@@ -76,11 +81,6 @@ public class MemoryDoubleListValue extends MemoryListValue<Double> implements XD
 		        && XI.equalsIterator(iterator(), ((XDoubleListValue)other).iterator());
 	}
 
-	@Override
-	public Double get(final int index) {
-		return this.list[index];
-	}
-
 	@Override
 	public ValueType getComponentType() {
 		return ValueType.Double;
@@ -93,7 +93,12 @@ public class MemoryDoubleListValue extends MemoryListValue<Double> implements XD
 
 	@Override
 	public int hashCode() {
-		return Arrays.hashCode(this.list);
+		return getHashCode();
+	}
+
+	@Override
+	public XDoubleListValue remove(final int index) {
+		return new MemoryDoubleListValue(this.list.remove(index));
 	}
 
 	@Override
@@ -105,33 +110,16 @@ public class MemoryDoubleListValue extends MemoryListValue<Double> implements XD
 		return remove(index);
 	}
 
-	@Override
-	public XDoubleListValue remove(final int index) {
-		final int size = this.list.length;
-		if(index < 0 || index >= size) {
-			throw new IndexOutOfBoundsException();
-		}
-		final MemoryDoubleListValue v = new MemoryDoubleListValue(size - 1);
-		System.arraycopy(this.list, 0, v.list, 0, index);
-		System.arraycopy(this.list, index + 1, v.list, index, size - index - 1);
-		return v;
-	}
-
-	@Override
-	public int size() {
-		return this.list.length;
-	}
-
 	@Override
 	public Double[] toArray() {
-		final Double[] array = new Double[this.list.length];
+		final Double[] array = new Double[size()];
 		fillArray(array);
 		return array;
 	}
 
 	@Override
 	public Number[] toNumberArray() {
-		final Number[] array = new Number[this.list.length];
+		final Number[] array = new Number[size()];
 		int i = 0;
 		for(final Number e : this) {
 			array[i++] = e;
@@ -139,9 +127,4 @@ public class MemoryDoubleListValue extends MemoryListValue<Double> implements XD
 		return array;
 	}
 
-	@Override
-	public String toString() {
-		return Arrays.toString(this.list);
-	}
-
 }
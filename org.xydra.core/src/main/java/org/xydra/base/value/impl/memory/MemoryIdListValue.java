@@ -1,13 +1,13 @@
 package org.xydra.base.value.impl.memory;
 
 import java.io.Serializable;
-import java.util.Arrays;
 import java.util.Collection;
 
 import org.xydra.base.XId;
 import org.xydra.base.value.ValueType;
 import org.xydra.base.value.XIdListValue;
 import org.xydra.index.XI;
+import org.xydra.index.impl.PersistentList;
 
 
 /**
@@ -19,7 +19,7 @@ import org.xydra.index.XI;
  */
 public class MemoryIdListValue extends MemoryListValue<XId> implements XIdListValue, Serializable {
 
-	private static final long serialVersionUID = -7641986388917629097L;
+	private static final long serialVersionUID = -1996027448979114879L;
 
 	public static final XId[] createArrayWithEntryInsertedAtPosition(final XId[] array, final int position,
 	        final XId entry) {
@@ -45,42 +45,36 @@ public class MemoryIdListValue extends MemoryListValue<XId> implements XIdListVa
 		return newList;
 	}
 
-	// non-final to be GWT-Serializable
-	private XId[] list;
-
 	// empty constructor for GWT-Serializable
 	protected MemoryIdListValue() {
 	}
 
 	public MemoryIdListValue(final Collection<XId> content) {
-		this.list = content.toArray(new XId[content.size()]);
+		super(PersistentList.<XId> from(content));
 	}
 
-	@SuppressWarnings("unused")
-	private MemoryIdListValue(final int length) {
-		this.list = new XId[length];
+	public MemoryIdListValue(final XId[] content) {
+		super(PersistentList.<XId> from(content));
 	}
 
-	public MemoryIdListValue(final XId[] content) {
-		this.list = new XId[content.length];
-		System.arraycopy(content, 0, this.list, 0, content.length);
+	protected MemoryIdListValue(final PersistentList<XId> list) {
+		super(list);
 	}
 
 	@Override
 	public XIdListValue add(final int index, final XId entry) {
-		final XId[] newList = createArrayWithEntryInsertedAtPosition(this.list, index, entry);
-		return new MemoryIdListValue(newList);
+		return new MemoryIdListValue(this.list.insert(index, entry));
 	}
 
 	@Override
 	public XIdListValue add(final XId entry) {
-		return add(this.list.length, entry);
+		return add(size(), entry);
 	}
 
 	@Override
 	public XId[] contents() {
-		final XId[] array = new XId[this.list.length];
-		System.arraycopy(this.list, 0, array, 0, this.list.length);
+		final XId[] array = new XId[size()];
+		fillArray(array);
 		return array;
 	}
 
@@ -90,11 +84,6 @@ public class MemoryIdListValue extends MemoryListValue<XId> implements XIdListVa
 		        && XI.equalsIterator(iterator(), ((XIdListValue)other).iterator());
 	}
 
-	@Override
-	public XId get(final int index) {
-		return this.list[index];
-	}
-
 	@Override
 	public ValueType getComponentType() {
 		return ValueType.Id;
@@ -107,13 +96,12 @@ public class MemoryIdListValue extends MemoryListValue<XId> implements XIdListVa
 
 	@Override
 	public int hashCode() {
-		return Arrays.hashCode(this.list);
+		return getHashCode();
 	}
 
 	@Override
 	public XIdListValue remove(final int index) {
-		final XId[] newList = createArrayWithEntryRemovedAtPosition(contents(), index);
-		return new MemoryIdListValue(newList);
+		return new MemoryIdListValue(this.list.remove(index));
 	}
 
 	@Override
@@ -125,19 +113,9 @@ public class MemoryIdListValue extends MemoryListValue<XId> implements XIdListVa
 		return remove(index);
 	}
 
-	@Override
-	public int size() {
-		return this.list.length;
-	}
-
 	@Override
 	public XId[] toArray() {
 		return contents();
 	}
 
-	@Override
-	public String toString() {
-		return Arrays.toString(this.list);
-	}
-
 }
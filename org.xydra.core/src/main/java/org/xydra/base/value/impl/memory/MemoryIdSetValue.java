@@ -16,7 +16,7 @@ import org.xydra.base.value.XIdSetValue;
  */
 public class MemoryIdSetValue extends MemorySetValue<XId> implements XIdSetValue, Serializable {
 
-    private static final long serialVersionUID = -83885798275571937L;
+    private static final long serialVersionUID = 4347768660146067954L;
 
     // empty constructor for GWT-Serializable
     protected MemoryIdSetValue() {
@@ -30,11 +30,16 @@ public class MemoryIdSetValue extends MemorySetValue<XId> implements XIdSetValue
         super(contents);
     }
 
+    private MemoryIdSetValue(final MemoryIdSetValue base, final XId entry, final boolean add) {
+        super(base, entry, add);
+    }
+
     @Override
     public XIdSetValue add(final XId entry) {
-        final MemoryIdSetValue v = new MemoryIdSetValue(this.set);
-        v.set.add(entry);
-        return v;
+        if(contains(entry)) {
+            return this;
+        }
+        return new MemoryIdSetValue(this, entry, true);
     }
 
     @Override
@@ -64,9 +69,10 @@ public class MemoryIdSetValue extends MemorySetValue<XId> implements XIdSetValue
 
     @Override
     public XIdSetValue remove(final XId entry) {
-        final MemoryIdSetValue v = new MemoryIdSetValue(this.set);
-        v.set.remove(entry);
-        return v;
+        if(!contains(entry)) {
+            return this;
+        }
+        return new MemoryIdSetValue(this, entry, false);
     }
 
     @Override
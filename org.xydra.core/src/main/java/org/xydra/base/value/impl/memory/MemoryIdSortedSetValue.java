@@ -13,6 +13,8 @@ import org.xydra.base.value.XIdSortedSetValue;
 import org.xydra.base.value.XSetDiffable;
 import org.xydra.base.value.XSetValue;
 import org.xydra.base.value.impl.memory.MemorySetValue.SetDiff;
+import org.xydra.index.impl.PersistentHashMap;
+import org.xydra.index.impl.PersistentList;
 
 
 /**
@@ -24,7 +26,13 @@ import org.xydra.base.value.impl.memory.MemorySetValue.SetDiff;
 public class MemoryIdSortedSetValue extends MemoryIdListValue implements XIdSortedSetValue,
         Serializable {
 
-    private static final long serialVersionUID = -83885798275571937L;
+    private static final long serialVersionUID = 3682736105833222647L;
+
+    /**
+     * How often each non-null entry occurs, so that add and contains do not
+     * need to scan the list. Not serialised, built again on first use.
+     */
+    private transient volatile PersistentHashMap<XId,Integer> counts;
 
     // empty constructor for GWT-Serializable
     protected MemoryIdSortedSetValue() {
@@ -38,15 +46,50 @@ public class MemoryIdSortedSetValue extends MemoryIdListValue implements XIdSort
         super(contents);
     }
 
+    private MemoryIdSortedSetValue(final PersistentList<XId> list,
+            final PersistentHashMap<XId,Integer> counts) {
+        super(list);
+        this.counts = counts;
+    }
+
+    /**
+     * @return how often each non-null entry occurs in the list, built on first
+     *         use
+     */
+    private PersistentHashMap<XId,Integer> counts() {
+        PersistentHashMap<XId,Integer> c = this.counts;
+        if(c == null) {
+            // nodes owned by this token are changed in place while building
+            final Object edit = new Object();
+            c = PersistentHashMap.empty();
+            for(final XId e : this.list) {
+                if(e != null) {
+                    final Integer count = c.get(e);
+                    c = c.put(edit, e, count == null ? 1 : count + 1);
+                }
+            }
+            this.counts = c;
+        }
+        return c;
+    }
+
+    @Override
+    public boolean contains(final XId elem) {
+        if(elem == null) {
+            return super.contains(elem);
+        }
+        return counts().containsKey(elem);
+    }
+
     @Override
     public MemoryIdSortedSetValue add(final XId entry) {
         if(contains(entry)) {
             // no need to add it
             return this;
+        } else if(entry == null) {
+            return new MemoryIdSortedSetValue(this.list.add(entry), counts());
         } else {
-            final XId[] newList = MemoryIdListValue.createArrayWithEntryInsertedAtPosition(
-                    contents(), contents().length, entry);
-            return new MemoryIdSortedSetValue(newList);
+            return new MemoryIdSortedSetValue(this.list.add(entry), counts().put(entry, 1));
         }
     }
 
@@ -57,16 +100,19 @@ public class MemoryIdSortedSetValue extends MemoryIdListValue implements XIdSort
 
     @Override
     public MemoryIdSortedSetValue remove(final XId entry) {
-        // find it
-        final int index = indexOf(entry);
-        if(index == -1) {
+        if(!contains(entry)) {
             // not possible to remove it
             return this;
-        } else {
-            final XId[] newList = MemoryIdListValue.createArrayWithEntryRemovedAtPosition(
-                    contents(), index);
-            return new MemoryIdSortedSetValue(newList);
         }
+        // find it
+        final int index = indexOf(entry);
+        if(entry == null) {
+            return new MemoryIdSortedSetValue(this.list.remove(index), counts());
+        }
+        final PersistentHashMap<XId,Integer> c = counts();
+        final int count = c.get(entry);
+        return new MemoryIdSortedSetValue(this.list.remove(index), count == 1 ? c.remove(entry)
+            : c.put(entry, count - 1));
     }
 
     @Override
@@ -1,12 +1,12 @@
 package org.xydra.base.value.impl.memory;
 
 import java.io.Serializable;
-import java.util.Arrays;
 import java.util.Collection;
 
 import org.xydra.base.value.ValueType;
 import org.xydra.base.value.XIntegerListValue;
 import org.xydra.index.XI;
+import org.xydra.index.impl.PersistentList;
 
 
 /**
@@ -18,54 +18,59 @@ import org.xydra.index.XI;
 public class MemoryIntegerListValue extends MemoryListValue<Integer> implements XIntegerListValue,
         Serializable {
 
-	private static final long serialVersionUID = -2698183990443882191L;
-
-	// non-final to be GWT-Serializable
-	private int[] list;
+	private static final long serialVersionUID = -1108611763305260494L;
 
 	// empty constructor for GWT-Serializable
 	protected MemoryIntegerListValue() {
 	}
 
 	public MemoryIntegerListValue(final Collection<Integer> content) {
-		this.list = new int[content.size()];
+		super(PersistentList.<Integer> from(box(content)));
+	}
+
+	public MemoryIntegerListValue(final int[] content) {
+		super(PersistentList.<Integer> from(box(content)));
+	}
+
+	private MemoryIntegerListValue(final PersistentList<Integer> list) {
+		super(list);
+	}
+
+	private static Integer[] box(final Collection<Integer> content) {
+		final Integer[] array = new Integer[content.size()];
 		int i = 0;
+		// fails on null entries
 		for(final int b : content) {
-			this.list[i++] = b;
+			array[i++] = b;
 		}
+		return array;
 	}
 
-	private MemoryIntegerListValue(final int length) {
-		this.list = new int[length];
-	}
-
-	public MemoryIntegerListValue(final int[] content) {
-		this.list = new int[content.length];
-		System.arraycopy(content, 0, this.list, 0, content.length);
+	private static Integer[] box(final int[] content) {
+		final Integer[] array = new Integer[content.length];
+		for(int i = 0; i < content.length; i++) {
+			array[i] = content[i];
+		}
+		return array;
 	}
 
 	@Override
 	public XIntegerListValue add(final int index, final Integer entry) {
-		final int size = this.list.length;
-		if(index < 0 || index > size) {
-			throw new IndexOutOfBoundsException();
-		}
-		final MemoryIntegerListValue v = new MemoryIntegerListValue(size + 1);
-		System.arraycopy(this.list, 0, v.list, 0, index);
-		v.list[index] = entry;
-		System.arraycopy(this.list, index, v.list, index + 1, size - index);
-		return v;
+		return new MemoryIntegerListValue(this.list.insert(index, entry));
 	}
 
 	@Override
 	public XIntegerListValue add(final Integer entry) {
-		return add(this.list.length, entry);
+		return add(size(), entry);
 	}
 
 	@Override
 	public int[] contents() {
-		final int[] array = new int[this.list.length];
-		System.arraycopy(this.list, 0, array, 0, this.list.length);
+		final int[] array = new int[size()];
+		int i = 0;
+		for(final int e : this.list) {
+			array[i++] = e;
+		}
 		return array;
 	}
 
@@ -75,11 +80,6 @@ public class MemoryIntegerListValue extends MemoryListValue<Integer> implements
 		        && XI.equalsIterator(iterator(), ((XIntegerListValue)other).iterator());
 	}
 
-	@Override
-	public Integer get(final int index) {
-		return this.list[index];
-	}
-
 	@Override
 	public ValueType getComponentType() {
 		return ValueType.Integer;
@@ -92,19 +92,12 @@ public class MemoryIntegerListValue extends MemoryListValue<Integer> implements
 
 	@Override
 	public int hashCode() {
-		return Arrays.hashCode(this.list);
+		return getHashCode();
 	}
 
 	@Override
 	public XIntegerListValue remove(final int index) {
-		final int size = this.list.length;
-		if(index < 0 || index >= size) {
-			throw new IndexOutOfBoundsException();
-		}
-		final MemoryIntegerListValue v = new MemoryIntegerListValue(size - 1);
-		System.arraycopy(this.list, 0, v.list, 0, index);
-		System.arraycopy(this.list, index + 1, v.list, index, size - index - 1);
-		return v;
+		return new MemoryIntegerListValue(this.list.remove(index));
 	}
 
 	@Override
@@ -116,21 +109,16 @@ public class MemoryIntegerListValue extends MemoryListValue<Integer> implements
 		return remove(index);
 	}
 
-	@Override
-	public int size() {
-		return this.list.length;
-	}
-
 	@Override
 	public Integer[] toArray() {
-		final Integer[] array = new Integer[this.list.length];
+		final Integer[] array = new Integer[size()];
 		fillArray(array);
 		return array;
 	}
 
 	@Override
 	public Number[] toNumberArray() {
-		final Number[] array = new Number[this.list.length];
+		final Number[] array = new Number[size()];
 		int i = 0;
 		for(final Number e : this) {
 			array[i++] = e;
@@ -138,9 +126,4 @@ public class MemoryIntegerListValue extends MemoryListValue<Integer> implements
 		return array;
 	}
 
-	@Override
-	public String toString() {
-		return Arrays.toString(this.list);
-	}
-
 }
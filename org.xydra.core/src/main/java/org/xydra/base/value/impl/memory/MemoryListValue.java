@@ -4,13 +4,16 @@ import java.io.Serializable;
 import java.util.Iterator;
 
 import org.xydra.base.value.XListValue;
-import org.xydra.base.value.XListValueIterator;
 import org.xydra.index.XI;
+import org.xydra.index.impl.PersistentList;
 import org.xydra.sharedutils.XyAssert;
 
 
 /**
- * A generic implementation for most parts of a {@link XListValue}.
+ * A generic implementation for most parts of a {@link XListValue}, backed by a
+ * {@link PersistentList}. Adding or removing an entry creates a new value that
+ * shares all but O(log n) of its structure with the old one, so building a
+ * list entry by entry no longer copies the whole list each time.
  *
  * @author dscharrer
  *
@@ -20,19 +23,23 @@ public abstract class MemoryListValue<E> implements XListValue<E>, Serializable
 
 	private static final long serialVersionUID = 7285839520276137162L;
 
+	/*
+	 * non-final to be set when deserialised. GWT cannot serialise the list, see
+	 * MemoryListValue_CustomFieldSerializer
+	 */
+	protected PersistentList<E> list = PersistentList.empty();
+
 	// empty constructor for GWT-Serializable
 	protected MemoryListValue() {
 	}
 
+	protected MemoryListValue(final PersistentList<E> list) {
+		this.list = list;
+	}
+
 	@Override
 	public boolean contains(final E elem) {
-		final int s = size();
-		for(int i = 0; i < s; i++) {
-			if(XI.equals(get(i), elem)) {
-				return true;
-			}
-		}
-		return false;
+		return indexOf(elem) >= 0;
 	}
 
 	protected void fillArray(final E[] array) {
@@ -43,13 +50,31 @@ public abstract class MemoryListValue<E> implements XListValue<E>, Serializable
 		}
 	}
 
+	@Override
+	public E get(final int index) {
+		return this.list.get(index);
+	}
+
+	/**
+	 * @return the same hash code as {@link java.util.List#hashCode()} and
+	 *         {@link java.util.Arrays#hashCode(Object[])} of the entries
+	 */
+	protected int getHashCode() {
+		int hash = 1;
+		for(final E e : this.list) {
+			hash = 31 * hash + (e == null ? 0 : e.hashCode());
+		}
+		return hash;
+	}
+
 	@Override
 	public int indexOf(final E elem) {
-		final int s = size();
-		for(int i = 0; i < s; i++) {
-			if(XI.equals(get(i), elem)) {
+		int i = 0;
+		for(final E e : this.list) {
+			if(XI.equals(e, elem)) {
 				return i;
 			}
+			i++;
 		}
 		return -1;
 	}
@@ -61,12 +86,12 @@ public abstract class MemoryListValue<E> implements XListValue<E>, Serializable
 
 	@Override
 	public Iterator<E> iterator() {
-		return new XListValueIterator<E>(this);
+		return this.list.iterator();
 	}
 
 	@Override
 	public int lastIndexOf(final E elem) {
-		for(int i = size(); i >= 0; i--) {
+		for(int i = size() - 1; i >= 0; i--) {
 			if(XI.equals(get(i), elem)) {
 				return i;
 			}
@@ -74,4 +99,14 @@ public abstract class MemoryListValue<E> implements XListValue<E>, Serializable
 		return -1;
 	}
 
+	@Override
+	public int size() {
+		return this.list.size();
+	}
+
+	@Override
+	public String toString() {
+		return this.list.toString();
+	}
+
 }
@@ -0,0 +1,43 @@
+package org.xydra.base.value.impl.memory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xydra.index.impl.PersistentList;
+
+import com.google.gwt.user.client.rpc.SerializationException;
+import com.google.gwt.user.client.rpc.SerializationStreamReader;
+import com.google.gwt.user.client.rpc.SerializationStreamWriter;
+
+
+/**
+ * GWT-RPC serialisation of the entries of all {@link MemoryListValue}
+ * subclasses, including the sorted sets. The {@link PersistentList} behind
+ * them has final fields and no default constructor, so the entries are sent
+ * in order and the list is built again on the receiving side. The subclasses
+ * are instantiated via their empty constructors.
+ *
+ * @author xamde
+ */
+public class MemoryListValue_CustomFieldSerializer {
+
+	public static void serialize(final SerializationStreamWriter writer,
+	        final MemoryListValue<?> instance) throws SerializationException {
+		writer.writeInt(instance.size());
+		for(final Object e : instance) {
+			writer.writeObject(e);
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public static void deserialize(final SerializationStreamReader reader,
+	        final MemoryListValue instance) throws SerializationException {
+		final int size = reader.readInt();
+		final List<Object> entries = new ArrayList<Object>(size);
+		for(int i = 0; i < size; i++) {
+			entries.add(reader.readObject());
+		}
+		instance.list = PersistentList.from(entries);
+	}
+
+}
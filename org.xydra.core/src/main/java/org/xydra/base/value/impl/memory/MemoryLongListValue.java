@@ -1,12 +1,12 @@
 package org.xydra.base.value.impl.memory;
 
 import java.io.Serializable;
-import java.util.Arrays;
 import java.util.Collection;
 
 import org.xydra.base.value.ValueType;
 import org.xydra.base.value.XLongListValue;
 import org.xydra.index.XI;
+import org.xydra.index.impl.PersistentList;
 
 
 /**
@@ -18,54 +18,59 @@ import org.xydra.index.XI;
 public class MemoryLongListValue extends MemoryListValue<Long> implements XLongListValue,
         Serializable {
 
-	private static final long serialVersionUID = -3294191125211048647L;
-
-	// non-final to be GWT-Serializable
-	private long[] list;
+	private static final long serialVersionUID = 3723149190595139521L;
 
 	// empty constructor for GWT-Serializable
 	protected MemoryLongListValue() {
 	}
 
 	public MemoryLongListValue(final Collection<Long> content) {
-		this.list = new long[content.size()];
+		super(PersistentList.<Long> from(box(content)));
+	}
+
+	public MemoryLongListValue(final long[] content) {
+		super(PersistentList.<Long> from(box(content)));
+	}
+
+	private MemoryLongListValue(final PersistentList<Long> list) {
+		super(list);
+	}
+
+	private static Long[] box(final Collection<Long> content) {
+		final Long[] array = new Long[content.size()];
 		int i = 0;
+		// fails on null entries
 		for(final long b : content) {
-			this.list[i++] = b;
+			array[i++] = b;
 		}
+		return array;
 	}
 
-	private MemoryLongListValue(final int length) {
-		this.list = new long[length];
-	}
-
-	public MemoryLongListValue(final long[] content) {
-		this.list = new long[content.length];
-		System.arraycopy(content, 0, this.list, 0, content.length);
+	private static Long[] box(final long[] content) {
+		final Long[] array = new Long[content.length];
+		for(int i = 0; i < content.length; i++) {
+			array[i] = content[i];
+		}
+		return array;
 	}
 
 	@Override
 	public XLongListValue add(final int index, final Long entry) {
-		final int size = this.list.length;
-		if(index < 0 || index > size) {
-			throw new IndexOutOfBoundsException();
-		}
-		final MemoryLongListValue v = new MemoryLongListValue(size + 1);
-		System.arraycopy(this.list, 0, v.list, 0, index);
-		v.list[index] = entry;
-		System.arraycopy(this.list, index, v.list, index + 1, size - index);
-		return v;
+		return new MemoryLongListValue(this.list.insert(index, entry));
 	}
 
 	@Override
 	public XLongListValue add(final Long entry) {
-		return add(this.list.length, entry);
+		return add(size(), entry);
 	}
 
 	@Override
 	public long[] contents() {
-		final long[] array = new long[this.list.length];
-		System.arraycopy(this.list, 0, array, 0, this.list.length);
+		final long[] array = new long[size()];
+		int i = 0;
+		for(final long e : this.list) {
+			array[i++] = e;
+		}
 		return array;
 	}
 
@@ -75,11 +80,6 @@ public class MemoryLongListValue extends MemoryListValue<Long> implements XLongL
 		        && XI.equalsIterator(iterator(), ((XLongListValue)other).iterator());
 	}
 
-	@Override
-	public Long get(final int index) {
-		return this.list[index];
-	}
-
 	@Override
 	public ValueType getComponentType() {
 		return ValueType.Long;
@@ -92,19 +92,12 @@ public class MemoryLongListValue extends MemoryListValue<Long> implements XLongL
 
 	@Override
 	public int hashCode() {
-		return Arrays.hashCode(this.list);
+		return getHashCode();
 	}
 
 	@Override
 	public XLongListValue remove(final int index) {
-		final int size = this.list.length;
-		if(index < 0 || index >= size) {
-			throw new IndexOutOfBoundsException();
-		}
-		final MemoryLongListValue v = new MemoryLongListValue(size - 1);
-		System.arraycopy(this.list, 0, v.list, 0, index);
-		System.arraycopy(this.list, index + 1, v.list, index, size - index - 1);
-		return v;
+		return new MemoryLongListValue(this.list.remove(index));
 	}
 
 	@Override
@@ -116,21 +109,16 @@ public class MemoryLongListValue extends MemoryListValue<Long> implements XLongL
 		return remove(index);
 	}
 
-	@Override
-	public int size() {
-		return this.list.length;
-	}
-
 	@Override
 	public Long[] toArray() {
-		final Long[] array = new Long[this.list.length];
+		final Long[] array = new Long[size()];
 		fillArray(array);
 		return array;
 	}
 
 	@Override
 	public Number[] toNumberArray() {
-		final Number[] array = new Number[this.list.length];
+		final Number[] array = new Number[size()];
 		int i = 0;
 		for(final Number e : this) {
 			array[i++] = e;
@@ -138,9 +126,4 @@ public class MemoryLongListValue extends MemoryListValue<Long> implements XLongL
 		return array;
 	}
 
-	@Override
-	public String toString() {
-		return Arrays.toString(this.list);
-	}
-
 }
@@ -9,11 +9,14 @@ import java.util.Set;
 
 import org.xydra.base.value.XSetDiffable;
 import org.xydra.base.value.XSetValue;
+import org.xydra.index.impl.PersistentHashMap;
 
 
 /**
  * A generic implementation for most parts of a {@link XSetValue}, backed by a
- * {@link HashSet}.
+ * {@link PersistentHashMap}. Adding or removing an entry creates a new value
+ * that shares all but O(log n) of its structure with the old one instead of
+ * copying the whole set.
  *
  * @author dscharrer
  *
@@ -21,30 +24,96 @@ import org.xydra.base.value.XSetValue;
  */
 public abstract class MemorySetValue<E> implements XSetValue<E>, XSetDiffable<E>, Serializable {
 
-    private static final long serialVersionUID = -5921208010230423103L;
+    private static final long serialVersionUID = 4170745301929838915L;
 
-    // non-final to be GWT-Serializable
-    protected Set<E> set = new HashSet<E>();
+    /** stands in for null entries, which cannot be keys of the map */
+    private static final class NullEntry implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public boolean equals(final Object other) {
+            return other instanceof NullEntry;
+        }
+
+        @Override
+        public int hashCode() {
+            return 0;
+        }
+
+    }
+
+    private static final NullEntry NULL = new NullEntry();
+
+    private static Object toKey(final Object entry) {
+        return entry == null ? NULL : entry;
+    }
+
+    private static int hash(final Object entry) {
+        return entry == null ? 0 : entry.hashCode();
+    }
+
+    /*
+     * non-final to be set when deserialised. GWT cannot serialise the map, see
+     * MemorySetValue_CustomFieldSerializer
+     */
+    protected PersistentHashMap<Object,Boolean> set = PersistentHashMap.empty();
+
+    /** the sum of the hash codes of all entries, as in {@link Set#hashCode()} */
+    private int hash = 0;
 
     // empty constructor for GWT-Serializable
     protected MemorySetValue() {
     }
 
     public MemorySetValue(final Collection<E> contents) {
-        this.set.addAll(contents);
+        addAll(contents);
     }
 
     public MemorySetValue(final E[] contents) {
         this(Arrays.asList(contents));
     }
 
-    public boolean checkEquals(final XSetValue<E> other) {
-        if(other instanceof MemorySetValue<?>) {
-            return this.set.equals(((MemorySetValue<?>)other).set);
+    /**
+     * @param base
+     * @param entry which must be contained in base if it is removed and must
+     *            not be contained if it is added
+     * @param add true to add entry to base, false to remove it
+     */
+    protected MemorySetValue(final MemorySetValue<E> base, final E entry, final boolean add) {
+        if(add) {
+            this.set = base.set.put(toKey(entry), Boolean.TRUE);
+            this.hash = base.hash + hash(entry);
+        } else {
+            this.set = base.set.remove(toKey(entry));
+            this.hash = base.hash - hash(entry);
+        }
+    }
+
+    /**
+     * Adds the entries to this value while it is created, which includes
+     * deserialisation.
+     *
+     * @param contents
+     */
+    void addAll(final Collection<E> contents) {
+        // nodes owned by this token are changed in place while building
+        final Object edit = new Object();
+        for(final E e : contents) {
+            if(!contains(e)) {
+                this.set = this.set.put(edit, toKey(e), Boolean.TRUE);
+                this.hash += hash(e);
+            }
         }
+    }
+
+    public boolean checkEquals(final XSetValue<E> other) {
         if(size() != other.size()) {
             return false;
         }
+        if(other instanceof MemorySetValue<?> && this.hash != ((MemorySetValue<?>)other).hash) {
+            return false;
+        }
         for(final E e : other) {
             if(!contains(e)) {
                 return false;
@@ -55,11 +124,11 @@ public abstract class MemorySetValue<E> implements XSetValue<E>, XSetDiffable<E>
 
     @Override
     public boolean contains(final E elem) {
-        return this.set.contains(elem);
+        return this.set.containsKey(toKey(elem));
     }
 
     protected int getHashCode() {
-        return this.set.hashCode();
+        return this.hash;
     }
 
     @Override
@@ -69,7 +138,7 @@ public abstract class MemorySetValue<E> implements XSetValue<E>, XSetDiffable<E>
 
     @Override
     public Iterator<E> iterator() {
-        final Iterator<E> it = this.set.iterator();
+        final Iterator<Object> it = this.set.keyIterator();
         return new Iterator<E>() {
 
             @Override
@@ -77,9 +146,11 @@ public abstract class MemorySetValue<E> implements XSetValue<E>, XSetDiffable<E>
                 return it.hasNext();
             }
 
+            @SuppressWarnings("unchecked")
             @Override
             public E next() {
-                return it.next();
+                final Object key = it.next();
+                return key instanceof NullEntry ? null : (E)key;
             }
 
             @Override
@@ -95,20 +166,37 @@ public abstract class MemorySetValue<E> implements XSetValue<E>, XSetDiffable<E>
         return this.set.size();
     }
 
+    /**
+     * @param a of at least size()
+     * @return a
+     */
     protected E[] toArray(final E[] a) {
-        return this.set.toArray(a);
+        int i = 0;
+        for(final E e : this) {
+            a[i++] = e;
+        }
+        return a;
     }
 
     @Override
     public Set<E> toSet() {
-        final Set<E> copy = new HashSet<E>();
-        copy.addAll(this.set);
+        final Set<E> copy = new HashSet<E>(size() * 4 / 3 + 1);
+        for(final E e : this) {
+            copy.add(e);
+        }
         return copy;
     }
 
     @Override
     public String toString() {
-        return this.set.toString();
+        final StringBuilder b = new StringBuilder("[");
+        for(final E e : this) {
+            if(b.length() > 1) {
+                b.append(", ");
+            }
+            b.append(e);
+        }
+        return b.append("]").toString();
     }
 
     @Override
@@ -117,23 +205,23 @@ public abstract class MemorySetValue<E> implements XSetValue<E>, XSetDiffable<E>
         if(otherSet instanceof MemorySetValue) {
             // fast way
             final MemorySetValue<E> otherMemSet = (MemorySetValue<E>)otherSet;
-            for(final E e : this.set) {
-                if(!otherMemSet.set.contains(e)) {
+            for(final E e : this) {
+                if(!otherMemSet.contains(e)) {
                     diff.removed.add(e);
                 }
             }
-            for(final E e : otherMemSet.set) {
-                if(!this.set.contains(e)) {
+            for(final E e : otherMemSet) {
+                if(!contains(e)) {
                     diff.added.add(e);
                 }
             }
         } else {
             // generic way
             diff.added.addAll(otherSet.toSet());
-            diff.removed.addAll(this.set);
+            diff.removed.addAll(toSet());
             // remove (this set-intersection other) from added and removed
             diff.removed.removeAll(diff.added);
-            diff.added.removeAll(this.set);
+            diff.added.removeAll(toSet());
         }
         return diff;
     }
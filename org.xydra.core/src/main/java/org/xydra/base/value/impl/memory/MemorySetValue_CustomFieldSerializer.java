@@ -0,0 +1,41 @@
+package org.xydra.base.value.impl.memory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gwt.user.client.rpc.SerializationException;
+import com.google.gwt.user.client.rpc.SerializationStreamReader;
+import com.google.gwt.user.client.rpc.SerializationStreamWriter;
+
+
+/**
+ * GWT-RPC serialisation of the entries of all {@link MemorySetValue} subclasses.
+ * The {@link org.xydra.index.impl.PersistentHashMap} behind them has final
+ * fields and no default constructor, so the entries are sent one by one and
+ * the map is built again on the receiving side. The subclasses are
+ * instantiated via their empty constructors.
+ *
+ * @author xamde
+ */
+public class MemorySetValue_CustomFieldSerializer {
+
+    public static void serialize(final SerializationStreamWriter writer,
+            final MemorySetValue<?> instance) throws SerializationException {
+        writer.writeInt(instance.size());
+        for(final Object e : instance) {
+            writer.writeObject(e);
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public static void deserialize(final SerializationStreamReader reader,
+            final MemorySetValue instance) throws SerializationException {
+        final int size = reader.readInt();
+        final List<Object> entries = new ArrayList<Object>(size);
+        for(int i = 0; i < size; i++) {
+            entries.add(reader.readObject());
+        }
+        instance.addAll(entries);
+    }
+
+}
@@ -1,12 +1,12 @@
 package org.xydra.base.value.impl.memory;
 
 import java.io.Serializable;
-import java.util.Arrays;
 import java.util.Collection;
 
 import org.xydra.base.value.ValueType;
 import org.xydra.base.value.XStringListValue;
 import org.xydra.index.XI;
+import org.xydra.index.impl.PersistentList;
 
 
 /**
@@ -18,50 +18,38 @@ import org.xydra.index.XI;
 public class MemoryStringListValue extends MemoryListValue<String> implements XStringListValue,
         Serializable {
 
-	private static final long serialVersionUID = -1175161517909257560L;
-
-	// non-final to be GWT-Serializable
-	private String[] list;
+	private static final long serialVersionUID = 3626503560026945939L;
 
 	// empty constructor for GWT-Serializable
 	protected MemoryStringListValue() {
 	}
 
 	public MemoryStringListValue(final Collection<String> content) {
-		this.list = content.toArray(new String[content.size()]);
+		super(PersistentList.<String> from(content));
 	}
 
-	private MemoryStringListValue(final int length) {
-		this.list = new String[length];
+	public MemoryStringListValue(final String[] content) {
+		super(PersistentList.<String> from(content));
 	}
 
-	public MemoryStringListValue(final String[] content) {
-		this.list = new String[content.length];
-		System.arraycopy(content, 0, this.list, 0, content.length);
+	private MemoryStringListValue(final PersistentList<String> list) {
+		super(list);
 	}
 
 	@Override
 	public XStringListValue add(final int index, final String entry) {
-		final int size = this.list.length;
-		if(index < 0 || index > size) {
-			throw new IndexOutOfBoundsException();
-		}
-		final MemoryStringListValue v = new MemoryStringListValue(size + 1);
-		System.arraycopy(this.list, 0, v.list, 0, index);
-		v.list[index] = entry;
-		System.arraycopy(this.list, index, v.list, index + 1, size - index);
-		return v;
+		return new MemoryStringListValue(this.list.insert(index, entry));
 	}
 
 	@Override
 	public XStringListValue add(final String entry) {
-		return add(this.list.length, entry);
+		return add(size(), entry);
 	}
 
 	@Override
 	public String[] contents() {
-		final String[] array = new String[this.list.length];
-		System.arraycopy(this.list, 0, array, 0, this.list.length);
+		final String[] array = new String[size()];
+		fillArray(array);
 		return array;
 	}
 
@@ -71,11 +59,6 @@ public class MemoryStringListValue extends MemoryListValue<String> implements XS
 		        && XI.equalsIterator(iterator(), ((XStringListValue)other).iterator());
 	}
 
-	@Override
-	public String get(final int index) {
-		return this.list[index];
-	}
-
 	@Override
 	public ValueType getComponentType() {
 		return ValueType.String;
@@ -88,19 +71,12 @@ public class MemoryStringListValue extends MemoryListValue<String> implements XS
 
 	@Override
 	public int hashCode() {
-		return Arrays.hashCode(this.list);
+		return getHashCode();
 	}
 
 	@Override
 	public XStringListValue remove(final int index) {
-		final int size = this.list.length;
-		if(index < 0 || index >= size) {
-			throw new IndexOutOfBoundsException();
-		}
-		final MemoryStringListValue v = new MemoryStringListValue(size - 1);
-		System.arraycopy(this.list, 0, v.list, 0, index);
-		System.arraycopy(this.list, index + 1, v.list, index, size - index - 1);
-		return v;
+		return new MemoryStringListValue(this.list.remove(index));
 	}
 
 	@Override
@@ -112,19 +88,9 @@ public class MemoryStringListValue extends MemoryListValue<String> implements XS
 		return remove(index);
 	}
 
-	@Override
-	public int size() {
-		return this.list.length;
-	}
-
 	@Override
 	public String[] toArray() {
 		return contents();
 	}
 
-	@Override
-	public String toString() {
-		return Arrays.toString(this.list);
-	}
-
 }
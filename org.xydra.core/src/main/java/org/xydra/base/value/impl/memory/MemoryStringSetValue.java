@@ -16,7 +16,7 @@ import org.xydra.base.value.XStringSetValue;
 public class MemoryStringSetValue extends MemorySetValue<String> implements XStringSetValue,
         Serializable {
 
-	private static final long serialVersionUID = -83885798275571937L;
+	private static final long serialVersionUID = 4591686999716904110L;
 
 	// empty constructor for GWT-Serializable
 	protected MemoryStringSetValue() {
@@ -30,11 +30,16 @@ public class MemoryStringSetValue extends MemorySetValue<String> implements XStr
 		super(contents);
 	}
 
+	private MemoryStringSetValue(final MemoryStringSetValue base, final String entry, final boolean add) {
+		super(base, entry, add);
+	}
+
 	@Override
 	public MemoryStringSetValue add(final String entry) {
-		final MemoryStringSetValue v = new MemoryStringSetValue(this.set);
-		v.set.add(entry);
-		return v;
+		if(contains(entry)) {
+			return this;
+		}
+		return new MemoryStringSetValue(this, entry, true);
 	}
 
 	@Override
@@ -64,9 +69,10 @@ public class MemoryStringSetValue extends MemorySetValue<String> implements XStr
 
 	@Override
 	public MemoryStringSetValue remove(final String entry) {
-		final MemoryStringSetValue v = new MemoryStringSetValue(this.set);
-		v.set.remove(entry);
-		return v;
+		if(!contains(entry)) {
+			return this;
+		}
+		return new MemoryStringSetValue(this, entry, false);
 	}
 
 	@Override
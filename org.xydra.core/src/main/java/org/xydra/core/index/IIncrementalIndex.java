@@ -0,0 +1,39 @@
+package org.xydra.core.index;
+
+import org.xydra.annotations.RequiresAppEngine;
+import org.xydra.annotations.RunsInAppEngine;
+import org.xydra.annotations.RunsInGWT;
+import org.xydra.base.XAddress;
+import org.xydra.base.value.XValue;
+
+
+/**
+ * An index that is maintained one field value at a time, e.g. by an
+ * {@link org.xydra.core.index.impl.memory.IndexManager}.
+ *
+ * A change of a field value is reported as {@link #deIndexValue(XAddress, XValue)}
+ * of the old value followed by {@link #indexValue(XAddress, XValue)} of the new
+ * one. Adding a field is reported as indexing its (null) value, removing a
+ * field as de-indexing its last value.
+ *
+ * @author xamde
+ */
+@RunsInAppEngine(true)
+@RunsInGWT(true)
+@RequiresAppEngine(false)
+public interface IIncrementalIndex {
+
+	/**
+	 * @param fieldAddress @NeverNull
+	 * @param value @CanBeNull the current value of the field, null if the field
+	 *            has no value
+	 */
+	void indexValue(XAddress fieldAddress, XValue value);
+
+	/**
+	 * @param fieldAddress @NeverNull
+	 * @param value @CanBeNull the value that was indexed before for the field
+	 */
+	void deIndexValue(XAddress fieldAddress, XValue value);
+
+}
@@ -0,0 +1,374 @@
+package org.xydra.core.index.impl.memory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.xydra.annotations.RequiresAppEngine;
+import org.xydra.annotations.RunsInAppEngine;
+import org.xydra.annotations.RunsInGWT;
+import org.xydra.base.Base;
+import org.xydra.base.XAddress;
+import org.xydra.base.XId;
+import org.xydra.base.change.ChangeType;
+import org.xydra.base.change.XEvent;
+import org.xydra.base.change.XFieldEvent;
+import org.xydra.base.change.XModelEvent;
+import org.xydra.base.change.XObjectEvent;
+import org.xydra.base.change.XTransactionEvent;
+import org.xydra.base.rmof.XReadableField;
+import org.xydra.base.rmof.XReadableModel;
+import org.xydra.base.rmof.XReadableObject;
+import org.xydra.base.value.XValue;
+import org.xydra.core.change.XFieldEventListener;
+import org.xydra.core.change.XModelEventListener;
+import org.xydra.core.change.XObjectEventListener;
+import org.xydra.core.change.XTransactionEventListener;
+import org.xydra.core.index.IIncrementalIndex;
+import org.xydra.core.model.XModel;
+
+
+/**
+ * Keeps any number of {@link IIncrementalIndex IIncrementalIndexes} up to date
+ * with an {@link XModel} by listening to its model, object, field and
+ * transaction events.
+ *
+ * The model is indexed completely when the manager is created, in parallel
+ * across objects if an {@link Executor} is given. The model must not be
+ * changed during that time. Afterwards each change is passed to the indexes
+ * as soon as its event arrives. The changes of a transaction are collected
+ * until the transaction event arrives and passed on as one batch, so a field
+ * that is changed several times within a transaction is updated only once.
+ *
+ * Events carry only the new values, the manager therefore keeps the last
+ * indexed value of each field to de-index it later.
+ *
+ * Each index is only called by one thread at a time, the manager synchronises
+ * on it. The index objects of an {@link ObjectIndex} must not be part of the
+ * managed model.
+ *
+ * @author xamde
+ */
+@RunsInAppEngine(true)
+@RunsInGWT(false)
+@RequiresAppEngine(false)
+public class IndexManager implements XModelEventListener, XObjectEventListener,
+		XFieldEventListener, XTransactionEventListener {
+
+	/** the indexed state of a field before the current transaction */
+	private static class Before {
+
+		final boolean existed;
+
+		final XValue value;
+
+		Before(final boolean existed, final XValue value) {
+			this.existed = existed;
+			this.value = value;
+		}
+
+	}
+
+	private final XModel model;
+
+	private final List<IIncrementalIndex> indexes = new ArrayList<IIncrementalIndex>();
+
+	/**
+	 * objectId -> fieldId -> last indexed value. A field without value is
+	 * mapped to null.
+	 */
+	private final Map<XId, Map<XId, XValue>> indexed = new ConcurrentHashMap<XId, Map<XId, XValue>>();
+
+	/** fields changed in the current transaction, in order of first change */
+	private final Map<XAddress, Before> pending = new LinkedHashMap<XAddress, Before>();
+
+	private long indexedRevision;
+
+	private int size;
+
+	private boolean closed = false;
+
+	/**
+	 * Indexes the model in the calling thread.
+	 *
+	 * @param model @NeverNull
+	 * @param indexes
+	 */
+	public IndexManager(final XModel model, final IIncrementalIndex ... indexes) {
+		this(model, null, indexes);
+	}
+
+	/**
+	 * @param model @NeverNull
+	 * @param executor @CanBeNull used to index the objects of the model in
+	 *            parallel, null to index them in the calling thread
+	 * @param indexes
+	 */
+	public IndexManager(final XModel model, final Executor executor,
+			final IIncrementalIndex ... indexes) {
+		this.model = model;
+		for(final IIncrementalIndex index : indexes) {
+			this.indexes.add(index);
+		}
+		this.indexedRevision = model.getRevisionNumber();
+		if(executor == null) {
+			for(final XId objectId : model) {
+				indexObject(model.getObject(objectId));
+			}
+		} else {
+			indexInParallel(executor);
+		}
+		for(final Map<XId, XValue> fields : this.indexed.values()) {
+			this.size += fields.size();
+		}
+		model.addListenerForModelEvents(this);
+		model.addListenerForObjectEvents(this);
+		model.addListenerForFieldEvents(this);
+		model.addListenerForTransactionEvents(this);
+	}
+
+	/**
+	 * Reads a snapshot of the model, the model itself synchronises all reads.
+	 */
+	private void indexInParallel(final Executor executor) {
+		final XReadableModel snapshot = this.model.createSnapshot();
+		this.indexedRevision = snapshot.getRevisionNumber();
+		final List<XId> objectIds = new ArrayList<XId>();
+		for(final XId objectId : snapshot) {
+			objectIds.add(objectId);
+		}
+		final CountDownLatch done = new CountDownLatch(objectIds.size());
+		final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+		for(final XId objectId : objectIds) {
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						indexObject(snapshot.getObject(objectId));
+					} catch(final RuntimeException e) {
+						failure.compareAndSet(null, e);
+					} finally {
+						done.countDown();
+					}
+				}
+
+			});
+		}
+		try {
+			done.await();
+		} catch(final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("interrupted while indexing " + this.model.getAddress(), e);
+		}
+		if(failure.get() != null) {
+			throw failure.get();
+		}
+	}
+
+	/**
+	 * Called concurrently for different objects during startup, different
+	 * indexes can be filled at the same time.
+	 */
+	private void indexObject(final XReadableObject object) {
+		final Map<XId, XValue> fields = new HashMap<XId, XValue>();
+		for(final XId fieldId : object) {
+			final XReadableField field = object.getField(fieldId);
+			fields.put(fieldId, field.getValue());
+		}
+		this.indexed.put(object.getId(), fields);
+		final XAddress objectAddress = object.getAddress();
+		for(final IIncrementalIndex index : this.indexes) {
+			synchronized(index) {
+				for(final Map.Entry<XId, XValue> e : fields.entrySet()) {
+					index.indexValue(Base.resolveField(objectAddress, e.getKey()), e.getValue());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Indexes the current state of the model into the given index and keeps it
+	 * up to date from now on.
+	 *
+	 * @param index @NeverNull
+	 */
+	public synchronized void addIndex(final IIncrementalIndex index) {
+		synchronized(index) {
+			for(final Map.Entry<XId, Map<XId, XValue>> o : this.indexed.entrySet()) {
+				final XAddress objectAddress = Base.resolveObject(this.model.getAddress(),
+				        o.getKey());
+				for(final Map.Entry<XId, XValue> f : o.getValue().entrySet()) {
+					index.indexValue(Base.resolveField(objectAddress, f.getKey()), f.getValue());
+				}
+			}
+		}
+		this.indexes.add(index);
+	}
+
+	/**
+	 * Stops listening to the model. The indexes keep their current state.
+	 */
+	public synchronized void close() {
+		this.model.removeListenerForModelEvents(this);
+		this.model.removeListenerForObjectEvents(this);
+		this.model.removeListenerForFieldEvents(this);
+		this.model.removeListenerForTransactionEvents(this);
+		this.closed = true;
+	}
+
+	@Override
+	public synchronized void onChangeEvent(final XModelEvent event) {
+		if(event.getChangeType() == ChangeType.REMOVE) {
+			final XAddress objectAddress = event.getChangedEntity();
+			final Map<XId, XValue> fields = this.indexed.get(objectAddress.getObject());
+			if(fields != null) {
+				for(final XId fieldId : new ArrayList<XId>(fields.keySet())) {
+					setIndexed(Base.resolveField(objectAddress, fieldId), false, null);
+				}
+			}
+		}
+		afterAtomicEvent(event);
+	}
+
+	@Override
+	public synchronized void onChangeEvent(final XObjectEvent event) {
+		final XAddress fieldAddress = event.getChangedEntity();
+		switch(event.getChangeType()) {
+		case ADD:
+			setIndexed(fieldAddress, true, null);
+			break;
+		case REMOVE:
+			setIndexed(fieldAddress, false, null);
+			break;
+		default:
+			break;
+		}
+		afterAtomicEvent(event);
+	}
+
+	@Override
+	public synchronized void onChangeEvent(final XFieldEvent event) {
+		setIndexed(event.getChangedEntity(), event.getChangeType() != ChangeType.REMOVE
+		        || isFieldPresent(event.getChangedEntity()), event.getNewValue());
+		afterAtomicEvent(event);
+	}
+
+	@Override
+	public synchronized void onChangeEvent(final XTransactionEvent event) {
+		flush(event);
+	}
+
+	private boolean isFieldPresent(final XAddress fieldAddress) {
+		final Map<XId, XValue> fields = this.indexed.get(fieldAddress.getObject());
+		return fields != null && fields.containsKey(fieldAddress.getField());
+	}
+
+	private void afterAtomicEvent(final XEvent event) {
+		if(!event.inTransaction()) {
+			flush(event);
+		}
+	}
+
+	/**
+	 * Updates the known state of a field and remembers its state before the
+	 * current transaction.
+	 */
+	private void setIndexed(final XAddress fieldAddress, final boolean exists, final XValue value) {
+		if(this.closed) {
+			return;
+		}
+		final XId objectId = fieldAddress.getObject();
+		Map<XId, XValue> fields = this.indexed.get(objectId);
+		final boolean existed = fields != null && fields.containsKey(fieldAddress.getField());
+		if(!this.pending.containsKey(fieldAddress)) {
+			this.pending.put(fieldAddress, new Before(existed,
+			        existed ? fields.get(fieldAddress.getField()) : null));
+		}
+		if(exists) {
+			if(fields == null) {
+				fields = new HashMap<XId, XValue>();
+				this.indexed.put(objectId, fields);
+			}
+			fields.put(fieldAddress.getField(), value);
+			if(!existed) {
+				this.size++;
+			}
+		} else if(existed) {
+			fields.remove(fieldAddress.getField());
+			if(fields.isEmpty()) {
+				this.indexed.remove(objectId);
+			}
+			this.size--;
+		}
+	}
+
+	/**
+	 * Passes all pending changes to the indexes.
+	 */
+	private void flush(final XEvent event) {
+		if(this.closed) {
+			return;
+		}
+		for(final Map.Entry<XAddress, Before> e : this.pending.entrySet()) {
+			final XAddress fieldAddress = e.getKey();
+			final Before before = e.getValue();
+			final Map<XId, XValue> fields = this.indexed.get(fieldAddress.getObject());
+			final boolean exists = fields != null && fields.containsKey(fieldAddress.getField());
+			final XValue value = exists ? fields.get(fieldAddress.getField()) : null;
+			if(before.existed && exists
+			        && (value == null ? before.value == null : value.equals(before.value))) {
+				continue;
+			}
+			for(final IIncrementalIndex index : this.indexes) {
+				synchronized(index) {
+					if(before.existed) {
+						index.deIndexValue(fieldAddress, before.value);
+					}
+					if(exists) {
+						index.indexValue(fieldAddress, value);
+					}
+				}
+			}
+		}
+		this.pending.clear();
+		this.indexedRevision = event.getRevisionNumber();
+	}
+
+	/**
+	 * @return the revision of the model the indexes reflect
+	 */
+	public synchronized long getIndexedRevision() {
+		return this.indexedRevision;
+	}
+
+	/**
+	 * @return how many revisions the indexes are behind the model, e.g.
+	 *         because events are delivered asynchronously
+	 */
+	public synchronized long getLag() {
+		return Math.max(0, this.model.getRevisionNumber() - this.indexedRevision);
+	}
+
+	/**
+	 * @return the number of changed fields that wait for the end of the
+	 *         current transaction
+	 */
+	public synchronized int getPendingChanges() {
+		return this.pending.size();
+	}
+
+	/**
+	 * @return the number of indexed fields
+	 */
+	public synchronized int size() {
+		return this.size;
+	}
+
+}
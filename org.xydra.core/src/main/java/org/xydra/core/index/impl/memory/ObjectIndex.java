@@ -8,6 +8,7 @@ import org.xydra.annotations.RequiresAppEngine;
 import org.xydra.annotations.RunsInAppEngine;
 import org.xydra.annotations.RunsInGWT;
 import org.xydra.base.BaseRuntime;
+import org.xydra.base.XAddress;
 import org.xydra.base.XId;
 import org.xydra.base.rmof.XReadableField;
 import org.xydra.base.rmof.XReadableObject;
@@ -16,6 +17,7 @@ import org.xydra.base.rmof.XWritableModel;
 import org.xydra.base.rmof.XWritableObject;
 import org.xydra.base.value.XIdSetValue;
 import org.xydra.base.value.XValue;
+import org.xydra.core.index.IIncrementalIndex;
 import org.xydra.core.index.IObjectIndex;
 import org.xydra.core.model.XObject;
 import org.xydra.sharedutils.XyAssert;
@@ -26,12 +28,15 @@ import org.xydra.sharedutils.XyAssert;
  * converted to an internal XId key which is used as the field-ID in another
  * {@link XObject}.
  *
+ * As an {@link IIncrementalIndex} it only looks at fields with the configured
+ * fieldId and ignores fields without value.
+ *
  * @author xamde
  */
 @RunsInAppEngine(true)
 @RunsInGWT(true)
 @RequiresAppEngine(false)
-public class ObjectIndex extends AbstractObjectIndex implements IObjectIndex {
+public class ObjectIndex extends AbstractObjectIndex implements IObjectIndex, IIncrementalIndex {
 
 	public ObjectIndex(final XId fieldId, final XWritableObject indexObject) {
 		super(fieldId, indexObject);
@@ -83,6 +88,20 @@ public class ObjectIndex extends AbstractObjectIndex implements IObjectIndex {
 	}
 
 
+	@Override
+	public void indexValue(final XAddress fieldAddress, final XValue value) {
+		if(value != null && this.fieldId.equals(fieldAddress.getField())) {
+			index(value, fieldAddress.getObject());
+		}
+	}
+
+	@Override
+	public void deIndexValue(final XAddress fieldAddress, final XValue value) {
+		if(value != null && this.fieldId.equals(fieldAddress.getField())) {
+			deindex(value, fieldAddress.getObject());
+		}
+	}
+
 	@Override
     public Set<XWritableObject> lookup(final XWritableModel model, final XValue indexKey) {
 		final Set<XId> ids = lookupIDs(indexKey);
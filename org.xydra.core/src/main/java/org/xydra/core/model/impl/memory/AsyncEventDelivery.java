@@ -0,0 +1,245 @@
+package org.xydra.core.model.impl.memory;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.xydra.annotations.RunsInGWT;
+import org.xydra.core.model.impl.memory.MemoryEventBus.EventType;
+import org.xydra.log.api.Logger;
+import org.xydra.log.api.LoggerFactory;
+
+
+/**
+ * Delivers events of a {@link MemoryEventBus} in a bounded pool of daemon
+ * threads.
+ *
+ * Each listener has its own queue which is drained by at most one thread at a
+ * time, so every listener receives its events in the order in which they have
+ * been sent, while different listeners are notified in parallel. Both are
+ * bounded, which slows down senders instead of buffering without limit: If
+ * all threads are busy and the pool queue is full, the sending thread drains
+ * the listener queue itself. If a listener queue is full, the sending thread
+ * waits until the listener has caught up. Events sent by listeners (i.e. from
+ * a delivering thread) never wait, as that could block all threads, so they
+ * may exceed the bound.
+ *
+ * Exceptions thrown by listeners are logged and do not stop the delivery of
+ * later events.
+ *
+ * @author xamde
+ */
+@RunsInGWT(false)
+public class AsyncEventDelivery implements MemoryEventBus.Delivery {
+
+	private static final Logger log = LoggerFactory.getLogger(AsyncEventDelivery.class);
+
+	/**
+	 * Pending events of one listener
+	 */
+	private class ListenerQueue implements Runnable {
+
+		private final Object listener;
+
+		/**
+		 * event type, event, event type, event, ... at most
+		 * {@link AsyncEventDelivery#maxPending} events unless sent by a
+		 * delivering thread
+		 */
+		private final ArrayDeque<Object> pending = new ArrayDeque<Object>();
+
+		/** true while a drain task has been submitted or is running */
+		private boolean scheduled = false;
+
+		/** true once removed from the map, no more events are accepted */
+		private boolean retired = false;
+
+		ListenerQueue(final Object listener) {
+			this.listener = listener;
+		}
+
+		/**
+		 * @return false if this queue has been retired and the caller must use
+		 *         a new one
+		 */
+		boolean offer(final EventType eventType, final Object event) {
+			synchronized (this) {
+				if (this.retired) {
+					return false;
+				}
+				while (this.pending.size() >= 2 * AsyncEventDelivery.this.maxPending
+						&& delivering.get() == null) {
+					try {
+						wait();
+					} catch (final InterruptedException e) {
+						Thread.currentThread().interrupt();
+						break;
+					}
+					if (this.retired) {
+						return false;
+					}
+				}
+				this.pending.add(eventType);
+				this.pending.add(event);
+				if (this.scheduled) {
+					return true;
+				}
+				this.scheduled = true;
+			}
+			AsyncEventDelivery.this.executor.execute(this);
+			return true;
+		}
+
+		@Override
+		public void run() {
+			final boolean outermost = delivering.get() == null;
+			delivering.set(Boolean.TRUE);
+			try {
+				drain();
+			} finally {
+				if (outermost) {
+					delivering.remove();
+				}
+			}
+		}
+
+		private void drain() {
+			while (true) {
+				final EventType eventType;
+				final Object event;
+				synchronized (this) {
+					if (this.pending.isEmpty()) {
+						this.scheduled = false;
+						this.retired = true;
+						AsyncEventDelivery.this.queues.remove(this.listener, this);
+						// senders waiting for room need a new queue
+						notifyAll();
+						return;
+					}
+					eventType = (EventType) this.pending.poll();
+					event = this.pending.poll();
+					notifyAll();
+				}
+				try {
+					MemoryEventBus.fireEventToListener(eventType, event, this.listener);
+				} catch (final RuntimeException e) {
+					log.warn("Listener " + this.listener + " failed on " + event, e);
+				} catch (final Throwable e) {
+					/*
+					 * also Errors, otherwise this queue would stay scheduled
+					 * without a thread that drains it
+					 */
+					log.error("Listener " + this.listener + " failed on " + event, e);
+				}
+			}
+		}
+
+	}
+
+	/** set while the current thread delivers events */
+	private static final ThreadLocal<Boolean> delivering = new ThreadLocal<Boolean>();
+
+	/** default maximal number of pending events per listener */
+	public static final int DEFAULT_MAX_PENDING = 1024;
+
+	private final ConcurrentMap<Object, ListenerQueue> queues = new ConcurrentHashMap<Object, ListenerQueue>();
+
+	private final ThreadPoolExecutor executor;
+
+	private final int maxPending;
+
+	/**
+	 * @param threads maximal number of threads calling listeners
+	 * @param capacity maximal number of listener queues waiting for a thread
+	 */
+	public AsyncEventDelivery(final int threads, final int capacity) {
+		this(threads, capacity, DEFAULT_MAX_PENDING);
+	}
+
+	/**
+	 * @param threads maximal number of threads calling listeners
+	 * @param capacity maximal number of listener queues waiting for a thread
+	 * @param maxPending maximal number of pending events per listener, senders
+	 *            wait when it is reached
+	 */
+	public AsyncEventDelivery(final int threads, final int capacity, final int maxPending) {
+		if (maxPending < 1) {
+			throw new IllegalArgumentException("maxPending must be positive, was " + maxPending);
+		}
+		this.maxPending = maxPending;
+		final AtomicInteger count = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(capacity), new ThreadFactory() {
+
+					@Override
+					public Thread newThread(final Runnable r) {
+						final Thread thread = new Thread(r, "xydra-events-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				}, new RejectedExecutionHandler() {
+
+					/*
+					 * Unlike CallerRunsPolicy, this also runs the task after
+					 * shutdown, as the queue stays scheduled until it is drained
+					 */
+					@Override
+					public void rejectedExecution(final Runnable r, final ThreadPoolExecutor e) {
+						r.run();
+					}
+				});
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	@Override
+	public void deliver(final EventType eventType, final Object event, final Object listener) {
+		while (true) {
+			ListenerQueue queue = this.queues.get(listener);
+			if (queue == null) {
+				final ListenerQueue created = new ListenerQueue(listener);
+				queue = this.queues.putIfAbsent(listener, created);
+				if (queue == null) {
+					queue = created;
+				}
+			}
+			if (queue.offer(eventType, event)) {
+				return;
+			}
+			// the queue has just been drained and retired
+		}
+	}
+
+	/**
+	 * Waits until all events sent so far have been delivered.
+	 *
+	 * @param timeout
+	 * @param unit
+	 * @return false if the timeout elapsed before
+	 * @throws InterruptedException
+	 */
+	public boolean awaitIdle(final long timeout, final TimeUnit unit) throws InterruptedException {
+		final long end = System.nanoTime() + unit.toNanos(timeout);
+		while (!this.queues.isEmpty() || this.executor.getActiveCount() > 0) {
+			if (System.nanoTime() > end) {
+				return false;
+			}
+			Thread.sleep(1);
+		}
+		return true;
+	}
+
+	/**
+	 * Stops the threads once all pending events have been delivered. Events
+	 * sent afterwards are delivered in the sending thread.
+	 */
+	public void shutdown() {
+		this.executor.shutdown();
+	}
+
+}
@@ -305,6 +305,9 @@ public class EventDelta {
                 // FIXME Why? Tests require this
                 return true;
             }
+            if(!isOldValueKnown(b, syncLog)) {
+                return false;
+            }
             final XValue removedValue = getOldValue(b, syncLog);
             if(removedValue == null) {
                 return false;
@@ -318,7 +321,7 @@ public class EventDelta {
         }
         if(ac == ChangeType.CHANGE && bc == ChangeType.CHANGE || ac == ChangeType.REMOVE
                 && bc == ChangeType.ADD) {
-            if(syncLog == null) {
+            if(syncLog == null || !isOldValueKnown(a, syncLog)) {
                 // we cannot compare the old values, so we're conservative
                 return false;
             }
@@ -334,10 +337,28 @@ public class EventDelta {
         return false;
     }
 
+    /**
+     * The sync log only contains the events after its base revision, e.g.
+     * after loading a snapshot or catching up. Local changes of older fields
+     * are logged as reversible events, but server events can refer to older
+     * field revisions.
+     *
+     * @param fieldEvent can be inverted
+     * @param syncLog @NeverNull
+     * @return true if {@link #getOldValue(XFieldEvent, ISyncLog)} can answer
+     */
+    private static boolean isOldValueKnown(final XFieldEvent fieldEvent, final ISyncLog syncLog) {
+        return fieldEvent instanceof MemoryReversibleFieldEvent
+                || fieldEvent.getOldFieldRevision() > syncLog.getBaseRevisionNumber();
+    }
+
     /**
      * Extracts the value a field had at the time just before the given
      * fieldEvent changed it.
      *
+     * Fails for events before the base revision of the sync log, see
+     * {@link #isOldValueKnown(XFieldEvent, ISyncLog)}.
+     *
      * @param fieldEvent can be inverted
      * @param syncLog @NeverNull
      * @return
@@ -376,6 +397,10 @@ public class EventDelta {
          */
         final long lookupRevision = fieldEvent.getOldFieldRevision();
         final XEvent oldEvent = syncLog.getEventAt(lookupRevision);
+        if(oldEvent == null) {
+            throw new IllegalStateException("Cannot find the old value of " + fieldEvent
+                    + ": the sync log has no event at revision " + lookupRevision);
+        }
         assert oldEvent.getChangeType() == ChangeType.ADD
                 || oldEvent.getChangeType() == ChangeType.CHANGE
                 || oldEvent.getChangeType() == ChangeType.TRANSACTION;
@@ -15,9 +15,8 @@
  */
 package org.xydra.core.model.impl.memory;
 
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.xydra.annotations.LicenseApache;
 import org.xydra.base.XAddress;
@@ -33,18 +32,18 @@ import org.xydra.core.change.XObjectEventListener;
 import org.xydra.core.change.XRepositoryEventListener;
 import org.xydra.core.change.XSyncEventListener;
 import org.xydra.core.change.XTransactionEventListener;
-import org.xydra.index.IMapMapSetIndex;
-import org.xydra.index.impl.MapMapSetIndex;
-import org.xydra.index.impl.SmallEntrySetFactory;
-import org.xydra.index.query.EqualsConstraint;
-import org.xydra.index.query.ITriple;
-import org.xydra.index.query.Wildcard;
 
 /**
  * Can register listeners and send events for all kinds of Xydra events.
  *
- * Supports de-/registering old/new listeners while event sending is running
- * with an internal command queue.
+ * Listeners are kept in copy-on-write arrays per {@link EventType} and source
+ * {@link XAddress}. Sending an event takes no locks and allocates nothing, it
+ * iterates over the array that was current when sending started. Listeners
+ * that are de-/registered while events are sent, e.g. by a listener, see only
+ * the events sent afterwards.
+ *
+ * By default listeners are called by the thread that sends the event. An
+ * asynchronous {@link Delivery} can be set via {@link #setDelivery(Delivery)}.
  *
  * @author xamde
  */
@@ -57,12 +56,30 @@ public class MemoryEventBus {
 		TransactionChange, Sync,
 	}
 
+	/**
+	 * Delivers a single event to a single listener, e.g. in another thread.
+	 */
+	public static interface Delivery {
+
+		/**
+		 * Must eventually call
+		 * {@link MemoryEventBus#fireEventToListener(EventType, Object, Object)}
+		 * and must keep the order of events for each listener.
+		 *
+		 * @param eventType @NeverNull
+		 * @param event @NeverNull
+		 * @param listener @NeverNull
+		 */
+		void deliver(EventType eventType, Object event, Object listener);
+
+	}
+
 	/**
 	 * @param eventType @NeverNull
 	 * @param event @NeverNull
 	 * @param listener @NeverNull
 	 */
-	private static void fireEventToListener(final EventType eventType, final Object event, final Object listener) {
+	public static void fireEventToListener(final EventType eventType, final Object event, final Object listener) {
 		switch (eventType) {
 		case FieldChange:
 			((XFieldEventListener) listener).onChangeEvent((XFieldEvent) event);
@@ -85,44 +102,72 @@ public class MemoryEventBus {
 	}
 
 	/**
-	 * Add and remove operations received during dispatch.
+	 * Listener arrays by source address, indexed by
+	 * {@link EventType#ordinal()}. The arrays are never modified once they are
+	 * in a map. Writers synchronise on the map.
 	 */
-	private final List<Runnable> deferredDeltas = new LinkedList<Runnable>();
+	private final Map<XAddress, Object[]>[] listeners;
 
-	private int fireCalls = 0;
+	/** null means listeners are called directly */
+	private volatile Delivery delivery;
 
-	IMapMapSetIndex<EventType, XAddress, Object> map = new MapMapSetIndex<EventType, XAddress, Object>(
-			new SmallEntrySetFactory<Object>());
+	@SuppressWarnings("unchecked")
+	public MemoryEventBus() {
+		this.listeners = new Map[EventType.values().length];
+		for (int i = 0; i < this.listeners.length; i++) {
+			this.listeners[i] = new ConcurrentHashMap<XAddress, Object[]>();
+		}
+	}
+
+	/**
+	 * @param delivery how events are delivered to listeners, null to call
+	 *            listeners directly in the sending thread
+	 */
+	public void setDelivery(final Delivery delivery) {
+		this.delivery = delivery;
+	}
 
 	/**
 	 * @param eventType
 	 * @param sourceAddress
 	 * @param listener
-	 * @return
+	 * @return true if the listener was not registered yet
 	 */
 	public boolean addListener(final EventType eventType, final XAddress sourceAddress,
 			final Object listener) {
-		if (this.fireCalls > 0) {
-			this.deferredDeltas.add(new Runnable() {
-
-				@Override
-				public void run() {
-					addListener(eventType, sourceAddress, listener);
-				}
-			});
-			// we can just hope it will work
+		final Map<XAddress, Object[]> map = this.listeners[eventType.ordinal()];
+		synchronized (map) {
+			final Object[] current = map.get(sourceAddress);
+			if (current == null) {
+				map.put(sourceAddress, new Object[] { listener });
+				return true;
+			}
+			if (indexOf(current, listener) >= 0) {
+				return false;
+			}
+			final Object[] next = new Object[current.length + 1];
+			System.arraycopy(current, 0, next, 0, current.length);
+			next[current.length] = listener;
+			map.put(sourceAddress, next);
 			return true;
-		} else {
-			return this.map.index(eventType, sourceAddress, listener);
 		}
 	}
 
+	private static int indexOf(final Object[] array, final Object listener) {
+		for (int i = 0; i < array.length; i++) {
+			if (array[i].equals(listener)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
 	/**
 	 * Notifies all listeners that have registered interest for notification on
 	 * events of type EventType happening on source-entities.
 	 *
 	 * @param eventType @NeverNull
-	 * @param source @NeverNull
+	 * @param source if null, all listeners for the event type are notified
 	 * @param event The, e.g., {@link XFieldEvent} which will be propagated to
 	 *            the registered listeners.
 	 */
@@ -132,67 +177,65 @@ public class MemoryEventBus {
 			throw new NullPointerException("Cannot fire null event");
 		}
 
-		synchronized (this.map) {
-			this.fireCalls++;
-			try {
-				final Iterator<ITriple<EventType, XAddress, Object>> it = this.map.tupleIterator(
-
-						new EqualsConstraint<MemoryEventBus.EventType>(eventType),
-
-						source == null ? new Wildcard<XAddress>() : new EqualsConstraint<XAddress>(source),
-
-								new Wildcard<Object>()
-
-						);
-				while (it.hasNext()) {
-					final Object o = it.next().getEntry();
-					fireEventToListener(eventType, event, o);
-				}
-			} finally {
-				this.fireCalls--;
-				if (this.fireCalls == 0) {
-					handleQueuedAddsAndRemoves();
-				}
+		final Map<XAddress, Object[]> map = this.listeners[eventType.ordinal()];
+		if (source == null) {
+			for (final Object[] array : map.values()) {
+				fireEvent(eventType, event, array);
+			}
+		} else {
+			final Object[] array = map.get(source);
+			if (array != null) {
+				fireEvent(eventType, event, array);
 			}
 		}
 	}
 
-	private void handleQueuedAddsAndRemoves() {
-		try {
-			for (final Runnable r : this.deferredDeltas) {
-				r.run();
+	private void fireEvent(final EventType eventType, final Object event, final Object[] array) {
+		final Delivery delivery = this.delivery;
+		for (final Object listener : array) {
+			if (delivery == null) {
+				fireEventToListener(eventType, event, listener);
+			} else {
+				delivery.deliver(eventType, event, listener);
 			}
-		} finally {
-			this.deferredDeltas.clear();
 		}
 	}
 
 	public boolean removeListener(final EventType eventType, final XAddress sourceAddress,
 			final Object listener) {
-		if (this.fireCalls > 0) {
-			this.deferredDeltas.add(new Runnable() {
-
-				@Override
-				public void run() {
-					removeListener(eventType, sourceAddress, listener);
-				}
-			});
-			// we can just assume it will work
+		final Map<XAddress, Object[]> map = this.listeners[eventType.ordinal()];
+		synchronized (map) {
+			final Object[] current = map.get(sourceAddress);
+			if (current == null) {
+				return false;
+			}
+			final int i = indexOf(current, listener);
+			if (i < 0) {
+				return false;
+			}
+			if (current.length == 1) {
+				map.remove(sourceAddress);
+				return true;
+			}
+			final Object[] next = new Object[current.length - 1];
+			System.arraycopy(current, 0, next, 0, i);
+			System.arraycopy(current, i + 1, next, i, next.length - i);
+			map.put(sourceAddress, next);
 			return true;
-		} else {
-			return this.map.deIndex(eventType, sourceAddress, listener);
 		}
 	}
 
 	@Override
 	public String toString() {
 		final StringBuilder b = new StringBuilder();
-		final Iterator<ITriple<EventType, XAddress, Object>> tupleIt = this.map.tupleIterator(
-				(EventType) null, null, null);
-		while (tupleIt.hasNext()) {
-			final ITriple<MemoryEventBus.EventType, XAddress, Object> tuple = tupleIt.next();
-			b.append("EventType=" + tuple.getKey1() + ".Address=" + tuple.getKey2() + " => "
-					+ tuple.getEntry().getClass() + "\n");
+		for (final EventType eventType : EventType.values()) {
+			for (final Map.Entry<XAddress, Object[]> e : this.listeners[eventType.ordinal()]
+					.entrySet()) {
+				for (final Object listener : e.getValue()) {
+					b.append("EventType=" + eventType + ".Address=" + e.getKey() + " => "
+							+ listener.getClass() + "\n");
+				}
+			}
 		}
 		return b.toString();
 	}
@@ -71,6 +71,16 @@ public interface ISyncLog extends XWritableChangeLog, IReadableSyncLog {
 	@Override
 	boolean truncateToRevision(long revisionNumber);
 
+	/**
+	 * Removes all entries and lets the log start at the given revision, as if
+	 * it had been created for a snapshot of that revision. Used after catching
+	 * up with a compacted range of server events, which cannot be logged
+	 * revision by revision.
+	 *
+	 * @param revisionNumber the new base and synchronized revision
+	 */
+	void rebase(long revisionNumber);
+
 	/**
 	 * Internal use
 	 *
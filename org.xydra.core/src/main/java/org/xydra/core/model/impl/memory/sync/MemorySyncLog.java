@@ -201,6 +201,21 @@ public class MemorySyncLog extends AbstractSyncLog implements ISyncLog {
 		}
 	}
 
+	@Override
+	@ModificationOperation
+	public synchronized void rebase(final long revisionNumber) {
+		final List<Long> toRemove = new LinkedList<Long>();
+		final Iterator<ISyncLogEntry> it = this.state.getSyncLogEntriesSince(0);
+		while (it.hasNext()) {
+			toRemove.add(it.next().getEvent().getRevisionNumber());
+		}
+		for (final Long l : toRemove) {
+			this.state.removeSyncLogEntryAt(l);
+		}
+		this.state.setBaseRevisionNumber(revisionNumber);
+		this.state.setSyncRevisionNumber(revisionNumber);
+	}
+
 	@Override
 	public boolean equals(final Object b) {
 
@@ -106,7 +106,11 @@ public class SerializedValue {
 
 		SerializingUtils.checkElementType(element, XADDRESS_ELEMENT);
 
-		final String data = getStringContent(element);
+		final Object content = element.getContent(NAME_DATA);
+		if (content instanceof XAddress) {
+			return (XAddress) content;
+		}
+		final String data = getStringContent(element, content);
 
 		try {
 			return Base.toAddress(data);
@@ -118,8 +122,12 @@ public class SerializedValue {
 	}
 
 	private static String getStringContent(final XydraElement element) {
+		return getStringContent(element, element.getContent(NAME_DATA));
+	}
 
-		final String data = SerializingUtils.toString(element.getContent(NAME_DATA));
+	private static String getStringContent(final XydraElement element, final Object content) {
+
+		final String data = SerializingUtils.toString(content);
 		if (data == null) {
 			throw new ParsingException(element, "Content must not be null.");
 		}
@@ -165,7 +173,11 @@ public class SerializedValue {
 
 		SerializingUtils.checkElementType(element, XID_ELEMENT);
 
-		final String data = getStringContent(element);
+		final Object content = element.getContent(NAME_DATA);
+		if (content instanceof XId) {
+			return (XId) content;
+		}
+		final String data = getStringContent(element, content);
 
 		try {
 			return Base.toId(data);
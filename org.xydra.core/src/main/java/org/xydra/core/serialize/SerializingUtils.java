@@ -46,11 +46,11 @@ public class SerializingUtils {
 	}
 
 	public static XId getOptionalXidAttribute(final XydraElement element, final String attributeName, final XId def) {
-		final String xidString = toString(element.getAttribute(attributeName));
-		if (xidString == null) {
+		final Object xid = element.getAttribute(attributeName);
+		if (xid == null) {
 			return def;
 		}
-		return Base.toId(xidString);
+		return toId(xid);
 	}
 
 	public static Object getRequiredAttribute(final XydraElement element, final String attribute) {
@@ -62,7 +62,7 @@ public class SerializingUtils {
 	}
 
 	public static XId getRequiredXidAttribute(final XydraElement element) {
-		return Base.toId(toString(getRequiredAttribute(element, XID_ATTRIBUTE)));
+		return toId(getRequiredAttribute(element, XID_ATTRIBUTE));
 	}
 
 	@SuppressWarnings("null")
@@ -168,11 +168,27 @@ public class SerializingUtils {
 		}
 	}
 
+	/**
+	 * @param object an {@link XId} (as returned by some parsers) or its string
+	 *            representation
+	 * @return the {@link XId} or null
+	 */
 	public static XId toId(final Object object) {
+		if (object instanceof XId) {
+			return (XId) object;
+		}
 		return object == null ? null : Base.toId(toString(object));
 	}
 
+	/**
+	 * @param object an {@link XAddress} (as returned by some parsers) or its
+	 *            string representation
+	 * @return the {@link XAddress} or null
+	 */
 	public static XAddress toAddress(final Object object) {
+		if (object instanceof XAddress) {
+			return (XAddress) object;
+		}
 		return object == null ? null : Base.toAddress(toString(object));
 	}
 
@@ -0,0 +1,310 @@
+package org.xydra.core.serialize.binary;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.xydra.annotations.RequiresAppEngine;
+import org.xydra.annotations.RunsInAppEngine;
+import org.xydra.annotations.RunsInGWT;
+import org.xydra.base.XAddress;
+import org.xydra.base.XId;
+import org.xydra.base.minio.MiniWriter;
+import org.xydra.base.value.XBooleanValue;
+import org.xydra.base.value.XDoubleValue;
+import org.xydra.base.value.XIntegerValue;
+import org.xydra.base.value.XLongValue;
+import org.xydra.core.serialize.AbstractXydraOut;
+import org.xydra.core.serialize.Base64;
+
+
+/**
+ * A compact binary encoding of the documents written via
+ * {@link org.xydra.core.serialize.XydraOut}, read by {@link BinaryParser}.
+ *
+ * Every token starts with a one-byte tag. Element types, attribute names,
+ * child names, map keys, {@link XId XIds} and enum constants are written as
+ * symbols: the first occurrence in a stream is written as a string and
+ * assigned the next index, all later occurrences are written as that index.
+ * Revision numbers and other integers are written as zig-zag varints, so a
+ * typical event takes only a few bytes more than the values it contains.
+ *
+ * The raw bytes are available via {@link #getBytes()}. {@link #getData()} and
+ * output to a {@link MiniWriter} use Base64 so that the encoding can be used
+ * wherever the text-based formats are used.
+ *
+ * @author xamde
+ */
+@RunsInGWT(false)
+@RunsInAppEngine(true)
+@RequiresAppEngine(false)
+public class BinaryOut extends AbstractXydraOut {
+
+	public static final String CONTENT_TYPE_BINARY = "application/x-xydra-binary";
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	static final byte VERSION = 1;
+
+	/* structure */
+	static final byte TAG_OPEN = 1;
+	static final byte TAG_ATTRIBUTE = 2;
+	static final byte TAG_CHILD = 3;
+	static final byte TAG_CLOSE = 4;
+	static final byte TAG_ARRAY = 5;
+	static final byte TAG_MAP = 6;
+	static final byte TAG_ENTRY = 7;
+	static final byte TAG_END = 8;
+
+	/* values */
+	static final byte TAG_NULL = 16;
+	static final byte TAG_FALSE = 17;
+	static final byte TAG_TRUE = 18;
+	static final byte TAG_INTEGER = 19;
+	static final byte TAG_LONG = 20;
+	static final byte TAG_DOUBLE = 21;
+	static final byte TAG_STRING = 22;
+	static final byte TAG_SYMBOL = 23;
+	static final byte TAG_ID = 24;
+	static final byte TAG_ADDRESS = 25;
+
+	private byte[] buffer = new byte[256];
+
+	private int length = 0;
+
+	private final Map<String, Integer> symbols = new HashMap<String, Integer>();
+
+	/** true if Base64 is written to a writer passed by the caller */
+	private final boolean writeText;
+
+	public BinaryOut() {
+		super();
+		this.writeText = false;
+		init();
+	}
+
+	/**
+	 * @param writer receives the Base64 encoded document once it is complete
+	 */
+	public BinaryOut(final MiniWriter writer) {
+		super(writer);
+		this.writeText = true;
+		init();
+	}
+
+	private void init() {
+		writeByte(VERSION);
+	}
+
+	/**
+	 * @return the encoded document
+	 * @throws IllegalStateException if the document is not complete yet
+	 */
+	public byte[] getBytes() {
+		if (!isClosed()) {
+			throw new IllegalStateException("cannot get result before closing all elements");
+		}
+		return Arrays.copyOf(this.buffer, this.length);
+	}
+
+	@Override
+	public String getData() {
+		if (this.writeText) {
+			return super.getData();
+		}
+		return Base64.encode(getBytes(), false);
+	}
+
+	@Override
+	public String getContentType() {
+		return CONTENT_TYPE_BINARY;
+	}
+
+	private void ensureCapacity(final int additional) {
+		if (this.length + additional > this.buffer.length) {
+			this.buffer = Arrays.copyOf(this.buffer,
+					Math.max(this.buffer.length * 2, this.length + additional));
+		}
+	}
+
+	private void writeByte(final byte b) {
+		ensureCapacity(1);
+		this.buffer[this.length++] = b;
+	}
+
+	private void writeVarLong(final long value) {
+		ensureCapacity(10);
+		long v = value;
+		while ((v & ~0x7FL) != 0) {
+			this.buffer[this.length++] = (byte) ((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		this.buffer[this.length++] = (byte) v;
+	}
+
+	private void writeZigZag(final long value) {
+		writeVarLong((value << 1) ^ (value >> 63));
+	}
+
+	private void writeString(final String s) {
+		final byte[] bytes = s.getBytes(UTF8);
+		writeVarLong(bytes.length);
+		ensureCapacity(bytes.length);
+		System.arraycopy(bytes, 0, this.buffer, this.length, bytes.length);
+		this.length += bytes.length;
+	}
+
+	/**
+	 * 0 followed by the string for a new symbol, index + 1 for a known one
+	 */
+	private void writeSymbol(final String s) {
+		final Integer index = this.symbols.get(s);
+		if (index == null) {
+			writeVarLong(0);
+			writeString(s);
+			this.symbols.put(s, this.symbols.size());
+		} else {
+			writeVarLong(index + 1);
+		}
+	}
+
+	private void writeValue(final Object value) {
+		if (value == null) {
+			writeByte(TAG_NULL);
+		} else if (value instanceof String) {
+			writeByte(TAG_STRING);
+			writeString((String) value);
+		} else if (value instanceof XId) {
+			writeByte(TAG_ID);
+			writeSymbol(value.toString());
+		} else if (value instanceof XAddress) {
+			writeAddress((XAddress) value);
+		} else if (value instanceof Long) {
+			writeByte(TAG_LONG);
+			writeZigZag((Long) value);
+		} else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			writeByte(TAG_INTEGER);
+			writeZigZag(((Number) value).intValue());
+		} else if (value instanceof Boolean) {
+			writeByte((Boolean) value ? TAG_TRUE : TAG_FALSE);
+		} else if (value instanceof Double || value instanceof Float) {
+			writeDouble(((Number) value).doubleValue());
+		} else if (value instanceof Enum<?>) {
+			writeByte(TAG_SYMBOL);
+			writeSymbol(value.toString());
+		} else if (value instanceof XLongValue) {
+			writeByte(TAG_LONG);
+			writeZigZag(((XLongValue) value).contents());
+		} else if (value instanceof XIntegerValue) {
+			writeByte(TAG_INTEGER);
+			writeZigZag(((XIntegerValue) value).contents());
+		} else if (value instanceof XDoubleValue) {
+			writeDouble(((XDoubleValue) value).contents());
+		} else if (value instanceof XBooleanValue) {
+			writeByte(((XBooleanValue) value).contents() ? TAG_TRUE : TAG_FALSE);
+		} else {
+			writeByte(TAG_STRING);
+			writeString(value.toString());
+		}
+	}
+
+	private void writeDouble(final double value) {
+		writeByte(TAG_DOUBLE);
+		final long bits = Double.doubleToLongBits(value);
+		ensureCapacity(8);
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			this.buffer[this.length++] = (byte) (bits >>> shift);
+		}
+	}
+
+	/**
+	 * A bit mask of the non-null parts followed by their symbols
+	 */
+	private void writeAddress(final XAddress address) {
+		writeByte(TAG_ADDRESS);
+		final XId[] parts = { address.getRepository(), address.getModel(), address.getObject(),
+				address.getField() };
+		int mask = 0;
+		for (int i = 0; i < parts.length; i++) {
+			if (parts[i] != null) {
+				mask |= 1 << i;
+			}
+		}
+		writeByte((byte) mask);
+		for (final XId part : parts) {
+			if (part != null) {
+				writeSymbol(part.toString());
+			}
+		}
+	}
+
+	@Override
+	protected void outpuEnd() {
+		if (this.writeText) {
+			write(Base64.encode(this.buffer, 0, this.length, false));
+		}
+	}
+
+	@Override
+	protected <T> void outputAttribute(final Frame element, final String name, final T value) {
+		writeByte(TAG_ATTRIBUTE);
+		writeSymbol(name);
+		writeValue(value);
+	}
+
+	@Override
+	protected void outputBeginArray(final Frame array) {
+		writeByte(TAG_ARRAY);
+	}
+
+	@Override
+	protected void outputBeginMap(final Frame map) {
+		writeByte(TAG_MAP);
+	}
+
+	@Override
+	protected void outputChild(final Frame child) {
+		writeByte(TAG_CHILD);
+		writeSymbol(child.name);
+	}
+
+	@Override
+	protected void outputCloseElement(final Frame element) {
+		writeByte(TAG_CLOSE);
+	}
+
+	@Override
+	protected void outputEndArray(final Frame array) {
+		writeByte(TAG_END);
+	}
+
+	@Override
+	protected void outputEndMap(final Frame map) {
+		writeByte(TAG_END);
+	}
+
+	@Override
+	protected void outputEntry(final Frame entry) {
+		writeByte(TAG_ENTRY);
+		writeSymbol(entry.name);
+	}
+
+	@Override
+	protected void outputNullElement(final Frame container) {
+		writeByte(TAG_NULL);
+	}
+
+	@Override
+	protected void outputOpenElement(final Frame element) {
+		// the type is always written, it costs only one byte once it is known
+		writeByte(TAG_OPEN);
+		writeSymbol(element.name);
+	}
+
+	@Override
+	protected <T> void outputValue(final Frame container, final T value) {
+		writeValue(value);
+	}
+
+}
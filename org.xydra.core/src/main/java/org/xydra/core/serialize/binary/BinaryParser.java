@@ -0,0 +1,262 @@
+package org.xydra.core.serialize.binary;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.xydra.annotations.RequiresAppEngine;
+import org.xydra.annotations.RunsInAppEngine;
+import org.xydra.annotations.RunsInGWT;
+import org.xydra.base.Base;
+import org.xydra.base.XId;
+import org.xydra.base.minio.MiniReader;
+import org.xydra.core.serialize.Base64;
+import org.xydra.core.serialize.XydraElement;
+import org.xydra.core.serialize.XydraParser;
+import org.xydra.core.serialize.json.JsonElement;
+import org.xydra.core.serialize.json.JsonEncoder;
+
+
+/**
+ * Parses documents written by {@link BinaryOut}.
+ *
+ * The document is decoded into the same tree of maps, lists and values as
+ * produced by the {@link org.xydra.core.serialize.json.JsonParser}, so it is
+ * accessed via {@link JsonElement} and behaves exactly like a JSON document.
+ * {@link XId XIds} and addresses are returned as {@link XId} and
+ * {@link org.xydra.base.XAddress} instances, each symbol is converted to an
+ * {@link XId} only once per document.
+ *
+ * @author xamde
+ */
+@RunsInGWT(false)
+@RunsInAppEngine(true)
+@RequiresAppEngine(false)
+public class BinaryParser implements XydraParser {
+
+	private static class Reader {
+
+		private final byte[] data;
+
+		private int pos = 0;
+
+		private final List<String> symbols = new ArrayList<String>();
+
+		/** XIds of symbols that have been used as ids, by symbol index */
+		private final List<XId> ids = new ArrayList<XId>();
+
+		Reader(final byte[] data) {
+			this.data = data;
+		}
+
+		private byte readByte() {
+			if (this.pos >= this.data.length) {
+				throw new IllegalArgumentException("unexpected end of binary document");
+			}
+			return this.data[this.pos++];
+		}
+
+		private long readVarLong() {
+			long result = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				final byte b = readByte();
+				result |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return result;
+				}
+			}
+			throw new IllegalArgumentException("malformed varint at " + this.pos);
+		}
+
+		private long readZigZag() {
+			final long v = readVarLong();
+			return (v >>> 1) ^ -(v & 1);
+		}
+
+		private String readString() {
+			final int length = (int) readVarLong();
+			if (length < 0 || this.pos + length > this.data.length) {
+				throw new IllegalArgumentException("malformed string at " + this.pos);
+			}
+			final String s = new String(this.data, this.pos, length, BinaryOut.UTF8);
+			this.pos += length;
+			return s;
+		}
+
+		private int readSymbolIndex() {
+			final long ref = readVarLong();
+			if (ref == 0) {
+				this.symbols.add(readString());
+				this.ids.add(null);
+				return this.symbols.size() - 1;
+			}
+			if (ref > this.symbols.size()) {
+				throw new IllegalArgumentException("unknown symbol " + ref + " at " + this.pos);
+			}
+			return (int) ref - 1;
+		}
+
+		private String readSymbol() {
+			return this.symbols.get(readSymbolIndex());
+		}
+
+		private XId readId() {
+			final int index = readSymbolIndex();
+			XId id = this.ids.get(index);
+			if (id == null) {
+				id = Base.toId(this.symbols.get(index));
+				this.ids.set(index, id);
+			}
+			return id;
+		}
+
+		private Object readNode(final byte tag) {
+			switch (tag) {
+			case BinaryOut.TAG_OPEN:
+				return readElement();
+			case BinaryOut.TAG_ARRAY:
+				return readArray();
+			case BinaryOut.TAG_MAP:
+				return readMap();
+			default:
+				return readValue(tag);
+			}
+		}
+
+		private Map<String, Object> readElement() {
+			final Map<String, Object> element = new HashMap<String, Object>();
+			element.put(JsonEncoder.PROPERTY_TYPE, readSymbol());
+			while (true) {
+				final byte tag = readByte();
+				switch (tag) {
+				case BinaryOut.TAG_ATTRIBUTE:
+					final String attribute = readSymbol();
+					element.put(attribute, readValue(readByte()));
+					break;
+				case BinaryOut.TAG_CHILD:
+					final String child = readSymbol();
+					element.put(child, readNode(readByte()));
+					break;
+				case BinaryOut.TAG_CLOSE:
+					return element;
+				default:
+					throw new IllegalArgumentException("unexpected tag " + tag + " in element at "
+							+ this.pos);
+				}
+			}
+		}
+
+		private List<Object> readArray() {
+			final List<Object> array = new ArrayList<Object>();
+			byte tag;
+			while ((tag = readByte()) != BinaryOut.TAG_END) {
+				array.add(readNode(tag));
+			}
+			return array;
+		}
+
+		private Map<String, Object> readMap() {
+			final Map<String, Object> map = new HashMap<String, Object>();
+			byte tag;
+			while ((tag = readByte()) != BinaryOut.TAG_END) {
+				if (tag != BinaryOut.TAG_ENTRY) {
+					throw new IllegalArgumentException("unexpected tag " + tag + " in map at "
+							+ this.pos);
+				}
+				final String key = readSymbol();
+				map.put(key, readNode(readByte()));
+			}
+			return map;
+		}
+
+		private Object readValue(final byte tag) {
+			switch (tag) {
+			case BinaryOut.TAG_NULL:
+				return null;
+			case BinaryOut.TAG_FALSE:
+				return Boolean.FALSE;
+			case BinaryOut.TAG_TRUE:
+				return Boolean.TRUE;
+			case BinaryOut.TAG_INTEGER:
+				return (int) readZigZag();
+			case BinaryOut.TAG_LONG:
+				return readZigZag();
+			case BinaryOut.TAG_DOUBLE:
+				long bits = 0;
+				for (int i = 0; i < 8; i++) {
+					bits = bits << 8 | readByte() & 0xFF;
+				}
+				return Double.longBitsToDouble(bits);
+			case BinaryOut.TAG_STRING:
+				return readString();
+			case BinaryOut.TAG_SYMBOL:
+				return readSymbol();
+			case BinaryOut.TAG_ID:
+				return readId();
+			case BinaryOut.TAG_ADDRESS:
+				final int mask = readByte();
+				final XId[] parts = new XId[4];
+				for (int i = 0; i < parts.length; i++) {
+					if ((mask & 1 << i) != 0) {
+						parts[i] = readId();
+					}
+				}
+				return Base.toAddress(parts[0], parts[1], parts[2], parts[3]);
+			default:
+				throw new IllegalArgumentException("unexpected tag " + tag + " at " + this.pos);
+			}
+		}
+
+		XydraElement parse() {
+			final byte version = readByte();
+			if (version != BinaryOut.VERSION) {
+				throw new IllegalArgumentException("unsupported binary version " + version);
+			}
+			final byte tag = readByte();
+			if (tag == BinaryOut.TAG_NULL) {
+				return null;
+			} else if (tag != BinaryOut.TAG_OPEN) {
+				throw new IllegalArgumentException("the root must be an element or null, was tag "
+						+ tag);
+			}
+			return new JsonElement(readElement(), null);
+		}
+
+	}
+
+	/**
+	 * @param data as returned by {@link BinaryOut#getBytes()}
+	 * @return the root element or null
+	 * @throws IllegalArgumentException if the given data is not a valid
+	 *             document.
+	 */
+	public XydraElement parse(final byte[] data) throws IllegalArgumentException {
+		return new Reader(data).parse();
+	}
+
+	/**
+	 * @param data as returned by {@link BinaryOut#getData()}, i.e. Base64
+	 */
+	@Override
+	public XydraElement parse(final String data) throws IllegalArgumentException {
+		return parse(Base64.decode(data));
+	}
+
+	@Override
+	public XydraElement parse(final MiniReader miniReader) throws IllegalArgumentException {
+		final StringBuilder data = new StringBuilder();
+		final char[] buffer = new char[4096];
+		int read;
+		while ((read = miniReader.read(buffer, 0, buffer.length)) > 0) {
+			data.append(buffer, 0, read);
+		}
+		return parse(data.toString());
+	}
+
+	@Override
+	public String getContentType() {
+		return BinaryOut.CONTENT_TYPE_BINARY;
+	}
+
+}
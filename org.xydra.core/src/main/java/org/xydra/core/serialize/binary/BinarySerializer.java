@@ -0,0 +1,38 @@
+package org.xydra.core.serialize.binary;
+
+import org.xydra.annotations.RequiresAppEngine;
+import org.xydra.annotations.RunsInAppEngine;
+import org.xydra.annotations.RunsInGWT;
+import org.xydra.base.minio.MiniWriter;
+import org.xydra.core.serialize.XydraOut;
+import org.xydra.core.serialize.XydraSerializer;
+
+
+/**
+ * {@link XydraSerializer} implementations that creates {@link BinaryOut}
+ * instances.
+ *
+ * @author xamde
+ *
+ */
+@RunsInGWT(false)
+@RunsInAppEngine(true)
+@RequiresAppEngine(false)
+public class BinarySerializer implements XydraSerializer {
+
+	@Override
+	public XydraOut create() {
+		return new BinaryOut();
+	}
+
+	@Override
+	public XydraOut create(final MiniWriter writer) {
+		return new BinaryOut(writer);
+	}
+
+	@Override
+	public String getContentType() {
+		return BinaryOut.CONTENT_TYPE_BINARY;
+	}
+
+}
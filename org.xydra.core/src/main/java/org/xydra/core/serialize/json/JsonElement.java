@@ -34,7 +34,9 @@ public class JsonElement extends AbstractJsonElement {
 
 	public JsonElement(final Map<String, Object> data, final String type) {
 		this.data = data;
-		final Object key = this.data.get(JsonEncoder.PROPERTY_TYPE);
+		// a lazy object would have to be read completely to find a missing type
+		final Object key = data instanceof JsonPullParser.LazyObject ? ((JsonPullParser.LazyObject) data)
+				.getTypeProperty() : this.data.get(JsonEncoder.PROPERTY_TYPE);
 		if (key != null) {
 			this.type = key.toString();
 		} else if (type != null) {
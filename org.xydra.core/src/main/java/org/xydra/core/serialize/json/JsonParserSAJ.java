@@ -57,10 +57,21 @@ public class JsonParserSAJ {
     }
 
     public void parse(final MiniReader reader) throws JSONException {
-        this.reader = reader.markSupported() ? reader : new MiniBufferedReader(reader);
+        setReader(reader);
         parseValue();
     }
 
+    /**
+     * Use the given reader for the following calls to the next... and
+     * parse... methods, e.g. to pull values one by one instead of parsing a
+     * whole value with {@link #parse(MiniReader)}.
+     *
+     * @param reader
+     */
+    public void setReader(final MiniReader reader) {
+        this.reader = reader.markSupported() ? reader : new MiniBufferedReader(reader);
+    }
+
     /**
      * Construct a JSONTokener from a string.
      *
@@ -499,18 +510,30 @@ public class JsonParserSAJ {
          * formatting character.
          */
 
+        s = nextUnquotedText(c);
+        if(s.equals("")) {
+            throw syntaxError("Missing value");
+        }
+        parsePrimitiveValue(s);
+    }
+
+    /**
+     * Return the characters up to the next formatting character, starting
+     * with the given, already consumed, character.
+     *
+     * @param first The first character of the text.
+     * @return The trimmed text, maybe empty.
+     * @throws JSONException if there is an underlying IO error
+     */
+    public String nextUnquotedText(final char first) throws JSONException {
+        char c = first;
         final StringBuffer sb = new StringBuffer();
         while(c >= ' ' && ",:]}/\\\"[{;=#".indexOf(c) < 0) {
             sb.append(c);
             c = next();
         }
         back();
-
-        s = sb.toString().trim();
-        if(s.equals("")) {
-            throw syntaxError("Missing value");
-        }
-        parsePrimitiveValue(s);
+        return sb.toString().trim();
     }
 
     /**
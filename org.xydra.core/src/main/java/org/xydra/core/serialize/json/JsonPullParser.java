@@ -0,0 +1,493 @@
+package org.xydra.core.serialize.json;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.xydra.annotations.RequiresAppEngine;
+import org.xydra.annotations.RunsInAppEngine;
+import org.xydra.annotations.RunsInGWT;
+import org.xydra.base.minio.MiniReader;
+import org.xydra.base.minio.MiniStringReader;
+import org.xydra.core.serialize.XydraElement;
+import org.xydra.core.serialize.XydraParser;
+
+/**
+ * {@link XydraParser} that reads JSON on demand instead of building the whole
+ * tree up front like {@link JsonParser}.
+ *
+ * The returned elements are backed by a map and lists that pull the next
+ * tokens from the {@link JsonParserSAJ} tokenizer when a property or array
+ * item is requested that has not been read yet. Everything read before is
+ * kept, so elements can be accessed in any order and more than once. Reading
+ * e.g. a single property of a large document or iterating over the first
+ * events of a batch only reads as far as needed.
+ *
+ * The type of an object is taken from its first property "$t" (
+ * {@link JsonEncoder#PROPERTY_TYPE}), which is where {@link JsonOut} writes
+ * it. A "$t" property further down does not change the type.
+ *
+ * All elements of a document share one tokenizer and synchronize on it, so
+ * they can be used from several threads. Different documents are parsed
+ * independently. Syntax errors are reported as
+ * {@link IllegalArgumentException} when the broken part is read, which may be
+ * after {@link #parse(MiniReader)} has returned.
+ *
+ * @author xamde
+ */
+@RunsInGWT(true)
+@RunsInAppEngine(true)
+@RequiresAppEngine(false)
+public class JsonPullParser implements XydraParser {
+
+	/**
+	 * Receives the primitive values of {@link JsonParserSAJ#parsePrimitiveValue(String)}
+	 */
+	private static class PrimitiveSaj implements SAJ {
+
+		Object value;
+
+		@Override
+		public void onDouble(final double d) {
+			this.value = d;
+		}
+
+		@Override
+		public void onInteger(final int i) {
+			this.value = i;
+		}
+
+		@Override
+		public void onBoolean(final boolean b) {
+			this.value = b;
+		}
+
+		@Override
+		public void onString(final String s) {
+			this.value = s;
+		}
+
+		@Override
+		public void arrayStart() {
+			throw new IllegalStateException();
+		}
+
+		@Override
+		public void arrayEnd() {
+			throw new IllegalStateException();
+		}
+
+		@Override
+		public void objectStart() {
+			throw new IllegalStateException();
+		}
+
+		@Override
+		public void objectEnd() {
+			throw new IllegalStateException();
+		}
+
+		@Override
+		public void onNull() {
+			this.value = null;
+		}
+
+		@Override
+		public void onLong(final long l) {
+			this.value = l;
+		}
+
+		@Override
+		public void onKey(final String key) {
+			throw new IllegalStateException();
+		}
+
+	}
+
+	/**
+	 * The read position in one document, shared by all its containers. Also
+	 * the lock for all of them.
+	 */
+	private static class Cursor {
+
+		private final PrimitiveSaj primitive = new PrimitiveSaj();
+
+		private final JsonParserSAJ tokenizer = new JsonParserSAJ(this.primitive);
+
+		/** the innermost container that is not complete yet */
+		private Container open;
+
+		/** set once a syntax error occurred, the position is lost then */
+		private IllegalArgumentException error;
+
+		Cursor(final MiniReader reader) {
+			this.tokenizer.setReader(reader);
+		}
+
+		/**
+		 * Reads the next item of the given container, first reading all
+		 * containers that have been opened inside it to their end.
+		 *
+		 * @return false if the container is complete
+		 */
+		boolean advance(final Container container) {
+			if (container.complete) {
+				return false;
+			}
+			if (this.error != null) {
+				throw this.error;
+			}
+			try {
+				while (this.open != container) {
+					while (this.open.readNext()) {
+						// buffered by the container
+					}
+				}
+				return container.readNext();
+			} catch (final JSONException e) {
+				this.error = new IllegalArgumentException(e);
+				throw this.error;
+			}
+		}
+
+		/**
+		 * @param parent
+		 * @return the next value: a primitive, a {@link LazyObject} or a
+		 *         {@link LazyArray}
+		 * @throws JSONException
+		 */
+		Object readValue(final Container parent) throws JSONException {
+			final char c = this.tokenizer.nextClean();
+			switch (c) {
+			case '"':
+			case '\'':
+				return this.tokenizer.nextString(c);
+			case '{':
+				return new LazyObject(this, parent);
+			case '[':
+				return new LazyArray(this, parent, ']');
+			case '(':
+				return new LazyArray(this, parent, ')');
+			}
+			final String s = this.tokenizer.nextUnquotedText(c);
+			if (s.equals("")) {
+				throw this.tokenizer.syntaxError("Missing value");
+			}
+			this.tokenizer.parsePrimitiveValue(s);
+			return this.primitive.value;
+		}
+
+		void closed(final Container container) {
+			container.complete = true;
+			this.open = container.parent;
+		}
+
+	}
+
+	private static abstract class Container {
+
+		final Cursor cursor;
+
+		/** null for the root */
+		final Container parent;
+
+		boolean first = true;
+
+		boolean complete = false;
+
+		Container(final Cursor cursor, final Container parent) {
+			this.cursor = cursor;
+			this.parent = parent;
+			cursor.open = this;
+		}
+
+		/**
+		 * Must only be called if this is the innermost open container.
+		 *
+		 * @return false if the end of this container has been reached
+		 * @throws JSONException
+		 */
+		abstract boolean readNext() throws JSONException;
+
+		/**
+		 * Reads all items of this container, the caller must synchronize on
+		 * the cursor.
+		 */
+		void readAll() {
+			while (this.cursor.advance(this)) {
+				// buffered
+			}
+		}
+
+	}
+
+	/**
+	 * A JSON object whose properties are read when they are first requested.
+	 * {@link #get(Object)} and {@link #containsKey(Object)} read only up to
+	 * the property, all other methods read the whole object.
+	 */
+	static class LazyObject extends AbstractMap<String, Object> {
+
+		private final Container reader;
+
+		/** read properties in document order */
+		private final Map<String, Object> properties = new LinkedHashMap<String, Object>();
+
+		private String lastKey;
+
+		LazyObject(final Cursor cursor, final Container parent) {
+			this.reader = new Container(cursor, parent) {
+
+				@Override
+				boolean readNext() throws JSONException {
+					return readProperty(this);
+				}
+
+			};
+		}
+
+		private boolean readProperty(final Container container) throws JSONException {
+			final JsonParserSAJ tokenizer = container.cursor.tokenizer;
+			char c = tokenizer.nextClean();
+			if (container.first) {
+				container.first = false;
+			} else {
+				/* Pairs are separated by ','. We will also tolerate ';'. */
+				switch (c) {
+				case ';':
+				case ',':
+					c = tokenizer.nextClean();
+					break;
+				case '}':
+					container.cursor.closed(container);
+					return false;
+				default:
+					throw tokenizer.syntaxError("Expected a ',' or '}'");
+				}
+			}
+			switch (c) {
+			case 0:
+				throw tokenizer.syntaxError("A JSONObject text must end with '}'");
+			case '}':
+				container.cursor.closed(container);
+				return false;
+			case '"':
+			case '\'':
+				this.lastKey = tokenizer.nextString(c);
+				break;
+			default:
+				throw tokenizer.syntaxError("Expected a quoted key");
+			}
+			/* The key is followed by ':'. We will also tolerate '=' or '=>'. */
+			c = tokenizer.nextClean();
+			if (c == '=') {
+				if (tokenizer.next() != '>') {
+					tokenizer.back();
+				}
+			} else if (c != ':') {
+				throw tokenizer.syntaxError("Expected a ':' after a key");
+			}
+			this.properties.put(this.lastKey, container.cursor.readValue(container));
+			return true;
+		}
+
+		/**
+		 * @return the value of "$t" if it is the first property, else null
+		 */
+		Object getTypeProperty() {
+			synchronized (this.reader.cursor) {
+				if (this.properties.isEmpty()) {
+					this.reader.cursor.advance(this.reader);
+				}
+				if (this.properties.isEmpty()) {
+					return null;
+				}
+				final String firstKey = this.properties.keySet().iterator().next();
+				return JsonEncoder.PROPERTY_TYPE.equals(firstKey) ? this.properties
+						.get(firstKey) : null;
+			}
+		}
+
+		@Override
+		public boolean containsKey(final Object key) {
+			synchronized (this.reader.cursor) {
+				if (this.properties.containsKey(key)) {
+					return true;
+				}
+				while (this.reader.cursor.advance(this.reader)) {
+					if (this.lastKey.equals(key)) {
+						return true;
+					}
+				}
+				return false;
+			}
+		}
+
+		@Override
+		public Object get(final Object key) {
+			synchronized (this.reader.cursor) {
+				return containsKey(key) ? this.properties.get(key) : null;
+			}
+		}
+
+		@Override
+		public Set<Map.Entry<String, Object>> entrySet() {
+			synchronized (this.reader.cursor) {
+				this.reader.readAll();
+				// never changed again
+				return Collections.unmodifiableMap(this.properties).entrySet();
+			}
+		}
+
+	}
+
+	/**
+	 * A JSON array whose items are read when they are first requested.
+	 * {@link #get(int)} and {@link #iterator()} read only up to the requested
+	 * item, all other methods read the whole array.
+	 */
+	static class LazyArray extends AbstractList<Object> {
+
+		private final Container reader;
+
+		private final List<Object> items = new ArrayList<Object>();
+
+		LazyArray(final Cursor cursor, final Container parent, final char close) {
+			this.reader = new Container(cursor, parent) {
+
+				@Override
+				boolean readNext() throws JSONException {
+					return readItem(this, close);
+				}
+
+			};
+		}
+
+		private boolean readItem(final Container container, final char close)
+				throws JSONException {
+			final JsonParserSAJ tokenizer = container.cursor.tokenizer;
+			char c = tokenizer.nextClean();
+			if (container.first) {
+				container.first = false;
+				if (c == ']' || c == ')') {
+					container.cursor.closed(container);
+					return false;
+				}
+			} else {
+				switch (c) {
+				case ';':
+				case ',':
+					c = tokenizer.nextClean();
+					if (c == ']') {
+						container.cursor.closed(container);
+						return false;
+					}
+					break;
+				case ']':
+				case ')':
+					if (c != close) {
+						throw tokenizer.syntaxError("Expected a '" + close + "'");
+					}
+					container.cursor.closed(container);
+					return false;
+				default:
+					throw tokenizer.syntaxError("Expected a ',' or ']'");
+				}
+			}
+			tokenizer.back();
+			if (c == ',') {
+				this.items.add(null);
+			} else {
+				this.items.add(container.cursor.readValue(container));
+			}
+			return true;
+		}
+
+		@Override
+		public Object get(final int index) {
+			synchronized (this.reader.cursor) {
+				while (this.items.size() <= index && this.reader.cursor.advance(this.reader)) {
+					// buffered
+				}
+				return this.items.get(index);
+			}
+		}
+
+		@Override
+		public int size() {
+			synchronized (this.reader.cursor) {
+				this.reader.readAll();
+				return this.items.size();
+			}
+		}
+
+		@Override
+		public Iterator<Object> iterator() {
+			return new Iterator<Object>() {
+
+				private int next = 0;
+
+				@Override
+				public boolean hasNext() {
+					synchronized (LazyArray.this.reader.cursor) {
+						return this.next < LazyArray.this.items.size()
+								|| LazyArray.this.reader.cursor.advance(LazyArray.this.reader);
+					}
+				}
+
+				@Override
+				public Object next() {
+					synchronized (LazyArray.this.reader.cursor) {
+						if (!hasNext()) {
+							throw new NoSuchElementException();
+						}
+						return LazyArray.this.items.get(this.next++);
+					}
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+
+			};
+		}
+
+	}
+
+	@Override
+	public XydraElement parse(final String data) throws IllegalArgumentException {
+		return parse(new MiniStringReader(data));
+	}
+
+	@Override
+	public XydraElement parse(final MiniReader miniReader) throws IllegalArgumentException {
+		final Cursor cursor = new Cursor(miniReader);
+		final Object root;
+		try {
+			root = cursor.readValue(null);
+		} catch (final JSONException e) {
+			throw new IllegalArgumentException(e);
+		}
+		if (root instanceof LazyObject) {
+			return new JsonElement((LazyObject) root, null);
+		}
+		if (root == null || root instanceof LazyArray) {
+			return null;
+		}
+		throw new IllegalArgumentException("the root must be an object or null, was: " + root);
+	}
+
+	@Override
+	public String getContentType() {
+		return "application/json";
+	}
+
+}
@@ -22,6 +22,9 @@ import org.xydra.core.serialize.XydraParser;
  * '<foo>hello<world>bar</world>baz</foo>' -- the inner text nodes 'hello' and
  * 'baz' will just be silently dropped.
  *
+ * Builds a DOM of the whole document, see {@link XmlPullParser} for a parser
+ * that reads on demand.
+ *
  * @author dscharrer
  *
  */
@@ -29,22 +32,28 @@ import org.xydra.core.serialize.XydraParser;
 @RequiresAppEngine(false)
 public class XmlParser implements XydraParser {
 
-	private static DocumentBuilder parser = null;
+	/**
+	 * DocumentBuilders are not thread-safe, so each thread gets its own
+	 * instead of parsing one document at a time
+	 */
+	private static final ThreadLocal<DocumentBuilder> parser = new ThreadLocal<DocumentBuilder>();
 
-	private synchronized static DocumentBuilder getParser() throws ParserConfigurationException {
-		if (parser == null) {
+	private static DocumentBuilder getParser() throws ParserConfigurationException {
+		DocumentBuilder builder = parser.get();
+		if (builder == null) {
 			final DocumentBuilderFactory fac = DocumentBuilderFactory.newInstance();
 			fac.setIgnoringComments(true);
 			fac.setNamespaceAware(false);
 			fac.setValidating(false);
 			fac.setFeature("http://apache.org/xml/features/dom/defer-node-expansion", false);
-			parser = fac.newDocumentBuilder();
+			builder = fac.newDocumentBuilder();
+			parser.set(builder);
 		}
-		return parser;
+		return builder;
 	}
 
 	@Override
-	public synchronized XydraElement parse(final String string) {
+	public XydraElement parse(final String string) {
 		final InputSource is = new InputSource(new StringReader(string));
 		Document document;
 		try {
@@ -0,0 +1,446 @@
+package org.xydra.core.serialize.xml;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.xydra.annotations.NeverNull;
+import org.xydra.annotations.RequiresAppEngine;
+import org.xydra.annotations.RunsInGWT;
+import org.xydra.core.serialize.XydraElement;
+import org.xydra.index.iterator.ITransformer;
+import org.xydra.index.iterator.Iterators;
+import org.xydra.index.query.Pair;
+
+/**
+ * {@link XydraElement} implementation that reads its content from a StAX
+ * {@link XMLStreamReader} when it is first requested, see
+ * {@link XmlPullParser}. Behaves like {@link XmlElement}, including
+ * {@link #getChildrenByType(String, String)} and friends searching all
+ * descendants, not only the children.
+ *
+ * The tag name and attributes are known as soon as the element exists. Child
+ * elements and text are kept once read, so an element can be accessed in any
+ * order and more than once. All elements of a document share one reader and
+ * synchronize on it.
+ *
+ * @author xamde
+ */
+@RunsInGWT(false)
+@RequiresAppEngine(false)
+public class XmlPullElement extends AbstractXmlElement {
+
+	/**
+	 * The read position in one document, shared by all its elements. Also the
+	 * lock for all of them.
+	 */
+	static class Cursor {
+
+		private final XMLStreamReader reader;
+
+		/** the innermost element that is not complete yet */
+		private XmlPullElement open;
+
+		/** set once an error occurred, the position is lost then */
+		private IllegalArgumentException error;
+
+		Cursor(final XMLStreamReader reader) {
+			this.reader = reader;
+		}
+
+		/**
+		 * Reads the next node of the given element, first reading all
+		 * elements that have been opened inside it to their end.
+		 *
+		 * @return false if the element is complete
+		 */
+		private boolean advance(final XmlPullElement element) {
+			if (element.complete) {
+				return false;
+			}
+			if (this.error != null) {
+				throw this.error;
+			}
+			try {
+				while (this.open != element) {
+					while (this.open.readNext()) {
+						// buffered by the element
+					}
+				}
+				return element.readNext();
+			} catch (final XMLStreamException e) {
+				this.error = new IllegalArgumentException(e);
+				throw this.error;
+			}
+		}
+
+	}
+
+	private static final ITransformer<XmlPullElement, XydraElement> WRAP = new ITransformer<XmlPullElement, XydraElement>() {
+
+		@Override
+		public XydraElement transform(final XmlPullElement in) {
+			return wrap(in);
+		}
+
+	};
+
+	private static final ITransformer<XmlPullElement, Object> VALUE = new ITransformer<XmlPullElement, Object>() {
+
+		@Override
+		public Object transform(final XmlPullElement in) {
+			return getValue(in);
+		}
+
+	};
+
+	/**
+	 * Iterates the child or descendant elements in document order, reading
+	 * them as needed.
+	 */
+	private class ElementIterator implements Iterator<XmlPullElement> {
+
+		/** null for all */
+		private final String type;
+
+		/** null for all */
+		private final String attribute;
+
+		private final boolean descendants;
+
+		/** the elements whose nodes are being iterated, innermost last */
+		private final List<XmlPullElement> elements = new ArrayList<XmlPullElement>();
+
+		/** the next node index in each of the elements */
+		private final List<Integer> positions = new ArrayList<Integer>();
+
+		private XmlPullElement next;
+
+		ElementIterator(final String type, final String attribute, final boolean descendants) {
+			this.type = type;
+			this.attribute = attribute;
+			this.descendants = descendants;
+			this.elements.add(XmlPullElement.this);
+			this.positions.add(0);
+		}
+
+		private XmlPullElement findNext() {
+			synchronized (XmlPullElement.this.cursor) {
+				while (!this.elements.isEmpty()) {
+					final int last = this.elements.size() - 1;
+					final int position = this.positions.get(last);
+					final Object node = this.elements.get(last).node(position);
+					if (node == null) {
+						this.elements.remove(last);
+						this.positions.remove(last);
+						continue;
+					}
+					this.positions.set(last, position + 1);
+					if (node instanceof XmlPullElement) {
+						final XmlPullElement element = (XmlPullElement) node;
+						if (this.descendants) {
+							this.elements.add(element);
+							this.positions.add(0);
+						}
+						if ((this.type == null || this.type.equals(element.name))
+								&& (this.attribute == null || element.getAttribute(this.attribute) != null)) {
+							return element;
+						}
+					}
+				}
+				return null;
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (this.next == null) {
+				this.next = findNext();
+			}
+			return this.next != null;
+		}
+
+		@Override
+		public XmlPullElement next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			final XmlPullElement result = this.next;
+			this.next = null;
+			return result;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+	}
+
+	private final Cursor cursor;
+
+	/** null for the root */
+	private final XmlPullElement parent;
+
+	private final String name;
+
+	private final String[] attributeNames;
+
+	private final String[] attributeValues;
+
+	/** read child nodes: String for text, XmlPullElement for elements */
+	private final List<Object> nodes = new ArrayList<Object>();
+
+	private boolean complete = false;
+
+	/**
+	 * @param cursor whose reader is at the start tag of this element
+	 * @param parent
+	 */
+	XmlPullElement(final Cursor cursor, final XmlPullElement parent) {
+		this.cursor = cursor;
+		this.parent = parent;
+		final XMLStreamReader reader = cursor.reader;
+		this.name = qualifiedName(reader.getPrefix(), reader.getLocalName());
+		final int count = reader.getAttributeCount();
+		this.attributeNames = new String[count];
+		this.attributeValues = new String[count];
+		for (int i = 0; i < count; i++) {
+			this.attributeNames[i] = qualifiedName(reader.getAttributePrefix(i),
+					reader.getAttributeLocalName(i));
+			this.attributeValues[i] = reader.getAttributeValue(i);
+		}
+		cursor.open = this;
+	}
+
+	private static String qualifiedName(final String prefix, final String localName) {
+		return prefix == null || prefix.length() == 0 ? localName : prefix + ":" + localName;
+	}
+
+	/**
+	 * Must only be called if this is the innermost open element.
+	 *
+	 * @return false if the end of this element has been reached
+	 */
+	private boolean readNext() throws XMLStreamException {
+		final XMLStreamReader reader = this.cursor.reader;
+		while (true) {
+			switch (reader.next()) {
+			case XMLStreamConstants.START_ELEMENT:
+				this.nodes.add(new XmlPullElement(this.cursor, this));
+				return true;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+				final int last = this.nodes.size() - 1;
+				if (last >= 0 && this.nodes.get(last) instanceof String) {
+					// text that was interrupted by an ignored comment
+					this.nodes.set(last, this.nodes.get(last) + reader.getText());
+				} else {
+					this.nodes.add(reader.getText());
+				}
+				return true;
+			case XMLStreamConstants.END_ELEMENT:
+				this.complete = true;
+				this.cursor.open = this.parent;
+				if (this.parent == null) {
+					reader.close();
+				}
+				return false;
+			case XMLStreamConstants.END_DOCUMENT:
+				throw new XMLStreamException("unexpected end of document in <" + this.name + ">");
+			default:
+				// comments, processing instructions
+			}
+		}
+	}
+
+	/**
+	 * @param index
+	 * @return the node at index, read if necessary, or null if there are no
+	 *         more nodes
+	 */
+	private Object node(final int index) {
+		synchronized (this.cursor) {
+			while (this.nodes.size() <= index && this.cursor.advance(this)) {
+				// buffered
+			}
+			return index < this.nodes.size() ? this.nodes.get(index) : null;
+		}
+	}
+
+	private XmlPullElement childElement(final int index) {
+		int idx = 0;
+		Object node;
+		for (int i = 0; (node = node(i)) != null; i++) {
+			if (node instanceof XmlPullElement) {
+				if (idx == index) {
+					return (XmlPullElement) node;
+				}
+				idx++;
+			}
+		}
+		return null;
+	}
+
+	private XmlPullElement firstDescendant(final String type) {
+		final Iterator<XmlPullElement> it = new ElementIterator(type, null, true);
+		return it.hasNext() ? it.next() : null;
+	}
+
+	private String getTextContent() {
+		synchronized (this.cursor) {
+			while (this.cursor.advance(this)) {
+				// buffered
+			}
+			if (this.nodes.size() == 1 && this.nodes.get(0) instanceof String) {
+				return (String) this.nodes.get(0);
+			}
+			final StringBuilder b = new StringBuilder();
+			for (final Object node : this.nodes) {
+				if (node instanceof String) {
+					b.append(node);
+				} else {
+					b.append(((XmlPullElement) node).getTextContent());
+				}
+			}
+			return b.toString();
+		}
+	}
+
+	@Override
+	public String getAttribute(final String attributeName) {
+		for (int i = 0; i < this.attributeNames.length; i++) {
+			if (this.attributeNames[i].equals(attributeName)) {
+				return this.attributeValues[i];
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public Iterator<String> getAttributes() {
+		return Arrays.asList(this.attributeNames).iterator();
+	}
+
+	@Override
+	public Iterator<XydraElement> getChildren(final String defaultType) {
+		return Iterators.transform(new ElementIterator(null, null, false), WRAP);
+	}
+
+	@Override
+	public Iterator<XydraElement> getChildrenByType(final String name, final String type) {
+		return Iterators.transform(new ElementIterator(type, null, true), WRAP);
+	}
+
+	@Override
+	public String getContent() {
+		if (Boolean.valueOf(getAttribute(XmlEncoder.NULL_CONTENT_ATTRIBUTE))) {
+			return null;
+		}
+		// return the first text() nodes content
+		Object node;
+		for (int i = 0; (node = node(i)) != null; i++) {
+			if (node instanceof String) {
+				return (String) node;
+			}
+		}
+		return "";
+	}
+
+	@Override
+	public XydraElement getElement(final String name, final int index) {
+		return childElement(index);
+	}
+
+	@Override
+	public XydraElement getChild(final String name, final String type) {
+		return firstDescendant(type);
+	}
+
+	@Override
+	public Object getValue(final String name, final int index) {
+		final XmlPullElement element = childElement(index);
+		return element == null ? null : getValue(element);
+	}
+
+	@Override
+	public Object getValue(final String name, final String type) {
+		final XmlPullElement element = firstDescendant(type);
+		return element == null ? null : getValue(element);
+	}
+
+	@Override
+	public @NeverNull String getType() {
+		return this.name;
+	}
+
+	@Override
+	public Iterator<Object> getValues(final String name, final String type) {
+		return Iterators.transform(new ElementIterator(type, null, true), VALUE);
+	}
+
+	@Override
+	public Iterator<Object> getValues() {
+		return Iterators.transform(new ElementIterator(null, null, false), VALUE);
+	}
+
+	@Override
+	public Iterator<Pair<String, XydraElement>> getEntries(final String attribute,
+			final String defaultType) {
+		return entries(new ElementIterator(null, attribute, false), attribute);
+	}
+
+	@Override
+	public Iterator<Pair<String, XydraElement>> getEntriesByType(final String attribute,
+			final String type) {
+		return entries(new ElementIterator(type, attribute, true), attribute);
+	}
+
+	private static Iterator<Pair<String, XydraElement>> entries(
+			final Iterator<XmlPullElement> elements, final String attribute) {
+		return Iterators.transform(elements,
+				new ITransformer<XmlPullElement, Pair<String, XydraElement>>() {
+
+					@Override
+					public Pair<String, XydraElement> transform(final XmlPullElement in) {
+						return new Pair<String, XydraElement>(in.getAttribute(attribute), wrap(in));
+					}
+
+				});
+	}
+
+	static XmlPullElement wrap(final XmlPullElement element) {
+		return isNull(element) ? null : element;
+	}
+
+	static String getValue(final XmlPullElement element) {
+		return isNull(element) ? null : element.getTextContent();
+	}
+
+	private static boolean isNull(final XmlPullElement element) {
+		return XmlEncoder.XNULL_ELEMENT.equals(element.name)
+				|| Boolean.valueOf(element.getAttribute(XmlEncoder.NULL_ATTRIBUTE));
+	}
+
+	/**
+	 * Does not read any content.
+	 */
+	@Override
+	public String toString() {
+		final StringBuilder b = new StringBuilder("tagName: ").append(this.name);
+		b.append("\nattributes: ");
+		for (int i = 0; i < this.attributeNames.length; i++) {
+			b.append(", ").append(this.attributeNames[i]).append("=\"")
+					.append(this.attributeValues[i]).append("\"");
+		}
+		return b.toString();
+	}
+
+}
@@ -0,0 +1,71 @@
+package org.xydra.core.serialize.xml;
+
+import java.io.Reader;
+import java.io.StringReader;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.xydra.annotations.RequiresAppEngine;
+import org.xydra.annotations.RunsInGWT;
+import org.xydra.base.minio.MiniReader;
+import org.xydra.base.minio.MiniReaderToReader;
+import org.xydra.core.serialize.XydraElement;
+import org.xydra.core.serialize.XydraParser;
+
+/**
+ * {@link XydraParser} implementation that uses a StAX pull parser and reads
+ * the document on demand, see {@link XmlPullElement}. Unlike
+ * {@link XmlParser}, no DOM is built and there is no global lock: each call
+ * creates its own reader and documents are parsed concurrently.
+ *
+ * Like {@link XmlParser}, this parser CANNOT handle XML mixed content.
+ * Syntax errors are reported as {@link IllegalArgumentException} when the
+ * broken part is read, which may be after {@link #parse(String)} has
+ * returned.
+ *
+ * @author xamde
+ */
+@RunsInGWT(false)
+@RequiresAppEngine(false)
+public class XmlPullParser implements XydraParser {
+
+	/** configured once, afterwards only used to create readers */
+	private static final XMLInputFactory factory = XMLInputFactory.newInstance();
+
+	static {
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		factory.setProperty(XMLInputFactory.IS_VALIDATING, false);
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+	}
+
+	private static XydraElement parse(final Reader reader) {
+		try {
+			final XMLStreamReader xmlReader = factory.createXMLStreamReader(reader);
+			xmlReader.nextTag();
+			return XmlPullElement.wrap(new XmlPullElement(new XmlPullElement.Cursor(xmlReader),
+					null));
+		} catch (final XMLStreamException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	@Override
+	public XydraElement parse(final String string) {
+		return parse(new StringReader(string));
+	}
+
+	@Override
+	public XydraElement parse(final MiniReader miniReader) throws IllegalArgumentException {
+		return parse(new MiniReaderToReader(miniReader));
+	}
+
+	@Override
+	public String getContentType() {
+		return "application/xml";
+	}
+
+}
@@ -3,7 +3,11 @@ package org.xydra.perf;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
+import org.xydra.base.XId;
+import org.xydra.base.rmof.XReadableModel;
+import org.xydra.base.rmof.XReadableObject;
 import org.xydra.log.api.Logger;
 import org.xydra.log.api.LoggerFactory;
 
@@ -189,6 +193,76 @@ public class Estimations {
 
 	public static long bytesPerValueAddress = lengthOfXid_inCharacters.typical;
 
+	/** Object header and a few fields */
+	public static long bytesPerJavaObject = 64;
+
+	/** Nested collections deeper than this are estimated as a single object */
+	private static final int MAX_ESTIMATION_DEPTH = 4;
+
+	/**
+	 * A cheap estimate of the memory used by a value, e.g. to fill a cache up
+	 * to a size in bytes. Strings, arrays, collections, maps and models are
+	 * looked into, other objects count as {@link #bytesPerJavaObject}.
+	 *
+	 * @param value can be null
+	 * @return estimated size in bytes
+	 */
+	public static long estimateSizeInBytes(final Object value) {
+		return estimateSizeInBytes(value, 0);
+	}
+
+	private static long estimateSizeInBytes(final Object value, final int depth) {
+		if(value == null) {
+			return 0;
+		}
+		if(value instanceof String) {
+			return bytesPerJavaObject + 2 * ((String)value).length();
+		}
+		if(value instanceof byte[]) {
+			return 16 + ((byte[])value).length;
+		}
+		if(value instanceof XReadableModel) {
+			final XReadableModel model = (XReadableModel)value;
+			final long bytesPerField = (lengthOfXid_inCharacters.typical + lengthOfValue_inCharacters.typical)
+			        * bytesPerCharacter + bytesPerRevisionNumber;
+			long size = bytesPerJavaObject;
+			for(final XId objectId : model) {
+				final XReadableObject object = model.getObject(objectId);
+				size += bytesPerJavaObject + lengthOfXid_inCharacters.typical * bytesPerCharacter;
+				for(@SuppressWarnings("unused") final XId fieldId : object) {
+					size += bytesPerField;
+				}
+			}
+			return size;
+		}
+		if(depth >= MAX_ESTIMATION_DEPTH) {
+			return bytesPerJavaObject;
+		}
+		if(value instanceof java.util.Collection<?>) {
+			long size = bytesPerJavaObject;
+			for(final Object o : (java.util.Collection<?>)value) {
+				size += 16 + estimateSizeInBytes(o, depth + 1);
+			}
+			return size;
+		}
+		if(value instanceof Map<?,?>) {
+			long size = bytesPerJavaObject;
+			for(final Map.Entry<?,?> e : ((Map<?,?>)value).entrySet()) {
+				size += 32 + estimateSizeInBytes(e.getKey(), depth + 1)
+				        + estimateSizeInBytes(e.getValue(), depth + 1);
+			}
+			return size;
+		}
+		if(value instanceof Object[]) {
+			long size = 16;
+			for(final Object o : (Object[])value) {
+				size += 8 + estimateSizeInBytes(o, depth + 1);
+			}
+			return size;
+		}
+		return bytesPerJavaObject;
+	}
+
 	public static class UserSession {
 		int durationInMs = 30 * 60 * 1000;
 		List<UserAction> ops = new ArrayList<UserAction>();
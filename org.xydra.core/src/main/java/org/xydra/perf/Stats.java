@@ -1,6 +1,9 @@
 package org.xydra.perf;
 
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
 
 import org.xydra.base.minio.MiniIOException;
 import org.xydra.base.minio.MiniWriter;
@@ -20,11 +23,20 @@ import com.google.common.collect.MapMaker;
  * c.stop();
  * </pre></code>
  *
+ * Besides timings, plain counters ({@link #count(String)}) and amounts such as
+ * sizes in bytes ({@link #add(String, long)}) can be recorded. Timings are
+ * also kept in a histogram with one bucket per power of two microseconds.
+ *
+ * All methods may be called from several threads concurrently.
+ *
  * @author xamde
  */
 public class Stats {
 
-	public Map<String,Data> stats =
+	/** bucket i counts durations below 2^i micros, the last one all others */
+	public static final int HISTOGRAM_BUCKETS = 24;
+
+	public ConcurrentMap<String,Data> stats =
 
 	new MapMaker().concurrencyLevel(1).initialCapacity(50).makeMap();
 
@@ -33,17 +45,51 @@ public class Stats {
 	private static class Data {
 		public long count = 0;
 		public long duration = 0;
+		/** sum of amounts, for non-timing entries */
+		public long total = 0;
+		/** null for non-timing entries */
+		public long[] histogram;
+
+		public synchronized void addDuration(final long nanos) {
+			this.count++;
+			this.duration += nanos;
+			if(this.histogram == null) {
+				this.histogram = new long[HISTOGRAM_BUCKETS];
+			}
+			this.histogram[bucket(nanos / 1000)]++;
+		}
 
-		public void writeStats(final String name, final MiniWriter w) throws MiniIOException {
+		public synchronized void addAmount(final long amount) {
+			this.count++;
+			this.total += amount;
+		}
+
+		public synchronized long[] copyHistogram() {
+			return this.histogram == null ? new long[HISTOGRAM_BUCKETS] : this.histogram.clone();
+		}
+
+		public synchronized void writeStats(final String name, final MiniWriter w) throws MiniIOException {
+			if(this.histogram == null) {
+				w.write("  " + name + " counted " + this.count + " times. Total: " + this.total
+				        + "\n");
+				return;
+			}
 			final long nsPerCall = this.count > 0 ? this.duration / this.count : -1;
 			w.write("  " + name + " called " + this.count + " times. Total: "
 			        + this.duration / 1000 + " micros = " + this.duration / 1000000
 			        + " ms. Per call: " + nsPerCall / 1000 + " micros = " + nsPerCall / 1000000
 			        + " ms\n");
+			w.write("    histogram (micros):");
+			for(int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+				if(this.histogram[i] > 0) {
+					w.write(" <" + (1L << i) + ":" + this.histogram[i]);
+				}
+			}
+			w.write("\n");
 		}
 	}
 
-	class Clock {
+	public class Clock {
 		private final long start;
 		private final String name;
 
@@ -52,16 +98,34 @@ public class Stats {
 			this.start = SystemUtils.nanoTime();
 		}
 
-		public void stop() {
+		/**
+		 * @return the measured duration in nanoseconds
+		 */
+		public long stop() {
 			final long duration = SystemUtils.nanoTime() - this.start;
-			Data data = Stats.this.stats.get(this.name);
+			recordDuration(this.name, duration);
+			return duration;
+		}
+	}
+
+	static int bucket(final long micros) {
+		int bucket = 0;
+		while(bucket < HISTOGRAM_BUCKETS - 1 && micros >= 1L << bucket) {
+			bucket++;
+		}
+		return bucket;
+	}
+
+	private Data data(final String name) {
+		Data data = this.stats.get(name);
+		if(data == null) {
+			final Data created = new Data();
+			data = this.stats.putIfAbsent(name, created);
 			if(data == null) {
-				data = new Data();
-				Stats.this.stats.put(this.name, data);
+				data = created;
 			}
-			data.count++;
-			data.duration += duration;
 		}
+		return data;
 	}
 
 	public Clock startClock(final String name) {
@@ -69,8 +133,115 @@ public class Stats {
 		return c;
 	}
 
+	/**
+	 * @param name
+	 * @param nanos duration of one call of the named operation
+	 */
+	public void recordDuration(final String name, final long nanos) {
+		data(name).addDuration(nanos);
+	}
+
+	/**
+	 * Increments the counter with the given name
+	 *
+	 * @param name
+	 */
+	public void count(final String name) {
+		data(name).addAmount(0);
+	}
+
+	/**
+	 * Increments the counter with the given name and adds amount to its total
+	 *
+	 * @param name
+	 * @param amount e.g. a size in bytes
+	 */
+	public void add(final String name, final long amount) {
+		data(name).addAmount(amount);
+	}
+
+	/**
+	 * @param name
+	 * @return how often the named operation or counter has been recorded
+	 */
+	public long getCount(final String name) {
+		final Data data = this.stats.get(name);
+		if(data == null) {
+			return 0;
+		}
+		synchronized(data) {
+			return data.count;
+		}
+	}
+
+	/**
+	 * @param name
+	 * @return the sum of all amounts of a counter or of all durations in
+	 *         nanoseconds of a timing
+	 */
+	public long getTotal(final String name) {
+		final Data data = this.stats.get(name);
+		if(data == null) {
+			return 0;
+		}
+		synchronized(data) {
+			return data.histogram == null ? data.total : data.duration;
+		}
+	}
+
+	/**
+	 * @param name
+	 * @return a copy of the duration histogram of the named operation, bucket i
+	 *         counts the calls faster than 2^i micros
+	 */
+	public long[] getHistogram(final String name) {
+		final Data data = this.stats.get(name);
+		if(data == null) {
+			return new long[HISTOGRAM_BUCKETS];
+		}
+		return data.copyHistogram();
+	}
+
+	/**
+	 * @param name
+	 * @param percentile between 0 and 1
+	 * @return an upper bound in micros for the duration of the given share of
+	 *         calls, 0 if there were none
+	 */
+	public long getPercentileMicros(final String name, final double percentile) {
+		final long[] histogram = getHistogram(name);
+		long total = 0;
+		for(final long n : histogram) {
+			total += n;
+		}
+		if(total == 0) {
+			return 0;
+		}
+		long seen = 0;
+		for(int i = 0; i < HISTOGRAM_BUCKETS - 1; i++) {
+			seen += histogram[i];
+			if(seen >= percentile * total) {
+				return 1L << i;
+			}
+		}
+		return Long.MAX_VALUE;
+	}
+
+	/**
+	 * @return the names of all operations and counters, sorted
+	 */
+	public List<String> getNames() {
+		final List<String> names = new ArrayList<String>(this.stats.keySet());
+		Collections.sort(names);
+		return names;
+	}
+
+	public void clear() {
+		this.stats.clear();
+	}
+
 	public void writeStats(final MiniWriter w) throws MiniIOException {
-		for(final String name : this.stats.keySet()) {
+		for(final String name : getNames()) {
 			final Data d = this.stats.get(name);
 			d.writeStats(name, w);
 		}
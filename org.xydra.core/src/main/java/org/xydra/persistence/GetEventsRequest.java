@@ -7,6 +7,7 @@ import org.xydra.core.model.XField;
 import org.xydra.core.model.XModel;
 import org.xydra.core.model.XObject;
 import org.xydra.sharedutils.XyAssert;
+import org.xydra.store.sync.EventCompactor;
 
 
 /**
@@ -25,6 +26,12 @@ public class GetEventsRequest {
     public final long beginRevision;
     public final long endRevision;
 
+    /**
+     * If true, the store may answer with the net changes of the range instead
+     * of every event, see {@link #GetEventsRequest(XAddress, long, long, boolean)}
+     */
+    public final boolean compacted;
+
     /**
      * @param address of {@link XModel} (repositoryId/modelId/-/-),
      *            {@link XObject} (repositoryId/modelId/objectId/-), or
@@ -63,12 +70,27 @@ public class GetEventsRequest {
      *            This value must be at least 0 and at most Long.MAX_VALUE.
      */
     public GetEventsRequest(final XAddress address, final long beginRevision, final long endRevision) {
-        super();
+        this(address, beginRevision, endRevision, false);
+    }
+
+    /**
+     * @param address see {@link #GetEventsRequest(XAddress, long, long)}
+     * @param beginRevision see {@link #GetEventsRequest(XAddress, long, long)}
+     * @param endRevision see {@link #GetEventsRequest(XAddress, long, long)}
+     * @param compacted if true, the store may collapse the events of the range
+     *            into the net change of each entity (see
+     *            {@link EventCompactor}), which are atomic events that can no
+     *            longer be matched one by one with the commands that caused
+     *            them. Stores that do not support this return all events.
+     */
+    public GetEventsRequest(final XAddress address, final long beginRevision,
+            final long endRevision, final boolean compacted) {
         XyAssert.xyAssert(beginRevision >= 0, "beginRev=" + beginRevision);
         XyAssert.xyAssert(endRevision >= 0, "endRev=" + endRevision);
         this.address = address;
         this.beginRevision = beginRevision;
         this.endRevision = endRevision;
+        this.compacted = compacted;
     }
 
 }
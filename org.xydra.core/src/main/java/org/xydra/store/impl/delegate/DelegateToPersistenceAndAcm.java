@@ -36,6 +36,7 @@ import org.xydra.store.XydraStore;
 import org.xydra.store.XydraStoreAdmin;
 import org.xydra.store.access.XAccessControlManager;
 import org.xydra.store.impl.memory.AllowAllAccessControlManager;
+import org.xydra.store.sync.EventCompactor;
 
 
 /**
@@ -261,7 +262,11 @@ public class DelegateToPersistenceAndAcm implements XydraBlockingStore, XydraSto
                 }
             }
         }
-        return events.toArray(new XEvent[events.size()]);
+        final XEvent[] result = events.toArray(new XEvent[events.size()]);
+        if(getEventsRequest.compacted) {
+            return EventCompactor.compact(result);
+        }
+        return result;
     }
 
     @Override
@@ -1,6 +1,15 @@
 package org.xydra.store.impl.delegate;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.xydra.base.XId;
 import org.xydra.base.change.ChangeType;
@@ -39,93 +48,265 @@ import org.xydra.store.XydraStoreAdmin;
 /**
  * Delegate asynchronous batch methods to asynchronous single-operation methods.
  *
- * This expects that wrapped {@link XydraSingleOperationStore} to be able to
- * complete the requests and call any callbacks before we return, which might
- * not be the case for event-loop dependent implementations.
+ * The operations of a batch are grouped by model. Groups are independent and
+ * can run in parallel on an {@link Executor}, see
+ * {@link #DelegateToSingleOperationStore(XydraSingleOperationStore, Executor)}
+ * . The batched callback is called by the last completed single operation.
  *
- * TODO wouldn't it be better to either delegate to a {@link XydraBlockingStore}
- * (a {@link XydraBlockingStore}->{@link XydraSingleOperationStore} wrapper can
- * then be used) -OR- to not wait for callbacks before returning and handle the
- * batched callback in the last called SingleOpCallback?
+ * Commands with relative revisions expect that the wrapped
+ * {@link XydraSingleOperationStore} completes the commands they refer to and
+ * calls their callbacks before returning, which might not be the case for
+ * event-loop dependent implementations.
  *
  * @author xamde
  */
 
 public class DelegateToSingleOperationStore implements XydraStore {
 
-	private static class SingleOpCallback<T> extends WaitingCallback<T> {
+	/**
+	 * Collects the results of the single operations of one batch without
+	 * locking and calls the batch callback once the last result has arrived,
+	 * in whichever thread delivers it.
+	 */
+	private static class BatchResults<T> {
 
-		MultiOpCallback<T> multi;
-		int index;
+		private final AtomicReferenceArray<BatchedResult<T>> results;
+		private final AtomicInteger resultsRemaining;
+		private final Callback<BatchedResult<T>[]> cb;
 
-		public SingleOpCallback(final MultiOpCallback<T> multi, final int index) {
-			this.multi = multi;
-			this.index = index;
+		public BatchResults(final int nCommands, final Callback<BatchedResult<T>[]> cb) {
+			this.results = new AtomicReferenceArray<BatchedResult<T>>(nCommands);
+			this.resultsRemaining = new AtomicInteger(nCommands);
+			this.cb = cb;
+			if(nCommands == 0) {
+				complete();
+			}
 		}
 
-		@Override
-		public synchronized void onFailure(final Throwable exception) {
-			super.onFailure(exception);
-			this.multi.addResult(this.index, new BatchedResult<T>(exception));
+		protected void addResult(final int index, final BatchedResult<T> result) {
+			final boolean first = this.results.compareAndSet(index, null, result);
+			XyAssert.xyAssert(first);
+			if(first && this.resultsRemaining.decrementAndGet() == 0) {
+				complete();
+			}
 		}
 
-		@Override
-		public synchronized void onSuccess(final T result) {
-			super.onSuccess(result);
-			this.multi.addResult(this.index, new BatchedResult<T>(result));
+		/**
+		 * @param index
+		 * @return the result of the operation at index or null if it has not
+		 *         been completed yet
+		 */
+		public BatchedResult<T> getResult(final int index) {
+			return this.results.get(index);
+		}
+
+		private void complete() {
+			if(this.cb != null) {
+				@SuppressWarnings("unchecked")
+				final BatchedResult<T>[] batchedResult = new BatchedResult[this.results.length()];
+				for(int i = 0; i < batchedResult.length; i++) {
+					batchedResult[i] = this.results.get(i);
+				}
+				this.cb.onSuccess(batchedResult);
+			}
 		}
 
 	}
 
-	private static class MultiOpCallback<T> {
+	private static class SingleOpCallback<T> implements Callback<T> {
 
-		private final BatchedResult<T>[] batchedResult;
-		private int resultsRemaining;
-		private final Callback<BatchedResult<T>[]> cb;
+		private final BatchResults<T> batch;
+		private final int index;
 
-		@SuppressWarnings("unchecked")
-		public MultiOpCallback(final int nCommands, final Callback<BatchedResult<T>[]> cb) {
-			this.batchedResult = new BatchedResult[nCommands];
-			this.resultsRemaining = nCommands;
-			this.cb = cb;
-			if(this.resultsRemaining == 0) {
-				if(this.cb != null) {
-					this.cb.onSuccess(this.batchedResult);
-				}
-			}
+		public SingleOpCallback(final BatchResults<T> batch, final int index) {
+			this.batch = batch;
+			this.index = index;
 		}
 
-		synchronized protected void addResult(final int index, final BatchedResult<T> result) {
-			XyAssert.xyAssert(this.batchedResult[index] == null);
-			this.batchedResult[index] = result;
-			this.resultsRemaining--;
-			if(this.resultsRemaining == 0) {
-				if(this.cb != null) {
-					this.cb.onSuccess(this.batchedResult);
-				}
-				notifyAll();
-			}
+		@Override
+		public void onFailure(final Throwable exception) {
+			this.batch.addResult(this.index, new BatchedResult<T>(exception));
 		}
 
-		synchronized public BatchedResult<T>[] getResult() {
-			while(this.resultsRemaining > 0) {
-				try {
-					wait();
-				} catch(final InterruptedException e) {
-					e.printStackTrace();
-				}
-			}
-			return this.batchedResult;
+		@Override
+		public void onSuccess(final T result) {
+			this.batch.addResult(this.index, new BatchedResult<T>(result));
 		}
 
 	}
 
+	/**
+	 * One single operation of a batch
+	 */
+	private static interface SingleOp<T> {
+
+		void execute(int index, Callback<T> callback);
+
+	}
+
+	/** Runs everything in the calling thread, one group after another */
+	private static final Executor CALLING_THREAD = new Executor() {
+
+		@Override
+		public void execute(final Runnable command) {
+			command.run();
+		}
+
+	};
+
 	private static final Logger log = LoggerFactory.getLogger(DelegateToSingleOperationStore.class);
 
 	private final XydraSingleOperationStore singleOpStore;
 
+	private final Executor executor;
+
+	/**
+	 * Runs all operations of a batch in the calling thread.
+	 *
+	 * @param singleOpStore
+	 */
 	public DelegateToSingleOperationStore(final XydraSingleOperationStore singleOpStore) {
+		this(singleOpStore, CALLING_THREAD);
+	}
+
+	/**
+	 * The operations of a batch are grouped by the model they affect. Groups
+	 * are run in parallel on the given executor, the operations within a group
+	 * one after another in batch order. Commands with relative revisions end
+	 * up in the same group as the commands they refer to. Batch callbacks are
+	 * called in the thread that completes the last operation.
+	 *
+	 * @param singleOpStore must be thread-safe if the executor runs tasks in
+	 *            parallel
+	 * @param executor for the groups of a batch; a batch with only one group
+	 *            runs in the calling thread
+	 */
+	public DelegateToSingleOperationStore(final XydraSingleOperationStore singleOpStore,
+	        final Executor executor) {
 		this.singleOpStore = singleOpStore;
+		this.executor = executor;
+	}
+
+	/**
+	 * @param modelId of the model the operation affects, may be null
+	 * @return the model id or a key that is unique for a null model id
+	 */
+	private static Object groupKey(final XId modelId, final int index) {
+		return modelId == null ? Integer.valueOf(index) : modelId;
+	}
+
+	private static int findGroup(final int[] group, final int index) {
+		int i = index;
+		while(group[i] != i) {
+			group[i] = group[group[i]];
+			i = group[i];
+		}
+		return i;
+	}
+
+	private static void mergeGroups(final int[] group, final int a, final int b) {
+		final int ga = findGroup(group, a);
+		final int gb = findGroup(group, b);
+		// the earliest operation represents the group
+		if(ga < gb) {
+			group[gb] = ga;
+		} else {
+			group[ga] = gb;
+		}
+	}
+
+	/**
+	 * @param modelIds for each operation, may contain nulls
+	 * @param group for each operation, the index of an operation in the same
+	 *            group or itself; operations of the same model are merged
+	 * @return the indexes of the operations in each group, ascending, groups
+	 *         in the order of their first operation
+	 */
+	private static int[][] groupByModel(final XId[] modelIds, final int[] group) {
+		final Map<Object,Integer> firstOfModel = new HashMap<Object,Integer>();
+		for(int i = 0; i < modelIds.length; i++) {
+			final Integer first = firstOfModel.get(groupKey(modelIds[i], i));
+			if(first == null) {
+				firstOfModel.put(groupKey(modelIds[i], i), i);
+			} else {
+				mergeGroups(group, first, i);
+			}
+		}
+		final Map<Integer,List<Integer>> groups = new LinkedHashMap<Integer,List<Integer>>();
+		for(int i = 0; i < modelIds.length; i++) {
+			final Integer key = findGroup(group, i);
+			List<Integer> members = groups.get(key);
+			if(members == null) {
+				members = new ArrayList<Integer>();
+				groups.put(key, members);
+			}
+			members.add(i);
+		}
+		final int[][] result = new int[groups.size()][];
+		int g = 0;
+		for(final List<Integer> members : groups.values()) {
+			result[g] = new int[members.size()];
+			for(int m = 0; m < members.size(); m++) {
+				result[g][m] = members.get(m);
+			}
+			g++;
+		}
+		return result;
+	}
+
+	private static int[][] groupByModel(final XId[] modelIds) {
+		final int[] group = new int[modelIds.length];
+		for(int i = 0; i < group.length; i++) {
+			group[i] = i;
+		}
+		return groupByModel(modelIds, group);
+	}
+
+	private static XId[] modelIds(final GetWithAddressRequest[] requests) {
+		final XId[] modelIds = new XId[requests.length];
+		for(int i = 0; i < requests.length; i++) {
+			if(requests[i] != null && requests[i].address != null) {
+				modelIds[i] = requests[i].address.getModel();
+			}
+		}
+		return modelIds;
+	}
+
+	/**
+	 * Runs the groups of a batch, each as one task of the executor.
+	 */
+	private <T> void runBatch(final int[][] groups, final BatchResults<T> batch, final SingleOp<T> op) {
+		final boolean parallel = groups.length > 1 && this.executor != CALLING_THREAD;
+		for(final int[] group : groups) {
+			final Runnable task = new Runnable() {
+
+				@Override
+				public void run() {
+					for(final int i : group) {
+						final SingleOpCallback<T> soc = new SingleOpCallback<T>(batch, i);
+						try {
+							op.execute(i, soc);
+						} catch(final StoreException e) {
+							log.warn("Telling callback: ", e);
+							soc.onFailure(e);
+						} catch(final RuntimeException e) {
+							if(!parallel) {
+								throw e;
+							}
+							// nobody else would complete the batch
+							log.warn("Telling callback: ", e);
+							soc.onFailure(e);
+						}
+					}
+				}
+
+			};
+			if(parallel) {
+				this.executor.execute(task);
+			} else {
+				task.run();
+			}
+		}
 	}
 
 	@Override
@@ -181,42 +362,66 @@ public class DelegateToSingleOperationStore implements XydraStore {
 		}
 	}
 
-	private MultiOpCallback<Long> executeCommands(final XId actorId, final XCommand[] commands,
+	private void executeCommands(final XId actorId, final XCommand[] commands,
 	        final Callback<BatchedResult<Long>[]> callback) {
 
-		final MultiOpCallback<Long> multi = new MultiOpCallback<Long>(commands.length, callback);
+		final BatchResults<Long> batch = new BatchResults<Long>(commands.length, callback);
 
-		@SuppressWarnings("unchecked")
-		final
-		SingleOpCallback<Long>[] soc = new SingleOpCallback[commands.length];
+		/*
+		 * group by model, commands with relative revisions join the group of
+		 * the commands they refer to, so they only wait for commands that run
+		 * before them in the same thread
+		 */
+		final XId[] modelIds = new XId[commands.length];
+		final int[] group = new int[commands.length];
+		for(int i = 0; i < commands.length; i++) {
+			group[i] = i;
+			final XCommand command = commands[i];
+			if(command == null) {
+				continue;
+			}
+			if(command instanceof XRepositoryCommand) {
+				modelIds[i] = ((XRepositoryCommand)command).getModelId();
+			} else {
+				modelIds[i] = command.getTarget().getModel();
+			}
+			final Iterable<XAtomicCommand> parts = command instanceof XTransaction ? (XTransaction)command
+			        : Collections.singletonList((XAtomicCommand)command);
+			for(final XAtomicCommand ac : parts) {
+				if(!ac.isForced() && ac.getRevisionNumber() >= XCommand.RELATIVE_REV) {
+					final long index = ac.getRevisionNumber() - XCommand.RELATIVE_REV;
+					if(index < i) {
+						mergeGroups(group, i, (int)index);
+					}
+				}
+			}
+		}
 
 		// call n individual asynchronous single operations
-		for(int i = 0; i < commands.length; i++) {
-			soc[i] = new SingleOpCallback<Long>(multi, i);
-			try {
-				final XCommand command = fixCommand(soc, commands[i], i);
+		runBatch(groupByModel(modelIds, group), batch, new SingleOp<Long>() {
+
+			@Override
+			public void execute(final int i, final Callback<Long> callback) {
+				final XCommand command = fixCommand(batch, commands[i], i);
 				if(command == null) {
-					soc[i].onSuccess(XCommand.FAILED);
+					callback.onSuccess(XCommand.FAILED);
 				} else {
-					this.singleOpStore.executeCommand(actorId, null, command, soc[i]);
+					DelegateToSingleOperationStore.this.singleOpStore.executeCommand(actorId, null,
+					        command, callback);
 				}
-			} catch(final StoreException e) {
-				log.warn("Telling callback: ", e);
-				soc[i].onFailure(e);
 			}
-		}
 
-		return multi;
+		});
 	}
 
-	private static XCommand fixCommand(final SingleOpCallback<Long>[] soc, final XCommand command, final int idx) {
+	private static XCommand fixCommand(final BatchResults<Long> batch, final XCommand command, final int idx) {
 
 		if(command == null) {
 			throw new RequestException("command was null");
 		}
 
 		if(command instanceof XAtomicCommand) {
-			return fixAtomicCommand(soc, idx, (XAtomicCommand)command);
+			return fixAtomicCommand(batch, idx, (XAtomicCommand)command);
 		}
 
 		XyAssert.xyAssert(command instanceof XTransaction);
@@ -236,7 +441,7 @@ public class DelegateToSingleOperationStore implements XydraStore {
 
 		final XAtomicCommand[] fixedCommands = new XAtomicCommand[trans.size()];
 		for(int i = 0; i < trans.size(); i++) {
-			fixedCommands[i] = fixAtomicCommand(soc, idx, trans.getCommand(i));
+			fixedCommands[i] = fixAtomicCommand(batch, idx, trans.getCommand(i));
 			if(fixedCommands[i] == null) {
 				return null;
 			}
@@ -245,7 +450,7 @@ public class DelegateToSingleOperationStore implements XydraStore {
 		return MemoryTransaction.createTransaction(trans.getTarget(), fixedCommands);
 	}
 
-	private static XAtomicCommand fixAtomicCommand(final SingleOpCallback<Long>[] soc, final int i,
+	private static XAtomicCommand fixAtomicCommand(final BatchResults<Long> batch, final int i,
 	        final XAtomicCommand ac) {
 
 		if(ac.isForced() || ac.getRevisionNumber() < XCommand.RELATIVE_REV) {
@@ -262,9 +467,17 @@ public class DelegateToSingleOperationStore implements XydraStore {
 			        + ": " + index + ", command was " + ac);
 		}
 
-		// wait for the result of the command we depend on
-		XyAssert.xyAssert(soc[index] != null); assert soc[index] != null;
-		final long rev = soc[index].getResult();
+		/*
+		 * the command we depend on ran before in the same group, so its result
+		 * is there if the single operation store completes synchronously
+		 */
+		final BatchedResult<Long> result = batch.getResult(index);
+		if(result == null || result.getResult() == null) {
+			throw new RequestException("command with index " + i
+			        + " refers to the revision of command " + index + ", which is "
+			        + (result == null ? "not complete" : "failed"));
+		}
+		final long rev = result.getResult();
 
 		if(ac instanceof XRepositoryCommand) {
 			XyAssert.xyAssert(ac.getChangeType() == ChangeType.REMOVE);
@@ -311,13 +524,33 @@ public class DelegateToSingleOperationStore implements XydraStore {
 				return;
 			}
 
-			final MultiOpCallback<Long> res = executeCommands(actorId, commands, null);
-			final BatchedResult<Long>[] revs = res.getResult();
+			// get the events once all commands are done
+			executeCommands(actorId, commands, new Callback<BatchedResult<Long>[]>() {
+
+				@Override
+				public void onFailure(final Throwable exception) {
+					callback.onFailure(exception);
+				}
+
+				@Override
+				public void onSuccess(final BatchedResult<Long>[] revs) {
+					getEvents(actorId, getEventRequests, new Callback<BatchedResult<XEvent[]>[]>() {
 
-			final MultiOpCallback<XEvent[]> events = getEvents(actorId, getEventRequests, null);
+						@Override
+						public void onFailure(final Throwable exception) {
+							callback.onFailure(exception);
+						}
 
-			callback.onSuccess(new Pair<BatchedResult<Long>[],BatchedResult<XEvent[]>[]>(revs,
-			        events.getResult()));
+						@Override
+						public void onSuccess(final BatchedResult<XEvent[]>[] events) {
+							callback.onSuccess(new Pair<BatchedResult<Long>[],BatchedResult<XEvent[]>[]>(
+							        revs, events));
+						}
+
+					});
+				}
+
+			});
 
 		} catch(final StoreException e) {
 			log.warn("Telling callback: ", e);
@@ -346,27 +579,32 @@ public class DelegateToSingleOperationStore implements XydraStore {
 		}
 	}
 
-	private MultiOpCallback<XEvent[]> getEvents(final XId actorId, final GetEventsRequest[] getEventsRequests,
+	private void getEvents(final XId actorId, final GetEventsRequest[] getEventsRequests,
 	        final Callback<BatchedResult<XEvent[]>[]> callback) {
 
-		final MultiOpCallback<XEvent[]> multi = new MultiOpCallback<XEvent[]>(getEventsRequests.length,
+		final BatchResults<XEvent[]> batch = new BatchResults<XEvent[]>(getEventsRequests.length,
 		        callback);
 
-		// call n individual asynchronous single operations
+		final XId[] modelIds = new XId[getEventsRequests.length];
 		for(int i = 0; i < getEventsRequests.length; i++) {
-			final SingleOpCallback<XEvent[]> soc = new SingleOpCallback<XEvent[]>(multi, i);
-			try {
-				this.singleOpStore.getEvents(actorId, null, getEventsRequests[i], soc);
-			} catch(final StoreException e) {
-				log.warn("Telling callback: ", e);
-				soc.onFailure(e);
+			if(getEventsRequests[i] != null && getEventsRequests[i].address != null) {
+				modelIds[i] = getEventsRequests[i].address.getModel();
 			}
 		}
 
+		// call n individual asynchronous single operations
+		runBatch(groupByModel(modelIds), batch, new SingleOp<XEvent[]>() {
+
+			@Override
+			public void execute(final int i, final Callback<XEvent[]> callback) {
+				DelegateToSingleOperationStore.this.singleOpStore.getEvents(actorId, null,
+				        getEventsRequests[i], callback);
+			}
+
+		});
+
 		// original callback is called automatically once all individual
 		// callbacks have been called
-
-		return multi;
 	}
 
 	@Override
@@ -393,19 +631,19 @@ public class DelegateToSingleOperationStore implements XydraStore {
 				return;
 			}
 
-			final MultiOpCallback<ModelRevision> multi = new MultiOpCallback<ModelRevision>(
+			final BatchResults<ModelRevision> batch = new BatchResults<ModelRevision>(
 			        modelAddresses.length, callback);
 
 			// call n individual asynchronous single operations
-			for(int i = 0; i < modelAddresses.length; i++) {
-				final SingleOpCallback<ModelRevision> soc = new SingleOpCallback<ModelRevision>(multi, i);
-				try {
-					this.singleOpStore.getModelRevision(actorId, null, modelAddresses[i], soc);
-				} catch(final StoreException e) {
-					log.warn("Telling callback: ", e);
-					soc.onFailure(e);
+			runBatch(groupByModel(modelIds(modelAddresses)), batch, new SingleOp<ModelRevision>() {
+
+				@Override
+				public void execute(final int i, final Callback<ModelRevision> callback) {
+					DelegateToSingleOperationStore.this.singleOpStore.getModelRevision(actorId, null,
+					        modelAddresses[i], callback);
 				}
-			}
+
+			});
 
 			// original callback is called automatically once all individual
 			// callbacks have been called
@@ -417,7 +655,7 @@ public class DelegateToSingleOperationStore implements XydraStore {
 	}
 
 	@Override
-	public synchronized void getModelSnapshots(final XId actorId, final String passwordHash,
+	public void getModelSnapshots(final XId actorId, final String passwordHash,
 	        final GetWithAddressRequest[] modelAddressRequests,
 	        final Callback<BatchedResult<XReadableModel>[]> callback) throws IllegalArgumentException {
 
@@ -431,21 +669,19 @@ public class DelegateToSingleOperationStore implements XydraStore {
 				return;
 			}
 
-			final MultiOpCallback<XReadableModel> multi = new MultiOpCallback<XReadableModel>(
+			final BatchResults<XReadableModel> batch = new BatchResults<XReadableModel>(
 			        modelAddressRequests.length, callback);
 
 			// call n individual asynchronous single operations
-			for(int i = 0; i < modelAddressRequests.length; i++) {
-				final SingleOpCallback<XReadableModel> soc = new SingleOpCallback<XReadableModel>(multi,
-				        i);
-				try {
-					this.singleOpStore
-					        .getModelSnapshot(actorId, null, modelAddressRequests[i], soc);
-				} catch(final StoreException e) {
-					log.warn("Telling callback: ", e);
-					soc.onFailure(e);
+			runBatch(groupByModel(modelIds(modelAddressRequests)), batch, new SingleOp<XReadableModel>() {
+
+				@Override
+				public void execute(final int i, final Callback<XReadableModel> callback) {
+					DelegateToSingleOperationStore.this.singleOpStore.getModelSnapshot(actorId, null,
+					        modelAddressRequests[i], callback);
 				}
-			}
+
+			});
 
 			// original callback is called automatically once all individual
 			// callbacks have been called
@@ -470,20 +706,19 @@ public class DelegateToSingleOperationStore implements XydraStore {
 				return;
 			}
 
-			final MultiOpCallback<XReadableObject> multi = new MultiOpCallback<XReadableObject>(
+			final BatchResults<XReadableObject> batch = new BatchResults<XReadableObject>(
 			        objectAddressRequests.length, callback);
 
 			// call n individual asynchronous single operations
-			for(int i = 0; i < objectAddressRequests.length; i++) {
-				final SingleOpCallback<XReadableObject> soc = new SingleOpCallback<XReadableObject>(
-				        multi, i);
-				try {
-					this.singleOpStore.getObjectSnapshot(actorId, null, objectAddressRequests[i], soc);
-				} catch(final StoreException e) {
-					log.warn("Telling callback: ", e);
-					soc.onFailure(e);
+			runBatch(groupByModel(modelIds(objectAddressRequests)), batch, new SingleOp<XReadableObject>() {
+
+				@Override
+				public void execute(final int i, final Callback<XReadableObject> callback) {
+					DelegateToSingleOperationStore.this.singleOpStore.getObjectSnapshot(actorId, null,
+					        objectAddressRequests[i], callback);
 				}
-			}
+
+			});
 
 			// original callback is called automatically once all individual
 			// callbacks have been called
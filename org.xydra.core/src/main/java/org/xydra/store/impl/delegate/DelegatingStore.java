@@ -1,5 +1,7 @@
 package org.xydra.store.impl.delegate;
 
+import java.util.concurrent.Executor;
+
 import org.xydra.persistence.XydraPersistence;
 import org.xydra.store.XydraStore;
 import org.xydra.store.access.XAccessControlManager;
@@ -19,4 +21,17 @@ public class DelegatingStore extends DelegateToSingleOperationStore implements X
 		super(new DelegateToBlockingStore(new DelegateToPersistenceAndAcm(persistence, arm)));
 	}
 
+	/**
+	 * @param persistence
+	 * @param arm
+	 * @param executor runs the operations of batches that affect different
+	 *            models in parallel, see
+	 *            {@link DelegateToSingleOperationStore#DelegateToSingleOperationStore(XydraSingleOperationStore, Executor)}
+	 */
+	public DelegatingStore(final XydraPersistence persistence, final XAccessControlManager arm,
+	        final Executor executor) {
+		super(new DelegateToBlockingStore(new DelegateToPersistenceAndAcm(persistence, arm)),
+		        executor);
+	}
+
 }
@@ -0,0 +1,365 @@
+package org.xydra.store.impl.file;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import org.xydra.annotations.RunsInGWT;
+import org.xydra.log.api.Logger;
+import org.xydra.log.api.LoggerFactory;
+
+
+/**
+ * An append-only log of records, addressed by revision number and stored in
+ * memory-mapped segment files.
+ *
+ * Each segment file is named after the revision of its first record and has a
+ * fixed size. Records are written as (length, CRC32 of the payload, payload).
+ * The zero-filled rest of a segment marks its end, so there is no separate
+ * index file: {@link #FileEventLog(File, int)} scans all segments, rebuilds
+ * the positions of all records and truncates a record that has been written
+ * only partially when the process died.
+ *
+ * There must be at most one writer at a time (callers of
+ * {@link #append(byte[])} must synchronise), but any number of readers can
+ * call {@link #read(int)} concurrently without taking a lock. Records become
+ * visible to readers when the volatile {@link #size} is increased.
+ *
+ * Appended records are made durable by {@link #sync(long)}, which implements
+ * group commit: while one thread forces the segments to disk, other threads
+ * wait and are then served by a single force covering all their records.
+ *
+ * @author xamde
+ */
+@RunsInGWT(false)
+class FileEventLog {
+
+    private static final Logger log = LoggerFactory.getLogger(FileEventLog.class);
+
+    private static final String SEGMENT_SUFFIX = ".segment";
+
+    /** length and checksum */
+    private static final int HEADER_SIZE = 8;
+
+    private final File dir;
+
+    private final int segmentSize;
+
+    /** replaced by a larger copy when full, single writer only */
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[4];
+
+    /** revision of the first record in each segment */
+    private long[] segmentStarts = new long[4];
+
+    private int segmentCount = 0;
+
+    /**
+     * (segment index << 32) | offset of each record, replaced by a larger copy
+     * when full
+     */
+    private volatile long[] positions = new long[1024];
+
+    /** written after the record and its position */
+    private volatile int size = 0;
+
+    /** write offset in the last segment */
+    private int writeOffset = 0;
+
+    /** total number of bytes appended since this log has been opened */
+    private volatile long appended = 0;
+
+    private final Object syncLock = new Object();
+
+    /** guarded by syncLock */
+    private long synced = 0;
+
+    /** guarded by syncLock */
+    private boolean syncing = false;
+
+    /** first segment that might contain unsynced records, guarded by syncLock */
+    private int firstUnsynced = 0;
+
+    /**
+     * Opens the log in the given directory and recovers all complete records.
+     *
+     * @param dir is created when the first record is appended
+     * @param segmentSize size of new segment files in bytes
+     * @throws IOException
+     */
+    FileEventLog(final File dir, final int segmentSize) throws IOException {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        recover();
+    }
+
+    private void recover() throws IOException {
+        final File[] files = this.dir.listFiles(new FilenameFilter() {
+
+            @Override
+            public boolean accept(final File d, final String name) {
+                return name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if(files == null) {
+            // nothing has been written yet
+            return;
+        }
+        final long[] starts = new long[files.length];
+        for(int i = 0; i < files.length; i++) {
+            final String name = files[i].getName();
+            starts[i] = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+        }
+        Arrays.sort(starts);
+
+        for(int i = 0; i < starts.length; i++) {
+            if(starts[i] != this.size) {
+                /*
+                 * a segment that does not continue the log has been created
+                 * after the previous one has been truncated, the records in
+                 * it are not part of the log
+                 */
+                log.warn("Deleting segment " + starts[i] + " in " + this.dir + ", expected "
+                        + this.size);
+                deleteSegments(starts, i);
+                break;
+            }
+            // an empty file is left behind if the process died while creating it
+            final MappedByteBuffer segment = map(segmentFile(starts[i]), this.segmentSize);
+            addSegment(segment, starts[i]);
+            if(!scan(segment) && i + 1 < starts.length) {
+                log.warn("Truncated record in segment " + starts[i] + " of " + this.dir);
+                deleteSegments(starts, i + 1);
+                break;
+            }
+        }
+        this.synced = this.appended;
+        this.firstUnsynced = Math.max(0, this.segmentCount - 1);
+    }
+
+    private void deleteSegments(final long[] starts, final int from) throws IOException {
+        for(int j = from; j < starts.length; j++) {
+            final File file = segmentFile(starts[j]);
+            if(!file.delete()) {
+                throw new IOException("Could not delete " + file);
+            }
+        }
+    }
+
+    /**
+     * Reads the positions of all valid records in the last segment and sets
+     * the write offset behind them. A torn record is overwritten with zeros.
+     *
+     * @param segment
+     * @return true if the segment ended regularly
+     */
+    private boolean scan(final MappedByteBuffer segment) {
+        final CRC32 crc = new CRC32();
+        int offset = 0;
+        boolean regularEnd = true;
+        while(offset + HEADER_SIZE <= segment.capacity()) {
+            final int length = segment.getInt(offset);
+            if(length == 0) {
+                break;
+            }
+            final int checksum = segment.getInt(offset + 4);
+            if(length < 0 || offset + HEADER_SIZE + length > segment.capacity()
+                    || checksum != checksum(crc, segment, offset + HEADER_SIZE, length)) {
+                regularEnd = false;
+                for(int i = offset; i < segment.capacity(); i++) {
+                    segment.put(i, (byte)0);
+                }
+                segment.force();
+                break;
+            }
+            addPosition(offset);
+            offset += HEADER_SIZE + length;
+            this.appended += HEADER_SIZE + length;
+        }
+        this.writeOffset = offset;
+        return regularEnd;
+    }
+
+    private static int checksum(final CRC32 crc, final ByteBuffer buffer, final int offset,
+            final int length) {
+        crc.reset();
+        for(int i = offset; i < offset + length; i++) {
+            crc.update(buffer.get(i));
+        }
+        return (int)crc.getValue();
+    }
+
+    private File segmentFile(final long start) {
+        return new File(this.dir, start + SEGMENT_SUFFIX);
+    }
+
+    private MappedByteBuffer map(final File file, final int minSize) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            final FileChannel channel = raf.getChannel();
+            final long length = Math.max(channel.size(), minSize);
+            // stays valid after the channel has been closed
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private void addSegment(final MappedByteBuffer segment, final long start) {
+        MappedByteBuffer[] a = this.segments;
+        if(this.segmentCount == a.length) {
+            a = Arrays.copyOf(a, a.length * 2);
+            this.segmentStarts = Arrays.copyOf(this.segmentStarts, a.length);
+        }
+        a[this.segmentCount] = segment;
+        this.segmentStarts[this.segmentCount] = start;
+        this.segmentCount++;
+        // publish the new array (or the new element) to readers
+        this.segments = a;
+        this.writeOffset = 0;
+    }
+
+    private void addPosition(final int offset) {
+        final int s = this.size;
+        long[] a = this.positions;
+        if(s == a.length) {
+            a = Arrays.copyOf(a, a.length * 2);
+            this.positions = a;
+        }
+        a[s] = ((long)(this.segmentCount - 1) << 32) | offset;
+        this.size = s + 1;
+    }
+
+    /**
+     * Appends the given record without making it durable. Single writer only.
+     *
+     * @param record
+     * @return the position to pass to {@link #sync(long)}
+     * @throws IOException
+     */
+    long append(final byte[] record) throws IOException {
+        final int needed = HEADER_SIZE + record.length;
+        if(this.segmentCount == 0
+                || this.writeOffset + needed > this.segments[this.segmentCount - 1].capacity()) {
+            // records never span segments
+            final long start = this.size;
+            if(this.segmentCount == 0 && !this.dir.isDirectory() && !this.dir.mkdirs()) {
+                throw new IOException("Could not create directory " + this.dir);
+            }
+            addSegment(map(segmentFile(start), Math.max(this.segmentSize, needed)), start);
+        }
+        final MappedByteBuffer segment = this.segments[this.segmentCount - 1];
+        final int offset = this.writeOffset;
+        segment.putInt(offset + 4, checksum(record));
+        final ByteBuffer payload = segment.duplicate();
+        payload.position(offset + HEADER_SIZE);
+        payload.put(record);
+        // the length comes last, a record without it is not read back
+        segment.putInt(offset, record.length);
+        this.writeOffset = offset + needed;
+        addPosition(offset);
+        this.appended += needed;
+        return this.appended;
+    }
+
+    private static int checksum(final byte[] record) {
+        final CRC32 crc = new CRC32();
+        crc.update(record);
+        return (int)crc.getValue();
+    }
+
+    /**
+     * Blocks until all records up to the given position are durable. Threads
+     * calling this concurrently share a single force of the segments.
+     *
+     * @param position as returned by {@link #append(byte[])}
+     */
+    void sync(final long position) {
+        synchronized(this.syncLock) {
+            while(this.synced < position && this.syncing) {
+                try {
+                    this.syncLock.wait();
+                } catch(final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while waiting for sync", e);
+                }
+            }
+            if(this.synced >= position) {
+                return;
+            }
+            this.syncing = true;
+        }
+        // read 'appended' first, all records up to it are in these segments
+        final long target = this.appended;
+        final MappedByteBuffer[] segs = this.segments;
+        int last = segs.length - 1;
+        while(segs[last] == null) {
+            last--;
+        }
+        int from;
+        synchronized(this.syncLock) {
+            from = this.firstUnsynced;
+        }
+        try {
+            for(int i = from; i <= last; i++) {
+                segs[i].force();
+            }
+        } finally {
+            synchronized(this.syncLock) {
+                this.synced = Math.max(this.synced, target);
+                this.firstUnsynced = last;
+                this.syncing = false;
+                this.syncLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Does not block.
+     *
+     * @param rev
+     * @return the payload of the record with the given revision
+     */
+    byte[] read(final int rev) {
+        if(rev < 0 || rev >= this.size) {
+            throw new IndexOutOfBoundsException("rev=" + rev + " size=" + this.size);
+        }
+        final long position = this.positions[rev];
+        final MappedByteBuffer segment = this.segments[(int)(position >>> 32)];
+        final int offset = (int)position;
+        final byte[] record = new byte[segment.getInt(offset)];
+        // the position of a duplicate is private to this thread
+        final ByteBuffer payload = segment.duplicate();
+        payload.position(offset + HEADER_SIZE);
+        payload.get(record);
+        return record;
+    }
+
+    /**
+     * @return the number of records, i.e. the revision of the next record
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Deletes all segments. The log must not be used afterwards.
+     *
+     * @throws IOException
+     */
+    void delete() throws IOException {
+        for(int i = 0; i < this.segmentCount; i++) {
+            final File file = segmentFile(this.segmentStarts[i]);
+            if(file.exists() && !file.delete()) {
+                // mapped files cannot be deleted on some platforms
+                log.warn("Could not delete " + file);
+            }
+        }
+    }
+
+}
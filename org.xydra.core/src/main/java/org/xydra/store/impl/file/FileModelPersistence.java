@@ -0,0 +1,384 @@
+package org.xydra.store.impl.file;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.xydra.annotations.RunsInGWT;
+import org.xydra.base.XAddress;
+import org.xydra.base.XId;
+import org.xydra.base.change.XCommand;
+import org.xydra.base.change.XEvent;
+import org.xydra.base.change.impl.memory.RevisionConstants;
+import org.xydra.base.rmof.XRevWritableModel;
+import org.xydra.base.rmof.XRevWritableObject;
+import org.xydra.base.rmof.impl.memory.CopyOnWriteModel;
+import org.xydra.core.change.EventUtils;
+import org.xydra.core.model.delta.ChangedModel;
+import org.xydra.core.serialize.SerializedEvent;
+import org.xydra.core.serialize.SerializedModel;
+import org.xydra.core.serialize.XydraElement;
+import org.xydra.core.serialize.binary.BinaryOut;
+import org.xydra.core.serialize.binary.BinaryParser;
+import org.xydra.log.api.Logger;
+import org.xydra.log.api.LoggerFactory;
+import org.xydra.persistence.ModelRevision;
+import org.xydra.store.impl.memory.MemoryModelPersistence;
+
+
+/**
+ * A helper class used by {@link FilePersistence} to manage individual models.
+ *
+ * All events are kept in a {@link FileEventLog} in the directory of the model
+ * and read back from it on demand. The current model state is kept in memory.
+ * Every {@link FilePersistence.Config#checkpointInterval} events the state is
+ * written to a checkpoint file, so that opening the model only needs to replay
+ * the events after the latest checkpoint.
+ *
+ * A command is written to the log before it is applied to the model state and
+ * {@link #executeCommand(XId, XCommand)} returns only once the event is
+ * durable. Other threads can see its effects a little earlier, while the log
+ * is being synced.
+ *
+ * @author xamde
+ */
+@RunsInGWT(false)
+public class FileModelPersistence {
+
+    private static final Logger log = LoggerFactory.getLogger(FileModelPersistence.class);
+
+    private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+
+    /** number of checkpoints kept in case the latest one cannot be read */
+    private static final int CHECKPOINTS_TO_KEEP = 2;
+
+    private final XAddress modelAddr;
+
+    private final File dir;
+
+    private final FilePersistence.Config config;
+
+    /** appended only while holding the lock of this instance */
+    private final FileEventLog events;
+
+    /**
+     * The current state of the model. Snapshots share all unchanged objects and
+     * fields with it.
+     */
+    private final CopyOnWriteModel model;
+
+    /** revision of the latest checkpoint, guarded by this instance */
+    private long checkpointRev = RevisionConstants.NOT_EXISTING;
+
+    /** true while a thread writes a checkpoint, guarded by this instance */
+    private boolean checkpointing = false;
+
+    /**
+     * Opens the model stored in the given directory, which is created when the
+     * first event is written.
+     *
+     * @param modelAddr
+     * @param dir
+     * @param config
+     * @throws IOException
+     */
+    FileModelPersistence(final XAddress modelAddr, final File dir,
+            final FilePersistence.Config config) throws IOException {
+        this.modelAddr = modelAddr;
+        this.dir = dir;
+        this.config = config;
+        this.events = new FileEventLog(dir, config.segmentSize);
+        this.model = recover();
+    }
+
+    /**
+     * Loads the latest checkpoint that is not newer than the log and applies
+     * all later events.
+     */
+    private CopyOnWriteModel recover() throws IOException {
+        final long lastRev = this.events.size() - 1;
+        CopyOnWriteModel recovered = null;
+        for(final long rev : checkpointRevisions()) {
+            if(rev > lastRev) {
+                // events have been lost, the checkpoint is from the future
+                continue;
+            }
+            try {
+                recovered = readCheckpoint(rev);
+                this.checkpointRev = rev;
+                break;
+            } catch(final Exception e) {
+                log.warn("Could not read checkpoint " + rev + " of " + this.modelAddr, e);
+            }
+        }
+        if(recovered == null) {
+            recovered = new CopyOnWriteModel(this.modelAddr, RevisionConstants.NOT_EXISTING);
+            recovered.setExists(false);
+        }
+        for(long rev = recovered.getRevisionNumber() + 1; rev <= lastRev; rev++) {
+            EventUtils.applyEvent(recovered, readEvent((int)rev));
+        }
+        return recovered;
+    }
+
+    /**
+     * @return the revisions of all checkpoint files, newest first
+     */
+    private long[] checkpointRevisions() {
+        final File[] files = this.dir.listFiles(new FilenameFilter() {
+
+            @Override
+            public boolean accept(final File d, final String name) {
+                return name.endsWith(CHECKPOINT_SUFFIX);
+            }
+        });
+        if(files == null) {
+            return new long[0];
+        }
+        final long[] revs = new long[files.length];
+        for(int i = 0; i < files.length; i++) {
+            final String name = files[i].getName();
+            revs[i] = -Long.parseLong(name.substring(0,
+                    name.length() - CHECKPOINT_SUFFIX.length()));
+        }
+        Arrays.sort(revs);
+        for(int i = 0; i < revs.length; i++) {
+            revs[i] = -revs[i];
+        }
+        return revs;
+    }
+
+    private File checkpointFile(final long rev) {
+        return new File(this.dir, rev + CHECKPOINT_SUFFIX);
+    }
+
+    private CopyOnWriteModel readCheckpoint(final long rev) throws IOException {
+        final File file = checkpointFile(rev);
+        final byte[] data = new byte[(int)file.length()];
+        final DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(data);
+        } finally {
+            in.close();
+        }
+        final XydraElement element = new BinaryParser().parse(data);
+        final XRevWritableModel state = SerializedModel.toModelState(element, this.modelAddr);
+        final CopyOnWriteModel recovered = new CopyOnWriteModel(this.modelAddr,
+                state.getRevisionNumber());
+        for(final XId objectId : state) {
+            recovered.addObject(state.getObject(objectId));
+        }
+        if(recovered.getRevisionNumber() != rev) {
+            throw new IOException("Checkpoint " + file + " contains revision "
+                    + recovered.getRevisionNumber());
+        }
+        return recovered;
+    }
+
+    /**
+     * Writes the given model to a new checkpoint file and deletes old ones.
+     * The file is synced and renamed when complete, so there are no partially
+     * written checkpoints.
+     */
+    private void writeCheckpoint(final XRevWritableModel snapshot) throws IOException {
+        final long rev = snapshot.getRevisionNumber();
+        final BinaryOut out = new BinaryOut();
+        SerializedModel.serialize(snapshot, out, true, false, false);
+
+        final File tmp = new File(this.dir, rev + CHECKPOINT_SUFFIX + ".tmp");
+        final FileOutputStream fos = new FileOutputStream(tmp);
+        try {
+            fos.write(out.getBytes());
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+        if(!tmp.renameTo(checkpointFile(rev))) {
+            throw new IOException("Could not rename " + tmp);
+        }
+
+        final long[] revs = checkpointRevisions();
+        for(int i = CHECKPOINTS_TO_KEEP; i < revs.length; i++) {
+            if(!checkpointFile(revs[i]).delete()) {
+                log.warn("Could not delete checkpoint " + revs[i] + " of " + this.modelAddr);
+            }
+        }
+    }
+
+    /**
+     * Takes a snapshot if enough events have been written since the last
+     * checkpoint and no other thread is writing one. The snapshot is taken in
+     * O(1) time while holding the lock, but written without it.
+     */
+    private void checkpointIfNeeded() {
+        XRevWritableModel snapshot;
+        synchronized(this) {
+            final long rev = getRevisionNumber();
+            if(this.checkpointing || rev - this.checkpointRev < this.config.checkpointInterval
+                    || !this.model.exists()) {
+                return;
+            }
+            this.checkpointing = true;
+            snapshot = this.model.snapshot();
+        }
+        boolean success = false;
+        try {
+            writeCheckpoint(snapshot);
+            success = true;
+        } catch(final IOException e) {
+            log.warn("Could not write checkpoint " + snapshot.getRevisionNumber() + " of "
+                    + this.modelAddr, e);
+        } finally {
+            synchronized(this) {
+                this.checkpointing = false;
+                if(success) {
+                    this.checkpointRev = snapshot.getRevisionNumber();
+                }
+            }
+        }
+    }
+
+    public long executeCommand(final XId actorId, final XCommand command) {
+        long position;
+        long rev;
+        synchronized(this) {
+            final ChangedModel changedModel = new ChangedModel(this.model);
+            final boolean success = changedModel.executeCommand(command);
+            if(!success) {
+                log.warn("command " + command + " failed");
+                return XCommand.FAILED;
+            }
+            if(!changedModel.hasChanges()) {
+                return XCommand.NOCHANGE;
+            }
+
+            final XEvent event = MemoryModelPersistence.createEvent(changedModel, this.model,
+                    actorId, command);
+            try {
+                position = this.events.append(encode(event));
+            } catch(final IOException e) {
+                throw new RuntimeException("Could not write event of " + command, e);
+            }
+            EventUtils.applyEvent(this.model, event);
+            rev = event.getRevisionNumber();
+        }
+
+        // group commit with all other threads waiting for the log
+        if(this.config.sync) {
+            this.events.sync(position);
+        }
+
+        checkpointIfNeeded();
+        return rev;
+    }
+
+    private byte[] encode(final XEvent event) {
+        final BinaryOut out = new BinaryOut();
+        SerializedEvent.serialize(event, out, this.modelAddr);
+        return out.getBytes();
+    }
+
+    private XEvent readEvent(final int rev) {
+        return SerializedEvent.toEvent(new BinaryParser().parse(this.events.read(rev)),
+                this.modelAddr);
+    }
+
+    public boolean exists() {
+        synchronized(this) {
+            return this.model.exists();
+        }
+    }
+
+    /**
+     * Does not block, even while commands are executed. Events are read from
+     * the log files.
+     *
+     * @param address
+     * @param beginRevision
+     * @param endRevision
+     * @return all events in the given range that are equal to or contained in
+     *         the given address or null if there are no events at all
+     */
+    public List<XEvent> getEvents(final XAddress address, final long beginRevision,
+            final long endRevision) {
+        // read the tail once, all events up to it are visible
+        final long currentRev = getRevisionNumber();
+        if(currentRev < 0) {
+            return null;
+        }
+
+        final long start = beginRevision < 0 ? 0 : beginRevision;
+        final long end = endRevision > currentRev ? currentRev : endRevision;
+
+        final List<XEvent> result = new ArrayList<XEvent>();
+        for(long rev = start; rev <= end; rev++) {
+            final XEvent event = readEvent((int)rev);
+            if(address.equalsOrContains(event.getChangedEntity())) {
+                result.add(event);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Takes O(1) time, the snapshot shares all state with the current model
+     * until it is changed by the next command. Each call returns a new
+     * snapshot. Any number of threads can read it, see
+     * {@link CopyOnWriteModel}.
+     *
+     * @return the snapshot or null if not found
+     */
+    synchronized public XRevWritableModel getModelSnapshot() {
+        if(!this.model.exists() || this.model.getRevisionNumber() == RevisionConstants.NOT_EXISTING) {
+            return null;
+        }
+        return this.model.snapshot();
+    }
+
+    /**
+     * Takes O(1) time, the snapshot shares all fields with the current object
+     * until it is changed by the next command. Each call returns a new
+     * snapshot. Any number of threads can read it, see
+     * {@link CopyOnWriteModel}.
+     *
+     * @param objectId
+     * @return the snapshot or null if not found
+     */
+    synchronized public XRevWritableObject getObjectSnapshot(final XId objectId) {
+        return this.model.getObjectSnapshot(objectId);
+    }
+
+    public long getRevisionNumber() {
+        return this.events.size() - 1;
+    }
+
+    public ModelRevision getModelRevision() {
+        synchronized(this) {
+            return new ModelRevision(getRevisionNumber(), this.model.exists());
+        }
+    }
+
+    /**
+     * Deletes all files of this model. It must not be used afterwards.
+     *
+     * @throws IOException
+     */
+    synchronized void delete() throws IOException {
+        this.events.delete();
+        for(final long rev : checkpointRevisions()) {
+            if(!checkpointFile(rev).delete()) {
+                log.warn("Could not delete checkpoint " + rev + " of " + this.modelAddr);
+            }
+        }
+        if(this.dir.exists() && !this.dir.delete()) {
+            log.warn("Could not delete " + this.dir);
+        }
+    }
+
+}
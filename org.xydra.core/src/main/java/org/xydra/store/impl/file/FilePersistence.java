@@ -0,0 +1,258 @@
+package org.xydra.store.impl.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.xydra.annotations.RunsInGWT;
+import org.xydra.base.Base;
+import org.xydra.base.XAddress;
+import org.xydra.base.XId;
+import org.xydra.base.XType;
+import org.xydra.base.change.XCommand;
+import org.xydra.base.change.XEvent;
+import org.xydra.base.change.impl.memory.RevisionConstants;
+import org.xydra.base.rmof.XRevWritableModel;
+import org.xydra.base.rmof.XRevWritableObject;
+import org.xydra.persistence.GetWithAddressRequest;
+import org.xydra.persistence.ModelRevision;
+import org.xydra.persistence.XydraPersistence;
+import org.xydra.store.RequestException;
+import org.xydra.store.impl.memory.MemoryPersistence;
+
+
+/**
+ * Stores each model as an append-only event log plus periodic checkpoints in
+ * its own sub-directory of a base directory, so that the state survives a
+ * restart of the JVM. Each model is managed as a {@link FileModelPersistence}.
+ * All models found in the base directory are recovered when the persistence is
+ * created. Reading a model that is not known does not touch the disk, its
+ * directory is created by the first command that writes an event.
+ *
+ * Tentative methods fall back to standard methods, just like in
+ * {@link MemoryPersistence}.
+ *
+ * @author xamde
+ */
+@RunsInGWT(false)
+public class FilePersistence implements XydraPersistence {
+
+    /**
+     * System property with the base directory used by
+     * {@link #FilePersistence(XId)}. Defaults to 'xydra-data'.
+     */
+    public static final String PROP_DIR = "org.xydra.store.impl.file.dir";
+
+    /**
+     * Tuning parameters
+     */
+    public static class Config {
+
+        /** size of a log segment file in bytes */
+        public int segmentSize = 16 * 1024 * 1024;
+
+        /** number of events after which a new checkpoint is written */
+        public long checkpointInterval = 1000;
+
+        /**
+         * if false, commands return before their events are durable, which
+         * survives crashes of the JVM but not of the machine
+         */
+        public boolean sync = true;
+    }
+
+    private final Map<XId,FileModelPersistence> models = new HashMap<XId,FileModelPersistence>();
+
+    private final XId repoId;
+
+    private final File repoDir;
+
+    private final Config config;
+
+    /**
+     * This method is used to instantiate the persistence via reflection in
+     * SharedXydraPersistence. The data is stored in a sub-directory of the
+     * directory given by {@link #PROP_DIR}.
+     *
+     * @param repositoryId repository ID
+     */
+    public FilePersistence(final XId repositoryId) {
+        this(repositoryId, new File(System.getProperty(PROP_DIR, "xydra-data")), new Config());
+    }
+
+    /**
+     * @param repositoryId repository ID
+     * @param baseDir the data is stored in a sub-directory named after the
+     *            repository
+     * @param config
+     */
+    public FilePersistence(final XId repositoryId, final File baseDir, final Config config) {
+        this.repoId = repositoryId;
+        this.repoDir = new File(baseDir, repositoryId.toString());
+        this.config = config;
+        final File[] modelDirs = this.repoDir.listFiles();
+        if(modelDirs != null) {
+            for(final File modelDir : modelDirs) {
+                if(modelDir.isDirectory()) {
+                    getModelPersistence(Base.toId(modelDir.getName()));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        synchronized(this.models) {
+            for(final FileModelPersistence modelPersistence : this.models.values()) {
+                try {
+                    modelPersistence.delete();
+                } catch(final IOException e) {
+                    throw new RuntimeException("Could not delete model files in " + this.repoDir, e);
+                }
+            }
+            this.models.clear();
+        }
+    }
+
+    @Override
+    public long executeCommand(final XId actorId, final XCommand command) {
+        final XAddress address = command.getChangedEntity();
+        // caller asserts repoId matches address
+        final FileModelPersistence modelPersistence = getModelPersistence(address.getModel());
+        /*
+         * keep the FileModelPersistence even if the model has been removed,
+         * the event log must be kept, see MemoryPersistence
+         */
+        return modelPersistence.executeCommand(actorId, command);
+    }
+
+    @Override
+    public List<XEvent> getEvents(final XAddress address, final long beginRevision, final long endRevision) {
+        // caller asserts repoId matches address
+        final FileModelPersistence modelPersistence = getExistingModelPersistence(address
+                .getModel());
+        if(modelPersistence == null) {
+            return null;
+        }
+        return modelPersistence.getEvents(address, beginRevision, endRevision);
+    }
+
+    @Override
+    public Set<XId> getManagedModelIds() {
+        final Set<XId> modelIds = new HashSet<XId>();
+        synchronized(this.models) {
+            for(final Map.Entry<XId,FileModelPersistence> p : this.models.entrySet()) {
+                if(p.getValue().exists()) {
+                    modelIds.add(p.getKey());
+                }
+            }
+        }
+        return modelIds;
+    }
+
+    /**
+     * @param modelId
+     * @return the persistence of a model that has been recovered or written
+     *         to, or null
+     */
+    private FileModelPersistence getExistingModelPersistence(final XId modelId) {
+        if(modelId == null) {
+            throw new IllegalArgumentException("modelId must not be null");
+        }
+        synchronized(this.models) {
+            return this.models.get(modelId);
+        }
+    }
+
+    /**
+     * @param modelId
+     * @return the persistence of the model, which is created (but not yet
+     *         written to disk) if necessary
+     */
+    private FileModelPersistence getModelPersistence(final XId modelId) {
+        if(modelId == null) {
+            throw new IllegalArgumentException("modelId must not be null");
+        }
+        synchronized(this.models) {
+            FileModelPersistence modelPersistence = this.models.get(modelId);
+            if(modelPersistence == null) {
+                /* return a model persistence that does not exist */
+                final XAddress modelAddr = Base.toAddress(this.repoId, modelId, null, null);
+                try {
+                    modelPersistence = new FileModelPersistence(modelAddr, new File(this.repoDir,
+                            modelId.toString()), this.config);
+                } catch(final IOException e) {
+                    throw new RuntimeException("Could not open model " + modelAddr + " in "
+                            + this.repoDir, e);
+                }
+                this.models.put(modelId, modelPersistence);
+            }
+            return modelPersistence;
+        }
+    }
+
+    @Override
+    public ModelRevision getModelRevision(final GetWithAddressRequest addressRequest) {
+        final XAddress address = addressRequest.address;
+        if(address.getAddressedType() != XType.XMODEL) {
+            throw new RequestException("must use a model address to get a model revison, was "
+                    + address);
+        }
+        // caller asserts repoId matches address
+        final FileModelPersistence modelPersistence = getExistingModelPersistence(address
+                .getModel());
+        if(modelPersistence == null) {
+            return new ModelRevision(RevisionConstants.NOT_EXISTING, false);
+        }
+        return modelPersistence.getModelRevision();
+    }
+
+    @Override
+    public XRevWritableModel getModelSnapshot(final GetWithAddressRequest addressRequest) {
+        final XAddress address = addressRequest.address;
+        if(address.getAddressedType() != XType.XMODEL) {
+            throw new RequestException("must use a model address to get a model snapshot, was "
+                    + address);
+        }
+        // caller asserts repoId matches address
+        final FileModelPersistence modelPersistence = getExistingModelPersistence(address
+                .getModel());
+        if(modelPersistence == null) {
+            return null;
+        }
+        return modelPersistence.getModelSnapshot();
+    }
+
+    @Override
+    public XRevWritableObject getObjectSnapshot(final GetWithAddressRequest addressRequest) {
+        final XAddress address = addressRequest.address;
+        if(address.getAddressedType() != XType.XOBJECT) {
+            throw new RequestException("must use an object address to get an object snapshot, was "
+                    + address);
+        }
+        // caller asserts repoId matches address
+        final FileModelPersistence modelPersistence = getExistingModelPersistence(address
+                .getModel());
+        if(modelPersistence == null) {
+            return null;
+        }
+        return modelPersistence.getObjectSnapshot(address.getObject());
+    }
+
+    @Override
+    public XId getRepositoryId() {
+        return this.repoId;
+    }
+
+    @Override
+    public boolean hasManagedModel(final XId modelId) {
+        synchronized(this.models) {
+            return this.models.containsKey(modelId);
+        }
+    }
+
+}
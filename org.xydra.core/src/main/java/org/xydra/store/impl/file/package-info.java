@@ -0,0 +1,5 @@
+/**
+ * File-based implementation of {@link org.xydra.persistence.XydraPersistence}
+ * that survives restarts of the JVM.
+ */
+package org.xydra.store.impl.file;
@@ -0,0 +1,277 @@
+package org.xydra.store.impl.memory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xydra.annotations.RunsInGWT;
+import org.xydra.base.XAddress;
+import org.xydra.base.XType;
+import org.xydra.base.change.XEvent;
+
+
+/**
+ * An append-only log of {@link XEvent XEvents}, addressed by revision number.
+ *
+ * There must be at most one writer at a time (callers of
+ * {@link #append(XEvent)} must synchronise), but any number of readers can
+ * access the log concurrently without taking a lock. Events are stored in
+ * fixed-size chunks that are never copied once written. New events become
+ * visible to readers only when the volatile {@link #size} is increased, which
+ * happens after the event and all index entries have been written.
+ *
+ * Events whose changed entity is an object or a field are additionally indexed
+ * by that address (and fields also by their object address), so that
+ * {@link #getEvents(XAddress, long, long)} for objects and fields does not have
+ * to scan the whole revision range.
+ *
+ * @author xamde
+ */
+@RunsInGWT(true)
+class MemoryEventLog {
+
+    private static final int CHUNK_BITS = 10;
+
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /**
+     * Revision numbers of all events with a given changed entity (or a
+     * descendant of it), in ascending order.
+     */
+    private static class RevisionList {
+
+        /** replaced by a larger copy when full */
+        private volatile int[] revs = new int[4];
+
+        /** written after the revision itself */
+        private volatile int size = 0;
+
+        /** single writer only */
+        void add(final int rev) {
+            final int s = this.size;
+            int[] a = this.revs;
+            if(s == a.length) {
+                final int[] b = new int[a.length * 2];
+                System.arraycopy(a, 0, b, 0, s);
+                a = b;
+                this.revs = b;
+            }
+            a[s] = rev;
+            this.size = s + 1;
+        }
+
+        /**
+         * @param rev
+         * @param s number of valid entries
+         * @param a
+         * @return the index of the first entry >= rev
+         */
+        static int lowerBound(final int[] a, final int s, final int rev) {
+            int lo = 0;
+            int hi = s;
+            while(lo < hi) {
+                final int mid = (lo + hi) >>> 1;
+                if(a[mid] < rev) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+
+    private static class IndexEntry {
+
+        final XAddress address;
+
+        final RevisionList revisions = new RevisionList();
+
+        IndexEntry(final XAddress address) {
+            this.address = address;
+        }
+    }
+
+    /**
+     * Open addressing hash table with linear probing. Entries are never
+     * removed. The table is replaced by a larger copy when it gets half full.
+     */
+    private volatile IndexEntry[] index = new IndexEntry[64];
+
+    /** number of used slots in {@link #index}, only accessed by the writer */
+    private int indexSize = 0;
+
+    /** chunk array is replaced by a larger copy when full, chunks never are */
+    private volatile XEvent[][] chunks = new XEvent[4][];
+
+    /** number of events that are visible to readers */
+    private volatile int size = 0;
+
+    /**
+     * Append the given event. Must only be called by one thread at a time. The
+     * revision number of the event must be equal to {@link #size()}.
+     *
+     * @param event
+     */
+    void append(final XEvent event) {
+        final int rev = this.size;
+        assert event.getRevisionNumber() == rev : "expected rev " + rev + " but got "
+                + event.getRevisionNumber();
+        final int chunkIndex = rev >>> CHUNK_BITS;
+        XEvent[][] c = this.chunks;
+        if(chunkIndex == c.length) {
+            final XEvent[][] larger = new XEvent[c.length * 2][];
+            System.arraycopy(c, 0, larger, 0, c.length);
+            c = larger;
+            this.chunks = larger;
+        }
+        if(c[chunkIndex] == null) {
+            c[chunkIndex] = new XEvent[CHUNK_SIZE];
+        }
+        c[chunkIndex][rev & CHUNK_MASK] = event;
+
+        final XAddress changed = event.getChangedEntity();
+        if(changed != null) {
+            switch(changed.getAddressedType()) {
+            case XFIELD:
+                indexEntry(changed).revisions.add(rev);
+                indexEntry(changed.getParent()).revisions.add(rev);
+                break;
+            case XOBJECT:
+                indexEntry(changed).revisions.add(rev);
+                break;
+            default:
+                // model and repository level events are found by scanning
+                break;
+            }
+        }
+
+        // publish
+        this.size = rev + 1;
+    }
+
+    /**
+     * @return the number of events in this log, i.e. the current revision
+     *         number + 1
+     */
+    int size() {
+        return this.size;
+    }
+
+    boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * @param rev must be smaller than a value previously returned by
+     *            {@link #size()}
+     * @return the event with the given revision number
+     */
+    XEvent get(final int rev) {
+        return this.chunks[rev >>> CHUNK_BITS][rev & CHUNK_MASK];
+    }
+
+    /**
+     * @param address
+     * @param start inclusive, must be >= 0
+     * @param end inclusive, must be smaller than a value previously returned by
+     *            {@link #size()}
+     * @return all events in the given revision range whose changed entity is
+     *         equal to or contained in the given address
+     */
+    List<XEvent> getEvents(final XAddress address, final int start, final int end) {
+        final List<XEvent> result = new ArrayList<XEvent>();
+        final XType type = address.getAddressedType();
+        if(type == XType.XOBJECT || type == XType.XFIELD) {
+            final IndexEntry entry = lookup(address);
+            if(entry != null) {
+                final RevisionList list = entry.revisions;
+                // read size before the array to see all entries up to size
+                final int s = list.size;
+                final int[] revs = list.revs;
+                for(int i = RevisionList.lowerBound(revs, s, start); i < s; i++) {
+                    final int rev = revs[i];
+                    if(rev > end) {
+                        break;
+                    }
+                    result.add(get(rev));
+                }
+            }
+        } else {
+            for(int rev = start; rev <= end; rev++) {
+                final XEvent xe = get(rev);
+                if(address.equalsOrContains(xe.getChangedEntity())) {
+                    result.add(xe);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static int slot(final XAddress address, final int length) {
+        final int h = address.hashCode();
+        return (h ^ h >>> 16) & length - 1;
+    }
+
+    private IndexEntry lookup(final XAddress address) {
+        final IndexEntry[] table = this.index;
+        int i = slot(address, table.length);
+        while(true) {
+            final IndexEntry e = table[i];
+            if(e == null) {
+                return null;
+            }
+            if(e.address.equals(address)) {
+                return e;
+            }
+            i = i + 1 & table.length - 1;
+        }
+    }
+
+    /** writer only */
+    private IndexEntry indexEntry(final XAddress address) {
+        IndexEntry[] table = this.index;
+        int i = slot(address, table.length);
+        while(true) {
+            final IndexEntry e = table[i];
+            if(e == null) {
+                break;
+            }
+            if(e.address.equals(address)) {
+                return e;
+            }
+            i = i + 1 & table.length - 1;
+        }
+        final IndexEntry created = new IndexEntry(address);
+        if((this.indexSize + 1) * 2 > table.length) {
+            table = rehash(table);
+            i = slot(address, table.length);
+            while(table[i] != null) {
+                i = i + 1 & table.length - 1;
+            }
+            table[i] = created;
+            // publish the new table only when complete
+            this.index = table;
+        } else {
+            table[i] = created;
+        }
+        this.indexSize++;
+        return created;
+    }
+
+    private static IndexEntry[] rehash(final IndexEntry[] table) {
+        final IndexEntry[] larger = new IndexEntry[table.length * 2];
+        for(final IndexEntry e : table) {
+            if(e != null) {
+                int i = slot(e.address, larger.length);
+                while(larger[i] != null) {
+                    i = i + 1 & larger.length - 1;
+                }
+                larger[i] = e;
+            }
+        }
+        return larger;
+    }
+
+}
@@ -11,10 +11,11 @@ import org.xydra.base.change.XAtomicEvent;
 import org.xydra.base.change.XCommand;
 import org.xydra.base.change.XEvent;
 import org.xydra.base.change.impl.memory.RevisionConstants;
+import org.xydra.base.rmof.XReadableModel;
+import org.xydra.base.rmof.XReadableObject;
 import org.xydra.base.rmof.XRevWritableModel;
 import org.xydra.base.rmof.XRevWritableObject;
-import org.xydra.base.rmof.impl.memory.SimpleModel;
-import org.xydra.core.XCopyUtils;
+import org.xydra.base.rmof.impl.memory.CopyOnWriteModel;
 import org.xydra.core.change.EventUtils;
 import org.xydra.core.model.delta.ChangedModel;
 import org.xydra.core.model.delta.DeltaUtils;
@@ -35,21 +36,33 @@ public class MemoryModelPersistence {
 
     static private Logger log = LoggerFactory.getLogger(MemoryModelPersistence.class);
 
-    private final List<XEvent> events = new ArrayList<XEvent>();
+    /**
+     * Written only while holding the lock of this instance, read without
+     * locking
+     */
+    private final MemoryEventLog events = new MemoryEventLog();
+
+    /**
+     * The current state of the model. Snapshots share all unchanged objects and
+     * fields with it.
+     */
+    private final CopyOnWriteModel model;
 
     /**
-     * The current state of the model, or null if the model doesn't currently
-     * exist.
+     * Revision and existence of the model after the last command. The model
+     * itself may only be read while holding the lock of this instance, this
+     * field is written while holding the lock and read without locking.
      */
-    private final XRevWritableModel model;
+    private volatile ModelRevision modelRevision = new ModelRevision(
+            RevisionConstants.NOT_EXISTING, false);
 
     XAddress modelAddr;
 
     public MemoryModelPersistence(final XAddress modelAddr) {
         this.modelAddr = modelAddr;
-        final SimpleModel nonExisting = new SimpleModel(modelAddr);
+        final CopyOnWriteModel nonExisting = new CopyOnWriteModel(modelAddr,
+                RevisionConstants.NOT_EXISTING);
         nonExisting.setExists(false);
-        nonExisting.setRevisionNumber(RevisionConstants.NOT_EXISTING);
         this.model = nonExisting;
     }
 
@@ -66,7 +79,10 @@ public class MemoryModelPersistence {
             return XCommand.NOCHANGE;
         }
 
-        return applyChanes(changedModel, this.model, actorId, command, this.events);
+        final XEvent event = createAndApplyEvent(changedModel, this.model, actorId, command);
+        this.events.append(event);
+        this.modelRevision = new ModelRevision(event.getRevisionNumber(), this.model.exists());
+        return event.getRevisionNumber();
     }
 
     /**
@@ -81,6 +97,40 @@ public class MemoryModelPersistence {
      */
     public static long applyChanes(final ChangedModel changedModel, final XRevWritableModel model, final XId actorId,
             final XCommand command, final List<XEvent> eventList) {
+        final XEvent event = createAndApplyEvent(changedModel, model, actorId, command);
+        eventList.add(event);
+        return event.getRevisionNumber();
+    }
+
+    /**
+     * @param changedModel
+     * @param model
+     * @param actorId
+     * @param command
+     * @return the event that has been applied to the given model
+     */
+    private static XEvent createAndApplyEvent(final ChangedModel changedModel,
+            final XRevWritableModel model, final XId actorId, final XCommand command) {
+        final XEvent event = createEvent(changedModel, model, actorId, command);
+
+        // apply event
+        EventUtils.applyEvent(model, event);
+
+        return event;
+    }
+
+    /**
+     * Does not change the given model, so that the event can be made durable
+     * before it is applied.
+     *
+     * @param changedModel
+     * @param model the model the changedModel is based on
+     * @param actorId
+     * @param command
+     * @return the event describing the changes of the given changedModel
+     */
+    public static XEvent createEvent(final ChangedModel changedModel, final XReadableModel model,
+            final XId actorId, final XCommand command) {
         // create event
         final long currentModelRev = model.getRevisionNumber();
         final List<XAtomicEvent> events = new LinkedList<XAtomicEvent>();
@@ -89,7 +139,7 @@ public class MemoryModelPersistence {
         long currentObjectRev;
         if(command.getTarget().getObject() != null) {
             // object txn
-            final XRevWritableObject objectState = model.getObject(command.getTarget().getObject());
+            final XReadableObject objectState = model.getObject(command.getTarget().getObject());
             if(objectState == null) {
                 throw new IllegalArgumentException("Cannot execute an objectCommand (" + command
                         + ") on a non-existing object");
@@ -101,14 +151,8 @@ public class MemoryModelPersistence {
             currentObjectRev = RevisionConstants.REVISION_OF_ENTITY_NOT_SET;
         }
 
-        final XEvent event = Executor.createSingleEvent(events, actorId, command.getTarget(),
-                currentModelRev, currentObjectRev);
-
-        // apply event
-        EventUtils.applyEvent(model, event);
-        eventList.add(event);
-
-        return event.getRevisionNumber();
+        return Executor.createSingleEvent(events, actorId, command.getTarget(), currentModelRev,
+                currentObjectRev);
 
         // long newModelRev = getRevisionNumber() + 1;
         //
@@ -184,63 +228,83 @@ public class MemoryModelPersistence {
         // return newModelRev;
     }
 
+    /**
+     * Does not block, even while commands are executed.
+     *
+     * @return true if the model exists after the last command
+     */
     public boolean exists() {
-        return this.model != null && this.model.exists();
+        return this.modelRevision.modelExists();
     }
 
-    synchronized public List<XEvent> getEvents(final XAddress address, final long beginRevision,
+    /**
+     * Does not block, even while commands are executed.
+     *
+     * @param address
+     * @param beginRevision
+     * @param endRevision
+     * @return all events in the given range that are equal to or contained in
+     *         the given address or null if there are no events at all
+     */
+    public List<XEvent> getEvents(final XAddress address, final long beginRevision,
             final long endRevision) {
 
-        if(this.events.isEmpty()) {
+        // read the tail once, all events up to it are visible
+        final long currentRev = getRevisionNumber();
+        if(currentRev < 0) {
             return null;
         }
 
-        final long currentRev = getRevisionNumber();
         final long start = beginRevision < 0 ? 0 : beginRevision;
         final long end = endRevision > currentRev ? currentRev : endRevision;
 
         log.info("getEvents: [" + beginRevision + "," + endRevision + "]=>[" + start + "," + end
-                + "] curr:" + currentRev + " size:" + this.events.size() + " modelrev:"
-                + (this.model == null ? -2 : this.model.getRevisionNumber()));
+                + "] curr:" + currentRev + " size:" + this.events.size());
 
         if(start > end) {
             // happens if start >= currentRev, which is allowed
             return new ArrayList<XEvent>();
         }
 
-        final List<XEvent> result = new ArrayList<XEvent>();
-
         /*
-         * filter a (sub-) list
-         *
          * Note: Can handle max. Integer.MAX events = 2^31 which is a lot of
-         * events and the standard java containers cannot contain more anyway,
-         * at least the array-based ArrayList.
+         * events and the standard java containers cannot contain more anyway.
+         *
+         * TODO how to filter transaction events? ~Daniel
+         *
+         * TODO should this filtering be done in the calling
+         * DelegateToPersistenceAndArm since it needs to filter for access
+         * rights anyway?
          */
-        for(final XEvent xe : this.events.subList((int)start, (int)end + 1)) {
-            // TODO how to filter transaction events? ~Daniel
-            // TODO should this filtering be done in the calling
-            // DelegateToPersistenceAndArm since it needs to filter for access
-            // rights anyway?
-            if(address.equalsOrContains(xe.getChangedEntity())) {
-                result.add(xe);
-            }
-        }
-
-        return result;
+        return this.events.getEvents(address, (int)start, (int)end);
     }
 
     /**
+     * Takes O(1) time, the snapshot shares all state with the current model
+     * until it is changed by the next command. Each call returns a new
+     * snapshot. Any number of threads can read it, see
+     * {@link CopyOnWriteModel}.
+     *
      * @return the snapshot or null if not found
      */
     synchronized public XRevWritableModel getModelSnapshot() {
-        if(this.model == null || !this.model.exists()) {
-			return null;
-		}
+        if(this.model == null || !this.model.exists()
+                || this.model.getRevisionNumber() == RevisionConstants.NOT_EXISTING) {
+            return null;
+        }
 
-        return XCopyUtils.createSnapshot(this.model);
+        return this.model.snapshot();
     }
 
+    /**
+     * Takes O(1) time, the snapshot shares all fields with the current object
+     * until it is changed by the next command. Each call returns a new
+     * snapshot. Any number of threads can read it, see
+     * {@link CopyOnWriteModel}.
+     *
+     * @param objectId
+     * @return the snapshot or null if not found
+     */
     synchronized public XRevWritableObject getObjectSnapshot(final XId objectId) {
         /*
          * if this model has not been created yet, there cannot be an object
@@ -250,15 +314,20 @@ public class MemoryModelPersistence {
             return null;
         }
 
-        return XCopyUtils.createSnapshot(this.model.getObject(objectId));
+        return this.model.getObjectSnapshot(objectId);
     }
 
-    synchronized public long getRevisionNumber() {
+    public long getRevisionNumber() {
         return this.events.size() - 1;
     }
 
+    /**
+     * Does not block, even while commands are executed.
+     *
+     * @return the revision and existence of the model after the last command
+     */
     public ModelRevision getModelRevision() {
-        return new ModelRevision(getRevisionNumber(), exists());
+        return this.modelRevision;
     }
 
 }
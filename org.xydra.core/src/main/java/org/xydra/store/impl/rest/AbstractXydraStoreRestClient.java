@@ -12,6 +12,7 @@ import org.xydra.base.XId;
 import org.xydra.base.XType;
 import org.xydra.base.change.XCommand;
 import org.xydra.base.change.XEvent;
+import org.xydra.base.minio.MiniReader;
 import org.xydra.base.rmof.XEntity;
 import org.xydra.base.rmof.XReadableModel;
 import org.xydra.base.rmof.XReadableObject;
@@ -103,23 +104,89 @@ public abstract class AbstractXydraStoreRestClient implements XydraStore {
                         + " " + message));
                 return;
             }
+            if(!checkStatus(code, message)) {
+                return;
+            }
+
+            XydraElement element;
+            try {
+                element = AbstractXydraStoreRestClient.this.parser.parse(content);
+            } catch(final Throwable th) {
+                onParseFailure(th);
+                return;
+            }
+
+            onResponse(element);
+        }
+
+        /**
+         * Like {@link #onResponse(String, int, String)}, but parses the
+         * response directly from the given reader instead of a fully buffered
+         * string.
+         *
+         * @param content the response body, must be fully consumed before the
+         *            underlying connection is closed
+         * @param code
+         * @param message
+         */
+        public void onResponse(final MiniReader content, final int code, final String message) {
+
+            if(!checkStatus(code, message)) {
+                return;
+            }
+
+            XydraElement element;
+            try {
+                element = AbstractXydraStoreRestClient.this.parser.parse(content);
+            } catch(final Throwable th) {
+                onParseFailure(th);
+                return;
+            }
+
+            onResponse(element);
+        }
+
+        /**
+         * @param code HTTP status code
+         * @param message HTTP status message
+         * @return true if the response should be parsed, false if there is no
+         *         callback or an error has already been reported to it
+         */
+        public boolean checkStatus(final int code, final String message) {
+
+            if(this.callback == null) {
+                return false;
+            }
+
             // verify status code to avoid failing on parsing HTML error pages
             if(code >= 400 && code < 500) {
                 this.callback.onFailure(new ConnectionException("client-side error " + code + " "
                         + message));
-                return;
+                return false;
             }
             if(code >= 500 && code < 600) {
                 this.callback.onFailure(new ConnectionException("server-side error " + code + " "
                         + message));
-                return;
+                return false;
             }
+            return true;
+        }
 
-            XydraElement element;
-            try {
-                element = AbstractXydraStoreRestClient.this.parser.parse(content);
-            } catch(final Throwable th) {
-                this.callback.onFailure(new InternalStoreException("error parsing response", th));
+        public void onParseFailure(final Throwable t) {
+            if(this.callback != null) {
+                this.callback.onFailure(new InternalStoreException("error parsing response", t));
+            }
+        }
+
+        /**
+         * Handles a response which has already been parsed and has a successful
+         * status code. The same element may be passed to several requests.
+         *
+         * @param element
+         */
+        public void onResponse(final XydraElement element) {
+
+            if(this.callback == null) {
                 return;
             }
 
@@ -133,7 +200,7 @@ public abstract class AbstractXydraStoreRestClient implements XydraStore {
             try {
                 result = parse(element);
             } catch(final Throwable th) {
-                this.callback.onFailure(new InternalStoreException("error parsing response", th));
+                onParseFailure(th);
                 return;
             }
 
@@ -186,6 +253,14 @@ public abstract class AbstractXydraStoreRestClient implements XydraStore {
 
         boolean first = true;
 
+        /* the compact argument is only sent when needed, for all or none */
+        boolean compact = false;
+        for(final GetEventsRequest ger : getEventsRequests) {
+            if(ger != null && ger.compacted) {
+                compact = true;
+            }
+        }
+
         for(int i = 0; i < getEventsRequests.length; i++) {
             final GetEventsRequest ger = getEventsRequests[i];
 
@@ -230,6 +305,13 @@ public abstract class AbstractXydraStoreRestClient implements XydraStore {
                 sb.append(ger.endRevision);
             }
 
+            if(compact) {
+                sb.append('&');
+                sb.append(XydraStoreRestInterface.ARG_COMPACT);
+                sb.append('=');
+                sb.append(ger.compacted);
+            }
+
         }
 
         if(first) {
@@ -0,0 +1,389 @@
+package org.xydra.store.impl.rest;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.xydra.annotations.RunsInGWT;
+import org.xydra.base.minio.MiniReader;
+import org.xydra.base.minio.MiniStreamReader;
+import org.xydra.core.serialize.XydraElement;
+import org.xydra.core.serialize.XydraOut;
+import org.xydra.core.serialize.XydraParser;
+import org.xydra.core.serialize.XydraSerializer;
+import org.xydra.log.api.Logger;
+import org.xydra.log.api.LoggerFactory;
+import org.xydra.perf.Stats;
+import org.xydra.sharedutils.XyAssert;
+import org.xydra.store.XydraStore;
+
+
+/**
+ * {@link XydraStore} implementation that connects to a xydra store REST server
+ * without blocking the calling thread.
+ *
+ * Requests are run on an {@link ExecutorService}, callbacks are called from
+ * its threads. Responses are parsed directly from the network stream instead
+ * of being read into a string first. Gzip compression is requested and
+ * decoded transparently. Each response is read completely and closed, so the
+ * JDK keeps the connection alive and reuses it for later requests to the same
+ * server.
+ *
+ * Identical GET requests (same URI and credentials) that are issued while one
+ * of them is still waiting for a thread to send it are sent only once; the
+ * parsed response is passed to all of them. This helps when several
+ * synchronizers poll the same models for events or revisions. Requests issued
+ * after it has been sent get a response of their own, so they see all writes
+ * that were answered before.
+ *
+ * Exceptions thrown by callbacks are logged and do not affect the callbacks of
+ * other requests.
+ *
+ * Latencies are recorded per endpoint in {@link #getStats()}, together with
+ * the counters "&lt;endpoint&gt; errors" and "&lt;endpoint&gt; coalesced".
+ *
+ * @author xamde
+ */
+@RunsInGWT(false)
+public class AsyncXydraStoreRestClient extends AbstractXydraStoreRestClient {
+
+	private static final Logger log = LoggerFactory.getLogger(AsyncXydraStoreRestClient.class);
+
+	public static final int DEFAULT_THREADS = 8;
+
+	private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+
+	private static final String ERRORS = " errors";
+
+	private static final String COALESCED = " coalesced";
+
+	private final URI prefix;
+
+	private final ExecutorService executor;
+
+	/** GET requests waiting to be sent, by {@link #getKey(String, Request)} */
+	private final Map<String,List<Request<?>>> inFlight = new HashMap<String,List<Request<?>>>();
+
+	private final Stats stats = new Stats();
+
+	/**
+	 * Uses a pool of {@link #DEFAULT_THREADS} daemon threads.
+	 *
+	 * @param apiLocation absolute url of Xydra REST endpoint
+	 * @param serializer ..
+	 * @param parser ..
+	 */
+	public AsyncXydraStoreRestClient(final URI apiLocation, final XydraSerializer serializer,
+	        final XydraParser parser) {
+		this(apiLocation, serializer, parser, Executors.newFixedThreadPool(DEFAULT_THREADS,
+		        new ThreadFactory() {
+
+			        private final AtomicInteger count = new AtomicInteger();
+
+			        @Override
+			        public Thread newThread(final Runnable r) {
+				        final Thread thread = new Thread(r, "xydra-rest-client-"
+				                + this.count.incrementAndGet());
+				        thread.setDaemon(true);
+				        return thread;
+			        }
+		        }));
+	}
+
+	/**
+	 * @param apiLocation absolute url of Xydra REST endpoint
+	 * @param serializer ..
+	 * @param parser ..
+	 * @param executor runs the requests and callbacks
+	 */
+	public AsyncXydraStoreRestClient(final URI apiLocation, final XydraSerializer serializer,
+	        final XydraParser parser, final ExecutorService executor) {
+		super(serializer, parser);
+		XyAssert.xyAssert(apiLocation != null); assert apiLocation != null;
+		XyAssert.xyAssert(executor != null); assert executor != null;
+		this.prefix = apiLocation;
+		this.executor = executor;
+	}
+
+	/**
+	 * @return latencies in nanoseconds and error counts, by endpoint
+	 */
+	public Stats getStats() {
+		return this.stats;
+	}
+
+	/**
+	 * Stops the executor; requests that have already been sent are still
+	 * answered.
+	 */
+	public void shutdown() {
+		this.executor.shutdown();
+	}
+
+	static String getEndpoint(final String uri) {
+		final int q = uri.indexOf('?');
+		return q < 0 ? uri : uri.substring(0, q);
+	}
+
+	private static String getKey(final String uri, final Request<?> req) {
+		return uri + '\n' + req.actor + '\n' + req.password;
+	}
+
+	private HttpURLConnection connect(final String uri, final Request<?> req) throws IOException {
+
+		URL url;
+		try {
+			url = this.prefix.resolve(uri).toURL();
+		} catch(final MalformedURLException e1) {
+			throw new RuntimeException(e1);
+		}
+
+		final HttpURLConnection con = (HttpURLConnection)url.openConnection();
+
+		con.setRequestProperty(HEADER_COOKIE, encodeLoginCookie(req.actor, req.password));
+
+		con.setRequestProperty(HEADER_ACCEPT, this.parser.getContentType());
+
+		con.setRequestProperty(HEADER_ACCEPT_ENCODING, "gzip");
+
+		return con;
+	}
+
+	/**
+	 * @param con
+	 * @param code
+	 * @return the (decompressed) response body or null if there is none
+	 * @throws IOException
+	 */
+	private static InputStream openResponse(final HttpURLConnection con, final int code)
+	        throws IOException {
+		final InputStream in = code >= 400 ? con.getErrorStream() : con.getInputStream();
+		if(in != null && "gzip".equalsIgnoreCase(con.getContentEncoding())) {
+			return new GZIPInputStream(in);
+		}
+		return in;
+	}
+
+	/**
+	 * Reads the rest of the response, which a lazy parser may have left, so
+	 * the connection can be reused.
+	 */
+	private static void drainAndClose(final InputStream in) {
+		try {
+			final byte[] buf = new byte[4096];
+			while(in.read(buf) != -1) {
+				// skip
+			}
+		} catch(final IOException e) {
+			// the connection will not be reused
+		} finally {
+			try {
+				in.close();
+			} catch(final IOException e) {
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * @param key of a GET request or null for POST requests
+	 * @param req
+	 * @return all requests to answer with the response of req
+	 */
+	private List<Request<?>> takeRequests(final String key, final Request<?> req) {
+		if(key == null) {
+			return Collections.<Request<?>>singletonList(req);
+		}
+		synchronized(this.inFlight) {
+			return this.inFlight.remove(key);
+		}
+	}
+
+	/**
+	 * Exceptions thrown by a callback must not keep the other callbacks from
+	 * being called.
+	 */
+	private static void callbackFailed(final Request<?> r, final RuntimeException e) {
+		log.warn("Callback of " + r + " failed", e);
+	}
+
+	private static void onFailure(final List<Request<?>> requests, final Throwable t) {
+		for(final Request<?> r : requests) {
+			try {
+				r.onFailure(t);
+			} catch(final RuntimeException e) {
+				callbackFailed(r, e);
+			}
+		}
+	}
+
+	private void submit(final String uri, final XydraOut data, final String key,
+	        final Request<?> req) {
+		try {
+			this.executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					request(uri, data, key, req);
+				}
+			});
+		} catch(final RejectedExecutionException e) {
+			onFailure(takeRequests(key, req), e);
+		}
+	}
+
+	private void request(final String uri, final XydraOut data, final String key,
+	        final Request<?> req) {
+
+		/*
+		 * requests made from now on get a response of their own, so they see
+		 * all writes that have been answered before they were made
+		 */
+		final List<Request<?>> requests = takeRequests(key, req);
+
+		final String endpoint = getEndpoint(uri);
+		final Stats.Clock clock = this.stats.startClock(endpoint);
+		try {
+
+			final HttpURLConnection con = connect(uri, req);
+
+			if(data != null) {
+				con.setDoOutput(true);
+				con.setRequestMethod("POST");
+				con.setRequestProperty(HAEDER_CONTENT_TYPE, data.getContentType());
+				final Writer w = new OutputStreamWriter(con.getOutputStream(), "UTF-8");
+				w.write(data.getData());
+				w.close();
+			}
+
+			final int code = con.getResponseCode();
+			final String message = con.getResponseMessage();
+			if(code >= 400) {
+				this.stats.count(endpoint + ERRORS);
+			}
+
+			final InputStream in = openResponse(con, code);
+			if(in == null) {
+				for(final Request<?> r : requests) {
+					try {
+						r.onResponse((String)null, code, message);
+					} catch(final RuntimeException e) {
+						callbackFailed(r, e);
+					}
+				}
+				return;
+			}
+			try {
+				final MiniReader reader = new MiniStreamReader(new BufferedReader(
+				        new InputStreamReader(in, "UTF-8")));
+				if(requests.size() == 1) {
+					try {
+						requests.get(0).onResponse(reader, code, message);
+					} catch(final RuntimeException e) {
+						callbackFailed(requests.get(0), e);
+					}
+				} else {
+					onResponse(requests, reader, code, message);
+				}
+			} finally {
+				drainAndClose(in);
+			}
+
+		} catch(final IOException e) {
+			this.stats.count(endpoint + ERRORS);
+			onFailure(requests, e);
+		} catch(final RuntimeException e) {
+			// e.g. from connect() or the JDK's HTTP client, not from callbacks
+			this.stats.count(endpoint + ERRORS);
+			onFailure(requests, e);
+		} finally {
+			clock.stop();
+		}
+	}
+
+	/**
+	 * Parses the response once and passes it to all requests.
+	 */
+	private void onResponse(final List<Request<?>> requests, final MiniReader reader,
+	        final int code, final String message) {
+
+		final List<Request<?>> accepted = new ArrayList<Request<?>>(requests.size());
+		for(final Request<?> r : requests) {
+			try {
+				if(r.checkStatus(code, message)) {
+					accepted.add(r);
+				}
+			} catch(final RuntimeException e) {
+				callbackFailed(r, e);
+			}
+		}
+		if(accepted.isEmpty()) {
+			return;
+		}
+
+		XydraElement element;
+		try {
+			element = this.parser.parse(reader);
+		} catch(final Throwable th) {
+			for(final Request<?> r : accepted) {
+				try {
+					r.onParseFailure(th);
+				} catch(final RuntimeException e) {
+					callbackFailed(r, e);
+				}
+			}
+			return;
+		}
+
+		for(final Request<?> r : accepted) {
+			try {
+				r.onResponse(element);
+			} catch(final RuntimeException e) {
+				callbackFailed(r, e);
+			}
+		}
+	}
+
+	@Override
+	protected void get(final String uri, final Request<?> req) {
+
+		final String key = getKey(uri, req);
+		synchronized(this.inFlight) {
+			final List<Request<?>> waiting = this.inFlight.get(key);
+			if(waiting != null) {
+				waiting.add(req);
+				this.stats.count(getEndpoint(uri) + COALESCED);
+				return;
+			}
+			final List<Request<?>> requests = new ArrayList<Request<?>>(2);
+			requests.add(req);
+			this.inFlight.put(key, requests);
+		}
+
+		submit(uri, null, key, req);
+	}
+
+	@Override
+	protected void post(final String uri, final XydraOut data, final Request<?> req) {
+		submit(uri, data, null, req);
+	}
+
+}
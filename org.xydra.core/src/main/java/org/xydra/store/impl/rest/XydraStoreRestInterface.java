@@ -43,6 +43,14 @@ public interface XydraStoreRestInterface {
 	 */
 	static final String ARG_BEGIN_REVISION = "beginRevision";
 
+	/**
+	 * Optional argument for events requests, "true" to ask for the net changes
+	 * of the range.
+	 *
+	 * @see GetEventsRequest#compacted
+	 */
+	static final String ARG_COMPACT = "compact";
+
 	static final String DEFAULT_CONTENT_TYPE = "application/xml";
 	static final String DEFAULT_CALLBACK_CONTENT_TYPE = "text/javascript";
 
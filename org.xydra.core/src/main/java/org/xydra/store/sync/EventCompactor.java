@@ -0,0 +1,118 @@
+package org.xydra.store.sync;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.xydra.annotations.RunsInGWT;
+import org.xydra.base.XAddress;
+import org.xydra.base.change.ChangeType;
+import org.xydra.base.change.XAtomicEvent;
+import org.xydra.base.change.XEvent;
+import org.xydra.base.change.XFieldEvent;
+import org.xydra.base.change.XTransactionEvent;
+import org.xydra.core.model.impl.memory.EventDelta;
+
+
+/**
+ * Collapses a range of events into the net change of each entity, so that a
+ * client which has been offline for a while does not need to receive and
+ * apply every intermediate value of a field.
+ *
+ * For every changed entity only the last event is kept, plus the first one if
+ * both cancel each other out (e.g. a field that was added and removed again),
+ * so that an {@link EventDelta} leaves the entity alone but the entity still
+ * gets its latest revision. Value changes of a field are tracked apart from
+ * adding and removing the field itself. Adding the result to an
+ * {@link EventDelta} and applying the entity revisions (
+ * {@link NewSyncer#applyEntityRevisionsToModel(XEvent[], org.xydra.base.rmof.impl.ISyncableState)}
+ * ) yields the state after the last event, because the last event of every
+ * entity carries its final revision.
+ *
+ * This is more than a size optimisation: an {@link EventDelta} only compares
+ * an event with the previous one of the same entity, so it cannot handle
+ * long histories (e.g. a value that was changed and later removed cancels
+ * out).
+ *
+ * The kept events of a transaction do not form a valid transaction on their
+ * own, so the result is not meant to be stored in a change log.
+ *
+ * @author xamde
+ */
+@RunsInGWT(true)
+public class EventCompactor {
+
+    private static void unpack(final XEvent event, final List<XAtomicEvent> atomicEvents) {
+        if(event instanceof XTransactionEvent) {
+            for(final XAtomicEvent atomicEvent : (XTransactionEvent)event) {
+                atomicEvents.add(atomicEvent);
+            }
+        } else {
+            atomicEvents.add((XAtomicEvent)event);
+        }
+    }
+
+    private static void track(final Map<XAddress,int[]> firstAndLast, final XAddress entity,
+            final int i) {
+        final int[] indexes = firstAndLast.get(entity);
+        if(indexes == null) {
+            firstAndLast.put(entity, new int[] { i, i });
+        } else {
+            indexes[1] = i;
+        }
+    }
+
+    /**
+     * Keeps the last event of every entity and the first one, if both
+     * together cancel each other out in an {@link EventDelta}: an entity that
+     * was added and removed again or vice versa, a value that was added and
+     * removed again.
+     */
+    private static void mark(final Map<XAddress,int[]> firstAndLast,
+            final List<XAtomicEvent> atomicEvents, final boolean[] keep, final boolean values) {
+        for(final int[] indexes : firstAndLast.values()) {
+            keep[indexes[1]] = true;
+            final ChangeType first = atomicEvents.get(indexes[0]).getChangeType();
+            final ChangeType last = atomicEvents.get(indexes[1]).getChangeType();
+            if(values ? first == ChangeType.ADD && last == ChangeType.REMOVE : first != last) {
+                keep[indexes[0]] = true;
+            }
+        }
+    }
+
+    /**
+     * @param events sorted by revision number, may contain transactions
+     * @return the net changes as atomic events in their original order, the
+     *         events of transactions are marked as being in a transaction
+     */
+    public static XEvent[] compact(final XEvent[] events) {
+        final List<XAtomicEvent> atomicEvents = new ArrayList<XAtomicEvent>(events.length);
+        for(final XEvent event : events) {
+            unpack(event, atomicEvents);
+        }
+
+        /* entity -> index of its first and last event */
+        final Map<XAddress,int[]> valueChanges = new HashMap<XAddress,int[]>();
+        final Map<XAddress,int[]> entityChanges = new HashMap<XAddress,int[]>();
+        for(int i = 0; i < atomicEvents.size(); i++) {
+            final XAtomicEvent atomicEvent = atomicEvents.get(i);
+            track(atomicEvent instanceof XFieldEvent ? valueChanges : entityChanges,
+                    atomicEvent.getChangedEntity(), i);
+        }
+
+        final boolean[] keep = new boolean[atomicEvents.size()];
+        mark(valueChanges, atomicEvents, keep, true);
+        mark(entityChanges, atomicEvents, keep, false);
+
+        final List<XEvent> result = new ArrayList<XEvent>(valueChanges.size()
+                + entityChanges.size());
+        for(int i = 0; i < keep.length; i++) {
+            if(keep[i]) {
+                result.add(atomicEvents.get(i));
+            }
+        }
+        return result.toArray(new XEvent[result.size()]);
+    }
+
+}
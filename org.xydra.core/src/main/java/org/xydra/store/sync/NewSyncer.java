@@ -11,6 +11,7 @@ import org.xydra.base.change.XCommand;
 import org.xydra.base.change.XEvent;
 import org.xydra.base.change.XSyncEvent;
 import org.xydra.base.change.XTransactionEvent;
+import org.xydra.base.rmof.XReadableModel;
 import org.xydra.base.rmof.XRevWritableField;
 import org.xydra.base.rmof.XRevWritableModel;
 import org.xydra.base.rmof.XRevWritableObject;
@@ -28,6 +29,8 @@ import org.xydra.index.query.Pair;
 import org.xydra.log.api.Logger;
 import org.xydra.log.api.LoggerFactory;
 import org.xydra.persistence.GetEventsRequest;
+import org.xydra.persistence.GetWithAddressRequest;
+import org.xydra.persistence.ModelRevision;
 import org.xydra.store.BatchedResult;
 import org.xydra.store.Callback;
 import org.xydra.store.XydraStore;
@@ -54,6 +57,58 @@ public class NewSyncer {
 
     }
 
+    /**
+     * Asks for the model revision before catching up, see
+     * {@link NewSyncer#setSnapshotCatchUpThreshold(long)}
+     */
+    private class RevisionCallback implements Callback<BatchedResult<ModelRevision>[]> {
+
+        @Override
+        public void onFailure(final Throwable exception) {
+            onServerFailure(exception);
+        }
+
+        @Override
+        public void onSuccess(final BatchedResult<ModelRevision>[] results) {
+            if(results[0].getException() != null) {
+                onServerFailure(results[0].getException());
+                return;
+            }
+            final ModelRevision modelRev = results[0].getResult();
+            if(modelRev != null && modelRev.modelExists()
+                    && modelRev.revision() - NewSyncer.this.syncRev > NewSyncer.this.snapshotCatchUpThreshold) {
+                requestSnapshot();
+            } else {
+                requestEvents(new XCommand[0]);
+            }
+        }
+
+    }
+
+    private class SnapshotCallback implements Callback<BatchedResult<XReadableModel>[]> {
+
+        @Override
+        public void onFailure(final Throwable exception) {
+            onServerFailure(exception);
+        }
+
+        @Override
+        public void onSuccess(final BatchedResult<XReadableModel>[] results) {
+            if(results[0].getException() != null) {
+                onServerFailure(results[0].getException());
+                return;
+            }
+            final XReadableModel snapshot = results[0].getResult();
+            if(snapshot == null) {
+                // removed in the meantime, the events say so
+                requestEvents(new XCommand[0]);
+            } else {
+                continueSync(null, snapshot);
+            }
+        }
+
+    }
+
     private static final Logger log = LoggerFactory.getLogger(NewSyncer.class);
 
     /**
@@ -161,6 +216,15 @@ public class NewSyncer {
 
     private long syncRev;
 
+    /** if true, syncs without local changes ask the server for compacted events */
+    private boolean compactedCatchUp = false;
+
+    /** true while a sync that requested compacted events is running */
+    private boolean catchingUp = false;
+
+    /** number of revisions above which catching up loads a snapshot */
+    private long snapshotCatchUpThreshold = Long.MAX_VALUE;
+
     /**
      * @param store to send commands and get events
      * @param modelWithListeners
@@ -213,119 +277,222 @@ public class NewSyncer {
      * <li>Send change events</li>
      * </ol>
      *
+     * When catching up (see {@link #setCompactedCatchUp(boolean)}), there are
+     * no local changes to map and the server events are applied as one
+     * compacted delta instead.
+     *
      * @param serverEvents
      */
     public void continueSync(final XEvent[] serverEvents) {
+        continueSync(serverEvents, null);
+    }
+
+    /**
+     * @param serverEvents @CanBeNull if snapshot is given
+     * @param snapshot @CanBeNull, if given the sync is catching up with it
+     */
+    private void continueSync(final XEvent[] serverEvents, final XReadableModel snapshot) {
         if(log.isDebugEnabled()) {
-			log.debug("***** Computing eventDelta from " + serverEvents.length
-                    + " server events and n local changes");
+			log.debug("***** Computing eventDelta from "
+                    + (snapshot == null ? serverEvents.length + " server events"
+                            : "snapshot " + snapshot.getRevisionNumber())
+                    + " and n local changes");
 		}
 
         try {
 
-            /* calculated event delta */
-            final EventDelta eventDelta = new EventDelta();
-            for(final XEvent serverEvent : serverEvents) {
-                if(log.isTraceEnabled()) {
+            final EventDelta eventDelta;
+            if(snapshot != null) {
+                eventDelta = catchUp(snapshot);
+            } else if(this.catchingUp) {
+                eventDelta = catchUp(serverEvents);
+            } else {
+                eventDelta = mergeWithLocalChanges(serverEvents);
+            }
+
+            // send change events
+            if(log.isDebugEnabled()) {
+				log.debug("Sending " + eventDelta.getEventCount() + " events");
+			}
+            eventDelta.sendChangeEvents(this.root, this.entityAddress,
+                    this.entityAddress.getParent());
+
+        } catch(final Exception e) {
+            throw new RuntimeException("error while syncing", e);
+        } finally {
+            this.catchingUp = false;
+            this.root.unlock();
+        }
+
+        log.info("Done syncing");
+        if(this.synchronizationCallback != null) {
+            this.synchronizationCallback.onSuccess();
+        }
+    }
+
+    /**
+     * Applies the server events in one step, without event mapping, and
+     * restarts the sync log at the new synchronized revision. Only valid if
+     * there are no local changes.
+     *
+     * @param serverEvents possibly already compacted by the server
+     * @return the applied delta
+     */
+    private EventDelta catchUp(final XEvent[] serverEvents) {
+        assert !this.syncLog.getLocalChanges().hasNext();
+
+        // idempotent, also covers stores that do not compact
+        final XEvent[] netEvents = EventCompactor.compact(serverEvents);
+        if(log.isDebugEnabled()) {
+			log.debug("Catching up with " + netEvents.length + " net events of "
+                    + serverEvents.length + " server events");
+		}
+        final EventDelta eventDelta = new EventDelta();
+        for(final XEvent netEvent : netEvents) {
+            eventDelta.addEvent(netEvent);
+        }
+
+        // start atomic section -----
+        eventDelta.applyTo(this.syncableState);
+        NewSyncer.applyEntityRevisionsToModel(netEvents, this.syncableState);
+        if(netEvents.length > 0) {
+            final long newSyncRev = netEvents[netEvents.length - 1].getRevisionNumber();
+            this.syncLog.rebase(newSyncRev);
+            this.syncRev = newSyncRev;
+        }
+        // end atomic section ----
+
+        return eventDelta;
+    }
+
+    /**
+     * Like {@link #catchUp(XEvent[])}, but with the difference between the
+     * local state and the given snapshot.
+     *
+     * @param snapshot newer than the local state @NeverNull
+     * @return the applied delta
+     */
+    private EventDelta catchUp(final XReadableModel snapshot) {
+        assert !this.syncLog.getLocalChanges().hasNext();
+        final XRevWritableModel model = (XRevWritableModel)this.syncableState;
+
+        final XEvent[] diffEvents = SnapshotDiff.diff(this.actorId, model, snapshot);
+        if(log.isDebugEnabled()) {
+			log.debug("Catching up with " + diffEvents.length + " changes to snapshot "
+                    + snapshot.getRevisionNumber());
+		}
+        final EventDelta eventDelta = new EventDelta();
+        for(final XEvent diffEvent : diffEvents) {
+            eventDelta.addEvent(diffEvent);
+        }
+
+        // start atomic section -----
+        eventDelta.applyTo(model);
+        SnapshotDiff.applyRevisions(snapshot, model);
+        final long newSyncRev = snapshot.getRevisionNumber();
+        this.syncLog.rebase(newSyncRev);
+        this.syncRev = newSyncRev;
+        // end atomic section ----
+
+        return eventDelta;
+    }
+
+    /**
+     * @param serverEvents all server events since the last sync
+     * @return the delta between the local and the server state
+     */
+    private EventDelta mergeWithLocalChanges(final XEvent[] serverEvents) {
+        /* calculated event delta */
+        final EventDelta eventDelta = new EventDelta();
+        for(final XEvent serverEvent : serverEvents) {
+            if(log.isTraceEnabled()) {
 					log.trace(">>> Server event: " + serverEvent);
 				}
-                eventDelta.addEvent(serverEvent);
-            }
-            final Iterator<ISyncLogEntry> localChanges = this.syncLog.getLocalChanges();
-            while(localChanges.hasNext()) {
-                final ISyncLogEntry localSyncLogEntry = localChanges.next();
-                final XEvent localEvent = localSyncLogEntry.getEvent();
-                assert this.syncLog.getEventAt(localEvent.getRevisionNumber()) == localEvent;
-                if(log.isDebugEnabled()) {
+            eventDelta.addEvent(serverEvent);
+        }
+        final Iterator<ISyncLogEntry> localChanges = this.syncLog.getLocalChanges();
+        while(localChanges.hasNext()) {
+            final ISyncLogEntry localSyncLogEntry = localChanges.next();
+            final XEvent localEvent = localSyncLogEntry.getEvent();
+            assert this.syncLog.getEventAt(localEvent.getRevisionNumber()) == localEvent;
+            if(log.isDebugEnabled()) {
 					log.debug("<<< Local event: " + localEvent);
 				}
-                eventDelta.addInverseEvent(localEvent, this.syncLog);
-            }
+            eventDelta.addInverseEvent(localEvent, this.syncLog);
+        }
 
-            // state of eventDelta matters now a lot
+        // state of eventDelta matters now a lot
 
-            /* event mapping */
-            // choose your event mapper here
-            final IEventMapper eventMapper = new UnorderedEventMapper();
-            final IMappingResult mapping = eventMapper.mapEvents(this.syncLog, serverEvents);
+        /* event mapping */
+        // choose your event mapper here
+        final IEventMapper eventMapper = new UnorderedEventMapper();
+        final IMappingResult mapping = eventMapper.mapEvents(this.syncLog, serverEvents);
 
-            // send sync events, let app see state before sync
-            for(final Pair<XEvent,XEvent> p : mapping.getMapped()) {
-                final XEvent event = p.getSecond();
-                // send sync-success events
-                fireSyncEvent(event, true);
-            }
-            for(final XEvent event : mapping.getUnmappedLocalEvents()) {
-                fireSyncEvent(event, false);
-            }
+        // send sync events, let app see state before sync
+        for(final Pair<XEvent,XEvent> p : mapping.getMapped()) {
+            final XEvent event = p.getSecond();
+            // send sync-success events
+            fireSyncEvent(event, true);
+        }
+        for(final XEvent event : mapping.getUnmappedLocalEvents()) {
+            fireSyncEvent(event, false);
+        }
 
-            // start atomic section -----
+        // start atomic section -----
 
-            // change model state
-            eventDelta.applyTo(this.syncableState);
+        // change model state
+        eventDelta.applyTo(this.syncableState);
 
-            log.info("State now = " + this.syncableState);
+        if(log.isDebugEnabled()) {
+			log.debug("State now = " + this.syncableState);
+		}
 
-            // change model state revison numbers
-            NewSyncer.applyEntityRevisionsToModel(serverEvents, this.syncableState);
+        // change model state revison numbers
+        NewSyncer.applyEntityRevisionsToModel(serverEvents, this.syncableState);
 
-            // change sync log
-            long newSyncRev = -1;
-            if(serverEvents.length > 0) {
-                newSyncRev = serverEvents[serverEvents.length - 1].getRevisionNumber();
-                // change changeLog
-                this.syncLog.truncateToRevision(this.syncRev);
-                log.info("Current SyncLog=" + this.syncLog);
-                if(log.isDebugEnabled()) {
+        // change sync log
+        long newSyncRev = -1;
+        if(serverEvents.length > 0) {
+            newSyncRev = serverEvents[serverEvents.length - 1].getRevisionNumber();
+            // change changeLog
+            this.syncLog.truncateToRevision(this.syncRev);
+            if(log.isDebugEnabled()) {
+				log.debug("Current SyncLog=" + this.syncLog);
+			}
+            if(log.isDebugEnabled()) {
 					log.debug("Appending events to syncLog");
 				}
-                for(final XEvent e : serverEvents) {
-                    if(log.isDebugEnabled()) {
+            for(final XEvent e : serverEvents) {
+                if(log.isDebugEnabled()) {
 						log.debug("Current rev=" + this.syncLog.getCurrentRevisionNumber());
 					}
-                    if(log.isDebugEnabled()) {
+                if(log.isDebugEnabled()) {
 						log.debug("### Appending event from server: " + e);
 					}
-                    this.syncLog.appendEvent(e);
-                }
-            } else {
-                if(log.isDebugEnabled()) {
+                this.syncLog.appendEvent(e);
+            }
+        } else {
+            if(log.isDebugEnabled()) {
 					log.debug("No server appends received, synclog remains unchanged");
 				}
-            }
+        }
 
-            if(log.isDebugEnabled()) {
+        if(log.isDebugEnabled()) {
 				log.debug("Clearing local changes");
 			}
-            this.syncLog.clearLocalChanges();
+        this.syncLog.clearLocalChanges();
 
-            if(serverEvents.length > 0) {
-                if(log.isDebugEnabled()) {
+        if(serverEvents.length > 0) {
+            if(log.isDebugEnabled()) {
 					log.debug("Setting new syncRev to " + newSyncRev);
 				}
-                this.syncLog.setSynchronizedRevision(newSyncRev);
-            }
-            this.syncRev = newSyncRev;
-
-            // end atomic section ----
-
-            // send change events
-            if(log.isDebugEnabled()) {
-				log.debug("Sending " + eventDelta.getEventCount() + " events");
-			}
-            eventDelta.sendChangeEvents(this.root, this.entityAddress,
-                    this.entityAddress.getParent());
-
-        } catch(final Exception e) {
-            throw new RuntimeException("error while syncing", e);
-        } finally {
-            this.root.unlock();
+            this.syncLog.setSynchronizedRevision(newSyncRev);
         }
+        this.syncRev = newSyncRev;
 
-        log.info("Done syncing");
-        if(this.synchronizationCallback != null) {
-            this.synchronizationCallback.onSuccess();
-        }
+        // end atomic section ----
+
+        return eventDelta;
     }
 
     /**
@@ -377,6 +544,35 @@ public class NewSyncer {
         }
     }
 
+    /**
+     * In catch-up mode, a sync without local changes asks the server for the
+     * net changes since the last sync (see {@link EventCompactor}) and applies
+     * them in one step, without mapping them to local changes. Afterwards the
+     * sync log starts at the new synchronized revision, like after loading a
+     * snapshot, so the change log no longer contains the individual events.
+     * Useful for clients that reconnect after a long time.
+     *
+     * @param compactedCatchUp default is false
+     */
+    public void setCompactedCatchUp(final boolean compactedCatchUp) {
+        this.compactedCatchUp = compactedCatchUp;
+    }
+
+    /**
+     * In catch-up mode (see {@link #setCompactedCatchUp(boolean)}), a model
+     * that lags behind the server by more than the given number of revisions
+     * loads a snapshot of the server state instead of the events since the
+     * last sync. This costs an additional request for the model revision per
+     * catch-up. The listeners get the difference between the local state and
+     * the snapshot as change events.
+     *
+     * @param revisions default is {@link Long#MAX_VALUE}, i.e. never load a
+     *            snapshot
+     */
+    public void setSnapshotCatchUpThreshold(final long revisions) {
+        this.snapshotCatchUpThreshold = revisions;
+    }
+
     /**
      * @param synchronizationCallback @CanBeNull
      */
@@ -405,15 +601,33 @@ public class NewSyncer {
 			}
             localCommandList.add(cmd);
         }
+        this.catchingUp = this.compactedCatchUp && localCommandList.isEmpty();
+        final XCommand[] localCommandsArray = localCommandList.toArray(new XCommand[localCommandList
+                .size()]);
+        if(this.catchingUp && this.snapshotCatchUpThreshold < Long.MAX_VALUE
+                && this.syncableState instanceof XRevWritableModel) {
+            // there are no commands to send, so a snapshot is enough
+            this.remoteStore.getModelRevisions(this.actorId, this.passwordHash,
+                    new GetWithAddressRequest[] { new GetWithAddressRequest(this.entityAddress) },
+                    new RevisionCallback());
+            return;
+        }
+        requestEvents(localCommandsArray);
+    }
+
+    /**
+     * Sends the local commands and asks for the events since the last sync.
+     *
+     * @param localCommandsArray @NeverNull
+     */
+    private void requestEvents(final XCommand[] localCommandsArray) {
         final GetEventsRequest getEventRequest = new GetEventsRequest(this.syncableState.getAddress(),
-                this.syncRev + 1, Long.MAX_VALUE);
+                this.syncRev + 1, Long.MAX_VALUE, this.catchingUp);
 
         // prepare batch request
-        final XCommand[] localCommandsArray = localCommandList.toArray(new XCommand[localCommandList
-                .size()]);
         final GetEventsRequest[] getEventRequestArray = new GetEventsRequest[] { getEventRequest };
         if(log.isDebugEnabled()) {
-			log.debug("Sync executeCommands(#" + localCommandList.size() + ")AndGetEvents(#?)");
+			log.debug("Sync executeCommands(#" + localCommandsArray.length + ")AndGetEvents(#?)");
 		}
 
         // contact remote store
@@ -421,4 +635,10 @@ public class NewSyncer {
                 localCommandsArray, getEventRequestArray, new ServerCallback());
         // IMPROVE let app continue to run while we wait?
     }
+
+    private void requestSnapshot() {
+        this.remoteStore.getModelSnapshots(this.actorId, this.passwordHash,
+                new GetWithAddressRequest[] { new GetWithAddressRequest(this.entityAddress) },
+                new SnapshotCallback());
+    }
 }
@@ -0,0 +1,127 @@
+package org.xydra.store.sync;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xydra.annotations.RunsInGWT;
+import org.xydra.base.Base;
+import org.xydra.base.XAddress;
+import org.xydra.base.XId;
+import org.xydra.base.change.XEvent;
+import org.xydra.base.change.impl.memory.MemoryFieldEvent;
+import org.xydra.base.change.impl.memory.MemoryModelEvent;
+import org.xydra.base.change.impl.memory.MemoryObjectEvent;
+import org.xydra.base.rmof.XReadableField;
+import org.xydra.base.rmof.XReadableModel;
+import org.xydra.base.rmof.XReadableObject;
+import org.xydra.base.rmof.XRevWritableField;
+import org.xydra.base.rmof.XRevWritableModel;
+import org.xydra.base.rmof.XRevWritableObject;
+import org.xydra.base.value.XValue;
+import org.xydra.core.model.impl.memory.EventDelta;
+
+
+/**
+ * Describes the difference between a local model state and a newer snapshot
+ * of the same model as events, so that a client can catch up by loading a
+ * snapshot instead of all events since its last sync, but can still use an
+ * {@link EventDelta} to apply the changes and notify its listeners.
+ *
+ * The events carry the revision of the snapshot, the revisions of the
+ * entities are copied from the snapshot by
+ * {@link #applyRevisions(XReadableModel, XRevWritableModel)}.
+ *
+ * @author xamde
+ */
+@RunsInGWT(true)
+class SnapshotDiff {
+
+    /**
+     * @param actorId who is reported as the cause of the changes
+     * @param local current state @NeverNull
+     * @param snapshot newer state of the same model @NeverNull
+     * @return the events that turn local into snapshot, ignoring revisions
+     */
+    static XEvent[] diff(final XId actorId, final XReadableModel local,
+            final XReadableModel snapshot) {
+        final long rev = snapshot.getRevisionNumber();
+        final XAddress modelAddr = local.getAddress();
+        final List<XEvent> events = new ArrayList<XEvent>();
+        for(final XId objectId : local) {
+            if(!snapshot.hasObject(objectId)) {
+                events.add(MemoryModelEvent.createRemoveEvent(actorId, modelAddr, objectId, rev,
+                        local.getObject(objectId).getRevisionNumber(), false, false));
+            }
+        }
+        for(final XId objectId : snapshot) {
+            final XReadableObject snapshotObject = snapshot.getObject(objectId);
+            final XReadableObject localObject = local.getObject(objectId);
+            if(localObject == null) {
+                events.add(MemoryModelEvent.createAddEvent(actorId, modelAddr, objectId, rev, false));
+            }
+            diff(actorId, Base.resolveObject(modelAddr, objectId), localObject, snapshotObject,
+                    rev, events);
+        }
+        return events.toArray(new XEvent[events.size()]);
+    }
+
+    /**
+     * @param local @CanBeNull if the object is new
+     */
+    private static void diff(final XId actorId, final XAddress objectAddr,
+            final XReadableObject local, final XReadableObject snapshot, final long rev,
+            final List<XEvent> events) {
+        if(local != null) {
+            for(final XId fieldId : local) {
+                if(!snapshot.hasField(fieldId)) {
+                    events.add(MemoryObjectEvent.createRemoveEvent(actorId, objectAddr, fieldId,
+                            rev, rev, local.getField(fieldId).getRevisionNumber(), false, false));
+                }
+            }
+        }
+        for(final XId fieldId : snapshot) {
+            final XReadableField snapshotField = snapshot.getField(fieldId);
+            final XReadableField localField = local == null ? null : local.getField(fieldId);
+            if(localField == null) {
+                events.add(MemoryObjectEvent.createAddEvent(actorId, objectAddr, fieldId, rev,
+                        rev, false));
+            }
+            final XValue oldValue = localField == null ? null : localField.getValue();
+            final XValue newValue = snapshotField.getValue();
+            final XAddress fieldAddr = Base.resolveField(objectAddr, fieldId);
+            if(oldValue == null) {
+                if(newValue != null) {
+                    events.add(MemoryFieldEvent.createAddEvent(actorId, fieldAddr, newValue, rev,
+                            rev, rev, false));
+                }
+            } else if(newValue == null) {
+                events.add(MemoryFieldEvent.createRemoveEvent(actorId, fieldAddr, rev, rev, rev,
+                        false, false));
+            } else if(!oldValue.equals(newValue)) {
+                events.add(MemoryFieldEvent.createChangeEvent(actorId, fieldAddr, newValue, rev,
+                        rev, rev, false));
+            }
+        }
+    }
+
+    /**
+     * Sets the revisions of the model and all its objects and fields to those
+     * in the snapshot. Both must have the same objects and fields.
+     *
+     * @param snapshot @NeverNull
+     * @param model @NeverNull
+     */
+    static void applyRevisions(final XReadableModel snapshot, final XRevWritableModel model) {
+        model.setRevisionNumber(snapshot.getRevisionNumber());
+        for(final XId objectId : snapshot) {
+            final XReadableObject snapshotObject = snapshot.getObject(objectId);
+            final XRevWritableObject object = model.getObject(objectId);
+            object.setRevisionNumber(snapshotObject.getRevisionNumber());
+            for(final XId fieldId : snapshotObject) {
+                final XRevWritableField field = object.getField(fieldId);
+                field.setRevisionNumber(snapshotObject.getField(fieldId).getRevisionNumber());
+            }
+        }
+    }
+
+}
@@ -18,6 +18,10 @@ public class SimpleValueIndexer extends StringValueSimpleIndexerAdapter {
 		super(index);
 	}
 
+	public SimpleValueIndexer(final ValueIndex index, final SortedValueIndex sortedIndex) {
+		super(index, sortedIndex);
+	}
+
 	/**
 	 * Splits the given String by using the \W regular expression (basically
 	 * every single word in the String will be returned as one index string and
@@ -0,0 +1,160 @@
+package org.xydra.valueindex;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.xydra.base.XAddress;
+import org.xydra.base.value.XValue;
+import org.xydra.index.impl.FastEntrySetFactory;
+import org.xydra.index.impl.LongBTreeMapSetIndex;
+import org.xydra.index.impl.trie.SmallTrieStringMapSetIndex;
+import org.xydra.index.iterator.ClosableIterator;
+import org.xydra.index.query.KeyEntryTuple;
+
+
+/**
+ * Typed postings which answer range and prefix queries, as an addition to the
+ * exact lookups of a {@link ValueIndex}. Filled by an {@link XValueIndexer}
+ * which has been created with a SortedValueIndex.
+ *
+ * Integer and long values share one B+-tree, so a range query finds both.
+ * Double values are kept in a second B+-tree. Strings are kept in a trie,
+ * using the same index strings as the {@link ValueIndex} (e.g. the lower case
+ * words of the string, see {@link XValueIndexer#getStringIndexStrings(String)}
+ * ).
+ *
+ * Not thread-safe.
+ *
+ * @author xamde
+ */
+public class SortedValueIndex {
+
+	private final LongBTreeMapSetIndex<ValueIndexEntry> integers = new LongBTreeMapSetIndex<ValueIndexEntry>(
+	        new FastEntrySetFactory<ValueIndexEntry>());
+
+	private final LongBTreeMapSetIndex<ValueIndexEntry> doubles = new LongBTreeMapSetIndex<ValueIndexEntry>(
+	        new FastEntrySetFactory<ValueIndexEntry>());
+
+	private final SmallTrieStringMapSetIndex<ValueIndexEntry> strings = new SmallTrieStringMapSetIndex<ValueIndexEntry>(
+	        new FastEntrySetFactory<ValueIndexEntry>());
+
+	/**
+	 * @param l an integer or long which is part of the given value
+	 * @param fieldAddress the {@link XAddress} of the field holding the value
+	 * @param value
+	 */
+	public void indexLong(final long l, final XAddress fieldAddress, final XValue value) {
+		this.integers.index(l, new ValueIndexEntry(fieldAddress, value));
+	}
+
+	/**
+	 * @param l an integer or long which is part of the given value
+	 * @param fieldAddress the {@link XAddress} of the field holding the value
+	 * @param value
+	 */
+	public void deIndexLong(final long l, final XAddress fieldAddress, final XValue value) {
+		this.integers.deIndex(l, new ValueIndexEntry(fieldAddress, value));
+	}
+
+	/**
+	 * @param d a double which is part of the given value
+	 * @param fieldAddress the {@link XAddress} of the field holding the value
+	 * @param value
+	 */
+	public void indexDouble(final double d, final XAddress fieldAddress, final XValue value) {
+		this.doubles.index(sortableLong(d), new ValueIndexEntry(fieldAddress,
+		        value));
+	}
+
+	/**
+	 * @param d a double which is part of the given value
+	 * @param fieldAddress the {@link XAddress} of the field holding the value
+	 * @param value
+	 */
+	public void deIndexDouble(final double d, final XAddress fieldAddress, final XValue value) {
+		this.doubles.deIndex(sortableLong(d), new ValueIndexEntry(
+		        fieldAddress, value));
+	}
+
+	/**
+	 * @param key an index string of a string which is part of the given value
+	 * @param fieldAddress the {@link XAddress} of the field holding the value
+	 * @param value
+	 */
+	public void indexString(final String key, final XAddress fieldAddress, final XValue value) {
+		this.strings.index(key, new ValueIndexEntry(fieldAddress, value));
+	}
+
+	/**
+	 * @param key an index string of a string which is part of the given value
+	 * @param fieldAddress the {@link XAddress} of the field holding the value
+	 * @param value
+	 */
+	public void deIndexString(final String key, final XAddress fieldAddress, final XValue value) {
+		this.strings.deIndex(key, new ValueIndexEntry(fieldAddress, value));
+	}
+
+	/**
+	 * @param min inclusive
+	 * @param max inclusive
+	 * @return all entries with an integer or long value in the given range
+	 */
+	public Set<ValueIndexEntry> searchRange(final long min, final long max) {
+		return toSet(this.integers.rangeIterator(min, max));
+	}
+
+	/**
+	 * @param min inclusive
+	 * @param max inclusive
+	 * @return all entries with a double value in the given range
+	 */
+	public Set<ValueIndexEntry> searchRange(final double min, final double max) {
+		return toSet(this.doubles.rangeIterator(sortableLong(min),
+		        sortableLong(max)));
+	}
+
+	/**
+	 * @param prefix is matched against the index strings
+	 * @return all entries with a string value which has an index string
+	 *         starting with the given prefix
+	 */
+	public Set<ValueIndexEntry> searchPrefix(final String prefix) {
+		final Set<ValueIndexEntry> result = new HashSet<ValueIndexEntry>();
+		final ClosableIterator<KeyEntryTuple<String, ValueIndexEntry>> it = this.strings
+		        .search(prefix);
+		try {
+			while(it.hasNext()) {
+				result.add(it.next().getEntry());
+			}
+		} finally {
+			it.close();
+		}
+		return result;
+	}
+
+	/**
+	 * Maps a double to a long so that the order of the longs is the numeric
+	 * order of the doubles, with NaN after positive infinity. -0.0 and 0.0 are
+	 * equal, so they are mapped to the same long.
+	 *
+	 * Not in {@link LongBTreeMapSetIndex}, as {@link Double#doubleToLongBits}
+	 * is not available in GWT.
+	 *
+	 * @param d
+	 * @return a long to be used as key for d
+	 */
+	static long sortableLong(final double d) {
+		final long bits = Double.doubleToLongBits(d == 0 ? 0.0 : d);
+		return bits ^ bits >> 63 & Long.MAX_VALUE;
+	}
+
+	private static Set<ValueIndexEntry> toSet(final Iterator<ValueIndexEntry> it) {
+		final Set<ValueIndexEntry> result = new HashSet<ValueIndexEntry>();
+		while(it.hasNext()) {
+			result.add(it.next());
+		}
+		return result;
+	}
+
+}
@@ -18,6 +18,10 @@ public abstract class StringValueSimpleIndexerAdapter extends XValueIndexer {
 		super(index);
 	}
 
+	public StringValueSimpleIndexerAdapter(final ValueIndex index, final SortedValueIndex sortedIndex) {
+		super(index, sortedIndex);
+	}
+
 	// ---- Methods returning the index strings ----
 
 	/**
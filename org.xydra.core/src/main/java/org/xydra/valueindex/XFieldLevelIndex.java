@@ -13,6 +13,8 @@ import org.xydra.base.rmof.XReadableField;
 import org.xydra.base.rmof.XReadableModel;
 import org.xydra.base.rmof.XReadableObject;
 import org.xydra.base.value.XValue;
+import org.xydra.core.index.IIncrementalIndex;
+import org.xydra.core.index.impl.memory.IndexManager;
 import org.xydra.index.query.EqualsConstraint;
 import org.xydra.index.query.Pair;
 
@@ -44,7 +46,7 @@ import org.xydra.index.query.Pair;
  * object address)
  */
 
-public class XFieldLevelIndex {
+public class XFieldLevelIndex implements IIncrementalIndex {
 	private final XValueIndexer indexer;
 	private final ValueIndex index;
 	private final XAddress modelAddress;
@@ -96,6 +98,36 @@ public class XFieldLevelIndex {
 		this.modelAddress = model.getAddress();
 	}
 
+	/**
+	 * Creates a new, empty index for the {@link XReadableModel} with the given
+	 * {@link XAddress}. The index is filled through
+	 * {@link #indexValue(XAddress, XValue)}, e.g. by an {@link IndexManager}
+	 * which also keeps it up to date.
+	 *
+	 * @param modelAddress The {@link XAddress} of the {@link XReadableModel}
+	 *            which will be indexed.
+	 * @param indexer see
+	 *            {@link #XFieldLevelIndex(XReadableModel, XValueIndexer, boolean, Set, Set)}
+	 * @param defaultIncludeAll see
+	 *            {@link #XFieldLevelIndex(XReadableModel, XValueIndexer, boolean, Set, Set)}
+	 * @param includedFieldIds see
+	 *            {@link #XFieldLevelIndex(XReadableModel, XValueIndexer, boolean, Set, Set)}
+	 * @param excludedFieldIds see
+	 *            {@link #XFieldLevelIndex(XReadableModel, XValueIndexer, boolean, Set, Set)}
+	 */
+	public XFieldLevelIndex(final XAddress modelAddress, final XValueIndexer indexer,
+	        final boolean defaultIncludeAll, final Set<XId> includedFieldIds,
+	        final Set<XId> excludedFieldIds) {
+		this.indexer = indexer;
+		this.index = indexer.getIndex();
+
+		this.defaultIncludeAll = defaultIncludeAll;
+		this.includedFieldIds = includedFieldIds;
+		this.excludedFieldIds = excludedFieldIds;
+
+		this.modelAddress = modelAddress;
+	}
+
 	/**
 	 * Checks for the given {@link XId} if fields with this {@link XId} are to
 	 * be indexed or not.
@@ -451,6 +483,63 @@ public class XFieldLevelIndex {
 		}
 	}
 
+	/**
+	 * Indexes the given value of the specified field, if fields with its
+	 * {@link XId} are to be indexed.
+	 *
+	 * This method assumes that the field is not indexed with another value. If
+	 * this is not the case, the index will be left in a state inconsistent to
+	 * the state of the {@link XReadableModel} indexed by this index.
+	 *
+	 * @param fieldAddress The {@link XAddress} of the {@link XReadableField}
+	 *            which holds the value.
+	 * @param value The {@link XValue}, may be null.
+	 * @throws RuntimeException if the given fieldAddress is not an address of a
+	 *             field of the model indexed by this index.
+	 */
+	@Override
+	public void indexValue(final XAddress fieldAddress, final XValue value) {
+		if(isToBeIndexed(checkFieldAddress(fieldAddress))) {
+			this.indexer.indexValue(fieldAddress, value);
+		}
+	}
+
+	/**
+	 * Deindexes the given value of the specified field, if fields with its
+	 * {@link XId} are to be indexed.
+	 *
+	 * @param fieldAddress The {@link XAddress} of the {@link XReadableField}
+	 *            which held the value.
+	 * @param value The {@link XValue} which was indexed, may be null.
+	 * @throws RuntimeException if the given fieldAddress is not an address of a
+	 *             field of the model indexed by this index.
+	 */
+	@Override
+	public void deIndexValue(final XAddress fieldAddress, final XValue value) {
+		if(isToBeIndexed(checkFieldAddress(fieldAddress))) {
+			this.indexer.deIndexValue(fieldAddress, value);
+		}
+	}
+
+	/**
+	 * @return the {@link XId} of the addressed field
+	 */
+	private XId checkFieldAddress(final XAddress fieldAddress) {
+		if(fieldAddress.getAddressedType() != XType.XFIELD) {
+			throw new RuntimeException("fieldAddress is no valid Field-XAddress, but an "
+			        + fieldAddress.getAddressedType() + "-Address.");
+		}
+
+		final XAddress modelAddress = Base.resolveModel(fieldAddress.getRepository(),
+		        fieldAddress.getModel());
+		if(!this.modelAddress.equals(modelAddress)) {
+			throw new RuntimeException(
+			        "the given field address was not an address of a field of the model indexed by this index.");
+		}
+
+		return fieldAddress.getField();
+	}
+
 	/**
 	 * A convenience method for updating the entries of two fields. Checks
 	 * whether the given newField revision is higher than the revision number of
@@ -575,4 +664,66 @@ public class XFieldLevelIndex {
 
 		return set;
 	}
+
+	/**
+	 * Returns the {@link ValueIndexEntry ValueIndexEntries} of all fields
+	 * holding an integer or long (or a list of them) in the given range.
+	 *
+	 * Needs an {@link XValueIndexer} with a {@link SortedValueIndex}.
+	 *
+	 * @param min the smallest value, inclusive
+	 * @param max the largest value, inclusive
+	 * @return a set of {@link ValueIndexEntry ValueIndexEntries}, see
+	 *         {@link #search(String)}
+	 * @throws IllegalStateException if the {@link XValueIndexer} has no
+	 *             {@link SortedValueIndex}
+	 */
+	public Set<ValueIndexEntry> searchRange(final long min, final long max) {
+		return getSortedIndex().searchRange(min, max);
+	}
+
+	/**
+	 * Returns the {@link ValueIndexEntry ValueIndexEntries} of all fields
+	 * holding a double (or a list of them) in the given range. Integer and
+	 * long values are not found, see {@link #searchRange(long, long)}.
+	 *
+	 * Needs an {@link XValueIndexer} with a {@link SortedValueIndex}.
+	 *
+	 * @param min the smallest value, inclusive
+	 * @param max the largest value, inclusive
+	 * @return a set of {@link ValueIndexEntry ValueIndexEntries}, see
+	 *         {@link #search(String)}
+	 * @throws IllegalStateException if the {@link XValueIndexer} has no
+	 *             {@link SortedValueIndex}
+	 */
+	public Set<ValueIndexEntry> searchRange(final double min, final double max) {
+		return getSortedIndex().searchRange(min, max);
+	}
+
+	/**
+	 * Returns the {@link ValueIndexEntry ValueIndexEntries} of all fields
+	 * holding a string with an index string that starts with the given
+	 * prefix. Like in {@link #search(String)}, the prefix is transformed to
+	 * lower case.
+	 *
+	 * Needs an {@link XValueIndexer} with a {@link SortedValueIndex}.
+	 *
+	 * @param prefix The prefix of the index strings
+	 * @return a set of {@link ValueIndexEntry ValueIndexEntries}, see
+	 *         {@link #search(String)}
+	 * @throws IllegalStateException if the {@link XValueIndexer} has no
+	 *             {@link SortedValueIndex}
+	 */
+	public Set<ValueIndexEntry> searchPrefix(final String prefix) {
+		return getSortedIndex().searchPrefix(prefix.toLowerCase());
+	}
+
+	private SortedValueIndex getSortedIndex() {
+		final SortedValueIndex sortedIndex = this.indexer.getSortedIndex();
+		if(sortedIndex == null) {
+			throw new IllegalStateException(
+			        "range and prefix queries need an XValueIndexer with a SortedValueIndex");
+		}
+		return sortedIndex;
+	}
 }
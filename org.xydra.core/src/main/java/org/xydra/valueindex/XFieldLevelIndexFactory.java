@@ -108,6 +108,21 @@ public class XFieldLevelIndexFactory {
 		}
 	}
 
+	/**
+	 * Creates an {@link XFieldLevelIndex} for the given {@link XModel} using a
+	 * {@link MemoryMapSetIndex} and a {@link SortedValueIndex}, so that the
+	 * index also answers range and prefix queries.
+	 *
+	 * @param model The {@link XModel} which is to be indexed.
+	 * @return an {@link XFieldLevelIndex} for the given {@link XModel} using a
+	 *         {@link MemoryMapSetIndex} and a {@link SortedValueIndex}.
+	 */
+	public XFieldLevelIndex createSortedIndexWithMemoryMapSetIndex(final XModel model) {
+		final SimpleValueIndexer valueIndexer = new SimpleValueIndexer(new MemoryMapSetIndex(),
+		        new SortedValueIndex());
+		return new XFieldLevelIndex(model, valueIndexer, true, null, null);
+	}
+
 	private static XFieldLevelIndex createIndexWithMemoryMapSetIndex(final XModel model,
 	        final boolean defaultIncludeAll, final Set<XId> includedFieldIds, final Set<XId> excludedFieldIds) {
 		final SimpleValueIndexer valueIndexer = new SimpleValueIndexer(new MemoryMapSetIndex());
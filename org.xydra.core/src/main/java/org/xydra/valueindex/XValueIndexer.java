@@ -38,6 +38,9 @@ import org.xydra.base.value.XValue;
 public abstract class XValueIndexer {
 	private final ValueIndex index;
 
+	/** may be null */
+	private final SortedValueIndex sortedIndex;
+
 	/**
 	 * Creates a new XValueIndexer using the given {@link ValueIndex} for
 	 * indexing.
@@ -46,7 +49,24 @@ public abstract class XValueIndexer {
 	 *            the {@link ValueIndex} which will be used for indexing.
 	 */
 	public XValueIndexer(final ValueIndex index) {
+		this(index, null);
+	}
+
+	/**
+	 * Creates a new XValueIndexer using the given {@link ValueIndex} for
+	 * indexing. Integer, long, double and string values are also indexed in
+	 * the given {@link SortedValueIndex}, which answers range and prefix
+	 * queries.
+	 *
+	 * @param index
+	 *            the {@link ValueIndex} which will be used for indexing.
+	 * @param sortedIndex
+	 *            the {@link SortedValueIndex} which will be used in addition,
+	 *            may be null.
+	 */
+	public XValueIndexer(final ValueIndex index, final SortedValueIndex sortedIndex) {
 		this.index = index;
+		this.sortedIndex = sortedIndex;
 	}
 
 	/**
@@ -58,6 +78,14 @@ public abstract class XValueIndexer {
 		return this.index;
 	}
 
+	/**
+	 * @return the {@link SortedValueIndex} used in addition to the
+	 *         {@link ValueIndex}, or null if there is none.
+	 */
+	public SortedValueIndex getSortedIndex() {
+		return this.sortedIndex;
+	}
+
 	/**
 	 * Indexes the given pair of {@link XAddress} and {@link XValue} according
 	 * to the rules of this XValueIndexer and the used {@link ValueIndex}.
@@ -523,6 +551,9 @@ public abstract class XValueIndexer {
 
 		final String key = getLongIndexString(l);
 		this.index.index(key, fieldAddress, value);
+		if (this.sortedIndex != null) {
+			this.sortedIndex.indexLong(l, fieldAddress, value);
+		}
 	}
 
 	public void indexNull(final XAddress fieldAddress, final XValue value) {
@@ -557,6 +588,9 @@ public abstract class XValueIndexer {
 
 		final String key = getLongIndexString(l);
 		this.index.deIndex(key, fieldAddress, value);
+		if (this.sortedIndex != null) {
+			this.sortedIndex.deIndexLong(l, fieldAddress, value);
+		}
 	}
 
 	/**
@@ -642,6 +676,9 @@ public abstract class XValueIndexer {
 
 		final String key = getIntegerIndexString(integer);
 		this.index.index(key, fieldAddress, value);
+		if (this.sortedIndex != null) {
+			this.sortedIndex.indexLong(integer, fieldAddress, value);
+		}
 	}
 
 	/**
@@ -669,6 +706,9 @@ public abstract class XValueIndexer {
 
 		final String key = getIntegerIndexString(integer);
 		this.index.deIndex(key, fieldAddress, value);
+		if (this.sortedIndex != null) {
+			this.sortedIndex.deIndexLong(integer, fieldAddress, value);
+		}
 	}
 
 	/**
@@ -812,6 +852,9 @@ public abstract class XValueIndexer {
 
 		final String key = getDoubleIndexString(d);
 		this.index.index(key, fieldAddress, value);
+		if (this.sortedIndex != null) {
+			this.sortedIndex.indexDouble(d, fieldAddress, value);
+		}
 	}
 
 	/**
@@ -839,6 +882,9 @@ public abstract class XValueIndexer {
 
 		final String key = getDoubleIndexString(d);
 		this.index.deIndex(key, fieldAddress, value);
+		if (this.sortedIndex != null) {
+			this.sortedIndex.deIndexDouble(d, fieldAddress, value);
+		}
 	}
 
 	/**
@@ -1088,6 +1134,9 @@ public abstract class XValueIndexer {
 
 		for (final String key : getStringIndexStrings(string)) {
 			this.index.index(key, fieldAddress, value);
+			if (this.sortedIndex != null) {
+				this.sortedIndex.indexString(key, fieldAddress, value);
+			}
 		}
 	}
 
@@ -1116,6 +1165,9 @@ public abstract class XValueIndexer {
 
 		for (final String key : getStringIndexStrings(string)) {
 			this.index.deIndex(key, fieldAddress, value);
+			if (this.sortedIndex != null) {
+				this.sortedIndex.deIndexString(key, fieldAddress, value);
+			}
 		}
 	}
 
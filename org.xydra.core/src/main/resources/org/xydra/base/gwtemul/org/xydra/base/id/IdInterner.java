@@ -0,0 +1,192 @@
+package org.xydra.base.id;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.xydra.annotations.RequiresAppEngine;
+import org.xydra.annotations.RunsInGWT;
+import org.xydra.base.XAddress;
+import org.xydra.base.XId;
+import org.xydra.index.XI;
+
+
+/**
+ * A concurrent intern table for {@link XId XIds} and {@link XAddress
+ * XAddresses}. Entries are only weakly referenced, i.e. an id or address that
+ * is no longer used anywhere else is removed by the garbage collector.
+ *
+ * As long as all ids and addresses are created via the same
+ * {@link BaseStringIDProvider}, equal ids and addresses are the same instance
+ * and equality checks succeed on the first reference comparison.
+ *
+ * GWT version: JavaScript has no weak references and is single-threaded, so
+ * entries are held in plain maps.
+ *
+ * @author xamde
+ */
+@RunsInGWT(true)
+@RequiresAppEngine(false)
+public class IdInterner {
+
+	/**
+	 * Lookup key for the four components of an address
+	 */
+	private static class AddressKey {
+
+		private final XId repository, model, object, field;
+
+		private final int hash;
+
+		AddressKey(final XId repository, final XId model, final XId object, final XId field) {
+			this.repository = repository;
+			this.model = model;
+			this.object = object;
+			this.field = field;
+			this.hash = (repository == null ? 0 : repository.hashCode())
+					+ 31
+					* ((model == null ? 0 : model.hashCode()) + 31 * ((object == null ? 0 : object
+							.hashCode()) + 31 * (field == null ? 0 : field.hashCode())));
+		}
+
+		@Override
+		public boolean equals(final Object other) {
+			if (!(other instanceof AddressKey)) {
+				return false;
+			}
+			final AddressKey o = (AddressKey) other;
+			return this.hash == o.hash && XI.equals(this.repository, o.repository)
+					&& XI.equals(this.model, o.model) && XI.equals(this.object, o.object)
+					&& XI.equals(this.field, o.field);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+	}
+
+	private final Map<String, XId> ids = new HashMap<String, XId>();
+
+	private final Map<AddressKey, XAddress> addresses = new HashMap<AddressKey, XAddress>();
+
+	private long idHits;
+
+	private long idMisses;
+
+	private long addressHits;
+
+	private long addressMisses;
+
+	/**
+	 * @param s @NeverNull
+	 * @return the interned id for s or null if there is none
+	 */
+	public XId getId(final String s) {
+		final XId id = this.ids.get(s);
+		if (id == null) {
+			this.idMisses++;
+		} else {
+			this.idHits++;
+		}
+		return id;
+	}
+
+	/**
+	 * @param id a newly created id
+	 * @return the id that is interned for the string of id, which is id itself
+	 *         unless another thread was faster
+	 */
+	public XId internId(final XId id) {
+		final XId existing = this.ids.get(id.toString());
+		if (existing != null) {
+			return existing;
+		}
+		this.ids.put(id.toString(), id);
+		return id;
+	}
+
+	/**
+	 * @param repository may be null
+	 * @param model may be null
+	 * @param object may be null
+	 * @param field may be null
+	 * @return the interned address with the given components or null if there
+	 *         is none
+	 */
+	public XAddress getAddress(final XId repository, final XId model, final XId object,
+			final XId field) {
+		final XAddress address = this.addresses
+				.get(new AddressKey(repository, model, object, field));
+		if (address == null) {
+			this.addressMisses++;
+		} else {
+			this.addressHits++;
+		}
+		return address;
+	}
+
+	/**
+	 * @param address a newly created address
+	 * @return the address that is interned for the components of address,
+	 *         which is address itself unless another thread was faster
+	 */
+	public XAddress internAddress(final XAddress address) {
+		final AddressKey key = new AddressKey(address.getRepository(), address.getModel(),
+				address.getObject(), address.getField());
+		final XAddress existing = this.addresses.get(key);
+		if (existing != null) {
+			return existing;
+		}
+		this.addresses.put(key, address);
+		return address;
+	}
+
+	public long getIdHits() {
+		return this.idHits;
+	}
+
+	public long getIdMisses() {
+		return this.idMisses;
+	}
+
+	public long getAddressHits() {
+		return this.addressHits;
+	}
+
+	public long getAddressMisses() {
+		return this.addressMisses;
+	}
+
+	/**
+	 * @return number of interned ids
+	 */
+	public int getIdCount() {
+		return this.ids.size();
+	}
+
+	/**
+	 * @return number of interned addresses
+	 */
+	public int getAddressCount() {
+		return this.addresses.size();
+	}
+
+	/**
+	 * @return fraction of id and address lookups that found an interned
+	 *         instance, 0 if there were no lookups yet
+	 */
+	public double getHitRate() {
+		final long hits = getIdHits() + getAddressHits();
+		final long total = hits + getIdMisses() + getAddressMisses();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	@Override
+	public String toString() {
+		return "ids=" + getIdCount() + " (hits=" + getIdHits() + " misses=" + getIdMisses()
+				+ ") addresses=" + getAddressCount() + " (hits=" + getAddressHits() + " misses="
+				+ getAddressMisses() + ")";
+	}
+
+}
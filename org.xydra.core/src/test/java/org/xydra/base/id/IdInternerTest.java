@@ -0,0 +1,136 @@
+package org.xydra.base.id;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.junit.Test;
+import org.xydra.base.Base;
+import org.xydra.base.XAddress;
+import org.xydra.base.XId;
+
+
+public class IdInternerTest {
+
+	private final MemoryStringIDProvider provider = new MemoryStringIDProvider();
+
+	@Test
+	public void testEqualIdsAreSame() {
+		final XId a = this.provider.fromString("hello");
+		final XId b = this.provider.fromString(new String("hello"));
+		assertSame(a, b);
+		assertSame(a, this.provider.fromString("hello"));
+		assertNotSame(a, this.provider.fromString("world"));
+
+		final XId unique = this.provider.createUniqueId();
+		assertSame(unique, this.provider.fromString(unique.toString()));
+	}
+
+	@Test
+	public void testEqualAddressesAreSame() {
+		final XAddress a = this.provider.fromAddress("/repo/model/object/field");
+		final XAddress b = this.provider.fromComponents(this.provider.fromString("repo"),
+				this.provider.fromString("model"), this.provider.fromString("object"),
+				this.provider.fromString("field"));
+		assertSame(a, b);
+		assertSame(a.getModel(), b.getModel());
+		assertNotSame(a, this.provider.fromAddress("/repo/model/object/-"));
+		assertSame(this.provider.fromAddress("/-/model/-/-"),
+				this.provider.fromComponents(null, this.provider.fromString("model"), null, null));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T serializeAndDeserialize(final T t) throws IOException,
+			ClassNotFoundException {
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		final ObjectOutputStream oos = new ObjectOutputStream(bos);
+		oos.writeObject(t);
+		oos.close();
+		final ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(
+				bos.toByteArray()));
+		return (T) ois.readObject();
+	}
+
+	@Test
+	public void testDeserializedIdsAreSame() throws IOException, ClassNotFoundException {
+		// deserialization uses the runtime provider
+		final XId id = Base.toId("hello");
+		assertSame(id, serializeAndDeserialize(id));
+		final XAddress addr = Base.toAddress("/repo/model/object/field");
+		final XAddress addrCopy = serializeAndDeserialize(addr);
+		assertSame(addr, addrCopy);
+		assertSame(addr.getObject(), addrCopy.getObject());
+	}
+
+	@Test
+	public void testInvalidIdsAreNotInterned() {
+		try {
+			this.provider.fromString("not valid");
+		} catch (final IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			this.provider.fromString("not valid");
+		} catch (final IllegalArgumentException e) {
+			// expected, the first failure must not have been cached
+			return;
+		}
+		throw new AssertionError("invalid id accepted");
+	}
+
+	@Test
+	public void testCounters() {
+		final IdInterner interner = this.provider.getInterner();
+		this.provider.fromString("x");
+		this.provider.fromString("x");
+		this.provider.fromString("x");
+		this.provider.fromString("y");
+		assertEquals(2, interner.getIdMisses());
+		assertEquals(2, interner.getIdHits());
+		assertEquals(2, interner.getIdCount());
+		assertEquals(0.5, interner.getHitRate(), 0.0001);
+
+		this.provider.fromAddress("/x/y/-/-");
+		this.provider.fromAddress("/x/y/-/-");
+		assertEquals(1, interner.getAddressMisses());
+		assertEquals(1, interner.getAddressHits());
+		assertEquals(1, interner.getAddressCount());
+	}
+
+	@Test
+	public void testConcurrentInterning() throws InterruptedException {
+		final ConcurrentMap<String, XId> seen = new ConcurrentHashMap<String, XId>();
+		final boolean[] failed = new boolean[1];
+		final Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 1000; i++) {
+						final String s = "id" + i;
+						final XId id = IdInternerTest.this.provider.fromString(s);
+						final XId other = seen.putIfAbsent(s, id);
+						if (other != null && other != id) {
+							failed[0] = true;
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (final Thread thread : threads) {
+			thread.join();
+		}
+		assertTrue(!failed[0]);
+	}
+
+}
@@ -0,0 +1,134 @@
+package org.xydra.base.rmof.impl.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.xydra.base.Base;
+import org.xydra.base.XAddress;
+import org.xydra.base.XCompareUtils;
+import org.xydra.base.XId;
+import org.xydra.base.rmof.XRevWritableField;
+import org.xydra.base.rmof.XRevWritableObject;
+import org.xydra.base.value.XV;
+import org.xydra.core.XCopyUtils;
+
+
+public class CopyOnWriteModelTest {
+
+	private static final XAddress MODEL = Base.toAddress("/repo/model/-/-");
+
+	private static final XId o1 = Base.toId("o1");
+
+	private static final XId o2 = Base.toId("o2");
+
+	private static final XId f1 = Base.toId("f1");
+
+	private static final XId f2 = Base.toId("f2");
+
+	private static CopyOnWriteModel createModel() {
+		final CopyOnWriteModel model = new CopyOnWriteModel(MODEL, 3);
+		model.createObject(o1).createField(f1).setValue(XV.toValue("a"));
+		model.createObject(o2);
+		return model;
+	}
+
+	@Test
+	public void testSnapshotIsIndependent() {
+		final CopyOnWriteModel model = createModel();
+		final CopyOnWriteModel snapshot = model.snapshot();
+		final SimpleModel copy = (SimpleModel) XCopyUtils.createSnapshot(model);
+
+		model.getObject(o1).getField(f1).setValue(XV.toValue("b"));
+		model.removeObject(o2);
+		model.createObject(Base.toId("o3"));
+		model.setRevisionNumber(4);
+
+		assertEquals(copy, snapshot);
+		assertEquals(XV.toValue("a"), snapshot.getObject(o1).getField(f1).getValue());
+		assertTrue(snapshot.hasObject(o2));
+		assertEquals(3, snapshot.getRevisionNumber());
+
+		snapshot.getObject(o1).removeField(f1);
+		assertEquals(XV.toValue("b"), model.getObject(o1).getField(f1).getValue());
+	}
+
+	@Test
+	public void testObjectSnapshot() {
+		final CopyOnWriteModel model = createModel();
+		final XRevWritableObject snapshot = model.getObjectSnapshot(o1);
+		model.getObject(o1).getField(f1).setValue(XV.toValue("b"));
+		assertEquals(XV.toValue("a"), snapshot.getField(f1).getValue());
+		assertNull(model.getObjectSnapshot(Base.toId("unknown")));
+	}
+
+	@Test
+	public void testStaleEntitiesCannotBeChanged() {
+		final CopyOnWriteModel model = createModel();
+		final XRevWritableField field = model.getObject(o1).getField(f1);
+		model.snapshot();
+		try {
+			field.setValue(XV.toValue("b"));
+			fail("field is shared with the snapshot");
+		} catch(final IllegalStateException e) {
+			// expected
+		}
+		assertTrue(model.getObject(o1).getField(f1).setValue(XV.toValue("b")));
+	}
+
+	@Test
+	public void testReadingDoesNotChangeSnapshot() {
+		final CopyOnWriteModel model = createModel();
+		final CopyOnWriteModel snapshot = model.snapshot();
+		final CopyOnWriteObject object = snapshot.getObjectState(o1);
+		final CopyOnWriteField field = object.getFieldState(f1);
+
+		assertEquals(XV.toValue("a"), snapshot.getObject(o1).getField(f1).getValue());
+		assertTrue(XCompareUtils.equalState(model, snapshot));
+		assertSame(object, snapshot.getObjectState(o1));
+		assertSame(field, object.getFieldState(f1));
+		assertSame(object, model.getObjectState(o1));
+	}
+
+	@Test
+	public void testPendingCopiesOfTheSameEntityAgree() {
+		final CopyOnWriteModel model = createModel();
+		model.snapshot();
+		final XRevWritableObject a = model.getObject(o1);
+		final XRevWritableObject b = model.getObject(o1);
+		final XRevWritableField fa = a.getField(f1);
+		final XRevWritableField fb = b.getField(f1);
+
+		assertTrue(fa.setValue(XV.toValue("b")));
+		assertEquals(XV.toValue("b"), fb.getValue());
+		assertTrue(fb.setValue(XV.toValue("c")));
+		b.createField(f2);
+		assertEquals(XV.toValue("c"), fa.getValue());
+		assertTrue(a.hasField(f2));
+		assertEquals(XV.toValue("c"), model.getObject(o1).getField(f1).getValue());
+
+		// a pending copy of a removed object is not added again
+		final XRevWritableObject d = model.getObject(o2);
+		model.removeObject(o2);
+		d.createField(f1);
+		assertFalse(model.hasObject(o2));
+		assertTrue(d.hasField(f1));
+	}
+
+	@Test
+	public void testAddForeignObject() {
+		final CopyOnWriteModel model = createModel();
+		final SimpleObject foreign = new SimpleObject(Base.resolveObject(MODEL,
+				Base.toId("foreign")));
+		foreign.createField(f1).setValue(XV.toValue("x"));
+		model.addObject(foreign);
+		foreign.removeField(f1);
+		assertTrue(model.getObject(foreign.getId()).hasField(f1));
+		assertFalse(model.isEmpty());
+	}
+
+}
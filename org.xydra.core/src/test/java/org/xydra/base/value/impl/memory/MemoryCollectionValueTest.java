@@ -0,0 +1,236 @@
+package org.xydra.base.value.impl.memory;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Test;
+import org.xydra.base.Base;
+import org.xydra.base.XId;
+import org.xydra.base.value.XIdSortedSetValue;
+import org.xydra.base.value.XLongListValue;
+import org.xydra.base.value.XSetDiffable.XSetDiff;
+import org.xydra.base.value.XStringListValue;
+import org.xydra.base.value.XStringSetValue;
+
+import com.google.gwt.user.client.rpc.SerializationException;
+import com.google.gwt.user.client.rpc.SerializationStreamReader;
+import com.google.gwt.user.client.rpc.SerializationStreamWriter;
+
+public class MemoryCollectionValueTest {
+
+	@Test
+	public void testListValueKeepsArraySemantics() {
+		final long[] values = new long[100];
+		for(int i = 0; i < values.length; i++) {
+			values[i] = i * 1000000007L;
+		}
+		XLongListValue list = new MemoryLongListValue(values);
+		final List<Long> expected = new ArrayList<Long>();
+		for(final long l : values) {
+			expected.add(l);
+		}
+		assertEquals(Arrays.hashCode(values), list.hashCode());
+		assertEquals(Arrays.toString(values), list.toString());
+		final XLongListValue old = list;
+		for(int i = 0; i < 100; i++) {
+			list = list.add(50, (long)i).remove(0);
+			expected.add(50, (long)i);
+			expected.remove(0);
+		}
+		assertArrayEquals(values, old.contents());
+		assertEquals(new MemoryLongListValue(expected), list);
+		assertEquals(list, new MemoryLongListValue(list.contents()));
+		assertEquals(list.hashCode(), Arrays.hashCode(list.contents()));
+
+		final XStringListValue strings = new MemoryStringListValue(new String[] { "a", "b", "a" });
+		assertEquals(2, strings.lastIndexOf("a"));
+		assertEquals(-1, strings.lastIndexOf("c"));
+		assertEquals(Arrays.hashCode(new String[] { "a", "b", "a" }), strings.hashCode());
+	}
+
+	@Test
+	public void testSetValueKeepsSetSemantics() {
+		final MemoryStringSetValue set = new MemoryStringSetValue(new String[] { "a", "b", "b" });
+		assertEquals(2, set.size());
+		assertEquals(new HashSet<String>(Arrays.asList("a", "b")).hashCode(), set.hashCode());
+		assertSame(set, set.add("a"));
+		assertSame(set, set.remove("c"));
+		final XStringSetValue changed = set.add("c").remove("a");
+		assertEquals(new MemoryStringSetValue(new String[] { "b", "c" }), changed);
+		assertEquals(new HashSet<String>(Arrays.asList("b", "c")).hashCode(), changed.hashCode());
+		assertTrue(set.contains("a"));
+		assertTrue(set.add(null).contains(null));
+		assertEquals(set, set.add(null).remove(null));
+		assertFalse(changed.contains("a"));
+
+		final XSetDiff<String> diff = set.computeDiff(changed);
+		assertEquals(new HashSet<String>(Arrays.asList("c")), diff.getAdded());
+		assertEquals(new HashSet<String>(Arrays.asList("a")), diff.getRemoved());
+	}
+
+	@Test
+	public void testSortedSetKeepsOrder() {
+		final XId a = Base.toId("a");
+		final XId b = Base.toId("b");
+		final XId c = Base.toId("c");
+		XIdSortedSetValue set = new MemoryIdSortedSetValue(new XId[] { c, a });
+		set = set.add(b).add(a).remove(c);
+		assertArrayEquals(new XId[] { a, b }, set.contents());
+	}
+
+	@Test
+	public void testSortedSetWithDuplicates() {
+		final XId a = Base.toId("a");
+		final XId b = Base.toId("b");
+		XIdSortedSetValue set = new MemoryIdSortedSetValue(new XId[] { a, b, a });
+		assertSame(set, set.add(a));
+		set = set.remove(a);
+		assertTrue(set.contains(a));
+		assertArrayEquals(new XId[] { b, a }, set.contents());
+		set = set.remove(a);
+		assertFalse(set.contains(a));
+		assertSame(set, set.remove(a));
+		assertTrue(set.add(null).contains(null));
+		assertArrayEquals(new XId[] { b }, set.add(null).remove(null).contents());
+	}
+
+	/** Keeps everything written in order, for reading it back */
+	private static class FakeStream implements SerializationStreamWriter,
+	        SerializationStreamReader {
+
+		private final LinkedList<Object> data = new LinkedList<Object>();
+
+		@Override
+		public void writeBoolean(final boolean v) {
+			this.data.add(v);
+		}
+
+		@Override
+		public void writeByte(final byte v) {
+			this.data.add(v);
+		}
+
+		@Override
+		public void writeChar(final char v) {
+			this.data.add(v);
+		}
+
+		@Override
+		public void writeDouble(final double v) {
+			this.data.add(v);
+		}
+
+		@Override
+		public void writeFloat(final float v) {
+			this.data.add(v);
+		}
+
+		@Override
+		public void writeInt(final int v) {
+			this.data.add(v);
+		}
+
+		@Override
+		public void writeLong(final long v) {
+			this.data.add(v);
+		}
+
+		@Override
+		public void writeObject(final Object o) {
+			this.data.add(o);
+		}
+
+		@Override
+		public void writeShort(final short v) {
+			this.data.add(v);
+		}
+
+		@Override
+		public void writeString(final String v) {
+			this.data.add(v);
+		}
+
+		@Override
+		public boolean readBoolean() {
+			return (Boolean)this.data.removeFirst();
+		}
+
+		@Override
+		public byte readByte() {
+			return (Byte)this.data.removeFirst();
+		}
+
+		@Override
+		public char readChar() {
+			return (Character)this.data.removeFirst();
+		}
+
+		@Override
+		public double readDouble() {
+			return (Double)this.data.removeFirst();
+		}
+
+		@Override
+		public float readFloat() {
+			return (Float)this.data.removeFirst();
+		}
+
+		@Override
+		public int readInt() {
+			return (Integer)this.data.removeFirst();
+		}
+
+		@Override
+		public long readLong() {
+			return (Long)this.data.removeFirst();
+		}
+
+		@Override
+		public Object readObject() {
+			return this.data.removeFirst();
+		}
+
+		@Override
+		public short readShort() {
+			return (Short)this.data.removeFirst();
+		}
+
+		@Override
+		public String readString() {
+			return (String)this.data.removeFirst();
+		}
+
+	}
+
+	@Test
+	public void testGwtCustomFieldSerializers() throws SerializationException {
+		final FakeStream stream = new FakeStream();
+		final MemoryStringSetValue set = new MemoryStringSetValue(new String[] { "a", "b" });
+		MemorySetValue_CustomFieldSerializer.serialize(stream, set);
+		final MemoryStringSetValue setCopy = new MemoryStringSetValue();
+		MemorySetValue_CustomFieldSerializer.deserialize(stream, setCopy);
+		assertEquals(set, setCopy);
+		assertEquals(set.hashCode(), setCopy.hashCode());
+
+		final XId a = Base.toId("a");
+		final XId b = Base.toId("b");
+		final MemoryIdSortedSetValue sorted = new MemoryIdSortedSetValue(new XId[] { b, a });
+		MemoryListValue_CustomFieldSerializer.serialize(stream, sorted);
+		final MemoryIdSortedSetValue sortedCopy = new MemoryIdSortedSetValue();
+		MemoryListValue_CustomFieldSerializer.deserialize(stream, sortedCopy);
+		assertArrayEquals(new XId[] { b, a }, sortedCopy.contents());
+		assertTrue(sortedCopy.contains(a));
+		assertSame(sortedCopy, sortedCopy.add(b));
+		assertTrue(stream.data.isEmpty());
+	}
+
+}
@@ -0,0 +1,182 @@
+package org.xydra.core.ext.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xydra.base.Base;
+import org.xydra.base.BaseRuntime;
+import org.xydra.base.XAddress;
+import org.xydra.base.XId;
+import org.xydra.base.change.XCommand;
+import org.xydra.base.value.XValue;
+import org.xydra.core.LoggerTestHelper;
+import org.xydra.core.X;
+import org.xydra.core.change.XTransactionBuilder;
+import org.xydra.core.index.IIncrementalIndex;
+import org.xydra.core.index.impl.memory.IndexManager;
+import org.xydra.core.index.impl.memory.ObjectIndex;
+import org.xydra.core.model.XModel;
+import org.xydra.core.model.XObject;
+import org.xydra.core.model.XRepository;
+import org.xydra.valueindex.MemoryMapSetIndex;
+import org.xydra.valueindex.SimpleValueIndexer;
+import org.xydra.valueindex.XFieldLevelIndex;
+
+
+public class IndexManagerTest {
+
+	/** counts the calls, to check that transactions are batched */
+	private static class CountingIndex implements IIncrementalIndex {
+
+		int indexed;
+
+		int deIndexed;
+
+		@Override
+		public void indexValue(final XAddress fieldAddress, final XValue value) {
+			this.indexed++;
+		}
+
+		@Override
+		public void deIndexValue(final XAddress fieldAddress, final XValue value) {
+			this.deIndexed++;
+		}
+
+	}
+
+	@BeforeClass
+	public static void init() {
+		LoggerTestHelper.init();
+	}
+
+	private XId emailFieldId;
+
+	private XModel model;
+
+	private ObjectIndex objectIndex;
+
+	private XFieldLevelIndex fieldLevelIndex;
+
+	private CountingIndex counter;
+
+	@Before
+	public void setUp() {
+		final XId actor = Base.toId("testIndexManager");
+		final XRepository repo = X.createMemoryRepository(actor);
+		this.model = repo.createModel(Base.toId("phonebook"));
+		final XObject indexObject = repo.createModel(Base.toId("index")).createObject(
+		        Base.toId("index-email"));
+
+		this.emailFieldId = Base.toId("email");
+		for(int i = 0; i < 10; i++) {
+			final XObject user = this.model.createObject(Base.toId("user" + i));
+			user.createField(this.emailFieldId).setValue(
+			        BaseRuntime.getValueFactory().createStringValue("user" + i + "@doe.com"));
+			user.createField(Base.toId("phone"));
+		}
+
+		this.objectIndex = new ObjectIndex(this.emailFieldId, indexObject);
+		this.fieldLevelIndex = new XFieldLevelIndex(this.model.getAddress(), new SimpleValueIndexer(
+		        new MemoryMapSetIndex()), true, Collections.<XId> emptySet(),
+		        Collections.<XId> emptySet());
+		this.counter = new CountingIndex();
+	}
+
+	private Set<XId> lookup(final String email) {
+		return this.objectIndex.lookupIDs(BaseRuntime.getValueFactory().createStringValue(email));
+	}
+
+	@Test
+	public void testStartupIndexing() {
+		final IndexManager manager = new IndexManager(this.model, this.objectIndex,
+		        this.fieldLevelIndex, this.counter);
+		assertEquals(20, manager.size());
+		assertEquals(20, this.counter.indexed);
+		assertEquals(0, manager.getLag());
+		assertEquals(Collections.singleton(Base.toId("user3")), lookup("user3@doe.com"));
+		assertEquals(10, this.fieldLevelIndex.search("doe").size());
+	}
+
+	@Test
+	public void testParallelStartupIndexing() {
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			final IndexManager manager = new IndexManager(this.model, executor, this.objectIndex,
+			        this.fieldLevelIndex, this.counter);
+			assertEquals(20, manager.size());
+			assertEquals(20, this.counter.indexed);
+			assertEquals(this.model.getRevisionNumber(), manager.getIndexedRevision());
+			for(int i = 0; i < 10; i++) {
+				assertEquals(Collections.singleton(Base.toId("user" + i)), lookup("user" + i
+				        + "@doe.com"));
+			}
+			assertEquals(10, this.fieldLevelIndex.search("doe").size());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testIncrementalUpdates() {
+		final IndexManager manager = new IndexManager(this.model, this.objectIndex,
+		        this.fieldLevelIndex);
+
+		this.model.getObject(Base.toId("user1")).getField(this.emailFieldId)
+		        .setValue(BaseRuntime.getValueFactory().createStringValue("john@smith.com"));
+		assertTrue(lookup("user1@doe.com").isEmpty());
+		assertEquals(Collections.singleton(Base.toId("user1")), lookup("john@smith.com"));
+		assertEquals(1, this.fieldLevelIndex.search("smith").size());
+		assertEquals(9, this.fieldLevelIndex.search("doe").size());
+
+		this.model.removeObject(Base.toId("user2"));
+		assertTrue(lookup("user2@doe.com").isEmpty());
+		assertEquals(8, this.fieldLevelIndex.search("doe").size());
+		assertEquals(18, manager.size());
+
+		this.model.createObject(Base.toId("user2")).createField(this.emailFieldId)
+		        .setValue(BaseRuntime.getValueFactory().createStringValue("mary@jane.com"));
+		assertEquals(Collections.singleton(Base.toId("user2")), lookup("mary@jane.com"));
+		assertEquals(19, manager.size());
+		assertEquals(0, manager.getLag());
+
+		manager.close();
+		this.model.removeObject(Base.toId("user2"));
+		assertEquals(Collections.singleton(Base.toId("user2")), lookup("mary@jane.com"));
+	}
+
+	@Test
+	public void testTransactionIsBatched() {
+		final IndexManager manager = new IndexManager(this.model, this.objectIndex,
+		        this.fieldLevelIndex);
+		manager.addIndex(this.counter);
+		assertEquals(20, this.counter.indexed);
+
+		final XAddress email1 = Base.resolveField(this.model.getAddress(), Base.toId("user1"),
+		        this.emailFieldId);
+		final XTransactionBuilder tb = new XTransactionBuilder(this.model.getAddress());
+		tb.setValue(email1, BaseRuntime.getValueFactory().createStringValue("first@smith.com"));
+		tb.setValue(email1, BaseRuntime.getValueFactory().createStringValue("second@smith.com"));
+		tb.removeObject(this.model.getAddress(), XCommand.FORCED, Base.toId("user2"));
+		this.model.executeCommand(tb.build());
+
+		// one change of user1, two removed fields of user2
+		assertEquals(21, this.counter.indexed);
+		assertEquals(3, this.counter.deIndexed);
+		assertEquals(0, manager.getPendingChanges());
+		assertEquals(18, manager.size());
+		assertEquals(Collections.singleton(Base.toId("user1")), lookup("second@smith.com"));
+		assertTrue(lookup("first@smith.com").isEmpty());
+		assertTrue(lookup("user2@doe.com").isEmpty());
+		assertEquals(1, this.fieldLevelIndex.search("second").size());
+		assertEquals(0, this.fieldLevelIndex.search("first").size());
+	}
+
+}
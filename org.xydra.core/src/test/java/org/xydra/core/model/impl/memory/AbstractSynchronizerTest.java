@@ -503,6 +503,98 @@ abstract public class AbstractSynchronizerTest {
         checkEvents(this.localModel);
     }
 
+    @Test
+    public void testCompactedCatchUp() {
+        final XModel modelCopy = XCopyUtils.copyModel(this.actorId, this.passwordHash, this.localModel);
+        final List<XEvent> events = ChangeRecorder.record(this.localModel);
+
+        // make many remote changes, most of which are overwritten again
+        final XAddress modelAddr = this.localModel.getAddress();
+        final XAddress phoneAddr = Base.resolveField(modelAddr, DemoModelUtil.JOHN_ID,
+                DemoModelUtil.PHONE_ID);
+        for(int i = 0; i < 10; i++) {
+            final XTransactionBuilder tb = new XTransactionBuilder(modelAddr);
+            tb.changeValue(phoneAddr, XCommand.FORCED, XV.toValue("555-" + i));
+            executeCommandOnStore(tb.buildCommand());
+        }
+        executeCommandOnStore(MemoryModelCommand.createAddCommand(modelAddr, false, BOB));
+        executeCommandOnStore(MemoryModelCommand.createRemoveCommand(modelAddr, XCommand.FORCED,
+                BOB));
+        final XAddress janeAddr = Base.resolveObject(modelAddr, JANE);
+        final XTransactionBuilder tb = new XTransactionBuilder(modelAddr);
+        tb.addObject(modelAddr, XCommand.SAFE_STATE_BOUND, JANE);
+        tb.addField(janeAddr, XCommand.SAFE_STATE_BOUND, COOKIES);
+        tb.addValue(Base.resolveField(janeAddr, COOKIES), XCommand.SAFE_STATE_BOUND, COOKIES_GONE);
+        executeCommandOnStore(tb.buildCommand());
+        final XReadableModel remoteSnapshotModel = loadModelSnapshot(DemoModelUtil.PHONEBOOK_ID);
+        assertEquals(59, remoteSnapshotModel.getRevisionNumber());
+
+        this.sharedSyncer.setCompactedCatchUp(true);
+        synchronize(this.sharedSyncer);
+
+        assertEquals(59, this.localModel.getRevisionNumber());
+        assertEquals(59, this.localModel.getSynchronizedRevision());
+        assertFalse(this.localModel.hasObject(BOB));
+        assertEquals(XV.toValue("555-9"),
+                this.localModel.getObject(DemoModelUtil.JOHN_ID).getFieldValue(DemoModelUtil.PHONE_ID));
+        assertTrue(XCompareUtils.equalState(remoteSnapshotModel, this.localModel));
+
+        // listeners got the net changes
+        SynchronizeTest.replaySyncEvents(modelCopy, events);
+        assertTrue(XCompareUtils.equalTree(modelCopy, this.localModel));
+
+        // local changes made after catching up are synchronized as usual
+        this.localModel.getObject(JANE).getField(COOKIES).setValue(COOKIES_YUMMY);
+        synchronize(this.sharedSyncer);
+        assertEquals(60, this.localModel.getSynchronizedRevision());
+        assertTrue(XCompareUtils.equalState(loadModelSnapshot(DemoModelUtil.PHONEBOOK_ID),
+                this.localModel));
+    }
+
+    @Test
+    public void testSnapshotCatchUp() {
+        final XModel modelCopy = XCopyUtils.copyModel(this.actorId, this.passwordHash, this.localModel);
+        final List<XEvent> events = ChangeRecorder.record(this.localModel);
+
+        final XAddress modelAddr = this.localModel.getAddress();
+        final XAddress phoneAddr = Base.resolveField(modelAddr, DemoModelUtil.JOHN_ID,
+                DemoModelUtil.PHONE_ID);
+        for(int i = 0; i < 10; i++) {
+            final XTransactionBuilder tb = new XTransactionBuilder(modelAddr);
+            tb.changeValue(phoneAddr, XCommand.FORCED, XV.toValue("555-" + i));
+            executeCommandOnStore(tb.buildCommand());
+        }
+        final XAddress janeAddr = Base.resolveObject(modelAddr, JANE);
+        final XTransactionBuilder tb = new XTransactionBuilder(modelAddr);
+        tb.addObject(modelAddr, XCommand.SAFE_STATE_BOUND, JANE);
+        tb.addField(janeAddr, XCommand.SAFE_STATE_BOUND, COOKIES);
+        tb.addValue(Base.resolveField(janeAddr, COOKIES), XCommand.SAFE_STATE_BOUND, COOKIES_GONE);
+        executeCommandOnStore(tb.buildCommand());
+        final XReadableModel remoteSnapshotModel = loadModelSnapshot(DemoModelUtil.PHONEBOOK_ID);
+
+        this.sharedSyncer.setCompactedCatchUp(true);
+        this.sharedSyncer.setSnapshotCatchUpThreshold(5);
+        synchronize(this.sharedSyncer);
+
+        final long remoteRev = remoteSnapshotModel.getRevisionNumber();
+        assertEquals(remoteRev, this.localModel.getRevisionNumber());
+        assertEquals(remoteRev, this.localModel.getSynchronizedRevision());
+        assertEquals(XV.toValue("555-9"),
+                this.localModel.getObject(DemoModelUtil.JOHN_ID).getFieldValue(DemoModelUtil.PHONE_ID));
+        assertTrue(XCompareUtils.equalState(remoteSnapshotModel, this.localModel));
+
+        // listeners got the difference to the snapshot
+        SynchronizeTest.replaySyncEvents(modelCopy, events);
+        assertTrue(XCompareUtils.equalTree(modelCopy, this.localModel));
+
+        // local changes made after catching up are synchronized as usual
+        this.localModel.getObject(JANE).getField(COOKIES).setValue(COOKIES_YUMMY);
+        synchronize(this.sharedSyncer);
+        assertEquals(remoteRev + 1, this.localModel.getSynchronizedRevision());
+        assertTrue(XCompareUtils.equalState(loadModelSnapshot(DemoModelUtil.PHONEBOOK_ID),
+                this.localModel));
+    }
+
     @Test
     public void testLoadRemoteChangesRemovedCreatedModel() {
 
@@ -0,0 +1,198 @@
+package org.xydra.core.model.impl.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.xydra.base.Base;
+import org.xydra.base.XAddress;
+import org.xydra.base.change.ChangeType;
+import org.xydra.base.change.XModelEvent;
+import org.xydra.base.change.impl.memory.MemoryModelEvent;
+import org.xydra.core.change.XModelEventListener;
+import org.xydra.core.model.impl.memory.MemoryEventBus.EventType;
+
+
+public class MemoryEventBusTest {
+
+	private static final XAddress MODEL = Base.toAddress("/repo/model/-/-");
+
+	private static final XAddress OTHER = Base.toAddress("/repo/other/-/-");
+
+	private static class Recorder implements XModelEventListener {
+
+		final List<XModelEvent> events = Collections.synchronizedList(new ArrayList<XModelEvent>());
+
+		@Override
+		public void onChangeEvent(final XModelEvent event) {
+			this.events.add(event);
+		}
+
+	}
+
+	private static XModelEvent event(final long rev) {
+		return MemoryModelEvent.createAddEvent(Base.toId("actor"), MODEL, Base.toId("o" + rev),
+				rev, false);
+	}
+
+	@Test
+	public void testAddRemove() {
+		final MemoryEventBus bus = new MemoryEventBus();
+		final Recorder a = new Recorder();
+		final Recorder b = new Recorder();
+		assertTrue(bus.addListener(EventType.ModelChange, MODEL, a));
+		assertFalse(bus.addListener(EventType.ModelChange, MODEL, a));
+		assertTrue(bus.addListener(EventType.ModelChange, OTHER, b));
+
+		bus.fireEvent(EventType.ModelChange, MODEL, event(1));
+		bus.fireEvent(EventType.ObjectChange, MODEL, event(2));
+		assertEquals(1, a.events.size());
+		assertEquals(0, b.events.size());
+
+		// no source reaches all listeners of the type
+		bus.fireEvent(EventType.ModelChange, null, event(3));
+		assertEquals(2, a.events.size());
+		assertEquals(1, b.events.size());
+
+		assertTrue(bus.removeListener(EventType.ModelChange, MODEL, a));
+		assertFalse(bus.removeListener(EventType.ModelChange, MODEL, a));
+		bus.fireEvent(EventType.ModelChange, MODEL, event(4));
+		assertEquals(2, a.events.size());
+	}
+
+	@Test
+	public void testChangesDuringDispatch() {
+		final MemoryEventBus bus = new MemoryEventBus();
+		final Recorder added = new Recorder();
+		final Recorder[] removed = { new Recorder() };
+		bus.addListener(EventType.ModelChange, MODEL, new XModelEventListener() {
+
+			@Override
+			public void onChangeEvent(final XModelEvent event) {
+				bus.addListener(EventType.ModelChange, MODEL, added);
+				bus.removeListener(EventType.ModelChange, MODEL, removed[0]);
+			}
+		});
+		bus.addListener(EventType.ModelChange, MODEL, removed[0]);
+
+		// the dispatch sees the listeners registered when it started
+		bus.fireEvent(EventType.ModelChange, MODEL, event(1));
+		assertEquals(0, added.events.size());
+		assertEquals(1, removed[0].events.size());
+
+		bus.fireEvent(EventType.ModelChange, MODEL, event(2));
+		assertEquals(1, added.events.size());
+		assertEquals(1, removed[0].events.size());
+	}
+
+	@Test
+	public void testAsyncKeepsOrderPerListener() throws InterruptedException {
+		final MemoryEventBus bus = new MemoryEventBus();
+		final AsyncEventDelivery delivery = new AsyncEventDelivery(4, 2);
+		bus.setDelivery(delivery);
+		final Recorder[] recorders = new Recorder[8];
+		for (int i = 0; i < recorders.length; i++) {
+			recorders[i] = new Recorder();
+			bus.addListener(EventType.ModelChange, MODEL, recorders[i]);
+		}
+		final List<XModelEvent> sent = new ArrayList<XModelEvent>();
+		for (int rev = 0; rev < 1000; rev++) {
+			sent.add(event(rev));
+			bus.fireEvent(EventType.ModelChange, MODEL, sent.get(rev));
+		}
+		assertTrue(delivery.awaitIdle(10, TimeUnit.SECONDS));
+		delivery.shutdown();
+		for (final Recorder recorder : recorders) {
+			assertEquals(sent, recorder.events);
+		}
+	}
+
+	@Test
+	public void testAsyncDeliveryContinuesAfterError() throws InterruptedException {
+		final MemoryEventBus bus = new MemoryEventBus();
+		final AsyncEventDelivery delivery = new AsyncEventDelivery(1, 1);
+		bus.setDelivery(delivery);
+		final Recorder recorder = new Recorder() {
+
+			@Override
+			public void onChangeEvent(final XModelEvent event) {
+				super.onChangeEvent(event);
+				if (event.getOldModelRevision() == 0) {
+					throw new AssertionError("listener failed");
+				}
+			}
+
+		};
+		bus.addListener(EventType.ModelChange, MODEL, recorder);
+		final List<XModelEvent> sent = new ArrayList<XModelEvent>();
+		for (int rev = 0; rev < 3; rev++) {
+			sent.add(event(rev));
+			bus.fireEvent(EventType.ModelChange, MODEL, sent.get(rev));
+			assertTrue(delivery.awaitIdle(10, TimeUnit.SECONDS));
+		}
+		delivery.shutdown();
+		assertEquals(sent, recorder.events);
+	}
+
+	@Test
+	public void testAsyncSendersWaitForFullQueues() throws InterruptedException {
+		final MemoryEventBus bus = new MemoryEventBus();
+		final AsyncEventDelivery delivery = new AsyncEventDelivery(1, 1, 2);
+		bus.setDelivery(delivery);
+		final CountDownLatch blocked = new CountDownLatch(1);
+		final Recorder recorder = new Recorder() {
+
+			@Override
+			public void onChangeEvent(final XModelEvent event) {
+				try {
+					blocked.await();
+				} catch (final InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+				super.onChangeEvent(event);
+			}
+
+		};
+		bus.addListener(EventType.ModelChange, MODEL, recorder);
+		final List<XModelEvent> sent = new ArrayList<XModelEvent>();
+		for (int rev = 0; rev < 10; rev++) {
+			sent.add(event(rev));
+		}
+		final Thread sender = new Thread() {
+
+			@Override
+			public void run() {
+				for (final XModelEvent event : sent) {
+					bus.fireEvent(EventType.ModelChange, MODEL, event);
+				}
+			}
+
+		};
+		sender.start();
+		// one event is being delivered, two are pending
+		for (int i = 0; i < 1000 && sender.getState() != Thread.State.WAITING; i++) {
+			Thread.sleep(5);
+		}
+		assertEquals(Thread.State.WAITING, sender.getState());
+
+		blocked.countDown();
+		sender.join(10000);
+		assertTrue(delivery.awaitIdle(10, TimeUnit.SECONDS));
+		assertEquals(sent, recorder.events);
+
+		// delivered in the sending thread after shutdown
+		delivery.shutdown();
+		final XModelEvent late = event(10);
+		bus.fireEvent(EventType.ModelChange, MODEL, late);
+		assertEquals(late, recorder.events.get(10));
+		assertTrue(delivery.awaitIdle(10, TimeUnit.SECONDS));
+	}
+
+}
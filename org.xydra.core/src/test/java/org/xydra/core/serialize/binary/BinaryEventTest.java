@@ -0,0 +1,20 @@
+package org.xydra.core.serialize.binary;
+
+import org.xydra.core.serialize.AbstractSerializedEventTest;
+import org.xydra.core.serialize.XydraParser;
+import org.xydra.core.serialize.XydraSerializer;
+
+
+public class BinaryEventTest extends AbstractSerializedEventTest {
+
+	@Override
+	protected XydraParser getParser() {
+		return new BinaryParser();
+	}
+
+	@Override
+	protected XydraSerializer getSerializer() {
+		return new BinarySerializer();
+	}
+
+}
@@ -0,0 +1,179 @@
+package org.xydra.core.serialize.binary;
+
+import java.util.List;
+
+import org.xydra.base.Base;
+import org.xydra.base.BaseRuntime;
+import org.xydra.base.XAddress;
+import org.xydra.base.XId;
+import org.xydra.base.change.XCommandFactory;
+import org.xydra.base.change.XEvent;
+import org.xydra.base.rmof.XRevWritableModel;
+import org.xydra.base.value.XV;
+import org.xydra.base.value.XValue;
+import org.xydra.core.serialize.SerializedEvent;
+import org.xydra.core.serialize.SerializedModel;
+import org.xydra.core.serialize.XydraElement;
+import org.xydra.core.serialize.XydraOut;
+import org.xydra.core.serialize.XydraParser;
+import org.xydra.core.serialize.XydraSerializer;
+import org.xydra.core.serialize.json.JsonParser;
+import org.xydra.core.serialize.json.JsonSerializer;
+import org.xydra.core.serialize.xml.XmlParser;
+import org.xydra.core.serialize.xml.XmlSerializer;
+import org.xydra.persistence.GetWithAddressRequest;
+import org.xydra.store.impl.memory.MemoryPersistence;
+
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.caliper.runner.CaliperMain;
+
+
+/**
+ * Compares the binary encoding with JSON and XML for model snapshots and event
+ * batches. The encoded size of each document is printed once per experiment.
+ *
+ * @author xamde
+ */
+public class SerializationFormatBenchmark {
+
+	public enum Format {
+		binary(new BinarySerializer(), new BinaryParser()),
+
+		json(new JsonSerializer(), new JsonParser()),
+
+		xml(new XmlSerializer(), new XmlParser());
+
+		final XydraSerializer serializer;
+
+		final XydraParser parser;
+
+		Format(final XydraSerializer serializer, final XydraParser parser) {
+			this.serializer = serializer;
+			this.parser = parser;
+		}
+	}
+
+	private static final XId REPO = Base.toId("repo");
+
+	private static final XId MODEL = Base.toId("model");
+
+	private static final XId ACTOR = Base.toId("actor");
+
+	private static final XAddress MODEL_ADDR = Base.resolveModel(REPO, MODEL);
+
+	@Param
+	Format format;
+
+	@Param({ "100", "1000" })
+	int objects;
+
+	private XRevWritableModel model;
+
+	private List<XEvent> events;
+
+	/** raw bytes for the binary format, UTF-8 for the others */
+	private byte[] modelData;
+
+	private byte[] eventData;
+
+	@BeforeExperiment
+	public void setUp() {
+		final XCommandFactory cf = BaseRuntime.getCommandFactory();
+		final MemoryPersistence persistence = new MemoryPersistence(REPO);
+		persistence.executeCommand(ACTOR, cf.createForcedAddModelCommand(REPO, MODEL));
+		final XId[] fieldIds = { Base.toId("name"), Base.toId("age"), Base.toId("friends") };
+		for (int i = 0; i < this.objects; i++) {
+			final XId objectId = Base.toId("o" + i);
+			final XAddress objectAddr = Base.resolveObject(MODEL_ADDR, objectId);
+			persistence.executeCommand(ACTOR, cf.createForcedAddObjectCommand(MODEL_ADDR, objectId));
+			final XValue[] values = { XV.toValue("Name of object " + i), XV.toValue(20L + i),
+					XV.toValue(new XId[] { Base.toId("o" + (i + 1)), Base.toId("o" + (i + 2)) }) };
+			for (int f = 0; f < fieldIds.length; f++) {
+				persistence.executeCommand(ACTOR, cf.createForcedAddFieldCommand(objectAddr,
+						fieldIds[f]));
+				persistence.executeCommand(ACTOR, cf.createForcedChangeValueCommand(
+						Base.resolveField(objectAddr, fieldIds[f]), values[f]));
+			}
+		}
+		this.model = persistence.getModelSnapshot(new GetWithAddressRequest(MODEL_ADDR));
+		this.events = persistence.getEvents(MODEL_ADDR, 0, Long.MAX_VALUE);
+
+		this.modelData = serializeModel();
+		this.eventData = serializeEvents();
+		System.out.println(this.format + ": model " + this.modelData.length + " bytes, "
+				+ this.events.size() + " events " + this.eventData.length + " bytes");
+	}
+
+	private byte[] serializeModel() {
+		final XydraOut out = this.format.serializer.create();
+		out.enableWhitespace(false, false);
+		SerializedModel.serialize(this.model, out, true, false, false);
+		return toBytes(out);
+	}
+
+	private byte[] serializeEvents() {
+		final XydraOut out = this.format.serializer.create();
+		out.enableWhitespace(false, false);
+		SerializedEvent.serialize(this.events.iterator(), out, MODEL_ADDR);
+		return toBytes(out);
+	}
+
+	private static byte[] toBytes(final XydraOut out) {
+		if (out instanceof BinaryOut) {
+			return ((BinaryOut) out).getBytes();
+		}
+		return out.getData().getBytes(BinaryOut.UTF8);
+	}
+
+	private XydraElement parse(final byte[] data) {
+		if (this.format == Format.binary) {
+			return ((BinaryParser) this.format.parser).parse(data);
+		}
+		return this.format.parser.parse(new String(data, BinaryOut.UTF8));
+	}
+
+	@Benchmark
+	public int serializeModel(final int reps) {
+		int dummy = 0;
+		for (int i = 0; i < reps; i++) {
+			dummy += serializeModel().length;
+		}
+		return dummy;
+	}
+
+	@Benchmark
+	public long parseModel(final int reps) {
+		long dummy = 0;
+		for (int i = 0; i < reps; i++) {
+			final XydraElement element = parse(this.modelData);
+			dummy += SerializedModel.toModelState(element, MODEL_ADDR).getRevisionNumber();
+		}
+		return dummy;
+	}
+
+	@Benchmark
+	public int serializeEvents(final int reps) {
+		int dummy = 0;
+		for (int i = 0; i < reps; i++) {
+			dummy += serializeEvents().length;
+		}
+		return dummy;
+	}
+
+	@Benchmark
+	public int parseEvents(final int reps) {
+		int dummy = 0;
+		for (int i = 0; i < reps; i++) {
+			final XydraElement element = parse(this.eventData);
+			dummy += SerializedEvent.toEventList(element, MODEL_ADDR).size();
+		}
+		return dummy;
+	}
+
+	public static void main(final String[] args) {
+		CaliperMain.main(SerializationFormatBenchmark.class, args);
+	}
+
+}
@@ -0,0 +1,20 @@
+package org.xydra.core.serialize.json;
+
+import org.xydra.core.serialize.AbstractSerializedEventTest;
+import org.xydra.core.serialize.XydraParser;
+import org.xydra.core.serialize.XydraSerializer;
+
+
+public class JsonPullEventTest extends AbstractSerializedEventTest {
+
+	@Override
+	protected XydraParser getParser() {
+		return new JsonPullParser();
+	}
+
+	@Override
+	protected XydraSerializer getSerializer() {
+		return new JsonSerializer();
+	}
+
+}
@@ -1,6 +1,9 @@
 package org.xydra.core.serialize.xml;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Iterator;
 
 import org.junit.BeforeClass;
 import org.junit.Ignore;
@@ -33,6 +36,28 @@ public class XmlParserTest {
 		assertEquals(this.xml1, xml2);
 	}
 
+	@Test
+	public void testPullXmlParser() {
+		final XmlPullParser xp = new XmlPullParser();
+		final XydraElement doc = xp.parse(new MiniStringReader(this.xml1));
+		assertEquals("ccc", doc.getAttribute("bbb"));
+		assertEquals(this.xml1, XmlUtils.toString(doc));
+
+		final XydraElement nested = xp
+				.parse("<a><b n='1'><c>x</c><!-- comment --></b><xnull/><b n='2'>y<c>z</c></b></a>");
+		assertEquals("2", nested.getElement(null, 2).getAttribute("n"));
+		assertEquals("yz", nested.getValue(null, 2));
+		assertNull(nested.getValue(null, 1));
+		assertEquals("x", nested.getChild(null, "b").getValue(null, "c"));
+		assertEquals("z", nested.getElement(null, 2).getValue(null, "c"));
+		int count = 0;
+		for (final Iterator<XydraElement> it = nested.getChildrenByType(null, "c"); it.hasNext(); it
+				.next()) {
+			count++;
+		}
+		assertEquals(2, count);
+	}
+
 	@Test
 	@Ignore
 	public void testStreamingXmlParser() {
@@ -0,0 +1,19 @@
+package org.xydra.core.serialize.xml;
+
+import org.xydra.core.serialize.AbstractSerializedModelTest;
+import org.xydra.core.serialize.XydraParser;
+import org.xydra.core.serialize.XydraSerializer;
+
+
+public class XmlPullModelTest extends AbstractSerializedModelTest {
+
+	@Override
+	protected XydraParser getParser() {
+		return new XmlPullParser();
+	}
+
+	@Override
+	protected XydraSerializer getSerializer() {
+		return new XmlSerializer();
+	}
+}
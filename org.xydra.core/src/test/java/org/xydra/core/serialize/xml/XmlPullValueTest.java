@@ -0,0 +1,20 @@
+package org.xydra.core.serialize.xml;
+
+import org.xydra.core.serialize.AbstractSerializedValueTest;
+import org.xydra.core.serialize.XydraParser;
+import org.xydra.core.serialize.XydraSerializer;
+
+
+public class XmlPullValueTest extends AbstractSerializedValueTest {
+
+	@Override
+	protected XydraParser getParser() {
+		return new XmlPullParser();
+	}
+
+	@Override
+	protected XydraSerializer getSerializer() {
+		return new XmlSerializer();
+	}
+
+}
@@ -0,0 +1,28 @@
+package org.xydra.store;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.xydra.base.BaseRuntime;
+import org.xydra.store.impl.file.FilePersistence;
+import org.xydra.store.impl.file.FilePersistenceTest;
+
+
+public class FilePersistenceTestForAtomicCommandsAndMiscellaneous extends
+        AbstractPersistenceTestForAtomicCommandsAndMiscellaneous {
+
+	private File dir;
+
+	@Before
+	public void setup() {
+		this.comFactory = BaseRuntime.getCommandFactory();
+		this.dir = FilePersistenceTest.createTempDir();
+		this.persistence = new FilePersistence(this.repoId, this.dir, new FilePersistence.Config());
+	}
+
+	@After
+	public void tearDown() {
+		FilePersistenceTest.delete(this.dir);
+	}
+}
@@ -0,0 +1,101 @@
+package org.xydra.store.impl.delegate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xydra.base.Base;
+import org.xydra.base.BaseRuntime;
+import org.xydra.base.XAddress;
+import org.xydra.base.XId;
+import org.xydra.base.change.XCommand;
+import org.xydra.base.change.XCommandFactory;
+import org.xydra.base.rmof.XReadableModel;
+import org.xydra.persistence.GetWithAddressRequest;
+import org.xydra.store.BatchedResult;
+import org.xydra.store.WaitingCallback;
+import org.xydra.store.XydraStore;
+import org.xydra.store.impl.memory.AllowAllAccessControlManager;
+import org.xydra.store.impl.memory.MemoryPersistence;
+
+public class DelegateToSingleOperationStoreTest {
+
+	private static final XId ACTOR = Base.toId("actor");
+
+	private static final String PASSWORD = "secret";
+
+	private final XId repoId = Base.toId("data");
+
+	private ExecutorService executor;
+
+	private XydraStore store;
+
+	@Before
+	public void setUp() {
+		this.executor = Executors.newFixedThreadPool(4);
+		this.store = new DelegatingStore(new MemoryPersistence(this.repoId),
+				new AllowAllAccessControlManager(), this.executor);
+	}
+
+	@After
+	public void tearDown() {
+		this.executor.shutdown();
+	}
+
+	@Test
+	public void testParallelCommandsAndSnapshots() {
+		final XCommandFactory factory = BaseRuntime.getCommandFactory();
+		final XId objectId = Base.toId("o");
+		final XAddress[] models = new XAddress[4];
+		final XCommand[] commands = new XCommand[3 * models.length];
+		for (int m = 0; m < models.length; m++) {
+			final XId modelId = Base.toId("m" + m);
+			models[m] = Base.resolveModel(Base.resolveRepository(this.repoId), modelId);
+			commands[m] = factory.createAddModelCommand(this.repoId, modelId, false);
+			commands[models.length + m] = factory.createAddObjectCommand(models[m], objectId,
+					false);
+			// remove the object again in every other model, relative to the add
+			commands[2 * models.length + m] = m % 2 == 0 ? factory.createRemoveObjectCommand(
+					Base.resolveObject(models[m], objectId), XCommand.RELATIVE_REV + models.length
+							+ m, false) : factory.createAddObjectCommand(models[m],
+					Base.toId("p"), false);
+		}
+
+		final WaitingCallback<BatchedResult<Long>[]> revs = new WaitingCallback<BatchedResult<Long>[]>();
+		this.store.executeCommands(ACTOR, PASSWORD, commands, revs);
+		assertNull(revs.getException());
+		assertEquals(commands.length, revs.getResult().length);
+		for (final BatchedResult<Long> rev : revs.getResult()) {
+			assertNull(rev.getException());
+			assertTrue(rev.getResult() >= 0);
+		}
+
+		final GetWithAddressRequest[] requests = new GetWithAddressRequest[models.length];
+		for (int m = 0; m < models.length; m++) {
+			requests[m] = new GetWithAddressRequest(models[m]);
+		}
+		final WaitingCallback<BatchedResult<XReadableModel>[]> snapshots = new WaitingCallback<BatchedResult<XReadableModel>[]>();
+		this.store.getModelSnapshots(ACTOR, PASSWORD, requests, snapshots);
+		for (int m = 0; m < models.length; m++) {
+			final XReadableModel model = snapshots.getResult()[m].getResult();
+			assertEquals(models[m], model.getAddress());
+			assertEquals(m % 2 != 0, model.hasObject(objectId));
+		}
+	}
+
+	@Test
+	public void testEmptyBatch() {
+		final WaitingCallback<BatchedResult<Long>[]> revs = new WaitingCallback<BatchedResult<Long>[]>();
+		this.store.executeCommands(ACTOR, PASSWORD, new XCommand[0], revs);
+		assertEquals(0, revs.getResult().length);
+		assertFalse(this.executor.isShutdown());
+	}
+
+}
@@ -0,0 +1,134 @@
+package org.xydra.store.impl.file;
+
+import java.io.File;
+
+import org.xydra.base.Base;
+import org.xydra.base.BaseRuntime;
+import org.xydra.base.XAddress;
+import org.xydra.base.XId;
+import org.xydra.base.change.XCommandFactory;
+import org.xydra.base.value.XV;
+import org.xydra.persistence.GetWithAddressRequest;
+
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.caliper.runner.CaliperMain;
+
+
+/**
+ * Measures how long opening a {@link FilePersistence} takes depending on the
+ * length of the event log and on how often checkpoints are written, and how
+ * many commands per second can be executed by concurrent writers with group
+ * commit.
+ *
+ * @author xamde
+ */
+public class FilePersistenceRecoveryBenchmark {
+
+    private static final XId REPO = Base.toId("repo");
+
+    private static final XId MODEL = Base.toId("model");
+
+    private static final XId ACTOR = Base.toId("actor");
+
+    private static final int OBJECTS = 100;
+
+    private static final XCommandFactory cf = BaseRuntime.getCommandFactory();
+
+    @Param({ "1000", "10000", "100000" })
+    int events;
+
+    /** Long.MAX_VALUE means no checkpoints, i.e. the whole log is replayed */
+    @Param({ "1000", "9223372036854775807" })
+    long checkpointInterval;
+
+    @Param({ "1", "8" })
+    int writers;
+
+    private File dir;
+
+    private FilePersistence.Config config;
+
+    private final XAddress modelAddr = Base.resolveModel(REPO, MODEL);
+
+    @BeforeExperiment
+    public void setUp() {
+        this.dir = FilePersistenceTest.createTempDir();
+        this.config = new FilePersistence.Config();
+        this.config.checkpointInterval = this.checkpointInterval;
+        // the log is written only once per experiment
+        this.config.sync = false;
+        final FilePersistence persistence = new FilePersistence(REPO, this.dir, this.config);
+        persistence.executeCommand(ACTOR, cf.createForcedAddModelCommand(REPO, MODEL));
+        final XId fieldId = Base.toId("f");
+        for(int i = 0; i < OBJECTS; i++) {
+            final XId objectId = Base.toId("o" + i);
+            persistence.executeCommand(ACTOR, cf.createForcedAddObjectCommand(this.modelAddr,
+                    objectId));
+            persistence.executeCommand(ACTOR, cf.createForcedAddFieldCommand(
+                    Base.resolveObject(this.modelAddr, objectId), fieldId));
+        }
+        for(int i = 2 * OBJECTS + 1; i < this.events; i++) {
+            final XAddress field = Base.resolveField(REPO, MODEL, Base.toId("o" + i % OBJECTS),
+                    fieldId);
+            persistence.executeCommand(ACTOR, cf.createForcedChangeValueCommand(field,
+                    XV.toValue(i)));
+        }
+        this.config.sync = true;
+    }
+
+    @AfterExperiment
+    public void tearDown() {
+        FilePersistenceTest.delete(this.dir);
+    }
+
+    @Benchmark
+    public long recover(final int reps) {
+        long dummy = 0;
+        for(int i = 0; i < reps; i++) {
+            final FilePersistence persistence = new FilePersistence(REPO, this.dir, this.config);
+            dummy += persistence.getModelSnapshot(new GetWithAddressRequest(this.modelAddr))
+                    .getRevisionNumber();
+        }
+        return dummy;
+    }
+
+    /**
+     * Each rep executes one command in each writer thread, all of them wait
+     * for the log to be synced.
+     */
+    @Benchmark
+    public long groupCommit(final int reps) throws InterruptedException {
+        final FilePersistence persistence = new FilePersistence(REPO, this.dir, this.config);
+        final Thread[] threads = new Thread[this.writers];
+        final long[] revs = new long[this.writers];
+        for(int t = 0; t < this.writers; t++) {
+            final int writer = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    final XAddress field = Base.resolveField(REPO, MODEL,
+                            Base.toId("o" + writer), Base.toId("f"));
+                    for(int i = 0; i < reps; i++) {
+                        revs[writer] = persistence.executeCommand(ACTOR,
+                                cf.createForcedChangeValueCommand(field, XV.toValue("w" + i)));
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        long dummy = 0;
+        for(int t = 0; t < this.writers; t++) {
+            threads[t].join();
+            dummy += revs[t];
+        }
+        return dummy;
+    }
+
+    public static void main(final String[] args) {
+        CaliperMain.main(FilePersistenceRecoveryBenchmark.class, args);
+    }
+
+}
@@ -0,0 +1,209 @@
+package org.xydra.store.impl.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xydra.base.Base;
+import org.xydra.base.BaseRuntime;
+import org.xydra.base.XAddress;
+import org.xydra.base.XId;
+import org.xydra.base.change.XCommand;
+import org.xydra.base.change.XCommandFactory;
+import org.xydra.base.change.XEvent;
+import org.xydra.base.rmof.XRevWritableModel;
+import org.xydra.base.value.XV;
+import org.xydra.persistence.GetWithAddressRequest;
+
+
+public class FilePersistenceTest {
+
+	private static final XId REPO = Base.toId("repo");
+
+	private static final XId ACTOR = Base.toId("actor");
+
+	private static final XAddress MODEL = Base.toAddress("/repo/model/-/-");
+
+	private static final XId OBJECT = Base.toId("object");
+
+	private static final XCommandFactory factory = BaseRuntime.getCommandFactory();
+
+	/**
+	 * @return a new empty directory
+	 */
+	public static File createTempDir() {
+		try {
+			final File dir = File.createTempFile("xydra-", "");
+			if (!dir.delete() || !dir.mkdir()) {
+				throw new IOException("Could not create " + dir);
+			}
+			return dir;
+		} catch (final IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Deletes the given file or directory recursively
+	 *
+	 * @param file
+	 */
+	public static void delete(final File file) {
+		final File[] children = file.listFiles();
+		if (children != null) {
+			for (final File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	private File dir;
+
+	private FilePersistence.Config config;
+
+	@Before
+	public void setUp() {
+		this.dir = createTempDir();
+		this.config = new FilePersistence.Config();
+		this.config.checkpointInterval = 10;
+		this.config.segmentSize = 4096;
+	}
+
+	@After
+	public void tearDown() {
+		delete(this.dir);
+	}
+
+	private FilePersistence open() {
+		return new FilePersistence(REPO, this.dir, this.config);
+	}
+
+	/** creates the model, an object and a field changed (count - 3) times */
+	private static void fill(final FilePersistence persistence, final int count) {
+		persistence.executeCommand(ACTOR, factory.createSafeAddModelCommand(REPO, MODEL.getModel()));
+		persistence.executeCommand(ACTOR, factory.createForcedAddObjectCommand(MODEL, OBJECT));
+		final XAddress objectAddr = Base.resolveObject(MODEL, OBJECT);
+		final XId fieldId = Base.toId("field");
+		persistence.executeCommand(ACTOR, factory.createForcedAddFieldCommand(objectAddr, fieldId));
+		for (int i = 3; i < count; i++) {
+			final long rev = persistence.executeCommand(ACTOR, factory.createForcedChangeValueCommand(
+					Base.resolveField(objectAddr, fieldId), XV.toValue(i)));
+			assertEquals(i, rev);
+		}
+	}
+
+	private static XRevWritableModel snapshot(final FilePersistence persistence) {
+		return persistence.getModelSnapshot(new GetWithAddressRequest(MODEL));
+	}
+
+	@Test
+	public void testReopen() {
+		final FilePersistence persistence = open();
+		// spans several segments and checkpoints
+		fill(persistence, 105);
+		final XRevWritableModel before = snapshot(persistence);
+		final List<XEvent> events = persistence.getEvents(MODEL, 0, 200);
+		assertEquals(105, events.size());
+
+		final FilePersistence reopened = open();
+		assertTrue(reopened.hasManagedModel(MODEL.getModel()));
+		assertEquals(before, snapshot(reopened));
+		assertEquals(104, snapshot(reopened).getRevisionNumber());
+		assertEquals(events, reopened.getEvents(MODEL, 0, 200));
+		// only the two latest checkpoints are kept
+		final File modelDir = new File(new File(this.dir, "repo"), "model");
+		assertTrue(new File(modelDir, "99.checkpoint").exists());
+		assertTrue(new File(modelDir, "89.checkpoint").exists());
+		assertFalse(new File(modelDir, "79.checkpoint").exists());
+	}
+
+	@Test
+	public void testReadsOfUnknownModelsDoNotCreateFiles() {
+		final FilePersistence persistence = open();
+		final XAddress unknown = Base.toAddress("/repo/unknown/-/-");
+		assertFalse(persistence.getModelRevision(new GetWithAddressRequest(unknown)).modelExists());
+		assertNull(persistence.getModelSnapshot(new GetWithAddressRequest(unknown)));
+		assertNull(persistence.getObjectSnapshot(new GetWithAddressRequest(Base.resolveObject(
+				unknown, OBJECT))));
+		assertNull(persistence.getEvents(unknown, 0, 10));
+		assertFalse(persistence.hasManagedModel(unknown.getModel()));
+		assertFalse(new File(this.dir, "repo").exists());
+
+		fill(persistence, 3);
+		assertTrue(new File(new File(this.dir, "repo"), "model").isDirectory());
+		assertFalse(open().hasManagedModel(unknown.getModel()));
+	}
+
+	@Test
+	public void testRecoverWithoutCheckpoints() {
+		this.config.checkpointInterval = Long.MAX_VALUE;
+		fill(open(), 20);
+		assertEquals(19, snapshot(open()).getRevisionNumber());
+	}
+
+	@Test
+	public void testTornRecordIsTruncated() throws IOException {
+		fill(open(), 5);
+		final File segment = new File(new File(new File(this.dir, "repo"), "model"), "0.segment");
+		// a length without a matching checksum and payload
+		final RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+		try {
+			long offset = 0;
+			int length;
+			while ((length = raf.readInt()) != 0) {
+				offset += 8 + length;
+				raf.seek(offset);
+			}
+			raf.seek(offset);
+			raf.writeInt(100);
+		} finally {
+			raf.close();
+		}
+
+		final FilePersistence reopened = open();
+		assertEquals(4, snapshot(reopened).getRevisionNumber());
+		final XRevWritableModel beforeAppend = snapshot(reopened);
+		final long rev = reopened.executeCommand(ACTOR, factory.createForcedAddObjectCommand(
+				MODEL, Base.toId("other")));
+		assertEquals(5, rev);
+		assertFalse(beforeAppend.hasObject(Base.toId("other")));
+		assertTrue(snapshot(open()).hasObject(Base.toId("other")));
+	}
+
+	@Test
+	public void testConcurrentCommands() throws InterruptedException {
+		final FilePersistence persistence = open();
+		persistence.executeCommand(ACTOR, factory.createSafeAddModelCommand(REPO, MODEL.getModel()));
+		final Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final int threadNr = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 25; i++) {
+						final long rev = persistence.executeCommand(ACTOR, factory
+								.createForcedAddObjectCommand(MODEL, Base.toId("o" + threadNr + "-" + i)));
+						assertTrue(rev > 0 && rev != XCommand.FAILED);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (final Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(100, snapshot(persistence).getRevisionNumber());
+		assertEquals(snapshot(persistence), snapshot(open()));
+	}
+
+}
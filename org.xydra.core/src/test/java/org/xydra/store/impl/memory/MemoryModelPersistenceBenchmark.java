@@ -0,0 +1,132 @@
+package org.xydra.store.impl.memory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xydra.base.Base;
+import org.xydra.base.BaseRuntime;
+import org.xydra.base.XAddress;
+import org.xydra.base.XId;
+import org.xydra.base.change.XCommand;
+import org.xydra.base.change.XCommandFactory;
+import org.xydra.base.value.XV;
+
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.caliper.runner.CaliperMain;
+
+
+/**
+ * Measures how {@link MemoryModelPersistence} behaves with concurrent readers
+ * while commands are executed. Reader threads are started before each
+ * experiment and keep calling {@link MemoryModelPersistence#getEvents} and
+ * {@link MemoryModelPersistence#getRevisionNumber()} until it ends.
+ *
+ * @author xamde
+ */
+public class MemoryModelPersistenceBenchmark {
+
+    private static final XId REPO = Base.toId("repo");
+
+    private static final XId MODEL = Base.toId("model");
+
+    private static final XId ACTOR = Base.toId("actor");
+
+    private static final int OBJECTS = 1000;
+
+    private static final XCommandFactory cf = BaseRuntime.getCommandFactory();
+
+    @Param({ "0", "1", "4" })
+    int readers;
+
+    private MemoryModelPersistence mmp;
+
+    private XAddress[] fields;
+
+    private final List<Thread> readerThreads = new ArrayList<Thread>();
+
+    private volatile boolean running;
+
+    /** prevents dead code elimination of reader results */
+    volatile long sink;
+
+    @BeforeExperiment
+    public void setUp() {
+        final XAddress modelAddr = Base.resolveModel(REPO, MODEL);
+        this.mmp = new MemoryModelPersistence(modelAddr);
+        this.mmp.executeCommand(ACTOR, cf.createForcedAddModelCommand(REPO, MODEL));
+        this.fields = new XAddress[OBJECTS];
+        final XId fieldId = Base.toId("f");
+        for(int i = 0; i < OBJECTS; i++) {
+            final XId objectId = Base.toId("o" + i);
+            this.mmp.executeCommand(ACTOR, cf.createForcedAddObjectCommand(modelAddr, objectId));
+            final XAddress objectAddr = Base.resolveObject(modelAddr, objectId);
+            this.mmp.executeCommand(ACTOR, cf.createForcedAddFieldCommand(objectAddr, fieldId));
+            this.fields[i] = Base.resolveField(objectAddr, fieldId);
+        }
+
+        this.running = true;
+        for(int r = 0; r < this.readers; r++) {
+            final int seed = r;
+            final Thread t = new Thread() {
+                @Override
+                public void run() {
+                    int i = seed;
+                    long dummy = 0;
+                    while(MemoryModelPersistenceBenchmark.this.running) {
+                        final XAddress field = MemoryModelPersistenceBenchmark.this.fields[i
+                                % OBJECTS];
+                        final long rev = MemoryModelPersistenceBenchmark.this.mmp
+                                .getRevisionNumber();
+                        dummy += MemoryModelPersistenceBenchmark.this.mmp.getEvents(field,
+                                0, rev).size();
+                        i++;
+                    }
+                    MemoryModelPersistenceBenchmark.this.sink = dummy;
+                }
+            };
+            t.setDaemon(true);
+            t.start();
+            this.readerThreads.add(t);
+        }
+    }
+
+    @AfterExperiment
+    public void tearDown() throws InterruptedException {
+        this.running = false;
+        for(final Thread t : this.readerThreads) {
+            t.join();
+        }
+        this.readerThreads.clear();
+    }
+
+    /** executes commands while the readers are running */
+    @Benchmark
+    public long executeCommand(final int reps) {
+        long dummy = 0;
+        for(int i = 0; i < reps; i++) {
+            final XCommand command = cf.createForcedChangeValueCommand(this.fields[i % OBJECTS],
+                    XV.toValue(i));
+            dummy += this.mmp.executeCommand(ACTOR, command);
+        }
+        return dummy;
+    }
+
+    /** reads events of single fields while the readers are running */
+    @Benchmark
+    public long getEventsOfField(final int reps) {
+        long dummy = 0;
+        for(int i = 0; i < reps; i++) {
+            final long rev = this.mmp.getRevisionNumber();
+            dummy += this.mmp.getEvents(this.fields[i % OBJECTS], 0, rev).size();
+        }
+        return dummy;
+    }
+
+    public static void main(final String[] args) {
+        CaliperMain.main(MemoryModelPersistenceBenchmark.class, new String[] {});
+    }
+
+}
@@ -0,0 +1,198 @@
+package org.xydra.store.impl.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xydra.base.Base;
+import org.xydra.base.XId;
+import org.xydra.core.serialize.XydraOut;
+import org.xydra.core.serialize.json.JsonParser;
+import org.xydra.core.serialize.json.JsonSerializer;
+import org.xydra.store.Callback;
+import org.xydra.store.ConnectionException;
+import org.xydra.store.SynchronousCallbackWithOneResult;
+import org.xydra.store.serialize.SerializedStore;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+
+public class AsyncXydraStoreRestClientTest {
+
+	private static final XId ACTOR = Base.toId("actor");
+
+	private static final XId REPO = Base.toId("repo");
+
+	private HttpServer server;
+
+	private URI uri;
+
+	private AsyncXydraStoreRestClient client;
+
+	private final AtomicInteger requests = new AtomicInteger();
+
+	private final AtomicInteger gzipped = new AtomicInteger();
+
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	@Before
+	public void setUp() throws IOException {
+		this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		this.server.createContext("/", new HttpHandler() {
+
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				AsyncXydraStoreRestClientTest.this.requests.incrementAndGet();
+				if(!exchange.getRequestURI().getPath().endsWith(XydraStoreRestInterface.URL_REPOSITORY_ID)) {
+					exchange.sendResponseHeaders(404, -1);
+					exchange.close();
+					return;
+				}
+				try {
+					AsyncXydraStoreRestClientTest.this.release.await(10, TimeUnit.SECONDS);
+				} catch(final InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+				final XydraOut out = new JsonSerializer().create();
+				SerializedStore.serializeRepositoryId(REPO, out);
+				final byte[] body = out.getData().getBytes("UTF-8");
+				final String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+				if(acceptEncoding != null && acceptEncoding.contains("gzip")) {
+					AsyncXydraStoreRestClientTest.this.gzipped.incrementAndGet();
+					exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+					exchange.sendResponseHeaders(200, 0);
+					final OutputStream os = new GZIPOutputStream(exchange.getResponseBody());
+					os.write(body);
+					os.close();
+				} else {
+					exchange.sendResponseHeaders(200, body.length);
+					exchange.getResponseBody().write(body);
+					exchange.close();
+				}
+			}
+		});
+		this.server.start();
+		this.uri = URI.create("http://localhost:" + this.server.getAddress().getPort()
+		        + "/store/v1/");
+		this.client = new AsyncXydraStoreRestClient(this.uri, new JsonSerializer(), new JsonParser());
+	}
+
+	@After
+	public void tearDown() {
+		this.client.shutdown();
+		this.server.stop(0);
+	}
+
+	@Test
+	public void testCoalescesQueuedRequests() throws InterruptedException {
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		final AsyncXydraStoreRestClient client = new AsyncXydraStoreRestClient(this.uri,
+		        new JsonSerializer(), new JsonParser(), executor);
+		try {
+			// keep the only thread busy, so the requests stay queued
+			final CountDownLatch busy = new CountDownLatch(1);
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						busy.await(10, TimeUnit.SECONDS);
+					} catch(final InterruptedException e) {
+						throw new RuntimeException(e);
+					}
+				}
+			});
+			@SuppressWarnings("unchecked")
+			final SynchronousCallbackWithOneResult<XId>[] callbacks = new SynchronousCallbackWithOneResult[3];
+			for(int i = 0; i < callbacks.length; i++) {
+				callbacks[i] = new SynchronousCallbackWithOneResult<XId>();
+				client.getRepositoryId(ACTOR, "secret", callbacks[i]);
+			}
+			// a throwing callback does not keep the others from being called
+			client.getRepositoryId(ACTOR, "secret", new Callback<XId>() {
+
+				@Override
+				public void onFailure(final Throwable exception) {
+					throw new IllegalStateException();
+				}
+
+				@Override
+				public void onSuccess(final XId object) {
+					throw new IllegalStateException();
+				}
+			});
+			this.release.countDown();
+			busy.countDown();
+			for(final SynchronousCallbackWithOneResult<XId> callback : callbacks) {
+				assertEquals(SynchronousCallbackWithOneResult.SUCCESS, callback.waitOnCallback(10000));
+				assertEquals(REPO, callback.getEffect());
+			}
+			assertEquals(1, this.requests.get());
+			assertEquals(1, this.gzipped.get());
+			assertEquals(3,
+			        client.getStats().getCount(XydraStoreRestInterface.URL_REPOSITORY_ID + " coalesced"));
+
+			// a request after the response has been received is sent again
+			final SynchronousCallbackWithOneResult<XId> again = new SynchronousCallbackWithOneResult<XId>();
+			client.getRepositoryId(ACTOR, "secret", again);
+			assertEquals(SynchronousCallbackWithOneResult.SUCCESS, again.waitOnCallback(10000));
+			assertEquals(2, this.requests.get());
+
+			// latencies are recorded after the callbacks have been called
+			final long end = System.currentTimeMillis() + 10000;
+			while(client.getStats().getCount(XydraStoreRestInterface.URL_REPOSITORY_ID) < 2
+			        && System.currentTimeMillis() < end) {
+				Thread.yield();
+			}
+			assertEquals(2, client.getStats().getCount(XydraStoreRestInterface.URL_REPOSITORY_ID));
+		} finally {
+			client.shutdown();
+		}
+	}
+
+	@Test
+	public void testDoesNotJoinSentRequests() throws InterruptedException {
+		final SynchronousCallbackWithOneResult<XId> first = new SynchronousCallbackWithOneResult<XId>();
+		this.client.getRepositoryId(ACTOR, "secret", first);
+		final long end = System.currentTimeMillis() + 10000;
+		while(this.requests.get() < 1 && System.currentTimeMillis() < end) {
+			Thread.sleep(1);
+		}
+		// the first request has reached the server, which holds the response
+		final SynchronousCallbackWithOneResult<XId> second = new SynchronousCallbackWithOneResult<XId>();
+		this.client.getRepositoryId(ACTOR, "secret", second);
+		this.release.countDown();
+		assertEquals(SynchronousCallbackWithOneResult.SUCCESS, first.waitOnCallback(10000));
+		assertEquals(SynchronousCallbackWithOneResult.SUCCESS, second.waitOnCallback(10000));
+		assertEquals(2, this.requests.get());
+		assertEquals(0,
+		        this.client.getStats().getCount(XydraStoreRestInterface.URL_REPOSITORY_ID + " coalesced"));
+	}
+
+	@Test
+	public void testReportsErrors() {
+		final SynchronousCallbackWithOneResult<Set<XId>> callback = new SynchronousCallbackWithOneResult<Set<XId>>();
+		this.client.getModelIds(ACTOR, "secret", callback);
+		assertEquals(SynchronousCallbackWithOneResult.FAILURE, callback.waitOnCallback(10000));
+		assertTrue(callback.getException() instanceof ConnectionException);
+		assertEquals(1,
+		        this.client.getStats().getCount(XydraStoreRestInterface.URL_MODEL_IDS + " errors"));
+	}
+
+}
@@ -0,0 +1,96 @@
+package org.xydra.store.sync;
+
+import java.util.Random;
+
+import org.xydra.base.Base;
+import org.xydra.base.BaseRuntime;
+import org.xydra.base.XId;
+import org.xydra.base.change.XEvent;
+import org.xydra.base.rmof.XReadableModel;
+import org.xydra.base.rmof.XRevWritableModel;
+import org.xydra.core.X;
+import org.xydra.core.XCopyUtils;
+import org.xydra.core.model.XModel;
+import org.xydra.core.model.XObject;
+
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.caliper.runner.CaliperMain;
+
+
+/**
+ * Compares catching up with all events since the last sync with catching up
+ * with the compacted events, as {@link NewSyncer} does in catch-up mode. The
+ * history consists of value changes to 100 objects with 5 fields each, so
+ * most events overwrite an earlier one. Both variants include copying the
+ * model state they are applied to. The compacted variant also includes the
+ * compaction, which the server would do. With 10000 changes the compacted
+ * catch-up takes about half the time, and only 500 instead of 10000 events
+ * need to be sent.
+ *
+ * @author xamde
+ */
+public class CatchUpBenchmark {
+
+    private static final int OBJECTS = 100;
+
+    private static final int FIELDS = 5;
+
+    @Param({ "1000", "10000" })
+    int changes;
+
+    private XReadableModel start;
+
+    private XEvent[] events;
+
+    @BeforeExperiment
+    public void setUp() {
+        final XModel model = X.createMemoryRepository(Base.toId("actor")).createModel(
+                Base.toId("model"));
+        for(int i = 0; i < OBJECTS; i++) {
+            final XObject object = model.createObject(Base.toId("o" + i));
+            for(int j = 0; j < FIELDS; j++) {
+                object.createField(Base.toId("f" + j));
+            }
+        }
+        final long rev = model.getRevisionNumber();
+        this.start = XCopyUtils.createSnapshot(model);
+
+        final Random random = new Random(0);
+        for(int i = 0; i < this.changes; i++) {
+            final XId objectId = Base.toId("o" + random.nextInt(OBJECTS));
+            final XId fieldId = Base.toId("f" + random.nextInt(FIELDS));
+            model.getObject(objectId).getField(fieldId).setValue(
+                    BaseRuntime.getValueFactory().createLongValue(i));
+        }
+        this.events = EventCompactorTest.getEventsSince(model, rev);
+    }
+
+    @Benchmark
+    public long full(final int reps) {
+        long dummy = 0;
+        for(int i = 0; i < reps; i++) {
+            final XRevWritableModel model = XCopyUtils.createSnapshot(this.start);
+            EventCompactorTest.apply(this.events, model);
+            dummy += model.getRevisionNumber();
+        }
+        return dummy;
+    }
+
+    @Benchmark
+    public long compacted(final int reps) {
+        long dummy = 0;
+        for(int i = 0; i < reps; i++) {
+            final XRevWritableModel model = XCopyUtils.createSnapshot(this.start);
+            EventCompactorTest.apply(EventCompactor.compact(this.events), model);
+            dummy += model.getRevisionNumber();
+        }
+        return dummy;
+    }
+
+    public static void main(final String[] args) {
+        CaliperMain.main(CatchUpBenchmark.class, args);
+    }
+
+}
@@ -0,0 +1,136 @@
+package org.xydra.store.sync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.xydra.base.Base;
+import org.xydra.base.BaseRuntime;
+import org.xydra.base.XCompareUtils;
+import org.xydra.base.XId;
+import org.xydra.base.change.XCommand;
+import org.xydra.base.change.XEvent;
+import org.xydra.base.change.XTransactionEvent;
+import org.xydra.base.rmof.XRevWritableModel;
+import org.xydra.core.X;
+import org.xydra.core.XCopyUtils;
+import org.xydra.core.model.XModel;
+import org.xydra.core.model.XObject;
+import org.xydra.core.model.impl.memory.EventDelta;
+import org.xydra.core.change.XTransactionBuilder;
+
+
+public class EventCompactorTest {
+
+    private static final XId NAME = Base.toId("name");
+
+    private static final XId PHONE = Base.toId("phone");
+
+    /**
+     * Applies the events like {@link NewSyncer} does when it catches up.
+     */
+    static void apply(final XEvent[] events, final XRevWritableModel model) {
+        final EventDelta delta = new EventDelta();
+        for(final XEvent event : events) {
+            delta.addEvent(event);
+        }
+        delta.applyTo(model);
+        NewSyncer.applyEntityRevisionsToModel(events, model);
+    }
+
+    /**
+     * Makes random changes to the objects o0..o(objects-1) of the model, about
+     * half of them to the values of existing fields.
+     */
+    static void change(final XModel model, final int objects, final int changes,
+            final Random random) {
+        for(int i = 0; i < changes; i++) {
+            final XId objectId = Base.toId("o" + random.nextInt(objects));
+            final XObject object = model.getObject(objectId);
+            final int op = random.nextInt(10);
+            if(object == null) {
+                model.createObject(objectId).createField(NAME);
+            } else if(op < 5) {
+                object.createField(NAME).setValue(
+                        BaseRuntime.getValueFactory().createStringValue("name" + i));
+            } else if(op == 5) {
+                if(object.hasField(PHONE)) {
+                    object.removeField(PHONE);
+                } else {
+                    object.createField(PHONE);
+                }
+            } else if(op == 6 && object.hasField(NAME)) {
+                object.getField(NAME).setValue(null);
+            } else if(op == 7) {
+                model.removeObject(objectId);
+            } else {
+                final XTransactionBuilder tb = new XTransactionBuilder(model.getAddress());
+                if(!object.hasField(PHONE)) {
+                    tb.addField(object.getAddress(), XCommand.SAFE_STATE_BOUND, PHONE);
+                }
+                tb.addValue(Base.resolveField(object.getAddress(), PHONE), XCommand.FORCED,
+                        BaseRuntime.getValueFactory().createStringValue("" + i));
+                tb.addValue(Base.resolveField(object.getAddress(), NAME), XCommand.FORCED,
+                        BaseRuntime.getValueFactory().createStringValue("tx" + i));
+                model.executeCommand(tb.build());
+            }
+        }
+    }
+
+    static XEvent[] getEventsSince(final XModel model, final long revision) {
+        final List<XEvent> events = new ArrayList<XEvent>();
+        final Iterator<XEvent> it = model.getChangeLog().getEventsBetween(revision + 1,
+                Long.MAX_VALUE);
+        while(it.hasNext()) {
+            events.add(it.next());
+        }
+        return events.toArray(new XEvent[events.size()]);
+    }
+
+    @Test
+    public void testCompactedEventsYieldSameState() {
+        for(int seed = 0; seed < 20; seed++) {
+            final XModel model = X.createMemoryRepository(Base.toId("actor")).createModel(
+                    Base.toId("model"));
+            final Random random = new Random(seed);
+            change(model, 20, 50, random);
+            final long rev = model.getRevisionNumber();
+            final XRevWritableModel compacted = XCopyUtils.createSnapshot(model);
+
+            change(model, 20, 500, random);
+            final XEvent[] events = getEventsSince(model, rev);
+            final XEvent[] net = EventCompactor.compact(events);
+            apply(net, compacted);
+
+            assertTrue(net.length < events.length);
+            assertEquals(model.getRevisionNumber(), compacted.getRevisionNumber());
+            assertTrue("seed " + seed, XCompareUtils.equalState(model, compacted));
+        }
+    }
+
+    @Test
+    public void testKeepsAddAndRemove() {
+        final XModel model = X.createMemoryRepository(Base.toId("actor")).createModel(
+                Base.toId("model"));
+        final long rev = model.getRevisionNumber();
+        final XObject object = model.createObject(Base.toId("o"));
+        for(int i = 0; i < 10; i++) {
+            object.createField(NAME).setValue(
+                    BaseRuntime.getValueFactory().createStringValue("" + i));
+            object.removeField(NAME);
+        }
+        final XEvent[] net = EventCompactor.compact(getEventsSince(model, rev));
+
+        // add object, first add and last remove of the field and of its value
+        assertEquals(5, net.length);
+        for(final XEvent event : net) {
+            assertTrue(!(event instanceof XTransactionEvent));
+        }
+    }
+
+}
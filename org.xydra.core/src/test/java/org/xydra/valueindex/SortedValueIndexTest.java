@@ -0,0 +1,122 @@
+package org.xydra.valueindex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.xydra.base.Base;
+import org.xydra.base.BaseRuntime;
+import org.xydra.base.XAddress;
+import org.xydra.base.XId;
+import org.xydra.base.value.XValue;
+import org.xydra.base.value.XValueFactory;
+import org.xydra.core.X;
+import org.xydra.core.model.XModel;
+import org.xydra.core.model.XObject;
+
+
+public class SortedValueIndexTest {
+
+	private static final XValueFactory vf = BaseRuntime.getValueFactory();
+
+	private static final XId TIME = Base.toId("time");
+
+	private static final XId SCORE = Base.toId("score");
+
+	private static final XId NAME = Base.toId("name");
+
+	private XModel model;
+
+	private XFieldLevelIndex index;
+
+	@Before
+	public void setUp() {
+		this.model = X.createMemoryRepository(Base.toId("actor")).createModel(Base.toId("model"));
+		final String[] names = { "Alice Abcott", "Bob", "abcde", "Carol Ab" };
+		for(int i = 0; i < 40; i++) {
+			final XObject object = this.model.createObject(Base.toId("o" + i));
+			object.createField(TIME).setValue(
+			        i % 2 == 0 ? vf.createLongValue(1000L * i) : vf.createIntegerValue(1000 * i));
+			object.createField(SCORE).setValue(vf.createDoubleValue(i / 4.0 - 5));
+			object.createField(NAME).setValue(vf.createStringValue(names[i % names.length]));
+		}
+		this.index = new XFieldLevelIndexFactory().createSortedIndexWithMemoryMapSetIndex(this.model);
+	}
+
+	private Set<XAddress> addresses(final Set<ValueIndexEntry> entries) {
+		final Set<XAddress> result = new HashSet<XAddress>();
+		for(final ValueIndexEntry entry : entries) {
+			result.add(entry.getAddress());
+		}
+		return result;
+	}
+
+	private Set<XAddress> fields(final XId fieldId, final int fromObject, final int toObject) {
+		final Set<XAddress> result = new HashSet<XAddress>();
+		for(int i = fromObject; i <= toObject; i++) {
+			result.add(Base.resolveField(this.model.getAddress(), Base.toId("o" + i), fieldId));
+		}
+		return result;
+	}
+
+	@Test
+	public void testLongAndIntegerRange() {
+		assertEquals(fields(TIME, 3, 7), addresses(this.index.searchRange(2500L, 7000L)));
+		assertEquals(fields(TIME, 0, 39), addresses(this.index.searchRange(Long.MIN_VALUE,
+		        Long.MAX_VALUE)));
+		assertEquals(0, this.index.searchRange(7000L, 2500L).size());
+	}
+
+	@Test
+	public void testDoubleRange() {
+		// i / 4.0 - 5 in [-1, 0] for i in [16, 20]
+		assertEquals(fields(SCORE, 16, 20), addresses(this.index.searchRange(-1.0, 0.0)));
+		assertEquals(fields(SCORE, 20, 20), addresses(this.index.searchRange(-0.0, -0.0)));
+	}
+
+	@Test
+	public void testSortableLong() {
+		final double[] sorted = { Double.NEGATIVE_INFINITY, -1e300, -2.5, -Double.MIN_VALUE, 0.0,
+		        Double.MIN_VALUE, 1, 2.5, 1e300, Double.POSITIVE_INFINITY, Double.NaN };
+		for(int i = 1; i < sorted.length; i++) {
+			assertTrue(SortedValueIndex.sortableLong(sorted[i - 1]) < SortedValueIndex
+			        .sortableLong(sorted[i]));
+		}
+		assertEquals(SortedValueIndex.sortableLong(0.0), SortedValueIndex.sortableLong(-0.0));
+	}
+
+	@Test
+	public void testPrefix() {
+		final Set<XAddress> expected = new HashSet<XAddress>();
+		for(int i = 0; i < 40; i++) {
+			if(i % 4 != 1) {
+				expected.add(Base.resolveField(this.model.getAddress(), Base.toId("o" + i), NAME));
+			}
+		}
+		assertEquals(expected, addresses(this.index.searchPrefix("Ab")));
+		assertEquals(10, this.index.searchPrefix("abcd").size());
+		assertEquals(0, this.index.searchPrefix("x").size());
+	}
+
+	@Test
+	public void testUpdate() {
+		final XAddress field = Base.resolveField(this.model.getAddress(), Base.toId("o3"), TIME);
+		final XValue oldValue = this.model.getObject(Base.toId("o3")).getFieldValue(TIME);
+		final XValue newValue = vf.createLongValue(-5);
+		this.model.getObject(Base.toId("o3")).setFieldValue(TIME, newValue);
+		this.index.updateIndex(field, oldValue, newValue);
+		assertEquals(fields(TIME, 4, 7), addresses(this.index.searchRange(2500L, 7000L)));
+		assertEquals(fields(TIME, 3, 3), addresses(this.index.searchRange(-10L, -1L)));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testWithoutSortedIndex() {
+		new XFieldLevelIndexFactory().createIndexWithMemoryMapSetIndex(this.model).searchRange(0L,
+		        1L);
+	}
+
+}
@@ -4,11 +4,13 @@ import java.util.Map;
 
 import org.xydra.annotations.Setting;
 import org.xydra.base.XId;
+import org.xydra.base.minio.MiniStringWriter;
 import org.xydra.gae.admin.GaeConfigSettings;
 import org.xydra.gae.admin.GaeConfiguration;
 import org.xydra.gae.admin.GaeConfigurationManager;
 import org.xydra.log.api.Logger;
 import org.xydra.log.api.LoggerFactory;
+import org.xydra.perf.Stats;
 import org.xydra.persistence.XydraPersistence;
 import org.xydra.store.XydraConfigUtils;
 import org.xydra.store.XydraPlatformRuntime;
@@ -127,6 +129,12 @@ public class GaePlatformRuntime implements XydraPlatformRuntime {
 	@Override
 	public void finishRequest() {
 		log.info("Request finished.");
+		final Stats stats = UniCacheMetrics.endRequest();
+		if (stats != null && log.isDebugEnabled()) {
+			final MiniStringWriter w = new MiniStringWriter();
+			stats.writeStats(w);
+			log.debug("UniCache stats of this request:\n" + w.toString());
+		}
 		// InstanceContext.clearThreadContext();
 	}
 
@@ -152,6 +160,7 @@ public class GaePlatformRuntime implements XydraPlatformRuntime {
 	@Override
 	public void startRequest() {
 		log.info("Request started.");
+		UniCacheMetrics.startRequest();
 	}
 
 	@Override
@@ -0,0 +1,626 @@
+package org.xydra.store.impl.gae;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.xydra.annotations.CanBeNull;
+import org.xydra.annotations.NeverNull;
+import org.xydra.perf.Estimations;
+
+import com.google.common.cache.AbstractCache;
+import com.google.common.cache.CacheStats;
+
+/**
+ * An instance-wide cache bounded by the estimated size of its values in bytes
+ * (see {@link Estimations#estimateSizeInBytes(Object)}).
+ *
+ * Reads take no lock. The keys are spread over segments, each with its own
+ * lock and its own share of the size budget. Within a segment, new entries go
+ * into a small LRU window. Entries leaving the window are only admitted to the
+ * main LRU area if they have been used more often than the entries they would
+ * push out (W-TinyLFU). Usage is counted approximately in a small frequency
+ * sketch that halves all counters periodically, so that a scan over many
+ * one-time keys does not flush frequently used entries such as hot model
+ * snapshots.
+ *
+ * Reads only move an entry to the front of its LRU list if the segment lock is
+ * free; under contention the order is approximate.
+ *
+ * Entries larger than the budget of a segment, e.g. large model snapshots, are
+ * kept in a separate LRU area, up to the budget of the whole cache. The
+ * segments shrink by the size of this area, so that all entries together stay
+ * within the budget. Only entries larger than the whole budget are not cached.
+ *
+ * Entries also expire when they have not been read for a while. Sizes are
+ * estimated when a value is put. Callers that change a value in place, e.g. a
+ * map that is filled after it has been put, must call {@link #reweigh(String)}
+ * afterwards, otherwise the entry keeps its initial size.
+ *
+ * @author xamde
+ */
+public class InstanceCache extends AbstractCache<String, Object> {
+
+	static final int SEGMENTS = 16;
+
+	/** Share of a segment's budget for the window, in percent */
+	private static final int WINDOW_PERCENT = 1;
+
+	/** Approximate overhead of an entry besides its value */
+	private static final long ENTRY_OVERHEAD = 96;
+
+	private static class Node {
+
+		final String key;
+
+		final Object value;
+
+		/** guarded by the segment lock */
+		long weight;
+
+		volatile long accessed;
+
+		/** guarded by the segment lock */
+		boolean inWindow;
+
+		/** true if kept in the area for large entries */
+		final boolean large;
+
+		Node(final String key, final Object value, final long weight, final long now,
+				final boolean large) {
+			this.key = key;
+			this.value = value;
+			this.weight = weight;
+			this.accessed = now;
+			this.large = large;
+			this.inWindow = !large;
+		}
+
+	}
+
+	@SuppressWarnings("serial")
+	private static class Segment extends ReentrantLock {
+
+		/** in access order */
+		final LinkedHashMap<String, Node> window = new LinkedHashMap<String, Node>(16, 0.75f, true);
+
+		/** in access order */
+		final LinkedHashMap<String, Node> main = new LinkedHashMap<String, Node>(16, 0.75f, true);
+
+		long windowBytes = 0;
+
+		long mainBytes = 0;
+
+	}
+
+	/**
+	 * A count-min sketch with four rows of counters up to 15
+	 */
+	private static class FrequencySketch {
+
+		private static final int[] SEEDS = { 0x97cb3127, 0xb8b5c2a1, 0x6f4f2a15, 0x1b873593 };
+
+		private static final int MAX_COUNT = 15;
+
+		private final int[] counters;
+
+		private final int mask;
+
+		private final int sampleSize;
+
+		/** not exact under concurrent updates, which is good enough */
+		private int additions = 0;
+
+		/**
+		 * @param expectedEntries
+		 *            rows have four counters per entry, counters are halved
+		 *            after ten additions per entry
+		 */
+		FrequencySketch(final int expectedEntries) {
+			final int width = Integer.highestOneBit(4 * expectedEntries - 1) << 1;
+			this.counters = new int[4 * width];
+			this.mask = width - 1;
+			this.sampleSize = 10 * expectedEntries;
+		}
+
+		private int index(final int hash, final int row) {
+			int h = hash * SEEDS[row];
+			h ^= h >>> 16;
+			return row * (this.mask + 1) + (h & this.mask);
+		}
+
+		void increment(final String key) {
+			final int hash = key.hashCode();
+			for (int row = 0; row < 4; row++) {
+				final int i = index(hash, row);
+				if (this.counters[i] < MAX_COUNT) {
+					this.counters[i]++;
+				}
+			}
+			if (++this.additions >= this.sampleSize) {
+				this.additions = 0;
+				for (int i = 0; i < this.counters.length; i++) {
+					this.counters[i] >>>= 1;
+				}
+			}
+		}
+
+		int frequency(final String key) {
+			final int hash = key.hashCode();
+			int min = MAX_COUNT;
+			for (int row = 0; row < 4; row++) {
+				min = Math.min(min, this.counters[index(hash, row)]);
+			}
+			return min;
+		}
+
+	}
+
+	private final ConcurrentHashMap<String, Node> data = new ConcurrentHashMap<String, Node>();
+
+	private final Segment[] segments = new Segment[SEGMENTS];
+
+	/**
+	 * Entries larger than the budget of a segment, only the main area is used.
+	 * May be locked while holding a segment lock, but not the other way round.
+	 */
+	private final Segment large = new Segment();
+
+	/** size of the large entries, is subtracted from the segment budgets */
+	private volatile long largeBytes = 0;
+
+	private final FrequencySketch sketch;
+
+	private final long maxBytes;
+
+	private final long segmentBudget;
+
+	private final long windowBudget;
+
+	private final long expireAfterAccessNanos;
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param maxBytes
+	 *            upper bound for the estimated size of all entries
+	 * @param expireAfterAccess
+	 *            entries that have not been read for this time are removed
+	 * @param unit
+	 */
+	public InstanceCache(final long maxBytes, final long expireAfterAccess, final TimeUnit unit) {
+		this.maxBytes = maxBytes;
+		this.segmentBudget = maxBytes / SEGMENTS;
+		this.windowBudget = this.segmentBudget * WINDOW_PERCENT / 100;
+		this.expireAfterAccessNanos = unit.toNanos(expireAfterAccess);
+		// assume about a kilobyte per entry
+		this.sketch = new FrequencySketch((int) Math.max(64, Math.min(1 << 18, maxBytes / 1024)));
+		for (int i = 0; i < SEGMENTS; i++) {
+			this.segments[i] = new Segment();
+		}
+	}
+
+	private Segment segment(final Object key) {
+		final int h = key.hashCode();
+		return this.segments[(h ^ h >>> 16) & SEGMENTS - 1];
+	}
+
+	private Segment segmentOf(final Node node) {
+		return node.large ? this.large : segment(node.key);
+	}
+
+	/**
+	 * @return the current budget of each segment
+	 */
+	private long budget() {
+		return this.segmentBudget - this.largeBytes / SEGMENTS;
+	}
+
+	private boolean isExpired(final Node node, final long now) {
+		return now - node.accessed > this.expireAfterAccessNanos;
+	}
+
+	@Override
+	public @CanBeNull Object getIfPresent(final Object key) {
+		final Node node = this.data.get(key);
+		if (key instanceof String) {
+			this.sketch.increment((String) key);
+		}
+		if (node == null) {
+			this.misses.incrementAndGet();
+			return null;
+		}
+		final long now = System.nanoTime();
+		if (isExpired(node, now)) {
+			remove(node);
+			this.misses.incrementAndGet();
+			return null;
+		}
+		node.accessed = now;
+		this.hits.incrementAndGet();
+		final Segment segment = segmentOf(node);
+		if (segment.tryLock()) {
+			try {
+				if (node.inWindow) {
+					segment.window.get(key);
+				} else {
+					segment.main.get(key);
+				}
+			} finally {
+				segment.unlock();
+			}
+		}
+		return node.value;
+	}
+
+	@Override
+	public void put(@NeverNull final String key, @NeverNull final Object value) {
+		putInternal(key, value, false);
+	}
+
+	/**
+	 * @param key
+	 * @param value
+	 * @return the current value, which is not replaced, or null if value has
+	 *         been put
+	 */
+	public @CanBeNull Object putIfAbsent(@NeverNull final String key, @NeverNull final Object value) {
+		return putInternal(key, value, true);
+	}
+
+	private Object putInternal(final String key, final Object value, final boolean onlyIfAbsent) {
+		final long weight = ENTRY_OVERHEAD + 2 * key.length()
+				+ Estimations.estimateSizeInBytes(value);
+		final long now = System.nanoTime();
+		this.sketch.increment(key);
+		final Segment segment = segment(key);
+		segment.lock();
+		try {
+			final Node old = this.data.get(key);
+			if (old != null) {
+				if (onlyIfAbsent && !isExpired(old, now)) {
+					return old.value;
+				}
+				this.data.remove(key);
+				if (old.large) {
+					this.large.lock();
+					try {
+						unlink(this.large, old);
+					} finally {
+						this.large.unlock();
+					}
+				} else {
+					unlink(segment, old);
+				}
+			}
+			if (weight > this.maxBytes) {
+				// would evict everything else and still not fit
+				this.evictions.incrementAndGet();
+				return null;
+			}
+			if (weight <= this.segmentBudget) {
+				final Node node = new Node(key, value, weight, now, false);
+				this.data.put(key, node);
+				segment.window.put(key, node);
+				segment.windowBytes += weight;
+				evict(segment);
+				return null;
+			}
+			putLarge(new Node(key, value, weight, now, true));
+		} finally {
+			segment.unlock();
+		}
+		shrinkSegments();
+		return null;
+	}
+
+	/**
+	 * Adds a node to the large entries and evicts the least recently used
+	 * other large entries until they fit into the budget of the whole cache.
+	 * Callers must call {@link #shrinkSegments()} afterwards.
+	 *
+	 * @param node
+	 */
+	private void putLarge(final Node node) {
+		this.large.lock();
+		try {
+			this.data.put(node.key, node);
+			this.large.main.put(node.key, node);
+			this.large.mainBytes += node.weight;
+			evictLarge(node);
+		} finally {
+			this.large.unlock();
+		}
+	}
+
+	/**
+	 * @param keep
+	 *            is not evicted
+	 */
+	private void evictLarge(final Node keep) {
+		final Iterator<Node> it = this.large.main.values().iterator();
+		while (this.large.mainBytes > this.maxBytes && it.hasNext()) {
+			final Node victim = it.next();
+			if (victim == keep) {
+				continue;
+			}
+			it.remove();
+			this.large.mainBytes -= victim.weight;
+			this.data.remove(victim.key, victim);
+			this.evictions.incrementAndGet();
+		}
+		this.largeBytes = this.large.mainBytes;
+	}
+
+	/**
+	 * Evicts entries from all segments that are larger than their budget, after
+	 * large entries have been added. Must be called without holding a lock.
+	 */
+	private void shrinkSegments() {
+		for (final Segment segment : this.segments) {
+			segment.lock();
+			try {
+				evict(segment);
+			} finally {
+				segment.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Estimates the size of the current value of the key again, after the
+	 * value has been changed in place, and evicts entries if the segment is
+	 * now too large. Does nothing if the key is not cached.
+	 *
+	 * The value is estimated while holding its monitor, so values that are
+	 * changed in place must be changed only while synchronized on themselves.
+	 * Estimating walks the whole value, so call this after a batch of changes
+	 * rather than after each one.
+	 *
+	 * @param key
+	 */
+	public void reweigh(@NeverNull final String key) {
+		final Node node = this.data.get(key);
+		if (node == null) {
+			return;
+		}
+		// estimate outside of the segment lock, the value might be large
+		final long weight;
+		synchronized (node.value) {
+			weight = ENTRY_OVERHEAD + 2 * key.length() + Estimations.estimateSizeInBytes(node.value);
+		}
+		final Segment segment = segment(key);
+		segment.lock();
+		try {
+			if (this.data.get(key) != node) {
+				// removed or replaced meanwhile
+				return;
+			}
+			if (node.large) {
+				this.large.lock();
+				try {
+					if (weight > this.maxBytes) {
+						this.data.remove(key, node);
+						unlink(this.large, node);
+						this.evictions.incrementAndGet();
+						return;
+					}
+					this.large.mainBytes += weight - node.weight;
+					node.weight = weight;
+					evictLarge(node);
+				} finally {
+					this.large.unlock();
+				}
+			} else if (weight > this.segmentBudget) {
+				this.data.remove(key, node);
+				unlink(segment, node);
+				if (weight > this.maxBytes) {
+					this.evictions.incrementAndGet();
+					return;
+				}
+				putLarge(new Node(key, node.value, weight, node.accessed, true));
+			} else {
+				if (node.inWindow) {
+					segment.windowBytes += weight - node.weight;
+				} else {
+					segment.mainBytes += weight - node.weight;
+				}
+				node.weight = weight;
+				evict(segment);
+				return;
+			}
+		} finally {
+			segment.unlock();
+		}
+		shrinkSegments();
+	}
+
+	/**
+	 * @param segment
+	 *            must be locked by the caller
+	 */
+	private void unlink(final Segment segment, final Node node) {
+		if (node.inWindow) {
+			if (segment.window.remove(node.key) != null) {
+				segment.windowBytes -= node.weight;
+			}
+		} else {
+			if (segment.main.remove(node.key) != null) {
+				segment.mainBytes -= node.weight;
+			}
+		}
+		if (segment == this.large) {
+			this.largeBytes = segment.mainBytes;
+		}
+	}
+
+	/**
+	 * Moves entries from the window to the main area while the window is too
+	 * large, evicting either the candidate or the least recently used main
+	 * entries, whichever has been used less often. The newest entry always
+	 * stays in the window, even if main entries have to make room for it.
+	 *
+	 * @param segment
+	 *            must be locked by the caller
+	 */
+	private void evict(final Segment segment) {
+		final long budget = budget();
+		while (segment.windowBytes > this.windowBudget && segment.window.size() > 1) {
+			final Iterator<Node> windowIt = segment.window.values().iterator();
+			final Node candidate = windowIt.next();
+			windowIt.remove();
+			segment.windowBytes -= candidate.weight;
+			candidate.inWindow = false;
+
+			final int candidateFrequency = this.sketch.frequency(candidate.key);
+			boolean admit = true;
+			final Iterator<Node> mainIt = segment.main.values().iterator();
+			while (segment.windowBytes + segment.mainBytes + candidate.weight > budget
+					&& mainIt.hasNext()) {
+				final Node victim = mainIt.next();
+				if (candidateFrequency <= this.sketch.frequency(victim.key)) {
+					admit = false;
+					break;
+				}
+				mainIt.remove();
+				segment.mainBytes -= victim.weight;
+				this.data.remove(victim.key, victim);
+				this.evictions.incrementAndGet();
+			}
+			if (admit
+					&& segment.windowBytes + segment.mainBytes + candidate.weight <= budget) {
+				segment.main.put(candidate.key, candidate);
+				segment.mainBytes += candidate.weight;
+			} else {
+				this.data.remove(candidate.key, candidate);
+				this.evictions.incrementAndGet();
+			}
+		}
+		final Iterator<Node> mainIt = segment.main.values().iterator();
+		while (segment.windowBytes + segment.mainBytes > budget && mainIt.hasNext()) {
+			final Node victim = mainIt.next();
+			mainIt.remove();
+			segment.mainBytes -= victim.weight;
+			this.data.remove(victim.key, victim);
+			this.evictions.incrementAndGet();
+		}
+		// only if large entries take most of the budget
+		final Iterator<Node> windowIt = segment.window.values().iterator();
+		while (segment.windowBytes > budget && segment.window.size() > 1) {
+			final Node victim = windowIt.next();
+			windowIt.remove();
+			segment.windowBytes -= victim.weight;
+			this.data.remove(victim.key, victim);
+			this.evictions.incrementAndGet();
+		}
+	}
+
+	private void remove(final Node node) {
+		final Segment segment = segmentOf(node);
+		segment.lock();
+		try {
+			if (this.data.remove(node.key, node)) {
+				unlink(segment, node);
+			}
+		} finally {
+			segment.unlock();
+		}
+	}
+
+	@Override
+	public void invalidate(final Object key) {
+		final Node node = this.data.get(key);
+		if (node != null) {
+			remove(node);
+		}
+	}
+
+	@Override
+	public void invalidateAll() {
+		for (final Segment segment : this.segments) {
+			segment.lock();
+			try {
+				for (final Node node : segment.window.values()) {
+					this.data.remove(node.key, node);
+				}
+				for (final Node node : segment.main.values()) {
+					this.data.remove(node.key, node);
+				}
+				segment.window.clear();
+				segment.main.clear();
+				segment.windowBytes = 0;
+				segment.mainBytes = 0;
+			} finally {
+				segment.unlock();
+			}
+		}
+		this.large.lock();
+		try {
+			for (final Node node : this.large.main.values()) {
+				this.data.remove(node.key, node);
+			}
+			this.large.main.clear();
+			this.large.mainBytes = 0;
+			this.largeBytes = 0;
+		} finally {
+			this.large.unlock();
+		}
+	}
+
+	/**
+	 * Removes expired entries
+	 */
+	@Override
+	public void cleanUp() {
+		final long now = System.nanoTime();
+		for (final Node node : this.data.values()) {
+			if (isExpired(node, now)) {
+				remove(node);
+			}
+		}
+	}
+
+	@Override
+	public long size() {
+		return this.data.size();
+	}
+
+	/**
+	 * @return estimated size of all entries in bytes
+	 */
+	public long getBytes() {
+		long bytes = 0;
+		for (final Segment segment : this.segments) {
+			segment.lock();
+			try {
+				bytes += segment.windowBytes + segment.mainBytes;
+			} finally {
+				segment.unlock();
+			}
+		}
+		return bytes + this.largeBytes;
+	}
+
+	public long getMaxBytes() {
+		return this.maxBytes;
+	}
+
+	@Override
+	public CacheStats stats() {
+		return new CacheStats(this.hits.get(), this.misses.get(), 0, 0, 0, this.evictions.get());
+	}
+
+	@Override
+	public String toString() {
+		return "InstanceCache entries=" + size() + " bytes=" + getBytes() + "/" + this.maxBytes
+				+ " " + stats();
+	}
+
+}
@@ -2,22 +2,18 @@ package org.xydra.store.impl.gae;
 
 import java.util.concurrent.TimeUnit;
 
+import org.xydra.annotations.Setting;
 import org.xydra.log.api.Logger;
 import org.xydra.log.api.LoggerFactory;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
-
 /**
  * A cache shared by the whole JVM. On GAE thats ca. 128 MB on a small instance
  * minus application code (ca. 64 MB). So storing more than 64 MB here will
  * result in a forced reboot.
  *
- * TODO Needs better usage of space. Some items are almost must-cache, others
- * are nice-to-cache. Add different importance levels & expire dates within each
- * layer.
- *
- * Config: Entries expire after 30 minutes.
+ * Config: The estimated size of all entries is kept below
+ * {@link #MAX_BYTES}; entries expire after 30 minutes without access. See
+ * {@link InstanceCache} for which entries are kept.
  *
  * @author xamde
  */
@@ -25,19 +21,17 @@ public class InstanceContext {
 
 	private static final Logger log = LoggerFactory.getLogger(InstanceContext.class);
 
-	private static Cache<String, Object> sharedCache;
+	@Setting("")
+	public static final long MAX_BYTES = 32 * 1024 * 1024;
+
+	private static final InstanceCache sharedCache = new InstanceCache(MAX_BYTES, 30,
+			TimeUnit.MINUTES);
 
 	/**
-	 * @return the static cache. Use with care (about race conditions).
+	 * @return the static cache. Reads and writes are thread-safe, but values
+	 *         that are changed after being put are shared between threads.
 	 */
-	public static synchronized Cache<String, Object> getInstanceCache() {
-		if (sharedCache == null) {
-			log.info("Created InstanceContext");
-			// use Guava limited cache here to avoid memory leak
-			sharedCache = CacheBuilder.newBuilder().expireAfterAccess(30, TimeUnit.MINUTES)
-					.maximumSize(100).build();
-			// new ConcurrentHashMap<String,Object>();
-		}
+	public static InstanceCache getInstanceCache() {
 		return sharedCache;
 	}
 
@@ -46,10 +40,8 @@ public class InstanceContext {
 	 */
 	public static void clear() {
 		log.info("Cleared InstanceContext");
-		if (sharedCache != null) {
-			sharedCache.invalidateAll();
-			sharedCache.cleanUp();
-		}
+		sharedCache.invalidateAll();
+		sharedCache.cleanUp();
 	}
 
 }
@@ -10,8 +10,6 @@ import org.xydra.store.impl.gae.changes.RevisionInfo;
 import org.xydra.xgae.annotations.XGaeOperation;
 import org.xydra.xgae.util.XGaeDebugHelper;
 
-import com.google.common.cache.Cache;
-
 /**
  * The {@link InstanceRevisionManager} is
  * <ol>
@@ -131,19 +129,23 @@ public class InstanceRevisionManager {
 	 * @return the instance-wide cache {@link RevisionInfo} for the modelAddress
 	 *         of this {@link InstanceRevisionManager}. Never null. If no cached
 	 *         info was found, a "know nothing"-entry is created, locally
-	 *         cached, and returned.
+	 *         cached, and returned. The info is changed in place, but its
+	 *         size does not change, so it is not re-weighed in the
+	 *         {@link InstanceCache}.
 	 */
 	public RevisionInfo getInstanceRevisionInfo() {
-		final Cache<String, Object> instanceContext = InstanceContext.getInstanceCache();
+		final InstanceCache instanceContext = InstanceContext.getInstanceCache();
 		final String key = this.modelAddress + "/revisions";
-		synchronized (instanceContext) {
-			RevisionInfo instanceRevInfo = (RevisionInfo) instanceContext.getIfPresent(key);
-			if (instanceRevInfo == null) {
-				instanceRevInfo = new RevisionInfo(".instance-rev" + this.modelAddress);
-				instanceContext.put(key, instanceRevInfo);
+		RevisionInfo instanceRevInfo = (RevisionInfo) instanceContext.getIfPresent(key);
+		if (instanceRevInfo == null) {
+			instanceRevInfo = new RevisionInfo(".instance-rev" + this.modelAddress);
+			final RevisionInfo existing = (RevisionInfo) instanceContext.putIfAbsent(key,
+					instanceRevInfo);
+			if (existing != null) {
+				instanceRevInfo = existing;
 			}
-			return instanceRevInfo;
 		}
+		return instanceRevInfo;
 	}
 
 	@Override
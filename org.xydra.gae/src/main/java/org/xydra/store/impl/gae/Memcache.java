@@ -1,9 +1,13 @@
 package org.xydra.store.impl.gae;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import org.xydra.store.impl.gae.changes.KeyStructure;
 import org.xydra.xgae.XGae;
@@ -23,6 +27,14 @@ public class Memcache {
 	public static final SEntity NULL_ENTITY = XGae.get().datastore()
 			.createEntity(XGae.get().datastore().createKey(NULL_ENTITY_KIND, "null"));
 
+	/**
+	 * Memcache values are limited to 1 MB, this leaves room for the key and
+	 * the serialisation overhead
+	 */
+	public static final int MAX_CHUNK_SIZE = 1000 * 1000;
+
+	private static final Random random = new Random();
+
 	private static boolean useMemache_ = true;
 
 	public static Object get(final SKey key) {
@@ -77,4 +89,97 @@ public class Memcache {
 		XGae.get().memcache().putChecked(KeyStructure.toString(key), value);
 	}
 
+	/**
+	 * Stores a value that may be larger than a single memcache value. The bytes
+	 * are split into chunks of at most chunkSize bytes, which are stored under
+	 * keys derived from key and a random id. The header under key itself, which
+	 * lists the chunks, is written last, so readers never see a partially
+	 * written value and concurrent puts to the same key do not mix their
+	 * chunks.
+	 *
+	 * @param key
+	 * @param bytes
+	 *            must not be changed afterwards
+	 * @param chunkSize
+	 *            at most {@link #MAX_CHUNK_SIZE}
+	 * @return the number of chunks that have been written, 0 if memcache is
+	 *         not used
+	 * @throws IOException
+	 *             if memcache did not accept a value
+	 */
+	@XGaeOperation(memcacheWrite = true)
+	public static int putChunked(final SKey key, final byte[] bytes, final int chunkSize)
+			throws IOException {
+		assert chunkSize > 0 && chunkSize <= MAX_CHUNK_SIZE;
+		if (!useMemache_) {
+			return 0;
+		}
+		final String keyString = KeyStructure.toString(key);
+		final long id = random.nextLong();
+		final int chunks = Math.max(1, (bytes.length + chunkSize - 1) / chunkSize);
+		for (int i = 0; i < chunks; i++) {
+			final int from = i * chunkSize;
+			final byte[] chunk = new byte[Math.min(chunkSize, bytes.length - from)];
+			System.arraycopy(bytes, from, chunk, 0, chunk.length);
+			XGae.get().memcache().putChecked(chunkKey(keyString, id, i), chunk);
+		}
+		XGae.get().memcache().putChecked(keyString,
+				new long[] { id, bytes.length, chunks });
+		return chunks;
+	}
+
+	private static String chunkKey(final String key, final long id, final int i) {
+		return key + "#" + id + "#" + i;
+	}
+
+	/**
+	 * Reads values written by {@link #putChunked(SKey, byte[], int)} with two
+	 * batch requests, one for all headers and one for all chunks.
+	 *
+	 * @param keys
+	 *            never null
+	 * @return the complete values that were found, by key. Values of which a
+	 *         chunk has been evicted are missing. Never returns null.
+	 */
+	@XGaeOperation(memcacheRead = true)
+	public static Map<String, byte[]> getChunked(final Collection<String> keys) {
+		final Map<String, Object> headers = getEntities(keys);
+		final List<String> chunkKeys = new ArrayList<String>();
+		for (final Map.Entry<String, Object> entry : headers.entrySet()) {
+			if (entry.getValue() instanceof long[]) {
+				final long[] header = (long[]) entry.getValue();
+				for (int i = 0; i < header[2]; i++) {
+					chunkKeys.add(chunkKey(entry.getKey(), header[0], i));
+				}
+			}
+		}
+		if (chunkKeys.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		final Map<String, Object> chunks = getEntities(chunkKeys);
+
+		final Map<String, byte[]> result = new HashMap<String, byte[]>();
+		for (final Map.Entry<String, Object> entry : headers.entrySet()) {
+			if (!(entry.getValue() instanceof long[])) {
+				continue;
+			}
+			final long[] header = (long[]) entry.getValue();
+			final byte[] bytes = new byte[(int) header[1]];
+			int pos = 0;
+			for (int i = 0; i < header[2]; i++) {
+				final Object chunk = chunks.get(chunkKey(entry.getKey(), header[0], i));
+				if (!(chunk instanceof byte[])
+						|| pos + ((byte[]) chunk).length > bytes.length) {
+					break;
+				}
+				System.arraycopy(chunk, 0, bytes, pos, ((byte[]) chunk).length);
+				pos += ((byte[]) chunk).length;
+			}
+			if (pos == bytes.length) {
+				result.put(entry.getKey(), bytes);
+			}
+		}
+		return result;
+	}
+
 }
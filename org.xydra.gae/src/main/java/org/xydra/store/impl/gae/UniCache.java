@@ -2,8 +2,12 @@ package org.xydra.store.impl.gae;
 
 import java.io.Serializable;
 import java.util.ConcurrentModificationException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.xydra.annotations.NeverNull;
+import org.xydra.annotations.Setting;
 import org.xydra.log.api.Logger;
 import org.xydra.log.api.LoggerFactory;
 import org.xydra.xgae.XGae;
@@ -11,11 +15,16 @@ import org.xydra.xgae.datastore.api.DatastoreFailureException;
 import org.xydra.xgae.datastore.api.SEntity;
 import org.xydra.xgae.datastore.api.SKey;
 
-import com.google.common.cache.Cache;
-
 /**
  * A universal <em>cache</em> system for instanceCache, memcache and datastore.
  *
+ * Hits, misses, fills and latencies of each tier are recorded in
+ * {@link UniCacheMetrics}.
+ *
+ * With {@link StorageOptions#createAdaptive(boolean, boolean, boolean)} keys
+ * that are read often from memcache or the datastore are promoted to the
+ * instance cache. Every {@link #EVALUATE_EVERY} gets, promoted keys that had
+ * no instance cache hits since the last evaluation are demoted again.
  *
  * @author xamde
  *
@@ -32,6 +41,7 @@ public class UniCache<T> {
 		boolean memcache;
 		boolean datastore;
 		boolean computeIfNull;
+		boolean adaptive;
 
 		/**
 		 * @param instance
@@ -80,10 +90,32 @@ public class UniCache<T> {
 			return so;
 		}
 
+		/**
+		 * Hot keys are promoted to the instance cache on their own, cold ones
+		 * are demoted again.
+		 *
+		 * @param memcache
+		 *            true if value should be stored in shared but volatile
+		 *            memcache
+		 * @param datastore
+		 *            true if value should be stored in persistent but slow
+		 *            datastore
+		 * @param computeIfNull
+		 *            see {@link #create(int, boolean, boolean, boolean)}
+		 * @return options objects
+		 */
+		public static StorageOptions createAdaptive(final boolean memcache,
+				final boolean datastore, final boolean computeIfNull) {
+			final StorageOptions so = create(0, memcache, datastore, computeIfNull);
+			so.adaptive = true;
+			return so;
+		}
+
 		@Override
 		public String toString() {
 			return "instance:" + this.instanceSize + "," + "memcache:" + this.memcache + ","
-					+ "datastore:" + this.datastore + " computeIfNull?" + this.computeIfNull;
+					+ "datastore:" + this.datastore + " computeIfNull?" + this.computeIfNull
+					+ (this.adaptive ? " adaptive" : "");
 		}
 
 		public boolean isComputeIfNull() {
@@ -91,6 +123,29 @@ public class UniCache<T> {
 		}
 	}
 
+	/** Reads from a lower tier within one evaluation period to promote a key */
+	@Setting("")
+	static final int PROMOTE_HITS = 3;
+
+	@Setting("")
+	static final int EVALUATE_EVERY = 256;
+
+	@Setting("")
+	static final int MAX_TRACKED_KEYS = 1024;
+
+	/**
+	 * Reads of one key since the last evaluation, for adaptive storage options
+	 */
+	private static class Heat {
+		final AtomicInteger lowerTierHits = new AtomicInteger();
+		final AtomicInteger instanceHits = new AtomicInteger();
+		volatile boolean promoted = false;
+	}
+
+	private final Map<String, Heat> heat = new ConcurrentHashMap<String, Heat>();
+
+	private final AtomicInteger adaptiveGets = new AtomicInteger();
+
 	private CacheEntryHandler<T> entryHandler;
 
 	private String kindName;
@@ -123,21 +178,36 @@ public class UniCache<T> {
 	 *            where to put
 	 */
 	public void put(final String key, final T value, final StorageOptions storeOpts) {
-		if (storeOpts.instanceSize > 0) {
-			final Cache<String, Object> instanceCache = InstanceContext.getInstanceCache();
-			synchronized (instanceCache) {
-				instanceCache.put(key, value);
-			}
+		if (storeOpts.instanceSize > 0 || storeOpts.adaptive && isPromoted(key)) {
+			final long start = System.nanoTime();
+			InstanceContext.getInstanceCache().put(key, value);
+			UniCacheMetrics.fill(this.kindName, UniCacheMetrics.INSTANCE, System.nanoTime()
+					- start);
 		}
+		final boolean sampleSize = (storeOpts.memcache || storeOpts.datastore)
+				&& UniCacheMetrics.sampleSize();
 		if (storeOpts.memcache) {
+			final long start = System.nanoTime();
 			final Serializable memcacheValue = this.entryHandler.toSerializable(value);
 			XGae.get().memcache().put(key, memcacheValue);
+			UniCacheMetrics.fill(this.kindName, UniCacheMetrics.MEMCACHE, System.nanoTime()
+					- start);
+			if (sampleSize) {
+				UniCacheMetrics.size(this.kindName, UniCacheMetrics.MEMCACHE, memcacheValue);
+			}
 		}
 		if (storeOpts.datastore) {
+			final long start = System.nanoTime();
 			final SKey datastoreKey = createCacheKey(key);
 			try {
 				final SEntity entity = this.entryHandler.toEntity(datastoreKey, value);
 				XGae.get().datastore().sync().putEntity(entity);
+				UniCacheMetrics.fill(this.kindName, UniCacheMetrics.DATASTORE, System.nanoTime()
+						- start);
+				if (sampleSize) {
+					UniCacheMetrics.size(this.kindName, UniCacheMetrics.DATASTORE,
+							this.entryHandler.toSerializable(value));
+				}
 			} catch (final ConcurrentModificationException cme) {
 				// assume thats fine
 			} catch (final DatastoreFailureException e) {
@@ -155,39 +225,142 @@ public class UniCache<T> {
 	 *            where to look
 	 * @return null or stored entity
 	 */
-	@SuppressWarnings("unchecked")
 	public T get(final String key, final StorageOptions storeOpts) {
-		if (storeOpts.instanceSize > 0) {
-			final Cache<String, Object> instanceCache = InstanceContext.getInstanceCache();
-			Object o = null;
-			synchronized (instanceCache) {
-				o = instanceCache.getIfPresent(key);
+		final boolean adaptive = storeOpts.adaptive && storeOpts.instanceSize == 0;
+		try {
+			return getFromTiers(key, storeOpts, adaptive);
+		} finally {
+			if (adaptive && this.adaptiveGets.incrementAndGet() % EVALUATE_EVERY == 0) {
+				evaluate();
 			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private T getFromTiers(final String key, final StorageOptions storeOpts,
+			final boolean adaptive) {
+		if (storeOpts.instanceSize > 0 || adaptive && isPromoted(key)) {
+			final long start = System.nanoTime();
+			final Object o = InstanceContext.getInstanceCache().getIfPresent(key);
 			if (o != null) {
+				UniCacheMetrics.hit(this.kindName, UniCacheMetrics.INSTANCE, System.nanoTime()
+						- start);
+				if (adaptive) {
+					final Heat h = this.heat.get(key);
+					if (h != null) {
+						h.instanceHits.incrementAndGet();
+					}
+				}
 				log.debug("Return '" + key + "' from instance cache");
 				return (T) o;
 			}
+			UniCacheMetrics.miss(this.kindName, UniCacheMetrics.INSTANCE, System.nanoTime()
+					- start);
 		}
 		if (storeOpts.memcache) {
+			final long start = System.nanoTime();
 			final Object o = XGae.get().memcache().get(key);
 			if (o != null) {
+				UniCacheMetrics.hit(this.kindName, UniCacheMetrics.MEMCACHE, System.nanoTime()
+						- start);
 				log.debug("Return '" + key + "' from memcache");
-				return this.entryHandler.fromSerializable((Serializable) o);
+				final T value = this.entryHandler.fromSerializable((Serializable) o);
+				if (adaptive) {
+					onLowerTierHit(key, value);
+				}
+				return value;
 			}
+			UniCacheMetrics.miss(this.kindName, UniCacheMetrics.MEMCACHE, System.nanoTime()
+					- start);
 		}
 		if (storeOpts.datastore) {
+			final long start = System.nanoTime();
 			final SKey datastoreKey = createCacheKey(key);
 			final SEntity entity = XGae.get().datastore().sync().getEntity(datastoreKey);
 			if (entity != null) {
+				UniCacheMetrics.hit(this.kindName, UniCacheMetrics.DATASTORE, System.nanoTime()
+						- start);
 				log.debug("Return '" + key + "' from datastore entity");
-				return this.entryHandler.fromEntity(entity);
+				final T value = this.entryHandler.fromEntity(entity);
+				if (adaptive) {
+					onLowerTierHit(key, value);
+				}
+				return value;
 			}
+			UniCacheMetrics.miss(this.kindName, UniCacheMetrics.DATASTORE, System.nanoTime()
+					- start);
 		}
 
 		log.debug(key + " not found in any cache. Opts: " + storeOpts);
 		return null;
 	}
 
+	private boolean isPromoted(final String key) {
+		final Heat h = this.heat.get(key);
+		return h != null && h.promoted;
+	}
+
+	/**
+	 * Promotes key once it has been read often enough from memcache or the
+	 * datastore. A promoted key that got evicted from the instance cache is
+	 * put there again.
+	 */
+	private void onLowerTierHit(final String key, final T value) {
+		Heat h = this.heat.get(key);
+		if (h == null) {
+			if (this.heat.size() >= MAX_TRACKED_KEYS) {
+				return;
+			}
+			h = new Heat();
+			this.heat.put(key, h);
+		}
+		if (h.lowerTierHits.incrementAndGet() >= PROMOTE_HITS || h.promoted) {
+			if (!h.promoted) {
+				log.debug("Promote '" + key + "' to instance cache");
+			}
+			h.promoted = true;
+			InstanceContext.getInstanceCache().put(key, value);
+		}
+	}
+
+	/**
+	 * Demotes promoted keys without instance cache hits since the last
+	 * evaluation and halves the read counts of all other keys.
+	 */
+	private void evaluate() {
+		for (final Map.Entry<String, Heat> e : this.heat.entrySet()) {
+			final Heat h = e.getValue();
+			if (h.promoted) {
+				if (h.instanceHits.getAndSet(0) == 0) {
+					log.debug("Demote '" + e.getKey() + "' from instance cache");
+					h.promoted = false;
+					InstanceContext.getInstanceCache().invalidate(e.getKey());
+					this.heat.remove(e.getKey());
+				}
+				h.lowerTierHits.set(0);
+			} else {
+				final int halved = h.lowerTierHits.get() / 2;
+				h.lowerTierHits.set(halved);
+				if (halved == 0) {
+					this.heat.remove(e.getKey());
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return number of keys currently promoted by the adaptive mode
+	 */
+	public int getPromotedCount() {
+		int count = 0;
+		for (final Heat h : this.heat.values()) {
+			if (h.promoted) {
+				count++;
+			}
+		}
+		return count;
+	}
+
 	/**
 	 * @param s
 	 *            must be unique
@@ -0,0 +1,148 @@
+package org.xydra.store.impl.gae;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xydra.perf.Stats;
+import org.xydra.sharedutils.ReflectionUtils;
+
+/**
+ * Records how the tiers of all {@link UniCache UniCaches} perform, per kind
+ * name and tier.
+ *
+ * For each tier (instance, memcache, datastore) the counters
+ * "UniCache.[kind].[tier].hit", ".miss" and ".fill" and the timings ".get" and
+ * ".put" are recorded. ".bytes" sums the serialised sizes of a sample of the
+ * values put into memcache and the datastore.
+ *
+ * The statistics are kept twice: {@link #getSharedStats()} across all requests
+ * of this instance and, between {@link #startRequest()} and
+ * {@link #endRequest()}, for the current request (thread) only.
+ * {@link GaePlatformRuntime} starts and ends them with each request.
+ *
+ * @author xamde
+ */
+public class UniCacheMetrics {
+
+	public static final String INSTANCE = "instance";
+
+	public static final String MEMCACHE = "memcache";
+
+	public static final String DATASTORE = "datastore";
+
+	/** only every n-th put is serialised to measure its size */
+	private static final int SIZE_SAMPLE_RATE = 16;
+
+	private static final Stats shared = new Stats();
+
+	private static final ThreadLocal<Stats> request = new ThreadLocal<Stats>();
+
+	private static final AtomicLong puts = new AtomicLong();
+
+	/**
+	 * @return statistics of all requests since start or {@link #clear()}
+	 */
+	public static Stats getSharedStats() {
+		return shared;
+	}
+
+	/**
+	 * Starts recording statistics of the current thread in addition to the
+	 * shared ones.
+	 *
+	 * @return the statistics of the current request
+	 */
+	public static Stats startRequest() {
+		final Stats stats = new Stats();
+		request.set(stats);
+		return stats;
+	}
+
+	/**
+	 * @return the statistics of the current request, or null if none has been
+	 *         started
+	 */
+	public static Stats getRequestStats() {
+		return request.get();
+	}
+
+	/**
+	 * @return the statistics of the request that ends now, or null if none
+	 *         has been started
+	 */
+	public static Stats endRequest() {
+		final Stats stats = request.get();
+		request.remove();
+		return stats;
+	}
+
+	public static void clear() {
+		shared.clear();
+	}
+
+	public static String name(final String kindName, final String tier, final String what) {
+		return "UniCache." + kindName + "." + tier + "." + what;
+	}
+
+	static void hit(final String kindName, final String tier, final long nanos) {
+		count(name(kindName, tier, "hit"));
+		recordDuration(name(kindName, tier, "get"), nanos);
+	}
+
+	static void miss(final String kindName, final String tier, final long nanos) {
+		count(name(kindName, tier, "miss"));
+		recordDuration(name(kindName, tier, "get"), nanos);
+	}
+
+	static void fill(final String kindName, final String tier, final long nanos) {
+		count(name(kindName, tier, "fill"));
+		recordDuration(name(kindName, tier, "put"), nanos);
+	}
+
+	/**
+	 * @return true if the size of the value that is put now should be measured
+	 */
+	static boolean sampleSize() {
+		return puts.incrementAndGet() % SIZE_SAMPLE_RATE == 0;
+	}
+
+	static void size(final String kindName, final String tier, final Serializable value) {
+		final long bytes = ReflectionUtils.sizeOf(value);
+		final String name = name(kindName, tier, "bytes");
+		shared.add(name, bytes);
+		final Stats stats = request.get();
+		if (stats != null) {
+			stats.add(name, bytes);
+		}
+	}
+
+	private static void count(final String name) {
+		shared.count(name);
+		final Stats stats = request.get();
+		if (stats != null) {
+			stats.count(name);
+		}
+	}
+
+	private static void recordDuration(final String name, final long nanos) {
+		shared.recordDuration(name, nanos);
+		final Stats stats = request.get();
+		if (stats != null) {
+			stats.recordDuration(name, nanos);
+		}
+	}
+
+	/**
+	 * @param stats
+	 * @param kindName
+	 * @param tier
+	 * @return the share of gets from the tier that were hits, 0 if there were
+	 *         none
+	 */
+	public static double getHitRatio(final Stats stats, final String kindName, final String tier) {
+		final long hits = stats.getCount(name(kindName, tier, "hit"));
+		final long total = hits + stats.getCount(name(kindName, tier, "miss"));
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+}
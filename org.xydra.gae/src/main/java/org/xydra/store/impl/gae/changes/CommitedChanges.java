@@ -7,12 +7,11 @@ import org.xydra.base.XAddress;
 import org.xydra.log.api.Logger;
 import org.xydra.log.api.LoggerFactory;
 import org.xydra.sharedutils.XyAssert;
+import org.xydra.store.impl.gae.InstanceCache;
 import org.xydra.store.impl.gae.InstanceContext;
 import org.xydra.xgae.util.XGaeDebugHelper;
 import org.xydra.xgae.util.XGaeDebugHelper.Timing;
 
-import com.google.common.cache.Cache;
-
 /**
  * In-memory representation for some change events. Required for
  * {@link GaeChangesServiceImpl3}
@@ -98,14 +97,16 @@ public class CommitedChanges {
 	@SuppressWarnings("unchecked")
 	private Map<Long, GaeChange> getInstanceCommittedChangeCache() {
 		final String key = "changes:" + this.modelAddr;
-		final Cache<String, Object> instanceCache = InstanceContext.getInstanceCache();
-		Map<Long, GaeChange> committedChangeCache;
-		synchronized (instanceCache) {
-			committedChangeCache = (Map<Long, GaeChange>) instanceCache.getIfPresent(key);
-			if (committedChangeCache == null) {
-				log.debug(XGaeDebugHelper.init(INSTANCE_COMMITED_CHANGES_CACHENAME));
-				committedChangeCache = new HashMap<Long, GaeChange>();
-				InstanceContext.getInstanceCache().put(key, committedChangeCache);
+		final InstanceCache instanceCache = InstanceContext.getInstanceCache();
+		Map<Long, GaeChange> committedChangeCache = (Map<Long, GaeChange>) instanceCache
+				.getIfPresent(key);
+		if (committedChangeCache == null) {
+			log.debug(XGaeDebugHelper.init(INSTANCE_COMMITED_CHANGES_CACHENAME));
+			committedChangeCache = new HashMap<Long, GaeChange>();
+			final Map<Long, GaeChange> existing = (Map<Long, GaeChange>) instanceCache
+					.putIfAbsent(key, committedChangeCache);
+			if (existing != null) {
+				committedChangeCache = existing;
 			}
 		}
 		return committedChangeCache;
@@ -0,0 +1,274 @@
+package org.xydra.store.impl.gae.changes;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+import org.xydra.base.XAddress;
+import org.xydra.perf.Stats;
+
+import com.google.common.collect.MapMaker;
+
+/**
+ * The {@link GaeLocks} of the pending changes of one model that are executed
+ * by this instance, indexed by the MOF tree (model, object, field).
+ *
+ * For each address the table knows the changes that lock exactly this address
+ * and the changes that lock a descendant of it. So the changes that conflict
+ * with a lock are found by looking at the lock itself, its (at most three)
+ * ancestors and its descendants, independent of the number of pending
+ * changes.
+ *
+ * Changes of other instances are not known here and still need to be checked
+ * via the change log. Threads waiting for a change of this instance are
+ * notified as soon as it is released instead of polling the datastore.
+ *
+ * {@link #getStats()} records how long locks are held ({@link #STATS_HOLD})
+ * and how long changes wait for other changes ({@link #STATS_WAIT}).
+ *
+ * Thread-safe.
+ *
+ * @author xamde
+ */
+public class LockTable {
+
+	/** time between registering and releasing the locks of a change */
+	public static final String STATS_HOLD = "locks.hold";
+
+	/** time a change waits for a conflicting change to be committed */
+	public static final String STATS_WAIT = "locks.wait";
+
+	/** waits that ended because the other change was released here */
+	public static final String STATS_NOTIFIED = "locks.notified";
+
+	private static final Stats stats = new Stats();
+
+	/**
+	 * Weak values: a table is only needed while a persistence of its model
+	 * uses it, and all pending changes of a model are executed by such a
+	 * persistence.
+	 */
+	private static final ConcurrentMap<XAddress, LockTable> tables = new MapMaker().weakValues()
+			.makeMap();
+
+	/**
+	 * @param modelAddress
+	 * @return the lock table of the model in this instance, which the caller
+	 *         must keep referencing while it uses it
+	 */
+	public static LockTable get(final XAddress modelAddress) {
+		LockTable table = tables.get(modelAddress);
+		if (table == null) {
+			table = new LockTable();
+			final LockTable existing = tables.putIfAbsent(modelAddress, table);
+			if (existing != null) {
+				table = existing;
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * @return statistics of all lock tables of this instance
+	 */
+	public static Stats getStats() {
+		return stats;
+	}
+
+	private static void add(final Map<XAddress, Set<Long>> map, final XAddress address,
+			final long rev) {
+		Set<Long> revs = map.get(address);
+		if (revs == null) {
+			revs = new HashSet<Long>(4);
+			map.put(address, revs);
+		}
+		revs.add(rev);
+	}
+
+	private static void remove(final Map<XAddress, Set<Long>> map, final XAddress address,
+			final long rev) {
+		final Set<Long> revs = map.get(address);
+		if (revs != null && revs.remove(rev) && revs.isEmpty()) {
+			map.remove(address);
+		}
+	}
+
+	private static boolean contains(final Map<XAddress, Set<Long>> map, final XAddress address,
+			final long rev) {
+		final Set<Long> revs = map.get(address);
+		return revs != null && revs.contains(rev);
+	}
+
+	private static void addAll(final Map<XAddress, Set<Long>> map, final XAddress address,
+			final Set<Long> result) {
+		final Set<Long> revs = map.get(address);
+		if (revs != null) {
+			result.addAll(revs);
+		}
+	}
+
+	/** address -> revisions of the changes holding a lock on a descendant */
+	private final Map<XAddress, Set<Long>> descendantHolders = new HashMap<XAddress, Set<Long>>();
+
+	/** address -> revisions of the changes holding exactly this lock */
+	private final Map<XAddress, Set<Long>> holders = new HashMap<XAddress, Set<Long>>();
+
+	/** revision -> locks of the change */
+	private final Map<Long, GaeLocks> locks = new HashMap<Long, GaeLocks>();
+
+	/** revision -> {@link System#nanoTime()} of registering */
+	private final Map<Long, Long> registered = new HashMap<Long, Long>();
+
+	/**
+	 * @param rev
+	 *            of a change that has just registered its locks in the change
+	 *            log
+	 * @param changeLocks
+	 */
+	public synchronized void register(final long rev, final GaeLocks changeLocks) {
+		if (this.locks.put(rev, changeLocks) != null) {
+			return;
+		}
+		this.registered.put(rev, System.nanoTime());
+		for (final XAddress lock : changeLocks) {
+			add(this.holders, lock, rev);
+			for (XAddress a = lock.getParent(); a != null; a = a.getParent()) {
+				add(this.descendantHolders, a, rev);
+			}
+		}
+	}
+
+	/**
+	 * Releases the locks of the change, if it has been registered here, and
+	 * wakes up the threads waiting for it.
+	 *
+	 * @param rev
+	 */
+	public synchronized void release(final long rev) {
+		final GaeLocks changeLocks = this.locks.remove(rev);
+		if (changeLocks == null) {
+			return;
+		}
+		stats.recordDuration(STATS_HOLD, System.nanoTime() - this.registered.remove(rev));
+		for (final XAddress lock : changeLocks) {
+			remove(this.holders, lock, rev);
+			for (XAddress a = lock.getParent(); a != null; a = a.getParent()) {
+				remove(this.descendantHolders, a, rev);
+			}
+		}
+		notifyAll();
+	}
+
+	/**
+	 * @param rev
+	 * @return true if the change has registered its locks here and not yet
+	 *         released them
+	 */
+	public synchronized boolean isRegistered(final long rev) {
+		return this.locks.containsKey(rev);
+	}
+
+	/**
+	 * @return a copy of the revisions of all changes that have registered
+	 *         their locks here and not yet released them
+	 */
+	public synchronized Set<Long> getRegistered() {
+		return new HashSet<Long>(this.locks.keySet());
+	}
+
+	/**
+	 * @return number of changes holding locks
+	 */
+	public synchronized int size() {
+		return this.locks.size();
+	}
+
+	/**
+	 * @param queryLocks
+	 * @return the revisions of all registered changes holding a lock that
+	 *         conflicts with the given ones, see
+	 *         {@link GaeLocks#isConflicting(GaeLocks)}
+	 */
+	public synchronized Set<Long> getConflicting(final GaeLocks queryLocks) {
+		final Set<Long> result = new HashSet<Long>();
+		for (final XAddress lock : queryLocks) {
+			for (XAddress a = lock; a != null; a = a.getParent()) {
+				addAll(this.holders, a, result);
+			}
+			addAll(this.descendantHolders, lock, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Like {@link #getConflicting(GaeLocks)}, but also adds the revisions of
+	 * all registered changes to the given set in the same atomic step. So each
+	 * change registered at that moment is either in the result or known not to
+	 * conflict, even if it is released right afterwards.
+	 *
+	 * @param queryLocks
+	 * @param registered
+	 *            to which the revisions of all registered changes are added
+	 * @return the revisions of all registered changes holding a lock that
+	 *         conflicts with the given ones
+	 */
+	public synchronized Set<Long> getConflicting(final GaeLocks queryLocks,
+			final Set<Long> registered) {
+		registered.addAll(this.locks.keySet());
+		return getConflicting(queryLocks);
+	}
+
+	/**
+	 * @param rev
+	 * @param queryLocks
+	 * @return null if the change is not registered here, otherwise if it holds
+	 *         a lock that conflicts with the given ones
+	 */
+	public synchronized Boolean isConflicting(final long rev, final GaeLocks queryLocks) {
+		if (!this.locks.containsKey(rev)) {
+			return null;
+		}
+		for (final XAddress lock : queryLocks) {
+			for (XAddress a = lock; a != null; a = a.getParent()) {
+				if (contains(this.holders, a, rev)) {
+					return true;
+				}
+			}
+			if (contains(this.descendantHolders, lock, rev)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Waits until the change is released or the time is up.
+	 *
+	 * @param rev
+	 * @param maxMillis
+	 * @return true if the change is not registered (anymore)
+	 */
+	public synchronized boolean awaitRelease(final long rev, final long maxMillis) {
+		if (!this.locks.containsKey(rev)) {
+			return true;
+		}
+		final long end = System.currentTimeMillis() + maxMillis;
+		long left = maxMillis;
+		while (left > 0 && this.locks.containsKey(rev)) {
+			try {
+				wait(left);
+			} catch (final InterruptedException e) {
+				// ignore interrupt
+			}
+			left = end - System.currentTimeMillis();
+		}
+		final boolean released = !this.locks.containsKey(rev);
+		if (released) {
+			stats.count(STATS_NOTIFIED);
+		}
+		return released;
+	}
+
+}
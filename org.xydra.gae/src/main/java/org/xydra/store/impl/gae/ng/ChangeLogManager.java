@@ -3,10 +3,9 @@ package org.xydra.store.impl.gae.ng;
 import java.util.ArrayList;
 import java.util.ConcurrentModificationException;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
@@ -16,6 +15,8 @@ import org.xydra.annotations.Setting;
 import org.xydra.base.XAddress;
 import org.xydra.base.XId;
 import org.xydra.base.change.XEvent;
+import org.xydra.index.iterator.AbstractFilteringIterator;
+import org.xydra.index.iterator.AbstractTransformingIterator;
 import org.xydra.log.api.Logger;
 import org.xydra.log.api.LoggerFactory;
 import org.xydra.sharedutils.XyAssert;
@@ -23,6 +24,7 @@ import org.xydra.store.impl.gae.changes.GaeChange;
 import org.xydra.store.impl.gae.changes.GaeChange.Status;
 import org.xydra.store.impl.gae.changes.GaeLocks;
 import org.xydra.store.impl.gae.changes.KeyStructure;
+import org.xydra.store.impl.gae.changes.LockTable;
 import org.xydra.xgae.XGae;
 import org.xydra.xgae.datastore.api.CommittedButStillApplyingException;
 import org.xydra.xgae.datastore.api.DatastoreFailureException;
@@ -66,6 +68,7 @@ public class ChangeLogManager {
 		XyAssert.xyAssert(change.getStatus().canChange());
 
 		change.commitAndClearLocks(status);
+		LockTable.get(this.modelAddress).release(change.rev);
 
 		XyAssert.xyAssert(change.getStatus() == status);
 	}
@@ -81,89 +84,58 @@ public class ChangeLogManager {
 	}
 
 	/**
-	 * Going down to the data store and fetch the actual content of a models
-	 * change log
+	 * Fetches the change log in a pipeline of batches, see
+	 * {@link ChangeLogPrefetcher}.
 	 *
-	 * @param maxSingleBatchFetchRange
-	 *            for which to fetch changes
-	 * @return a map of revision number -> GaeChange
+	 * @param fetchRange
+	 * @return a map of revision number -> GaeChange, contains no batches after
+	 *         the first batch with a missing revision
 	 */
-	private @NeverNull Map<Long, GaeChange> getChangesInBatch(final Interval maxSingleBatchFetchRange) {
-		/* prepare keys for batch request */
-		final List<SKey> keys = new ArrayList<SKey>();
-		for (long rev = maxSingleBatchFetchRange.start; rev <= maxSingleBatchFetchRange.end; rev++) {
-			final SKey key = KeyStructure.createChangeKey(this.modelAddress, rev);
-			keys.add(key);
-		}
-		/* execute batch request */
-		final Map<SKey, SEntity> entities = XGae.get().datastore().sync().getEntities(keys);
-
-		/* process result */
+	public @NeverNull Map<Long, GaeChange> getChanges(final Interval fetchRange) {
 		final Map<Long, GaeChange> changes = new HashMap<Long, GaeChange>();
-		for (final Entry<SKey, SEntity> entry : entities.entrySet()) {
-			final SKey key = entry.getKey();
-			final long rev = KeyStructure.getRevisionFromChangeKey(key);
-			final SEntity entity = entry.getValue();
-			if (entity != null) {
-				final GaeChange change = new GaeChange(this.modelAddress, rev, entity);
-				changes.put(rev, change);
-			}
+		final ChangeLogPrefetcher prefetcher = new ChangeLogPrefetcher(this.modelAddress,
+				fetchRange);
+		Map<Long, GaeChange> batch;
+		while ((batch = prefetcher.nextBatch()) != null) {
+			changes.putAll(batch);
 		}
-
-		log.debug("BatchGet changes in " + maxSingleBatchFetchRange + " => " + changes.size()
-				+ " changes");
-
 		return changes;
 	}
 
 	/**
-	 * @param fetchRange
-	 * @return a map of revision number -> GaeChange
+	 * Events are decoded while the following batches of changes are still
+	 * being fetched.
+	 *
+	 * @param interval
+	 * @return the events of all changes in interval up to the first missing
+	 *         revision
 	 */
-	public @NeverNull Map<Long, GaeChange> getChanges(final Interval fetchRange) {
-		final Map<Long, GaeChange> changes = new HashMap<Long, GaeChange>();
-
-		if (!fetchRange.isEmpty()) {
-			/**
-			 * get requested events in batches of MAXIMAL_CHANGES_FETCH_SIZE and
-			 * use smaller ranges when exceptions occur
-			 */
-			Interval singleBatchFetchRange = fetchRange.getSubInterval(MAXIMAL_CHANGES_FETCH_SIZE);
-			boolean hadNullChanges = false;
-			do {
-				try {
-					final Map<Long, GaeChange> newChanges = getChangesInBatch(singleBatchFetchRange);
-					changes.putAll(newChanges);
-					if (newChanges.size() < singleBatchFetchRange.size()) {
-						hadNullChanges = true;
+	public @NeverNull Iterator<XEvent> streamEventsInInterval(final Interval interval) {
+		log.debug("Streaming events from changes in " + interval + " for " + this.modelAddress);
+		final Iterator<GaeChange> changes = new ChangeLogPrefetcher(this.modelAddress, interval);
+		return new AbstractTransformingIterator<GaeChange, XEvent>(
+				new AbstractFilteringIterator<GaeChange>(changes) {
+
+					@Override
+					protected boolean matchesFilter(final GaeChange change) {
+						return change.getStatus().changedSomething();
 					}
-				} catch (final Throwable t) {
-					log.warn("Could not read a change interval " + singleBatchFetchRange, t);
-					singleBatchFetchRange = singleBatchFetchRange.firstHalf();
-				}
-				singleBatchFetchRange = singleBatchFetchRange
-						.moveRightAndShrinkToKeepEndMaxAt(fetchRange.end);
-			} while (singleBatchFetchRange.end < fetchRange.end && !hadNullChanges);
-		}
-		return changes;
-	}
+				}) {
 
-	public @NeverNull List<XEvent> getEventsInInterval(final Interval interval) {
-		log.debug("Getting events from changes in " + interval + " for " + this.modelAddress);
-		final LinkedList<XEvent> events = new LinkedList<XEvent>();
-		final Map<Long, GaeChange> changes = getChanges(interval);
-		for (long rev = interval.start; rev <= interval.end; rev++) {
-			final GaeChange change = changes.get(rev);
-			if (change == null) {
-				break;
+			@Override
+			public XEvent transform(final GaeChange change) {
+				return change.getEvent();
 			}
+		};
+	}
 
-			if (change.getStatus().changedSomething()) {
-				events.add(change.getEvent());
-			}
+	public @NeverNull List<XEvent> getEventsInInterval(final Interval interval) {
+		final List<XEvent> events = new ArrayList<XEvent>();
+		final Iterator<XEvent> it = streamEventsInInterval(interval);
+		while (it.hasNext()) {
+			events.add(it.next());
 		}
-		log.debug("Got " + events.size() + " events from " + changes.size() + " changes in "
-				+ interval + " for " + this.modelAddress);
+		log.debug("Got " + events.size() + " events in " + interval + " for " + this.modelAddress);
 		return events;
 	}
 
@@ -0,0 +1,315 @@
+package org.xydra.store.impl.gae.ng;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.xydra.annotations.NeverNull;
+import org.xydra.annotations.Setting;
+import org.xydra.base.XAddress;
+import org.xydra.log.api.Logger;
+import org.xydra.log.api.LoggerFactory;
+import org.xydra.store.impl.gae.changes.GaeChange;
+import org.xydra.store.impl.gae.changes.KeyStructure;
+import org.xydra.xgae.XGae;
+import org.xydra.xgae.datastore.api.SEntity;
+import org.xydra.xgae.datastore.api.SKey;
+
+/**
+ * Reads a range of the change log of a model in a pipeline of asynchronous
+ * batch gets and iterates over the changes in revision order, up to the first
+ * revision that has not been taken.
+ *
+ * Several batches are in flight while the caller is processing the changes of
+ * an earlier batch, so the round trips of consecutive batches overlap with
+ * each other and with decoding the events.
+ *
+ * The pipeline adapts to the datastore: Each completely filled batch doubles
+ * the size of later batches up to
+ * {@link ChangeLogManager#MAXIMAL_CHANGES_FETCH_SIZE}. Each time the caller
+ * has to wait for a batch one more batch is kept in flight, up to
+ * {@link #MAX_DEPTH}. If several batches in a row are ready before they are
+ * needed, one batch less is kept in flight. A batch that finds a missing
+ * revision ends the log; batches after it are cancelled.
+ *
+ * Not thread-safe.
+ *
+ * @author xamde
+ */
+public class ChangeLogPrefetcher implements Iterator<GaeChange> {
+
+	private static final Logger log = LoggerFactory.getLogger(ChangeLogPrefetcher.class);
+
+	/**
+	 * Size of the first batch of ranges that do not fit into a single batch.
+	 * Most reads of open ranges end after a few revisions.
+	 */
+	@Setting("")
+	static final int INITIAL_BATCH_SIZE = 32;
+
+	@Setting("")
+	static final int MAX_DEPTH = 8;
+
+	/** Number of batches in a row that were ready before depth is reduced */
+	private static final int READY_STREAK_TO_SHRINK = 4;
+
+	/** Shorter waits for a batch do not count as latency */
+	private static final long WAIT_THRESHOLD_NANOS = 1000000;
+
+	private static class Batch {
+
+		final Interval range;
+
+		final Future<Map<SKey, SEntity>> future;
+
+		Batch(final Interval range, final Future<Map<SKey, SEntity>> future) {
+			this.range = range;
+			this.future = future;
+		}
+
+	}
+
+	private final XAddress modelAddress;
+
+	private final long end;
+
+	/** first revision that has not been requested yet */
+	private long nextToSubmit;
+
+	/** true once the end of the range has been requested */
+	private boolean allSubmitted;
+
+	/** true once a missing revision has been found or the range is done */
+	private boolean ended;
+
+	private final LinkedList<Batch> inFlight = new LinkedList<Batch>();
+
+	private int batchSize;
+
+	private int depth = 1;
+
+	private int readyStreak = 0;
+
+	private Map<Long, GaeChange> currentBatch;
+
+	private Interval currentRange;
+
+	/** next revision returned by {@link #next()} */
+	private long nextRev;
+
+	private boolean reachedGap = false;
+
+	private int batches = 0;
+
+	private long waitNanos = 0;
+
+	/**
+	 * Starts fetching the first batch right away.
+	 *
+	 * @param modelAddress
+	 * @param range
+	 *            of revisions to fetch, end may be Long.MAX_VALUE
+	 */
+	public ChangeLogPrefetcher(@NeverNull final XAddress modelAddress, @NeverNull final Interval range) {
+		this.modelAddress = modelAddress;
+		this.end = range.end;
+		this.nextToSubmit = range.start;
+		this.nextRev = range.start;
+		this.allSubmitted = range.isEmpty();
+		this.ended = range.isEmpty();
+		this.batchSize = range.size() <= ChangeLogManager.MAXIMAL_CHANGES_FETCH_SIZE ? (int) range
+				.size() : INITIAL_BATCH_SIZE;
+		fill();
+	}
+
+	private void fill() {
+		while (!this.allSubmitted && this.inFlight.size() < this.depth) {
+			final long batchEnd = this.end - this.nextToSubmit < this.batchSize ? this.end
+					: this.nextToSubmit + this.batchSize - 1;
+			final Interval range = new Interval(this.nextToSubmit, batchEnd);
+			final List<SKey> keys = new ArrayList<SKey>((int) range.size());
+			for (long rev = range.start; rev <= range.end; rev++) {
+				keys.add(KeyStructure.createChangeKey(this.modelAddress, rev));
+			}
+			this.inFlight.add(new Batch(range, XGae.get().datastore().async().getEntities(keys)));
+			if (batchEnd == this.end) {
+				this.allSubmitted = true;
+			} else {
+				this.nextToSubmit = batchEnd + 1;
+			}
+		}
+	}
+
+	private Map<SKey, SEntity> await(final Batch batch) {
+		if (batch.future.isDone()) {
+			this.readyStreak++;
+			if (this.readyStreak >= READY_STREAK_TO_SHRINK && this.depth > 1) {
+				this.depth--;
+				this.readyStreak = 0;
+			}
+		} else {
+			this.readyStreak = 0;
+		}
+		final long start = System.nanoTime();
+		try {
+			return batch.future.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return getEntitiesInHalves(batch.range);
+		} catch (final ExecutionException e) {
+			log.warn("Could not read a change interval " + batch.range, e.getCause());
+			this.batchSize = Math.max(1, this.batchSize / 2);
+			return getEntitiesInHalves(batch.range);
+		} finally {
+			final long waited = System.nanoTime() - start;
+			this.waitNanos += waited;
+			if (waited > WAIT_THRESHOLD_NANOS && this.depth < MAX_DEPTH) {
+				this.depth++;
+			}
+		}
+	}
+
+	/**
+	 * Synchronous fallback for a failed batch, splitting the range further on
+	 * each failure.
+	 */
+	private Map<SKey, SEntity> getEntitiesInHalves(final Interval range) {
+		final List<SKey> keys = new ArrayList<SKey>((int) range.size());
+		for (long rev = range.start; rev <= range.end; rev++) {
+			keys.add(KeyStructure.createChangeKey(this.modelAddress, rev));
+		}
+		try {
+			return XGae.get().datastore().sync().getEntities(keys);
+		} catch (final RuntimeException e) {
+			if (range.size() == 1) {
+				throw e;
+			}
+			log.warn("Could not read a change interval " + range, e);
+			final Interval first = range.firstHalf();
+			final Map<SKey, SEntity> result = getEntitiesInHalves(first);
+			result.putAll(getEntitiesInHalves(new Interval(first.end + 1, range.end)));
+			return result;
+		}
+	}
+
+	/**
+	 * @return the changes of the next batch by revision number, or null if
+	 *         the range is done or a previous batch had a missing revision. A
+	 *         returned batch may contain revisions after its first missing
+	 *         revision.
+	 */
+	public Map<Long, GaeChange> nextBatch() {
+		if (this.ended) {
+			return null;
+		}
+		final Batch batch = this.inFlight.poll();
+		if (batch == null) {
+			this.ended = true;
+			return null;
+		}
+		final Map<SKey, SEntity> entities = await(batch);
+		this.batches++;
+
+		final Map<Long, GaeChange> changes = new HashMap<Long, GaeChange>();
+		for (final Entry<SKey, SEntity> entry : entities.entrySet()) {
+			if (entry.getValue() != null) {
+				final long rev = KeyStructure.getRevisionFromChangeKey(entry.getKey());
+				changes.put(rev, new GaeChange(this.modelAddress, rev, entry.getValue()));
+			}
+		}
+		log.debug("BatchGet changes in " + batch.range + " => " + changes.size()
+				+ " changes, depth=" + this.depth);
+
+		if (changes.size() < batch.range.size()) {
+			this.reachedGap = true;
+			close();
+		} else {
+			if (this.batchSize < ChangeLogManager.MAXIMAL_CHANGES_FETCH_SIZE) {
+				this.batchSize = Math.min(2 * this.batchSize,
+						ChangeLogManager.MAXIMAL_CHANGES_FETCH_SIZE);
+			}
+			/* keep the datastore busy while the caller works on this batch */
+			fill();
+		}
+		this.currentBatch = changes;
+		this.currentRange = batch.range;
+		return changes;
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (this.currentRange == null || this.nextRev > this.currentRange.end) {
+			if (this.currentRange != null && this.reachedGap) {
+				return false;
+			}
+			if (nextBatch() == null) {
+				return false;
+			}
+		}
+		return this.currentBatch.containsKey(this.nextRev);
+	}
+
+	@Override
+	public GaeChange next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		final GaeChange change = this.currentBatch.get(this.nextRev);
+		this.nextRev++;
+		return change;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Cancels all batches in flight. Changes of the current batch can still be
+	 * iterated.
+	 */
+	public void close() {
+		this.ended = true;
+		this.allSubmitted = true;
+		for (final Batch batch : this.inFlight) {
+			batch.future.cancel(false);
+		}
+		this.inFlight.clear();
+	}
+
+	/**
+	 * @return number of batches received so far
+	 */
+	public int getBatchCount() {
+		return this.batches;
+	}
+
+	/**
+	 * @return number of batches currently kept in flight
+	 */
+	public int getDepth() {
+		return this.depth;
+	}
+
+	/**
+	 * @return size of the next batch
+	 */
+	public int getBatchSize() {
+		return this.batchSize;
+	}
+
+	/**
+	 * @return total time spent waiting for batches in nanoseconds
+	 */
+	public long getWaitNanos() {
+		return this.waitNanos;
+	}
+
+}
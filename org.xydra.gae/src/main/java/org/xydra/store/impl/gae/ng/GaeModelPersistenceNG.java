@@ -1,8 +1,11 @@
 package org.xydra.store.impl.gae.ng;
 
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.Future;
 
 import org.xydra.annotations.Setting;
@@ -32,6 +35,7 @@ import org.xydra.index.iterator.Iterators;
 import org.xydra.index.query.Pair;
 import org.xydra.log.api.Logger;
 import org.xydra.log.api.LoggerFactory;
+import org.xydra.perf.Stats;
 import org.xydra.persistence.ModelRevision;
 import org.xydra.sharedutils.XyAssert;
 import org.xydra.store.impl.gae.IGaeModelPersistence;
@@ -39,6 +43,7 @@ import org.xydra.store.impl.gae.changes.GaeChange;
 import org.xydra.store.impl.gae.changes.GaeChange.Status;
 import org.xydra.store.impl.gae.changes.GaeLocks;
 import org.xydra.store.impl.gae.changes.IGaeChangesService;
+import org.xydra.store.impl.gae.changes.LockTable;
 import org.xydra.store.impl.gae.changes.VoluntaryTimeoutException;
 import org.xydra.store.impl.gae.ng.GaeModelRevInfo.Precision;
 import org.xydra.store.impl.gae.snapshot.IGaeSnapshotService;
@@ -95,6 +100,8 @@ public class GaeModelPersistenceNG implements IGaeModelPersistence {
 
 	private final XAddress modelAddress;
 
+	private final LockTable lockTable;
+
 	private final RevisionManager revisionManager;
 
 	private final IGaeSnapshotService snapshotService;
@@ -107,6 +114,7 @@ public class GaeModelPersistenceNG implements IGaeModelPersistence {
 		final GaeModelRevInfo info = this.revisionManager.getInfo();
 
 		this.changelogManager = new ChangeLogManager(this.modelAddress);
+		this.lockTable = LockTable.get(this.modelAddress);
 		this.snapshotService = new GaeSnapshotServiceImpl5(this.changelogManager);
 		this.executionContext = new ContextBeforeCommand(modelAddress, info, this.snapshotService);
 		XyAssert.xyAssert(this.executionContext.getAddress() != null);
@@ -188,6 +196,10 @@ public class GaeModelPersistenceNG implements IGaeModelPersistence {
 	 * be smaller when large values are there). 1 MB fetch size, max size of
 	 * change ca. 10 objects each with 4k => 40k. So we fetch 25 changes.
 	 *
+	 * Changes executed by this instance are not fetched at all: the
+	 * {@link LockTable} yields those with conflicting locks directly, and only
+	 * these are loaded to wait for them.
+	 *
 	 * @param ourChange
 	 *            waiting to be executed
 	 * @param info
@@ -208,9 +220,66 @@ public class GaeModelPersistenceNG implements IGaeModelPersistence {
 		XyAssert.xyAssert(pendingChangesSearchRange.size() < 1000, "?", pendingChangesSearchRange,
 				pendingChangesSearchRange.size());
 
+		final GaeLocks ourLocks = ourChange.getLocks();
+
+		/*
+		 * Changes of this instance: the lock table knows their locks, so only
+		 * the conflicting ones are loaded and waited for, even if they are
+		 * released in the meantime. A change that registers after this
+		 * snapshot is checked via the change log below.
+		 */
+		final Set<Long> registered = new HashSet<Long>();
+		final Set<Long> localConflicts = new TreeSet<Long>(this.lockTable.getConflicting(
+				ourLocks, registered));
+		for (final long rev : localConflicts) {
+			if (rev < pendingChangesSearchRange.start || rev > pendingChangesSearchRange.end) {
+				continue;
+			}
+			final GaeChange otherChange = this.changelogManager.getChange(rev);
+			if (otherChange == null) {
+				continue;
+			}
+			if (!otherChange.getStatus().canChange()) {
+				this.revisionManager.foundNewHigherCommitedChange(otherChange);
+				continue;
+			}
+			execute_waitForOtherThreadToCommit(ourChange, otherChange);
+		}
+
+		/*
+		 * Changes of other instances: only the change log knows their locks.
+		 * Fetch each run of revisions that are not registered here.
+		 */
 		final Interval fetchRange = pendingChangesSearchRange.copy();
 		fetchRange.adjustStartToFitSizeIfNecessary(MAX_CHANGES_FETCH_SIZE);
+		long runStart = fetchRange.start;
+		while (runStart <= fetchRange.end) {
+			if (registered.contains(runStart)) {
+				runStart++;
+				continue;
+			}
+			long runEnd = runStart;
+			while (runEnd < fetchRange.end && !registered.contains(runEnd + 1)) {
+				runEnd++;
+			}
+			execute_waitForRemoteChanges(ourChange, ourLocks, new Interval(runStart, runEnd),
+					revisionManager);
+			runStart = runEnd + 1;
+		}
+	}
 
+	/**
+	 * @param ourChange
+	 * @param ourLocks
+	 * @param fetchRange
+	 *            revisions none of which is registered in the lock table of
+	 *            this instance
+	 * @param revisionManager
+	 * @throws VoluntaryTimeoutException
+	 */
+	private void execute_waitForRemoteChanges(final GaeChange ourChange, final GaeLocks ourLocks,
+			final Interval fetchRange, final RevisionManager revisionManager)
+			throws VoluntaryTimeoutException {
 		final Map<Long, GaeChange> changes = this.changelogManager.getChanges(fetchRange);
 		for (long rev = fetchRange.start; rev <= fetchRange.end; rev++) {
 			final GaeChange otherChange = changes.get(rev);
@@ -225,12 +294,9 @@ public class GaeModelPersistenceNG implements IGaeModelPersistence {
 			if (!otherChange.getStatus().canChange()) {
 				this.revisionManager.foundNewHigherCommitedChange(otherChange);
 				continue;
-			} else {
+			} else if (otherChange.getLocks().isConflicting(ourLocks)) {
 				/* its pending, somebody else is just working on it */
-				final GaeLocks nextLocks = otherChange.getLocks();
-				if (nextLocks.isConflicting(ourChange.getLocks())) {
-					execute_waitForOtherThreadToCommit(ourChange, otherChange);
-				}
+				execute_waitForOtherThreadToCommit(ourChange, otherChange);
 			}
 		}
 	}
@@ -238,7 +304,8 @@ public class GaeModelPersistenceNG implements IGaeModelPersistence {
 	/**
 	 * The nextChange is uncommitted and holds conflicting locks, so we need to
 	 * wait. Waiting is done by sleeping increasing intervals and then checking
-	 * the change entity again.
+	 * the change entity again. If the nextChange is executed by this instance,
+	 * we wake up as soon as it releases its locks.
 	 *
 	 * The locks that we already "acquired" cannot be released before entering
 	 * the waiting mode, as releasing them before completely executing our own
@@ -252,6 +319,16 @@ public class GaeModelPersistenceNG implements IGaeModelPersistence {
 	 */
 	private void execute_waitForOtherThreadToCommit(final GaeChange ourChange, final GaeChange nextChange)
 			throws VoluntaryTimeoutException {
+		final Stats.Clock clock = LockTable.getStats().startClock(LockTable.STATS_WAIT);
+		try {
+			waitForOtherThreadToCommit(ourChange, nextChange);
+		} finally {
+			clock.stop();
+		}
+	}
+
+	private void waitForOtherThreadToCommit(final GaeChange ourChange, final GaeChange nextChange)
+			throws VoluntaryTimeoutException {
 		long waitTime = WAIT_INITIAL;
 		while (!nextChange.isTimedOut()) {
 
@@ -261,10 +338,14 @@ public class GaeModelPersistenceNG implements IGaeModelPersistence {
 			 * IMPROVE save own command if waitTime is too long (so that we can
 			 * be rolled forward in case of timeout)
 			 */
-			try {
-				Thread.sleep(waitTime);
-			} catch (final InterruptedException e) {
-				// ignore interrupt
+			if (this.lockTable.isRegistered(nextChange.rev)) {
+				this.lockTable.awaitRelease(nextChange.rev, waitTime);
+			} else {
+				try {
+					Thread.sleep(waitTime);
+				} catch (final InterruptedException e) {
+					// ignore interrupt
+				}
 			}
 			// IMPROVE update own lastActivity?
 
@@ -323,53 +404,61 @@ public class GaeModelPersistenceNG implements IGaeModelPersistence {
 		XyAssert.xyAssert(change.rev >= 0);
 		c.stopAndStart("grabRevisionAndRegisterLocks");
 
-		/* Phase 2: Entering synchronised code ... */
-		log.debug("[r" + change.rev + "] Phase 2: waitForLocks");
-		execute_waitForLocks(change, info, this.revisionManager);
-		c.stopAndStart("waitForLocks");
+		this.lockTable.register(change.rev, locks);
+		ExecutionResult executionResult;
+		try {
+			/* Phase 2: Entering synchronised code ... */
+			log.debug("[r" + change.rev + "] Phase 2: waitForLocks");
+			execute_waitForLocks(change, info, this.revisionManager);
+			c.stopAndStart("waitForLocks");
 
-		/* --- Code synchronised by Xydra locks in GAE datastore --- */
+			/* --- Code synchronised by Xydra locks in GAE datastore --- */
 
-		// FIXME GAE some serious do-all-or-nothing problems
+			// FIXME GAE some serious do-all-or-nothing problems
 
-		/* Phase 3 */
-		log.debug("[r" + change.rev + "] Phase 3: check constraints, compute events = " + change
-				+ ", command = " + command);
-		CheckResult checkResult;
-		try {
-			checkResult = Executor.checkPreconditions(this.executionContext, command, change);
-		} catch (final Throwable t) {
-			log.error("Error in phase 3", t);
-			throw new RuntimeException(t);
-		}
+			/* Phase 3 */
+			log.debug("[r" + change.rev + "] Phase 3: check constraints, compute events = " + change
+					+ ", command = " + command);
+			CheckResult checkResult;
+			try {
+				checkResult = Executor.checkPreconditions(this.executionContext, command, change);
+			} catch (final Throwable t) {
+				log.error("Error in phase 3", t);
+				throw new RuntimeException(t);
+			}
 
-		/*
-		 * implicitly this method also changes tentativeObjectStates from
-		 * implied events caused by remove-commands
-		 */
-		log.debug("[r" + change.rev + "] Phase 3b: computeEvents '"
-				+ checkResult.getStatus().name() + "' change = " + change + ", command = "
-				+ command);
-		final ExecutionResult executionResult = ExecutionResult.createEventsFrom(checkResult,
-				this.executionContext);
-
-		// updateTentativeState
-		log.debug("[r" + change.rev + "] Phase 3c: updateTos '"
-				+ executionResult.getStatus().name() + "' change = " + change + ", command = "
-				+ command + " --> " + executionResult.getEvents().size() + " events");
-		if (checkResult.getStatus() == Status.SuccessExecuted) {
-			updateTentativeObjectStates(checkResult.getExecutionContextInTxn(),
-					this.executionContext, change.rev);
-		}
+			/*
+			 * implicitly this method also changes tentativeObjectStates from
+			 * implied events caused by remove-commands
+			 */
+			log.debug("[r" + change.rev + "] Phase 3b: computeEvents '"
+					+ checkResult.getStatus().name() + "' change = " + change + ", command = "
+					+ command);
+			executionResult = ExecutionResult.createEventsFrom(checkResult,
+					this.executionContext);
+
+			// updateTentativeState
+			log.debug("[r" + change.rev + "] Phase 3c: updateTos '"
+					+ executionResult.getStatus().name() + "' change = " + change + ", command = "
+					+ command + " --> " + executionResult.getEvents().size() + " events");
+			if (checkResult.getStatus() == Status.SuccessExecuted) {
+				updateTentativeObjectStates(checkResult.getExecutionContextInTxn(),
+						this.executionContext, change.rev);
+			}
 
-		/* --- End of code synchronised by Xydra locks in GAE datastore --- */
+			/* --- End of code synchronised by Xydra locks in GAE datastore --- */
+
+			/* Phase 4: Write result in change-log, releasing the locks ... */
+			log.debug("[r" + change.rev + "] Phase 4: saveEvents '"
+					+ executionResult.getStatus().name() + "' change = " + change + ", command = "
+					+ command);
+			execute_saveEventsReleaseLocks(executionResult, change);
+			c.stopAndStart("saveEvents");
+		} finally {
+			/* also if we failed, so that local waiters poll the change log */
+			this.lockTable.release(change.rev);
+		}
 
-		/* Phase 4: Write result in change-log, releasing the locks ... */
-		log.debug("[r" + change.rev + "] Phase 4: saveEvents '"
-				+ executionResult.getStatus().name() + "' change = " + change + ", command = "
-				+ command);
-		execute_saveEventsReleaseLocks(executionResult, change);
-		c.stopAndStart("saveEvents");
 		XyAssert.xyAssert(!change.getStatus().canChange(),
 				"If we reach this line, change must be committed");
 
@@ -457,8 +546,8 @@ public class GaeModelPersistenceNG implements IGaeModelPersistence {
 	public List<XEvent> getEventsBetween(final XAddress address, final long beginRevision,
 			final long endRevision) {
 		final Interval interval = new Interval(beginRevision, endRevision);
-		final List<XEvent> events = this.changelogManager.getEventsInInterval(interval);
 		if (address.getAddressedType() == XType.XMODEL) {
+			final List<XEvent> events = this.changelogManager.getEventsInInterval(interval);
 			XyAssert.xyAssert(address.equals(this.modelAddress));
 			/**
 			 * Fulfil the XydraStore specification and return null if the model
@@ -471,8 +560,9 @@ public class GaeModelPersistenceNG implements IGaeModelPersistence {
 		} else {
 			XyAssert.xyAssert(Base.resolveModel(address).equals(this.modelAddress), "", address,
 					this.modelAddress);
+			/* filter the events while later changes are still being fetched */
 			final AbstractFilteringIterator<XEvent> it = new AbstractFilteringIterator<XEvent>(
-					events.iterator()) {
+					this.changelogManager.streamEventsInInterval(interval)) {
 
 				@Override
 				protected boolean matchesFilter(final XEvent entry) {
@@ -4,19 +4,20 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.xydra.annotations.NeverNull;
 import org.xydra.annotations.Setting;
 import org.xydra.base.XAddress;
 import org.xydra.base.XId;
+import org.xydra.base.change.XAtomicEvent;
 import org.xydra.base.change.XEvent;
+import org.xydra.base.change.XFieldEvent;
+import org.xydra.base.change.XTransactionEvent;
 import org.xydra.base.rmof.XReadableField;
 import org.xydra.base.rmof.XReadableModel;
 import org.xydra.base.rmof.XReadableObject;
@@ -34,10 +35,11 @@ import org.xydra.core.change.EventUtils;
 import org.xydra.core.model.XChangeLog;
 import org.xydra.core.serialize.SerializedModel;
 import org.xydra.core.serialize.XydraElement;
-import org.xydra.core.serialize.xml.XmlParser;
+import org.xydra.core.serialize.xml.XmlPullParser;
 import org.xydra.index.iterator.Iterators;
 import org.xydra.log.api.Logger;
 import org.xydra.log.api.LoggerFactory;
+import org.xydra.perf.Stats;
 import org.xydra.sharedutils.XyAssert;
 import org.xydra.store.impl.gae.Memcache;
 import org.xydra.store.impl.gae.changes.KeyStructure;
@@ -49,8 +51,6 @@ import org.xydra.xgae.datastore.api.SEntity;
 import org.xydra.xgae.datastore.api.SKey;
 import org.xydra.xgae.datastore.api.SText;
 
-import com.google.common.collect.Sets;
-
 /**
  * Computes *Snapshots ( {@link SimpleField}, {@link SimpleObject},
  * {@link SimpleModel}) from a given {@link XChangeLog}.
@@ -65,99 +65,201 @@ import com.google.common.collect.Sets;
  * partial snapshot.
  * </ul>
  *
- * <h3>New strategy for caching snapshots</h3> There are basically three
- * operation modes:
- * <ul>
- * <li>Low traffic, working window size == 1</li>
- * <li>High traffic, working window grows larger, concurrent requests are
- * handled</li>
- * <li>Memcache clear: All cached snapshots are lost and need to be recomputed</li>
- * </ul>
- * therefore we define:
- * <ul>
- * <li>STANDARD_DISTANCE how many snapshots to always NOT cache, as it is so
- * cheap to re-compute them given another snapshot an up to STANDARD_DISTANCE
- * events</li>
- * <li>MAX_WORKING_WINDOW is the maximal working window size that is efficiently
- * supported</li>
- * <li>EVENTS_PER_WORKER is the number of events the average request handler can
- * safely apply before timing out. This is the interval in which we must persist
- * to datastore, in order to let other threads continue from there.</li>
- * </ul>
+ * <h3>Adaptive checkpoints</h3> Instead of caching every 10th revision,
+ * snapshots (checkpoints) are written to memcache whenever the events replayed
+ * since the last checkpoint reach a replay budget. The cost of an event is
+ * estimated in bytes (a constant plus the size of its value), the budget is a
+ * quarter of the model size, within [{@link #MIN_REPLAY_BYTES},
+ * {@link #MAX_REPLAY_BYTES}]. So large models with small events get few
+ * checkpoints, small models or large values get many, and computing any
+ * snapshot never replays more than the budget once checkpoints exist.
  *
+ * Checkpoints are stored in the binary format of {@link SnapshotCodec}, either
+ * as full snapshots or as deltas that contain only the objects changed since
+ * the last full snapshot. A full snapshot is written when the delta would be
+ * larger than half of it. Values larger than a memcache value are split into
+ * chunks, see {@link Memcache#putChunked(SKey, byte[], int)}. A memcache entry
+ * per model lists the revisions of the checkpoints and of their base.
  *
+ * The statistics in {@link #getStats()} record the events and estimated bytes
+ * replayed per computed snapshot and the checkpoints loaded and written.
  *
  * @author dscharrer
  * @author xamde
  */
 public class GaeSnapshotServiceImpl5 extends AbstractGaeSnapshotServiceImpl {
 
+	/**
+	 * A snapshot and what is needed to write the next checkpoint after it
+	 */
+	private static class Checkpoint {
+
+		/** objects changed since {@link #fullRev}, null if unknown */
+		Set<XId> changedObjectIds;
+
+		/** size of the full snapshot in bytes, 0 if unknown */
+		long fullBytes = 0;
+
+		/** revision of the last full snapshot, -1 if there is none */
+		long fullRev = -1;
+
+		XRevWritableModel model;
+
+		Checkpoint(final XRevWritableModel model) {
+			this.model = model;
+		}
+	}
+
+	/** estimated bytes of an event, not counting its value */
+	private static final long BYTES_PER_EVENT = 32;
+
+	/** kind of the memcache entries with binary full and delta snapshots */
+	private static final String KIND_SNAPSHOT_BIN = "XSNAPSHOTBIN";
+
+	/** kind of the memcache entry listing the checkpoints of a model */
+	private static final String KIND_SNAPSHOT_INDEX = "XSNAPSHOTINDEX";
+
 	private static final String KIND_SNAPSHOT = "XSNAPSHOT";
 
 	private static final Logger log = LoggerFactory.getLogger(GaeSnapshotServiceImpl5.class);
 
+	@Setting("how many checkpoints to try before replaying from scratch")
+	private static final int MAX_CHECKPOINT_LOADS = 3;
+
+	@Setting("how many checkpoints per model are listed")
+	private static final int MAX_CHECKPOINTS = 64;
+
+	@Setting("upper bound of the replay budget in estimated bytes")
+	private static final long MAX_REPLAY_BYTES = 256 * 1024;
+
+	@Setting("lower bound of the replay budget in estimated bytes")
+	private static final long MIN_REPLAY_BYTES = 16 * 1024;
+
 	private static final long MODEL_DOES_NOT_EXIST = -1;
 
 	/** property name for storing serialised XML content of a snapshot */
 	private static final String PROP_XML = "xml";
 
-	private static final long STANDARD_DISTANCE = 10;
+	/** number of events replayed per computed snapshot */
+	public static final String STATS_REPLAY_EVENTS = "snapshot.replay.events";
+
+	/** estimated bytes replayed per computed snapshot */
+	public static final String STATS_REPLAY_BYTES = "snapshot.replay.bytes";
+
+	/** full checkpoints loaded */
+	public static final String STATS_LOAD_FULL = "snapshot.load.full";
+
+	/** delta checkpoints loaded, each with its full checkpoint */
+	public static final String STATS_LOAD_DELTA = "snapshot.load.delta";
+
+	/** listed checkpoints that were no longer in memcache */
+	public static final String STATS_LOAD_MISS = "snapshot.load.miss";
+
+	/** full checkpoints written, with their size in bytes */
+	public static final String STATS_PUT_FULL = "snapshot.put.full";
+
+	/** delta checkpoints written, with their size in bytes */
+	public static final String STATS_PUT_DELTA = "snapshot.put.delta";
+
+	/** memcache values written for checkpoints */
+	public static final String STATS_PUT_CHUNKS = "snapshot.put.chunks";
+
+	private static final Stats stats = new Stats();
 
 	@Setting("if memcache should be used to cache snapshots")
 	private static final boolean USE_MEMCACHE = true;
 
+	private static int chunkSize = Memcache.MAX_CHUNK_SIZE;
+
 	/**
-	 * @param requestedRevNr
-	 * @return true if the given revision number is a candidate for memcache
+	 * @return statistics of all snapshot services of this instance
 	 */
-	private static boolean revCanBeMemcached(final long requestedRevNr) {
-		return requestedRevNr % STANDARD_DISTANCE == 0;
+	public static Stats getStats() {
+		return stats;
 	}
 
-	private final ChangeLogManager changelogManager;
-
-	private final XAddress modelAddress;
+	/**
+	 * For tests only: smaller chunks to test the chunking with small models
+	 *
+	 * @param bytes
+	 *            at most {@link Memcache#MAX_CHUNK_SIZE}
+	 */
+	static void setChunkSize(final int bytes) {
+		chunkSize = bytes;
+	}
 
 	/**
-	 * @param changelogManager
-	 *            The change log to load snapshots from.
+	 * @param event
+	 * @return the estimated cost of replaying the event in bytes
 	 */
-	public GaeSnapshotServiceImpl5(final ChangeLogManager changelogManager) {
-		this.modelAddress = changelogManager.getModelAddress();
-		this.changelogManager = changelogManager;
+	private static long estimateReplayBytes(final XEvent event) {
+		if (event instanceof XTransactionEvent) {
+			long bytes = 0;
+			for (final XAtomicEvent atomicEvent : (XTransactionEvent) event) {
+				bytes += estimateReplayBytes(atomicEvent);
+			}
+			return bytes;
+		}
+		long bytes = BYTES_PER_EVENT;
+		if (event instanceof XFieldEvent) {
+			final XValue value = ((XFieldEvent) event).getNewValue();
+			if (value != null) {
+				bytes += value.toString().length();
+			}
+		}
+		return bytes;
 	}
 
-	private boolean cacheResultIsConsistent(final Map<String, Object> batchResult) {
-		for (final Entry<String, Object> entry : batchResult.entrySet()) {
-			final String key = entry.getKey();
-			final XRevWritableModel value = (XRevWritableModel) entry.getValue();
-			final boolean consistent = isConsistent(key, value);
-			if (!consistent) {
-				return false;
+	/**
+	 * @param event
+	 * @param objectIds
+	 *            to which the ids of the objects changed by the event are added
+	 * @return false if the event changes the model itself
+	 */
+	private static boolean addChangedObjectIds(final XEvent event, final Set<XId> objectIds) {
+		if (event instanceof XTransactionEvent) {
+			for (final XAtomicEvent atomicEvent : (XTransactionEvent) event) {
+				if (!addChangedObjectIds(atomicEvent, objectIds)) {
+					return false;
+				}
 			}
+			return true;
 		}
+		final XId objectId = event.getChangedEntity().getObject();
+		if (objectId == null) {
+			return false;
+		}
+		objectIds.add(objectId);
 		return true;
 	}
 
 	/**
-	 * @param requestedRevNr
-	 * @param base
-	 *            content will be changed; @NeverNull
-	 * @return a snapshot in revision 'requestedRevNr' by applying changes to
-	 *         given base model
+	 * @param checkpoint
+	 * @return how many estimated bytes may be replayed before the next
+	 *         checkpoint is written
 	 */
-	private XRevWritableModel computeAndCacheSnapshotFromBase(final long requestedRevNr,
-			@NeverNull final XRevWritableModel base) {
-		XyAssert.xyAssert(base != null);
-		assert base != null;
-		XyAssert.xyAssert(this.modelAddress.equals(base.getAddress()));
-		final XRevWritableModel requestedSnapshot = computeSnapshotFromBase(base, requestedRevNr);
-		return requestedSnapshot;
+	private static long getReplayBudget(final Checkpoint checkpoint) {
+		final long modelBytes = checkpoint.fullBytes > 0 ? checkpoint.fullBytes : estimateSizeOf(
+				checkpoint.model, MAX_REPLAY_BYTES * 4);
+		return Math.max(MIN_REPLAY_BYTES, Math.min(MAX_REPLAY_BYTES, modelBytes / 4));
+	}
+
+	private final ChangeLogManager changelogManager;
+
+	private final XAddress modelAddress;
+
+	/**
+	 * @param changelogManager
+	 *            The change log to load snapshots from.
+	 */
+	public GaeSnapshotServiceImpl5(final ChangeLogManager changelogManager) {
+		this.modelAddress = changelogManager.getModelAddress();
+		this.changelogManager = changelogManager;
 	}
 
 	/**
 	 * Compute requested snapshot by using an older snapshot version (if one is
-	 * found in memcache). Puts intermediary version in the respective caches.
+	 * found in memcache). Puts intermediary versions in memcache.
 	 *
 	 * @param requestedRevNr
 	 *            which is required but has no direct match in the datastore or
@@ -166,80 +268,46 @@ public class GaeSnapshotServiceImpl5 extends AbstractGaeSnapshotServiceImpl {
 	 *            FIXME 2012-02 make sure too high numbers are handled well.
 	 *            This allows callers to retrieve a new version which has still
 	 *            uncommitted versions below it.
+	 * @param checkpoint
+	 *            the latest checkpoint before requestedRevNr or null
 	 * @return a computed model snapshot
 	 */
-	private XRevWritableModel computeSnapshot(final long requestedRevNr) {
+	private XRevWritableModel computeSnapshot(final long requestedRevNr, final Checkpoint checkpoint) {
 		log.debug("compute snapshot " + requestedRevNr);
 		XyAssert.xyAssert(requestedRevNr >= 0);
 
-		Map<String, Object> batchResult = Collections.emptyMap();
-		final List<String> requestKeys = new LinkedList<String>();
-		long askNr = requestedRevNr - 1;
-
-		long askedRevs = 0;
-		Object snapshotfromMemcache = null;
-		if (USE_MEMCACHE) {
-			while (askNr >= 0 && askedRevs < 5) {
-				askNr--;
-				if (revCanBeMemcached(askNr) && askedRevs < 5) {
-					final String possiblyMemcachedKey = KeyStructure.toString(getSnapshotKey(askNr));
-					requestKeys.add(possiblyMemcachedKey);
-					askedRevs++;
-				}
-			}
-			// prepare a fetch in the mem-cache
-			XyAssert.xyAssert(requestKeys.size() <= 5, "asking for %s keys", requestKeys.size());
-			batchResult = Memcache.getEntities(requestKeys);
-			XyAssert.xyAssert(batchResult.size() <= 5, "got %s results", batchResult.size());
-			XyAssert.xyAssert(cacheResultIsConsistent(batchResult), "cache inconsistent, see logs");
-
-			// IMPROVE PERFORMANCE use *highest* revision within response
-			// any element can serve as base for further computation
-			for (final Entry<String, Object> entry : batchResult.entrySet()) {
-				final Object v = entry.getValue();
-				if (v != null && v != Memcache.NULL_ENTITY) {
-					snapshotfromMemcache = v;
-					break;
-				}
-			}
-		}
-
-		// TODO SCALE if no hits, ask datastore (make sure to put it there, too)
-
-		XRevWritableModel base;
-		if (snapshotfromMemcache == null) {
-			log.debug("we start from scratch, nobody has ever saved a snapshot. Found no snapshots at "
-					+ Arrays.toString(requestKeys.toArray()));
-			base = new SimpleModel(this.modelAddress);
-			base.setRevisionNumber(MODEL_DOES_NOT_EXIST);
+		Checkpoint base = checkpoint;
+		if (base == null) {
+			log.debug("we start from scratch, found no checkpoint before " + requestedRevNr);
+			final XRevWritableModel empty = new SimpleModel(this.modelAddress);
+			empty.setRevisionNumber(MODEL_DOES_NOT_EXIST);
+			base = new Checkpoint(empty);
 		} else {
-			XyAssert.xyAssert(snapshotfromMemcache instanceof XRevWritableModel);
-			base = (XRevWritableModel) snapshotfromMemcache;
-			XyAssert.xyAssert(base.getAddress().equals(this.modelAddress));
+			XyAssert.xyAssert(base.model.getAddress().equals(this.modelAddress));
 		}
-		log.debug("compute from " + base.getRevisionNumber() + " up to " + requestedRevNr);
+		log.debug("compute from " + base.model.getRevisionNumber() + " up to " + requestedRevNr);
 
-		return computeAndCacheSnapshotFromBase(requestedRevNr, base);
+		return computeSnapshotFromBase(base, requestedRevNr);
 	}
 
 	/**
 	 * Compute a snapshot by applying all events that happened between base's
-	 * revision and the requested revisionNumber.
+	 * revision and the requested revisionNumber. Writes checkpoints whenever
+	 * the replay budget is used up.
 	 *
 	 * @param base
 	 *            might have revNr == -1; content *will* be changed. @NeverNull
 	 * @param requestedRevNr
 	 * @return a serialisable, computed snapshot
 	 */
-	private XRevWritableModel computeSnapshotFromBase(@NeverNull final XRevWritableModel base,
+	private XRevWritableModel computeSnapshotFromBase(@NeverNull final Checkpoint base,
 			final long requestedRevNr) {
 		XyAssert.xyAssert(base != null);
 		assert base != null;
-		XyAssert.xyAssert(base.getRevisionNumber() < requestedRevNr,
+		XRevWritableModel snapshot = base.model;
+		XyAssert.xyAssert(snapshot.getRevisionNumber() < requestedRevNr,
 				"otherwise it makes no sense to compute it");
 		XyAssert.xyAssert(requestedRevNr >= 0);
-		XRevWritableModel snapshot = base;
-		XyAssert.xyAssert(requestedRevNr > snapshot.getRevisionNumber());
 		log.debug("Compute snapshot of model '" + this.modelAddress + "' from rev="
 				+ snapshot.getRevisionNumber() + " to rev=" + requestedRevNr);
 
@@ -247,10 +315,11 @@ public class GaeSnapshotServiceImpl5 extends AbstractGaeSnapshotServiceImpl {
 		final long start = Math.max(snapshot.getRevisionNumber() + 1, 0);
 		final Interval requestedRange = new Interval(start, requestedRevNr);
 
-		/*
-		 * if interval is large, compute intermediate snapshots and store them
-		 */
+		long replayedEvents = 0;
+		long replayedBytes = 0;
 		if (!requestedRange.isEmpty()) {
+			long budget = getReplayBudget(base);
+			long bytesSinceCheckpoint = 0;
 			/**
 			 * get requested events in batches of MAXIMAL_CHANGES_FETCH_SIZE and
 			 * use smaller ranges when exceptions occur
@@ -270,56 +339,194 @@ public class GaeSnapshotServiceImpl5 extends AbstractGaeSnapshotServiceImpl {
 				assert events != null;
 
 				// apply events to base
-				long memcachedSnapshots = 0;
 				for (final XEvent event : events) {
 					log.trace("Basemodel[" + snapshot.getRevisionNumber() + "], applying event["
 							+ event.getRevisionNumber() + "]=" + DebugFormatter.format(event));
 					snapshot = EventUtils.applyEventNonDestructive(snapshot, event);
 
-					final long rev = snapshot.getRevisionNumber();
-					if (USE_MEMCACHE && revCanBeMemcached(rev) && memcachedSnapshots < 10) {
-						// cache some snapshots in memcache
-						putInMemcacheIfNotTooLarge(rev, snapshot);
-						memcachedSnapshots++;
-						// TODO SCALE put also some in datastore (async)
+					final long eventBytes = estimateReplayBytes(event);
+					replayedEvents++;
+					replayedBytes += eventBytes;
+					bytesSinceCheckpoint += eventBytes;
+					if (base.changedObjectIds != null
+							&& !addChangedObjectIds(event, base.changedObjectIds)) {
+						base.changedObjectIds = null;
 					}
 
+					if (USE_MEMCACHE && bytesSinceCheckpoint >= budget) {
+						base.model = snapshot;
+						putCheckpoint(base);
+						budget = getReplayBudget(base);
+						bytesSinceCheckpoint = 0;
+					}
 				}
 				stepRange = stepRange.moveRightAndShrinkToKeepEndMaxAt(requestedRange.end);
 			} while (stepRange.start <= requestedRange.end && events.size() > 0);
 		}
+		stats.add(STATS_REPLAY_EVENTS, replayedEvents);
+		stats.add(STATS_REPLAY_BYTES, replayedBytes);
 
 		XyAssert.xyAssert(snapshot.getRevisionNumber() == requestedRevNr,
 				"got %s when I requested %s", snapshot.getRevisionNumber(), requestedRevNr);
 
-		// when done, always cache 1 more snapshots
-		if (USE_MEMCACHE) {
-			putInMemcacheIfNotTooLarge(requestedRevNr, snapshot);
+		return snapshot;
+	}
+
+	/**
+	 * Writes the model of the checkpoint as a delta, if it is at most half the
+	 * size of a full snapshot, otherwise as a full snapshot.
+	 *
+	 * @param checkpoint
+	 *            is updated if a full snapshot has been written
+	 */
+	private void putCheckpoint(final Checkpoint checkpoint) {
+		final XRevWritableModel snapshot = checkpoint.model;
+		final long rev = snapshot.getRevisionNumber();
+		if (rev < 0) {
+			// the model has been removed
+			return;
 		}
 
-		return snapshot;
+		byte[] bytes = null;
+		long baseRev = rev;
+		if (checkpoint.fullRev >= 0 && checkpoint.changedObjectIds != null) {
+			final byte[] delta = SnapshotCodec.encodeDelta(snapshot, checkpoint.fullRev,
+					checkpoint.changedObjectIds);
+			if (delta.length <= checkpoint.fullBytes / 2) {
+				bytes = delta;
+				baseRev = checkpoint.fullRev;
+			}
+		}
+		final boolean full = bytes == null;
+		if (full) {
+			bytes = SnapshotCodec.encodeFull(snapshot);
+		}
+
+		int chunks;
+		try {
+			chunks = Memcache.putChunked(getBinarySnapshotKey(rev), bytes, chunkSize);
+		} catch (final IOException e) {
+			log.warn("Snapshot " + snapshot.getAddress() + " [" + rev + "] of " + bytes.length
+					+ " bytes could not be memcached", e);
+			return;
+		}
+		stats.add(full ? STATS_PUT_FULL : STATS_PUT_DELTA, bytes.length);
+		stats.add(STATS_PUT_CHUNKS, chunks);
+		addToCheckpointIndex(rev, baseRev);
+
+		if (full) {
+			checkpoint.fullRev = rev;
+			checkpoint.fullBytes = bytes.length;
+			checkpoint.changedObjectIds = new HashSet<XId>();
+		}
 	}
 
-	private static Set<XAddress> uncacheable = Sets
-			.newSetFromMap(new ConcurrentHashMap<XAddress, Boolean>());
+	/**
+	 * @return pairs of (revision, revision of the full snapshot) sorted by
+	 *         revision; both are equal for full snapshots. Never null.
+	 */
+	private long[] getCheckpointIndex() {
+		final Object o = Memcache.get(getCheckpointIndexKey());
+		return o instanceof long[] ? (long[]) o : new long[0];
+	}
 
-	private void putInMemcacheIfNotTooLarge(final long rev, final XRevWritableModel snapshot) {
-		final SKey key = getSnapshotKey(rev);
-		XyAssert.xyAssert(isConsistent(KeyStructure.toString(key), snapshot));
-		if (!uncacheable.contains(snapshot.getAddress())) {
-			try {
-				Memcache.putChecked(key, snapshot);
-			} catch (final IOException e) {
-				/*
-				 * remember on this instance that the snapshot is probably too
-				 * big and don't try to store it again
-				 */
-				uncacheable.add(snapshot.getAddress());
-				log.info("Snapshot " + snapshot.getAddress() + " [" + snapshot.getRevisionNumber()
-						+ "] could not be memcached, most likely too big. Size estimated as "
-						+ estimateSizeOf(snapshot, 1024 * 1024), e);
+	/**
+	 * Concurrent updates may lose an entry, which only costs a replay.
+	 *
+	 * @param rev
+	 * @param baseRev
+	 */
+	private void addToCheckpointIndex(final long rev, final long baseRev) {
+		final long[] index = getCheckpointIndex();
+		int pos = 0;
+		while (pos < index.length && index[pos] < rev) {
+			pos += 2;
+		}
+		if (pos < index.length && index[pos] == rev && index[pos + 1] == baseRev) {
+			return;
+		}
+		final boolean replace = pos < index.length && index[pos] == rev;
+		final long[] updated = new long[replace ? index.length : index.length + 2];
+		System.arraycopy(index, 0, updated, 0, pos);
+		updated[pos] = rev;
+		updated[pos + 1] = baseRev;
+		final int rest = replace ? pos + 2 : pos;
+		System.arraycopy(index, rest, updated, pos + 2, index.length - rest);
+
+		// forget the oldest checkpoints
+		final int excess = Math.max(0, updated.length - MAX_CHECKPOINTS * 2);
+		Memcache.put(getCheckpointIndexKey(),
+				Arrays.copyOfRange(updated, excess, updated.length));
+	}
+
+	/**
+	 * @param maxRev
+	 * @return the latest checkpoint at or before maxRev that could be loaded
+	 *         or null
+	 */
+	private Checkpoint loadCheckpoint(final long maxRev) {
+		final long[] index = getCheckpointIndex();
+		int loads = 0;
+		for (int i = index.length - 2; i >= 0 && loads < MAX_CHECKPOINT_LOADS; i -= 2) {
+			if (index[i] > maxRev) {
+				continue;
+			}
+			loads++;
+			final Checkpoint checkpoint = loadCheckpoint(index[i], index[i + 1]);
+			if (checkpoint != null) {
+				return checkpoint;
 			}
+			stats.count(STATS_LOAD_MISS);
 		}
+		return null;
+	}
+
+	/**
+	 * @param rev
+	 * @param fullRev
+	 * @return the checkpoint or null if it (or its full snapshot) is no longer
+	 *         in memcache
+	 */
+	private Checkpoint loadCheckpoint(final long rev, final long fullRev) {
+		final String fullKey = KeyStructure.toString(getBinarySnapshotKey(fullRev));
+		final String deltaKey = KeyStructure.toString(getBinarySnapshotKey(rev));
+		final Map<String, byte[]> found = Memcache.getChunked(rev == fullRev ? Collections
+				.singletonList(fullKey) : Arrays.asList(fullKey, deltaKey));
+
+		final byte[] fullBytes = found.get(fullKey);
+		if (fullBytes == null) {
+			return null;
+		}
+		final XydraElement fullElement = SnapshotCodec.parse(fullBytes);
+		if (SnapshotCodec.isDelta(fullElement)) {
+			return null;
+		}
+		final Checkpoint checkpoint = new Checkpoint(SnapshotCodec.decodeFull(fullElement,
+				this.modelAddress));
+		checkpoint.fullRev = fullRev;
+		checkpoint.fullBytes = fullBytes.length;
+
+		if (rev == fullRev) {
+			checkpoint.changedObjectIds = new HashSet<XId>();
+			stats.count(STATS_LOAD_FULL);
+		} else {
+			final byte[] deltaBytes = found.get(deltaKey);
+			if (deltaBytes == null) {
+				return null;
+			}
+			final XydraElement deltaElement = SnapshotCodec.parse(deltaBytes);
+			if (!SnapshotCodec.isDelta(deltaElement)
+					|| SnapshotCodec.getBaseRevision(deltaElement) != fullRev) {
+				return null;
+			}
+			checkpoint.changedObjectIds = SnapshotCodec.applyDelta(deltaElement, checkpoint.model);
+			stats.count(STATS_LOAD_DELTA);
+		}
+
+		if (checkpoint.model.getRevisionNumber() != rev) {
+			return null;
+		}
+		return checkpoint;
 	}
 
 	/**
@@ -515,7 +722,8 @@ public class GaeSnapshotServiceImpl5 extends AbstractGaeSnapshotServiceImpl {
 
 	/**
 	 * Implementation note: As XEntites are not {@link Serializable} by default,
-	 * an XML-serialisation is stored in data store and memcache.
+	 * a binary serialisation is stored in memcache. Snapshots in the datastore
+	 * are XML-serialisations.
 	 *
 	 * @param requestedRevNr
 	 *            for which to retrieve a snapshot.
@@ -530,25 +738,18 @@ public class GaeSnapshotServiceImpl5 extends AbstractGaeSnapshotServiceImpl {
 		log.debug("getSnapshotFromMemcacheOrDatastore " + requestedRevNr);
 		// try to retrieve an exact match for the required revisionNumber
 		// memcache + datastore read
-		final SKey snapshotKey = getSnapshotKey(requestedRevNr);
-		Object o = null;
+		Checkpoint checkpoint = null;
 		if (USE_MEMCACHE) {
-			o = Memcache.get(snapshotKey);
-			if (o != null) {
+			checkpoint = loadCheckpoint(requestedRevNr);
+			if (checkpoint != null && checkpoint.model.getRevisionNumber() == requestedRevNr) {
 				log.debug("return from memcache");
-				if (o.equals(Memcache.NULL_ENTITY)) {
-					// localVmCachePutNull(requestedRevNr);
-					return null;
-				}
-				XyAssert.xyAssert(isConsistent(KeyStructure.toString(snapshotKey),
-						(XRevWritableModel) o));
-				final XRevWritableModel snapshot = (XRevWritableModel) o;
-				XyAssert.xyAssert(snapshot.getRevisionNumber() == requestedRevNr);
-				// localVmCachePut(snapshot);
-				return snapshot;
+				stats.add(STATS_REPLAY_EVENTS, 0);
+				stats.add(STATS_REPLAY_BYTES, 0);
+				return checkpoint.model;
 			}
 		}
 		// else: look for direct match in datastore
+		final SKey snapshotKey = getSnapshotKey(requestedRevNr);
 		final SEntity e = XGae.get().datastore().sync().getEntity(snapshotKey);
 		if (e != null) {
 			log.debug("return from datastore");
@@ -558,14 +759,14 @@ public class GaeSnapshotServiceImpl5 extends AbstractGaeSnapshotServiceImpl {
 				return null;
 			}
 			final String xml = xmlText.getValue();
-			final XydraElement snapshotXml = new XmlParser().parse(xml);
+			final XydraElement snapshotXml = new XmlPullParser().parse(xml);
 			final XRevWritableModel snapshot = SerializedModel.toModelState(snapshotXml,
 					this.modelAddress);
 			// localVmCachePut(snapshot);
 			return snapshot;
 		}
 		// else: need to compute snapshot from an older version
-		final XRevWritableModel snapshot = computeSnapshot(requestedRevNr);
+		final XRevWritableModel snapshot = computeSnapshot(requestedRevNr, checkpoint);
 		return snapshot;
 	}
 
@@ -574,18 +775,13 @@ public class GaeSnapshotServiceImpl5 extends AbstractGaeSnapshotServiceImpl {
 				.createKey(KIND_SNAPSHOT, this.modelAddress.toURI() + "/" + revNr);
 	}
 
-	/**
-	 * @param key
-	 * @param value
-	 * @return true if the key matches the revision number of the value
-	 */
-	private boolean isConsistent(final String key, final XRevWritableModel value) {
-		final String generatedKey = KeyStructure.toString(getSnapshotKey(value.getRevisionNumber()));
-		if (!key.equals(generatedKey)) {
-			log.warn("entry.key = " + key + " vs. gen.key = " + generatedKey);
-			return false;
-		}
-		return true;
+	private SKey getBinarySnapshotKey(final long revNr) {
+		return XGae.get().datastore()
+				.createKey(KIND_SNAPSHOT_BIN, this.modelAddress.toURI() + "/" + revNr);
+	}
+
+	private SKey getCheckpointIndexKey() {
+		return XGae.get().datastore().createKey(KIND_SNAPSHOT_INDEX, this.modelAddress.toURI());
 	}
 
 	@Override
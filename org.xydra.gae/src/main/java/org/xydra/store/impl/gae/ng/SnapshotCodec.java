@@ -0,0 +1,156 @@
+package org.xydra.store.impl.gae.ng;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.xydra.base.XAddress;
+import org.xydra.base.XId;
+import org.xydra.base.rmof.XReadableModel;
+import org.xydra.base.rmof.XRevWritableModel;
+import org.xydra.base.rmof.XRevWritableObject;
+import org.xydra.base.rmof.impl.memory.SimpleModel;
+import org.xydra.core.serialize.SerializedModel;
+import org.xydra.core.serialize.SerializedValue;
+import org.xydra.core.serialize.SerializingUtils;
+import org.xydra.core.serialize.XydraElement;
+import org.xydra.core.serialize.binary.BinaryOut;
+import org.xydra.core.serialize.binary.BinaryParser;
+
+/**
+ * Binary encoding of model snapshots for {@link GaeSnapshotServiceImpl5}.
+ *
+ * A full snapshot is a serialised model. A delta snapshot refers to a full
+ * snapshot (its base) and contains the complete state of each object that has
+ * been added or changed since then and the ids of the removed objects. Objects
+ * are the unit of a delta because their state is small compared to the model
+ * and events address them directly.
+ *
+ * @author xamde
+ */
+public class SnapshotCodec {
+
+	private static final String ATTRIBUTE_BASE = "base";
+
+	private static final String ELEMENT_DELTA = "xsnapshotdelta";
+
+	private static final String ELEMENT_REMOVED = "xremoved";
+
+	private static final String NAME_CHANGED = "changed";
+
+	private static final String NAME_REMOVED = "removed";
+
+	private static final String XMODEL_ELEMENT = "xmodel";
+
+	/**
+	 * @param model
+	 * @return the encoded full snapshot
+	 */
+	public static byte[] encodeFull(final XReadableModel model) {
+		final BinaryOut out = new BinaryOut();
+		SerializedModel.serialize(model, out, true, false, false);
+		return out.getBytes();
+	}
+
+	/**
+	 * @param model
+	 *            in its current state
+	 * @param baseRev
+	 *            revision of the full snapshot the delta refers to
+	 * @param changedObjectIds
+	 *            ids of all objects that have been added, changed or removed
+	 *            since baseRev
+	 * @return the encoded delta snapshot
+	 */
+	public static byte[] encodeDelta(final XRevWritableModel model, final long baseRev,
+			final Set<XId> changedObjectIds) {
+		final SimpleModel changed = new SimpleModel(model.getAddress());
+		changed.setRevisionNumber(model.getRevisionNumber());
+		final List<XId> removed = new ArrayList<XId>();
+		for (final XId objectId : changedObjectIds) {
+			final XRevWritableObject object = model.getObject(objectId);
+			if (object == null) {
+				removed.add(objectId);
+			} else {
+				changed.addObject(object);
+			}
+		}
+
+		final BinaryOut out = new BinaryOut();
+		out.open(ELEMENT_DELTA);
+		out.attribute(ATTRIBUTE_BASE, baseRev);
+		out.child(NAME_CHANGED);
+		SerializedModel.serialize(changed, out, true, false, false);
+		out.child(NAME_REMOVED);
+		out.open(ELEMENT_REMOVED);
+		SerializedValue.setIdListContents(removed, out);
+		out.close(ELEMENT_REMOVED);
+		out.close(ELEMENT_DELTA);
+		return out.getBytes();
+	}
+
+	/**
+	 * @param bytes
+	 *            a full or delta snapshot
+	 * @return the parsed snapshot
+	 */
+	public static XydraElement parse(final byte[] bytes) {
+		return new BinaryParser().parse(bytes);
+	}
+
+	/**
+	 * @param element
+	 * @return true if the element is a delta snapshot
+	 */
+	public static boolean isDelta(final XydraElement element) {
+		return ELEMENT_DELTA.equals(element.getType());
+	}
+
+	/**
+	 * @param delta
+	 * @return the revision of the full snapshot the delta refers to
+	 */
+	public static long getBaseRevision(final XydraElement delta) {
+		return SerializingUtils.toLong(delta.getAttribute(ATTRIBUTE_BASE));
+	}
+
+	/**
+	 * @param full
+	 * @param modelAddress
+	 * @return the decoded full snapshot
+	 */
+	public static XRevWritableModel decodeFull(final XydraElement full,
+			final XAddress modelAddress) {
+		return SerializedModel.toModelState(full, modelAddress);
+	}
+
+	/**
+	 * Brings a decoded full snapshot to the state of the delta.
+	 *
+	 * @param delta
+	 * @param base
+	 *            the decoded full snapshot at {@link #getBaseRevision(XydraElement)}
+	 *            ; content will be changed
+	 * @return the ids of all objects contained in the delta
+	 */
+	public static Set<XId> applyDelta(final XydraElement delta, final XRevWritableModel base) {
+		final XRevWritableModel changed = SerializedModel.toModelState(
+				delta.getChild(NAME_CHANGED, XMODEL_ELEMENT), base.getAddress());
+		final List<XId> removed = SerializedValue.getIdListContents(delta.getChild(NAME_REMOVED,
+				ELEMENT_REMOVED));
+
+		final Set<XId> objectIds = new HashSet<XId>(removed);
+		for (final XId objectId : removed) {
+			base.removeObject(objectId);
+		}
+		for (final XId objectId : changed) {
+			base.removeObject(objectId);
+			base.addObject(changed.getObject(objectId));
+			objectIds.add(objectId);
+		}
+		base.setRevisionNumber(changed.getRevisionNumber());
+		return objectIds;
+	}
+
+}
@@ -34,6 +34,7 @@ import org.xydra.index.iterator.Iterators;
 import org.xydra.log.api.Logger;
 import org.xydra.log.api.LoggerFactory;
 import org.xydra.sharedutils.XyAssert;
+import org.xydra.store.impl.gae.InstanceCache;
 import org.xydra.store.impl.gae.InstanceContext;
 import org.xydra.store.impl.gae.Memcache;
 import org.xydra.store.impl.gae.changes.IGaeChangesService;
@@ -45,8 +46,6 @@ import org.xydra.xgae.datastore.api.SKey;
 import org.xydra.xgae.datastore.api.SText;
 import org.xydra.xgae.util.XGaeDebugHelper;
 
-import com.google.common.cache.Cache;
-
 /**
  * Computes *Snapshots ( {@link SimpleField}, {@link SimpleObject},
  * {@link SimpleModel}) from a given {@link XChangeLog}.
@@ -366,17 +365,22 @@ public class GaeSnapshotServiceImpl3 extends AbstractGaeSnapshotServiceImpl {
 	@SuppressWarnings("unchecked")
 	private SortedMap<Long, XRevWritableModel> getModelSnapshotsCache() {
 		final String key = "snapshots:" + this.changesService.getModelAddress();
-		final Cache<String, Object> instanceCache = InstanceContext.getInstanceCache();
-		SortedMap<Long, XRevWritableModel> modelSnapshotsCache;
-		synchronized (instanceCache) {
-			modelSnapshotsCache = (SortedMap<Long, XRevWritableModel>) instanceCache
-					.getIfPresent(key);
-			if (modelSnapshotsCache == null) {
-				log.debug("localVmcache for snapshots missing, creating one");
-				modelSnapshotsCache = new TreeMap<Long, XRevWritableModel>();
-				instanceCache.put(key, modelSnapshotsCache);
-			} else if (modelSnapshotsCache.size() > 100) {
-				modelSnapshotsCache.clear();
+		final InstanceCache instanceCache = InstanceContext.getInstanceCache();
+		SortedMap<Long, XRevWritableModel> modelSnapshotsCache = (SortedMap<Long, XRevWritableModel>) instanceCache
+				.getIfPresent(key);
+		if (modelSnapshotsCache == null) {
+			log.debug("localVmcache for snapshots missing, creating one");
+			modelSnapshotsCache = new TreeMap<Long, XRevWritableModel>();
+			final SortedMap<Long, XRevWritableModel> existing = (SortedMap<Long, XRevWritableModel>) instanceCache
+					.putIfAbsent(key, modelSnapshotsCache);
+			if (existing != null) {
+				modelSnapshotsCache = existing;
+			}
+		} else {
+			synchronized (modelSnapshotsCache) {
+				if (modelSnapshotsCache.size() > 100) {
+					modelSnapshotsCache.clear();
+				}
 			}
 		}
 		return modelSnapshotsCache;
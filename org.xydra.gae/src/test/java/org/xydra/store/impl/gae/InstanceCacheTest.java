@@ -0,0 +1,198 @@
+package org.xydra.store.impl.gae;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class InstanceCacheTest {
+
+	private static String value(final int chars) {
+		final StringBuilder b = new StringBuilder();
+		for (int i = 0; i < chars; i++) {
+			b.append('x');
+		}
+		return b.toString();
+	}
+
+	@Test
+	public void testPutGetInvalidate() {
+		final InstanceCache cache = new InstanceCache(1024 * 1024, 1, TimeUnit.MINUTES);
+		cache.put("a", "A");
+		assertEquals("A", cache.getIfPresent("a"));
+		assertEquals("A", cache.putIfAbsent("a", "B"));
+		assertEquals("A", cache.getIfPresent("a"));
+		cache.put("a", "C");
+		assertEquals("C", cache.getIfPresent("a"));
+		cache.invalidate("a");
+		assertNull(cache.getIfPresent("a"));
+		assertNull(cache.putIfAbsent("a", "D"));
+		assertEquals(1, cache.size());
+		cache.invalidateAll();
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getBytes());
+	}
+
+	@Test
+	public void testStaysWithinBudget() {
+		final long maxBytes = 256 * 1024;
+		final InstanceCache cache = new InstanceCache(maxBytes, 1, TimeUnit.MINUTES);
+		final String value = value(1000);
+		for (int i = 0; i < 10000; i++) {
+			cache.put("key" + i, value);
+			cache.getIfPresent("key" + i);
+		}
+		assertTrue(cache.getBytes() <= maxBytes);
+		assertTrue(cache.size() > 50);
+
+		// too large for the whole cache
+		cache.put("huge", value((int) maxBytes));
+		assertNull(cache.getIfPresent("huge"));
+	}
+
+	@Test
+	public void testEntriesLargerThanSegments() {
+		final long maxBytes = 256 * 1024;
+		final InstanceCache cache = new InstanceCache(maxBytes, 1, TimeUnit.MINUTES);
+		final String value = value(1000);
+		for (int i = 0; i < 1000; i++) {
+			cache.put("key" + i, value);
+		}
+		final long smallEntries = cache.size();
+
+		// larger than a segment, but fits into the cache
+		final String large = value((int) maxBytes / 8);
+		cache.put("large", large);
+		assertSame(large, cache.getIfPresent("large"));
+		assertTrue(cache.getBytes() <= maxBytes);
+		assertTrue(cache.size() < smallEntries + 1);
+
+		// small entries do not push it out
+		for (int i = 0; i < 1000; i++) {
+			cache.put("more" + i, value);
+		}
+		assertSame(large, cache.getIfPresent("large"));
+		assertTrue(cache.getBytes() <= maxBytes);
+
+		// large entries push out the least recently used large entries
+		for (int i = 0; i < 4; i++) {
+			cache.put("large" + i, value((int) maxBytes / 8));
+		}
+		assertNull(cache.getIfPresent("large"));
+		assertNotNull(cache.getIfPresent("large3"));
+		assertTrue(cache.getBytes() <= maxBytes);
+
+		cache.invalidate("large3");
+		assertNull(cache.getIfPresent("large3"));
+		cache.invalidateAll();
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getBytes());
+	}
+
+	@Test
+	public void testReweighValuesChangedInPlace() {
+		final long maxBytes = 256 * 1024;
+		final InstanceCache cache = new InstanceCache(maxBytes, 1, TimeUnit.MINUTES);
+		final List<String> list = new ArrayList<String>();
+		cache.put("list", list);
+		final long emptyBytes = cache.getBytes();
+
+		final String value = value(100);
+		for (int i = 0; i < 50; i++) {
+			list.add(value);
+		}
+		assertEquals(emptyBytes, cache.getBytes());
+		cache.reweigh("list");
+		assertTrue(cache.getBytes() > emptyBytes + 50 * 200);
+		assertSame(list, cache.getIfPresent("list"));
+
+		// too large for its segment now, but not for the cache
+		for (int i = 0; i < 100; i++) {
+			list.add(value);
+		}
+		cache.reweigh("list");
+		assertSame(list, cache.getIfPresent("list"));
+		assertTrue(cache.getBytes() > maxBytes / InstanceCache.SEGMENTS);
+
+		// too large for the cache
+		for (int i = 0; i < 2000; i++) {
+			list.add(value);
+		}
+		cache.reweigh("list");
+		assertNull(cache.getIfPresent("list"));
+		assertEquals(0, cache.getBytes());
+
+		// unknown keys are ignored
+		cache.reweigh("unknown");
+	}
+
+	@Test
+	public void testHotEntriesSurviveScan() {
+		final InstanceCache cache = new InstanceCache(256 * 1024, 1, TimeUnit.MINUTES);
+		final String value = value(1000);
+		for (int i = 0; i < 10; i++) {
+			cache.put("hot" + i, value);
+		}
+		for (int round = 0; round < 10; round++) {
+			for (int i = 0; i < 10; i++) {
+				assertNotNull(cache.getIfPresent("hot" + i));
+			}
+		}
+		// a scan over many keys used only once
+		for (int i = 0; i < 5000; i++) {
+			cache.put("scan" + i, value);
+		}
+		for (int i = 0; i < 10; i++) {
+			assertNotNull("hot" + i, cache.getIfPresent("hot" + i));
+		}
+	}
+
+	@Test
+	public void testExpiry() throws InterruptedException {
+		final InstanceCache cache = new InstanceCache(1024 * 1024, 10, TimeUnit.MILLISECONDS);
+		cache.put("a", "A");
+		Thread.sleep(50);
+		assertNull(cache.getIfPresent("a"));
+		cache.put("b", "B");
+		Thread.sleep(50);
+		cache.cleanUp();
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testConcurrentAccess() throws InterruptedException {
+		final InstanceCache cache = new InstanceCache(128 * 1024, 1, TimeUnit.MINUTES);
+		final boolean[] failed = new boolean[1];
+		final Thread[] threads = new Thread[8];
+		for (int t = 0; t < threads.length; t++) {
+			final int offset = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 20000; i++) {
+						final String key = "k" + (i * 7 + offset) % 500;
+						final Object v = cache.getIfPresent(key);
+						if (v != null && !v.equals(key)) {
+							failed[0] = true;
+						}
+						cache.put(key, key);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (final Thread thread : threads) {
+			thread.join();
+		}
+		assertTrue(!failed[0]);
+		assertTrue(cache.getBytes() <= cache.getMaxBytes());
+	}
+
+}
@@ -0,0 +1,26 @@
+package org.xydra.store.impl.gae;
+
+import org.junit.Before;
+import org.xydra.base.BaseRuntime;
+import org.xydra.store.AbstractPersistenceTestForAtomicCommandsAndMiscellaneous;
+import org.xydra.store.XydraRuntime;
+import org.xydra.xgae.XGae;
+import org.xydra.xgae.impl.local.XGaeImplLocal;
+
+/**
+ * Runs the {@link GaePersistence} on the local datastore and memcache
+ */
+public class LocalXGaePersistenceTestForAtomicCommandsAndMiscellaneous extends
+		AbstractPersistenceTestForAtomicCommandsAndMiscellaneous {
+
+	@Before
+	public void setUp() {
+		XGae.setInstance(new XGaeImplLocal());
+		XydraRuntime.forceReInitialisation();
+
+		super.persistence = new GaePersistence(super.repoId);
+		super.persistence.clear();
+		super.comFactory = BaseRuntime.getCommandFactory();
+	}
+
+}
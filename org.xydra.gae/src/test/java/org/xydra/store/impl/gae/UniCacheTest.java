@@ -0,0 +1,180 @@
+package org.xydra.store.impl.gae;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.Serializable;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.xydra.perf.Stats;
+import org.xydra.store.impl.gae.UniCache.CacheEntryHandler;
+import org.xydra.store.impl.gae.UniCache.StorageOptions;
+import org.xydra.xgae.XGae;
+import org.xydra.xgae.datastore.api.SEntity;
+import org.xydra.xgae.datastore.api.SKey;
+import org.xydra.xgae.impl.local.XGaeImplLocal;
+
+public class UniCacheTest {
+
+	private static final String KIND = "TESTCACHE";
+
+	private static class StringHandler implements CacheEntryHandler<String> {
+
+		@Override
+		public SEntity toEntity(final SKey datastoreKey, final String entry) {
+			final SEntity entity = XGae.get().datastore().createEntity(datastoreKey);
+			entity.setAttribute("value", entry);
+			return entity;
+		}
+
+		@Override
+		public String fromEntity(final SEntity entity) {
+			return (String) entity.getAttribute("value");
+		}
+
+		@Override
+		public Serializable toSerializable(final String entry) {
+			return entry;
+		}
+
+		@Override
+		public String fromSerializable(final Serializable s) {
+			return (String) s;
+		}
+
+	}
+
+	private final UniCache<String> cache = new UniCache<String>(new StringHandler(), KIND);
+
+	@Before
+	public void setUp() {
+		XGae.setInstance(new XGaeImplLocal());
+		InstanceContext.clear();
+		UniCacheMetrics.clear();
+	}
+
+	@Test
+	public void testTierMetrics() {
+		final StorageOptions opts = StorageOptions.create(0, true, true, false);
+		final Stats request = UniCacheMetrics.startRequest();
+		this.cache.put("a", "A", opts);
+		assertEquals("A", this.cache.get("a", opts));
+		XGae.get().memcache().clear();
+		assertEquals("A", this.cache.get("a", opts));
+		assertNull(this.cache.get("b", opts));
+		assertEquals(request, UniCacheMetrics.endRequest());
+
+		for (final Stats stats : new Stats[] { request, UniCacheMetrics.getSharedStats() }) {
+			assertEquals(1, stats.getCount(UniCacheMetrics.name(KIND, UniCacheMetrics.MEMCACHE,
+					"fill")));
+			assertEquals(1, stats.getCount(UniCacheMetrics.name(KIND, UniCacheMetrics.MEMCACHE,
+					"hit")));
+			assertEquals(2, stats.getCount(UniCacheMetrics.name(KIND, UniCacheMetrics.MEMCACHE,
+					"miss")));
+			assertEquals(1, stats.getCount(UniCacheMetrics.name(KIND, UniCacheMetrics.DATASTORE,
+					"hit")));
+			assertEquals(3, stats.getCount(UniCacheMetrics.name(KIND, UniCacheMetrics.MEMCACHE,
+					"get")));
+			assertEquals(1.0 / 3, UniCacheMetrics.getHitRatio(stats, KIND,
+					UniCacheMetrics.MEMCACHE), 0.0001);
+		}
+
+		// not recorded for a request any more
+		this.cache.get("a", opts);
+		assertEquals(3, request.getCount(UniCacheMetrics.name(KIND, UniCacheMetrics.MEMCACHE,
+				"get")));
+	}
+
+	@Test
+	public void testRequestStatsAreIsolated() throws InterruptedException {
+		final GaePlatformRuntime runtime = new GaePlatformRuntime();
+		final StorageOptions opts = StorageOptions.create(0, true, false, false);
+		final String memcacheGets = UniCacheMetrics.name(KIND, UniCacheMetrics.MEMCACHE, "get");
+		final long[] counts = new long[4];
+		final Thread[] threads = new Thread[counts.length];
+		for (int t = 0; t < threads.length; t++) {
+			final int index = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					runtime.startRequest();
+					for (int i = 0; i <= index; i++) {
+						UniCacheTest.this.cache.get("k" + index, opts);
+					}
+					counts[index] = UniCacheMetrics.getRequestStats().getCount(memcacheGets);
+					runtime.finishRequest();
+				}
+			};
+			threads[t].start();
+		}
+		for (final Thread thread : threads) {
+			thread.join();
+		}
+		for (int t = 0; t < counts.length; t++) {
+			assertEquals(t + 1, counts[t]);
+		}
+		assertEquals(10, UniCacheMetrics.getSharedStats().getCount(memcacheGets));
+
+		// each request starts empty and ends with the request
+		runtime.startRequest();
+		final Stats first = UniCacheMetrics.getRequestStats();
+		this.cache.get("a", opts);
+		runtime.finishRequest();
+		assertNull(UniCacheMetrics.getRequestStats());
+		runtime.startRequest();
+		assertNotNull(UniCacheMetrics.getRequestStats());
+		assertEquals(0, UniCacheMetrics.getRequestStats().getCount(memcacheGets));
+		runtime.finishRequest();
+		assertEquals(1, first.getCount(memcacheGets));
+	}
+
+	@Test
+	public void testAdaptivePromotionAndDemotion() {
+		final StorageOptions opts = StorageOptions.createAdaptive(true, false, false);
+		this.cache.put("hot", "H", opts);
+		this.cache.put("cold", "C", opts);
+		for (int i = 0; i < UniCache.PROMOTE_HITS; i++) {
+			assertEquals("H", this.cache.get("hot", opts));
+		}
+		assertEquals(1, this.cache.getPromotedCount());
+		final Stats stats = UniCacheMetrics.getSharedStats();
+		final String instanceHits = UniCacheMetrics.name(KIND, UniCacheMetrics.INSTANCE, "hit");
+		assertEquals(0, stats.getCount(instanceHits));
+		assertEquals("H", this.cache.get("hot", opts));
+		assertEquals(1, stats.getCount(instanceHits));
+
+		// own writes are seen in the instance tier
+		this.cache.put("hot", "H2", opts);
+		assertEquals("H2", this.cache.get("hot", opts));
+
+		// only the other key is read in the next evaluation periods
+		for (int i = 0; i < 2 * UniCache.EVALUATE_EVERY; i++) {
+			assertEquals("C", this.cache.get("cold", opts));
+		}
+		// which is now hot itself, while the first one has been demoted
+		assertEquals(1, this.cache.getPromotedCount());
+		final String memcacheHits = UniCacheMetrics.name(KIND, UniCacheMetrics.MEMCACHE, "hit");
+		final long before = stats.getCount(memcacheHits);
+		assertEquals("H2", this.cache.get("hot", opts));
+		assertEquals(before + 1, stats.getCount(memcacheHits));
+	}
+
+	@Test
+	public void testHistogram() {
+		final Stats stats = new Stats();
+		stats.recordDuration("op", 500);
+		stats.recordDuration("op", 3000);
+		stats.recordDuration("op", 3000000);
+		assertEquals(3, stats.getCount("op"));
+		assertEquals(3003500, stats.getTotal("op"));
+		assertEquals(1, stats.getHistogram("op")[0]);
+		assertEquals(4, stats.getPercentileMicros("op", 0.5));
+		assertEquals(4096, stats.getPercentileMicros("op", 1));
+		stats.add("bytes", 100);
+		stats.add("bytes", 50);
+		assertEquals(150, stats.getTotal("bytes"));
+	}
+
+}
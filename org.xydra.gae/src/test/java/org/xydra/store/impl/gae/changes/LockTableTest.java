@@ -0,0 +1,132 @@
+package org.xydra.store.impl.gae.changes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import org.xydra.base.Base;
+import org.xydra.base.XAddress;
+
+public class LockTableTest {
+
+	private static final XAddress MODEL = Base.toAddress("/repo/model/-/-");
+
+	private static GaeLocks locks(final String... addresses) {
+		final List<String> encoded = new ArrayList<String>();
+		for (final String a : addresses) {
+			encoded.add(Base.toAddress(a).toURI());
+		}
+		return new GaeLocks(encoded);
+	}
+
+	private static GaeLocks randomLocks(final Random random) {
+		final List<String> encoded = new ArrayList<String>();
+		final int n = 1 + random.nextInt(3);
+		for (int i = 0; i < n; i++) {
+			final int depth = random.nextInt(10);
+			final String object = "o" + random.nextInt(5);
+			if (depth == 0) {
+				encoded.add(MODEL.toURI());
+			} else if (depth < 4) {
+				encoded.add(Base.resolveObject(MODEL, Base.toId(object)).toURI());
+			} else {
+				encoded.add(Base.resolveField(MODEL, Base.toId(object),
+						Base.toId("f" + random.nextInt(3))).toURI());
+			}
+		}
+		return new GaeLocks(encoded);
+	}
+
+	@Test
+	public void testConflictsAcrossLevels() {
+		final LockTable table = new LockTable();
+		table.register(1, locks("/repo/model/o1/f1"));
+		table.register(2, locks("/repo/model/o2/-"));
+		table.register(3, locks("/repo/model/o3/f1", "/repo/model/o3/f2"));
+
+		assertEquals(3, table.getConflicting(locks("/repo/model/-/-")).size());
+		assertTrue(table.getConflicting(locks("/repo/model/o1/-")).contains(1L));
+		assertTrue(table.getConflicting(locks("/repo/model/o2/f9")).contains(2L));
+		assertTrue(table.getConflicting(locks("/repo/model/o1/f2")).isEmpty());
+		assertEquals(Boolean.TRUE, table.isConflicting(3, locks("/repo/model/o3/f2")));
+		assertEquals(Boolean.FALSE, table.isConflicting(3, locks("/repo/model/o1/f1")));
+		assertNull(table.isConflicting(4, locks("/repo/model/o3/f2")));
+
+		table.release(3);
+		assertFalse(table.isRegistered(3));
+		assertEquals(2, table.getRegistered().size());
+		assertFalse(table.getRegistered().contains(3L));
+		assertTrue(table.getConflicting(locks("/repo/model/o3/-")).isEmpty());
+		assertEquals(2, table.size());
+
+		final Set<Long> registered = new HashSet<Long>();
+		assertEquals(1, table.getConflicting(locks("/repo/model/o2/f1"), registered).size());
+		assertEquals(2, registered.size());
+		assertTrue(registered.contains(1L));
+	}
+
+	@Test
+	public void testAgreesWithGaeLocks() {
+		final Random random = new Random(3);
+		final LockTable table = new LockTable();
+		final Map<Long, GaeLocks> registered = new HashMap<Long, GaeLocks>();
+		for (long rev = 0; rev < 200; rev++) {
+			final GaeLocks query = randomLocks(random);
+			for (final Map.Entry<Long, GaeLocks> e : registered.entrySet()) {
+				final boolean expected = e.getValue().isConflicting(query);
+				assertEquals(query + " vs " + e.getValue(), expected, table.getConflicting(query)
+						.contains(e.getKey()));
+				assertEquals(expected, table.isConflicting(e.getKey(), query));
+			}
+			final GaeLocks locks = randomLocks(random);
+			table.register(rev, locks);
+			registered.put(rev, locks);
+			if (random.nextBoolean()) {
+				final long released = random.nextInt((int) rev + 1);
+				table.release(released);
+				registered.remove(released);
+			}
+		}
+	}
+
+	@Test
+	public void testWaitersAreNotifiedOnRelease() throws InterruptedException {
+		final LockTable table = new LockTable();
+		table.register(7, locks("/repo/model/o1/-"));
+		final long holdsBefore = LockTable.getStats().getCount(LockTable.STATS_HOLD);
+
+		final Thread releaser = new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(50);
+				} catch (final InterruptedException e) {
+					// ignore interrupt
+				}
+				table.release(7);
+			}
+		};
+		final long start = System.currentTimeMillis();
+		releaser.start();
+		assertTrue(table.awaitRelease(7, 10000));
+		assertTrue(System.currentTimeMillis() - start < 5000);
+		releaser.join();
+		assertEquals(holdsBefore + 1, LockTable.getStats().getCount(LockTable.STATS_HOLD));
+
+		// nothing to wait for
+		assertTrue(table.awaitRelease(8, 10000));
+		table.register(9, locks("/repo/model/o1/-"));
+		assertFalse(table.awaitRelease(9, 20));
+	}
+
+}
@@ -0,0 +1,110 @@
+package org.xydra.store.impl.gae.ng;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.xydra.base.Base;
+import org.xydra.base.BaseRuntime;
+import org.xydra.base.XAddress;
+import org.xydra.base.XId;
+import org.xydra.base.change.XCommandFactory;
+import org.xydra.base.change.XEvent;
+import org.xydra.store.XydraRuntime;
+import org.xydra.store.impl.gae.GaePersistence;
+import org.xydra.store.impl.gae.changes.GaeChange;
+import org.xydra.xgae.XGae;
+import org.xydra.xgae.impl.local.XGaeImplLocal;
+
+public class ChangeLogPrefetcherTest {
+
+	private static final XId ACTOR = Base.toId("actor");
+
+	private static final int OBJECTS = 600;
+
+	private XAddress modelAddress;
+
+	private GaePersistence persistence;
+
+	@Before
+	public void setUp() {
+		final XGaeImplLocal.Config config = new XGaeImplLocal.Config();
+		config.readLatencyMicros = 2000;
+		XGae.setInstance(new XGaeImplLocal(config));
+		XydraRuntime.forceReInitialisation();
+
+		final XId repoId = Base.toId("repo");
+		this.persistence = new GaePersistence(repoId);
+		this.persistence.clear();
+		final XCommandFactory commands = BaseRuntime.getCommandFactory();
+		final XId modelId = Base.toId("model");
+		this.modelAddress = Base.resolveModel(repoId, modelId);
+		this.persistence.executeCommand(ACTOR,
+				commands.createForcedAddModelCommand(repoId, modelId));
+		for (int i = 0; i < OBJECTS; i++) {
+			this.persistence.executeCommand(ACTOR,
+					commands.createForcedAddObjectCommand(this.modelAddress, Base.toId("o" + i)));
+		}
+	}
+
+	@Test
+	public void testIteratesUpToFirstMissingRevision() {
+		final ChangeLogPrefetcher prefetcher = new ChangeLogPrefetcher(this.modelAddress,
+				new Interval(0, Long.MAX_VALUE));
+		long rev = 0;
+		while (prefetcher.hasNext()) {
+			final GaeChange change = prefetcher.next();
+			assertEquals(rev, change.rev);
+			rev++;
+		}
+		assertEquals(OBJECTS + 1, rev);
+		assertFalse(prefetcher.hasNext());
+		assertNull(prefetcher.nextBatch());
+		// the pipeline has grown while catching up
+		assertEquals(ChangeLogManager.MAXIMAL_CHANGES_FETCH_SIZE, prefetcher.getBatchSize());
+		assertTrue(prefetcher.getBatchCount() > 1);
+	}
+
+	@Test
+	public void testSmallRangeIsSingleBatch() {
+		final ChangeLogPrefetcher prefetcher = new ChangeLogPrefetcher(this.modelAddress,
+				new Interval(10, 19));
+		final Map<Long, GaeChange> batch = prefetcher.nextBatch();
+		assertEquals(10, batch.size());
+		assertNull(prefetcher.nextBatch());
+		assertEquals(1, prefetcher.getBatchCount());
+	}
+
+	@Test
+	public void testEventsMatchPersistence() {
+		final ChangeLogManager manager = new ChangeLogManager(this.modelAddress);
+		final List<XEvent> events = manager.getEventsInInterval(new Interval(1, OBJECTS + 100));
+		assertEquals(OBJECTS, events.size());
+		for (int i = 0; i < OBJECTS; i++) {
+			assertEquals(Base.toId("o" + i), events.get(i).getChangedEntity().getObject());
+		}
+		assertEquals(events,
+				this.persistence.getEvents(this.modelAddress, 1, Long.MAX_VALUE));
+
+		final XAddress objectAddress = Base.resolveObject(this.modelAddress, Base.toId("o7"));
+		final List<XEvent> objectEvents = this.persistence.getEvents(objectAddress, 0, OBJECTS);
+		assertEquals(1, objectEvents.size());
+		assertEquals(events.get(7), objectEvents.get(0));
+	}
+
+	@Test
+	public void testGetChangesAcrossBatches() {
+		final ChangeLogManager manager = new ChangeLogManager(this.modelAddress);
+		final Map<Long, GaeChange> changes = manager.getChanges(new Interval(50, 549));
+		assertEquals(500, changes.size());
+		assertTrue(changes.containsKey(50L));
+		assertTrue(changes.containsKey(549L));
+	}
+
+}
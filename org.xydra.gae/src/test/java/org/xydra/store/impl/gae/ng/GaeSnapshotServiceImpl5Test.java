@@ -0,0 +1,230 @@
+package org.xydra.store.impl.gae.ng;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xydra.base.Base;
+import org.xydra.base.BaseRuntime;
+import org.xydra.base.XAddress;
+import org.xydra.base.XCompareUtils;
+import org.xydra.base.XId;
+import org.xydra.base.change.XCommand;
+import org.xydra.base.change.XCommandFactory;
+import org.xydra.base.rmof.XRevWritableModel;
+import org.xydra.base.value.XV;
+import org.xydra.perf.Stats;
+import org.xydra.store.XydraRuntime;
+import org.xydra.store.impl.gae.GaePersistence;
+import org.xydra.store.impl.gae.Memcache;
+import org.xydra.xgae.XGae;
+import org.xydra.xgae.impl.local.XGaeImplLocal;
+
+public class GaeSnapshotServiceImpl5Test {
+
+	private static final XId ACTOR = Base.toId("actor");
+
+	private static final int CHANGES = 800;
+
+	private static final int FIELDS = 3;
+
+	/** objects that get most of the changes */
+	private static final int HOT_OBJECTS = 20;
+
+	private static final int OBJECTS = 200;
+
+	/** larger than any event of this test */
+	private static final long MAX_EVENT_BYTES = 1024;
+
+	private XAddress modelAddress;
+
+	private GaePersistence persistence;
+
+	private long rev;
+
+	@Before
+	public void setUp() {
+		XGae.setInstance(new XGaeImplLocal());
+		XydraRuntime.forceReInitialisation();
+		Memcache.setUseMemCache(true);
+
+		final XId repoId = Base.toId("repo");
+		this.persistence = new GaePersistence(repoId);
+		this.persistence.clear();
+		final XCommandFactory commands = BaseRuntime.getCommandFactory();
+		final XId modelId = Base.toId("model");
+		this.modelAddress = Base.resolveModel(repoId, modelId);
+		this.rev = this.persistence.executeCommand(ACTOR,
+				commands.createForcedAddModelCommand(repoId, modelId));
+
+		/* object -> field -> has a value */
+		final Map<XId, Map<XId, Boolean>> state = new HashMap<XId, Map<XId, Boolean>>();
+		final Random random = new Random(42);
+		for (int i = 0; i < OBJECTS; i++) {
+			final XId objectId = Base.toId("o" + i);
+			final XAddress objectAddress = Base.resolveObject(this.modelAddress, objectId);
+			execute(commands.createForcedAddObjectCommand(this.modelAddress, objectId));
+			final Map<XId, Boolean> fields = new HashMap<XId, Boolean>();
+			state.put(objectId, fields);
+			for (int f = 0; f < FIELDS; f++) {
+				final XId fieldId = Base.toId("f" + f);
+				execute(commands.createForcedAddFieldCommand(objectAddress, fieldId));
+				execute(commands.createForcedAddValueCommand(
+						Base.resolveField(objectAddress, fieldId),
+						XV.toValue(randomString(random, 20 + random.nextInt(100)))));
+				fields.put(fieldId, true);
+			}
+		}
+
+		/* changes are skewed to few objects */
+		for (int i = 0; i < CHANGES; i++) {
+			final XId objectId = Base.toId("o"
+					+ random.nextInt(random.nextInt(10) == 0 ? OBJECTS : HOT_OBJECTS));
+			final XAddress objectAddress = Base.resolveObject(this.modelAddress, objectId);
+			final Map<XId, Boolean> fields = state.get(objectId);
+			if (fields == null) {
+				state.put(objectId, new HashMap<XId, Boolean>());
+				execute(commands.createForcedAddObjectCommand(this.modelAddress, objectId));
+				continue;
+			}
+			if (random.nextInt(50) == 0) {
+				state.remove(objectId);
+				execute(commands.createForcedRemoveObjectCommand(objectAddress));
+				continue;
+			}
+			final XId fieldId = Base.toId("f" + random.nextInt(FIELDS));
+			final XAddress fieldAddress = Base.resolveField(objectAddress, fieldId);
+			final Boolean hasValue = fields.get(fieldId);
+			final String value = randomString(random, 20 + random.nextInt(100));
+			if (hasValue == null) {
+				fields.put(fieldId, false);
+				execute(commands.createForcedAddFieldCommand(objectAddress, fieldId));
+			} else if (!hasValue) {
+				fields.put(fieldId, true);
+				execute(commands.createForcedAddValueCommand(fieldAddress, XV.toValue(value)));
+			} else if (random.nextInt(10) == 0) {
+				fields.put(fieldId, false);
+				execute(commands.createForcedRemoveValueCommand(fieldAddress));
+			} else {
+				execute(commands.createForcedChangeValueCommand(fieldAddress, XV.toValue(value)));
+			}
+		}
+	}
+
+	@After
+	public void tearDown() {
+		GaeSnapshotServiceImpl5.setChunkSize(Memcache.MAX_CHUNK_SIZE);
+		Memcache.setUseMemCache(true);
+	}
+
+	private void execute(final XCommand command) {
+		final long result = this.persistence.executeCommand(ACTOR, command);
+		assertTrue("command failed: " + command, result >= 0);
+		this.rev = result;
+	}
+
+	private static String randomString(final Random random, final int length) {
+		final StringBuilder b = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			b.append((char) ('a' + random.nextInt(26)));
+		}
+		return b.toString();
+	}
+
+	private XRevWritableModel getSnapshot(final long snapshotRev) {
+		return new GaeSnapshotServiceImpl5(new ChangeLogManager(this.modelAddress)).getModelSnapshot(
+				snapshotRev, true);
+	}
+
+	private XRevWritableModel replayFromScratch(final long snapshotRev) {
+		Memcache.setUseMemCache(false);
+		try {
+			return getSnapshot(snapshotRev);
+		} finally {
+			Memcache.setUseMemCache(true);
+		}
+	}
+
+	private void assertSnapshotsMatchReplay(final Set<Long> revs) {
+		for (final long snapshotRev : revs) {
+			final XRevWritableModel snapshot = getSnapshot(snapshotRev);
+			assertEquals(snapshotRev, snapshot.getRevisionNumber());
+			assertTrue("rev " + snapshotRev,
+					XCompareUtils.equalState(replayFromScratch(snapshotRev), snapshot));
+		}
+	}
+
+	@Test
+	public void testCheckpointsMatchReplay() {
+		Memcache.clear();
+		final Stats stats = GaeSnapshotServiceImpl5.getStats();
+		stats.clear();
+		// writes checkpoints up to the latest revision
+		getSnapshot(this.rev);
+		assertTrue("full=" + stats.getCount(GaeSnapshotServiceImpl5.STATS_PUT_FULL) + " delta="
+				+ stats.getCount(GaeSnapshotServiceImpl5.STATS_PUT_DELTA) + " bytes="
+				+ stats.getTotal(GaeSnapshotServiceImpl5.STATS_PUT_FULL) + "/"
+				+ stats.getTotal(GaeSnapshotServiceImpl5.STATS_PUT_DELTA),
+				stats.getCount(GaeSnapshotServiceImpl5.STATS_PUT_DELTA) > 0);
+		assertTrue(stats.getCount(GaeSnapshotServiceImpl5.STATS_PUT_FULL) > 0);
+
+		final Set<Long> revs = new HashSet<Long>();
+		final Random random = new Random(7);
+		for (int i = 0; i < 20; i++) {
+			revs.add(1 + (long) random.nextInt((int) this.rev));
+		}
+		revs.add(this.rev);
+		assertSnapshotsMatchReplay(revs);
+		assertTrue(stats.getCount(GaeSnapshotServiceImpl5.STATS_LOAD_DELTA) > 0);
+	}
+
+	@Test
+	public void testReplayIsBounded() {
+		final Stats stats = GaeSnapshotServiceImpl5.getStats();
+		getSnapshot(this.rev);
+
+		for (long snapshotRev = 1; snapshotRev <= this.rev; snapshotRev += 37) {
+			final long before = stats.getTotal(GaeSnapshotServiceImpl5.STATS_REPLAY_BYTES);
+			getSnapshot(snapshotRev);
+			final long replayed = stats.getTotal(GaeSnapshotServiceImpl5.STATS_REPLAY_BYTES)
+					- before;
+			assertTrue("rev " + snapshotRev + " replayed " + replayed + " bytes",
+					replayed <= 256 * 1024 + MAX_EVENT_BYTES);
+		}
+
+		// without checkpoints the whole history is replayed
+		Memcache.clear();
+		final long before = stats.getTotal(GaeSnapshotServiceImpl5.STATS_REPLAY_EVENTS);
+		getSnapshot(this.rev);
+		assertEquals(this.rev + 1, stats.getTotal(GaeSnapshotServiceImpl5.STATS_REPLAY_EVENTS)
+				- before);
+	}
+
+	@Test
+	public void testLargeSnapshotsAreChunked() {
+		GaeSnapshotServiceImpl5.setChunkSize(1000);
+		Memcache.clear();
+		final Stats stats = GaeSnapshotServiceImpl5.getStats();
+		stats.clear();
+		getSnapshot(this.rev);
+		final long puts = stats.getCount(GaeSnapshotServiceImpl5.STATS_PUT_FULL)
+				+ stats.getCount(GaeSnapshotServiceImpl5.STATS_PUT_DELTA);
+		assertTrue(stats.getTotal(GaeSnapshotServiceImpl5.STATS_PUT_CHUNKS) > puts);
+
+		final Set<Long> revs = new HashSet<Long>();
+		for (long snapshotRev = this.rev; snapshotRev > 0; snapshotRev -= 101) {
+			revs.add(snapshotRev);
+		}
+		assertSnapshotsMatchReplay(revs);
+		assertEquals(0, stats.getCount(GaeSnapshotServiceImpl5.STATS_LOAD_MISS));
+	}
+
+}
@@ -0,0 +1,152 @@
+package org.xydra.xgae.impl.local;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.xydra.xgae.datastore.api.IDatastore;
+import org.xydra.xgae.datastore.api.SEntity;
+import org.xydra.xgae.datastore.api.SKey;
+import org.xydra.xgae.datastore.api.STransaction;
+import org.xydra.xgae.memcache.api.IMemCache;
+import org.xydra.xgae.memcache.api.IMemCache.IdentifiableValue;
+import org.xydra.xgae.memcache.impl.local.BoundedLocalMemCache;
+
+public class XGaeImplLocalTest {
+
+	private IDatastore datastore;
+
+	@Before
+	public void setUp() {
+		this.datastore = new XGaeImplLocal().datastore();
+	}
+
+	private SEntity entity(final String name, final long value) {
+		final SEntity e = this.datastore.createEntity("kind", name);
+		e.setAttribute("value", value);
+		return e;
+	}
+
+	@Test
+	public void testPutGetCopies() {
+		final SEntity e = entity("a", 1);
+		this.datastore.sync().putEntity(e);
+		e.setAttribute("value", 2);
+		final SEntity stored = this.datastore.sync().getEntity(e.getKey());
+		assertEquals(1L, stored.getAttribute("value"));
+		stored.setAttribute("value", 3);
+		assertEquals(1L, this.datastore.sync().getEntity(e.getKey()).getAttribute("value"));
+		assertNull(this.datastore.sync().getEntity(this.datastore.createKey("kind", "b")));
+	}
+
+	@Test
+	public void testRangeQuery() {
+		for (final String name : new String[] { "a", "b", "c", "d" }) {
+			this.datastore.sync().putEntity(entity(name, 1));
+		}
+		this.datastore.sync().putEntity(this.datastore.createEntity("other", "b"));
+		this.datastore.sync().deleteEntity(this.datastore.createKey("kind", "c"));
+		final List<String> names = new ArrayList<String>();
+		for (final SKey key : this.datastore.sync().prepareRangeQuery("kind", true, "b", "d")
+				.asKeysIterable()) {
+			names.add(key.getName());
+		}
+		assertEquals("[b, d]", names.toString());
+		assertEquals(3, this.datastore.sync().prepareRangeQuery("kind", false, null, "z").asList()
+				.size());
+	}
+
+	@Test
+	public void testTransactionConflict() {
+		final SKey key = this.datastore.createKey("kind", "a");
+		final STransaction t1 = this.datastore.sync().beginTransaction();
+		final STransaction t2 = this.datastore.sync().beginTransaction();
+		assertTrue(this.datastore.sync().isTransactionsActive());
+		assertNull(this.datastore.sync().getEntity(key, t1));
+		assertNull(this.datastore.sync().getEntity(key, t2));
+		this.datastore.sync().putEntity(entity("a", 1), t1);
+		this.datastore.sync().putEntity(entity("a", 2), t2);
+		// not visible before commit
+		assertNull(this.datastore.sync().getEntity(key));
+		this.datastore.sync().endTransaction(t1);
+		try {
+			this.datastore.sync().endTransaction(t2);
+			fail("expected a conflict");
+		} catch (final ConcurrentModificationException e) {
+			// expected
+		}
+		assertFalse(this.datastore.sync().isTransactionsActive());
+		assertEquals(1L, this.datastore.sync().getEntity(key).getAttribute("value"));
+	}
+
+	@Test
+	public void testTransactionConflictWithDeleteAndRecreate() {
+		final SKey key = this.datastore.createKey("kind", "a");
+		final STransaction txn = this.datastore.sync().beginTransaction();
+		assertNull(this.datastore.sync().getEntity(key, txn));
+		this.datastore.sync().putEntity(entity("a", 1));
+		this.datastore.sync().deleteEntity(key);
+		this.datastore.sync().putEntity(entity("a", 2), txn);
+		try {
+			this.datastore.sync().endTransaction(txn);
+			fail("expected a conflict");
+		} catch (final ConcurrentModificationException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testAsync() throws InterruptedException, ExecutionException {
+		final List<Future<SKey>> puts = new ArrayList<Future<SKey>>();
+		for (int i = 0; i < 10; i++) {
+			puts.add(this.datastore.async().putEntity(entity("e" + i, i)));
+		}
+		for (final Future<SKey> put : puts) {
+			assertNotNull(this.datastore.async().getEntity(put.get()).get());
+		}
+	}
+
+	@Test
+	public void testMemCacheCas() {
+		final IMemCache cache = new BoundedLocalMemCache(1024 * 1024, 0);
+		final IdentifiableValue missing = cache.getIdentifiable("k");
+		assertNull(missing.getValue());
+		assertTrue(cache.putIfUntouched("k", missing, "v1"));
+		assertFalse(cache.putIfUntouched("k", missing, "v2"));
+
+		final IdentifiableValue v1 = cache.getIdentifiable("k");
+		assertEquals("v1", v1.getValue());
+		// storing the same value again counts as a change
+		cache.put("k", "v1");
+		assertFalse(cache.putIfUntouched("k", v1, "v3"));
+		final IdentifiableValue current = cache.getIdentifiable("k");
+		assertTrue(cache.putIfUntouched("k", current, "v3"));
+		assertEquals("v3", cache.get("k"));
+	}
+
+	@Test
+	public void testMemCacheEviction() {
+		final BoundedLocalMemCache cache = new BoundedLocalMemCache(64 * 1024, 0);
+		for (int i = 0; i < 1000; i++) {
+			cache.put("key" + i, new byte[500]);
+		}
+		assertTrue(cache.getBytes() <= 64 * 1024);
+		assertTrue(cache.size() < 1000);
+		assertNotNull(cache.get("key999"));
+		final IdentifiableValue v = cache.getIdentifiable("key999");
+		cache.clear();
+		assertFalse(cache.putIfUntouched("key999", v, "x"));
+	}
+
+}
@@ -0,0 +1,251 @@
+package org.xydra.index.impl;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * An immutable, sorted list of distinct int triples (a,b,c), all ints >= 0.
+ *
+ * Triples are stored in blocks of {@link #BLOCK} triples. The first triple of each block is stored as plain ints, so a
+ * block can be found by binary search. The other triples are stored as the difference to their predecessor, as
+ * variable-length ints:
+ *
+ * <pre>
+ * a changed: (a - a'), b, c
+ * b changed: 0, (b - b'), c
+ * c changed: 0, 0, (c - c')
+ * </pre>
+ *
+ * For a sorted permutation of a triple index most triples only differ in the last or the last two positions, so a
+ * triple needs about 3 bytes instead of 12.
+ *
+ * @author xamde
+ */
+public final class CompactIntTriples implements Serializable {
+
+	/**
+	 * Adds triples in ascending order.
+	 */
+	public static class Builder {
+
+		private byte[] data = new byte[64];
+
+		private int dataLength = 0;
+
+		private int[] firsts = new int[3 * 4];
+
+		private int[] offsets = new int[4];
+
+		private int pa = -1, pb = -1, pc = -1;
+
+		private int size = 0;
+
+		/**
+		 * @param a >= 0
+		 * @param b >= 0
+		 * @param c >= 0
+		 * @throws IllegalArgumentException if the triple is not greater than the previous one
+		 */
+		public void add(final int a, final int b, final int c) {
+			if (compare(a, b, c, this.pa, this.pb, this.pc) <= 0 || a < 0 || b < 0 || c < 0) {
+				throw new IllegalArgumentException("triples must be added in ascending order and be >= 0, got (" + a
+						+ "," + b + "," + c + ") after (" + this.pa + "," + this.pb + "," + this.pc + ")");
+			}
+			if (this.size % BLOCK == 0) {
+				final int block = this.size / BLOCK;
+				if (block == this.offsets.length) {
+					this.offsets = Arrays.copyOf(this.offsets, block * 2);
+					this.firsts = Arrays.copyOf(this.firsts, block * 2 * 3);
+				}
+				this.offsets[block] = this.dataLength;
+				this.firsts[3 * block] = a;
+				this.firsts[3 * block + 1] = b;
+				this.firsts[3 * block + 2] = c;
+			} else if (a != this.pa) {
+				write(a - this.pa);
+				write(b);
+				write(c);
+			} else if (b != this.pb) {
+				write(0);
+				write(b - this.pb);
+				write(c);
+			} else {
+				write(0);
+				write(0);
+				write(c - this.pc);
+			}
+			this.pa = a;
+			this.pb = b;
+			this.pc = c;
+			this.size++;
+		}
+
+		public CompactIntTriples build() {
+			final int blocks = (this.size + BLOCK - 1) / BLOCK;
+			return new CompactIntTriples(this.size, Arrays.copyOf(this.firsts, 3 * blocks), Arrays.copyOf(
+					this.offsets, blocks), Arrays.copyOf(this.data, this.dataLength));
+		}
+
+		private void write(int value) {
+			if (this.dataLength + 5 > this.data.length) {
+				this.data = Arrays.copyOf(this.data, this.data.length * 2);
+			}
+			while ((value & ~0x7F) != 0) {
+				this.data[this.dataLength++] = (byte) (value & 0x7F | 0x80);
+				value >>>= 7;
+			}
+			this.data[this.dataLength++] = (byte) value;
+		}
+
+	}
+
+	/**
+	 * Reads the triples in ascending order. The current triple is in {@link #a}, {@link #b} and {@link #c} as long as
+	 * {@link #valid} is true.
+	 */
+	public final class Cursor {
+
+		public int a, b, c;
+
+		/** index of the next triple to read */
+		private int next;
+
+		private int pos;
+
+		public boolean valid;
+
+		private Cursor(final int next) {
+			this.next = next;
+			advance();
+		}
+
+		public void advance() {
+			if (this.next >= CompactIntTriples.this.size) {
+				this.valid = false;
+				return;
+			}
+			if (this.next % BLOCK == 0) {
+				final int block = this.next / BLOCK;
+				this.a = CompactIntTriples.this.firsts[3 * block];
+				this.b = CompactIntTriples.this.firsts[3 * block + 1];
+				this.c = CompactIntTriples.this.firsts[3 * block + 2];
+				this.pos = CompactIntTriples.this.offsets[block];
+			} else {
+				final int da = read();
+				if (da > 0) {
+					this.a += da;
+					this.b = read();
+					this.c = read();
+				} else {
+					final int db = read();
+					if (db > 0) {
+						this.b += db;
+						this.c = read();
+					} else {
+						this.c += read();
+					}
+				}
+			}
+			this.next++;
+			this.valid = true;
+		}
+
+		private int read() {
+			final byte[] data = CompactIntTriples.this.data;
+			int result = 0;
+			int shift = 0;
+			byte x;
+			do {
+				x = data[this.pos++];
+				result |= (x & 0x7F) << shift;
+				shift += 7;
+			} while (x < 0);
+			return result;
+		}
+
+	}
+
+	/** number of triples per block */
+	public static final int BLOCK = 64;
+
+	public static final CompactIntTriples EMPTY = new Builder().build();
+
+	private static final long serialVersionUID = 2868221011998931532L;
+
+	/**
+	 * Lexicographic order of triples.
+	 */
+	public static int compare(final int a1, final int b1, final int c1, final int a2, final int b2, final int c2) {
+		if (a1 != a2) {
+			return a1 < a2 ? -1 : 1;
+		}
+		if (b1 != b2) {
+			return b1 < b2 ? -1 : 1;
+		}
+		if (c1 != c2) {
+			return c1 < c2 ? -1 : 1;
+		}
+		return 0;
+	}
+
+	private final byte[] data;
+
+	/** first triple of each block */
+	private final int[] firsts;
+
+	/** start of each block in data */
+	private final int[] offsets;
+
+	private final int size;
+
+	private CompactIntTriples(final int size, final int[] firsts, final int[] offsets, final byte[] data) {
+		this.size = size;
+		this.firsts = firsts;
+		this.offsets = offsets;
+		this.data = data;
+	}
+
+	public boolean contains(final int a, final int b, final int c) {
+		final Cursor cursor = seek(a, b, c);
+		return cursor.valid && cursor.a == a && cursor.b == b && cursor.c == c;
+	}
+
+	/**
+	 * @return estimated heap size in bytes
+	 */
+	public long getEstimatedMemoryInBytes() {
+		return 64 + this.data.length + 4L * (this.firsts.length + this.offsets.length);
+	}
+
+	/**
+	 * @param a use -1 to start before all triples
+	 * @param b use -1 to start before all triples with the given a
+	 * @param c use -1 to start before all triples with the given a and b
+	 * @return a cursor on the first triple which is >= (a,b,c)
+	 */
+	public Cursor seek(final int a, final int b, final int c) {
+		// find the last block which starts <= (a,b,c)
+		int lo = 0;
+		int hi = this.offsets.length - 1;
+		int block = 0;
+		while (lo <= hi) {
+			final int mid = lo + hi >>> 1;
+			if (compare(this.firsts[3 * mid], this.firsts[3 * mid + 1], this.firsts[3 * mid + 2], a, b, c) <= 0) {
+				block = mid;
+				lo = mid + 1;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		final Cursor cursor = new Cursor(block * BLOCK);
+		while (cursor.valid && compare(cursor.a, cursor.b, cursor.c, a, b, c) < 0) {
+			cursor.advance();
+		}
+		return cursor;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+}
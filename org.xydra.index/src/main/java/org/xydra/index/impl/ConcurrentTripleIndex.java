@@ -0,0 +1,458 @@
+package org.xydra.index.impl;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.xydra.index.ITripleIndex;
+import org.xydra.index.iterator.IFilter;
+import org.xydra.index.iterator.ITransformer;
+import org.xydra.index.iterator.Iterators;
+import org.xydra.index.query.Constraint;
+import org.xydra.index.query.ITriple;
+import org.xydra.index.query.KeyKeyEntryTuple;
+
+/**
+ * A thread-safe {@link ITripleIndex} with the same three permutations as {@link FastTripleIndex}:
+ *
+ * <pre>
+ * s > p > o
+ * o > s > p
+ * p > o > s
+ * </pre>
+ *
+ * Each permutation maps its first key to an immutable {@link PersistentHashMap} of {@link PersistentHashMap}s. Readers
+ * never lock: they fetch the current node of a key and work on it, so every iterator which is bound to a first key (e.g.
+ * (s,*,*) or (*,p,o)) sees a consistent snapshot of that key. Iterators over all first keys are weakly consistent, like
+ * those of a {@link ConcurrentHashMap}.
+ *
+ * Writers are striped by the subject: all changes of triples with the same subject are serialised, which keeps the
+ * three permutations in sync for each triple. Writers of different subjects run in parallel and replace the shared
+ * nodes of the other two permutations with compare-and-set. A triple is visible in (s,*,*) slightly before it is visible
+ * in (*,p,*) and (*,*,o).
+ *
+ * @author xamde
+ *
+ * @param <K> key type 1 (s)
+ * @param <L> key type 2 (p)
+ * @param <M> key type 3 (o)
+ */
+public class ConcurrentTripleIndex<K, L, M> implements ITripleIndex<K, L, M> {
+
+	/**
+	 * One permutation of the index: a -> b -> c
+	 *
+	 * @param <A>
+	 * @param <B>
+	 * @param <C>
+	 */
+	private static class Permutation<A, B, C> {
+
+		private final ConcurrentMap<A, PersistentHashMap<B, PersistentHashMap<C, Boolean>>> map = new ConcurrentHashMap<A, PersistentHashMap<B, PersistentHashMap<C, Boolean>>>();
+
+		/**
+		 * @return true if the triple was not yet in this permutation
+		 */
+		public boolean index(final A a, final B b, final C c) {
+			while (true) {
+				final PersistentHashMap<B, PersistentHashMap<C, Boolean>> node = this.map.get(a);
+				if (node == null) {
+					final PersistentHashMap<C, Boolean> set = PersistentHashMap.<C, Boolean> empty().put(c,
+							Boolean.TRUE);
+					if (this.map.putIfAbsent(a, PersistentHashMap.<B, PersistentHashMap<C, Boolean>> empty()
+							.put(b, set)) == null) {
+						return true;
+					}
+					continue;
+				}
+				PersistentHashMap<C, Boolean> set = node.get(b);
+				if (set == null) {
+					set = PersistentHashMap.empty();
+				} else if (set.containsKey(c)) {
+					return false;
+				}
+				if (this.map.replace(a, node, node.put(b, set.put(c, Boolean.TRUE)))) {
+					return true;
+				}
+			}
+		}
+
+		/**
+		 * @return true if the triple was in this permutation
+		 */
+		public boolean deIndex(final A a, final B b, final C c) {
+			while (true) {
+				final PersistentHashMap<B, PersistentHashMap<C, Boolean>> node = this.map.get(a);
+				if (node == null) {
+					return false;
+				}
+				final PersistentHashMap<C, Boolean> set = node.get(b);
+				if (set == null || !set.containsKey(c)) {
+					return false;
+				}
+				final PersistentHashMap<C, Boolean> newSet = set.remove(c);
+				final PersistentHashMap<B, PersistentHashMap<C, Boolean>> newNode = newSet.isEmpty() ? node
+						.remove(b) : node.put(b, newSet);
+				if (newNode.isEmpty() ? this.map.remove(a, node) : this.map.replace(a, node, newNode)) {
+					return true;
+				}
+			}
+		}
+
+		public PersistentHashMap<C, Boolean> lookup(final A a, final B b) {
+			final PersistentHashMap<B, PersistentHashMap<C, Boolean>> node = this.map.get(a);
+			return node == null ? null : node.get(b);
+		}
+
+		/**
+		 * @param a @CanBeNull to denote wildcard
+		 * @param b @CanBeNull to denote wildcard
+		 * @param c @CanBeNull to denote wildcard
+		 */
+		public boolean contains(final A a, final B b, final C c) {
+			if (a == null) {
+				return tupleIterator(null, b, c).hasNext();
+			}
+			final PersistentHashMap<B, PersistentHashMap<C, Boolean>> node = this.map.get(a);
+			if (node == null) {
+				return false;
+			}
+			if (b == null) {
+				return c == null || tupleIterator(node, a, null, c).hasNext();
+			}
+			final PersistentHashMap<C, Boolean> set = node.get(b);
+			return set != null && (c == null || set.containsKey(c));
+		}
+
+		/**
+		 * @param a @CanBeNull to denote wildcard
+		 * @param b @CanBeNull to denote wildcard
+		 * @param c @CanBeNull to denote wildcard
+		 */
+		public Iterator<ITriple<A, B, C>> tupleIterator(final A a, final B b, final C c) {
+			if (a != null) {
+				final PersistentHashMap<B, PersistentHashMap<C, Boolean>> node = this.map.get(a);
+				if (node == null) {
+					return Iterators.none();
+				}
+				return tupleIterator(node, a, b, c);
+			}
+			return Iterators.cascade(this.map.entrySet().iterator(),
+					new ITransformer<Map.Entry<A, PersistentHashMap<B, PersistentHashMap<C, Boolean>>>, Iterator<ITriple<A, B, C>>>() {
+
+						@Override
+						public Iterator<ITriple<A, B, C>> transform(
+								final Map.Entry<A, PersistentHashMap<B, PersistentHashMap<C, Boolean>>> in) {
+							return tupleIterator(in.getValue(), in.getKey(), b, c);
+						}
+					});
+		}
+
+		private static <A, B, C> Iterator<ITriple<A, B, C>> tupleIterator(
+				final PersistentHashMap<B, PersistentHashMap<C, Boolean>> node, final A a, final B b, final C c) {
+			if (b != null) {
+				return setIterator(node.get(b), a, b, c);
+			}
+			return Iterators.cascade(node.keyIterator(), new ITransformer<B, Iterator<ITriple<A, B, C>>>() {
+
+				@Override
+				public Iterator<ITriple<A, B, C>> transform(final B in) {
+					return setIterator(node.get(in), a, in, c);
+				}
+			});
+		}
+
+		private static <A, B, C> Iterator<ITriple<A, B, C>> setIterator(final PersistentHashMap<C, Boolean> set,
+				final A a, final B b, final C c) {
+			if (set == null) {
+				return Iterators.none();
+			}
+			if (c != null) {
+				if (!set.containsKey(c)) {
+					return Iterators.none();
+				}
+				return Iterators.<ITriple<A, B, C>> forOne(new KeyKeyEntryTuple<A, B, C>(a, b, c));
+			}
+			return Iterators.transform(set.keyIterator(), new ITransformer<C, ITriple<A, B, C>>() {
+
+				@Override
+				public ITriple<A, B, C> transform(final C in) {
+					return new KeyKeyEntryTuple<A, B, C>(a, b, in);
+				}
+			});
+		}
+
+		public static <C> Iterator<C> keys(final PersistentHashMap<C, Boolean> set) {
+			if (set == null) {
+				return Iterators.none();
+			}
+			return set.keyIterator();
+		}
+
+	}
+
+	private static final int DEFAULT_STRIPES = 64;
+
+	/** o -> s -> p */
+	private final Permutation<M, K, L> index_o_s_p = new Permutation<M, K, L>();
+
+	/** p -> o -> s */
+	private final Permutation<L, M, K> index_p_o_s = new Permutation<L, M, K>();
+
+	/** s -> p -> o */
+	private final Permutation<K, L, M> index_s_p_o = new Permutation<K, L, M>();
+
+	private final ReentrantLock[] stripes;
+
+	private final ITransformer<ITriple<M, K, L>, ITriple<K, L, M>> transformerOSP = new ITransformer<ITriple<M, K, L>, ITriple<K, L, M>>() {
+
+		@Override
+		public ITriple<K, L, M> transform(final ITriple<M, K, L> in) {
+			return new KeyKeyEntryTuple<K, L, M>(in.getKey2(), in.getEntry(), in.getKey1());
+		}
+	};
+
+	private final ITransformer<ITriple<L, M, K>, ITriple<K, L, M>> transformerPOS = new ITransformer<ITriple<L, M, K>, ITriple<K, L, M>>() {
+
+		@Override
+		public ITriple<K, L, M> transform(final ITriple<L, M, K> in) {
+			return new KeyKeyEntryTuple<K, L, M>(in.getEntry(), in.getKey1(), in.getKey2());
+		}
+	};
+
+	public ConcurrentTripleIndex() {
+		this(DEFAULT_STRIPES);
+	}
+
+	/**
+	 * @param concurrencyLevel the estimated number of concurrent writers, is rounded up to the next power of two
+	 */
+	public ConcurrentTripleIndex(final int concurrencyLevel) {
+		int n = 1;
+		while (n < concurrencyLevel) {
+			n <<= 1;
+		}
+		this.stripes = new ReentrantLock[n];
+		for (int i = 0; i < n; i++) {
+			this.stripes[i] = new ReentrantLock();
+		}
+	}
+
+	private ReentrantLock stripe(final K s) {
+		int h = s.hashCode();
+		h ^= h >>> 16;
+		return this.stripes[h & this.stripes.length - 1];
+	}
+
+	/**
+	 * Blocks all writers while the index is cleared. Concurrent readers may still see some of the old triples.
+	 */
+	@Override
+	public void clear() {
+		for (final ReentrantLock lock : this.stripes) {
+			lock.lock();
+		}
+		try {
+			this.index_s_p_o.map.clear();
+			this.index_o_s_p.map.clear();
+			this.index_p_o_s.map.clear();
+		} finally {
+			for (final ReentrantLock lock : this.stripes) {
+				lock.unlock();
+			}
+		}
+	}
+
+	@Override
+	public boolean contains(final Constraint<K> c1, final Constraint<L> c2, final Constraint<M> c3) {
+		if (isExactOrStar(c1) && isExactOrStar(c2) && isExactOrStar(c3)) {
+			return contains(key(c1), key(c2), key(c3));
+		}
+		return getTriples(c1, c2, c3).hasNext();
+	}
+
+	/**
+	 * @param c1
+	 * @CanBeNull to denote wildcard
+	 * @param c2
+	 * @CanBeNull to denote wildcard
+	 * @param c3
+	 * @CanBeNull to denote wildcard
+	 */
+	@Override
+	public boolean contains(final K c1, final L c2, final M c3) {
+		if (c1 != null || c2 == null && c3 == null) {
+			// s**, sp*, spo and s*o
+			if (c2 == null && c3 != null) {
+				return this.index_o_s_p.contains(c3, c1, null);
+			}
+			return this.index_s_p_o.contains(c1, c2, c3);
+		} else if (c2 != null) {
+			// *p*, *po
+			return this.index_p_o_s.contains(c2, c3, null);
+		} else {
+			// **o
+			return this.index_o_s_p.contains(c3, null, null);
+		}
+	}
+
+	@Override
+	public boolean deIndex(final K s, final L p, final M o) {
+		assert s != null;
+		assert p != null;
+		assert o != null;
+		final ReentrantLock lock = stripe(s);
+		lock.lock();
+		try {
+			if (!this.index_s_p_o.deIndex(s, p, o)) {
+				return false;
+			}
+			this.index_p_o_s.deIndex(p, o, s);
+			this.index_o_s_p.deIndex(o, s, p);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public String dump() {
+		return Iterators.toText(getTriples(), "", "\n", "");
+	}
+
+	@Override
+	public Iterator<M> getObjects_XXX() {
+		return this.index_o_s_p.map.keySet().iterator();
+	}
+
+	@Override
+	public Iterator<M> getObjects_SPX(final K s, final L p) {
+		assert s != null;
+		assert p != null;
+		return Permutation.keys(this.index_s_p_o.lookup(s, p));
+	}
+
+	@Override
+	public Iterator<L> getPredicates_XXX() {
+		return this.index_p_o_s.map.keySet().iterator();
+	}
+
+	@Override
+	public Iterator<L> getPredicates_SXX(final K s) {
+		assert s != null;
+		final PersistentHashMap<L, PersistentHashMap<M, Boolean>> node = this.index_s_p_o.map.get(s);
+		if (node == null) {
+			return Iterators.none();
+		}
+		return node.keyIterator();
+	}
+
+	@Override
+	public Iterator<L> getPredicates_SXO(final K s, final M o) {
+		assert s != null;
+		assert o != null;
+		return Permutation.keys(this.index_o_s_p.lookup(o, s));
+	}
+
+	@Override
+	public Iterator<K> getSubjects_XXX() {
+		return this.index_s_p_o.map.keySet().iterator();
+	}
+
+	@Override
+	public Iterator<K> getSubjects_XPO(final L p, final M o) {
+		assert p != null;
+		assert o != null;
+		return Permutation.keys(this.index_p_o_s.lookup(p, o));
+	}
+
+	@Override
+	public Iterator<ITriple<K, L, M>> getTriples() {
+		return this.index_s_p_o.tupleIterator(null, null, null);
+	}
+
+	@Override
+	public Iterator<ITriple<K, L, M>> getTriples(final Constraint<K> c1, final Constraint<L> c2,
+			final Constraint<M> c3) {
+		final Iterator<ITriple<K, L, M>> it = getTriples(key(c1), key(c2), key(c3));
+		if (isExactOrStar(c1) && isExactOrStar(c2) && isExactOrStar(c3)) {
+			return it;
+		}
+		return Iterators.filter(it, new IFilter<ITriple<K, L, M>>() {
+
+			@Override
+			public boolean matches(final ITriple<K, L, M> t) {
+				return c1.matches(t.getKey1()) && c2.matches(t.getKey2()) && c3.matches(t.getEntry());
+			}
+		});
+	}
+
+	/**
+	 * @param c1
+	 * @CanBeNull to denote wildcard
+	 * @param c2
+	 * @CanBeNull to denote wildcard
+	 * @param c3
+	 * @CanBeNull to denote wildcard
+	 * @return an iterator over all matching triples
+	 */
+	@Override
+	public Iterator<ITriple<K, L, M>> getTriples(final K c1, final L c2, final M c3) {
+		if (c1 != null || c2 == null && c3 == null) {
+			// s**, sp*, spo and s*o
+			if (c2 == null && c3 != null) {
+				return Iterators.transform(this.index_o_s_p.tupleIterator(c3, c1, null), this.transformerOSP);
+			}
+			return this.index_s_p_o.tupleIterator(c1, c2, c3);
+		} else if (c2 != null) {
+			// *p*, *po
+			return Iterators.transform(this.index_p_o_s.tupleIterator(c2, c3, null), this.transformerPOS);
+		} else {
+			// **o
+			return Iterators.transform(this.index_o_s_p.tupleIterator(c3, null, null), this.transformerOSP);
+		}
+	}
+
+	@Override
+	public boolean index(final K s, final L p, final M o) {
+		assert s != null;
+		assert p != null;
+		assert o != null;
+		final ReentrantLock lock = stripe(s);
+		lock.lock();
+		try {
+			if (!this.index_s_p_o.index(s, p, o)) {
+				return false;
+			}
+			this.index_p_o_s.index(p, o, s);
+			this.index_o_s_p.index(o, s, p);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return this.index_s_p_o.map.isEmpty();
+	}
+
+	private static boolean isExactOrStar(final Constraint<?> c) {
+		return c.isStar() || c.isExact();
+	}
+
+	/**
+	 * @return the expected value of an exact constraint, null otherwise
+	 */
+	private static <E> E key(final Constraint<E> c) {
+		return c.isExact() ? c.getExpected() : null;
+	}
+
+	@Override
+	public String toString() {
+		return Iterators.toText(getTriples());
+	}
+
+}
@@ -0,0 +1,235 @@
+package org.xydra.index.impl;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+
+import org.xydra.index.IIntegerRangeIndex;
+import org.xydra.log.api.Logger;
+import org.xydra.log.api.LoggerFactory;
+
+/**
+ * A read-only copy of an {@link IIntegerRangeIndex}, meant for static lookup
+ * tables that are built once and then queried very often, e.g. the valid
+ * characters of XIds.
+ *
+ * The ranges are stored as two sorted int arrays and found by binary search,
+ * without boxing. In addition, every integer from 0 to 0xFFFF (the Unicode
+ * basic multilingual plane) has a bit in an 8 KB bitmap, so that
+ * {@link #isInInterval(int)} needs no search and no branch on the ranges for
+ * these.
+ *
+ * All modifying methods throw an {@link UnsupportedOperationException}.
+ *
+ * @author xamde
+ */
+public class FrozenIntegerRangeIndex implements IIntegerRangeIndex, Serializable {
+
+	private class RangeEntry implements Entry<Integer, Integer> {
+
+		private final int index;
+
+		public RangeEntry(final int index) {
+			this.index = index;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (!(o instanceof Entry)) {
+				return false;
+			}
+			final Entry<?, ?> entry = (Entry<?, ?>) o;
+			return getKey().equals(entry.getKey()) && getValue().equals(entry.getValue());
+		}
+
+		@Override
+		public Integer getKey() {
+			return FrozenIntegerRangeIndex.this.starts[this.index];
+		}
+
+		@Override
+		public Integer getValue() {
+			return FrozenIntegerRangeIndex.this.ends[this.index];
+		}
+
+		@Override
+		public int hashCode() {
+			return getKey().hashCode() ^ getValue().hashCode();
+		}
+
+		@Override
+		public Integer setValue(final Integer value) {
+			throw new UnsupportedOperationException("frozen");
+		}
+
+		@Override
+		public String toString() {
+			return getKey() + "=" + getValue();
+		}
+
+	}
+
+	private static final int BMP_SIZE = 0x10000;
+
+	private static final Logger log = LoggerFactory.getLogger(FrozenIntegerRangeIndex.class);
+
+	private static final long serialVersionUID = 1950224745811961087L;
+
+	/** one bit for each integer in [0,0xFFFF] */
+	// non-final to be GWT-Serializable
+	private int[] bmp;
+
+	/** inclusive ends, sorted */
+	// non-final to be GWT-Serializable
+	private int[] ends;
+
+	/** inclusive starts, sorted */
+	// non-final to be GWT-Serializable
+	private int[] starts;
+
+	// empty constructor for GWT-Serializable
+	protected FrozenIntegerRangeIndex() {
+	}
+
+	/**
+	 * @param index @NeverNull; is copied, later changes to it are not reflected
+	 */
+	public FrozenIntegerRangeIndex(final IIntegerRangeIndex index) {
+		int size = 0;
+		Iterator<Entry<Integer, Integer>> it = index.rangesIterator();
+		while (it.hasNext()) {
+			it.next();
+			size++;
+		}
+		this.starts = new int[size];
+		this.ends = new int[size];
+		this.bmp = new int[BMP_SIZE / 32];
+		it = index.rangesIterator();
+		for (int i = 0; i < size; i++) {
+			final Entry<Integer, Integer> entry = it.next();
+			this.starts[i] = entry.getKey();
+			this.ends[i] = entry.getValue();
+			final int bmpEnd = Math.min(this.ends[i], BMP_SIZE - 1);
+			for (int c = Math.max(this.starts[i], 0); c <= bmpEnd; c++) {
+				this.bmp[c >>> 5] |= 1 << (c & 31);
+			}
+		}
+	}
+
+	@Override
+	public void clear() {
+		throw new UnsupportedOperationException("frozen");
+	}
+
+	@Override
+	public void deIndex(final int start, final int end) {
+		throw new UnsupportedOperationException("frozen");
+	}
+
+	@Override
+	public void dump() {
+		for (int i = 0; i < this.starts.length; i++) {
+			log.info("[" + this.starts[i] + ", " + this.ends[i] + "]");
+		}
+	}
+
+	@Override
+	public void index(final int start, final int end) {
+		throw new UnsupportedOperationException("frozen");
+	}
+
+	/**
+	 * Same as {@link IntegerRangeIndex#isAllCharactersInIntervals(IIntegerRangeIndex, String)}, but with a start index
+	 * to avoid creating a substring.
+	 *
+	 * @param s @NeverNull
+	 * @param beginIndex in s
+	 * @return true if all Unicode codepoints of s from beginIndex on are in an indexed range; true if there are none.
+	 */
+	public boolean isAllCharactersInIntervals(final String s, final int beginIndex) {
+		final int length = s.length();
+		int i = beginIndex;
+		while (i < length) {
+			final char c = s.charAt(i);
+			if (Character.isHighSurrogate(c)) {
+				final int codepoint = s.codePointAt(i);
+				if (!isInRanges(codepoint)) {
+					return false;
+				}
+				i += Character.charCount(codepoint);
+			} else {
+				if ((this.bmp[c >>> 5] >>> (c & 31) & 1) == 0) {
+					return false;
+				}
+				i++;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return this.starts.length == 0;
+	}
+
+	@Override
+	public boolean isInInterval(final int i) {
+		if ((i & ~(BMP_SIZE - 1)) == 0) {
+			return (this.bmp[i >>> 5] >>> (i & 31) & 1) != 0;
+		}
+		return isInRanges(i);
+	}
+
+	/**
+	 * Binary search for the last range starting at or before i
+	 */
+	private boolean isInRanges(final int i) {
+		int low = 0;
+		int high = this.starts.length - 1;
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			if (this.starts[mid] <= i) {
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return high >= 0 && i <= this.ends[high];
+	}
+
+	@Override
+	public Iterator<Entry<Integer, Integer>> rangesIterator() {
+		return new Iterator<Entry<Integer, Integer>>() {
+
+			private int next = 0;
+
+			@Override
+			public boolean hasNext() {
+				return this.next < FrozenIntegerRangeIndex.this.starts.length;
+			}
+
+			@Override
+			public Entry<Integer, Integer> next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return new RangeEntry(this.next++);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("frozen");
+			}
+
+		};
+	}
+
+	/**
+	 * @return number of stored ranges, NOT number of contained integer numbers
+	 */
+	public int size() {
+		return this.starts.length;
+	}
+
+}
@@ -0,0 +1,77 @@
+package org.xydra.index.impl;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns dense int ids, starting at 0, to objects. Ids are never reused, even if the object is no longer used by the
+ * caller.
+ *
+ * @author xamde
+ *
+ * @param <E> entry type
+ */
+public class IntDictionary<E> implements Serializable {
+
+	private static final long serialVersionUID = -4461931468063236413L;
+
+	/** rough size of a HashMap entry with a boxed Integer value, in bytes */
+	private static final int BYTES_PER_ENTRY = 64;
+
+	private final List<E> byId = new ArrayList<E>();
+
+	private final Map<E, Integer> ids = new HashMap<E, Integer>();
+
+	public void clear() {
+		this.byId.clear();
+		this.ids.clear();
+	}
+
+	/**
+	 * @param id
+	 * @return the object with the given id
+	 */
+	public E decode(final int id) {
+		return this.byId.get(id);
+	}
+
+	/**
+	 * @param e @NeverNull
+	 * @return the id of the given object, a new one if it had none yet
+	 */
+	public int encode(final E e) {
+		assert e != null;
+		final Integer id = this.ids.get(e);
+		if (id != null) {
+			return id;
+		}
+		final int newId = this.byId.size();
+		this.byId.add(e);
+		this.ids.put(e, newId);
+		return newId;
+	}
+
+	/**
+	 * @return estimated heap size of the dictionary without the objects themselves, in bytes
+	 */
+	public long getEstimatedMemoryInBytes() {
+		return (long) this.byId.size() * (BYTES_PER_ENTRY + 4);
+	}
+
+	/**
+	 * @param e
+	 * @return the id of the given object or -1 if it has none
+	 */
+	public int lookup(final Object e) {
+		final Integer id = this.ids.get(e);
+		return id == null ? -1 : id;
+	}
+
+	public int size() {
+		return this.byId.size();
+	}
+
+}
@@ -0,0 +1,692 @@
+package org.xydra.index.impl;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.xydra.index.ISerializableTripleIndex;
+import org.xydra.index.iterator.IFilter;
+import org.xydra.index.iterator.Iterators;
+import org.xydra.index.query.Constraint;
+import org.xydra.index.query.ITriple;
+import org.xydra.index.query.KeyKeyEntryTuple;
+
+/**
+ * A memory-efficient {@link ISerializableTripleIndex}. All keys are replaced by int ids from one {@link IntDictionary}
+ * and each triple is stored in three sorted permutations:
+ *
+ * <pre>
+ * s > p > o
+ * p > o > s
+ * o > s > p
+ * </pre>
+ *
+ * Each permutation is a delta-encoded {@link CompactIntTriples} plus two small sorted buffers with the triples added
+ * and removed since. A buffer which grows beyond 1/8 of its permutation (at least {@link #MIN_BUFFER} triples) is
+ * merged into a new {@link CompactIntTriples}, so single changes cost amortised O(1) merge work on top of O(buffer)
+ * for inserting into the buffer. Use {@link #bulkIndex(Iterator)} to load many triples at once.
+ *
+ * Ids are never removed from the dictionary. Not thread-safe; iterators must not be used after the index changed.
+ *
+ * @author xamde
+ *
+ * @param <K> key type 1 (s)
+ * @param <L> key type 2 (p)
+ * @param <M> key type 3 (o)
+ */
+public class IntTripleIndex<K extends Serializable, L extends Serializable, M extends Serializable> implements
+		ISerializableTripleIndex<K, L, M> {
+
+	/**
+	 * A sorted, modifiable array of int triples.
+	 */
+	private static class Buffer implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private int size = 0;
+
+		private int[] t = new int[3 * 16];
+
+		int compareAt(final int i, final int a, final int b, final int c) {
+			return CompactIntTriples.compare(this.t[3 * i], this.t[3 * i + 1], this.t[3 * i + 2], a, b, c);
+		}
+
+		/**
+		 * @return the index of the triple or (-(insertion point) - 1)
+		 */
+		int indexOf(final int a, final int b, final int c) {
+			int lo = 0;
+			int hi = this.size - 1;
+			while (lo <= hi) {
+				final int mid = lo + hi >>> 1;
+				final int cmp = compareAt(mid, a, b, c);
+				if (cmp < 0) {
+					lo = mid + 1;
+				} else if (cmp > 0) {
+					hi = mid - 1;
+				} else {
+					return mid;
+				}
+			}
+			return -(lo + 1);
+		}
+
+		void insert(final int a, final int b, final int c) {
+			final int i = indexOf(a, b, c);
+			assert i < 0;
+			final int pos = -(i + 1);
+			if (3 * this.size == this.t.length) {
+				this.t = Arrays.copyOf(this.t, this.t.length * 2);
+			}
+			System.arraycopy(this.t, 3 * pos, this.t, 3 * pos + 3, 3 * (this.size - pos));
+			this.t[3 * pos] = a;
+			this.t[3 * pos + 1] = b;
+			this.t[3 * pos + 2] = c;
+			this.size++;
+		}
+
+		/**
+		 * @return index of the first triple >= (a,b,c)
+		 */
+		int lowerBound(final int a, final int b, final int c) {
+			final int i = indexOf(a, b, c);
+			return i >= 0 ? i : -(i + 1);
+		}
+
+		boolean remove(final int a, final int b, final int c) {
+			final int i = indexOf(a, b, c);
+			if (i < 0) {
+				return false;
+			}
+			System.arraycopy(this.t, 3 * i + 3, this.t, 3 * i, 3 * (this.size - i - 1));
+			this.size--;
+			return true;
+		}
+
+	}
+
+	/**
+	 * Iterates over the triples of a {@link Permutation} which start with a given prefix. Keys after the prefix must be
+	 * -1.
+	 */
+	private static class Cursor {
+
+		int a, b, c;
+
+		private int addIndex;
+
+		private final CompactIntTriples.Cursor base;
+
+		private final int pa, pb, pc;
+
+		private final Permutation perm;
+
+		private int removeIndex;
+
+		Cursor(final Permutation perm, final int pa, final int pb, final int pc) {
+			this.perm = perm;
+			this.pa = pa;
+			this.pb = pb;
+			this.pc = pc;
+			this.base = perm.base.seek(pa, pb, pc);
+			this.addIndex = perm.added.lowerBound(pa, pb, pc);
+			this.removeIndex = perm.removed.lowerBound(pa, pb, pc);
+		}
+
+		/**
+		 * @return true if there is a next triple, which is then in a, b and c
+		 */
+		boolean advance() {
+			final Buffer removed = this.perm.removed;
+			final Buffer added = this.perm.added;
+			// skip removed triples
+			while (this.base.valid) {
+				while (this.removeIndex < removed.size
+						&& removed.compareAt(this.removeIndex, this.base.a, this.base.b, this.base.c) < 0) {
+					this.removeIndex++;
+				}
+				if (this.removeIndex < removed.size
+						&& removed.compareAt(this.removeIndex, this.base.a, this.base.b, this.base.c) == 0) {
+					this.base.advance();
+					this.removeIndex++;
+				} else {
+					break;
+				}
+			}
+			if (this.addIndex < added.size
+					&& (!this.base.valid || added.compareAt(this.addIndex, this.base.a, this.base.b, this.base.c) < 0)) {
+				this.a = added.t[3 * this.addIndex];
+				this.b = added.t[3 * this.addIndex + 1];
+				this.c = added.t[3 * this.addIndex + 2];
+				this.addIndex++;
+			} else if (this.base.valid) {
+				this.a = this.base.a;
+				this.b = this.base.b;
+				this.c = this.base.c;
+				this.base.advance();
+			} else {
+				return false;
+			}
+			return (this.pa < 0 || this.a == this.pa) && (this.pb < 0 || this.b == this.pb)
+					&& (this.pc < 0 || this.c == this.pc);
+		}
+
+	}
+
+	/**
+	 * One sort order of the triples
+	 */
+	private static class Permutation implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private Buffer added = new Buffer();
+
+		private CompactIntTriples base = CompactIntTriples.EMPTY;
+
+		private Buffer removed = new Buffer();
+
+		/**
+		 * The triple must not be in this permutation yet.
+		 */
+		void add(final int a, final int b, final int c) {
+			if (!this.removed.remove(a, b, c)) {
+				this.added.insert(a, b, c);
+			}
+			maybeMerge();
+		}
+
+		boolean contains(final int a, final int b, final int c) {
+			if (this.added.indexOf(a, b, c) >= 0) {
+				return true;
+			}
+			return this.removed.indexOf(a, b, c) < 0 && this.base.contains(a, b, c);
+		}
+
+		long getEstimatedMemoryInBytes() {
+			return this.base.getEstimatedMemoryInBytes() + 4L * (this.added.t.length + this.removed.t.length);
+		}
+
+		private void maybeMerge() {
+			if (this.added.size + this.removed.size > Math.max(MIN_BUFFER, this.base.size() / 8)) {
+				merge();
+			}
+		}
+
+		void merge() {
+			final CompactIntTriples.Builder builder = new CompactIntTriples.Builder();
+			final Cursor cursor = new Cursor(this, -1, -1, -1);
+			while (cursor.advance()) {
+				builder.add(cursor.a, cursor.b, cursor.c);
+			}
+			setBase(builder.build());
+		}
+
+		/**
+		 * The triple must be in this permutation.
+		 */
+		void remove(final int a, final int b, final int c) {
+			if (!this.added.remove(a, b, c)) {
+				this.removed.insert(a, b, c);
+			}
+			maybeMerge();
+		}
+
+		void setBase(final CompactIntTriples base) {
+			this.base = base;
+			this.added = new Buffer();
+			this.removed = new Buffer();
+		}
+
+		int size() {
+			return this.base.size() + this.added.size - this.removed.size;
+		}
+
+	}
+
+	/**
+	 * Turns a {@link Cursor} into triples or keys.
+	 *
+	 * @param <E>
+	 */
+	private abstract class CursorIterator<E> implements Iterator<E> {
+
+		protected final Cursor cursor;
+
+		private boolean hasNext;
+
+		CursorIterator(final Cursor cursor) {
+			this.cursor = cursor;
+			this.hasNext = cursor.advance();
+		}
+
+		@Override
+		public boolean hasNext() {
+			return this.hasNext;
+		}
+
+		@Override
+		public E next() {
+			if (!this.hasNext) {
+				throw new NoSuchElementException();
+			}
+			final E result = current();
+			this.hasNext = advance();
+			return result;
+		}
+
+		protected boolean advance() {
+			return this.cursor.advance();
+		}
+
+		protected abstract E current();
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+	}
+
+	/**
+	 * Returns one key per distinct value of a cursor position.
+	 *
+	 * @param <E>
+	 */
+	private class DistinctKeyIterator<E> extends CursorIterator<E> {
+
+		private final int position;
+
+		DistinctKeyIterator(final Cursor cursor, final int position) {
+			super(cursor);
+			this.position = position;
+		}
+
+		@Override
+		protected boolean advance() {
+			final int last = key();
+			while (this.cursor.advance()) {
+				if (key() != last) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		protected E current() {
+			return (E) IntTripleIndex.this.dictionary.decode(key());
+		}
+
+		private int key() {
+			switch (this.position) {
+			case 0:
+				return this.cursor.a;
+			case 1:
+				return this.cursor.b;
+			default:
+				return this.cursor.c;
+			}
+		}
+
+	}
+
+	/** buffers are merged once they hold more than this many triples or 1/8 of their permutation */
+	public static final int MIN_BUFFER = 1024;
+
+	private static final int NONE = -2;
+
+	private static final long serialVersionUID = 4826711342391863040L;
+
+	private static final int WILDCARD = -1;
+
+	/**
+	 * Sorts a flat array of int triples and removes duplicates.
+	 *
+	 * @return the number of distinct triples
+	 */
+	static int sortDistinct(final int[] triples, final int count) {
+		// bottom-up merge sort
+		int[] src = triples;
+		int[] dst = new int[3 * count];
+		for (int width = 1; width < count; width *= 2) {
+			for (int lo = 0; lo < count; lo += 2 * width) {
+				final int mid = Math.min(lo + width, count);
+				final int hi = Math.min(lo + 2 * width, count);
+				int i = lo, j = mid, k = lo;
+				while (i < mid && j < hi) {
+					if (CompactIntTriples.compare(src[3 * i], src[3 * i + 1], src[3 * i + 2], src[3 * j],
+							src[3 * j + 1], src[3 * j + 2]) <= 0) {
+						System.arraycopy(src, 3 * i++, dst, 3 * k++, 3);
+					} else {
+						System.arraycopy(src, 3 * j++, dst, 3 * k++, 3);
+					}
+				}
+				System.arraycopy(src, 3 * i, dst, 3 * k, 3 * (mid - i));
+				k += mid - i;
+				System.arraycopy(src, 3 * j, dst, 3 * k, 3 * (hi - j));
+			}
+			final int[] tmp = src;
+			src = dst;
+			dst = tmp;
+		}
+		if (src != triples) {
+			System.arraycopy(src, 0, triples, 0, 3 * count);
+		}
+		int distinct = 0;
+		for (int i = 0; i < count; i++) {
+			if (distinct == 0
+					|| CompactIntTriples.compare(triples[3 * i], triples[3 * i + 1], triples[3 * i + 2],
+							triples[3 * distinct - 3], triples[3 * distinct - 2], triples[3 * distinct - 1]) != 0) {
+				System.arraycopy(triples, 3 * i, triples, 3 * distinct, 3);
+				distinct++;
+			}
+		}
+		return distinct;
+	}
+
+	private final IntDictionary<Object> dictionary = new IntDictionary<Object>();
+
+	/** o -> s -> p */
+	private final Permutation osp = new Permutation();
+
+	/** p -> o -> s */
+	private final Permutation pos = new Permutation();
+
+	/** s -> p -> o */
+	private final Permutation spo = new Permutation();
+
+	/**
+	 * Adds many triples at once. Faster than single calls to {@link #index(Object, Object, Object)} and results in
+	 * fully compacted permutations.
+	 *
+	 * @param triples @NeverNull
+	 */
+	public void bulkIndex(final Iterator<? extends ITriple<K, L, M>> triples) {
+		int[] t = new int[3 * Math.max(16, this.spo.size() * 2)];
+		int count = 0;
+		final Cursor cursor = new Cursor(this.spo, WILDCARD, WILDCARD, WILDCARD);
+		while (cursor.advance()) {
+			if (3 * count == t.length) {
+				t = Arrays.copyOf(t, t.length * 2);
+			}
+			t[3 * count] = cursor.a;
+			t[3 * count + 1] = cursor.b;
+			t[3 * count + 2] = cursor.c;
+			count++;
+		}
+		while (triples.hasNext()) {
+			final ITriple<K, L, M> triple = triples.next();
+			if (3 * count == t.length) {
+				t = Arrays.copyOf(t, t.length * 2);
+			}
+			t[3 * count] = this.dictionary.encode(triple.getKey1());
+			t[3 * count + 1] = this.dictionary.encode(triple.getKey2());
+			t[3 * count + 2] = this.dictionary.encode(triple.getEntry());
+			count++;
+		}
+		count = sortDistinct(t, count);
+		this.spo.setBase(build(t, count, 0, 1, 2));
+		final int[] permuted = new int[3 * count];
+		for (int i = 0; i < count; i++) {
+			permuted[3 * i] = t[3 * i + 1];
+			permuted[3 * i + 1] = t[3 * i + 2];
+			permuted[3 * i + 2] = t[3 * i];
+		}
+		sortDistinct(permuted, count);
+		this.pos.setBase(build(permuted, count, 0, 1, 2));
+		for (int i = 0; i < count; i++) {
+			permuted[3 * i] = t[3 * i + 2];
+			permuted[3 * i + 1] = t[3 * i];
+			permuted[3 * i + 2] = t[3 * i + 1];
+		}
+		sortDistinct(permuted, count);
+		this.osp.setBase(build(permuted, count, 0, 1, 2));
+	}
+
+	private static CompactIntTriples build(final int[] sorted, final int count, final int a, final int b, final int c) {
+		final CompactIntTriples.Builder builder = new CompactIntTriples.Builder();
+		for (int i = 0; i < count; i++) {
+			builder.add(sorted[3 * i + a], sorted[3 * i + b], sorted[3 * i + c]);
+		}
+		return builder.build();
+	}
+
+	@Override
+	public void clear() {
+		this.dictionary.clear();
+		this.spo.setBase(CompactIntTriples.EMPTY);
+		this.pos.setBase(CompactIntTriples.EMPTY);
+		this.osp.setBase(CompactIntTriples.EMPTY);
+	}
+
+	@Override
+	public boolean contains(final Constraint<K> c1, final Constraint<L> c2, final Constraint<M> c3) {
+		return getTriples(c1, c2, c3).hasNext();
+	}
+
+	/**
+	 * @param s
+	 * @CanBeNull to denote wildcard
+	 * @param p
+	 * @CanBeNull to denote wildcard
+	 * @param o
+	 * @CanBeNull to denote wildcard
+	 */
+	@Override
+	public boolean contains(final K s, final L p, final M o) {
+		if (s != null && p != null && o != null) {
+			final int si = id(s), pi = id(p), oi = id(o);
+			return si >= 0 && pi >= 0 && oi >= 0 && this.spo.contains(si, pi, oi);
+		}
+		return getTriples(s, p, o).hasNext();
+	}
+
+	@Override
+	public boolean deIndex(final K s, final L p, final M o) {
+		assert s != null;
+		assert p != null;
+		assert o != null;
+		final int si = id(s), pi = id(p), oi = id(o);
+		if (si < 0 || pi < 0 || oi < 0 || !this.spo.contains(si, pi, oi)) {
+			return false;
+		}
+		this.spo.remove(si, pi, oi);
+		this.pos.remove(pi, oi, si);
+		this.osp.remove(oi, si, pi);
+		return true;
+	}
+
+	@Override
+	public String dump() {
+		return Iterators.toText(getTriples(), "", "\n", "");
+	}
+
+	/**
+	 * @return estimated heap size of this index in bytes, without the key objects themselves
+	 */
+	public long getEstimatedMemoryInBytes() {
+		return this.dictionary.getEstimatedMemoryInBytes() + this.spo.getEstimatedMemoryInBytes()
+				+ this.pos.getEstimatedMemoryInBytes() + this.osp.getEstimatedMemoryInBytes();
+	}
+
+	@Override
+	public Iterator<M> getObjects_XXX() {
+		return new DistinctKeyIterator<M>(new Cursor(this.osp, WILDCARD, WILDCARD, WILDCARD), 0);
+	}
+
+	@Override
+	public Iterator<M> getObjects_SPX(final K s, final L p) {
+		assert s != null;
+		assert p != null;
+		final int si = id(s), pi = id(p);
+		if (si < 0 || pi < 0) {
+			return Iterators.none();
+		}
+		return new DistinctKeyIterator<M>(new Cursor(this.spo, si, pi, WILDCARD), 2);
+	}
+
+	@Override
+	public Iterator<L> getPredicates_XXX() {
+		return new DistinctKeyIterator<L>(new Cursor(this.pos, WILDCARD, WILDCARD, WILDCARD), 0);
+	}
+
+	@Override
+	public Iterator<L> getPredicates_SXX(final K s) {
+		assert s != null;
+		final int si = id(s);
+		if (si < 0) {
+			return Iterators.none();
+		}
+		return new DistinctKeyIterator<L>(new Cursor(this.spo, si, WILDCARD, WILDCARD), 1);
+	}
+
+	@Override
+	public Iterator<L> getPredicates_SXO(final K s, final M o) {
+		assert s != null;
+		assert o != null;
+		final int si = id(s), oi = id(o);
+		if (si < 0 || oi < 0) {
+			return Iterators.none();
+		}
+		return new DistinctKeyIterator<L>(new Cursor(this.osp, oi, si, WILDCARD), 2);
+	}
+
+	@Override
+	public Iterator<K> getSubjects_XXX() {
+		return new DistinctKeyIterator<K>(new Cursor(this.spo, WILDCARD, WILDCARD, WILDCARD), 0);
+	}
+
+	@Override
+	public Iterator<K> getSubjects_XPO(final L p, final M o) {
+		assert p != null;
+		assert o != null;
+		final int pi = id(p), oi = id(o);
+		if (pi < 0 || oi < 0) {
+			return Iterators.none();
+		}
+		return new DistinctKeyIterator<K>(new Cursor(this.pos, pi, oi, WILDCARD), 2);
+	}
+
+	@Override
+	public Iterator<ITriple<K, L, M>> getTriples() {
+		return getTriples((K) null, null, null);
+	}
+
+	@Override
+	public Iterator<ITriple<K, L, M>> getTriples(final Constraint<K> c1, final Constraint<L> c2,
+			final Constraint<M> c3) {
+		final Iterator<ITriple<K, L, M>> it = getTriples(key(c1), key(c2), key(c3));
+		if ((c1.isStar() || c1.isExact()) && (c2.isStar() || c2.isExact()) && (c3.isStar() || c3.isExact())) {
+			return it;
+		}
+		return Iterators.filter(it, new IFilter<ITriple<K, L, M>>() {
+
+			@Override
+			public boolean matches(final ITriple<K, L, M> t) {
+				return c1.matches(t.getKey1()) && c2.matches(t.getKey2()) && c3.matches(t.getEntry());
+			}
+		});
+	}
+
+	/**
+	 * @param s
+	 * @CanBeNull to denote wildcard
+	 * @param p
+	 * @CanBeNull to denote wildcard
+	 * @param o
+	 * @CanBeNull to denote wildcard
+	 * @return an iterator over all matching triples
+	 */
+	@Override
+	public Iterator<ITriple<K, L, M>> getTriples(final K s, final L p, final M o) {
+		final int si = s == null ? WILDCARD : id(s);
+		final int pi = p == null ? WILDCARD : id(p);
+		final int oi = o == null ? WILDCARD : id(o);
+		if (si == NONE || pi == NONE || oi == NONE) {
+			return Iterators.none();
+		}
+		if (si != WILDCARD && (pi != WILDCARD || oi == WILDCARD) || si == WILDCARD && pi == WILDCARD
+				&& oi == WILDCARD) {
+			// s**, sp*, spo, ***
+			return new CursorIterator<ITriple<K, L, M>>(new Cursor(this.spo, si, pi, oi)) {
+
+				@Override
+				protected ITriple<K, L, M> current() {
+					return triple(this.cursor.a, this.cursor.b, this.cursor.c);
+				}
+			};
+		} else if (pi != WILDCARD) {
+			// *p*, *po
+			return new CursorIterator<ITriple<K, L, M>>(new Cursor(this.pos, pi, oi, WILDCARD)) {
+
+				@Override
+				protected ITriple<K, L, M> current() {
+					return triple(this.cursor.c, this.cursor.a, this.cursor.b);
+				}
+			};
+		} else {
+			// s*o, **o
+			return new CursorIterator<ITriple<K, L, M>>(new Cursor(this.osp, oi, si, WILDCARD)) {
+
+				@Override
+				protected ITriple<K, L, M> current() {
+					return triple(this.cursor.b, this.cursor.c, this.cursor.a);
+				}
+			};
+		}
+	}
+
+	/**
+	 * @return the id of the given key or {@link #NONE}
+	 */
+	private int id(final Object key) {
+		final int id = this.dictionary.lookup(key);
+		return id < 0 ? NONE : id;
+	}
+
+	@Override
+	public boolean index(final K s, final L p, final M o) {
+		assert s != null;
+		assert p != null;
+		assert o != null;
+		final int si = this.dictionary.encode(s);
+		final int pi = this.dictionary.encode(p);
+		final int oi = this.dictionary.encode(o);
+		if (this.spo.contains(si, pi, oi)) {
+			return false;
+		}
+		this.spo.add(si, pi, oi);
+		this.pos.add(pi, oi, si);
+		this.osp.add(oi, si, pi);
+		return true;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return this.spo.size() == 0;
+	}
+
+	private static <E> E key(final Constraint<E> c) {
+		return c.isExact() ? c.getExpected() : null;
+	}
+
+	public int size() {
+		return this.spo.size();
+	}
+
+	@Override
+	public String toString() {
+		return Iterators.toText(getTriples());
+	}
+
+	@SuppressWarnings("unchecked")
+	private ITriple<K, L, M> triple(final int s, final int p, final int o) {
+		return new KeyKeyEntryTuple<K, L, M>((K) this.dictionary.decode(s), (L) this.dictionary.decode(p),
+				(M) this.dictionary.decode(o));
+	}
+
+}
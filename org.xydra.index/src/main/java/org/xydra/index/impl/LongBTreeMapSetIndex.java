@@ -0,0 +1,347 @@
+package org.xydra.index.impl;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.xydra.index.Factory;
+import org.xydra.index.IEntrySet;
+
+/**
+ * Maps primitive long keys to sets of entries, sorted by key. Backed by an
+ * in-memory B+-tree: inner nodes hold separator keys, leaves hold the keys and
+ * their entry sets and are linked, so that a range of keys is found in
+ * O(log n) and then read sequentially.
+ *
+ * Keys are not boxed. Leaves that become empty by de-indexing are kept and
+ * skipped, nodes are never merged. This is fine for indexes that mostly grow;
+ * an index from which most keys have been removed should be rebuilt.
+ *
+ * Not thread-safe. Iterators must not be used after the index was changed.
+ *
+ * @author xamde
+ *
+ * @param <E> entry type
+ */
+public class LongBTreeMapSetIndex<E> {
+
+	/** maximal number of keys in a leaf and of children of an inner node */
+	private static final int ORDER = 64;
+
+	private static abstract class Node {
+
+		long[] keys = new long[ORDER];
+
+		int size;
+
+		/**
+		 * @return index of the first key >= key, size if none
+		 */
+		int lowerBound(final long key) {
+			int low = 0;
+			int high = this.size;
+			while (low < high) {
+				final int mid = low + high >>> 1;
+				if (this.keys[mid] < key) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+
+	}
+
+	private static class Inner extends Node {
+
+		/** child i holds the keys k with keys[i-1] <= k < keys[i] */
+		Node[] children = new Node[ORDER + 1];
+
+		/**
+		 * @return the index of the child which holds the key
+		 */
+		int childIndex(final long key) {
+			int low = 0;
+			int high = this.size;
+			while (low < high) {
+				final int mid = low + high >>> 1;
+				if (this.keys[mid] <= key) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+
+	}
+
+	private static class Leaf<E> extends Node {
+
+		@SuppressWarnings("unchecked")
+		IEntrySet<E>[] values = (IEntrySet<E>[]) new IEntrySet<?>[ORDER];
+
+		Leaf<E> next;
+
+	}
+
+	/** the result of an insertion that split a node */
+	private static class Split {
+
+		final long separator;
+
+		final Node right;
+
+		Split(final long separator, final Node right) {
+			this.separator = separator;
+			this.right = right;
+		}
+
+	}
+
+	private final Factory<IEntrySet<E>> entrySetFactory;
+
+	private Node root;
+
+	private int keyCount;
+
+	/**
+	 * @param entrySetFactory creates the sets of entries per key
+	 */
+	public LongBTreeMapSetIndex(final Factory<IEntrySet<E>> entrySetFactory) {
+		this.entrySetFactory = entrySetFactory;
+		clear();
+	}
+
+	public void clear() {
+		this.root = new Leaf<E>();
+		this.keyCount = 0;
+	}
+
+	/**
+	 * @return the number of different keys
+	 */
+	public int size() {
+		return this.keyCount;
+	}
+
+	public boolean isEmpty() {
+		return this.keyCount == 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Leaf<E> findLeaf(final long key) {
+		Node node = this.root;
+		while (node instanceof Inner) {
+			final Inner inner = (Inner) node;
+			node = inner.children[inner.childIndex(key)];
+		}
+		return (Leaf<E>) node;
+	}
+
+	/**
+	 * @param key
+	 * @param entry
+	 * @return true if the entry was not indexed for the key before
+	 */
+	public boolean index(final long key, final E entry) {
+		final Leaf<E> leaf = findLeaf(key);
+		final int i = leaf.lowerBound(key);
+		if (i < leaf.size && leaf.keys[i] == key) {
+			return leaf.values[i].index(entry);
+		}
+		final IEntrySet<E> set = this.entrySetFactory.createInstance();
+		set.index(entry);
+		final Split split = insert(this.root, key, set);
+		if (split != null) {
+			final Inner newRoot = new Inner();
+			newRoot.keys[0] = split.separator;
+			newRoot.children[0] = this.root;
+			newRoot.children[1] = split.right;
+			newRoot.size = 1;
+			this.root = newRoot;
+		}
+		this.keyCount++;
+		return true;
+	}
+
+	/**
+	 * Inserts a key that is not in the tree yet.
+	 *
+	 * @return the split of the given node, or null
+	 */
+	@SuppressWarnings("unchecked")
+	private Split insert(final Node node, final long key, final IEntrySet<E> set) {
+		if (node instanceof Leaf) {
+			final Leaf<E> leaf = (Leaf<E>) node;
+			final int i = leaf.lowerBound(key);
+			if (leaf.size < ORDER) {
+				insertIntoLeaf(leaf, i, key, set);
+				return null;
+			}
+			final Leaf<E> right = new Leaf<E>();
+			final int half = ORDER / 2;
+			System.arraycopy(leaf.keys, half, right.keys, 0, ORDER - half);
+			System.arraycopy(leaf.values, half, right.values, 0, ORDER - half);
+			for (int j = half; j < ORDER; j++) {
+				leaf.values[j] = null;
+			}
+			right.size = ORDER - half;
+			leaf.size = half;
+			right.next = leaf.next;
+			leaf.next = right;
+			if (i <= half) {
+				insertIntoLeaf(leaf, i, key, set);
+			} else {
+				insertIntoLeaf(right, i - half, key, set);
+			}
+			return new Split(right.keys[0], right);
+		}
+
+		final Inner inner = (Inner) node;
+		final int c = inner.childIndex(key);
+		final Split childSplit = insert(inner.children[c], key, set);
+		if (childSplit == null) {
+			return null;
+		}
+		if (inner.size < ORDER) {
+			insertIntoInner(inner, c, childSplit);
+			return null;
+		}
+		// split: the middle separator moves up
+		final Inner right = new Inner();
+		final int half = ORDER / 2;
+		final long up = inner.keys[half];
+		System.arraycopy(inner.keys, half + 1, right.keys, 0, ORDER - half - 1);
+		System.arraycopy(inner.children, half + 1, right.children, 0, ORDER - half);
+		for (int j = half + 1; j <= ORDER; j++) {
+			inner.children[j] = null;
+		}
+		right.size = ORDER - half - 1;
+		inner.size = half;
+		if (c <= half) {
+			insertIntoInner(inner, c, childSplit);
+		} else {
+			insertIntoInner(right, c - half - 1, childSplit);
+		}
+		return new Split(up, right);
+	}
+
+	private static <E> void insertIntoLeaf(final Leaf<E> leaf, final int i, final long key,
+			final IEntrySet<E> set) {
+		System.arraycopy(leaf.keys, i, leaf.keys, i + 1, leaf.size - i);
+		System.arraycopy(leaf.values, i, leaf.values, i + 1, leaf.size - i);
+		leaf.keys[i] = key;
+		leaf.values[i] = set;
+		leaf.size++;
+	}
+
+	/**
+	 * @param c the index of the child that was split
+	 */
+	private static void insertIntoInner(final Inner inner, final int c, final Split split) {
+		System.arraycopy(inner.keys, c, inner.keys, c + 1, inner.size - c);
+		System.arraycopy(inner.children, c + 1, inner.children, c + 2, inner.size - c);
+		inner.keys[c] = split.separator;
+		inner.children[c + 1] = split.right;
+		inner.size++;
+	}
+
+	/**
+	 * @param key
+	 * @param entry
+	 * @return true if the entry was indexed for the key
+	 */
+	public boolean deIndex(final long key, final E entry) {
+		final Leaf<E> leaf = findLeaf(key);
+		final int i = leaf.lowerBound(key);
+		if (i == leaf.size || leaf.keys[i] != key) {
+			return false;
+		}
+		final boolean removed = leaf.values[i].deIndex(entry);
+		if (leaf.values[i].isEmpty()) {
+			System.arraycopy(leaf.keys, i + 1, leaf.keys, i, leaf.size - i - 1);
+			System.arraycopy(leaf.values, i + 1, leaf.values, i, leaf.size - i - 1);
+			leaf.size--;
+			leaf.values[leaf.size] = null;
+			this.keyCount--;
+		}
+		return removed;
+	}
+
+	/**
+	 * @param key
+	 * @return the entries of the key, null if none
+	 */
+	public IEntrySet<E> lookup(final long key) {
+		final Leaf<E> leaf = findLeaf(key);
+		final int i = leaf.lowerBound(key);
+		return i < leaf.size && leaf.keys[i] == key ? leaf.values[i] : null;
+	}
+
+	/**
+	 * @param min inclusive
+	 * @param max inclusive
+	 * @return all entries of the keys in the range, in the order of their keys.
+	 *         An entry that is indexed for several keys is returned once per
+	 *         key.
+	 */
+	public Iterator<E> rangeIterator(final long min, final long max) {
+		if (min > max) {
+			return Collections.<E> emptyList().iterator();
+		}
+		final Leaf<E> first = findLeaf(min);
+		return new RangeIterator(first, first.lowerBound(min), max);
+	}
+
+	private class RangeIterator implements Iterator<E> {
+
+		private final long max;
+
+		private Leaf<E> leaf;
+
+		/** the next key position in the leaf */
+		private int pos;
+
+		private Iterator<E> entries = Collections.<E> emptyList().iterator();
+
+		RangeIterator(final Leaf<E> leaf, final int pos, final long max) {
+			this.leaf = leaf;
+			this.pos = pos;
+			this.max = max;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (!this.entries.hasNext()) {
+				while (this.leaf != null && this.pos == this.leaf.size) {
+					this.leaf = this.leaf.next;
+					this.pos = 0;
+				}
+				if (this.leaf == null || this.leaf.keys[this.pos] > this.max) {
+					this.leaf = null;
+					return false;
+				}
+				this.entries = this.leaf.values[this.pos].iterator();
+				this.pos++;
+			}
+			return true;
+		}
+
+		@Override
+		public E next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return this.entries.next();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+	}
+
+}
@@ -0,0 +1,517 @@
+package org.xydra.index.impl;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable hash array mapped trie (HAMT). All modifying operations return a
+ * new map and leave this map unchanged. Unchanged parts of the trie are shared
+ * between the old and the new version, so put and remove take O(log32 n) time
+ * and space.
+ *
+ * Callers can optionally pass an edit token to the modifying operations. Trie
+ * nodes created with a given token are owned by it and are changed in place by
+ * later operations with the same token instead of being copied again. This
+ * makes a sequence of changes on a private version as cheap as on a mutable
+ * map. A token must only be used by one version at a time: once a version
+ * built with a token is shared, the owner must switch to a new token.
+ *
+ * Keys must not be null, values can be null.
+ *
+ * @author xamde
+ *
+ * @param <K>
+ * @param <V>
+ */
+public final class PersistentHashMap<K, V> implements Serializable {
+
+	private static final long serialVersionUID = -2367301581468227263L;
+
+	private static final int BITS = 5;
+
+	private static final int MASK = (1 << BITS) - 1;
+
+	/** to find out if a put added a new key or if a remove removed one */
+	private static class Box {
+		boolean changed = false;
+	}
+
+	/**
+	 * All nodes store their content in an array of pairs: either (key, value)
+	 * or (null, child node).
+	 */
+	private abstract static class Node implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		/** owner of this node, may be null */
+		transient Object edit;
+
+		Object[] array;
+
+		Node(final Object edit, final Object[] array) {
+			this.edit = edit;
+			this.array = array;
+		}
+
+		abstract Object find(int shift, int hash, Object key, Object notFound);
+
+		abstract Node assoc(Object edit, int shift, int hash, Object key, Object value, Box added);
+
+		/**
+		 * @return null if the resulting node would be empty
+		 */
+		abstract Node without(Object edit, int shift, int hash, Object key, Box removed);
+
+		boolean isEditable(final Object edit) {
+			return edit != null && this.edit == edit;
+		}
+	}
+
+	private static final class BitmapNode extends Node {
+
+		private static final long serialVersionUID = 1L;
+
+		int bitmap;
+
+		BitmapNode(final Object edit, final int bitmap, final Object[] array) {
+			super(edit, array);
+			this.bitmap = bitmap;
+		}
+
+		private int index(final int bit) {
+			return Integer.bitCount(this.bitmap & bit - 1);
+		}
+
+		@Override
+		Object find(final int shift, final int hash, final Object key, final Object notFound) {
+			final int bit = bitpos(hash, shift);
+			if ((this.bitmap & bit) == 0) {
+				return notFound;
+			}
+			final int i = index(bit);
+			final Object k = this.array[2 * i];
+			final Object v = this.array[2 * i + 1];
+			if (k == null) {
+				return ((Node) v).find(shift + BITS, hash, key, notFound);
+			}
+			if (key.equals(k)) {
+				return v;
+			}
+			return notFound;
+		}
+
+		@Override
+		Node assoc(final Object edit, final int shift, final int hash, final Object key,
+				final Object value, final Box added) {
+			final int bit = bitpos(hash, shift);
+			final int i = index(bit);
+			if ((this.bitmap & bit) != 0) {
+				final Object k = this.array[2 * i];
+				final Object v = this.array[2 * i + 1];
+				if (k == null) {
+					final Node child = ((Node) v).assoc(edit, shift + BITS, hash, key, value,
+							added);
+					if (child == v) {
+						return this;
+					}
+					return editAndSet(edit, 2 * i + 1, child);
+				}
+				if (key.equals(k)) {
+					if (v == value) {
+						return this;
+					}
+					return editAndSet(edit, 2 * i + 1, value);
+				}
+				added.changed = true;
+				final Node child = createNode(edit, shift + BITS, k, v, hash, key, value);
+				final BitmapNode editable = ensureEditable(edit);
+				editable.array[2 * i] = null;
+				editable.array[2 * i + 1] = child;
+				return editable;
+			}
+			added.changed = true;
+			final int n = Integer.bitCount(this.bitmap);
+			if (isEditable(edit) && this.array.length >= 2 * (n + 1)) {
+				System.arraycopy(this.array, 2 * i, this.array, 2 * (i + 1), 2 * (n - i));
+				this.array[2 * i] = key;
+				this.array[2 * i + 1] = value;
+				this.bitmap |= bit;
+				return this;
+			}
+			// leave some room for further in-place inserts
+			final int capacity = edit == null ? n + 1 : Math.min(n + 4, 32);
+			final Object[] a = new Object[2 * capacity];
+			System.arraycopy(this.array, 0, a, 0, 2 * i);
+			a[2 * i] = key;
+			a[2 * i + 1] = value;
+			System.arraycopy(this.array, 2 * i, a, 2 * (i + 1), 2 * (n - i));
+			return new BitmapNode(edit, this.bitmap | bit, a);
+		}
+
+		@Override
+		Node without(final Object edit, final int shift, final int hash, final Object key,
+				final Box removed) {
+			final int bit = bitpos(hash, shift);
+			if ((this.bitmap & bit) == 0) {
+				return this;
+			}
+			final int i = index(bit);
+			final Object k = this.array[2 * i];
+			final Object v = this.array[2 * i + 1];
+			if (k == null) {
+				final Node child = ((Node) v).without(edit, shift + BITS, hash, key, removed);
+				if (child == v) {
+					return this;
+				}
+				if (child != null) {
+					return editAndSet(edit, 2 * i + 1, child);
+				}
+			} else if (key.equals(k)) {
+				removed.changed = true;
+			} else {
+				return this;
+			}
+			// remove pair i
+			if (this.bitmap == bit) {
+				return null;
+			}
+			final int n = Integer.bitCount(this.bitmap);
+			if (isEditable(edit)) {
+				System.arraycopy(this.array, 2 * (i + 1), this.array, 2 * i, 2 * (n - i - 1));
+				this.array[2 * (n - 1)] = null;
+				this.array[2 * (n - 1) + 1] = null;
+				this.bitmap ^= bit;
+				return this;
+			}
+			final Object[] a = new Object[2 * (n - 1)];
+			System.arraycopy(this.array, 0, a, 0, 2 * i);
+			System.arraycopy(this.array, 2 * (i + 1), a, 2 * i, 2 * (n - i - 1));
+			return new BitmapNode(edit, this.bitmap ^ bit, a);
+		}
+
+		private BitmapNode ensureEditable(final Object edit) {
+			if (isEditable(edit)) {
+				return this;
+			}
+			final int n = Integer.bitCount(this.bitmap);
+			final Object[] a = new Object[2 * n];
+			System.arraycopy(this.array, 0, a, 0, 2 * n);
+			return new BitmapNode(edit, this.bitmap, a);
+		}
+
+		private BitmapNode editAndSet(final Object edit, final int i, final Object o) {
+			final BitmapNode editable = ensureEditable(edit);
+			editable.array[i] = o;
+			return editable;
+		}
+	}
+
+	/** keys with the same full hash code */
+	private static final class CollisionNode extends Node {
+
+		private static final long serialVersionUID = 1L;
+
+		final int hash;
+
+		int count;
+
+		CollisionNode(final Object edit, final int hash, final int count, final Object[] array) {
+			super(edit, array);
+			this.hash = hash;
+			this.count = count;
+		}
+
+		private int indexOf(final Object key) {
+			for (int i = 0; i < this.count; i++) {
+				if (key.equals(this.array[2 * i])) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		Object find(final int shift, final int hash, final Object key, final Object notFound) {
+			final int i = indexOf(key);
+			return i < 0 ? notFound : this.array[2 * i + 1];
+		}
+
+		@Override
+		Node assoc(final Object edit, final int shift, final int hash, final Object key,
+				final Object value, final Box added) {
+			if (hash != this.hash) {
+				// nest this node into a bitmap node one level up
+				return new BitmapNode(edit, bitpos(this.hash, shift), new Object[] { null, this })
+						.assoc(edit, shift, hash, key, value, added);
+			}
+			final int i = indexOf(key);
+			if (i >= 0) {
+				if (this.array[2 * i + 1] == value) {
+					return this;
+				}
+				final CollisionNode editable = ensureEditable(edit, this.count);
+				editable.array[2 * i + 1] = value;
+				return editable;
+			}
+			added.changed = true;
+			final CollisionNode editable = ensureEditable(edit, this.count + 1);
+			editable.array[2 * this.count] = key;
+			editable.array[2 * this.count + 1] = value;
+			editable.count = this.count + 1;
+			return editable;
+		}
+
+		@Override
+		Node without(final Object edit, final int shift, final int hash, final Object key,
+				final Box removed) {
+			final int i = indexOf(key);
+			if (i < 0) {
+				return this;
+			}
+			removed.changed = true;
+			if (this.count == 1) {
+				return null;
+			}
+			final CollisionNode editable = ensureEditable(edit, this.count);
+			final int last = this.count - 1;
+			editable.array[2 * i] = editable.array[2 * last];
+			editable.array[2 * i + 1] = editable.array[2 * last + 1];
+			editable.array[2 * last] = null;
+			editable.array[2 * last + 1] = null;
+			editable.count = last;
+			return editable;
+		}
+
+		private CollisionNode ensureEditable(final Object edit, final int capacity) {
+			if (isEditable(edit) && this.array.length >= 2 * capacity) {
+				return this;
+			}
+			final Object[] a = new Object[2 * capacity];
+			System.arraycopy(this.array, 0, a, 0, 2 * this.count);
+			return new CollisionNode(edit, this.hash, this.count, a);
+		}
+	}
+
+	private static int bitpos(final int hash, final int shift) {
+		return 1 << (hash >>> shift & MASK);
+	}
+
+	private static int hash(final Object key) {
+		final int h = key.hashCode();
+		return h ^ h >>> 16;
+	}
+
+	private static Node createNode(final Object edit, final int shift, final Object k1,
+			final Object v1, final int h2, final Object k2, final Object v2) {
+		final int h1 = hash(k1);
+		if (h1 == h2) {
+			return new CollisionNode(edit, h1, 2, new Object[] { k1, v1, k2, v2 });
+		}
+		final Box box = new Box();
+		return new BitmapNode(edit, 0, new Object[0]).assoc(edit, shift, h1, k1, v1, box).assoc(
+				edit, shift, h2, k2, v2, box);
+	}
+
+	@SuppressWarnings("rawtypes")
+	private static final PersistentHashMap EMPTY = new PersistentHashMap<Object, Object>(null, 0);
+
+	private static final Object NOT_FOUND = new Object();
+
+	@SuppressWarnings("unchecked")
+	public static <K, V> PersistentHashMap<K, V> empty() {
+		return EMPTY;
+	}
+
+	/** null if empty */
+	private final Node root;
+
+	private final int size;
+
+	private PersistentHashMap(final Node root, final int size) {
+		this.root = root;
+		this.size = size;
+	}
+
+	public boolean containsKey(final Object key) {
+		if (this.root == null) {
+			return false;
+		}
+		return this.root.find(0, hash(key), key, NOT_FOUND) != NOT_FOUND;
+	}
+
+	/**
+	 * @param key
+	 * @return the value or null if the key is not in this map
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(final Object key) {
+		if (this.root == null) {
+			return null;
+		}
+		final Object v = this.root.find(0, hash(key), key, NOT_FOUND);
+		return v == NOT_FOUND ? null : (V) v;
+	}
+
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * @param key @NeverNull
+	 * @param value
+	 * @return a map with the given mapping, shares structure with this map
+	 */
+	public PersistentHashMap<K, V> put(final K key, final V value) {
+		return put(null, key, value);
+	}
+
+	/**
+	 * @param edit @CanBeNull nodes owned by this token are changed in place
+	 * @param key @NeverNull
+	 * @param value
+	 * @return a map with the given mapping, shares structure with this map
+	 */
+	public PersistentHashMap<K, V> put(final Object edit, final K key, final V value) {
+		if (key == null) {
+			throw new IllegalArgumentException("key must not be null");
+		}
+		final Box added = new Box();
+		final Node r = this.root == null ? new BitmapNode(edit, 0, new Object[0]) : this.root;
+		final Node newRoot = r.assoc(edit, 0, hash(key), key, value, added);
+		if (newRoot == this.root && !added.changed) {
+			return this;
+		}
+		return new PersistentHashMap<K, V>(newRoot, added.changed ? this.size + 1 : this.size);
+	}
+
+	/**
+	 * @param key
+	 * @return a map without the given key, shares structure with this map
+	 */
+	public PersistentHashMap<K, V> remove(final K key) {
+		return remove(null, key);
+	}
+
+	/**
+	 * @param edit @CanBeNull nodes owned by this token are changed in place
+	 * @param key
+	 * @return a map without the given key, shares structure with this map
+	 */
+	public PersistentHashMap<K, V> remove(final Object edit, final K key) {
+		if (this.root == null || key == null) {
+			return this;
+		}
+		final Box removed = new Box();
+		final Node newRoot = this.root.without(edit, 0, hash(key), key, removed);
+		if (!removed.changed) {
+			return this;
+		}
+		if (newRoot == null) {
+			return empty();
+		}
+		return new PersistentHashMap<K, V>(newRoot, this.size - 1);
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return an iterator over all keys, in no particular order. Does not
+	 *         support remove.
+	 */
+	public Iterator<K> keyIterator() {
+		return new NodeIterator<K>(this.root, 0);
+	}
+
+	/**
+	 * @return an iterator over all values, in no particular order. Does not
+	 *         support remove.
+	 */
+	public Iterator<V> valueIterator() {
+		return new NodeIterator<V>(this.root, 1);
+	}
+
+	/**
+	 * Depth-first traversal of all pairs.
+	 *
+	 * @param <E>
+	 */
+	private static class NodeIterator<E> implements Iterator<E> {
+
+		/* 7 levels of 5 bit plus one collision level */
+		private final Object[][] arrays = new Object[8][];
+
+		private final int[] positions = new int[8];
+
+		private int depth = -1;
+
+		/** 0 for keys, 1 for values */
+		private final int offset;
+
+		private Object next = NOT_FOUND;
+
+		NodeIterator(final Node root, final int offset) {
+			this.offset = offset;
+			if (root != null) {
+				push(root);
+				advance();
+			}
+		}
+
+		private void push(final Node node) {
+			this.depth++;
+			this.arrays[this.depth] = node.array;
+			this.positions[this.depth] = 0;
+		}
+
+		private void advance() {
+			this.next = NOT_FOUND;
+			while (this.depth >= 0) {
+				final Object[] a = this.arrays[this.depth];
+				final int p = this.positions[this.depth];
+				if (p >= a.length) {
+					this.arrays[this.depth] = null;
+					this.depth--;
+					continue;
+				}
+				this.positions[this.depth] = p + 2;
+				final Object k = a[p];
+				if (k == null) {
+					final Object v = a[p + 1];
+					if (v instanceof Node) {
+						push((Node) v);
+					}
+					// else: unused slot at the end of an array
+					continue;
+				}
+				this.next = a[p + this.offset];
+				return;
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return this.next != NOT_FOUND;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public E next() {
+			if (this.next == NOT_FOUND) {
+				throw new NoSuchElementException();
+			}
+			final E result = (E) this.next;
+			advance();
+			return result;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+}
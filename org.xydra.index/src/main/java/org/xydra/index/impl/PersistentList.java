@@ -0,0 +1,397 @@
+package org.xydra.index.impl;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable list. All modifying operations return a new list and leave this
+ * list unchanged.
+ *
+ * The elements are kept in chunks of up to {@link #WIDTH} elements, which are
+ * the leaves of a tree whose inner nodes know how many elements each child
+ * holds. Inserting, removing or replacing an element copies one chunk and the
+ * path to it and shares everything else with the old version, so get, add,
+ * insert, remove and set take O(log32 n) time and space. A full chunk or inner
+ * node is split into two halves.
+ *
+ * Elements may be null.
+ *
+ * @author xamde
+ *
+ * @param <E>
+ */
+public final class PersistentList<E> implements Iterable<E>, Serializable {
+
+	private static final long serialVersionUID = 6090734818294209911L;
+
+	static final int WIDTH = 32;
+
+	/**
+	 * The children are either all chunks (Object[]) or all branches.
+	 */
+	private static final class Branch implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		final Object[] children;
+
+		/** sizes[i] is the number of elements in children 0 to i */
+		final int[] sizes;
+
+		Branch(final Object[] children) {
+			this.children = children;
+			this.sizes = new int[children.length];
+			int sum = 0;
+			for (int i = 0; i < children.length; i++) {
+				sum += sizeOf(children[i]);
+				this.sizes[i] = sum;
+			}
+		}
+
+		int size() {
+			return this.sizes[this.sizes.length - 1];
+		}
+
+		/**
+		 * @param index
+		 *            may be equal to size() to denote the end of the last
+		 *            child
+		 * @return the child that contains index
+		 */
+		int childIndex(final int index) {
+			int low = 0;
+			int high = this.sizes.length - 1;
+			while (low < high) {
+				final int mid = (low + high) >>> 1;
+				if (this.sizes[mid] > index) {
+					high = mid;
+				} else {
+					low = mid + 1;
+				}
+			}
+			return low;
+		}
+
+		int offset(final int childIndex) {
+			return childIndex == 0 ? 0 : this.sizes[childIndex - 1];
+		}
+
+	}
+
+	@SuppressWarnings("rawtypes")
+	private static final PersistentList EMPTY = new PersistentList<Object>(null, 0);
+
+	@SuppressWarnings("unchecked")
+	public static <E> PersistentList<E> empty() {
+		return EMPTY;
+	}
+
+	/**
+	 * @param elements
+	 * @return a list with the given elements, built in O(n)
+	 */
+	public static <E> PersistentList<E> from(final Collection<? extends E> elements) {
+		return from(elements.toArray());
+	}
+
+	/**
+	 * @param elements
+	 *            is not kept by the list
+	 * @return a list with the given elements, built in O(n)
+	 */
+	public static <E> PersistentList<E> from(final Object[] elements) {
+		if (elements.length == 0) {
+			return empty();
+		}
+		Object[] level = new Object[(elements.length + WIDTH - 1) / WIDTH];
+		for (int i = 0; i < level.length; i++) {
+			final int start = i * WIDTH;
+			final Object[] chunk = new Object[Math.min(WIDTH, elements.length - start)];
+			System.arraycopy(elements, start, chunk, 0, chunk.length);
+			level[i] = chunk;
+		}
+		while (level.length > 1) {
+			final Object[] parents = new Object[(level.length + WIDTH - 1) / WIDTH];
+			for (int i = 0; i < parents.length; i++) {
+				final int start = i * WIDTH;
+				final Object[] children = new Object[Math.min(WIDTH, level.length - start)];
+				System.arraycopy(level, start, children, 0, children.length);
+				parents[i] = new Branch(children);
+			}
+			level = parents;
+		}
+		return new PersistentList<E>(level[0], elements.length);
+	}
+
+	private static int sizeOf(final Object node) {
+		if (node instanceof Branch) {
+			return ((Branch) node).size();
+		}
+		return ((Object[]) node).length;
+	}
+
+	/**
+	 * @return one node or, if it became too large, two halves
+	 */
+	private static Object[] insert(final Object node, final int index, final Object element) {
+		if (node instanceof Branch) {
+			final Branch branch = (Branch) node;
+			final int i = branch.childIndex(index);
+			final Object[] result = insert(branch.children[i], index - branch.offset(i), element);
+			final Object[] children;
+			if (result.length == 1) {
+				children = branch.children.clone();
+				children[i] = result[0];
+			} else {
+				children = new Object[branch.children.length + 1];
+				System.arraycopy(branch.children, 0, children, 0, i);
+				children[i] = result[0];
+				children[i + 1] = result[1];
+				System.arraycopy(branch.children, i + 1, children, i + 2, branch.children.length
+						- i - 1);
+			}
+			if (children.length <= WIDTH) {
+				return new Object[] { new Branch(children) };
+			}
+			final Object[][] halves = split(children);
+			return new Object[] { new Branch(halves[0]), new Branch(halves[1]) };
+		}
+		final Object[] chunk = (Object[]) node;
+		final Object[] copy = new Object[chunk.length + 1];
+		System.arraycopy(chunk, 0, copy, 0, index);
+		copy[index] = element;
+		System.arraycopy(chunk, index, copy, index + 1, chunk.length - index);
+		if (copy.length <= WIDTH) {
+			return new Object[] { copy };
+		}
+		final Object[][] halves = split(copy);
+		return new Object[] { halves[0], halves[1] };
+	}
+
+	private static Object[][] split(final Object[] array) {
+		final Object[] left = new Object[array.length / 2];
+		final Object[] right = new Object[array.length - left.length];
+		System.arraycopy(array, 0, left, 0, left.length);
+		System.arraycopy(array, left.length, right, 0, right.length);
+		return new Object[][] { left, right };
+	}
+
+	/**
+	 * @return null if the node became empty
+	 */
+	private static Object remove(final Object node, final int index) {
+		if (node instanceof Branch) {
+			final Branch branch = (Branch) node;
+			final int i = branch.childIndex(index);
+			final Object child = remove(branch.children[i], index - branch.offset(i));
+			if (child != null) {
+				final Object[] children = branch.children.clone();
+				children[i] = child;
+				return new Branch(children);
+			}
+			if (branch.children.length == 1) {
+				return null;
+			}
+			final Object[] children = new Object[branch.children.length - 1];
+			System.arraycopy(branch.children, 0, children, 0, i);
+			System.arraycopy(branch.children, i + 1, children, i, children.length - i);
+			return new Branch(children);
+		}
+		final Object[] chunk = (Object[]) node;
+		if (chunk.length == 1) {
+			return null;
+		}
+		final Object[] copy = new Object[chunk.length - 1];
+		System.arraycopy(chunk, 0, copy, 0, index);
+		System.arraycopy(chunk, index + 1, copy, index, copy.length - index);
+		return copy;
+	}
+
+	private static Object set(final Object node, final int index, final Object element) {
+		if (node instanceof Branch) {
+			final Branch branch = (Branch) node;
+			final int i = branch.childIndex(index);
+			final Object[] children = branch.children.clone();
+			children[i] = set(branch.children[i], index - branch.offset(i), element);
+			return new Branch(children);
+		}
+		final Object[] copy = ((Object[]) node).clone();
+		copy[index] = element;
+		return copy;
+	}
+
+	/** null if empty */
+	private final Object root;
+
+	private final int size;
+
+	private PersistentList(final Object root, final int size) {
+		this.root = root;
+		this.size = size;
+	}
+
+	private void checkIndex(final int index, final int max) {
+		if (index < 0 || index > max) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+		}
+	}
+
+	/**
+	 * @param index
+	 * @return the chunk that contains index; its first element is at index
+	 *         minus the returned offset
+	 */
+	private Object[] chunkFor(final int index, final int[] offset) {
+		Object node = this.root;
+		int start = 0;
+		while (node instanceof Branch) {
+			final Branch branch = (Branch) node;
+			final int i = branch.childIndex(index - start);
+			start += branch.offset(i);
+			node = branch.children[i];
+		}
+		offset[0] = start;
+		return (Object[]) node;
+	}
+
+	@SuppressWarnings("unchecked")
+	public E get(final int index) {
+		checkIndex(index, this.size - 1);
+		final int[] offset = new int[1];
+		final Object[] chunk = chunkFor(index, offset);
+		return (E) chunk[index - offset[0]];
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * @param element
+	 * @return a list with element appended, shares structure with this list
+	 */
+	public PersistentList<E> add(final E element) {
+		return insert(this.size, element);
+	}
+
+	/**
+	 * @param index
+	 *            from 0 to size()
+	 * @param element
+	 * @return a list with element inserted at index, shares structure with
+	 *         this list
+	 */
+	public PersistentList<E> insert(final int index, final E element) {
+		checkIndex(index, this.size);
+		if (this.root == null) {
+			return new PersistentList<E>(new Object[] { element }, 1);
+		}
+		final Object[] result = insert(this.root, index, element);
+		final Object newRoot = result.length == 1 ? result[0] : new Branch(result);
+		return new PersistentList<E>(newRoot, this.size + 1);
+	}
+
+	/**
+	 * @param index
+	 * @return a list without the element at index, shares structure with this
+	 *         list
+	 */
+	public PersistentList<E> remove(final int index) {
+		checkIndex(index, this.size - 1);
+		Object newRoot = remove(this.root, index);
+		if (newRoot == null) {
+			return empty();
+		}
+		while (newRoot instanceof Branch && ((Branch) newRoot).children.length == 1) {
+			newRoot = ((Branch) newRoot).children[0];
+		}
+		return new PersistentList<E>(newRoot, this.size - 1);
+	}
+
+	/**
+	 * @param index
+	 * @param element
+	 * @return a list with element at index, shares structure with this list
+	 */
+	public PersistentList<E> set(final int index, final E element) {
+		checkIndex(index, this.size - 1);
+		return new PersistentList<E>(set(this.root, index, element), this.size);
+	}
+
+	/**
+	 * @param array
+	 *            of at least size()
+	 */
+	public void copyInto(final Object[] array) {
+		int i = 0;
+		for (final E e : this) {
+			array[i++] = e;
+		}
+	}
+
+	/**
+	 * @return a new array with all elements
+	 */
+	public Object[] toArray() {
+		final Object[] array = new Object[this.size];
+		copyInto(array);
+		return array;
+	}
+
+	/**
+	 * Does not support remove.
+	 */
+	@Override
+	public Iterator<E> iterator() {
+		return new Iterator<E>() {
+
+			private int next = 0;
+
+			private Object[] chunk;
+
+			private final int[] offset = new int[1];
+
+			@Override
+			public boolean hasNext() {
+				return this.next < PersistentList.this.size;
+			}
+
+			@SuppressWarnings("unchecked")
+			@Override
+			public E next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				if (this.chunk == null || this.next - this.offset[0] >= this.chunk.length) {
+					this.chunk = chunkFor(this.next, this.offset);
+				}
+				return (E) this.chunk[this.next++ - this.offset[0]];
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+
+		};
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder b = new StringBuilder("[");
+		for (final E e : this) {
+			if (b.length() > 1) {
+				b.append(", ");
+			}
+			b.append(e);
+		}
+		return b.append("]").toString();
+	}
+
+}
@@ -836,6 +836,11 @@ public class SmallTrieStringMapSetIndex<E> implements IMapSetIndex<String, E>, S
 			if (!c1.getExpected().startsWith(combinedKey)) {
 				return false;
 			}
+		} else if (c1 instanceof ConstraintKeyPrefix) {
+			/* either we are still on the way to the prefix or already below it */
+			final String keyPrefix = c1.getExpected();
+			return combinedKey.length() <= keyPrefix.length() ? keyPrefix.startsWith(combinedKey)
+					: combinedKey.startsWith(keyPrefix);
 		}
 		// who knows. sure it can match. maybe.
 		return true;
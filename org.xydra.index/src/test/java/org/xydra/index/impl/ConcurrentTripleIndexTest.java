@@ -0,0 +1,120 @@
+package org.xydra.index.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+import org.xydra.index.AbstractTripleIndexTest;
+import org.xydra.index.ITripleIndex;
+import org.xydra.index.iterator.Iterators;
+import org.xydra.index.query.ITriple;
+
+public class ConcurrentTripleIndexTest extends AbstractTripleIndexTest<String, String, String> {
+
+	private static final int WRITERS = 4;
+
+	private static final int SUBJECTS = 400;
+
+	private static final int PREDICATES = 5;
+
+	@Override
+	public String createS(final String label) {
+		return label;
+	}
+
+	@Override
+	public String createP(final String label) {
+		return label;
+	}
+
+	@Override
+	public String createO(final String label) {
+		return label;
+	}
+
+	@Override
+	public ITripleIndex<String, String, String> create() {
+		return new ConcurrentTripleIndex<String, String, String>();
+	}
+
+	/**
+	 * Writers add (s,p,s+p) for their own subjects and remove the triples of every other subject again, while readers
+	 * check that each triple they see via the p-o-s and o-s-p permutations is well-formed.
+	 */
+	@Test
+	public void testConcurrentWritersAndReaders() throws Exception {
+		final ConcurrentTripleIndex<String, String, String> index = new ConcurrentTripleIndex<String, String, String>(
+				WRITERS);
+		final AtomicBoolean done = new AtomicBoolean(false);
+		final ExecutorService executor = Executors.newFixedThreadPool(WRITERS + 2);
+		try {
+			final Future<?>[] writers = new Future<?>[WRITERS];
+			for (int w = 0; w < WRITERS; w++) {
+				final int writer = w;
+				writers[w] = executor.submit(new Runnable() {
+
+					@Override
+					public void run() {
+						for (int i = writer; i < SUBJECTS; i += WRITERS) {
+							for (int p = 0; p < PREDICATES; p++) {
+								assertTrue(index.index("s" + i, "p" + p, "s" + i + "p" + p));
+							}
+							if (i % 2 == 1) {
+								for (int p = 0; p < PREDICATES; p++) {
+									assertTrue(index.deIndex("s" + i, "p" + p, "s" + i + "p" + p));
+								}
+							}
+						}
+					}
+				});
+			}
+			final Future<?>[] readers = new Future<?>[2];
+			for (int r = 0; r < readers.length; r++) {
+				readers[r] = executor.submit(new Runnable() {
+
+					@Override
+					public void run() {
+						while (!done.get()) {
+							final Iterator<ITriple<String, String, String>> it = index.getTriples(null, "p1", null);
+							while (it.hasNext()) {
+								final ITriple<String, String, String> t = it.next();
+								assertEquals(t.getKey1() + "p1", t.getEntry());
+							}
+							final Iterator<String> subjects = index.getSubjects_XPO("p2", "s8p2");
+							while (subjects.hasNext()) {
+								assertEquals("s8", subjects.next());
+							}
+						}
+					}
+				});
+			}
+			for (final Future<?> writer : writers) {
+				writer.get(30, TimeUnit.SECONDS);
+			}
+			done.set(true);
+			for (final Future<?> reader : readers) {
+				reader.get(30, TimeUnit.SECONDS);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertEquals(SUBJECTS / 2 * PREDICATES, Iterators.count(index.getTriples()));
+		assertEquals(SUBJECTS / 2, Iterators.count(index.getTriples(null, "p3", null)));
+		assertEquals(SUBJECTS / 2 * PREDICATES, Iterators.count(index.getObjects_XXX()));
+		assertEquals(SUBJECTS / 2, Iterators.count(index.getSubjects_XXX()));
+		assertTrue(index.contains("s10", null, "s10p4"));
+		assertFalse(index.contains("s11", null, null));
+		assertFalse(index.contains(null, null, "s11p0"));
+		assertEquals(1, Iterators.count(index.getPredicates_SXO("s10", "s10p4")));
+	}
+
+}
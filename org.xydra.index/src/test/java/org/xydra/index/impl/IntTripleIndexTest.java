@@ -0,0 +1,104 @@
+package org.xydra.index.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.xydra.index.AbstractTripleIndexTest;
+import org.xydra.index.ITripleIndex;
+import org.xydra.index.iterator.Iterators;
+import org.xydra.index.query.ITriple;
+import org.xydra.index.query.KeyKeyEntryTuple;
+
+public class IntTripleIndexTest extends AbstractTripleIndexTest<String, String, String> {
+
+	@Override
+	public String createS(final String label) {
+		return label;
+	}
+
+	@Override
+	public String createP(final String label) {
+		return label;
+	}
+
+	@Override
+	public String createO(final String label) {
+		return label;
+	}
+
+	@Override
+	public ITripleIndex<String, String, String> create() {
+		return new IntTripleIndex<String, String, String>();
+	}
+
+	private static void assertSameQueries(final ITripleIndex<String, String, String> expected,
+			final IntTripleIndex<String, String, String> actual, final Random random) {
+		for (int i = 0; i < 20; i++) {
+			final String s = random.nextBoolean() ? null : "s" + random.nextInt(60);
+			final String p = random.nextBoolean() ? null : "p" + random.nextInt(6);
+			final String o = random.nextBoolean() ? null : "o" + random.nextInt(80);
+			assertEquals(Iterators.toSet(expected.getTriples(s, p, o)), Iterators.toSet(actual.getTriples(s, p, o)));
+			assertEquals(expected.contains(s, p, o), actual.contains(s, p, o));
+		}
+		final String s = "s" + random.nextInt(60);
+		final String p = "p" + random.nextInt(6);
+		final String o = "o" + random.nextInt(80);
+		assertEquals(Iterators.toSet(expected.getObjects_SPX(s, p)), Iterators.toSet(actual.getObjects_SPX(s, p)));
+		assertEquals(Iterators.toSet(expected.getPredicates_SXX(s)), Iterators.toSet(actual.getPredicates_SXX(s)));
+		assertEquals(Iterators.toSet(expected.getPredicates_SXO(s, o)),
+				Iterators.toSet(actual.getPredicates_SXO(s, o)));
+		assertEquals(Iterators.toSet(expected.getSubjects_XPO(p, o)), Iterators.toSet(actual.getSubjects_XPO(p, o)));
+		assertEquals(Iterators.toList(expected.getSubjects_XXX()).size(), Iterators.count(actual.getSubjects_XXX()));
+		assertEquals(Iterators.toSet(expected.getObjects_XXX()), Iterators.toSet(actual.getObjects_XXX()));
+		assertEquals(Iterators.toSet(expected.getPredicates_XXX()), Iterators.toSet(actual.getPredicates_XXX()));
+	}
+
+	@Test
+	public void testRandomChangesAgainstFastTripleIndex() {
+		final Random random = new Random(7);
+		final FastTripleIndex<String, String, String> expected = new FastTripleIndex<String, String, String>();
+		final IntTripleIndex<String, String, String> actual = new IntTripleIndex<String, String, String>();
+		for (int step = 0; step < 30000; step++) {
+			final String s = "s" + random.nextInt(60);
+			final String p = "p" + random.nextInt(6);
+			final String o = "o" + random.nextInt(80);
+			if (random.nextInt(10) < 6) {
+				assertEquals(expected.index(s, p, o), actual.index(s, p, o));
+			} else {
+				assertEquals(expected.deIndex(s, p, o), actual.deIndex(s, p, o));
+			}
+			if (step % 3000 == 0) {
+				assertSameQueries(expected, actual, random);
+			}
+		}
+		assertEquals(Iterators.count(expected.getTriples()), actual.size());
+		assertSameQueries(expected, actual, random);
+	}
+
+	@Test
+	public void testBulkIndex() {
+		final Random random = new Random(3);
+		final FastTripleIndex<String, String, String> expected = new FastTripleIndex<String, String, String>();
+		final IntTripleIndex<String, String, String> actual = new IntTripleIndex<String, String, String>();
+		actual.index("s1", "p1", "o1");
+		expected.index("s1", "p1", "o1");
+		final List<ITriple<String, String, String>> triples = new ArrayList<ITriple<String, String, String>>();
+		for (int i = 0; i < 20000; i++) {
+			final String s = "s" + random.nextInt(60);
+			final String p = "p" + random.nextInt(6);
+			final String o = "o" + random.nextInt(80);
+			triples.add(new KeyKeyEntryTuple<String, String, String>(s, p, o));
+			expected.index(s, p, o);
+		}
+		actual.bulkIndex(triples.iterator());
+		assertEquals(Iterators.count(expected.getTriples()), actual.size());
+		assertSameQueries(expected, actual, random);
+		assertTrue(actual.getEstimatedMemoryInBytes() > 0);
+	}
+
+}
@@ -288,6 +288,25 @@ public class IntegerRangeIndexTest {
 		assertEquals(30, (int) range2.getValue());
 	}
 
+	@Test
+	public void testFrozen() {
+		final IntegerRangeIndex iri = new IntegerRangeIndex();
+		iri.index(-5, 3);
+		iri.index('a', 'z');
+		iri.index(0xFFF0, 0x10010);
+		iri.index(0x1F600, 0x1F64F);
+		final FrozenIntegerRangeIndex frozen = new FrozenIntegerRangeIndex(iri);
+		assertEquals(iri.size(), frozen.size());
+		assertEquals(Iterators.toList(iri.rangesIterator()), Iterators.toList(frozen.rangesIterator()));
+		for (int i = -10; i < 0x20000; i++) {
+			assertEquals("" + i, iri.isInInterval(i), frozen.isInInterval(i));
+		}
+		assertTrue(frozen.isAllCharactersInIntervals("Xabc\uD83D\uDE00", 1));
+		assertFalse(frozen.isAllCharactersInIntervals("abcX", 1));
+		assertFalse(frozen.isAllCharactersInIntervals("ab\uD83D\uDC00", 0));
+		assertTrue(new FrozenIntegerRangeIndex(new IntegerRangeIndex()).isEmpty());
+	}
+
 	private static void assertSpan(final int s, final int e, final boolean inRange, final Span span) {
 		assertEquals(s, span.startInclusive);
 		assertEquals(e, span.endInclusive);
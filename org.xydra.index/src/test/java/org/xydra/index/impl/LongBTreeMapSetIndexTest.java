@@ -0,0 +1,106 @@
+package org.xydra.index.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class LongBTreeMapSetIndexTest {
+
+	private static List<Integer> expectedRange(final TreeMap<Long, Set<Integer>> expected,
+			final long min, final long max) {
+		final List<Integer> result = new ArrayList<Integer>();
+		if (min <= max) {
+			for (final Set<Integer> entries : expected.subMap(min, true, max, true).values()) {
+				result.addAll(entries);
+			}
+		}
+		return result;
+	}
+
+	private static void assertRange(final TreeMap<Long, Set<Integer>> expected,
+			final LongBTreeMapSetIndex<Integer> index, final long min, final long max) {
+		final List<Integer> expectedEntries = expectedRange(expected, min, max);
+		final List<Integer> actual = new ArrayList<Integer>();
+		final Iterator<Integer> it = index.rangeIterator(min, max);
+		while (it.hasNext()) {
+			actual.add(it.next());
+		}
+		assertEquals(new HashSet<Integer>(expectedEntries), new HashSet<Integer>(actual));
+		assertEquals(expectedEntries.size(), actual.size());
+	}
+
+	@Test
+	public void testRandomChangesAgainstTreeMap() {
+		final Random random = new Random(11);
+		final TreeMap<Long, Set<Integer>> expected = new TreeMap<Long, Set<Integer>>();
+		final LongBTreeMapSetIndex<Integer> index = new LongBTreeMapSetIndex<Integer>(
+				new FastEntrySetFactory<Integer>());
+		for (int step = 0; step < 50000; step++) {
+			final long key = random.nextInt(5000) - 2500;
+			final int entry = random.nextInt(4);
+			if (random.nextInt(10) < 7) {
+				Set<Integer> entries = expected.get(key);
+				if (entries == null) {
+					entries = new HashSet<Integer>();
+					expected.put(key, entries);
+				}
+				assertEquals(entries.add(entry), index.index(key, entry));
+			} else {
+				final Set<Integer> entries = expected.get(key);
+				final boolean removed = entries != null && entries.remove(entry);
+				if (entries != null && entries.isEmpty()) {
+					expected.remove(key);
+				}
+				assertEquals(removed, index.deIndex(key, entry));
+			}
+			if (step % 1000 == 0) {
+				final long a = random.nextInt(6000) - 3000;
+				assertRange(expected, index, a, a + random.nextInt(1000));
+			}
+		}
+		assertEquals(expected.size(), index.size());
+		for (final Map.Entry<Long, Set<Integer>> e : expected.entrySet()) {
+			assertEquals(e.getValue(), index.lookup(e.getKey()).toSet());
+		}
+		assertRange(expected, index, Long.MIN_VALUE, Long.MAX_VALUE);
+		assertRange(expected, index, 10, 9);
+	}
+
+	@Test
+	public void testAscendingAndDescendingInsertion() {
+		final LongBTreeMapSetIndex<Integer> ascending = new LongBTreeMapSetIndex<Integer>(
+				new SmallEntrySetFactory<Integer>());
+		final LongBTreeMapSetIndex<Integer> descending = new LongBTreeMapSetIndex<Integer>(
+				new SmallEntrySetFactory<Integer>());
+		for (int i = 0; i < 10000; i++) {
+			ascending.index(i, i);
+			descending.index(10000 - i, i);
+		}
+		assertEquals(10000, ascending.size());
+		assertEquals(10000, descending.size());
+		final Iterator<Integer> it = ascending.rangeIterator(100, 200);
+		for (int i = 100; i <= 200; i++) {
+			assertEquals(Integer.valueOf(i), it.next());
+		}
+		assertFalse(it.hasNext());
+		for (int i = 0; i < 10000; i++) {
+			assertTrue(ascending.deIndex(i, i));
+		}
+		assertTrue(ascending.isEmpty());
+		assertFalse(ascending.rangeIterator(Long.MIN_VALUE, Long.MAX_VALUE).hasNext());
+		assertNull(ascending.lookup(5));
+	}
+
+}
@@ -0,0 +1,175 @@
+package org.xydra.index.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class PersistentHashMapTest {
+
+	/** keys with the same hash code end up in the same collision node */
+	private static class Collider {
+
+		private final int id;
+
+		Collider(final int id) {
+			this.id = id;
+		}
+
+		@Override
+		public boolean equals(final Object other) {
+			return other instanceof Collider && ((Collider) other).id == this.id;
+		}
+
+		@Override
+		public int hashCode() {
+			return 42;
+		}
+
+	}
+
+	private static <K, V> void assertSameContent(final Map<K, V> expected,
+			final PersistentHashMap<K, V> actual) {
+		assertEquals(expected.size(), actual.size());
+		assertEquals(expected.isEmpty(), actual.isEmpty());
+		for (final Map.Entry<K, V> e : expected.entrySet()) {
+			assertTrue(actual.containsKey(e.getKey()));
+			assertEquals(e.getValue(), actual.get(e.getKey()));
+		}
+		final Set<K> keys = new HashSet<K>();
+		final Iterator<K> it = actual.keyIterator();
+		while (it.hasNext()) {
+			assertTrue(keys.add(it.next()));
+		}
+		assertEquals(expected.keySet(), keys);
+		int values = 0;
+		final Iterator<V> vit = actual.valueIterator();
+		while (vit.hasNext()) {
+			vit.next();
+			values++;
+		}
+		assertEquals(expected.size(), values);
+	}
+
+	@Test
+	public void testPutGetRemove() {
+		final PersistentHashMap<String, Integer> empty = PersistentHashMap.empty();
+		final PersistentHashMap<String, Integer> one = empty.put("a", 1);
+		final PersistentHashMap<String, Integer> two = one.put("b", null);
+
+		assertEquals(0, empty.size());
+		assertNull(empty.get("a"));
+		assertEquals(Integer.valueOf(1), one.get("a"));
+		assertFalse(one.containsKey("b"));
+		// null values are stored
+		assertTrue(two.containsKey("b"));
+		assertNull(two.get("b"));
+		assertEquals(2, two.size());
+
+		assertSame(two, two.put("a", 1));
+		assertSame(two, two.remove("unknown"));
+		assertEquals(1, two.remove("a").size());
+		assertSame(PersistentHashMap.empty(), one.remove("a"));
+		assertEquals(Integer.valueOf(1), two.get("a"));
+	}
+
+	@Test
+	public void testOldVersionsAreUnchanged() {
+		final Random random = new Random(7);
+		final Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+		PersistentHashMap<Integer, Integer> map = PersistentHashMap.empty();
+		final Map<Integer, Integer> oldExpected = new HashMap<Integer, Integer>();
+		PersistentHashMap<Integer, Integer> old = map;
+		for (int i = 0; i < 5000; i++) {
+			final int key = random.nextInt(2000);
+			if (random.nextInt(3) == 0) {
+				expected.remove(key);
+				map = map.remove(key);
+			} else {
+				expected.put(key, i);
+				map = map.put(key, i);
+			}
+			if (i == 2500) {
+				old = map;
+				oldExpected.putAll(expected);
+			}
+		}
+		assertSameContent(expected, map);
+		assertSameContent(oldExpected, old);
+	}
+
+	@Test
+	public void testEditTokenChangesOnlyOwnedNodes() {
+		final Object edit = new Object();
+		PersistentHashMap<Integer, Integer> map = PersistentHashMap.empty();
+		for (int i = 0; i < 1000; i++) {
+			map = map.put(edit, i, i);
+		}
+		final PersistentHashMap<Integer, Integer> shared = map;
+		final Map<Integer, Integer> sharedExpected = new HashMap<Integer, Integer>();
+		for (int i = 0; i < 1000; i++) {
+			sharedExpected.put(i, i);
+		}
+
+		// the owner switches to a new token once the version is shared
+		final Object edit2 = new Object();
+		for (int i = 0; i < 1000; i += 2) {
+			map = map.remove(edit2, i);
+		}
+		map = map.put(edit2, 5000, 5000);
+		assertSameContent(sharedExpected, shared);
+		assertEquals(501, map.size());
+		assertEquals(Integer.valueOf(5000), map.get(5000));
+		assertFalse(map.containsKey(2));
+
+		// with the same token, the map is changed in place
+		final PersistentHashMap<Integer, Integer> before = map;
+		map = map.put(edit2, 1, -1);
+		assertEquals(Integer.valueOf(-1), before.get(1));
+		assertEquals(Integer.valueOf(-1), map.get(1));
+	}
+
+	@Test
+	public void testCollisions() {
+		final Map<Collider, Integer> expected = new HashMap<Collider, Integer>();
+		PersistentHashMap<Collider, Integer> map = PersistentHashMap.empty();
+		for (int i = 0; i < 10; i++) {
+			expected.put(new Collider(i), i);
+			map = map.put(new Collider(i), i);
+		}
+		// a key with another hash next to the collision node
+		map = map.put(new Collider(99) {
+			@Override
+			public int hashCode() {
+				return 7;
+			}
+		}, 99);
+		assertEquals(11, map.size());
+		map = map.remove(new Collider(3));
+		expected.remove(new Collider(3));
+		assertEquals(10, map.size());
+		for (final Map.Entry<Collider, Integer> e : expected.entrySet()) {
+			assertEquals(e.getValue(), map.get(e.getKey()));
+		}
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public void testIteratorEnd() {
+		final Iterator<String> it = PersistentHashMap.<String, String> empty().put("a", "b")
+				.keyIterator();
+		assertEquals("a", it.next());
+		it.next();
+	}
+
+}
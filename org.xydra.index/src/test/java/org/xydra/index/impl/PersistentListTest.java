@@ -0,0 +1,84 @@
+package org.xydra.index.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PersistentListTest {
+
+	private static void assertSame(final List<Integer> expected, final PersistentList<Integer> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i), actual.get(i));
+		}
+		final Iterator<Integer> it = actual.iterator();
+		for (final Integer i : expected) {
+			assertEquals(i, it.next());
+		}
+		assertEquals(false, it.hasNext());
+	}
+
+	@Test
+	public void testRandomChangesAgainstArrayList() {
+		final Random random = new Random(7);
+		final List<Integer> expected = new ArrayList<Integer>();
+		PersistentList<Integer> list = PersistentList.empty();
+		for (int step = 0; step < 20000; step++) {
+			final int op = random.nextInt(10);
+			if (op < 6 || expected.isEmpty()) {
+				final int index = random.nextInt(expected.size() + 1);
+				expected.add(index, step);
+				list = list.insert(index, step);
+			} else if (op < 9) {
+				final int index = random.nextInt(expected.size());
+				expected.remove(index);
+				list = list.remove(index);
+			} else {
+				final int index = random.nextInt(expected.size());
+				expected.set(index, -step);
+				list = list.set(index, -step);
+			}
+			if (step % 1000 == 0) {
+				assertSame(expected, list);
+			}
+		}
+		assertSame(expected, list);
+		assertSame(expected, PersistentList.<Integer> from(expected));
+	}
+
+	@Test
+	public void testOldVersionsStayUnchanged() {
+		final List<Integer> expected = new ArrayList<Integer>();
+		for (int i = 0; i < 1000; i++) {
+			expected.add(i);
+		}
+		final PersistentList<Integer> list = PersistentList.from(expected);
+		PersistentList<Integer> changed = list;
+		for (int i = 0; i < 500; i++) {
+			changed = changed.remove(0).add(i).set(999, null);
+		}
+		assertSame(expected, list);
+		assertEquals(1000, changed.size());
+		assertEquals(Integer.valueOf(500), changed.get(0));
+		assertEquals(null, changed.get(998));
+		assertEquals(null, changed.get(999));
+
+		PersistentList<Integer> empty = list;
+		while (!empty.isEmpty()) {
+			empty = empty.remove(empty.size() / 2);
+		}
+		assertEquals(0, empty.size());
+		assertEquals("[1, 2]", PersistentList.<Integer> empty().add(1).add(2).toString());
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testOutOfBounds() {
+		PersistentList.<Integer> empty().add(1).get(1);
+	}
+
+}
@@ -0,0 +1,164 @@
+package org.xydra.index.impl;
+
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.xydra.index.ITripleIndex;
+import org.xydra.index.query.ITriple;
+
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.caliper.runner.CaliperMain;
+
+/**
+ * Compares {@link ConcurrentTripleIndex} with {@link FastTripleIndex} and {@link SmallTripleIndex} for the three access
+ * patterns (s,p,*), (*,p,o) and (s,*,o), each served by another permutation. The parallel benchmark runs the same reads
+ * on several threads; the single-threaded indexes are guarded by one lock, as their callers have to do.
+ *
+ * @author xamde
+ */
+public class TripleIndexBenchmark {
+
+	public enum Impl {
+		CONCURRENT, FAST, SMALL
+	}
+
+	private static final int SUBJECTS = 2000;
+
+	private static final int PREDICATES = 10;
+
+	private static final int READS_PER_TASK = 10000;
+
+	@Param
+	Impl impl;
+
+	@Param({ "1", "4" })
+	int threads;
+
+	private ITripleIndex<String, String, String> index;
+
+	private String[] s;
+
+	private String[] p;
+
+	private String[] o;
+
+	private ExecutorService executor;
+
+	@BeforeExperiment
+	public void setUp() {
+		switch (this.impl) {
+		case CONCURRENT:
+			this.index = new ConcurrentTripleIndex<String, String, String>();
+			break;
+		case FAST:
+			this.index = new FastTripleIndex<String, String, String>();
+			break;
+		case SMALL:
+			this.index = new SmallTripleIndex<String, String, String>(true);
+			break;
+		}
+		this.s = new String[SUBJECTS];
+		this.p = new String[PREDICATES];
+		this.o = new String[SUBJECTS];
+		for (int i = 0; i < PREDICATES; i++) {
+			this.p[i] = "p" + i;
+		}
+		for (int i = 0; i < SUBJECTS; i++) {
+			this.s[i] = "s" + i;
+			this.o[i] = "o" + i;
+		}
+		for (int i = 0; i < SUBJECTS; i++) {
+			for (int j = 0; j < PREDICATES; j++) {
+				this.index.index(this.s[i], this.p[j], this.o[(i + j) % SUBJECTS]);
+			}
+		}
+		this.executor = Executors.newFixedThreadPool(this.threads);
+	}
+
+	@AfterExperiment
+	public void tearDown() {
+		this.executor.shutdown();
+	}
+
+	private int count(final Iterator<ITriple<String, String, String>> it) {
+		int n = 0;
+		while (it.hasNext()) {
+			it.next();
+			n++;
+		}
+		return n;
+	}
+
+	private int read(final int pattern, final int i) {
+		final int subject = i % SUBJECTS;
+		final int predicate = i % PREDICATES;
+		switch (pattern) {
+		case 0:
+			return count(this.index.getTriples(this.s[subject], this.p[predicate], null));
+		case 1:
+			return count(this.index.getTriples(null, this.p[predicate], this.o[(subject + predicate) % SUBJECTS]));
+		default:
+			return count(this.index.getTriples(this.s[subject], null, this.o[(subject + predicate) % SUBJECTS]));
+		}
+	}
+
+	private int readGuarded(final int pattern, final int i) {
+		if (this.impl == Impl.CONCURRENT) {
+			return read(pattern, i);
+		}
+		synchronized (this.index) {
+			return read(pattern, i);
+		}
+	}
+
+	private int run(final int pattern, final int reps) throws Exception {
+		int dummy = 0;
+		for (int r = 0; r < reps; r++) {
+			@SuppressWarnings("unchecked")
+			final Future<Integer>[] futures = new Future[this.threads];
+			for (int t = 0; t < this.threads; t++) {
+				futures[t] = this.executor.submit(new Callable<Integer>() {
+
+					@Override
+					public Integer call() {
+						int n = 0;
+						for (int i = 0; i < READS_PER_TASK; i++) {
+							n += readGuarded(pattern, i);
+						}
+						return n;
+					}
+				});
+			}
+			for (final Future<Integer> future : futures) {
+				dummy += future.get();
+			}
+		}
+		return dummy;
+	}
+
+	@Benchmark
+	public int spo(final int reps) throws Exception {
+		return run(0, reps);
+	}
+
+	@Benchmark
+	public int pos(final int reps) throws Exception {
+		return run(1, reps);
+	}
+
+	@Benchmark
+	public int osp(final int reps) throws Exception {
+		return run(2, reps);
+	}
+
+	public static void main(final String[] args) {
+		CaliperMain.main(TripleIndexBenchmark.class, new String[] {});
+	}
+
+}
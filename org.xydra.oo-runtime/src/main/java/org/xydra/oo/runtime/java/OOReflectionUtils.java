@@ -42,16 +42,7 @@ public class OOReflectionUtils {
 			return hasXid.getId();
 		}
 
-		SharedTypeMapping mapping = OOReflectionUtils.getMapping(type, componentType);
-		if (mapping == null) {
-			// try via interfaces
-			for (final Class<?> interfaze : type.getInterfaces()) {
-				mapping = OOReflectionUtils.getMapping(interfaze, componentType);
-				if (mapping != null) {
-					break;
-				}
-			}
-		}
+		final SharedTypeMapping mapping = getMappingOrInterfaceMapping(type, componentType);
 		if (mapping != null) {
 			// assert mapping.getJavaType().equals(paramType);
 			final XValue v = mapping.toXydra(value);
@@ -221,6 +212,28 @@ public class OOReflectionUtils {
 		}
 	}
 
+	/**
+	 * @param type
+	 * @param componentType
+	 *            can be a proxy object or any XValue type
+	 * @return the mapping of the type or, if there is none, of the first of its
+	 *         interfaces that has one; or null
+	 */
+	public static SharedTypeMapping getMappingOrInterfaceMapping(final Class<?> type,
+			final Class<?> componentType) {
+		final SharedTypeMapping mapping = getMapping(type, componentType);
+		if (mapping != null) {
+			return mapping;
+		}
+		for (final Class<?> interfaze : type.getInterfaces()) {
+			final SharedTypeMapping interfaceMapping = getMapping(interfaze, componentType);
+			if (interfaceMapping != null) {
+				return interfaceMapping;
+			}
+		}
+		return null;
+	}
+
 	public static void main(final String[] args) {
 		System.out.println("All types");
 		for (final ValueType v : ValueType.values()) {
@@ -5,9 +5,12 @@ import java.lang.reflect.Method;
 import java.util.List;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.xydra.annotations.RunsInGWT;
 import org.xydra.base.Base;
+import org.xydra.base.IHasXId;
 import org.xydra.base.XId;
 import org.xydra.base.rmof.XWritableModel;
 import org.xydra.base.rmof.XWritableObject;
@@ -29,6 +32,9 @@ import org.xydra.oo.runtime.shared.SortedSetProxy;
  * Java dynamic proxy representing a Java Object that is mapped to a Xydra
  * Object.
  *
+ * The kind, field id and types of each method are derived via reflection only
+ * on its first call and kept in a handler shared by all proxies.
+ *
  * @author xamde
  */
 @RunsInGWT(false)
@@ -75,144 +81,267 @@ public class OOJavaOnlyProxy implements InvocationHandler {
 		}
 	}
 
-	private Object invokeIntern(final Object proxy, final Method method, final Object[] args) {
-		assert args == null && method.getParameterTypes().length == 0
-				|| args != null && method.getParameterTypes().length == args.length : args == null ? "args null"
-				: "args.len=" + args.length;
+	/**
+	 * Everything needed to dispatch calls of one method of a proxied
+	 * interface. Derived once per method via reflection, so that calls only
+	 * need to look up the handler.
+	 */
+	private static final class MethodHandler {
+
+		/** returned for absent values of primitive types, null otherwise */
+		private final Object defaultValue;
+
+		private final String fieldName;
+
+		private final XId fieldId;
+
+		/** @CanBeNull if javaType is not a collection type */
+		private final Class<?> javaComponentType;
+
+		/** return type of getters, parameter type of setters */
+		private final Class<?> javaType;
+
+		private final KindOfMethod kind;
+
+		/**
+		 * Maps the Xydra value of a getter to Java. Null if
+		 * {@link OOJavaOnlyProxy#convertToJava(String, XValue, Class, Class, XWritableModel, XWritableObject)}
+		 * has to decide, e.g. for proxy and enum types.
+		 */
+		private final SharedTypeMapping getterMapping;
+
+		private final boolean returnCollectionsAsLiveViews;
+
+		/**
+		 * Runtime class of the last setter parameter and its mapping, the
+		 * mapping depends on the runtime class
+		 */
+		private volatile SetterMapping setterMapping;
+
+		private MethodHandler(final KindOfMethod kind, final String fieldName,
+				final Class<?> javaType, final Class<?> javaComponentType,
+				final boolean returnCollectionsAsLiveViews) {
+			this.kind = kind;
+			this.fieldName = fieldName;
+			this.fieldId = Base.toId(fieldName);
+			this.javaType = javaType;
+			this.javaComponentType = javaComponentType;
+			this.returnCollectionsAsLiveViews = returnCollectionsAsLiveViews;
+			this.defaultValue = defaultValue(javaType);
+			this.getterMapping = kind == KindOfMethod.Set ? null : getterMapping(javaType,
+					javaComponentType);
+		}
 
-		/* Determine method */
-		final String name = method.getName();
-		if (name.equals("getId") && args == null) {
-			return this.oop.getId();
+		private XValue toXydra(final Object param) {
+			if (param instanceof IHasXId) {
+				return ((IHasXId) param).getId();
+			}
+			final Class<?> paramClass = param.getClass();
+			SetterMapping cached = this.setterMapping;
+			if (cached == null || cached.type != paramClass) {
+				cached = new SetterMapping(paramClass,
+						OOReflectionUtils.getMappingOrInterfaceMapping(paramClass,
+								this.javaComponentType));
+				this.setterMapping = cached;
+			}
+			if (cached.mapping != null) {
+				return cached.mapping.toXydra(param);
+			}
+			return OOReflectionUtils.convertToXydra(paramClass, this.javaComponentType, param);
+		}
+	}
+
+	private static final class SetterMapping {
+
+		private final SharedTypeMapping mapping;
+
+		private final Class<?> type;
+
+		private SetterMapping(final Class<?> type, final SharedTypeMapping mapping) {
+			this.type = type;
+			this.mapping = mapping;
+		}
+	}
+
+	/** Methods of all proxied interfaces seen so far */
+	private static final ConcurrentMap<Method, MethodHandler> handlers = new ConcurrentHashMap<Method, MethodHandler>();
+
+	private static Object defaultValue(final Class<?> javaType) {
+		if (javaType.equals(byte.class)) {
+			return (byte) 0;
+		}
+		if (javaType.equals(int.class)) {
+			return 0;
 		}
+		if (javaType.equals(double.class)) {
+			return 0d;
+		}
+		if (javaType.equals(long.class)) {
+			return 0l;
+		}
+		if (javaType.equals(boolean.class)) {
+			return false;
+		}
+		return null;
+	}
 
+	/**
+	 * @param type
+	 * @param componentType
+	 * @return the mapping
+	 *         {@link #convertToJava(String, XValue, Class, Class, XWritableModel, XWritableObject)}
+	 *         would use, or null if it handles the type in another way
+	 */
+	private static SharedTypeMapping getterMapping(final Class<?> type,
+			final Class<?> componentType) {
+		if (OOReflectionUtils.isProxyType(type)) {
+			return null;
+		}
+		if (XydraReflectionUtils.isCollectionType(type)
+				&& OOReflectionUtils.isProxyType(componentType)) {
+			return null;
+		}
+		if (type.isEnum() && componentType == null) {
+			return null;
+		}
+		return JavaTypeSpecUtils.getMapping(type, componentType);
+	}
+
+	/**
+	 * @param method
+	 * @return the handler of the method, created on first use
+	 */
+	private static MethodHandler getHandler(final Method method) {
+		MethodHandler handler = handlers.get(method);
+		if (handler == null) {
+			handler = createHandler(method);
+			final MethodHandler existing = handlers.putIfAbsent(method, handler);
+			if (existing != null) {
+				handler = existing;
+			}
+		}
+		return handler;
+	}
+
+	private static MethodHandler createHandler(final Method method) {
 		final KindOfMethod kindOfMethod = OOReflectionUtils.extractKindOfMethod(method);
 		if (kindOfMethod == null) {
 			throw new RuntimeException("Cannot handle method "
 					+ JavaReflectionUtils.toDebug(method));
 		}
 
-		if (!this.oop.hasXObject()) {
-			throw new RuntimeException("Object '" + this.oop.getId() + "' does not exist in XModel");
-		}
-
 		/* Determine fieldId */
 		final String fieldId = OOReflectionUtils.extractFieldIdFromMethod(method);
 		assert fieldId != null;
 
 		/* ================================ GET ================================ */
 		if (kindOfMethod == KindOfMethod.Get) {
-			if (args != null) {
-				throw new RuntimeException("getter " + JavaReflectionUtils.toDebug(method)
-						+ " does not take arguments, has " + args.length);
-			}
 			final Class<?> returnType = method.getReturnType();
 			if (OOReflectionUtils.isTranslatableSingleType(returnType)) {
-				return _get_(returnType, null, fieldId, false);
+				return new MethodHandler(kindOfMethod, fieldId, returnType, null, false);
 			}
 			final Class<?> componentType = JavaReflectionUtils.getComponentType(method);
 			if (OOReflectionUtils.isKnownTranslatableCollectionType(returnType, componentType)) {
-				return _get_(returnType, componentType, fieldId, false);
+				return new MethodHandler(kindOfMethod, fieldId, returnType, componentType, false);
 			}
 			throw new RuntimeException("Cannot handle type " + returnType.getCanonicalName()
 					+ " in setter for " + fieldId);
 		} else
 		/* ================================ IS ================================ */
 		if (kindOfMethod == KindOfMethod.Is) {
-			if (args != null) {
-				throw new RuntimeException("isXXX() method does not take arguments");
-			}
 			assert method.getReturnType().equals(Boolean.class);
 			// TODO deal with old style booleans (missing field = false)
-			final Boolean b = (Boolean) _get_(Boolean.class, null, fieldId, false);
-			return b;
+			return new MethodHandler(kindOfMethod, fieldId, Boolean.class, null, false);
 		} else
 		/* ============================== GET COLLECTION ======================= */
 		if (kindOfMethod == KindOfMethod.GetCollection) {
 			final Class<?> returnType = method.getReturnType();
 			assert XydraReflectionUtils.isCollectionType(returnType);
 			final Class<?> componentType = JavaReflectionUtils.getComponentType(method);
-			return _get_(returnType, componentType, fieldId, true);
+			return new MethodHandler(kindOfMethod, fieldId, returnType, componentType, true);
 		} else
 		/* ================================ SET ================================ */
 		if (kindOfMethod == KindOfMethod.Set) {
-			if (args == null || args.length != 1) {
-				throw new RuntimeException("setXXX() method needs *1* argument, has "
-						+ (args == null ? "none" : args.length));
-			}
 			final Class<?> paramType = method.getParameterTypes()[0];
 			if (OOReflectionUtils.isTranslatableSingleType(paramType)) {
-				_set_(args[0], paramType, null, fieldId);
-				return proxy;
+				return new MethodHandler(kindOfMethod, fieldId, paramType, null, false);
 			}
 			final Class<?> componentType = JavaReflectionUtils.getComponentType(method
 					.getGenericParameterTypes()[0]);
 			if (OOReflectionUtils.isKnownTranslatableCollectionType(paramType, componentType)) {
-				_set_(args[0], paramType, componentType, fieldId);
-				return proxy;
+				return new MethodHandler(kindOfMethod, fieldId, paramType, componentType, false);
 			}
 			throw new RuntimeException("Setter for type '" + paramType.getCanonicalName()
 					+ "' not yet impl");
 		} else
 		/* ============================== Unknown ============================== */
 		{
-			throw new RuntimeException("Don't know how to handle method '" + name + "' with kind '"
-					+ kindOfMethod + "'");
+			throw new RuntimeException("Don't know how to handle method '" + method.getName()
+					+ "' with kind '" + kindOfMethod + "'");
 		}
 	}
 
-	/**
-	 * @param javaType
-	 * @param javaComponentType
-	 *            @CanBeNull is only set if javaType is a collection type
-	 * @param fieldName
-	 * @return
-	 */
-	private Object _get_(final Class<?> javaType, final Class<?> javaComponentType, final String fieldName,
-			final boolean returnCollectionsAsLiveViews) {
-		final XValue v = this.oop.getValue(fieldName);
+	private Object invokeIntern(final Object proxy, final Method method, final Object[] args) {
+		assert args == null && method.getParameterTypes().length == 0
+				|| args != null && method.getParameterTypes().length == args.length : args == null ? "args null"
+				: "args.len=" + args.length;
+
+		/* Determine method */
+		if (args == null && method.getName().equals("getId")) {
+			return this.oop.getId();
+		}
+
+		final MethodHandler handler = getHandler(method);
+
+		if (!this.oop.hasXObject()) {
+			throw new RuntimeException("Object '" + this.oop.getId() + "' does not exist in XModel");
+		}
+
+		switch (handler.kind) {
+		case Get:
+			if (args != null) {
+				throw new RuntimeException("getter " + JavaReflectionUtils.toDebug(method)
+						+ " does not take arguments, has " + args.length);
+			}
+			return _get_(handler);
+		case Is:
+			if (args != null) {
+				throw new RuntimeException("isXXX() method does not take arguments");
+			}
+			return _get_(handler);
+		case GetCollection:
+			return _get_(handler);
+		case Set:
+			if (args == null || args.length != 1) {
+				throw new RuntimeException("setXXX() method needs *1* argument, has "
+						+ (args == null ? "none" : args.length));
+			}
+			this.oop.setValue(handler.fieldId, handler.toXydra(args[0]));
+			return proxy;
+		default:
+			throw new RuntimeException("Don't know how to handle method '" + method.getName()
+					+ "' with kind '" + handler.kind + "'");
+		}
+	}
+
+	private Object _get_(final MethodHandler handler) {
+		final XValue v = this.oop.getValue(handler.fieldId);
 		if (v == null) {
-			if (returnCollectionsAsLiveViews && XydraReflectionUtils.isCollectionType(javaType)) {
-				return liveCollection(javaType, javaComponentType, fieldName, this.oop.getXModel(),
-						this.oop.getXObject());
+			if (handler.returnCollectionsAsLiveViews
+					&& XydraReflectionUtils.isCollectionType(handler.javaType)) {
+				return liveCollection(handler.javaType, handler.javaComponentType,
+						handler.fieldName, this.oop.getXModel(), this.oop.getXObject());
 			} else {
 				// handle primitive return values
-				if (javaType.equals(byte.class)) {
-					return 0;
-				}
-				if (javaType.equals(int.class)) {
-					return 0;
-				}
-				if (javaType.equals(double.class)) {
-					return 0d;
-				}
-				if (javaType.equals(long.class)) {
-					return 0l;
-				}
-				if (javaType.equals(boolean.class)) {
-					return false;
-				}
-
-				return null;
+				return handler.defaultValue;
 			}
 		}
 
-		final Object j = convertToJava(fieldName, v, javaType, javaComponentType, this.oop.getXModel(),
-				this.oop.getXObject());
-		return j;
-	}
-
-	/**
-	 * @param param
-	 * @param paramComponentType
-	 * @param xydraType
-	 * @param fieldId
-	 */
-	private void _set_(final Object param, final Class<?> paramType, final Class<?> paramComponentType,
-			final String fieldName) {
-		final XValue v = OOReflectionUtils.convertToXydra(param.getClass(), paramComponentType, param);
-
-		this.oop.setValue(fieldName, v);
+		if (handler.getterMapping != null) {
+			return handler.getterMapping.toJava(v);
+		}
+		return convertToJava(handler.fieldName, v, handler.javaType, handler.javaComponentType,
+				this.oop.getXModel(), this.oop.getXObject());
 	}
 
 	/**
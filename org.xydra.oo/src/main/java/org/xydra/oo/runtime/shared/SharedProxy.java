@@ -46,17 +46,20 @@ public class SharedProxy {
 	}
 
 	public XValue getValue(final String fieldId) {
-		if (fieldId == null) {
-			throw new IllegalArgumentException("field id was null");
-		}
-		if (fieldId.length() == 0) {
-			throw new IllegalArgumentException("field id empty string");
-		}
+		return getValue(toFieldId(fieldId));
+	}
 
-		if (!hasXObject()) {
+	/**
+	 * @param fieldId
+	 * @return the value of the field or null if the object, the field or its
+	 *         value does not exist
+	 */
+	public XValue getValue(final XId fieldId) {
+		final XWritableObject object = getXObject();
+		if (object == null) {
 			return null;
 		}
-		final XWritableField field = getXObject().getField(Base.toId(fieldId));
+		final XWritableField field = object.getField(fieldId);
 		if (field == null) {
 			return null;
 		}
@@ -64,25 +67,41 @@ public class SharedProxy {
 	}
 
 	public <X extends XValue> void setValue(final String fieldId, final X v) {
-		if (fieldId == null) {
-			throw new IllegalArgumentException("field id was null");
-		}
-		if (fieldId.length() == 0) {
-			throw new IllegalArgumentException("field id empty string");
-		}
+		setValue(toFieldId(fieldId), v);
+	}
 
-		if (!hasXObject()) {
+	/**
+	 * Sets the value of the field, creating the field if necessary.
+	 *
+	 * @param fieldId
+	 * @param v
+	 * @throws IllegalStateException
+	 *             if the object does not exist
+	 */
+	public <X extends XValue> void setValue(final XId fieldId, final X v) {
+		final XWritableObject object = getXObject();
+		if (object == null) {
 			throw new IllegalStateException("XObject '" + this.objectId + "' does not exist");
 		}
 
-		XWritableField field = getXObject().getField(Base.toId(fieldId));
+		XWritableField field = object.getField(fieldId);
 		if (field == null) {
-			field = getXObject().createField(Base.toId(fieldId));
+			field = object.createField(fieldId);
 		}
 
 		field.setValue(v);
 	}
 
+	private static XId toFieldId(final String fieldId) {
+		if (fieldId == null) {
+			throw new IllegalArgumentException("field id was null");
+		}
+		if (fieldId.length() == 0) {
+			throw new IllegalArgumentException("field id empty string");
+		}
+		return Base.toId(fieldId);
+	}
+
 	public XWritableModel getXModel() {
 		return this.model;
 	}
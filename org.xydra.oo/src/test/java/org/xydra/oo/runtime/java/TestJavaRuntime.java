@@ -165,6 +165,28 @@ public class TestJavaRuntime {
 		return s;
 	}
 
+	@Test
+	public void proxiesOfSameTypeAreIndependent() {
+		final XWritableModel model = new MemoryModel(Base.toId("actor"), "pass",
+				Base.toAddress("/repo1/model1"));
+		final JavaFactory factory = new JavaFactory(model);
+		final IPerson p1 = factory.createPerson("p1");
+		final IPerson p2 = factory.createPerson("p2");
+
+		p1.setAge(3).setName("Anna");
+		assertEquals(3, p1.getAge());
+		assertEquals(0, p2.getAge());
+		assertNull(p2.getName());
+
+		// changes made without the proxy are seen by it
+		model.getObject(Base.toId("p2")).createField(Base.toId("name"))
+				.setValue(XV.toValue("Bob"));
+		assertEquals("Bob", p2.getName());
+		assertEquals("Anna", p1.getName());
+		assertEquals(XV.toValue(3), model.getObject(Base.toId("p1")).getField(Base.toId("age"))
+				.getValue());
+	}
+
 	@Test
 	public void useTasksRuntime() {
 		// setup
@@ -1,17 +1,20 @@
 package org.xydra.restless;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.xydra.annotations.NeverNull;
 import org.xydra.annotations.ThreadSafe;
 
 /**
- * Internal class to represent a URL path that gets mapped to a set of variables
- * via regular expressions. Syntax inspired from JRS-311.
+ * Internal class to represent a URL path that gets mapped to a set of variables.
+ * Syntax inspired from JRS-311.
+ *
+ * Paths are matched segment by segment, without regular expressions: literal
+ * segments must be equal, variable segments match any non-empty segment. A
+ * single trailing '/' is ignored, in the template as well as in the path.
  *
  * Examples for valid patterns
  * <ul>
@@ -49,11 +52,12 @@ public class PathTemplate {
 	/** Matches '/' or empty string */
 	static final String END_REGEX = "/?";
 
-	/*
-	 * patterns are thread-safe. Matchers are not thread-safe, but
-	 * p.matcher(...) always creates new matchers, so there's no problem here.
+	/**
+	 * Literal segments as-is, null for variables. Never written after
+	 * construction.
 	 */
-	private transient Pattern p;
+	@NeverNull
+	private final String[] segments;
 
 	/*
 	 * since this variable is only read in this class, access to it is also
@@ -92,7 +96,9 @@ public class PathTemplate {
 		final String[] segments = pathExpression.substring(1).split("/");
 		/* '/way/{id}/step' => '/way/[^/]+/step' */
 		final StringBuffer regexBuf = new StringBuffer();
-		for (final String segment : segments) {
+		this.segments = new String[segments.length];
+		for (int i = 0; i < segments.length; i++) {
+			final String segment = segments[i];
 			regexBuf.append(PATH_REGEX);
 			if (segment.startsWith("{")) {
 				if (!segment.endsWith("}")) {
@@ -109,13 +115,39 @@ public class PathTemplate {
 				regexBuf.append(VAR_REGEX);
 			} else {
 				// normal as-is segment
+				this.segments[i] = segment;
 				regexBuf.append(segment);
 			}
 		}
 		regexBuf.append(END_REGEX);
 		this.regex = regexBuf.toString();
+	}
 
-		this.p = Pattern.compile(this.regex);
+	/**
+	 * Splits a request path into its segments. The leading '/' and one
+	 * trailing '/' are ignored. Empty segments are kept, so '/a//b' has three
+	 * segments and '/' has one empty segment.
+	 *
+	 * @param path @CanBeNull
+	 * @return the segments or null if path does not start with '/'
+	 */
+	static String[] splitPath(final String path) {
+		if (path == null || !path.startsWith("/")) {
+			return null;
+		}
+		int end = path.length();
+		if (end > 1 && path.charAt(end - 1) == '/') {
+			end--;
+		}
+		final List<String> segments = new ArrayList<String>();
+		int start = 1;
+		int slash;
+		while ((slash = path.indexOf('/', start)) >= 0 && slash < end) {
+			segments.add(path.substring(start, slash));
+			start = slash + 1;
+		}
+		segments.add(path.substring(start, end));
+		return segments.toArray(new String[segments.size()]);
 	}
 
 	/**
@@ -125,27 +157,40 @@ public class PathTemplate {
 	 * @return values of variables in order @NeverNull
 	 */
 	public List<String> extractVariables(@NeverNull final String path) {
-		final Matcher m = this.p.matcher(path);
-
-		if (m.groupCount() != this.variableNames.size()) {
-			throw new IllegalArgumentException("Path contains a different number of variables ("
-					+ m.groupCount() + ") than the template (" + this.variableNames.size() + ")");
-		}
-
-		if (!m.matches()) {
+		final String[] values = match(splitPath(path));
+		if (values == null) {
 			return Collections.emptyList();
 		}
+		return Arrays.asList(values);
+	}
 
-		final List<String> values = new ArrayList<String>();
-		for (int i = 1; i <= m.groupCount(); i++) {
-			final String value = m.group(i);
-			values.add(value);
+	/**
+	 * @param pathSegments as returned by {@link #splitPath(String)} @CanBeNull
+	 * @return the values of the variables in order or null if the path does
+	 *         not match
+	 */
+	String[] match(final String[] pathSegments) {
+		if (pathSegments == null || pathSegments.length != this.segments.length) {
+			return null;
+		}
+		final String[] values = new String[this.variableNames.size()];
+		int v = 0;
+		for (int i = 0; i < this.segments.length; i++) {
+			if (this.segments[i] == null) {
+				if (pathSegments[i].length() == 0) {
+					return null;
+				}
+				values[v++] = pathSegments[i];
+			} else if (!this.segments[i].equals(pathSegments[i])) {
+				return null;
+			}
 		}
 		return values;
 	}
 
 	/**
-	 * @return the regular expression to match URLs to this
+	 * @return a regular expression that matches the same URLs as this, if the
+	 *         literal segments contain no special characters
 	 */
 	public String getRegex() {
 		return this.regex;
@@ -165,14 +210,20 @@ public class PathTemplate {
 		return this.variableNames;
 	}
 
+	/**
+	 * @return a copy of the segments, with null for variable segments
+	 */
+	String[] getSegments() {
+		return this.segments.clone();
+	}
+
 	/**
 	 * @param path
 	 *            starting with slash '/' @NeverNull
 	 * @return true if this PathTemplate matches a given path
 	 */
 	public boolean matches(@NeverNull final String path) {
-
-		return this.p.matcher(path).matches();
+		return match(splitPath(path)) != null;
 	}
 
 	@Override
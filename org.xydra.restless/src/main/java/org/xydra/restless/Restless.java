@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.io.Writer;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -190,8 +191,14 @@ public class Restless extends HttpServlet {
 
 	private String loggerFactory;
 
-	/** All publicly exposed methods */
-	private final List<RestlessMethod> methods = new LinkedList<RestlessMethod>();
+	/**
+	 * All publicly exposed methods. Replaced by a new version on each change,
+	 * so that requests can be dispatched without locking.
+	 */
+	private volatile RouteTrie<RestlessMethod> methods = new RouteTrie<RestlessMethod>();
+
+	/** Guards changes of {@link #methods} */
+	private final Object methodsLock = new Object();
 
 	private final Set<IRequestListener> requestListeners = new HashSet<IRequestListener>();
 
@@ -273,10 +280,10 @@ public class Restless extends HttpServlet {
 			@NeverNull final RestlessParameter... parameter) {
 		final PathTemplate pt = new PathTemplate(pathTemplate);
 
-		synchronized (this.methods) {
+		synchronized (this.methodsLock) {
 			final RestlessMethod restlessMethod = new RestlessMethod(instanceOrClass, httpMethod,
 					javaMethodName, pt, adminOnly, parameter);
-			this.methods.add(restlessMethod);
+			this.methods = this.methods.with(pt, httpMethod, adminOnly, restlessMethod);
 			log.debug("Add method " + restlessMethod);
 		}
 		assert RestlessStatic.methodByName(instanceOrClass, javaMethodName) != null : "method '"
@@ -303,12 +310,12 @@ public class Restless extends HttpServlet {
 			@NeverNull final RestlessParameter... parameter) {
 		final PathTemplate pt = new PathTemplate(pathTemplate);
 
-		synchronized (this.methods) {
+		synchronized (this.methodsLock) {
 			// TODO verify all parameters are URL parameters (inspect
 			// pathTemplate)
 			final RestlessMethod restlessMethod = new RestlessMethod(instanceOrClass, "POST",
 					javaMethodName, pt, adminOnly, parameter);
-			this.methods.add(restlessMethod);
+			this.methods = this.methods.with(pt, "POST", adminOnly, restlessMethod);
 			log.debug("Add post/multipart method " + restlessMethod);
 		}
 		assert RestlessStatic.methodByName(instanceOrClass, javaMethodName) != null : "method '"
@@ -439,28 +446,26 @@ public class Restless extends HttpServlet {
 			w.write("<h3>Restless configuration</h3>\n");
 			w.write("<ol>");
 
-			synchronized (this.methods) {
-				for (final RestlessMethod rm : this.methods) {
-					w.write("<li>");
-					final String url = servletPath + XmlUtils.xmlEncode(rm.getPathTemplate().getRegex());
-					w.write((rm.isAdminOnly() ? "ADMIN ONLY" : "PUBLIC")
-							+ " resource <b class='resource'>" + url + "</b>: "
-							+ rm.getHttpMethod() + " =&gt; ");
-					w.write(RestlessStatic.instanceOrClass_className(rm.getInstanceOrClass()) + "#"
-							+ rm.getMethodName());
-
-					/* list parameters */
-					w.write("<form action='" + url + "' method='"
-							+ rm.getHttpMethod().toLowerCase() + "'><div>");
-					for (final RestlessParameter parameter : rm.getRequiredNamedParameter()) {
-						w.write(parameter.getName() + " <input type='text' name='"
-								+ parameter.getName() + "' value='" + parameter.getDefaultValue()
-								+ "' />");
-					}
-					w.write("<input type='submit' value='Send' /></div></form>");
+			for (final RestlessMethod rm : this.methods.getHandlers()) {
+				w.write("<li>");
+				final String url = servletPath + XmlUtils.xmlEncode(rm.getPathTemplate().getRegex());
+				w.write((rm.isAdminOnly() ? "ADMIN ONLY" : "PUBLIC")
+						+ " resource <b class='resource'>" + url + "</b>: "
+						+ rm.getHttpMethod() + " =&gt; ");
+				w.write(RestlessStatic.instanceOrClass_className(rm.getInstanceOrClass()) + "#"
+						+ rm.getMethodName());
 
-					w.write("</li>\n");
+				/* list parameters */
+				w.write("<form action='" + url + "' method='"
+						+ rm.getHttpMethod().toLowerCase() + "'><div>");
+				for (final RestlessParameter parameter : rm.getRequiredNamedParameter()) {
+					w.write(parameter.getName() + " <input type='text' name='"
+							+ parameter.getName() + "' value='" + parameter.getDefaultValue()
+							+ "' />");
 				}
+				w.write("<input type='submit' value='Send' /></div></form>");
+
+				w.write("</li>\n");
 			}
 			w.write("</ol>");
 			HtmlUtils.endHtmlPage(w);
@@ -470,24 +475,22 @@ public class Restless extends HttpServlet {
 	}
 
 	public String toConfigDebug() {
-		synchronized (this.methods) {
-			final StringBuilder b = new StringBuilder();
-			for (final RestlessMethod rm : this.methods) {
-				final String url = XmlUtils.xmlEncode(rm.getPathTemplate().getRegex());
-				b.append((rm.isAdminOnly() ? "ADMIN ONLY" : "PUBLIC") + " [" + url + "] "
-						+ rm.getHttpMethod() + " => ");
-				b.append(RestlessStatic.instanceOrClass_className(rm.getInstanceOrClass()) + "#"
-						+ rm.getMethodName() + "\n");
-
-				/* list parameters */
-				b.append("  ");
-				for (final RestlessParameter parameter : rm.getRequiredNamedParameter()) {
-					b.append(parameter.getName() + "='" + parameter.getDefaultValue() + "' ");
-				}
-				b.append("\n");
+		final StringBuilder b = new StringBuilder();
+		for (final RestlessMethod rm : this.methods.getHandlers()) {
+			final String url = XmlUtils.xmlEncode(rm.getPathTemplate().getRegex());
+			b.append((rm.isAdminOnly() ? "ADMIN ONLY" : "PUBLIC") + " [" + url + "] "
+					+ rm.getHttpMethod() + " => ");
+			b.append(RestlessStatic.instanceOrClass_className(rm.getInstanceOrClass()) + "#"
+					+ rm.getMethodName() + "\n");
+
+			/* list parameters */
+			b.append("  ");
+			for (final RestlessParameter parameter : rm.getRequiredNamedParameter()) {
+				b.append(parameter.getName() + "='" + parameter.getDefaultValue() + "' ");
 			}
-			return b.toString();
+			b.append("\n");
 		}
+		return b.toString();
 	}
 
 	/**
@@ -681,7 +684,7 @@ public class Restless extends HttpServlet {
 		clock.stop("add-built-in-services");
 
 		if (log.isDebugEnabled()) {
-			for (final RestlessMethod rm : this.methods) {
+			for (final RestlessMethod rm : this.methods.getHandlers()) {
 				log.debug("Mapping " + rm.getHttpMethod() + " " + rm.getPathTemplate().getRegex()
 						+ " --> "
 						+ RestlessStatic.instanceOrClass_className(rm.getInstanceOrClass()) + "#"
@@ -898,46 +901,35 @@ public class Restless extends HttpServlet {
 		final boolean reqViaAdminUrl = RestlessStatic.requestIsViaAdminUrl(reqHandedDown);
 
 		/*
-		 * Searching and executing the correct method is split up in two
-		 * different synchronized blocks so that the list of methods is only
-		 * blocked during the search-process.
-		 *
-		 * Find the correct method, get the necessary parameters...
+		 * Find the correct method in the current version of the routes, which
+		 * is never changed, so no lock is needed, and get the necessary
+		 * parameters. Several methods can match a path, they are tried in the
+		 * order in which they were added.
 		 */
 		RestlessMethodExecutionParameters params = null;
 		RestlessMethod restlessMethod = null;
-		synchronized (this.methods) {
-			for (final RestlessMethod m : this.methods) {
+		final List<RouteTrie.Match<RestlessMethod>> matches = new ArrayList<RouteTrie.Match<RestlessMethod>>(
+				2);
+		/*
+		 * if secure access, ignore all public methods. if insecure access,
+		 * ignore all secure methods
+		 */
+		foundPath = this.methods.find(path, httpMethod, reqViaAdminUrl, matches);
+		for (final RouteTrie.Match<RestlessMethod> match : matches) {
+			final RestlessMethod m = match.getHandler();
+			try {
+				params = m.prepareMethodExecution(this, reqHandedDown, res, requestClock,
+						match.getVariableValues());
+			} catch (final IOException e) {
+				throw new RuntimeException(e);
+			}
+			if (params != null) {
 				/*
-				 * if secure access, ignore all public methods. if insecure
-				 * access, ignore all secure methods: Skip all restlessMethods
-				 * that may not be accessed
+				 * non-null params imply that the correct method was found.
 				 */
-				if (reqViaAdminUrl == m.isAdminOnly()) {
-					// if path matches
-					if (m.getPathTemplate().matches(path)) {
-						foundPath = true;
-						// and HTTP method matches
-						if (httpMethod.equalsIgnoreCase(m.getHttpMethod())) {
-							try {
-								params = m.prepareMethodExecution(this, reqHandedDown, res,
-										requestClock);
-
-							} catch (final IOException e) {
-								throw new RuntimeException(e);
-							}
-							if (params != null) {
-								/*
-								 * non-null params imply that the correct method
-								 * was found.
-								 */
-								restlessMethod = m;
-								foundMethod = true;
-								break;
-							}
-						}
-					}
-				}
+				restlessMethod = m;
+				foundMethod = true;
+				break;
 			}
 		}
 
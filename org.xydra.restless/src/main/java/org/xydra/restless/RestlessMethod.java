@@ -3,6 +3,9 @@ package org.xydra.restless;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -90,6 +93,22 @@ class RestlessMethod {
 	 * variable -> no synchronization necessary at the moment */
 	private final PathTemplate pathTemplate;
 
+	/** the Java method, resolved once; null if there is none */
+	@CanBeNull
+	private final Method method;
+
+	/**
+	 * Calls {@link #method} as (Object receiver, Object[] args) -> Object,
+	 * receiver is ignored for static methods; null if the method cannot be
+	 * accessed this way, then it is called via reflection
+	 */
+	@CanBeNull
+	private final MethodHandle invoker;
+
+	/** parameter types of {@link #method}; null if there is no invoker */
+	@CanBeNull
+	private final Class<?>[] invokerParameterTypes;
+
 	/**
 	 * @param object instance to be called when web method is used - or class to be instantiated @NeverNull
 	 * @param httpMethod 'GET', 'PUT', 'POST', or' DELETE' @NeverNull
@@ -117,6 +136,29 @@ class RestlessMethod {
 		this.pathTemplate = pathTemplate;
 		this.adminOnly = adminOnly;
 		this.requiredNamedParameters = parameter;
+		this.method = RestlessStatic.methodByName(object, methodName);
+		this.invoker = this.method == null ? null : bindInvoker(this.method);
+		this.invokerParameterTypes = this.invoker == null ? null : this.method.getParameterTypes();
+	}
+
+	/**
+	 * @param method @NeverNull
+	 * @return a handle of type (Object, Object[])Object or null if the method
+	 *         is not accessible
+	 */
+	private static MethodHandle bindInvoker(@NeverNull final Method method) {
+		MethodHandle handle;
+		try {
+			handle = MethodHandles.lookup().unreflect(method);
+		} catch (final IllegalAccessException e) {
+			log.debug("Calling " + method + " via reflection", e);
+			return null;
+		}
+		if (Modifier.isStatic(method.getModifiers())) {
+			handle = MethodHandles.dropArguments(handle, 0, Object.class);
+		}
+		handle = handle.asSpreader(Object[].class, method.getParameterTypes().length);
+		return handle.asType(MethodType.methodType(Object.class, Object.class, Object[].class));
 	}
 
 	/**
@@ -127,29 +169,24 @@ class RestlessMethod {
 	 * @param req
 	 * @param res
 	 * @param requestClock
+	 * @param pathVariableValues values of the variables of the {@link PathTemplate}, as matched by the
+	 *        {@link RouteTrie} @NeverNull
 	 * @return the necessary parameters for executing this method or null if this method doesn't fit the given
 	 *         parameters.
 	 * @throws IOException
 	 */
 	public RestlessMethodExecutionParameters prepareMethodExecution(@NeverNull final Restless restless,
 			@NeverNull final HttpServletRequest req, @NeverNull final HttpServletResponse res,
-			@NeverNull final NanoClock requestClock) throws IOException {
+			@NeverNull final NanoClock requestClock, @NeverNull final String[] pathVariableValues)
+			throws IOException {
 
 		requestClock.stopAndStart("servlet->restless.run");
 
 		// set standard headers
 		res.setHeader(Restless.X_FRAME_OPTIONS_HEADERNAME, Restless.X_FRAME_OPTIONS_DEFAULT);
 
-		Method method;
-
-		synchronized (this.instanceOrClass) {
-			method = RestlessStatic.methodByName(this.instanceOrClass, this.methodName);
-		}
-
-		/* TODO is this okay? instanceOrClass might change after the method was returned, which might result in slightly
-		 * inconsistent behavior...
-		 *
-		 * Would only be a problem if methods can be removed or their behavior could be changed... is this possible? */
+		/* resolved once in the constructor, classes cannot change their methods */
+		final Method method = this.method;
 
 		if (method == null) {
 			/* TODO synchronization necessary here? Can the name change? */
@@ -162,8 +199,11 @@ class RestlessMethod {
 
 			/** build up parameters */
 			// extract values from path
-			/* PathTemplate is thread-safe, so no synchronization is necessary here */
-			final Map<String, String> urlPathParameterMap = RestlessUtils.getUrlParametersAsMap(req, this.pathTemplate);
+			final Map<String, String> urlPathParameterMap = new HashMap<String, String>();
+			final List<String> variableNames = this.pathTemplate.getVariableNames();
+			for (int i = 0; i < variableNames.size(); i++) {
+				urlPathParameterMap.put(variableNames.get(i), pathVariableValues[i]);
+			}
 
 			// extract Cookie values
 			final Map<String, String> cookieMap = ServletUtils.getCookiesAsMap(req);
@@ -455,7 +495,7 @@ class RestlessMethod {
 			// onBefore-run-event
 			restless.fireRequestStarted(restlessContext);
 			// run
-			final Object result = invokeMethod(method, this.instanceOrClass, javaMethodArgs);
+			final Object result = invoke(method, javaMethodArgs);
 			requestClock.stopAndStart("invoke " + methodReference(this.instanceOrClass, method));
 
 			// stream
@@ -706,6 +746,79 @@ class RestlessMethod {
 		return clazz.getSimpleName() + "." + method.getName() + "(..)";
 	}
 
+	/**
+	 * Calls the Java method of this RestlessMethod via its bound invoker, or via reflection if it has none or if the
+	 * arguments do not fit the invoker exactly (e.g. null for a primitive parameter or a value that needs a widening
+	 * conversion). So arguments that do not fit the method cause an {@link IllegalArgumentException} as before.
+	 *
+	 * @param method @NeverNull
+	 * @param javaMethodArgs @NeverNull
+	 * @return the result of the Java method
+	 * @throws InvocationTargetException wrapping any exception thrown by the Java method, errors are not wrapped
+	 * @throws IllegalAccessException
+	 */
+	private Object invoke(@NeverNull final Method method, @NeverNull final List<Object> javaMethodArgs)
+			throws IllegalAccessException, InvocationTargetException {
+		final MethodHandle invoker = this.invoker;
+		if (invoker == null || method != this.method) {
+			return invokeMethod(method, this.instanceOrClass, javaMethodArgs);
+		}
+		final Object[] args = javaMethodArgs.toArray(new Object[javaMethodArgs.size()]);
+		if (!fitsInvoker(this.invokerParameterTypes, args)) {
+			return invokeMethod(method, this.instanceOrClass, javaMethodArgs);
+		}
+		if (Modifier.isStatic(method.getModifiers())) {
+			return invokeExact(invoker, null, args);
+		}
+		final Object instance = toInstance(this.instanceOrClass);
+		/* synchronization on the instance is necessary here, since the instances might be shared through the
+		 * instanceCache */
+		synchronized (instance) {
+			return invokeExact(invoker, instance, args);
+		}
+	}
+
+	/**
+	 * @param parameterTypes @NeverNull
+	 * @param args @NeverNull
+	 * @return true if the invoker can be called with args without any cast or unboxing failing
+	 */
+	private static boolean fitsInvoker(@NeverNull final Class<?>[] parameterTypes, @NeverNull final Object[] args) {
+		if (args.length != parameterTypes.length) {
+			return false;
+		}
+		for (int i = 0; i < args.length; i++) {
+			final Class<?> type = parameterTypes[i];
+			if (type.isPrimitive()) {
+				/* the invoker unboxes without widening */
+				if (args[i] == null || args[i].getClass() != MethodType.methodType(type).wrap().returnType()) {
+					return false;
+				}
+			} else if (args[i] != null && !type.isInstance(args[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param invoker @NeverNull
+	 * @param instance @CanBeNull for static methods
+	 * @param args that fit the invoker @NeverNull
+	 * @return the result of the Java method
+	 * @throws InvocationTargetException wrapping any exception thrown by the Java method
+	 */
+	private static Object invokeExact(@NeverNull final MethodHandle invoker, @CanBeNull final Object instance,
+			@NeverNull final Object[] args) throws InvocationTargetException {
+		try {
+			return (Object) invoker.invokeExact(instance, args);
+		} catch (final Error e) {
+			throw e;
+		} catch (final Throwable t) {
+			throw new InvocationTargetException(t);
+		}
+	}
+
 	private static Object invokeMethod(@NeverNull final Method method, @NeverNull final Object instanceOrClass,
 			@NeverNull final List<Object> javaMethodArgs)
 					throws IllegalArgumentException, IllegalAccessException, InvocationTargetException {
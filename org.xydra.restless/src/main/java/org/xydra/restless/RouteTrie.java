@@ -0,0 +1,247 @@
+package org.xydra.restless;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.xydra.annotations.CanBeNull;
+import org.xydra.annotations.NeverNull;
+import org.xydra.annotations.ThreadSafe;
+
+/**
+ * An immutable trie of routes, keyed by the literal segments of their
+ * {@link PathTemplate} and, at the end of a path, by HTTP method. Variable
+ * segments share one child per node.
+ *
+ * Adding a route returns a new trie that copies only the nodes on the path of
+ * the new route. Readers can therefore use a trie without any locking while
+ * routes are being added; writers publish a new version, e.g. via a volatile
+ * field.
+ *
+ * @author xamde
+ *
+ * @param <T> the handler type, e.g. {@link RestlessMethod}
+ */
+@ThreadSafe
+class RouteTrie<T> {
+
+	/**
+	 * A route that matches a request path
+	 *
+	 * @param <T>
+	 */
+	static class Match<T> {
+
+		private final int order;
+
+		private final T handler;
+
+		private final String[] variableValues;
+
+		Match(final int order, final T handler, final String[] variableValues) {
+			this.order = order;
+			this.handler = handler;
+			this.variableValues = variableValues;
+		}
+
+		public T getHandler() {
+			return this.handler;
+		}
+
+		/**
+		 * @return the values of the template variables in order of their
+		 *         declaration @NeverNull
+		 */
+		public String[] getVariableValues() {
+			return this.variableValues;
+		}
+
+	}
+
+	private static class Route<T> {
+
+		final int order;
+
+		final T handler;
+
+		final PathTemplate pathTemplate;
+
+		final boolean adminOnly;
+
+		Route(final int order, final T handler, final PathTemplate pathTemplate,
+				final boolean adminOnly) {
+			this.order = order;
+			this.handler = handler;
+			this.pathTemplate = pathTemplate;
+			this.adminOnly = adminOnly;
+		}
+
+	}
+
+	private static class Node<T> {
+
+		/** literal segment -> child; never changed after construction */
+		final Map<String, Node<T>> literals;
+
+		/** @CanBeNull */
+		final Node<T> variable;
+
+		/** routes ending here, by upper case HTTP method, in order */
+		final Map<String, List<Route<T>>> routes;
+
+		Node(final Map<String, Node<T>> literals, final Node<T> variable,
+				final Map<String, List<Route<T>>> routes) {
+			this.literals = literals;
+			this.variable = variable;
+			this.routes = routes;
+		}
+
+		Node() {
+			this(Collections.<String, Node<T>> emptyMap(), null, Collections
+					.<String, List<Route<T>>> emptyMap());
+		}
+
+		/**
+		 * @return a copy of this node with route added below it
+		 */
+		Node<T> with(final String[] segments, final int depth, final String httpMethod,
+				final Route<T> route) {
+			if (depth == segments.length) {
+				final Map<String, List<Route<T>>> routes = new HashMap<String, List<Route<T>>>(
+						this.routes);
+				final List<Route<T>> list = new ArrayList<Route<T>>();
+				final List<Route<T>> old = routes.get(httpMethod);
+				if (old != null) {
+					list.addAll(old);
+				}
+				list.add(route);
+				routes.put(httpMethod, Collections.unmodifiableList(list));
+				return new Node<T>(this.literals, this.variable, routes);
+			}
+			final String segment = segments[depth];
+			if (segment == null) {
+				final Node<T> child = this.variable == null ? new Node<T>() : this.variable;
+				return new Node<T>(this.literals, child.with(segments, depth + 1, httpMethod,
+						route), this.routes);
+			}
+			final Map<String, Node<T>> literals = new HashMap<String, Node<T>>(this.literals);
+			Node<T> child = literals.get(segment);
+			if (child == null) {
+				child = new Node<T>();
+			}
+			literals.put(segment, child.with(segments, depth + 1, httpMethod, route));
+			return new Node<T>(literals, this.variable, this.routes);
+		}
+
+		/**
+		 * @return true if any route with the given adminOnly flag ends at a
+		 *         node that matches the path
+		 */
+		boolean find(final String[] segments, final int depth, final String httpMethod,
+				final boolean adminOnly, final List<Match<T>> result) {
+			if (depth == segments.length) {
+				boolean foundPath = false;
+				for (final List<Route<T>> list : this.routes.values()) {
+					for (final Route<T> route : list) {
+						foundPath |= route.adminOnly == adminOnly;
+					}
+				}
+				final List<Route<T>> list = this.routes.get(httpMethod);
+				if (list != null) {
+					for (final Route<T> route : list) {
+						if (route.adminOnly == adminOnly) {
+							result.add(new Match<T>(route.order, route.handler, route.pathTemplate
+									.match(segments)));
+						}
+					}
+				}
+				return foundPath;
+			}
+			boolean foundPath = false;
+			final Node<T> literal = this.literals.get(segments[depth]);
+			if (literal != null) {
+				foundPath |= literal.find(segments, depth + 1, httpMethod, adminOnly, result);
+			}
+			if (this.variable != null && segments[depth].length() > 0) {
+				foundPath |= this.variable.find(segments, depth + 1, httpMethod, adminOnly, result);
+			}
+			return foundPath;
+		}
+
+	}
+
+	private final Node<T> root;
+
+	/** all handlers in the order in which they were added */
+	private final List<T> handlers;
+
+	RouteTrie() {
+		this(new Node<T>(), Collections.<T> emptyList());
+	}
+
+	private RouteTrie(final Node<T> root, final List<T> handlers) {
+		this.root = root;
+		this.handlers = handlers;
+	}
+
+	/**
+	 * @param pathTemplate @NeverNull
+	 * @param httpMethod @NeverNull
+	 * @param adminOnly
+	 * @param handler @NeverNull
+	 * @return a new trie with the route added, this trie is not changed
+	 */
+	RouteTrie<T> with(@NeverNull final PathTemplate pathTemplate, @NeverNull final String httpMethod,
+			final boolean adminOnly, @NeverNull final T handler) {
+		final Route<T> route = new Route<T>(this.handlers.size(), handler, pathTemplate, adminOnly);
+		final Node<T> root = this.root.with(pathTemplate.getSegments(), 0,
+				httpMethod.toUpperCase(Locale.ENGLISH), route);
+		final List<T> handlers = new ArrayList<T>(this.handlers);
+		handlers.add(handler);
+		return new RouteTrie<T>(root, Collections.unmodifiableList(handlers));
+	}
+
+	/**
+	 * @return all handlers in the order in which they were added @NeverNull
+	 */
+	List<T> getHandlers() {
+		return this.handlers;
+	}
+
+	/**
+	 * Finds all routes that match the path, HTTP method and access mode, in
+	 * the order in which they were added.
+	 *
+	 * @param path @CanBeNull
+	 * @param httpMethod @NeverNull
+	 * @param adminOnly true for requests via the admin URL
+	 * @param result to which the matching routes are added @NeverNull
+	 * @return true if any route with the given access mode matches the path,
+	 *         regardless of the HTTP method
+	 */
+	boolean find(@CanBeNull final String path, @NeverNull final String httpMethod,
+			final boolean adminOnly, @NeverNull final List<Match<T>> result) {
+		final String[] segments = PathTemplate.splitPath(path);
+		if (segments == null) {
+			return false;
+		}
+		final int start = result.size();
+		final boolean foundPath = this.root.find(segments, 0,
+				httpMethod.toUpperCase(Locale.ENGLISH), adminOnly, result);
+		// a literal and a variable branch can both match, restore the order
+		for (int i = start + 1; i < result.size(); i++) {
+			final Match<T> m = result.get(i);
+			int j = i - 1;
+			while (j >= start && result.get(j).order > m.order) {
+				result.set(j + 1, result.get(j));
+				j--;
+			}
+			result.set(j + 1, m);
+		}
+		return foundPath;
+	}
+
+}
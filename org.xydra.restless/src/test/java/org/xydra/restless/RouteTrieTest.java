@@ -0,0 +1,90 @@
+package org.xydra.restless;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class RouteTrieTest {
+
+	private static RouteTrie<String> route(final RouteTrie<String> trie, final String httpMethod,
+			final String template, final boolean adminOnly) {
+		return trie.with(new PathTemplate(template), httpMethod, adminOnly, httpMethod + " "
+				+ template + (adminOnly ? " admin" : ""));
+	}
+
+	private static List<String> handlers(final List<RouteTrie.Match<String>> matches) {
+		final List<String> handlers = new ArrayList<String>();
+		for (final RouteTrie.Match<String> match : matches) {
+			handlers.add(match.getHandler());
+		}
+		return handlers;
+	}
+
+	@Test
+	public void testMatchesInOrderOfRegistration() {
+		RouteTrie<String> trie = new RouteTrie<String>();
+		trie = route(trie, "GET", "/users/{id}", false);
+		trie = route(trie, "GET", "/users/me", false);
+		trie = route(trie, "GET", "/{any}/me", false);
+
+		final List<RouteTrie.Match<String>> matches = new ArrayList<RouteTrie.Match<String>>();
+		assertTrue(trie.find("/users/me", "get", false, matches));
+		// the variable route was added first, so it comes before the literal one
+		final List<String> expected = new ArrayList<String>();
+		expected.add("GET /users/{id}");
+		expected.add("GET /users/me");
+		expected.add("GET /{any}/me");
+		assertEquals(expected, handlers(matches));
+		assertArrayEquals(new String[] { "me" }, matches.get(0).getVariableValues());
+		assertArrayEquals(new String[] {}, matches.get(1).getVariableValues());
+		assertArrayEquals(new String[] { "users" }, matches.get(2).getVariableValues());
+	}
+
+	@Test
+	public void testWrongMethodIsNotUnknownPath() {
+		RouteTrie<String> trie = new RouteTrie<String>();
+		trie = route(trie, "POST", "/users/{id}", false);
+		trie = route(trie, "GET", "/admin/stats", true);
+
+		final List<RouteTrie.Match<String>> matches = new ArrayList<RouteTrie.Match<String>>();
+		// known path, but no route for the method: 405
+		assertTrue(trie.find("/users/42/", "GET", false, matches));
+		assertTrue(matches.isEmpty());
+		// unknown path: 404
+		assertFalse(trie.find("/users", "POST", false, matches));
+		assertFalse(trie.find("/users/42/edit", "POST", false, matches));
+		// a variable does not match an empty segment
+		assertFalse(trie.find("/users//", "POST", false, matches));
+		assertTrue(matches.isEmpty());
+
+		// admin routes are only found via the admin URL and vice versa
+		assertFalse(trie.find("/admin/stats", "GET", false, matches));
+		assertFalse(trie.find("/users/42", "POST", true, matches));
+		assertTrue(matches.isEmpty());
+		assertTrue(trie.find("/admin/stats", "GET", true, matches));
+		assertEquals(1, matches.size());
+	}
+
+	@Test
+	public void testAddingDoesNotChangeOldVersions() {
+		final RouteTrie<String> empty = new RouteTrie<String>();
+		final RouteTrie<String> one = route(empty, "GET", "/a/{b}", false);
+		final RouteTrie<String> two = route(one, "PUT", "/a/{b}", false);
+
+		final List<RouteTrie.Match<String>> matches = new ArrayList<RouteTrie.Match<String>>();
+		assertFalse(empty.find("/a/x", "GET", false, matches));
+		assertTrue(one.find("/a/x", "PUT", false, matches));
+		assertTrue(matches.isEmpty());
+		assertTrue(two.find("/a/x", "PUT", false, matches));
+		assertEquals(1, matches.size());
+		assertEquals(1, one.getHandlers().size());
+		assertEquals(2, two.getHandlers().size());
+	}
+
+}
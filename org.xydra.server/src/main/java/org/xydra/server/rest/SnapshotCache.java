@@ -0,0 +1,100 @@
+package org.xydra.server.rest;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least-recently-used cache of serialised responses, limited by the total
+ * number of bytes. Keys must contain everything the bytes depend on, e.g. the
+ * revisions of the requested models and the content type, so entries never
+ * need to be invalidated.
+ *
+ * Thread-safe.
+ *
+ * @author xamde
+ */
+public class SnapshotCache {
+
+	private long bytes = 0;
+
+	private final long maxBytes;
+
+	private final LinkedHashMap<String, byte[]> map = new LinkedHashMap<String, byte[]>(16,
+			0.75f, true);
+
+	private long hits = 0;
+
+	private long misses = 0;
+
+	/**
+	 * @param maxBytes total size of all cached values. Single values larger
+	 *            than a quarter of this are not cached.
+	 */
+	public SnapshotCache(final long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	public synchronized void clear() {
+		this.map.clear();
+		this.bytes = 0;
+	}
+
+	/**
+	 * @param key
+	 * @return the cached bytes or null. Callers must not change the array.
+	 */
+	public synchronized byte[] get(final String key) {
+		final byte[] value = this.map.get(key);
+		if (value == null) {
+			this.misses++;
+		} else {
+			this.hits++;
+		}
+		return value;
+	}
+
+	/**
+	 * @return the total size of all cached values in bytes
+	 */
+	public synchronized long getBytes() {
+		return this.bytes;
+	}
+
+	public synchronized long getHits() {
+		return this.hits;
+	}
+
+	public synchronized long getMisses() {
+		return this.misses;
+	}
+
+	/**
+	 * Adds the value and evicts the least recently used entries until the
+	 * cache fits into its byte budget again.
+	 *
+	 * @param key
+	 * @param value must not be changed afterwards
+	 */
+	public synchronized void put(final String key, final byte[] value) {
+		if (value.length > this.maxBytes / 4) {
+			return;
+		}
+		final byte[] old = this.map.put(key, value);
+		if (old != null) {
+			this.bytes -= old.length;
+		}
+		this.bytes += value.length;
+		final Iterator<Map.Entry<String, byte[]>> it = this.map.entrySet().iterator();
+		while (this.bytes > this.maxBytes && it.hasNext()) {
+			final Map.Entry<String, byte[]> eldest = it.next();
+			this.bytes -= eldest.getValue().length;
+			it.remove();
+		}
+	}
+
+	public synchronized int size() {
+		return this.map.size();
+	}
+
+}
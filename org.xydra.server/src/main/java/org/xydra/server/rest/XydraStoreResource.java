@@ -1,6 +1,8 @@
 package org.xydra.server.rest;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Enumeration;
@@ -8,6 +10,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -28,9 +31,9 @@ import org.xydra.core.serialize.XydraElement;
 import org.xydra.core.serialize.XydraOut;
 import org.xydra.core.serialize.XydraParser;
 import org.xydra.core.serialize.json.JsonOut;
-import org.xydra.core.serialize.json.JsonParser;
+import org.xydra.core.serialize.json.JsonPullParser;
 import org.xydra.core.serialize.xml.XmlOut;
-import org.xydra.core.serialize.xml.XmlParser;
+import org.xydra.core.serialize.xml.XmlPullParser;
 import org.xydra.index.query.Pair;
 import org.xydra.log.api.Logger;
 import org.xydra.log.api.LoggerFactory;
@@ -46,6 +49,7 @@ import org.xydra.store.RequestException;
 import org.xydra.store.WaitingCallback;
 import org.xydra.store.XydraRuntime;
 import org.xydra.store.XydraStore;
+import org.xydra.store.access.HashUtils;
 import org.xydra.store.impl.rest.XydraStoreRestInterface;
 import org.xydra.store.serialize.SerializedStore;
 import org.xydra.store.serialize.SerializedStore.EventsRequest;
@@ -71,14 +75,22 @@ public class XydraStoreResource {
 
 	}
 
-	private final static XydraParser jsonParser = new JsonParser();
-	private final static XydraParser xmlParser = new XmlParser();
+	private final static XydraParser jsonParser = new JsonPullParser();
+	private final static XydraParser xmlParser = new XmlPullParser();
 	private final static Set<String> jsonMimes = new HashSet<String>();
 	private final static Set<String> xmlMimes = new HashSet<String>();
 	private final static Set<String> mimes = new HashSet<String>();
 
 	private static final Pattern callbackRegex = Pattern.compile("^[a-z0-9_]+$");
 
+	private static final long SNAPSHOT_CACHE_BYTES = 16 * 1024 * 1024;
+
+	/**
+	 * Serialised {@link #getSnapshots} responses, keyed by actor, addresses,
+	 * model revisions and output format, see {@link #getSnapshotsKey}
+	 */
+	private static final SnapshotCache snapshotCache = new SnapshotCache(SNAPSHOT_CACHE_BYTES);
+
 	public static void restless(final Restless restless, final String apiLocation) {
 		log.info("Init at apiLocation=" + apiLocation);
 
@@ -110,14 +122,16 @@ public class XydraStoreResource {
 		final RestlessParameter from = new RestlessParameter(XydraStoreRestInterface.ARG_BEGIN_REVISION,
 				true);
 		final RestlessParameter to = new RestlessParameter(XydraStoreRestInterface.ARG_END_REVISION, true);
+		final RestlessParameter compact = new RestlessParameter(XydraStoreRestInterface.ARG_COMPACT,
+				true);
 
 		restless.addMethod(prefix + XydraStoreRestInterface.URL_EXECUTE, "POST",
 				XydraStoreResource.class, "executeCommands", false, actorId, passwordHash,
-				addresses, from, to);
+				addresses, from, to, compact);
 
 		restless.addMethod(prefix + XydraStoreRestInterface.URL_EVENTS, "GET",
 				XydraStoreResource.class, "getEvents", false, actorId, passwordHash, addresses,
-				from, to);
+				from, to, compact);
 
 		restless.addMethod(prefix + XydraStoreRestInterface.URL_REVISIONS, "GET",
 				XydraStoreResource.class, "getModelRevisions", false, actorId, passwordHash,
@@ -224,41 +238,173 @@ public class XydraStoreResource {
 
 		final HttpServletResponse res = context.getResponse();
 
+		final String mime = getResponseContentType(context);
+
+		res.setStatus(statusCode);
+		res.setContentType(mime + "; charset=UTF-8");
+		res.setCharacterEncoding("utf-8");
+		try {
+			return createOutput(context, mime, new MiniStreamWriter(res.getOutputStream()));
+		} catch (final IOException e) {
+			throw new RuntimeException("re-throw", e);
+		}
+	}
+
+	private static String getResponseContentType(final IRestlessContext context) {
+
 		final String callback = context.getRequest().getParameter(XydraStoreRestInterface.ARG_CALLBACK);
-		String mime;
 		if (callback != null) {
 			// Validate the callback to prevent cross-site scripting
 			// vulnerabilities.
 			if (!callbackRegex.matcher(callback).matches()) {
 				throw new InitException("Invalid callback: " + callback);
 			}
-			mime = getBestContentType(context, jsonMimes,
+			return getBestContentType(context, jsonMimes,
 					XydraStoreRestInterface.DEFAULT_CALLBACK_CONTENT_TYPE);
+		}
+		return getBestContentType(context, mimes, XydraStoreRestInterface.DEFAULT_CONTENT_TYPE);
+	}
+
+	private static XydraOut createOutput(final IRestlessContext context, final String mime,
+			final MiniWriter writer) {
+
+		final String callback = context.getRequest().getParameter(XydraStoreRestInterface.ARG_CALLBACK);
+		XydraOut out;
+		if (xmlMimes.contains(mime)) {
+			out = new XmlOut(writer);
+		} else if (jsonMimes.contains(mime)) {
+			out = callback != null ? new JsonOut(writer, callback) : new JsonOut(writer);
 		} else {
-			mime = getBestContentType(context, mimes, XydraStoreRestInterface.DEFAULT_CONTENT_TYPE);
+			throw new AssertionError();
 		}
+		final String format = context.getRequest().getParameter("format");
+		if ("pretty".equals(format)) {
+			out.enableWhitespace(true, true);
+		}
+		return out;
+	}
 
-		res.setStatus(statusCode);
+	/**
+	 * @return everything besides the data which influences the bytes of a
+	 *         response
+	 */
+	private static String getOutputKey(final IRestlessContext context, final String mime,
+			final boolean gzip) {
+		final HttpServletRequest req = context.getRequest();
+		return mime + " " + req.getParameter(XydraStoreRestInterface.ARG_CALLBACK) + " "
+				+ req.getParameter("format") + (gzip ? " gzip" : "");
+	}
+
+	private static boolean acceptsGzip(final IRestlessContext context) {
+		final String accept = context.getRequest().getHeader("Accept-Encoding");
+		return accept != null && accept.toLowerCase().contains("gzip");
+	}
+
+	/**
+	 * @param key everything a response depends on
+	 * @return an entity tag for the response
+	 */
+	private static String toETag(final String key) {
+		return "\"" + HashUtils.getMD5(key) + "\"";
+	}
+
+	/**
+	 * Answers with 304 (Not Modified) if the client already has the given
+	 * version.
+	 *
+	 * @param context
+	 * @param etag see {@link #toETag(String)}
+	 * @return true if the response has been sent
+	 */
+	private static boolean sendNotModified(final IRestlessContext context, final String etag) {
+		if (!etag.equals(context.getRequest().getHeader("If-None-Match"))) {
+			return false;
+		}
+		final HttpServletResponse res = context.getResponse();
+		res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+		res.setHeader("ETag", etag);
+		return true;
+	}
+
+	/**
+	 * Writes an already serialised response.
+	 */
+	private static void sendBytes(final IRestlessContext context, final String mime, final boolean gzip,
+			final String etag, final byte[] bytes) throws IOException {
+		final HttpServletResponse res = context.getResponse();
+		res.setStatus(HttpServletResponse.SC_OK);
 		res.setContentType(mime + "; charset=UTF-8");
 		res.setCharacterEncoding("utf-8");
-		try {
-			final MiniWriter writer = new MiniStreamWriter(res.getOutputStream());
-			XydraOut out;
-			if (xmlMimes.contains(mime)) {
-				out = new XmlOut(writer);
-			} else if (jsonMimes.contains(mime)) {
-				out = callback != null ? new JsonOut(writer, callback) : new JsonOut(writer);
-			} else {
-				throw new AssertionError();
+		res.setHeader("Vary", "Accept, Accept-Encoding");
+		if (gzip) {
+			res.setHeader("Content-Encoding", "gzip");
+		}
+		if (etag != null) {
+			res.setHeader("ETag", etag);
+		}
+		res.setContentLength(bytes.length);
+		final OutputStream os = res.getOutputStream();
+		os.write(bytes);
+		os.flush();
+	}
+
+	/**
+	 * @return the revision of each model, or null if any of them could not be
+	 *         read
+	 */
+	private static ModelRevision[] getModelRevisions(final XydraStore store, final XId actorId,
+			final String passwordHash, final XAddress[] modelAddresses) {
+		if (modelAddresses.length == 0) {
+			return new ModelRevision[0];
+		}
+		final GetWithAddressRequest[] requests = new GetWithAddressRequest[modelAddresses.length];
+		for (int i = 0; i < modelAddresses.length; i++) {
+			requests[i] = new GetWithAddressRequest(modelAddresses[i]);
+		}
+		final WaitingCallback<BatchedResult<ModelRevision>[]> callback = new WaitingCallback<BatchedResult<ModelRevision>[]>();
+		store.getModelRevisions(actorId, passwordHash, requests, callback);
+		if (callback.getException() != null) {
+			return null;
+		}
+		final ModelRevision[] revisions = new ModelRevision[modelAddresses.length];
+		for (int i = 0; i < revisions.length; i++) {
+			final BatchedResult<ModelRevision> result = callback.getResult()[i];
+			if (result.getException() != null || result.getResult() == null) {
+				return null;
 			}
-			final String format = context.getRequest().getParameter("format");
-			if ("pretty".equals(format)) {
-				out.enableWhitespace(true, true);
+			revisions[i] = result.getResult();
+		}
+		return revisions;
+	}
+
+	/**
+	 * @return a key which changes whenever a model containing one of the
+	 *         addresses changes, or null if the revisions could not be read
+	 */
+	private static String getSnapshotsKey(final XydraStore store, final XId actorId,
+			final String passwordHash, final String[] addressStrs, final XAddress[] addresses) {
+		int count = 0;
+		final XAddress[] modelAddresses = new XAddress[addresses.length];
+		for (final XAddress address : addresses) {
+			if (address != null) {
+				modelAddresses[count++] = Base.resolveModel(address);
+			}
+		}
+		final ModelRevision[] revisions = getModelRevisions(store, actorId, passwordHash,
+				Arrays.copyOf(modelAddresses, count));
+		if (revisions == null) {
+			return null;
+		}
+		final StringBuilder key = new StringBuilder(actorId.toString());
+		int m = 0;
+		for (int i = 0; i < addressStrs.length; i++) {
+			key.append(' ').append(addressStrs[i]);
+			if (addresses[i] != null) {
+				final ModelRevision revision = revisions[m++];
+				key.append('@').append(revision.revision()).append(revision.modelExists() ? "" : "-");
 			}
-			return out;
-		} catch (final IOException e) {
-			throw new RuntimeException("re-throw", e);
 		}
+		return key.toString();
 	}
 
 	/**
@@ -295,7 +441,8 @@ public class XydraStoreResource {
 	}
 
 	public void executeCommands(final IRestlessContext context, final String actorIdStr, final String passwordHash,
-			final String[] addresses, final String[] from, final String[] to) throws Throwable {
+			final String[] addresses, final String[] from, final String[] to, final String[] compact)
+			throws Throwable {
 
 		if (Delay.isSimulateDelay()) {
 			Delay.ajax();
@@ -306,7 +453,7 @@ public class XydraStoreResource {
 		final XydraStore store = XydraRestServer.getStore(context.getRestless());
 		final XId actorId = getActorId(actorIdStr);
 
-		final EventsRequest ger = parseEventsRequest(addresses, from, to);
+		final EventsRequest ger = parseEventsRequest(addresses, from, to, compact);
 
 		final WaitingCallback<XId> repoId = new WaitingCallback<XId>();
 		// implicitly check security
@@ -380,7 +527,8 @@ public class XydraStoreResource {
 		XydraRuntime.finishRequest();
 	}
 
-	private static EventsRequest parseEventsRequest(final String[] addresses, final String[] from, final String[] to) {
+	private static EventsRequest parseEventsRequest(final String[] addresses, final String[] from, final String[] to,
+			final String[] compact) {
 
 		if (addresses.length < from.length || addresses.length < to.length) {
 			throw new RequestException("illegal parameter combination: "
@@ -422,14 +570,16 @@ public class XydraStoreResource {
 					continue;
 				}
 			}
-			requests[i] = new GetEventsRequest(address, begin, end);
+			final boolean compacted = i < compact.length && Boolean.parseBoolean(compact[i]);
+			requests[i] = new GetEventsRequest(address, begin, end, compacted);
 		}
 
 		return new EventsRequest(exceptions, requests);
 	}
 
 	public void getEvents(final IRestlessContext context, final String actorIdStr, final String passwordHash,
-			final String[] addresses, final String[] from, final String[] to) throws Throwable {
+			final String[] addresses, final String[] from, final String[] to, final String[] compact)
+			throws Throwable {
 
 		if (Delay.isSimulateDelay()) {
 			Delay.ajax();
@@ -440,7 +590,7 @@ public class XydraStoreResource {
 		final XydraStore store = XydraRestServer.getStore(context.getRestless());
 		final XId actorId = getActorId(actorIdStr);
 
-		final EventsRequest ger = parseEventsRequest(addresses, from, to);
+		final EventsRequest ger = parseEventsRequest(addresses, from, to, compact);
 
 		final WaitingCallback<BatchedResult<XEvent[]>[]> callback = new WaitingCallback<BatchedResult<XEvent[]>[]>();
 		store.getEvents(actorId, passwordHash, ger.requests, callback);
@@ -485,6 +635,15 @@ public class XydraStoreResource {
 			throw callback.getException();
 		}
 
+		final String etag = getModelRevisionsETag(context, actorId, addresses, callback.getResult());
+		if (etag != null) {
+			if (sendNotModified(context, etag)) {
+				XydraRuntime.finishRequest();
+				return;
+			}
+			context.getResponse().setHeader("ETag", etag);
+		}
+
 		final XydraOut out = startOutput(context, HttpServletResponse.SC_OK);
 
 		SerializedStore.serializeModelRevisions(callback.getResult(), out);
@@ -495,6 +654,30 @@ public class XydraStoreResource {
 
 	}
 
+	/**
+	 * @return an entity tag which changes whenever one of the revisions
+	 *         changes, or null if any result is an exception
+	 */
+	private static String getModelRevisionsETag(final IRestlessContext context, final XId actorId,
+			final String[] addresses, final BatchedResult<ModelRevision>[] results) {
+		final StringBuilder key = new StringBuilder(actorId.toString());
+		for (int i = 0; i < results.length; i++) {
+			final ModelRevision revision = results[i].getResult();
+			if (results[i].getException() != null || revision == null) {
+				return null;
+			}
+			key.append(' ').append(addresses[i]).append('@').append(revision.revision()).append('/')
+					.append(revision.tentativeRevision()).append(revision.modelExists() ? "" : "-");
+		}
+		key.append(' ').append(getOutputKey(context, getResponseContentType(context), false));
+		return toETag(key.toString());
+	}
+
+	/**
+	 * Answers from {@link #snapshotCache} if none of the requested models has
+	 * changed since the response was cached. Responses are gzipped once for
+	 * all clients which accept it.
+	 */
 	public void getSnapshots(final IRestlessContext context, final String actorIdStr, final String passwordHash,
 			final String[] addressStrs) throws Throwable {
 
@@ -508,6 +691,7 @@ public class XydraStoreResource {
 
 		final StoreException[] ex = new StoreException[addressStrs.length];
 		final boolean[] isModel = new boolean[addressStrs.length];
+		final XAddress[] addrs = new XAddress[addressStrs.length];
 		for (int i = 0; i < addressStrs.length; i++) {
 
 			XAddress addr;
@@ -522,15 +706,35 @@ public class XydraStoreResource {
 			if (type == XType.XMODEL) {
 				modelAddrs.add(addr);
 				isModel[i] = true;
+				addrs[i] = addr;
 			} else if (type == XType.XOBJECT) {
 				objectAddrs.add(addr);
 				isModel[i] = false;
+				addrs[i] = addr;
 			} else {
 				ex[i] = new RequestException("address does not refer to a model or object: " + addr);
 			}
 
 		}
 
+		final String mime = getResponseContentType(context);
+		final boolean gzip = acceptsGzip(context);
+		final String outputKey = getOutputKey(context, mime, gzip);
+		final String key = getSnapshotsKey(store, actorId, passwordHash, addressStrs, addrs);
+		if (key != null) {
+			final String etag = toETag(key + " " + outputKey);
+			if (sendNotModified(context, etag)) {
+				XydraRuntime.finishRequest();
+				return;
+			}
+			final byte[] cached = snapshotCache.get(key + " " + outputKey);
+			if (cached != null) {
+				sendBytes(context, mime, gzip, etag, cached);
+				XydraRuntime.finishRequest();
+				return;
+			}
+		}
+
 		final GetWithAddressRequest[] mreq = new GetWithAddressRequest[modelAddrs.size()];
 		for (int i = 0; i < mreq.length; i++) {
 			mreq[i] = new GetWithAddressRequest(modelAddrs.get(i));
@@ -555,14 +759,25 @@ public class XydraStoreResource {
 		}
 		assert oc.getResult() != null && oc.getResult().length == oreq.length;
 
-		final XydraOut out = startOutput(context, HttpServletResponse.SC_OK);
-
 		final BatchedResult<XReadableModel>[] mres = mc.getResult();
 		final BatchedResult<XReadableObject>[] ores = oc.getResult();
 
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final OutputStream os = gzip ? new GZIPOutputStream(bytes) : bytes;
+		final XydraOut out = createOutput(context, mime, new MiniStreamWriter(os));
 		SerializedStore.serializeSnapshots(ex, isModel, mres, ores, out);
-
 		out.flush();
+		os.close();
+		final byte[] response = bytes.toByteArray();
+
+		// only cache if no model changed while the snapshots were read
+		String etag = null;
+		if (key != null
+				&& key.equals(getSnapshotsKey(store, actorId, passwordHash, addressStrs, addrs))) {
+			snapshotCache.put(key + " " + outputKey, response);
+			etag = toETag(key + " " + outputKey);
+		}
+		sendBytes(context, mime, gzip, etag, response);
 
 		XydraRuntime.finishRequest();
 
@@ -0,0 +1,41 @@
+package org.xydra.server.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class SnapshotCacheTest {
+
+	@Test
+	public void testEvictsLeastRecentlyUsedByBytes() {
+		final SnapshotCache cache = new SnapshotCache(400);
+		cache.put("a", new byte[100]);
+		cache.put("b", new byte[100]);
+		cache.put("c", new byte[100]);
+		cache.put("d", new byte[100]);
+		assertEquals(400, cache.getBytes());
+
+		// touch a, so b is the eldest
+		assertNotNull(cache.get("a"));
+		cache.put("e", new byte[50]);
+		assertNull(cache.get("b"));
+		assertNotNull(cache.get("a"));
+		assertEquals(350, cache.getBytes());
+		assertEquals(4, cache.size());
+	}
+
+	@Test
+	public void testReplaceAndTooLarge() {
+		final SnapshotCache cache = new SnapshotCache(400);
+		cache.put("a", new byte[100]);
+		cache.put("a", new byte[20]);
+		assertEquals(20, cache.getBytes());
+		cache.put("big", new byte[101]);
+		assertNull(cache.get("big"));
+		assertEquals(20, cache.getBytes());
+		assertEquals(1, cache.getMisses());
+	}
+
+}
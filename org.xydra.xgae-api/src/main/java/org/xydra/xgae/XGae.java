@@ -27,6 +27,17 @@ public class XGae {
 
 	private static IXGae xgae;
 
+	/**
+	 * Uses the given implementation instead of the one configured for the
+	 * service loader, e.g. a local implementation for tests and benchmarks.
+	 *
+	 * @param instance
+	 */
+	public static synchronized void setInstance(final IXGae instance) {
+		xgae = instance;
+		platformInitialised = true;
+	}
+
 	private static synchronized void initialiseRuntimeOnce() {
 		if (platformInitialised) {
 			return;
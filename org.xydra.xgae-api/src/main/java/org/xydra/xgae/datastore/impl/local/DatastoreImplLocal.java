@@ -0,0 +1,81 @@
+package org.xydra.xgae.datastore.impl.local;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.xydra.xgae.datastore.api.IDatastore;
+import org.xydra.xgae.datastore.api.IDatastoreAsync;
+import org.xydra.xgae.datastore.api.IDatastoreSync;
+import org.xydra.xgae.datastore.api.SEntity;
+import org.xydra.xgae.datastore.api.SKey;
+import org.xydra.xgae.datastore.api.SText;
+import org.xydra.xgae.impl.local.XGaeImplLocal;
+
+/**
+ * An embedded, in-memory datastore with the semantics of the App Engine
+ * datastore as far as the xgae API exposes them: key-ordered kinds, range
+ * queries and optimistic transactions that fail with a
+ * {@link java.util.ConcurrentModificationException} on conflicts.
+ *
+ * @author xamde
+ */
+public class DatastoreImplLocal implements IDatastore {
+
+	private final DatastoreImplLocalSync sync;
+
+	private final DatastoreImplLocalAsync async;
+
+	public DatastoreImplLocal(final XGaeImplLocal.Config config) {
+		this.sync = new DatastoreImplLocalSync(new LocalStore(), config);
+		final AtomicInteger count = new AtomicInteger();
+		final ExecutorService executor = Executors.newFixedThreadPool(config.asyncThreads,
+				new ThreadFactory() {
+
+					@Override
+					public Thread newThread(final Runnable r) {
+						final Thread thread = new Thread(r, "local-datastore-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		this.async = new DatastoreImplLocalAsync(this.sync, executor);
+	}
+
+	@Override
+	public IDatastoreSync sync() {
+		return this.sync;
+	}
+
+	@Override
+	public IDatastoreAsync async() {
+		return this.async;
+	}
+
+	@Override
+	public SEntity createEntity(final SKey key) {
+		return new LEntity(LKey.of(key));
+	}
+
+	@Override
+	public SEntity createEntity(final String kind, final String name) {
+		return new LEntity(new LKey(kind, name));
+	}
+
+	@Override
+	public SText createText(final String value) {
+		return new LText(value);
+	}
+
+	@Override
+	public SKey createKey(final String kind, final String name) {
+		return new LKey(kind, name);
+	}
+
+	@Override
+	public boolean canWriteDataStore() {
+		return true;
+	}
+
+}
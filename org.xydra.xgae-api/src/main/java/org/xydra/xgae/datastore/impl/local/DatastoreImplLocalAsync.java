@@ -0,0 +1,154 @@
+package org.xydra.xgae.datastore.impl.local;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.xydra.xgae.datastore.api.IDatastoreAsync;
+import org.xydra.xgae.datastore.api.SEntity;
+import org.xydra.xgae.datastore.api.SKey;
+import org.xydra.xgae.datastore.api.SPreparedQuery;
+import org.xydra.xgae.datastore.api.STransaction;
+import org.xydra.xgae.util.FutureUtils;
+
+/**
+ * Asynchronous access to the local datastore. Each operation is executed by
+ * {@link DatastoreImplLocalSync} in a pool thread, so the simulated latencies
+ * of concurrent operations overlap like those of real remote calls.
+ *
+ * @author xamde
+ */
+public class DatastoreImplLocalAsync implements IDatastoreAsync {
+
+	public static final String DATASTORE_NAME = "[#DSlocalAsync]";
+
+	private final DatastoreImplLocalSync sync;
+
+	private final ExecutorService executor;
+
+	DatastoreImplLocalAsync(final DatastoreImplLocalSync sync, final ExecutorService executor) {
+		this.sync = sync;
+		this.executor = executor;
+	}
+
+	@Override
+	public Future<Void> deleteEntity(final SKey key) {
+		return deleteEntity(key, null);
+	}
+
+	@Override
+	public Future<Void> deleteEntity(final SKey key, final STransaction txn) {
+		return this.executor.submit(new Callable<Void>() {
+
+			@Override
+			public Void call() {
+				DatastoreImplLocalAsync.this.sync.deleteEntity(key, txn);
+				return null;
+			}
+		});
+	}
+
+	@Override
+	public Future<Map<SKey, SEntity>> getEntities(final Collection<SKey> keys) {
+		return getEntities(keys, null);
+	}
+
+	@Override
+	public Future<Map<SKey, SEntity>> getEntities(final Collection<SKey> keys,
+			final STransaction txn) {
+		return this.executor.submit(new Callable<Map<SKey, SEntity>>() {
+
+			@Override
+			public Map<SKey, SEntity> call() {
+				return DatastoreImplLocalAsync.this.sync.getEntities(keys, txn);
+			}
+		});
+	}
+
+	@Override
+	public Future<SEntity> getEntity(final SKey key) {
+		return getEntity(key, null);
+	}
+
+	@Override
+	public Future<SEntity> getEntity(final SKey key, final STransaction txn) {
+		return this.executor.submit(new Callable<SEntity>() {
+
+			@Override
+			public SEntity call() {
+				return DatastoreImplLocalAsync.this.sync.getEntity(key, txn);
+			}
+		});
+	}
+
+	@Override
+	public Future<List<SKey>> putEntities(final Iterable<SEntity> it) {
+		return this.executor.submit(new Callable<List<SKey>>() {
+
+			@Override
+			public List<SKey> call() {
+				DatastoreImplLocalAsync.this.sync.putEntities(it);
+				final List<SKey> keys = new ArrayList<SKey>();
+				for (final SEntity entity : it) {
+					keys.add(entity.getKey());
+				}
+				return keys;
+			}
+		});
+	}
+
+	@Override
+	public Future<SKey> putEntity(final SEntity entity) {
+		return putEntity(entity, null);
+	}
+
+	@Override
+	public Future<SKey> putEntity(final SEntity entity, final STransaction txn) {
+		return this.executor.submit(new Callable<SKey>() {
+
+			@Override
+			public SKey call() {
+				DatastoreImplLocalAsync.this.sync.putEntity(entity, txn);
+				return entity.getKey();
+			}
+		});
+	}
+
+	@Override
+	public Future<STransaction> beginTransaction() {
+		return FutureUtils.createCompleted(this.sync.beginTransaction());
+	}
+
+	@Override
+	public void endTransaction(final STransaction txn) throws ConcurrentModificationException {
+		this.sync.endTransaction(txn);
+	}
+
+	@Override
+	public SPreparedQuery prepareRangeQuery(final String kind, final boolean keysOnly,
+			final String lowName, final String highName) {
+		return this.sync.prepareRangeQuery(kind, keysOnly, lowName, highName);
+	}
+
+	@Override
+	public SPreparedQuery prepareRangeQuery(final String kind, final boolean keysOnly,
+			final String lowestName, final String highestName, final STransaction transaction) {
+		return this.sync.prepareRangeQuery(kind, keysOnly, lowestName, highestName, transaction);
+	}
+
+	@Override
+	public boolean isTransactionsActive() {
+		return this.sync.isTransactionsActive();
+	}
+
+	@Override
+	public String getDatastoreName() {
+		return DATASTORE_NAME;
+	}
+
+}
@@ -0,0 +1,238 @@
+package org.xydra.xgae.datastore.impl.local;
+
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.xydra.annotations.NeverNull;
+import org.xydra.xgae.annotations.XGaeOperation;
+import org.xydra.xgae.datastore.api.IDatastoreSync;
+import org.xydra.xgae.datastore.api.SEntity;
+import org.xydra.xgae.datastore.api.SKey;
+import org.xydra.xgae.datastore.api.SPreparedQuery;
+import org.xydra.xgae.datastore.api.STransaction;
+import org.xydra.xgae.impl.local.XGaeImplLocal;
+
+/**
+ * Synchronous access to the local datastore. Each call waits for the
+ * configured latency of one remote call, batch operations count as one call.
+ *
+ * Within a transaction, gets and queries see the writes of the same
+ * transaction. All other reads see the latest committed state.
+ *
+ * @author xamde
+ */
+public class DatastoreImplLocalSync implements IDatastoreSync {
+
+	public static final String DATASTORE_NAME = "[#DSlocal]";
+
+	private final LocalStore store;
+
+	private final XGaeImplLocal.Config config;
+
+	DatastoreImplLocalSync(final LocalStore store, final XGaeImplLocal.Config config) {
+		this.store = store;
+		this.config = config;
+	}
+
+	private static void delay(final long micros) {
+		if (micros > 0) {
+			LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(micros));
+		}
+	}
+
+	private static LTransaction unwrap(final STransaction txn) {
+		if (txn == null) {
+			return null;
+		}
+		final LTransaction ltxn = (LTransaction) txn.raw();
+		ltxn.checkActive();
+		return ltxn;
+	}
+
+	/**
+	 * The first access of txn to key records the current version of key.
+	 *
+	 * @return the entity as seen by the transaction, null if it does not
+	 *         exist
+	 */
+	private LEntity getInTransaction(final LKey key, final LTransaction txn) {
+		synchronized (txn) {
+			if (txn.writes.containsKey(key)) {
+				final LEntity written = txn.writes.get(key);
+				return written == null ? null : LEntity.copyOf(written);
+			}
+			LocalStore.Versioned v = txn.observed.get(key);
+			if (v == null) {
+				v = this.store.getVersioned(key);
+				txn.observed.put(key, v);
+			}
+			return v.entity == null ? null : LEntity.copyOf(v.entity);
+		}
+	}
+
+	private void writeInTransaction(final LKey key, final LEntity entity, final LTransaction txn) {
+		synchronized (txn) {
+			if (!txn.observed.containsKey(key)) {
+				txn.observed.put(key, this.store.getVersioned(key));
+			}
+			txn.writes.put(key, entity);
+		}
+	}
+
+	@Override
+	@XGaeOperation(datastoreWrite = true, datastoreRead = true)
+	public void clear() {
+		this.store.clear();
+	}
+
+	@Override
+	@XGaeOperation(datastoreWrite = true)
+	public void deleteEntities(final Iterable<SKey> it) {
+		delay(this.config.writeLatencyMicros);
+		for (final SKey key : it) {
+			this.store.write(LKey.of(key), null);
+		}
+	}
+
+	@Override
+	public void deleteEntity(final SKey key) {
+		deleteEntity(key, null);
+	}
+
+	@Override
+	@XGaeOperation(datastoreWrite = true)
+	public void deleteEntity(final SKey key, final STransaction txn) {
+		final LTransaction ltxn = unwrap(txn);
+		if (ltxn == null) {
+			delay(this.config.writeLatencyMicros);
+			this.store.write(LKey.of(key), null);
+		} else {
+			writeInTransaction(LKey.of(key), null, ltxn);
+		}
+	}
+
+	@Override
+	public Map<SKey, SEntity> getEntities(final Collection<SKey> keys) {
+		return getEntities(keys, null);
+	}
+
+	@Override
+	@XGaeOperation(datastoreRead = true)
+	public Map<SKey, SEntity> getEntities(final Collection<SKey> keys, final STransaction txn) {
+		final LTransaction ltxn = unwrap(txn);
+		delay(this.config.readLatencyMicros);
+		final Map<SKey, SEntity> result = new HashMap<SKey, SEntity>();
+		for (final SKey key : keys) {
+			final LKey lkey = LKey.of(key);
+			final LEntity entity = ltxn == null ? this.store.get(lkey) : getInTransaction(lkey, ltxn);
+			if (entity != null) {
+				result.put(key, entity);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public SEntity getEntity(@NeverNull final SKey key) {
+		return getEntity(key, null);
+	}
+
+	@Override
+	@XGaeOperation(datastoreRead = true)
+	public SEntity getEntity(final SKey key, final STransaction txn) {
+		final LTransaction ltxn = unwrap(txn);
+		delay(this.config.readLatencyMicros);
+		final LKey lkey = LKey.of(key);
+		return ltxn == null ? this.store.get(lkey) : getInTransaction(lkey, ltxn);
+	}
+
+	@Override
+	@XGaeOperation(datastoreWrite = true)
+	public void putEntities(final Iterable<SEntity> it) {
+		delay(this.config.writeLatencyMicros);
+		for (final SEntity entity : it) {
+			final LEntity copy = LEntity.copyOf(entity);
+			this.store.write((LKey) copy.getKey(), copy);
+		}
+	}
+
+	@Override
+	public void putEntity(final SEntity entity) {
+		putEntity(entity, null);
+	}
+
+	@Override
+	@XGaeOperation(datastoreWrite = true)
+	public void putEntity(final SEntity entity, final STransaction txn) {
+		final LTransaction ltxn = unwrap(txn);
+		final LEntity copy = LEntity.copyOf(entity);
+		if (ltxn == null) {
+			delay(this.config.writeLatencyMicros);
+			this.store.write((LKey) copy.getKey(), copy);
+		} else {
+			writeInTransaction((LKey) copy.getKey(), copy, ltxn);
+		}
+	}
+
+	@Override
+	@XGaeOperation(datastoreWrite = true)
+	public STransaction beginTransaction() {
+		this.store.activeTransactions.incrementAndGet();
+		return new LTransaction();
+	}
+
+	@Override
+	@XGaeOperation(datastoreWrite = true)
+	public void endTransaction(final STransaction txn) throws ConcurrentModificationException {
+		delay(this.config.commitLatencyMicros);
+		this.store.commit((LTransaction) txn.raw());
+	}
+
+	@Override
+	@XGaeOperation(datastoreRead = true)
+	public List<String> getAllKinds() {
+		final List<String> kinds = this.store.getKinds();
+		for (int i = kinds.size() - 1; i >= 0; i--) {
+			if (kinds.get(i).startsWith("__")) {
+				kinds.remove(i);
+			}
+		}
+		return kinds;
+	}
+
+	@Override
+	public SPreparedQuery prepareRangeQuery(final String kind, final boolean keysOnly,
+			final String lowName, final String highName) {
+		return prepareRangeQuery(kind, keysOnly, lowName, highName, null);
+	}
+
+	@Override
+	public SPreparedQuery prepareRangeQuery(final String kind, final boolean keysOnly,
+			final String lowestName, final String highestName, final STransaction txn) {
+		assert lowestName != null || highestName != null;
+		return new LPreparedQuery(this, kind, keysOnly, lowestName, highestName, unwrap(txn));
+	}
+
+	@XGaeOperation(datastoreRead = true)
+	List<LEntity> query(final String kind, final String lowestName, final String highestName,
+			final boolean keysOnly, final LTransaction txn) {
+		delay(this.config.readLatencyMicros);
+		return this.store.range(kind, lowestName, highestName, keysOnly, txn);
+	}
+
+	@Override
+	public boolean isTransactionsActive() {
+		return this.store.activeTransactions.get() > 0;
+	}
+
+	@Override
+	public String getDatastoreName() {
+		return DATASTORE_NAME;
+	}
+
+}
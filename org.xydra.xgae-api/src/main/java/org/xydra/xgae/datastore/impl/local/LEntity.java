@@ -0,0 +1,137 @@
+package org.xydra.xgae.datastore.impl.local;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.xydra.xgae.datastore.api.SEntity;
+import org.xydra.xgae.datastore.api.SKey;
+import org.xydra.xgae.datastore.api.SValue;
+
+/**
+ * A mutable entity of the local datastore. The datastore stores and returns
+ * copies, so changing an entity never changes stored data.
+ *
+ * @author xamde
+ */
+public class LEntity implements SEntity {
+
+	private final LKey key;
+
+	private final Map<String, Object> attributes;
+
+	public LEntity(final LKey key) {
+		this(key, new HashMap<String, Object>());
+	}
+
+	private LEntity(final LKey key, final Map<String, Object> attributes) {
+		this.key = key;
+		this.attributes = attributes;
+	}
+
+	/**
+	 * @param entity
+	 * @return a copy of the given entity that shares no mutable state with it
+	 */
+	static LEntity copyOf(final SEntity entity) {
+		final LEntity copy = new LEntity(LKey.of(entity.getKey()));
+		for (final Map.Entry<String, Object> e : entity.getAttributes().entrySet()) {
+			copy.attributes.put(e.getKey(), copyValue(e.getValue()));
+		}
+		return copy;
+	}
+
+	/**
+	 * @return a copy of this entity without attributes
+	 */
+	LEntity keyOnly() {
+		return new LEntity(this.key);
+	}
+
+	private static Object copyValue(final Object value) {
+		if (value instanceof List) {
+			return new ArrayList<Object>((List<?>) value);
+		}
+		return value;
+	}
+
+	@Override
+	public Object getAttribute(final String name) {
+		return this.attributes.get(name);
+	}
+
+	@Override
+	public Map<String, Object> getAttributes() {
+		return Collections.unmodifiableMap(this.attributes);
+	}
+
+	@Override
+	public SKey getKey() {
+		return this.key;
+	}
+
+	@Override
+	public boolean hasAttribute(final String name) {
+		return this.attributes.containsKey(name);
+	}
+
+	@Override
+	public void removeAttribute(final String name) {
+		this.attributes.remove(name);
+	}
+
+	@Override
+	public void setAttribute(final String name, final boolean value) {
+		this.attributes.put(name, value);
+	}
+
+	@Override
+	public void setAttribute(final String name, final List<?> list) {
+		this.attributes.put(name, copyValue(list));
+	}
+
+	@Override
+	public void setAttribute(final String name, final long value) {
+		this.attributes.put(name, value);
+	}
+
+	@Override
+	public void setAttribute(final String name, final Serializable serializable) {
+		this.attributes.put(name, serializable);
+	}
+
+	@Override
+	public void setAttribute(final String name, final String value) {
+		this.attributes.put(name, value);
+	}
+
+	@Override
+	public void setAttribute(final String name, final SValue value) {
+		this.attributes.put(name, value);
+	}
+
+	@Override
+	public Object raw() {
+		return this;
+	}
+
+	@Override
+	public boolean equals(final Object other) {
+		return other instanceof LEntity && ((LEntity) other).key.equals(this.key)
+				&& ((LEntity) other).attributes.equals(this.attributes);
+	}
+
+	@Override
+	public int hashCode() {
+		return this.key.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return this.key + " " + this.attributes;
+	}
+
+}
@@ -0,0 +1,77 @@
+package org.xydra.xgae.datastore.impl.local;
+
+import java.io.Serializable;
+
+import org.xydra.xgae.datastore.api.SKey;
+
+/**
+ * An immutable key of the local datastore. Keys of the same kind are ordered
+ * by name.
+ *
+ * @author xamde
+ */
+public class LKey implements SKey, Comparable<LKey>, Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String kind;
+
+	private final String name;
+
+	public LKey(final String kind, final String name) {
+		if (kind == null || name == null) {
+			throw new IllegalArgumentException("kind and name must not be null");
+		}
+		this.kind = kind;
+		this.name = name;
+	}
+
+	@Override
+	public String getKind() {
+		return this.kind;
+	}
+
+	@Override
+	public String getName() {
+		return this.name;
+	}
+
+	@Override
+	public Object raw() {
+		return this;
+	}
+
+	@Override
+	public int compareTo(final LKey other) {
+		final int c = this.kind.compareTo(other.kind);
+		return c != 0 ? c : this.name.compareTo(other.name);
+	}
+
+	@Override
+	public boolean equals(final Object other) {
+		return other instanceof LKey && ((LKey) other).name.equals(this.name)
+				&& ((LKey) other).kind.equals(this.kind);
+	}
+
+	@Override
+	public int hashCode() {
+		return this.kind.hashCode() * 31 + this.name.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return this.kind + "(\"" + this.name + "\")";
+	}
+
+	/**
+	 * @param key
+	 * @return key if it is an {@link LKey}, otherwise a copy
+	 */
+	static LKey of(final SKey key) {
+		if (key instanceof LKey) {
+			return (LKey) key;
+		}
+		return new LKey(key.getKind(), key.getName());
+	}
+
+}
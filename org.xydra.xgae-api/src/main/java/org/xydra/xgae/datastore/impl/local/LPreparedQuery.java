@@ -0,0 +1,88 @@
+package org.xydra.xgae.datastore.impl.local;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xydra.xgae.datastore.api.SEntity;
+import org.xydra.xgae.datastore.api.SKey;
+import org.xydra.xgae.datastore.api.SPreparedQuery;
+
+/**
+ * A key range query on the local datastore. The query is executed each time a
+ * result is requested.
+ *
+ * @author xamde
+ */
+public class LPreparedQuery implements SPreparedQuery {
+
+	private final DatastoreImplLocalSync datastore;
+
+	private final String kind;
+
+	private final boolean keysOnly;
+
+	private final String lowestName;
+
+	private final String highestName;
+
+	private final LTransaction txn;
+
+	private int limit = 0;
+
+	LPreparedQuery(final DatastoreImplLocalSync datastore, final String kind,
+			final boolean keysOnly, final String lowestName, final String highestName,
+			final LTransaction txn) {
+		this.datastore = datastore;
+		this.kind = kind;
+		this.keysOnly = keysOnly;
+		this.lowestName = lowestName;
+		this.highestName = highestName;
+		this.txn = txn;
+	}
+
+	@Override
+	public List<SEntity> asList() {
+		final List<LEntity> entities = this.datastore.query(this.kind, this.lowestName,
+				this.highestName, this.keysOnly, this.txn);
+		final int size = this.limit > 0 ? Math.min(this.limit, entities.size()) : entities.size();
+		return new ArrayList<SEntity>(entities.subList(0, size));
+	}
+
+	@Override
+	public Iterable<SEntity> asIterable() {
+		return asList();
+	}
+
+	@Override
+	public Iterable<SKey> asKeysIterable() throws IllegalArgumentException {
+		final List<SEntity> entities = asList();
+		final List<SKey> keys = new ArrayList<SKey>(entities.size());
+		for (final SEntity entity : entities) {
+			keys.add(entity.getKey());
+		}
+		return keys;
+	}
+
+	@Override
+	@Deprecated
+	public List<SEntity> asListWithChunkSize(final int chunkSize) {
+		setChunkSize(chunkSize);
+		return asList();
+	}
+
+	@Override
+	public void setLimit(final int limit) {
+		this.limit = limit;
+	}
+
+	@Override
+	public void setChunkSize(final int chunkSize) {
+		// all results are fetched at once
+	}
+
+	@Override
+	public Object raw() {
+		return this;
+	}
+
+}
@@ -0,0 +1,49 @@
+package org.xydra.xgae.datastore.impl.local;
+
+import java.io.Serializable;
+
+import org.xydra.xgae.datastore.api.SText;
+
+/**
+ * An immutable text value of the local datastore
+ *
+ * @author xamde
+ */
+public class LText implements SText, Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String value;
+
+	public LText(final String value) {
+		this.value = value;
+	}
+
+	@Override
+	public String getValue() {
+		return this.value;
+	}
+
+	@Override
+	public Object raw() {
+		return this;
+	}
+
+	@Override
+	public boolean equals(final Object other) {
+		return other instanceof LText
+				&& (this.value == null ? ((LText) other).value == null : this.value
+						.equals(((LText) other).value));
+	}
+
+	@Override
+	public int hashCode() {
+		return this.value == null ? 0 : this.value.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return this.value;
+	}
+
+}
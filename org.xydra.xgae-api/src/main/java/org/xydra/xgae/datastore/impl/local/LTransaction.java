@@ -0,0 +1,53 @@
+package org.xydra.xgae.datastore.impl.local;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.xydra.xgae.datastore.api.STransaction;
+
+/**
+ * An optimistic transaction of the local datastore. Every entity is its own
+ * entity group. The version of each entity is recorded when the transaction
+ * first reads or writes it, the commit fails if any of them has been changed
+ * since.
+ *
+ * @author xamde
+ */
+public class LTransaction implements STransaction {
+
+	private static int nextId = 0;
+
+	private final int id;
+
+	/** first seen state of each read or written entity */
+	final Map<LKey, LocalStore.Versioned> observed = new HashMap<LKey, LocalStore.Versioned>();
+
+	/** buffered writes, null values denote deletes */
+	final Map<LKey, LEntity> writes = new LinkedHashMap<LKey, LEntity>();
+
+	boolean active = true;
+
+	LTransaction() {
+		synchronized (LTransaction.class) {
+			this.id = nextId++;
+		}
+	}
+
+	void checkActive() {
+		if (!this.active) {
+			throw new IllegalStateException("Transaction " + this.id + " is no longer active");
+		}
+	}
+
+	@Override
+	public Object raw() {
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		return "txn-" + this.id + (this.active ? "" : " (ended)");
+	}
+
+}
@@ -0,0 +1,206 @@
+package org.xydra.xgae.datastore.impl.local;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The data of a local datastore: for each kind a map from names to versioned
+ * entities, ordered by name.
+ *
+ * Reads take no locks. All writes, including commits, are serialised, and
+ * each of them assigns a new version to the entities it writes. Deleted
+ * entities are kept as tombstones, so that a transaction that has seen an
+ * entity as missing notices if it has been created and deleted again.
+ *
+ * @author xamde
+ */
+class LocalStore {
+
+	/**
+	 * Immutable state of an entity
+	 */
+	static final class Versioned {
+
+		/** null for deleted or missing entities */
+		final LEntity entity;
+
+		final long version;
+
+		Versioned(final LEntity entity, final long version) {
+			this.entity = entity;
+			this.version = version;
+		}
+
+	}
+
+	static final Versioned MISSING = new Versioned(null, 0);
+
+	private final ConcurrentHashMap<String, ConcurrentSkipListMap<String, Versioned>> kinds = new ConcurrentHashMap<String, ConcurrentSkipListMap<String, Versioned>>();
+
+	/** guards all writes */
+	private final Object writeLock = new Object();
+
+	private long lastVersion = 0;
+
+	final AtomicInteger activeTransactions = new AtomicInteger();
+
+	private ConcurrentSkipListMap<String, Versioned> kind(final String kind) {
+		ConcurrentSkipListMap<String, Versioned> map = this.kinds.get(kind);
+		if (map == null) {
+			final ConcurrentSkipListMap<String, Versioned> created = new ConcurrentSkipListMap<String, Versioned>();
+			map = this.kinds.putIfAbsent(kind, created);
+			if (map == null) {
+				map = created;
+			}
+		}
+		return map;
+	}
+
+	/**
+	 * @param key
+	 * @return the current state, {@link #MISSING} if the entity never existed
+	 */
+	Versioned getVersioned(final LKey key) {
+		final ConcurrentSkipListMap<String, Versioned> map = this.kinds.get(key.getKind());
+		final Versioned v = map == null ? null : map.get(key.getName());
+		return v == null ? MISSING : v;
+	}
+
+	/**
+	 * @param key
+	 * @return a copy of the current entity or null
+	 */
+	LEntity get(final LKey key) {
+		final Versioned v = getVersioned(key);
+		return v.entity == null ? null : LEntity.copyOf(v.entity);
+	}
+
+	/**
+	 * @param key
+	 * @param entity the new entity which must not be changed afterwards, null
+	 *            to delete
+	 */
+	void write(final LKey key, final LEntity entity) {
+		synchronized (this.writeLock) {
+			writeLocked(key, entity);
+		}
+	}
+
+	private void writeLocked(final LKey key, final LEntity entity) {
+		final ConcurrentSkipListMap<String, Versioned> map = kind(key.getKind());
+		if (entity == null && !map.containsKey(key.getName())) {
+			return;
+		}
+		map.put(key.getName(), new Versioned(entity, ++this.lastVersion));
+	}
+
+	/**
+	 * Applies the writes of the transaction if none of the entities it has
+	 * seen has been changed since. Read-only transactions always succeed. The
+	 * transaction is ended in any case.
+	 *
+	 * @param txn
+	 * @throws ConcurrentModificationException if an entity has been changed
+	 */
+	void commit(final LTransaction txn) throws ConcurrentModificationException {
+		synchronized (txn) {
+			txn.checkActive();
+			txn.active = false;
+			this.activeTransactions.decrementAndGet();
+			if (txn.writes.isEmpty()) {
+				return;
+			}
+			synchronized (this.writeLock) {
+				for (final Map.Entry<LKey, Versioned> e : txn.observed.entrySet()) {
+					if (getVersioned(e.getKey()).version != e.getValue().version) {
+						throw new ConcurrentModificationException("Entity " + e.getKey()
+								+ " has been changed concurrently, " + txn + " failed");
+					}
+				}
+				for (final Map.Entry<LKey, LEntity> e : txn.writes.entrySet()) {
+					writeLocked(e.getKey(), e.getValue());
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param kind
+	 * @param lowestName inclusive, null for no lower bound
+	 * @param highestName inclusive, null for no upper bound
+	 * @param keysOnly if true, the returned entities have no attributes
+	 * @param txn if not null, the writes of this transaction are included
+	 * @return copies of all entities in the range, ordered by name
+	 */
+	List<LEntity> range(final String kind, final String lowestName, final String highestName,
+			final boolean keysOnly, final LTransaction txn) {
+		final ConcurrentSkipListMap<String, Versioned> map = this.kinds.get(kind);
+		final NavigableMap<String, LEntity> result = new TreeMap<String, LEntity>();
+		if (map != null) {
+			NavigableMap<String, Versioned> sub = map;
+			if (lowestName != null) {
+				sub = sub.tailMap(lowestName, true);
+			}
+			if (highestName != null) {
+				sub = sub.headMap(highestName, true);
+			}
+			for (final Map.Entry<String, Versioned> e : sub.entrySet()) {
+				if (e.getValue().entity != null) {
+					result.put(e.getKey(), e.getValue().entity);
+				}
+			}
+		}
+		if (txn != null) {
+			synchronized (txn) {
+				for (final Map.Entry<LKey, LEntity> e : txn.writes.entrySet()) {
+					final LKey key = e.getKey();
+					if (key.getKind().equals(kind)
+							&& (lowestName == null || key.getName().compareTo(lowestName) >= 0)
+							&& (highestName == null || key.getName().compareTo(highestName) <= 0)) {
+						if (e.getValue() == null) {
+							result.remove(key.getName());
+						} else {
+							result.put(key.getName(), e.getValue());
+						}
+					}
+				}
+			}
+		}
+		final List<LEntity> list = new ArrayList<LEntity>(result.size());
+		for (final LEntity entity : result.values()) {
+			list.add(keysOnly ? entity.keyOnly() : LEntity.copyOf(entity));
+		}
+		return list;
+	}
+
+	/**
+	 * @return all kinds that contain at least one entity
+	 */
+	List<String> getKinds() {
+		final List<String> list = new ArrayList<String>();
+		for (final Map.Entry<String, ConcurrentSkipListMap<String, Versioned>> e : this.kinds
+				.entrySet()) {
+			for (final Versioned v : e.getValue().values()) {
+				if (v.entity != null) {
+					list.add(e.getKey());
+					break;
+				}
+			}
+		}
+		return list;
+	}
+
+	void clear() {
+		synchronized (this.writeLock) {
+			this.kinds.clear();
+		}
+	}
+
+}
@@ -0,0 +1,108 @@
+package org.xydra.xgae.impl.local;
+
+import org.xydra.xgae.IXGae;
+import org.xydra.xgae.datastore.api.IDatastore;
+import org.xydra.xgae.datastore.impl.local.DatastoreImplLocal;
+import org.xydra.xgae.impl.AbstractXGaeBaseImpl;
+import org.xydra.xgae.memcache.api.IMemCache;
+import org.xydra.xgae.memcache.impl.local.BoundedLocalMemCache;
+
+/**
+ * Implements the IXGae abstraction interface without App Engine: an embedded
+ * datastore and a bounded memcache, both in memory and with configurable
+ * simulated latencies. This allows to run, benchmark and profile the GAE
+ * persistence on any JVM.
+ *
+ * Use via {@link org.xydra.xgae.XGae#setInstance(IXGae)}.
+ *
+ * @author xamde
+ */
+public class XGaeImplLocal extends AbstractXGaeBaseImpl implements IXGae {
+
+	/**
+	 * Latencies are simulated per remote call, batch calls count as one.
+	 */
+	public static class Config {
+
+		public long readLatencyMicros = 0;
+
+		public long writeLatencyMicros = 0;
+
+		public long commitLatencyMicros = 0;
+
+		public long memcacheLatencyMicros = 0;
+
+		public long memcacheMaxBytes = 64 * 1024 * 1024;
+
+		/** number of threads executing async datastore operations */
+		public int asyncThreads = 16;
+
+		/**
+		 * Latencies roughly like those of the App Engine high replication
+		 * datastore
+		 *
+		 * @return a new config
+		 */
+		public static Config realistic() {
+			final Config config = new Config();
+			config.readLatencyMicros = 10000;
+			config.writeLatencyMicros = 30000;
+			config.commitLatencyMicros = 40000;
+			config.memcacheLatencyMicros = 1000;
+			return config;
+		}
+
+	}
+
+	private final IDatastore datastore;
+
+	private final IMemCache memcache;
+
+	private final String instanceId = "local-" + Long.toHexString(System.nanoTime());
+
+	public XGaeImplLocal() {
+		this(new Config());
+	}
+
+	public XGaeImplLocal(final Config config) {
+		this.datastore = new DatastoreImplLocal(config);
+		this.memcache = new BoundedLocalMemCache(config.memcacheMaxBytes,
+				config.memcacheLatencyMicros);
+	}
+
+	@Override
+	public IDatastore datastore() {
+		return this.datastore;
+	}
+
+	@Override
+	public IMemCache memcache() {
+		return this.memcache;
+	}
+
+	@Override
+	public String getProviderVersionString() {
+		return "Local-embedded";
+	}
+
+	@Override
+	public boolean inProduction() {
+		return false;
+	}
+
+	@Override
+	public boolean inDevelopment() {
+		return false;
+	}
+
+	@Override
+	public String getInstanceId() {
+		return this.instanceId;
+	}
+
+	@Override
+	public long getRuntimeLimitInMillis() {
+		return -1;
+	}
+
+}
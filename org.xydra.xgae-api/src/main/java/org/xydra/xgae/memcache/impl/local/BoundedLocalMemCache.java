@@ -0,0 +1,425 @@
+package org.xydra.xgae.memcache.impl.local;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.xydra.annotations.CanBeNull;
+import org.xydra.annotations.NeverNull;
+import org.xydra.annotations.RunsInGWT;
+import org.xydra.xgae.memcache.api.IMemCache;
+
+/**
+ * An in-memory {@link IMemCache} with a bounded size in bytes.
+ *
+ * Values are stored serialised, like in a real memcache, so callers never
+ * share mutable state with the cache and the size of each entry is known. The
+ * keys are spread over segments which each evict their least recently used
+ * entries once they exceed their share of the size limit.
+ *
+ * Every store assigns a new stamp to the entry. {@link #getIdentifiable(String)}
+ * returns the stamp with the value, and
+ * {@link #putIfUntouched(String, IdentifiableValue, Object)} succeeds only if
+ * the stamp is still the same, i.e. the entry has neither been changed nor
+ * evicted in between.
+ *
+ * @author xamde
+ */
+@RunsInGWT(false)
+public class BoundedLocalMemCache implements IMemCache {
+
+	private static final int SEGMENTS = 16;
+
+	/** approximate overhead of an entry besides key and value */
+	private static final int ENTRY_OVERHEAD = 64;
+
+	private static class Entry {
+
+		/** null for a stored null value */
+		final byte[] bytes;
+
+		final long stamp;
+
+		final int size;
+
+		Entry(final String key, final byte[] bytes, final long stamp) {
+			this.bytes = bytes;
+			this.stamp = stamp;
+			this.size = ENTRY_OVERHEAD + 2 * key.length() + (bytes == null ? 0 : bytes.length);
+		}
+
+	}
+
+	private static class Identifiable implements IdentifiableValue {
+
+		private final Object value;
+
+		/** 0 if there was no entry */
+		private final long stamp;
+
+		Identifiable(final Object value, final long stamp) {
+			this.value = value;
+			this.stamp = stamp;
+		}
+
+		@Override
+		public Object getValue() {
+			return this.value;
+		}
+
+	}
+
+	private static class Segment {
+
+		/** in access order */
+		final LinkedHashMap<String, Entry> map = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+		long bytes = 0;
+
+	}
+
+	private final Segment[] segments = new Segment[SEGMENTS];
+
+	private final long maxSegmentBytes;
+
+	private final long latencyMicros;
+
+	private final AtomicLong stamps = new AtomicLong();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param maxBytes approximate upper bound for the size of all entries
+	 * @param latencyMicros simulated latency of each call
+	 */
+	public BoundedLocalMemCache(final long maxBytes, final long latencyMicros) {
+		this.maxSegmentBytes = Math.max(1, maxBytes / SEGMENTS);
+		this.latencyMicros = latencyMicros;
+		for (int i = 0; i < SEGMENTS; i++) {
+			this.segments[i] = new Segment();
+		}
+	}
+
+	private Segment segment(final Object key) {
+		final int h = key.hashCode();
+		return this.segments[(h ^ h >>> 16) & SEGMENTS - 1];
+	}
+
+	private void delay() {
+		if (this.latencyMicros > 0) {
+			LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(this.latencyMicros));
+		}
+	}
+
+	private static byte[] serialize(final Object value) {
+		if (value == null) {
+			return null;
+		}
+		try {
+			final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			final ObjectOutputStream oos = new ObjectOutputStream(bos);
+			oos.writeObject(value);
+			oos.close();
+			return bos.toByteArray();
+		} catch (final IOException e) {
+			throw new IllegalArgumentException("Value is not serializable: " + value, e);
+		}
+	}
+
+	private static Object deserialize(final byte[] bytes) {
+		if (bytes == null) {
+			return null;
+		}
+		try {
+			final ObjectInputStream oin = new ObjectInputStream(new ByteArrayInputStream(bytes));
+			final Object result = oin.readObject();
+			oin.close();
+			return result;
+		} catch (final IOException e) {
+			throw new RuntimeException(e);
+		} catch (final ClassNotFoundException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * @param segment must be locked by the caller
+	 */
+	private Entry store(final Segment segment, final String key, final byte[] bytes) {
+		final Entry entry = new Entry(key, bytes, this.stamps.incrementAndGet());
+		final Entry old = segment.map.put(key, entry);
+		if (old != null) {
+			segment.bytes -= old.size;
+		}
+		segment.bytes += entry.size;
+		final Iterator<Entry> it = segment.map.values().iterator();
+		while (segment.bytes > this.maxSegmentBytes && it.hasNext()) {
+			final Entry eldest = it.next();
+			if (eldest == entry) {
+				break;
+			}
+			it.remove();
+			segment.bytes -= eldest.size;
+			this.evictions.incrementAndGet();
+		}
+		return old;
+	}
+
+	/**
+	 * @param segment must be locked by the caller
+	 */
+	private Entry removeEntry(final Segment segment, final Object key) {
+		final Entry old = segment.map.remove(key);
+		if (old != null) {
+			segment.bytes -= old.size;
+		}
+		return old;
+	}
+
+	private Entry getEntry(final Object key) {
+		final Segment segment = segment(key);
+		final Entry entry;
+		synchronized (segment) {
+			entry = segment.map.get(key);
+		}
+		if (entry == null) {
+			this.misses.incrementAndGet();
+		} else {
+			this.hits.incrementAndGet();
+		}
+		return entry;
+	}
+
+	@Override
+	public Object get(final Object key) {
+		delay();
+		final Entry entry = getEntry(key);
+		return entry == null ? null : deserialize(entry.bytes);
+	}
+
+	@Override
+	public Map<String, Object> getAll(final Collection<String> keys) {
+		delay();
+		final Map<String, Object> result = new HashMap<String, Object>();
+		for (final String key : keys) {
+			final Entry entry = getEntry(key);
+			if (entry != null) {
+				result.put(key, deserialize(entry.bytes));
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public Object put(final String key, final Object value) {
+		delay();
+		final byte[] bytes = serialize(value);
+		final Segment segment = segment(key);
+		final Entry old;
+		synchronized (segment) {
+			old = store(segment, key, bytes);
+		}
+		return old == null ? null : deserialize(old.bytes);
+	}
+
+	@Override
+	public Object putChecked(final String key, final Object value) throws IOException {
+		return put(key, value);
+	}
+
+	@Override
+	public void putAll(final Map<? extends String, ? extends Object> m) {
+		delay();
+		for (final Map.Entry<? extends String, ? extends Object> e : m.entrySet()) {
+			final byte[] bytes = serialize(e.getValue());
+			final Segment segment = segment(e.getKey());
+			synchronized (segment) {
+				store(segment, e.getKey(), bytes);
+			}
+		}
+	}
+
+	@Override
+	public void putIfValueIsNull(final String key, final Object value) {
+		delay();
+		final byte[] bytes = serialize(value);
+		final Segment segment = segment(key);
+		synchronized (segment) {
+			final Entry current = segment.map.get(key);
+			if (current == null || current.bytes == null) {
+				store(segment, key, bytes);
+			}
+		}
+	}
+
+	@Override
+	public IdentifiableValue getIdentifiable(final String key) {
+		delay();
+		final Entry entry = getEntry(key);
+		if (entry == null) {
+			return new Identifiable(null, 0);
+		}
+		return new Identifiable(deserialize(entry.bytes), entry.stamp);
+	}
+
+	@Override
+	public boolean putIfUntouched(@NeverNull final String key,
+			@NeverNull final IdentifiableValue oldValue, @CanBeNull final Object newValue) {
+		delay();
+		final long expected = ((Identifiable) oldValue).stamp;
+		final byte[] bytes = serialize(newValue);
+		final Segment segment = segment(key);
+		synchronized (segment) {
+			final Entry current = segment.map.get(key);
+			final long stamp = current == null ? 0 : current.stamp;
+			if (stamp != expected) {
+				return false;
+			}
+			store(segment, key, bytes);
+			return true;
+		}
+	}
+
+	@Override
+	public Map<String, Long> incrementAll(final Map<String, Long> offsets, final long initialValue) {
+		delay();
+		final Map<String, Long> result = new HashMap<String, Long>();
+		for (final Map.Entry<String, Long> e : offsets.entrySet()) {
+			final Segment segment = segment(e.getKey());
+			synchronized (segment) {
+				final Entry current = segment.map.get(e.getKey());
+				final Object value = current == null ? null : deserialize(current.bytes);
+				if (current != null && !(value instanceof Long)) {
+					result.put(e.getKey(), null);
+					continue;
+				}
+				final long newValue = current == null ? initialValue : (Long) value + e.getValue();
+				store(segment, e.getKey(), serialize(newValue));
+				result.put(e.getKey(), newValue);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public Object remove(final Object key) {
+		delay();
+		final Segment segment = segment(key);
+		final Entry old;
+		synchronized (segment) {
+			old = removeEntry(segment, key);
+		}
+		return old == null ? null : deserialize(old.bytes);
+	}
+
+	@Override
+	public void clear() {
+		for (final Segment segment : this.segments) {
+			synchronized (segment) {
+				segment.map.clear();
+				segment.bytes = 0;
+			}
+		}
+	}
+
+	@Override
+	public int size() {
+		int size = 0;
+		for (final Segment segment : this.segments) {
+			synchronized (segment) {
+				size += segment.map.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @return approximate size of all entries in bytes
+	 */
+	public long getBytes() {
+		long bytes = 0;
+		for (final Segment segment : this.segments) {
+			synchronized (segment) {
+				bytes += segment.bytes;
+			}
+		}
+		return bytes;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	@Override
+	public boolean containsKey(final Object key) {
+		final Segment segment = segment(key);
+		synchronized (segment) {
+			return segment.map.containsKey(key);
+		}
+	}
+
+	@Override
+	public boolean containsValue(final Object value) {
+		throw new UnsupportedOperationException("memcache cannot search for values");
+	}
+
+	@Override
+	public Set<String> keySet() {
+		final Set<String> keys = new HashSet<String>();
+		for (final Segment segment : this.segments) {
+			synchronized (segment) {
+				keys.addAll(segment.map.keySet());
+			}
+		}
+		return keys;
+	}
+
+	@Override
+	public Collection<Object> values() {
+		final List<Object> values = new ArrayList<Object>();
+		for (final Map.Entry<String, Object> e : entrySet()) {
+			values.add(e.getValue());
+		}
+		return values;
+	}
+
+	@Override
+	public Set<Map.Entry<String, Object>> entrySet() {
+		final Map<String, Object> copy = new HashMap<String, Object>();
+		for (final Segment segment : this.segments) {
+			synchronized (segment) {
+				for (final Map.Entry<String, Entry> e : segment.map.entrySet()) {
+					copy.put(e.getKey(), deserialize(e.getValue().bytes));
+				}
+			}
+		}
+		return copy.entrySet();
+	}
+
+	@Override
+	public String stats() {
+		return "BoundedLocalMemCache items=" + size() + " bytes=" + getBytes() + " hits="
+				+ this.hits.get() + " misses=" + this.misses.get() + " evictions="
+				+ this.evictions.get();
+	}
+
+}